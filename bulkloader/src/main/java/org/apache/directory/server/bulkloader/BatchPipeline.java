@@ -0,0 +1,187 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * Processes the items of a source with a pool of threads, and gives the results to a sink
+ * in the source order. The items are processed by batches, and a bounded number of batches
+ * are processed at the same time, so the source is not read faster than the sink consumes.
+ *
+ * @param <I> The items type
+ * @param <O> The results type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class BatchPipeline<I, O>
+{
+    /** The items source */
+    @FunctionalInterface
+    interface Source<I>
+    {
+        /**
+         * @return The next item, or <code>null</code> if there is no more items
+         */
+        I next() throws Exception;
+    }
+
+    /** The items processing, done in parallel */
+    @FunctionalInterface
+    interface Worker<I, O>
+    {
+        /**
+         * @return The result, or <code>null</code> if the item is to be skipped
+         */
+        O process( I item ) throws Exception;
+    }
+
+    /** The results sink, called from the thread running the pipeline */
+    @FunctionalInterface
+    interface Sink<O>
+    {
+        void accept( O result ) throws Exception;
+    }
+
+    /** The pool processing the batches */
+    private final ExecutorService executor;
+
+    /** The number of items in a batch */
+    private final int batchSize;
+
+    /** The maximum number of batches being processed */
+    private final int maxPending;
+
+
+    /**
+     * Creates a new instance of BatchPipeline
+     *
+     * @param executor The pool processing the batches
+     * @param batchSize The number of items in a batch
+     * @param maxPending The maximum number of batches being processed
+     */
+    BatchPipeline( ExecutorService executor, int batchSize, int maxPending )
+    {
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+    }
+
+
+    /**
+     * Processes all the items of the source
+     *
+     * @param source The items source
+     * @param worker The items processing
+     * @param sink The results sink
+     * @throws Exception If an item can't be read, processed or consumed
+     */
+    void run( Source<I> source, Worker<I, O> worker, Sink<O> sink ) throws Exception
+    {
+        Deque<Future<List<O>>> pending = new ArrayDeque<>();
+
+        try
+        {
+            boolean done = false;
+
+            while ( !done )
+            {
+                List<I> batch = new ArrayList<>( batchSize );
+                I item;
+
+                while ( ( batch.size() < batchSize ) && ( ( item = source.next() ) != null ) )
+                {
+                    batch.add( item );
+                }
+
+                done = batch.size() < batchSize;
+
+                if ( !batch.isEmpty() )
+                {
+                    pending.add( executor.submit( () -> process( batch, worker ) ) );
+                }
+
+                while ( !pending.isEmpty() && ( done || ( pending.size() >= maxPending ) ) )
+                {
+                    drain( pending.poll(), sink );
+                }
+            }
+        }
+        finally
+        {
+            for ( Future<List<O>> future : pending )
+            {
+                future.cancel( true );
+            }
+        }
+    }
+
+
+    private List<O> process( List<I> batch, Worker<I, O> worker ) throws Exception
+    {
+        List<O> results = new ArrayList<>( batch.size() );
+
+        for ( I item : batch )
+        {
+            O result = worker.process( item );
+
+            if ( result != null )
+            {
+                results.add( result );
+            }
+        }
+
+        return results;
+    }
+
+
+    private void drain( Future<List<O>> future, Sink<O> sink ) throws Exception
+    {
+        List<O> results;
+
+        try
+        {
+            results = future.get();
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+
+            if ( cause instanceof Exception )
+            {
+                throw ( Exception ) cause;
+            }
+
+            throw ee;
+        }
+
+        for ( O result : results )
+        {
+            sink.accept( result );
+        }
+    }
+}
@@ -0,0 +1,1300 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An offline loader building a partition from a LDIF file. The load is done in four phases :
+ * <ul>
+ *   <li>the LDIF records are read, their DN are normalized by a pool of threads, and they are
+ *   sorted by DN, the children after their parent, with an external merge sort</li>
+ *   <li>the sorted records are parsed by the pool of threads, and stored in the master table
+ *   in order. The parent of each entry is known when the entry is stored, as it has been
+ *   stored just before. The index keys of the entries are sorted with one external sort per
+ *   index</li>
+ *   <li>the indexes are written from their sorted runs, which are merged in parallel</li>
+ *   <li>the alias indexes are written, once all the entries can be looked up</li>
+ * </ul>
+ * The memory used by the sorts is bounded by a {@link SortBudget}, so the LDIF file can be
+ * larger than the heap. The entries are not checked against the schema, and the aliases are
+ * kept in memory until the last phase.
+ * <br>
+ * A loader builds one partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BulkLoader
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( BulkLoader.class );
+
+    /** The number of records processed by a task */
+    private static final int BATCH_SIZE = 500;
+
+    /** The number of writes done in a transaction */
+    private static final int TXN_SIZE = 10000;
+
+    /** The number of entries between two progress reports */
+    private static final long PROGRESS_INTERVAL = 100000L;
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The partition writer */
+    private final PartitionWriter writer;
+
+    /** The partition ID */
+    private String partitionId;
+
+    /** The partition suffix, the topmost entry DN if not set */
+    private Dn suffixDn;
+
+    /** The attributes to index, besides the system indexes */
+    private List<String> indexedAttributes = new ArrayList<>();
+
+    /** The number of threads parsing and sorting the entries */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The memory used by the sorts, in bytes */
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+    /** The directory where the sorted runs are written */
+    private File tmpDir = new File( System.getProperty( "java.io.tmpdir" ) );
+
+    /** The replica ID used in the generated CSNs */
+    private int replicaId = 1;
+
+    /** The partition being loaded */
+    private AbstractBTreePartition partition;
+
+    /** The AttributeTypes we use */
+    private AttributeType objectClassAT;
+    private AttributeType entryCsnAT;
+    private AttributeType entryUuidAT;
+    private AttributeType entryDnAT;
+    private AttributeType administrativeRoleAT;
+    private AttributeType aliasedObjectNameAT;
+
+    /** The top ObjectClass, which is not indexed */
+    private Value topOCValue;
+
+    /** The ObjectClass index keys normalizer */
+    private Normalizer objectClassNormalizer;
+
+    /** The creation time of the entries which don't have one */
+    private String createTimestamp;
+
+    /** The CSN factory, used for the entries without entryCSN */
+    private CsnFactory csnFactory;
+
+    /** The sorted keys of each index, by index OID */
+    private final Map<String, ExternalSorter<IndexTuple>> indexSorters = new LinkedHashMap<>();
+
+    /** The sorted RDN index tuples */
+    private ExternalSorter<RdnTuple> rdnSorter;
+
+    /** The ancestors of the entry being stored, the parent at the top */
+    private final Deque<Node> ancestors = new ArrayDeque<>();
+
+    /** The aliases, whose indexes are written at the end */
+    private final List<Alias> aliases = new ArrayList<>();
+
+    /** The key of the last entry stored */
+    private String lastKey;
+
+    /** The current master table transaction */
+    private PartitionWriteTxn writeTxn;
+
+    /** The suffix entry, which holds the contextCSN */
+    private Entry contextEntry;
+
+    /** The highest CSN */
+    private String contextCsn;
+
+    /** The number of entries stored */
+    private long loaded;
+
+    /** The number of records which have been skipped */
+    private final AtomicLong skipped = new AtomicLong();
+
+
+    /**
+     * An entry parsed by a worker, with its index keys
+     */
+    private static final class ParsedEntry
+    {
+        private final String key;
+        private final Dn dn;
+        private final Entry entry;
+        private final String id;
+        private final List<String> indexOids = new ArrayList<>();
+        private final List<String> indexKeys = new ArrayList<>();
+        private Dn aliasTarget;
+
+
+        private ParsedEntry( String key, Dn dn, Entry entry, String id )
+        {
+            this.key = key;
+            this.dn = dn;
+            this.entry = entry;
+            this.id = id;
+        }
+
+
+        private void addIndexKey( String oid, String indexKey )
+        {
+            indexOids.add( oid );
+            indexKeys.add( indexKey );
+        }
+    }
+
+
+    /**
+     * An entry whose descendants are being stored
+     */
+    private static final class Node
+    {
+        private final String key;
+        private final Dn dn;
+        private final String id;
+        private final String parentId;
+        private int nbChildren;
+        private int nbDescendants;
+
+
+        private Node( String key, Dn dn, String id, String parentId )
+        {
+            this.key = key;
+            this.dn = dn;
+            this.id = id;
+            this.parentId = parentId;
+        }
+    }
+
+
+    /**
+     * An alias, and its ancestors, the parent first
+     */
+    private static final class Alias
+    {
+        private final String id;
+        private final Dn dn;
+        private final Dn target;
+        private final List<Node> ancestors;
+
+
+        private Alias( String id, Dn dn, Dn target, List<Node> ancestors )
+        {
+            this.id = id;
+            this.dn = dn;
+            this.target = target;
+            this.ancestors = ancestors;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of BulkLoader
+     *
+     * @param schemaManager The schema manager
+     * @param writer The partition writer
+     */
+    public BulkLoader( SchemaManager schemaManager, PartitionWriter writer )
+    {
+        this.schemaManager = schemaManager;
+        this.writer = writer;
+        partitionId = writer.getPartitionDir().getName();
+    }
+
+
+    /**
+     * @param partitionId The partition ID
+     */
+    public void setPartitionId( String partitionId )
+    {
+        this.partitionId = partitionId;
+    }
+
+
+    /**
+     * @param suffixDn The partition suffix. If not set, the DN of the topmost entry is used
+     */
+    public void setSuffixDn( Dn suffixDn )
+    {
+        this.suffixDn = suffixDn;
+    }
+
+
+    /**
+     * @param indexedAttributes The attributes to index, besides the system indexes
+     */
+    public void setIndexedAttributes( List<String> indexedAttributes )
+    {
+        this.indexedAttributes = indexedAttributes;
+    }
+
+
+    /**
+     * @param threads The number of threads parsing and sorting the entries
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = Math.max( 1, threads );
+    }
+
+
+    /**
+     * @param memoryBudget The memory used by the sorts, in bytes
+     */
+    public void setMemoryBudget( long memoryBudget )
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
+
+    /**
+     * @param tmpDir The directory where the sorted runs are written
+     */
+    public void setTmpDir( File tmpDir )
+    {
+        this.tmpDir = tmpDir;
+    }
+
+
+    /**
+     * @param replicaId The replica ID used in the generated CSNs
+     */
+    public void setReplicaId( int replicaId )
+    {
+        this.replicaId = replicaId;
+    }
+
+
+    /**
+     * Loads the entries of a LDIF file into the partition, which is closed at the end
+     *
+     * @param ldifFile The LDIF file
+     * @return The number of entries loaded
+     * @throws Exception If the file can't be read or if the partition can't be written
+     */
+    public long load( File ldifFile ) throws Exception
+    {
+        long start = System.nanoTime();
+        File runDir = Files.createTempDirectory( tmpDir.toPath(), "bulkloader" ).toFile();
+        ExecutorService workers = newPool( "bulkloader-worker", threads );
+        ExecutorService sorters = newPool( "bulkloader-sorter", threads );
+        SortBudget budget = new SortBudget( memoryBudget );
+
+        LOG.info( "Loading {} with {} threads and a sort budget of {}MB", ldifFile, threads,
+            budget.getLimit() / ( 1024L * 1024L ) );
+
+        try
+        {
+            try ( ExternalSorter<LdifRecord> entrySorter = new ExternalSorter<>( "entries", LdifRecord.COMPARATOR,
+                LdifRecord.CODEC, budget, runDir, sorters ) )
+            {
+                LdifRecord first = sortEntries( ldifFile, entrySorter, workers );
+
+                if ( first == null )
+                {
+                    LOG.warn( "No entry to load in {}", ldifFile );
+
+                    return 0L;
+                }
+
+                if ( suffixDn == null )
+                {
+                    suffixDn = new Dn( schemaManager, LdifRecordReader.getDn( first.ldif ) );
+                }
+
+                LOG.info( "Sorted {} entries in {}s", entrySorter.getCount(), elapsed( start ) );
+
+                partition = writer.open( partitionId, suffixDn, indexedAttributes );
+                initialize( budget, runDir, sorters );
+                storeEntries( entrySorter, workers );
+            }
+
+            LOG.info( "Stored {} entries in {}s", loaded, elapsed( start ) );
+
+            writeIndexes( workers );
+            writeAliases();
+            writeContextCsn();
+
+            LOG.info( "Loaded {} entries, skipped {} records, in {}s", loaded, skipped.get(), elapsed( start ) );
+
+            return loaded;
+        }
+        finally
+        {
+            for ( ExternalSorter<IndexTuple> sorter : indexSorters.values() )
+            {
+                sorter.close();
+            }
+
+            if ( rdnSorter != null )
+            {
+                rdnSorter.close();
+            }
+
+            workers.shutdownNow();
+            sorters.shutdownNow();
+            writer.close();
+            FileUtils.deleteDirectory( runDir );
+        }
+    }
+
+
+    /**
+     * First phase : sorts the LDIF records by DN
+     *
+     * @return The first record in the sort order
+     */
+    private LdifRecord sortEntries( File ldifFile, ExternalSorter<LdifRecord> entrySorter, ExecutorService workers )
+        throws Exception
+    {
+        LdifRecord[] first = new LdifRecord[1];
+
+        try ( LdifRecordReader reader = new LdifRecordReader( ldifFile ) )
+        {
+            BatchPipeline<String, LdifRecord> pipeline = new BatchPipeline<>( workers, BATCH_SIZE, threads * 2 );
+
+            pipeline.run( reader::next, this::toLdifRecord, record ->
+            {
+                entrySorter.add( record );
+
+                if ( ( first[0] == null ) || ( record.key.compareTo( first[0].key ) < 0 ) )
+                {
+                    first[0] = record;
+                }
+            } );
+        }
+
+        return first[0];
+    }
+
+
+    /**
+     * Computes the sort key of a record, called by the workers
+     */
+    private LdifRecord toLdifRecord( String record )
+    {
+        String dnString = LdifRecordReader.getDn( record );
+
+        if ( dnString == null )
+        {
+            skip( "Skipping a record without DN : {}", record.substring( 0, record.indexOf( '\n' ) ) );
+
+            return null;
+        }
+
+        Dn dn;
+
+        try
+        {
+            dn = new Dn( schemaManager, dnString );
+        }
+        catch ( LdapException le )
+        {
+            skip( "Skipping the record with an invalid DN {} : {}", dnString, le.getMessage() );
+
+            return null;
+        }
+
+        if ( ( suffixDn != null ) && !dn.isDescendantOf( suffixDn ) )
+        {
+            skip( "Skipping the entry {}, which is not under the suffix {}", dnString, suffixDn );
+
+            return null;
+        }
+
+        return new LdifRecord( getKey( dn ), record );
+    }
+
+
+    /**
+     * The sort key of an entry : its normalized RDNs, from the root
+     */
+    private static String getKey( Dn dn )
+    {
+        List<Rdn> rdns = dn.getRdns();
+        StringBuilder key = new StringBuilder();
+
+        for ( int i = rdns.size() - 1; i >= 0; i-- )
+        {
+            key.append( rdns.get( i ).getNormName() );
+
+            if ( i > 0 )
+            {
+                key.append( LdifRecord.SEPARATOR );
+            }
+        }
+
+        return key.toString();
+    }
+
+
+    /**
+     * Gets the AttributeTypes and creates the index sorters, once the partition is open
+     */
+    private void initialize( SortBudget budget, File runDir, ExecutorService sorters ) throws LdapException
+    {
+        objectClassAT = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.OBJECT_CLASS_AT );
+        entryCsnAT = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_CSN_AT );
+        entryUuidAT = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_UUID_AT );
+        entryDnAT = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_DN_AT );
+        administrativeRoleAT = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ADMINISTRATIVE_ROLE_AT );
+        aliasedObjectNameAT = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ALIASED_OBJECT_NAME_AT );
+        topOCValue = new Value( objectClassAT, SchemaConstants.TOP_OC_OID );
+        objectClassNormalizer = objectClassAT.getEquality().getNormalizer();
+        createTimestamp = DateUtils.getGeneralizedTime( TimeProvider.DEFAULT );
+        csnFactory = new CsnFactory( replicaId );
+
+        List<String> oids = new ArrayList<>( Arrays.asList( objectClassAT.getOid(), entryCsnAT.getOid(),
+            administrativeRoleAT.getOid(), ApacheSchemaConstants.APACHE_PRESENCE_AT_OID ) );
+
+        for ( Iterator<String> userIndices = partition.getUserIndices(); userIndices.hasNext(); )
+        {
+            oids.add( userIndices.next() );
+        }
+
+        for ( String oid : oids )
+        {
+            indexSorters.put( oid, new ExternalSorter<>( "index-" + oid, IndexTuple.COMPARATOR, IndexTuple.CODEC,
+                budget, runDir, sorters ) );
+        }
+
+        rdnSorter = new ExternalSorter<>( "rdn", RdnTuple.COMPARATOR, RdnTuple.CODEC, budget, runDir, sorters );
+    }
+
+
+    /**
+     * Second phase : parses the sorted records and stores the entries in the master table
+     */
+    private void storeEntries( ExternalSorter<LdifRecord> entrySorter, ExecutorService workers ) throws Exception
+    {
+        long start = System.nanoTime();
+        writeTxn = partition.beginWriteTransaction();
+
+        try ( ExternalSorter.RecordIterator<LdifRecord> records = entrySorter.sort() )
+        {
+            BatchPipeline<LdifRecord, ParsedEntry> pipeline = new BatchPipeline<>( workers, BATCH_SIZE, threads * 2 );
+
+            pipeline.run( records::next, this::parse, entry -> store( entry, start ) );
+
+            while ( !ancestors.isEmpty() )
+            {
+                popAncestor();
+            }
+
+            writeTxn.commit();
+        }
+        catch ( Exception e )
+        {
+            writeTxn.abort();
+            throw e;
+        }
+        finally
+        {
+            writeTxn = null;
+        }
+    }
+
+
+    /**
+     * Parses an entry and computes its index keys, called by the workers
+     */
+    private ParsedEntry parse( LdifRecord record ) throws LdapException
+    {
+        Entry entry;
+
+        try ( LdifReader reader = new LdifReader() )
+        {
+            List<LdifEntry> ldifEntries = reader.parseLdif( record.ldif );
+
+            if ( ldifEntries.isEmpty() || !ldifEntries.get( 0 ).isEntry() )
+            {
+                skip( "Skipping the record {}, which is not an entry", LdifRecordReader.getDn( record.ldif ) );
+
+                return null;
+            }
+
+            entry = new DefaultEntry( schemaManager, ldifEntries.get( 0 ).getEntry() );
+        }
+        catch ( LdapException | IOException e )
+        {
+            skip( "Skipping the entry {} : {}", LdifRecordReader.getDn( record.ldif ), e.getMessage() );
+
+            return null;
+        }
+
+        Attribute objectClass = entry.get( objectClassAT );
+
+        if ( objectClass == null )
+        {
+            skip( "Skipping the entry {}, which has no objectClass", entry.getDn() );
+
+            return null;
+        }
+
+        // Get a new UUID for the entry if it does not have any already
+        Attribute entryUuid = entry.get( entryUuidAT );
+        String id;
+
+        if ( entryUuid == null )
+        {
+            id = UUID.randomUUID().toString();
+            entry.add( entryUuidAT, id );
+        }
+        else
+        {
+            id = entryUuid.getString();
+        }
+
+        if ( !entry.containsAttribute( SchemaConstants.CREATORS_NAME_AT ) )
+        {
+            entry.add( SchemaConstants.CREATORS_NAME_AT, ServerDNConstants.ADMIN_SYSTEM_DN_NORMALIZED );
+        }
+
+        if ( !entry.containsAttribute( SchemaConstants.CREATE_TIMESTAMP_AT ) )
+        {
+            entry.add( SchemaConstants.CREATE_TIMESTAMP_AT, createTimestamp );
+        }
+
+        entry.removeAttributes( entryDnAT );
+
+        ParsedEntry parsed = new ParsedEntry( record.key, entry.getDn(), entry, id );
+
+        // The ObjectClass index
+        for ( Value value : objectClass )
+        {
+            if ( !value.equals( topOCValue ) )
+            {
+                parsed.addIndexKey( objectClassAT.getOid(), objectClassNormalizer.normalize( value.getString() ) );
+            }
+        }
+
+        if ( objectClass.contains( SchemaConstants.ALIAS_OC ) )
+        {
+            Attribute aliasedObjectName = entry.get( aliasedObjectNameAT );
+
+            if ( aliasedObjectName != null )
+            {
+                parsed.aliasTarget = new Dn( schemaManager, aliasedObjectName.getString() );
+            }
+        }
+
+        // The AdministrativeRole index
+        Attribute adminRoles = entry.get( administrativeRoleAT );
+
+        if ( adminRoles != null )
+        {
+            for ( Value value : adminRoles )
+            {
+                parsed.addIndexKey( administrativeRoleAT.getOid(), value.getString() );
+            }
+
+            parsed.addIndexKey( ApacheSchemaConstants.APACHE_PRESENCE_AT_OID, administrativeRoleAT.getOid() );
+        }
+
+        // The user indexes
+        for ( Attribute attribute : entry )
+        {
+            AttributeType attributeType = attribute.getAttributeType();
+
+            if ( partition.hasUserIndexOn( attributeType ) )
+            {
+                for ( Value value : attribute )
+                {
+                    parsed.addIndexKey( attributeType.getOid(), value.getNormalized() );
+                }
+
+                parsed.addIndexKey( ApacheSchemaConstants.APACHE_PRESENCE_AT_OID, attributeType.getOid() );
+            }
+        }
+
+        return parsed;
+    }
+
+
+    /**
+     * Stores an entry in the master table. The entries come in the sort order, so the parent
+     * of an entry is at the top of the ancestors stack.
+     */
+    private void store( ParsedEntry parsed, long start ) throws LdapException, IOException
+    {
+        if ( parsed.key.equals( lastKey ) )
+        {
+            skip( "Skipping the entry {}, which already exists", parsed.dn );
+
+            return;
+        }
+
+        while ( !ancestors.isEmpty() && !LdifRecord.isAncestor( ancestors.peek().key, parsed.key ) )
+        {
+            popAncestor();
+        }
+
+        Node parent = ancestors.peek();
+        String parentId;
+
+        if ( parent == null )
+        {
+            if ( !parsed.dn.equals( suffixDn ) )
+            {
+                skip( "Skipping the entry {}, which has no parent under the suffix {}", parsed.dn, suffixDn );
+
+                return;
+            }
+
+            parentId = Partition.ROOT_ID;
+            contextEntry = parsed.entry;
+        }
+        else
+        {
+            if ( parent.dn.size() != parsed.dn.size() - 1 )
+            {
+                skip( "Skipping the entry {}, whose parent is missing", parsed.dn );
+
+                return;
+            }
+
+            parentId = parent.id;
+            parent.nbChildren++;
+        }
+
+        Entry entry = parsed.entry;
+        Attribute entryCsn = entry.get( entryCsnAT );
+        String csn;
+
+        if ( entryCsn == null )
+        {
+            csn = csnFactory.newInstance().toString();
+            entry.add( entryCsnAT, csn );
+        }
+        else
+        {
+            csn = entryCsn.getString();
+        }
+
+        if ( ( contextCsn == null ) || ( csn.compareTo( contextCsn ) > 0 ) )
+        {
+            contextCsn = csn;
+        }
+
+        entry.put( ApacheSchemaConstants.ENTRY_PARENT_ID_AT, parentId );
+
+        partition.getMasterTable().put( writeTxn, parsed.id, entry );
+        loaded++;
+
+        if ( loaded % TXN_SIZE == 0 )
+        {
+            writeTxn.commit();
+            writeTxn = partition.beginWriteTransaction();
+        }
+
+        indexSorters.get( entryCsnAT.getOid() ).add( new IndexTuple( csn, parsed.id ) );
+
+        for ( int i = 0; i < parsed.indexOids.size(); i++ )
+        {
+            indexSorters.get( parsed.indexOids.get( i ) ).add( new IndexTuple( parsed.indexKeys.get( i ), parsed.id ) );
+        }
+
+        if ( parsed.aliasTarget != null )
+        {
+            aliases.add( new Alias( parsed.id, parsed.dn, parsed.aliasTarget, new ArrayList<>( ancestors ) ) );
+        }
+
+        ancestors.push( new Node( parsed.key, parsed.dn, parsed.id, parentId ) );
+        lastKey = parsed.key;
+
+        if ( loaded % PROGRESS_INTERVAL == 0 )
+        {
+            LOG.info( "Stored {} entries, {} entries/s", loaded,
+                loaded * TimeUnit.SECONDS.toNanos( 1L ) / Math.max( 1L, System.nanoTime() - start ) );
+        }
+    }
+
+
+    /**
+     * Pops the entry at the top of the ancestors stack, all its descendants having been
+     * stored : its RDN index tuple can be sorted.
+     */
+    private void popAncestor() throws IOException
+    {
+        Node node = ancestors.pop();
+        Node parent = ancestors.peek();
+
+        if ( parent != null )
+        {
+            parent.nbDescendants += node.nbDescendants + 1;
+        }
+
+        if ( node.parentId.equals( Partition.ROOT_ID ) )
+        {
+            rdnSorter.add( new RdnTuple( node.parentId, suffixDn.getNormName(), suffixDn.getName(), node.nbChildren,
+                node.nbDescendants, node.id ) );
+        }
+        else
+        {
+            Rdn rdn = node.dn.getRdn();
+
+            rdnSorter.add( new RdnTuple( node.parentId, rdn.getNormName(), rdn.getName(), node.nbChildren,
+                node.nbDescendants, node.id ) );
+        }
+    }
+
+
+    /**
+     * Third phase : writes the indexes. The sorted runs of all the indexes are merged in
+     * parallel, and the indexes are written by as many threads as the backend accepts.
+     */
+    private void writeIndexes( ExecutorService workers ) throws Exception
+    {
+        long start = System.nanoTime();
+        Map<String, Future<ExternalSorter.RecordIterator<IndexTuple>>> sortedIndexes = new LinkedHashMap<>();
+
+        Future<ExternalSorter.RecordIterator<RdnTuple>> sortedRdns = workers.submit( rdnSorter::sort );
+
+        for ( Map.Entry<String, ExternalSorter<IndexTuple>> indexSorter : indexSorters.entrySet() )
+        {
+            sortedIndexes.put( indexSorter.getKey(), workers.submit( indexSorter.getValue()::sort ) );
+        }
+
+        ExecutorService indexWriters = newPool( "bulkloader-writer", writer.getWriteConcurrency() );
+
+        try
+        {
+            List<Future<Long>> written = new ArrayList<>();
+
+            written.add( indexWriters.submit( () -> writeRdnIndex( sortedRdns.get() ) ) );
+
+            for ( Map.Entry<String, Future<ExternalSorter.RecordIterator<IndexTuple>>> sortedIndex
+                : sortedIndexes.entrySet() )
+            {
+                Index<String, String> index = getIndex( sortedIndex.getKey() );
+
+                written.add( indexWriters.submit( () -> writeIndex( index, sortedIndex.getValue().get() ) ) );
+            }
+
+            for ( Future<Long> future : written )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            indexWriters.shutdownNow();
+        }
+
+        LOG.info( "Wrote the indexes in {}s", elapsed( start ) );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Index<String, String> getIndex( String oid ) throws LdapException
+    {
+        if ( oid.equals( objectClassAT.getOid() ) )
+        {
+            return partition.getObjectClassIndex();
+        }
+        else if ( oid.equals( entryCsnAT.getOid() ) )
+        {
+            return partition.getEntryCsnIndex();
+        }
+        else if ( oid.equals( administrativeRoleAT.getOid() ) )
+        {
+            return partition.getAdministrativeRoleIndex();
+        }
+        else if ( oid.equals( ApacheSchemaConstants.APACHE_PRESENCE_AT_OID ) )
+        {
+            return partition.getPresenceIndex();
+        }
+        else
+        {
+            return ( Index<String, String> ) partition.getUserIndex( schemaManager.lookupAttributeTypeRegistry( oid ) );
+        }
+    }
+
+
+    /**
+     * Writes an index from its sorted tuples
+     */
+    private long writeIndex( Index<String, String> index, ExternalSorter.RecordIterator<IndexTuple> tuples )
+        throws Exception
+    {
+        long count = 0L;
+        PartitionWriteTxn txn = partition.beginWriteTransaction();
+
+        try ( ExternalSorter.RecordIterator<IndexTuple> sorted = tuples )
+        {
+            IndexTuple previous = null;
+            IndexTuple tuple;
+
+            while ( ( tuple = sorted.next() ) != null )
+            {
+                if ( ( previous != null ) && ( IndexTuple.COMPARATOR.compare( previous, tuple ) == 0 ) )
+                {
+                    continue;
+                }
+
+                index.add( txn, tuple.key, tuple.id );
+                previous = tuple;
+                count++;
+
+                if ( count % TXN_SIZE == 0 )
+                {
+                    txn.commit();
+                    txn = partition.beginWriteTransaction();
+                }
+            }
+
+            txn.commit();
+        }
+        catch ( Exception e )
+        {
+            txn.abort();
+            throw e;
+        }
+
+        LOG.debug( "Wrote {} keys in the {} index", count, index.getAttributeId() );
+
+        return count;
+    }
+
+
+    /**
+     * Writes the RDN index from its sorted tuples
+     */
+    private long writeRdnIndex( ExternalSorter.RecordIterator<RdnTuple> tuples ) throws Exception
+    {
+        Index<ParentIdAndRdn, String> rdnIdx = partition.getRdnIndex();
+        long count = 0L;
+        PartitionWriteTxn txn = partition.beginWriteTransaction();
+
+        try ( ExternalSorter.RecordIterator<RdnTuple> sorted = tuples )
+        {
+            RdnTuple tuple;
+
+            while ( ( tuple = sorted.next() ) != null )
+            {
+                ParentIdAndRdn key = new ParentIdAndRdn( tuple.parentId,
+                    new Dn( schemaManager, tuple.rdn ).getRdns() );
+                key.setNbChildren( tuple.nbChildren );
+                key.setNbDescendants( tuple.nbDescendants );
+
+                rdnIdx.add( txn, key, tuple.id );
+                count++;
+
+                if ( count % TXN_SIZE == 0 )
+                {
+                    txn.commit();
+                    txn = partition.beginWriteTransaction();
+                }
+            }
+
+            txn.commit();
+        }
+        catch ( Exception e )
+        {
+            txn.abort();
+            throw e;
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Fourth phase : writes the alias indexes, the same way the partition does when an alias
+     * is added
+     */
+    private void writeAliases() throws Exception
+    {
+        if ( aliases.isEmpty() )
+        {
+            return;
+        }
+
+        Set<String> aliasIds = new HashSet<>();
+
+        for ( Alias alias : aliases )
+        {
+            aliasIds.add( alias.id );
+        }
+
+        PartitionWriteTxn txn = partition.beginWriteTransaction();
+
+        try
+        {
+            for ( Alias alias : aliases )
+            {
+                if ( !alias.target.isDescendantOf( suffixDn ) )
+                {
+                    LOG.warn( "The alias {} is not indexed, its target {} is not under the suffix {}", alias.dn,
+                        alias.target, suffixDn );
+
+                    continue;
+                }
+
+                String targetId = lookup( txn, alias.target );
+
+                if ( targetId == null )
+                {
+                    LOG.warn( "The alias {} is not indexed, its target {} does not exist", alias.dn, alias.target );
+
+                    continue;
+                }
+
+                if ( aliasIds.contains( targetId ) )
+                {
+                    LOG.warn( "The alias {} is not indexed, its target {} is an alias", alias.dn, alias.target );
+
+                    continue;
+                }
+
+                partition.getAliasIndex().add( txn, alias.target, alias.id );
+
+                // The one level scope alias index, if the target is not a sibling of the alias
+                if ( !alias.ancestors.isEmpty() && !alias.dn.isDescendantOf( alias.target.getParent() ) )
+                {
+                    partition.getOneAliasIndex().add( txn, alias.ancestors.get( 0 ).id, targetId );
+                }
+
+                // The sub level scope alias index, for the ancestors the target is not under
+                for ( Node ancestor : alias.ancestors )
+                {
+                    if ( ancestor.dn.equals( suffixDn ) )
+                    {
+                        break;
+                    }
+
+                    if ( !alias.target.isDescendantOf( ancestor.dn ) )
+                    {
+                        partition.getSubAliasIndex().add( txn, ancestor.id, targetId );
+                    }
+                }
+            }
+
+            txn.commit();
+        }
+        catch ( Exception e )
+        {
+            txn.abort();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Looks up the ID of an entry in the RDN index
+     */
+    private String lookup( PartitionTxn txn, Dn dn ) throws LdapException
+    {
+        Index<ParentIdAndRdn, String> rdnIdx = partition.getRdnIndex();
+        String id = rdnIdx.forwardLookup( txn, new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() ) );
+
+        for ( int i = dn.size() - suffixDn.size(); ( i > 0 ) && ( id != null ); i-- )
+        {
+            id = rdnIdx.forwardLookup( txn, new ParentIdAndRdn( id, dn.getRdn( i - 1 ) ) );
+        }
+
+        return id;
+    }
+
+
+    /**
+     * Stores the highest CSN in the suffix entry
+     */
+    private void writeContextCsn() throws LdapException, IOException
+    {
+        if ( ( contextEntry == null ) || ( contextCsn == null ) )
+        {
+            return;
+        }
+
+        contextEntry.removeAttributes( SchemaConstants.CONTEXT_CSN_AT );
+        contextEntry.add( SchemaConstants.CONTEXT_CSN_AT, contextCsn );
+
+        PartitionWriteTxn txn = partition.beginWriteTransaction();
+        partition.getMasterTable().put( txn, contextEntry.get( entryUuidAT ).getString(), contextEntry );
+        txn.commit();
+    }
+
+
+    private void skip( String message, Object... args )
+    {
+        skipped.incrementAndGet();
+        LOG.warn( message, args );
+    }
+
+
+    private static long elapsed( long start )
+    {
+        return TimeUnit.NANOSECONDS.toSeconds( System.nanoTime() - start );
+    }
+
+
+    private static ExecutorService newPool( String name, int size )
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        return Executors.newFixedThreadPool( size, runnable ->
+        {
+            Thread thread = new Thread( runnable, name + "-" + counter.incrementAndGet() );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+    }
+
+
+    private static void help()
+    {
+        System.out.println( "BulkLoader -i <ldif-file> -o <output-dir> [options]" );
+
+        for ( Option o : Option.values() )
+        {
+            if ( o != Option.UNKNOWN )
+            {
+                System.out.println( "\t" + o.getText() + "\t" + o.getDesc() );
+            }
+        }
+    }
+
+
+    private static String getArgAt( int position, Option opt, String[] args )
+    {
+        if ( position >= args.length )
+        {
+            System.out.println( "No value was provided for the option " + opt.getText() );
+            System.exit( 1 );
+        }
+
+        return args[position];
+    }
+
+
+    public static void main( String[] args ) throws Exception
+    {
+        String inFile = null;
+        String outDirPath = null;
+        String backend = "jdbm";
+        String partitionId = null;
+        String suffix = null;
+        List<String> indexes = Collections.emptyList();
+        long memoryMb = 0L;
+        int threads = 0;
+        long mapSizeMb = 0L;
+        int rid = 1;
+        boolean cleanOutDir = false;
+
+        if ( args.length < 2 )
+        {
+            help();
+            System.exit( 0 );
+        }
+
+        for ( int i = 0; i < args.length; i++ )
+        {
+            Option opt = Option.getOpt( args[i] );
+
+            switch ( opt )
+            {
+                case HELP:
+                    help();
+                    System.exit( 0 );
+                    break;
+
+                case INPUT_FILE:
+                    inFile = getArgAt( ++i, opt, args );
+                    break;
+
+                case OUT_DIR:
+                    outDirPath = getArgAt( ++i, opt, args );
+                    break;
+
+                case CLEAN_OUT_DIR:
+                    cleanOutDir = true;
+                    break;
+
+                case BACKEND:
+                    backend = getArgAt( ++i, opt, args );
+                    break;
+
+                case PARTITION_ID:
+                    partitionId = getArgAt( ++i, opt, args );
+                    break;
+
+                case SUFFIX:
+                    suffix = getArgAt( ++i, opt, args );
+                    break;
+
+                case INDEXES:
+                    indexes = Arrays.asList( getArgAt( ++i, opt, args ).split( "\\s*,\\s*" ) );
+                    break;
+
+                case MEMORY:
+                    memoryMb = Long.parseLong( getArgAt( ++i, opt, args ) );
+                    break;
+
+                case THREADS:
+                    threads = Integer.parseInt( getArgAt( ++i, opt, args ) );
+                    break;
+
+                case MAP_SIZE:
+                    mapSizeMb = Long.parseLong( getArgAt( ++i, opt, args ) );
+                    break;
+
+                case DS_RID:
+                    rid = Integer.parseInt( getArgAt( ++i, opt, args ) );
+                    break;
+
+                case UNKNOWN:
+                default:
+                    System.out.println( "Unknown option " + args[i] );
+                    break;
+            }
+        }
+
+        if ( ( inFile == null ) || ( inFile.trim().length() == 0 ) )
+        {
+            System.out.println( "Invalid input file" );
+            return;
+        }
+
+        if ( !new File( inFile ).exists() )
+        {
+            System.out.println( "The input file " + inFile + " doesn't exist" );
+            return;
+        }
+
+        if ( outDirPath == null )
+        {
+            System.out.println( "No output directory, pass " + Option.OUT_DIR.getText() );
+            return;
+        }
+
+        File outDir = new File( outDirPath );
+
+        if ( outDir.exists() )
+        {
+            if ( !cleanOutDir )
+            {
+                System.out.println( "The output directory is not empty, pass " + Option.CLEAN_OUT_DIR.getText()
+                    + " to force delete the contents or specify a different directory" );
+                return;
+            }
+
+            FileUtils.deleteDirectory( outDir );
+        }
+
+        SchemaManager schemaManager = new DefaultSchemaManager();
+        PartitionWriter writer = PartitionWriter.create( backend, schemaManager, outDir );
+
+        if ( ( mapSizeMb > 0L ) && ( writer instanceof LmdbPartitionWriter ) )
+        {
+            ( ( LmdbPartitionWriter ) writer ).setMapSize( mapSizeMb * 1024L * 1024L );
+        }
+
+        BulkLoader loader = new BulkLoader( schemaManager, writer );
+        loader.setIndexedAttributes( indexes );
+        loader.setReplicaId( rid );
+
+        if ( partitionId != null )
+        {
+            loader.setPartitionId( partitionId );
+        }
+
+        if ( suffix != null )
+        {
+            loader.setSuffixDn( new Dn( schemaManager, suffix ) );
+        }
+
+        if ( memoryMb > 0L )
+        {
+            loader.setMemoryBudget( memoryMb * 1024L * 1024L );
+        }
+
+        if ( threads > 0 )
+        {
+            loader.setThreads( threads );
+        }
+
+        long start = System.currentTimeMillis();
+
+        long count = loader.load( new File( inFile ) );
+
+        long end = System.currentTimeMillis();
+
+        System.out.println( "Loaded " + count + " entries in " + ( end - start ) + "msec" );
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * A merge sort of more records than the heap can hold. The records are buffered until the
+ * {@link SortBudget} asks for the buffer to be spilled : it is then sorted and written to a
+ * run file by the executor, while the next records are buffered. The sorted records are read
+ * by merging the runs, after having merged them in several passes if there are too many.
+ * When nothing has been spilled, the records are simply sorted in memory.
+ * <br>
+ * A sorter is fed by one thread, and read once.
+ *
+ * @param <T> The record type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ExternalSorter<T> implements Closeable
+{
+    /** The maximum number of runs merged at once */
+    static final int MAX_FAN_IN = 256;
+
+    /** The size of the run files buffers */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The sorter name, used as a prefix for the run files */
+    private final String name;
+
+    /** The records order */
+    private final Comparator<T> comparator;
+
+    /** The records codec */
+    private final RecordCodec<T> codec;
+
+    /** The memory budget */
+    private final SortBudget budget;
+
+    /** The directory where the runs are written */
+    private final File tmpDir;
+
+    /** The executor sorting and writing the runs */
+    private final ExecutorService executor;
+
+    /** The records not yet spilled */
+    private List<T> buffer = new ArrayList<>();
+
+    /** The estimated size of the buffered records */
+    private long bufferedBytes;
+
+    /** The runs being written */
+    private final List<Future<File>> pendingRuns = new ArrayList<>();
+
+    /** The run files */
+    private final List<File> runs = new ArrayList<>();
+
+    /** The number of records added */
+    private long count;
+
+    /** Tells if the sorted records have been read */
+    private boolean sorted;
+
+
+    /**
+     * Creates a new instance of ExternalSorter
+     *
+     * @param name The sorter name, used as a prefix for the run files
+     * @param comparator The records order
+     * @param codec The records codec
+     * @param budget The memory budget
+     * @param tmpDir The directory where the runs are written
+     * @param executor The executor sorting and writing the runs
+     */
+    public ExternalSorter( String name, Comparator<T> comparator, RecordCodec<T> codec, SortBudget budget,
+        File tmpDir, ExecutorService executor )
+    {
+        this.name = name;
+        this.comparator = comparator;
+        this.codec = codec;
+        this.budget = budget;
+        this.tmpDir = tmpDir;
+        this.executor = executor;
+
+        budget.register( this );
+    }
+
+
+    /**
+     * Adds a record
+     *
+     * @param record The record to add
+     * @throws IOException If a run can't be written
+     */
+    public void add( T record ) throws IOException
+    {
+        if ( sorted )
+        {
+            throw new IllegalStateException( "The records of " + name + " have already been sorted" );
+        }
+
+        long size = codec.size( record );
+        buffer.add( record );
+        bufferedBytes += size;
+        count++;
+
+        budget.charge( size );
+    }
+
+
+    /**
+     * @return The number of records added
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return The estimated size of the buffered records
+     */
+    long getBufferedBytes()
+    {
+        return bufferedBytes;
+    }
+
+
+    /**
+     * Sorts the buffered records and writes them to a new run, in the background
+     */
+    void spill()
+    {
+        if ( buffer.isEmpty() )
+        {
+            return;
+        }
+
+        List<T> records = buffer;
+        long size = bufferedBytes;
+        buffer = new ArrayList<>();
+        bufferedBytes = 0L;
+
+        budget.spilling( size );
+
+        pendingRuns.add( executor.submit( () ->
+        {
+            try
+            {
+                records.sort( comparator );
+
+                Iterator<T> iterator = records.iterator();
+
+                return writeRun( () -> iterator.hasNext() ? iterator.next() : null );
+            }
+            finally
+            {
+                budget.spilled( size );
+            }
+        } ) );
+    }
+
+
+    /**
+     * Writes the records to a new run file. A record is preceded by a <code>true</code> boolean,
+     * and the run ends with a <code>false</code> boolean.
+     */
+    private File writeRun( RecordIterator<T> records ) throws IOException
+    {
+        File run = File.createTempFile( name, ".run", tmpDir );
+
+        try ( DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream( new FileOutputStream( run ), BUFFER_SIZE ) ) )
+        {
+            T record;
+
+            while ( ( record = records.next() ) != null )
+            {
+                out.writeBoolean( true );
+                codec.write( out, record );
+            }
+
+            out.writeBoolean( false );
+        }
+        catch ( IOException ioe )
+        {
+            run.delete();
+            throw ioe;
+        }
+
+        return run;
+    }
+
+
+    /**
+     * Waits for the runs being written
+     */
+    private void awaitRuns() throws IOException
+    {
+        try
+        {
+            for ( Future<File> pendingRun : pendingRuns )
+            {
+                runs.add( pendingRun.get() );
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for the runs of " + name );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new IOException( "Cannot write a run of " + name, ee.getCause() );
+        }
+        finally
+        {
+            pendingRuns.clear();
+        }
+    }
+
+
+    /**
+     * Gives the sorted records. No record can be added afterward.
+     *
+     * @return The sorted records
+     * @throws IOException If the runs can't be written or read
+     */
+    public RecordIterator<T> sort() throws IOException
+    {
+        sorted = true;
+
+        if ( pendingRuns.isEmpty() )
+        {
+            // Everything fits in memory
+            buffer.sort( comparator );
+            Iterator<T> records = buffer.iterator();
+
+            return () -> records.hasNext() ? records.next() : null;
+        }
+
+        spill();
+        awaitRuns();
+
+        // Merge the runs until there are few enough of them to be merged at once
+        while ( runs.size() > MAX_FAN_IN )
+        {
+            for ( int i = 0; i < runs.size(); i += MAX_FAN_IN )
+            {
+                List<File> group = new ArrayList<>( runs.subList( i, Math.min( i + MAX_FAN_IN, runs.size() ) ) );
+
+                pendingRuns.add( executor.submit( () ->
+                {
+                    try ( MergeIterator merge = new MergeIterator( group ) )
+                    {
+                        return writeRun( merge );
+                    }
+                    finally
+                    {
+                        for ( File run : group )
+                        {
+                            run.delete();
+                        }
+                    }
+                } ) );
+            }
+
+            runs.clear();
+            awaitRuns();
+        }
+
+        return new MergeIterator( runs );
+    }
+
+
+    /**
+     * Deletes the runs and releases the memory budget
+     */
+    @Override
+    public void close()
+    {
+        for ( Future<File> pendingRun : pendingRuns )
+        {
+            pendingRun.cancel( true );
+        }
+
+        for ( File run : runs )
+        {
+            run.delete();
+        }
+
+        runs.clear();
+        budget.release( bufferedBytes );
+        budget.unregister( this );
+        buffer = new ArrayList<>();
+        bufferedBytes = 0L;
+    }
+
+
+    /**
+     * The sorted records. The {@link #next()} method returns <code>null</code> when all the
+     * records have been read.
+     *
+     * @param <T> The record type
+     */
+    public interface RecordIterator<T> extends Closeable
+    {
+        /**
+         * @return The next record, or <code>null</code> if all the records have been read
+         * @throws IOException If the record can't be read
+         */
+        T next() throws IOException;
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        default void close() throws IOException
+        {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * The next record of a run
+     */
+    private final class RunReader implements Closeable
+    {
+        private final DataInputStream in;
+
+        private T current;
+
+
+        private RunReader( File run ) throws IOException
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( run ), BUFFER_SIZE ) );
+        }
+
+
+        private boolean advance() throws IOException
+        {
+            current = in.readBoolean() ? codec.read( in ) : null;
+
+            return current != null;
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * A k-way merge of some runs
+     */
+    private final class MergeIterator implements RecordIterator<T>
+    {
+        private final List<RunReader> readers = new ArrayList<>();
+
+        private final PriorityQueue<RunReader> heads;
+
+
+        private MergeIterator( List<File> runs ) throws IOException
+        {
+            heads = new PriorityQueue<>( Math.max( 1, runs.size() ),
+                ( r1, r2 ) -> comparator.compare( r1.current, r2.current ) );
+
+            try
+            {
+                for ( File run : runs )
+                {
+                    RunReader reader = new RunReader( run );
+                    readers.add( reader );
+
+                    if ( reader.advance() )
+                    {
+                        heads.add( reader );
+                    }
+                }
+            }
+            catch ( IOException ioe )
+            {
+                close();
+                throw ioe;
+            }
+        }
+
+
+        @Override
+        public T next() throws IOException
+        {
+            RunReader reader = heads.poll();
+
+            if ( reader == null )
+            {
+                return null;
+            }
+
+            T record = reader.current;
+
+            if ( reader.advance() )
+            {
+                heads.add( reader );
+            }
+
+            return record;
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            for ( RunReader reader : readers )
+            {
+                reader.close();
+            }
+        }
+    }
+}
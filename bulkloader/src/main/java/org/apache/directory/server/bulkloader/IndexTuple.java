@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+
+
+/**
+ * An index key and the ID of the entry it has been extracted from.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class IndexTuple
+{
+    /** The order of the tuples : by key, then by ID */
+    static final Comparator<IndexTuple> COMPARATOR = ( t1, t2 ) ->
+    {
+        int comparison = t1.key.compareTo( t2.key );
+
+        return comparison != 0 ? comparison : t1.id.compareTo( t2.id );
+    };
+
+    /** The tuples codec */
+    static final RecordCodec<IndexTuple> CODEC = new RecordCodec<IndexTuple>()
+    {
+        @Override
+        public void write( DataOutput out, IndexTuple tuple ) throws IOException
+        {
+            RecordCodec.writeString( out, tuple.key );
+            out.writeUTF( tuple.id );
+        }
+
+
+        @Override
+        public IndexTuple read( DataInput in ) throws IOException
+        {
+            return new IndexTuple( RecordCodec.readString( in ), in.readUTF() );
+        }
+
+
+        @Override
+        public long size( IndexTuple tuple )
+        {
+            return 16L + RecordCodec.sizeOf( tuple.key ) + RecordCodec.sizeOf( tuple.id );
+        }
+    };
+
+    /** The index key */
+    final String key;
+
+    /** The entry ID */
+    final String id;
+
+
+    IndexTuple( String key, String id )
+    {
+        this.key = key;
+        this.id = id;
+    }
+}
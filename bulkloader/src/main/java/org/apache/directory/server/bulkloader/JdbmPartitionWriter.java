@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.File;
+import java.net.URI;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmIndex;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
+import org.apache.directory.server.xdbm.Index;
+
+
+/**
+ * Writes a {@link JdbmPartition}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmPartitionWriter extends PartitionWriter
+{
+    /**
+     * Creates a new instance of JdbmPartitionWriter
+     *
+     * @param schemaManager The schema manager
+     * @param partitionDir The directory where the partition is stored
+     */
+    public JdbmPartitionWriter( SchemaManager schemaManager, File partitionDir )
+    {
+        super( schemaManager, partitionDir );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected AbstractBTreePartition createPartition( DnFactory dnFactory )
+    {
+        return new JdbmPartition( schemaManager, dnFactory );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Index<?, String> createIndex( String oid, URI wkDirPath )
+    {
+        JdbmIndex<String> index = new JdbmIndex<>( oid, true );
+        index.setWkDirPath( wkDirPath );
+
+        return index;
+    }
+}
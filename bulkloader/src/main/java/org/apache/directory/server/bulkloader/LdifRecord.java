@@ -0,0 +1,95 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+
+
+/**
+ * A raw LDIF entry, with its sort key. The key is made of the normalized RDNs, from the
+ * suffix down to the entry, separated by a '\0' char : sorting the keys puts each entry
+ * right before its descendants, so the entries are read in a depth first order.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class LdifRecord
+{
+    /** The separator of the RDNs in the keys, lower than any other char */
+    static final char SEPARATOR = '\0';
+
+    /** The order of the records */
+    static final Comparator<LdifRecord> COMPARATOR = ( r1, r2 ) -> r1.key.compareTo( r2.key );
+
+    /** The records codec */
+    static final RecordCodec<LdifRecord> CODEC = new RecordCodec<LdifRecord>()
+    {
+        @Override
+        public void write( DataOutput out, LdifRecord record ) throws IOException
+        {
+            RecordCodec.writeString( out, record.key );
+            RecordCodec.writeString( out, record.ldif );
+        }
+
+
+        @Override
+        public LdifRecord read( DataInput in ) throws IOException
+        {
+            return new LdifRecord( RecordCodec.readString( in ), RecordCodec.readString( in ) );
+        }
+
+
+        @Override
+        public long size( LdifRecord record )
+        {
+            return 16L + RecordCodec.sizeOf( record.key ) + RecordCodec.sizeOf( record.ldif );
+        }
+    };
+
+    /** The sort key */
+    final String key;
+
+    /** The LDIF text */
+    final String ldif;
+
+
+    LdifRecord( String key, String ldif )
+    {
+        this.key = key;
+        this.ldif = ldif;
+    }
+
+
+    /**
+     * Tells if a key is the key of an ancestor of the entry having another key
+     *
+     * @param key The key of the possible ancestor
+     * @param descendantKey The key of the possible descendant
+     * @return <code>true</code> if the first key is the key of an ancestor
+     */
+    static boolean isAncestor( String key, String descendantKey )
+    {
+        return ( descendantKey.length() > key.length() ) && descendantKey.startsWith( key )
+            && ( descendantKey.charAt( key.length() ) == SEPARATOR );
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+
+/**
+ * Splits a LDIF file in records, without parsing them : the parsing is done by the workers.
+ * The records are separated by empty lines, the comments and the version line are skipped.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifRecordReader implements Closeable
+{
+    /** The size of the file buffer */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The file reader */
+    private final BufferedReader reader;
+
+    /** The number of lines read so far */
+    private long lineNumber;
+
+
+    /**
+     * Creates a new instance of LdifRecordReader
+     *
+     * @param ldifFile The LDIF file to read
+     * @throws IOException If the file can't be opened
+     */
+    public LdifRecordReader( File ldifFile ) throws IOException
+    {
+        reader = new BufferedReader( new InputStreamReader( new FileInputStream( ldifFile ),
+            StandardCharsets.UTF_8 ), BUFFER_SIZE );
+    }
+
+
+    /**
+     * Reads the next record
+     *
+     * @return The record text, or <code>null</code> if the end of the file has been reached
+     * @throws IOException If the file can't be read
+     */
+    public String next() throws IOException
+    {
+        StringBuilder record = new StringBuilder();
+        boolean inComment = false;
+        String line;
+
+        while ( ( line = reader.readLine() ) != null )
+        {
+            lineNumber++;
+
+            if ( line.isEmpty() )
+            {
+                if ( record.length() > 0 )
+                {
+                    return record.toString();
+                }
+
+                inComment = false;
+
+                continue;
+            }
+
+            char first = line.charAt( 0 );
+
+            if ( first == '#' )
+            {
+                inComment = true;
+
+                continue;
+            }
+
+            if ( first == ' ' )
+            {
+                // A folded line, which may be the end of a comment
+                if ( !inComment )
+                {
+                    record.append( line ).append( '\n' );
+                }
+
+                continue;
+            }
+
+            inComment = false;
+
+            if ( ( record.length() == 0 ) && line.regionMatches( true, 0, "version:", 0, 8 ) )
+            {
+                continue;
+            }
+
+            record.append( line ).append( '\n' );
+        }
+
+        return record.length() > 0 ? record.toString() : null;
+    }
+
+
+    /**
+     * @return The number of lines read so far
+     */
+    public long getLineNumber()
+    {
+        return lineNumber;
+    }
+
+
+    /**
+     * Extracts the DN of a record, without parsing it
+     *
+     * @param record The record text
+     * @return The user provided DN, or <code>null</code> if the record does not start with a DN
+     */
+    public static String getDn( String record )
+    {
+        if ( !record.regionMatches( true, 0, "dn:", 0, 3 ) )
+        {
+            return null;
+        }
+
+        // Unfold the first line
+        StringBuilder sb = new StringBuilder();
+        int end = record.indexOf( '\n' );
+        sb.append( record, 3, end );
+
+        while ( ( end + 1 < record.length() ) && ( record.charAt( end + 1 ) == ' ' ) )
+        {
+            int next = record.indexOf( '\n', end + 1 );
+            sb.append( record, end + 2, next );
+            end = next;
+        }
+
+        if ( ( sb.length() > 0 ) && ( sb.charAt( 0 ) == ':' ) )
+        {
+            // A base64 encoded DN
+            byte[] bytes = Base64.getDecoder().decode( sb.substring( 1 ).trim() );
+
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+
+        return sb.toString().trim();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+}
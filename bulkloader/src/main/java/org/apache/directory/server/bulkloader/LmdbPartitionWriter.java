@@ -0,0 +1,99 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.File;
+import java.net.URI;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.lmdb.LmdbIndex;
+import org.apache.directory.server.core.partition.impl.btree.lmdb.LmdbPartition;
+import org.apache.directory.server.xdbm.Index;
+
+
+/**
+ * Writes a {@link LmdbPartition}. The memory map must be large enough to hold the whole
+ * partition, the default one being too small for large loads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartitionWriter extends PartitionWriter
+{
+    /** The maximum size of the memory map */
+    private long mapSize = LmdbPartition.DEFAULT_MAP_SIZE;
+
+    /**
+     * Creates a new instance of LmdbPartitionWriter
+     *
+     * @param schemaManager The schema manager
+     * @param partitionDir The directory where the partition is stored
+     */
+    public LmdbPartitionWriter( SchemaManager schemaManager, File partitionDir )
+    {
+        super( schemaManager, partitionDir );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected AbstractBTreePartition createPartition( DnFactory dnFactory )
+    {
+        LmdbPartition partition = new LmdbPartition( schemaManager, dnFactory );
+        partition.setMapSize( mapSize );
+
+        return partition;
+    }
+
+
+    /**
+     * @return The maximum size of the memory map, in bytes
+     */
+    public long getMapSize()
+    {
+        return mapSize;
+    }
+
+
+    /**
+     * @param mapSize The maximum size of the memory map, in bytes
+     */
+    public void setMapSize( long mapSize )
+    {
+        this.mapSize = mapSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Index<?, String> createIndex( String oid, URI wkDirPath )
+    {
+        LmdbIndex<String> index = new LmdbIndex<>( oid, true );
+        index.setWkDirPath( wkDirPath );
+
+        return index;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+/**
+ * Command line options for bulk loader.
+ * 
+ * Here are the various options :
+ * <ul>
+ * <li>-b : the backend, jdbm, mavibot or lmdb</li>
+ * <li>-clean : delete the content of the output directory</li>
+ * <li>-h : gives the list of possible options</li>
+ * <li>-i : the LDIF file to be loaded</li>
+ * <li>-id : the partition ID</li>
+ * <li>-index : the attributes to index</li>
+ * <li>-m : the memory used to sort the entries and the indexes</li>
+ * <li>-mapsize : the LMDB memory map size</li>
+ * <li>-o : the directory where the resulting partition will be stored</li>
+ * <li>-rid : the replica ID</li>
+ * <li>-suffix : the partition suffix</li>
+ * <li>-t : the number of threads</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum Option
+{
+    HELP("-h", "Prints the details of the options"),
+
+    INPUT_FILE("-i", "Path of the LDIF file to be used as input"),
+
+    OUT_DIR("-o", "Path of the directory where the partition will be stored"),
+
+    CLEAN_OUT_DIR("-clean", "Deletes the output directory's contents if present"),
+
+    BACKEND("-b", "(optional) The partition backend, jdbm, mavibot or lmdb, default is jdbm"),
+
+    PARTITION_ID("-id", "(optional) The partition ID, default is the output directory name"),
+
+    SUFFIX("-suffix", "(optional) The partition suffix, default is the DN of the topmost entry"),
+
+    INDEXES("-index", "(optional) Comma separated list of the attributes to index, which must be the same as "
+        + "the partition configuration ones. The system indexes are always created"),
+
+    MEMORY("-m", "(optional) The memory used to sort the entries and the indexes, in MB, default is a "
+        + "quarter of the heap"),
+
+    THREADS("-t", "(optional) The number of threads parsing and sorting the entries, default is the number "
+        + "of processors"),
+
+    MAP_SIZE("-mapsize", "(optional) The LMDB memory map size, in MB, default is 1024"),
+
+    DS_RID("-rid", "(optional) The RID value to be used in the entryCSN values, default is 1"),
+
+    UNKNOWN(null, "Unknown Option");
+
+    private String text;
+    private String desc;
+
+
+    private Option( String text, String desc )
+    {
+        this.text = text;
+        this.desc = desc;
+    }
+
+
+    public String getText()
+    {
+        return text;
+    }
+
+
+    public String getDesc()
+    {
+        return desc;
+    }
+
+
+    public static Option getOpt( String opt )
+    {
+        if ( opt == null )
+        {
+            return UNKNOWN;
+        }
+
+        opt = opt.trim();
+
+        for ( Option option : values() )
+        {
+            if ( opt.equalsIgnoreCase( option.text ) )
+            {
+                return option;
+            }
+        }
+
+        return UNKNOWN;
+    }
+}
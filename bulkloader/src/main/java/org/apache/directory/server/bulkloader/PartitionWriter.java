@@ -0,0 +1,209 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collection;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.Index;
+
+
+/**
+ * Creates the partition the {@link BulkLoader} writes to. There is one implementation per
+ * btree backend.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public abstract class PartitionWriter
+{
+    /** The size of the DN factory cache */
+    private static final int DN_CACHE_SIZE = 10000;
+
+    /** The schema manager */
+    protected final SchemaManager schemaManager;
+
+    /** The directory where the partition is stored */
+    private final File partitionDir;
+
+    /** The partition being written */
+    private AbstractBTreePartition partition;
+
+
+    /**
+     * Creates a new instance of PartitionWriter
+     *
+     * @param schemaManager The schema manager
+     * @param partitionDir The directory where the partition is stored
+     */
+    protected PartitionWriter( SchemaManager schemaManager, File partitionDir )
+    {
+        this.schemaManager = schemaManager;
+        this.partitionDir = partitionDir;
+    }
+
+
+    /**
+     * Creates a writer for a backend
+     *
+     * @param backend The backend name : jdbm, mavibot or lmdb
+     * @param schemaManager The schema manager
+     * @param partitionDir The directory where the partition is stored
+     * @return The writer
+     */
+    public static PartitionWriter create( String backend, SchemaManager schemaManager, File partitionDir )
+    {
+        switch ( backend.toLowerCase() )
+        {
+            case "jdbm":
+                return new JdbmPartitionWriter( schemaManager, partitionDir );
+
+            case "mavibot":
+                return new MavibotPartitionWriter( schemaManager, partitionDir );
+
+            case "lmdb":
+                return new LmdbPartitionWriter( schemaManager, partitionDir );
+
+            default:
+                throw new IllegalArgumentException( "Unknown backend " + backend
+                    + ", expected jdbm, mavibot or lmdb" );
+        }
+    }
+
+
+    /**
+     * Creates the partition, which is not yet initialized
+     *
+     * @param dnFactory The DN factory
+     * @return The partition
+     */
+    protected abstract AbstractBTreePartition createPartition( DnFactory dnFactory );
+
+
+    /**
+     * Creates a user index
+     *
+     * @param oid The indexed AttributeType OID
+     * @param wkDirPath The directory where the index is stored
+     * @return The index
+     */
+    protected abstract Index<?, String> createIndex( String oid, URI wkDirPath );
+
+
+    /**
+     * Gives the number of indexes which can be written at the same time. The btree stores all
+     * have a single writer, so it's 1 unless a backend says otherwise.
+     *
+     * @return The number of indexes which can be written at the same time
+     */
+    public int getWriteConcurrency()
+    {
+        return 1;
+    }
+
+
+    /**
+     * Creates and initializes the partition
+     *
+     * @param partitionId The partition ID
+     * @param suffixDn The partition suffix
+     * @param indexedAttributes The attributes to index, besides the system indexes
+     * @return The initialized partition
+     * @throws LdapException If the partition can't be initialized
+     */
+    public AbstractBTreePartition open( String partitionId, Dn suffixDn, Collection<String> indexedAttributes )
+        throws LdapException
+    {
+        if ( !partitionDir.exists() && !partitionDir.mkdirs() )
+        {
+            throw new LdapException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, partitionDir ) );
+        }
+
+        DnFactory dnFactory = new DefaultDnFactory( schemaManager, DN_CACHE_SIZE );
+        AbstractBTreePartition newPartition = createPartition( dnFactory );
+        URI partitionPath = partitionDir.toURI();
+
+        newPartition.setId( partitionId );
+        newPartition.setSuffixDn( suffixDn );
+        newPartition.setPartitionPath( partitionPath );
+
+        // The loader commits the transactions itself
+        newPartition.setSyncOnWrite( false );
+
+        for ( String attributeId : indexedAttributes )
+        {
+            AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry( attributeId );
+            newPartition.addIndex( createIndex( attributeType.getOid(), partitionPath ) );
+        }
+
+        newPartition.initialize();
+        partition = newPartition;
+
+        return partition;
+    }
+
+
+    /**
+     * @return The partition being written
+     */
+    public AbstractBTreePartition getPartition()
+    {
+        return partition;
+    }
+
+
+    /**
+     * @return The directory where the partition is stored
+     */
+    public File getPartitionDir()
+    {
+        return partitionDir;
+    }
+
+
+    /**
+     * Flushes and closes the partition
+     *
+     * @throws LdapException If the partition can't be closed
+     */
+    public void close() throws LdapException
+    {
+        if ( partition != null )
+        {
+            try
+            {
+                partition.destroy( partition.beginReadTransaction() );
+            }
+            finally
+            {
+                partition = null;
+            }
+        }
+    }
+}
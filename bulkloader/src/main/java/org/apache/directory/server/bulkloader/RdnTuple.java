@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+
+
+/**
+ * An entry of the RDN index : the entry ID, its parent ID and its RDN, along with the
+ * number of children and descendants of the entry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class RdnTuple
+{
+    /** The order of the tuples : by parent ID, then by normalized RDN */
+    static final Comparator<RdnTuple> COMPARATOR = ( t1, t2 ) ->
+    {
+        int comparison = t1.parentId.compareTo( t2.parentId );
+
+        return comparison != 0 ? comparison : t1.normRdn.compareTo( t2.normRdn );
+    };
+
+    /** The tuples codec */
+    static final RecordCodec<RdnTuple> CODEC = new RecordCodec<RdnTuple>()
+    {
+        @Override
+        public void write( DataOutput out, RdnTuple tuple ) throws IOException
+        {
+            out.writeUTF( tuple.parentId );
+            RecordCodec.writeString( out, tuple.normRdn );
+            RecordCodec.writeString( out, tuple.rdn );
+            out.writeInt( tuple.nbChildren );
+            out.writeInt( tuple.nbDescendants );
+            out.writeUTF( tuple.id );
+        }
+
+
+        @Override
+        public RdnTuple read( DataInput in ) throws IOException
+        {
+            return new RdnTuple( in.readUTF(), RecordCodec.readString( in ), RecordCodec.readString( in ),
+                in.readInt(), in.readInt(), in.readUTF() );
+        }
+
+
+        @Override
+        public long size( RdnTuple tuple )
+        {
+            return 32L + RecordCodec.sizeOf( tuple.parentId ) + RecordCodec.sizeOf( tuple.normRdn )
+                + RecordCodec.sizeOf( tuple.rdn ) + RecordCodec.sizeOf( tuple.id );
+        }
+    };
+
+    /** The parent ID */
+    final String parentId;
+
+    /** The normalized RDN, or RDNs for the suffix */
+    final String normRdn;
+
+    /** The user provided RDN, or RDNs for the suffix */
+    final String rdn;
+
+    /** The number of children */
+    final int nbChildren;
+
+    /** The number of descendants */
+    final int nbDescendants;
+
+    /** The entry ID */
+    final String id;
+
+
+    RdnTuple( String parentId, String normRdn, String rdn, int nbChildren, int nbDescendants, String id )
+    {
+        this.parentId = parentId;
+        this.normRdn = normRdn;
+        this.rdn = rdn;
+        this.nbChildren = nbChildren;
+        this.nbDescendants = nbDescendants;
+        this.id = id;
+    }
+}
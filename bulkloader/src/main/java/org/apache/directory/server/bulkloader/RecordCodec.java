@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Writes and reads the records sorted by an {@link ExternalSorter} to and from its run files.
+ *
+ * @param <T> The record type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface RecordCodec<T>
+{
+    /**
+     * Writes a record
+     *
+     * @param out The stream to write to
+     * @param record The record to write
+     * @throws IOException If the record can't be written
+     */
+    void write( DataOutput out, T record ) throws IOException;
+
+
+    /**
+     * Reads a record
+     *
+     * @param in The stream to read from
+     * @return The record
+     * @throws IOException If the record can't be read
+     */
+    T read( DataInput in ) throws IOException;
+
+
+    /**
+     * Gives an estimate of the heap used by a record, which is charged to the memory budget
+     * while the record is buffered
+     *
+     * @param record The record
+     * @return The estimated size, in bytes
+     */
+    long size( T record );
+
+
+    /**
+     * Writes a String of any length, {@link DataOutput#writeUTF(String)} being limited to 64Kb
+     *
+     * @param out The stream to write to
+     * @param value The String to write, may be null
+     * @throws IOException If the String can't be written
+     */
+    static void writeString( DataOutput out, String value ) throws IOException
+    {
+        if ( value == null )
+        {
+            out.writeInt( -1 );
+
+            return;
+        }
+
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    /**
+     * Reads a String written by {@link #writeString(DataOutput, String)}
+     *
+     * @param in The stream to read from
+     * @return The String, may be null
+     * @throws IOException If the String can't be read
+     */
+    static String readString( DataInput in ) throws IOException
+    {
+        int length = in.readInt();
+
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+
+    /**
+     * Gives an estimate of the heap used by a String
+     *
+     * @param value The String, may be null
+     * @return The estimated size, in bytes
+     */
+    static long sizeOf( String value )
+    {
+        return value == null ? 0L : 40L + 2L * value.length();
+    }
+}
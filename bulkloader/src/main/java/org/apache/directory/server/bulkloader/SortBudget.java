@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The heap shared by the {@link ExternalSorter}s of a load. When half of it is used by the
+ * buffered records, the largest buffer is sorted and written to a run file in the background,
+ * and the thread adding the records waits for the runs being written when the whole budget
+ * is used.
+ * <br>
+ * The sorters sharing a budget must be fed by the same thread, as any of them may be asked to
+ * spill its buffer when a record is added to another one.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SortBudget
+{
+    /** The smallest budget we accept */
+    private static final long MIN_LIMIT = 1024L * 1024L;
+
+    /** The budget, in bytes */
+    private final long limit;
+
+    /** The sorters using this budget */
+    private final List<ExternalSorter<?>> sorters = new ArrayList<>();
+
+    /** The bytes held by the sorters buffers */
+    private long buffered;
+
+    /** The bytes held by the buffers being written */
+    private long inFlight;
+
+
+    /**
+     * Creates a new instance of SortBudget
+     *
+     * @param limit The number of bytes the sorters can use
+     */
+    public SortBudget( long limit )
+    {
+        this.limit = Math.max( limit, MIN_LIMIT );
+    }
+
+
+    /**
+     * @return The number of bytes the sorters can use
+     */
+    public long getLimit()
+    {
+        return limit;
+    }
+
+
+    /**
+     * @return The number of bytes currently used by the sorters
+     */
+    public synchronized long getUsed()
+    {
+        return buffered + inFlight;
+    }
+
+
+    synchronized void register( ExternalSorter<?> sorter )
+    {
+        sorters.add( sorter );
+    }
+
+
+    synchronized void unregister( ExternalSorter<?> sorter )
+    {
+        sorters.remove( sorter );
+    }
+
+
+    /**
+     * Charges a record added to a sorter buffer
+     *
+     * @param size The estimated record size
+     * @throws IOException If a buffer can't be spilled, or if we have been interrupted
+     */
+    void charge( long size ) throws IOException
+    {
+        ExternalSorter<?> largest = null;
+
+        synchronized ( this )
+        {
+            buffered += size;
+
+            if ( buffered > limit / 2 )
+            {
+                for ( ExternalSorter<?> sorter : sorters )
+                {
+                    if ( ( largest == null ) || ( sorter.getBufferedBytes() > largest.getBufferedBytes() ) )
+                    {
+                        largest = sorter;
+                    }
+                }
+            }
+        }
+
+        if ( largest != null )
+        {
+            largest.spill();
+        }
+
+        synchronized ( this )
+        {
+            try
+            {
+                while ( ( buffered + inFlight > limit ) && ( inFlight > 0 ) )
+                {
+                    wait();
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while waiting for the runs to be written" );
+            }
+        }
+    }
+
+
+    /**
+     * Moves a buffer from the buffered bytes to the bytes being written
+     */
+    synchronized void spilling( long size )
+    {
+        buffered -= size;
+        inFlight += size;
+    }
+
+
+    /**
+     * Releases a buffer which has been written
+     */
+    synchronized void spilled( long size )
+    {
+        inFlight -= size;
+        notifyAll();
+    }
+
+
+    /**
+     * Releases a buffer which has been dropped
+     */
+    synchronized void release( long size )
+    {
+        buffered -= size;
+        notifyAll();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.bulkloader;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the BulkLoader, and the external sort it is built on.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BulkLoaderTest
+{
+    /** The entries, in no particular order, with a missing parent and a duplicate */
+    private static final String LDIF =
+        "version: 1\n"
+        + "\n"
+        + "# The people\n"
+        + "#  of the test partition\n"
+        + "dn: uid=jdoe,ou=people,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: person\n"
+        + "objectClass: inetOrgPerson\n"
+        + "cn: John Doe\n"
+        + "sn: Doe\n"
+        + "uid: jdoe\n"
+        + "\n"
+        + "dn: ou=people,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: organizationalUnit\n"
+        + "ou: people\n"
+        + "\n"
+        + "dn: ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: organizationalUnit\n"
+        + "ou: test\n"
+        + "\n"
+        + "dn:: dWlkPWpzbWl0aCxvdT1wZW9wbGUsb3U9dGVzdA==\n"
+        + "objectClass: top\n"
+        + "objectClass: person\n"
+        + "objectClass: inetOrgPerson\n"
+        + "cn: John Smith\n"
+        + "sn: Smith\n"
+        + "uid: jsmith\n"
+        + "\n"
+        + "dn: uid=folded,ou=peo\n"
+        + " ple,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: person\n"
+        + "objectClass: inetOrgPerson\n"
+        + "cn: Folded\n"
+        + "sn: Folded\n"
+        + "uid: folded\n"
+        + "\n"
+        + "dn: cn=alias,ou=groups,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: alias\n"
+        + "objectClass: extensibleObject\n"
+        + "cn: alias\n"
+        + "aliasedObjectName: uid=jdoe,ou=people,ou=test\n"
+        + "\n"
+        + "dn: ou=groups,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: organizationalUnit\n"
+        + "ou: groups\n"
+        + "\n"
+        + "dn: uid=orphan,ou=missing,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: person\n"
+        + "objectClass: inetOrgPerson\n"
+        + "cn: Orphan\n"
+        + "sn: Orphan\n"
+        + "uid: orphan\n"
+        + "\n"
+        + "dn: ou=people,ou=test\n"
+        + "objectClass: top\n"
+        + "objectClass: organizationalUnit\n"
+        + "ou: people\n";
+
+    /** The temporary directory the files will be created in */
+    private static Path tempDir;
+
+    private static SchemaManager schemaManager;
+
+    private static File ldifFile;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        tempDir = Files.createTempDirectory( BulkLoaderTest.class.getSimpleName() );
+
+        File schemaRepository = new File( tempDir.toFile(), "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( tempDir.toFile() );
+        extractor.extractOrCopy( true );
+        schemaManager = new DefaultSchemaManager( new LdifSchemaLoader( schemaRepository ) );
+
+        if ( !schemaManager.loadAllEnabled() )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        ldifFile = new File( tempDir.toFile(), "test.ldif" );
+        Files.write( ldifFile.toPath(), LDIF.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+
+    @AfterClass
+    public static void cleanup() throws Exception
+    {
+        FileUtils.deleteDirectory( tempDir.toFile() );
+    }
+
+
+    @Test
+    public void testSorter() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        SortBudget budget = new SortBudget( 1024L * 1024L );
+        Random random = new Random( 42L );
+
+        try ( ExternalSorter<IndexTuple> sorter = new ExternalSorter<>( "test", IndexTuple.COMPARATOR,
+            IndexTuple.CODEC, budget, tempDir.toFile(), executor ) )
+        {
+            for ( int i = 0; i < 100000; i++ )
+            {
+                sorter.add( new IndexTuple( Integer.toString( random.nextInt( 1000 ) ), Integer.toString( i ) ) );
+                assertTrue( budget.getUsed() <= budget.getLimit() + 1024L );
+            }
+
+            assertEquals( 100000L, sorter.getCount() );
+
+            try ( ExternalSorter.RecordIterator<IndexTuple> sorted = sorter.sort() )
+            {
+                IndexTuple previous = null;
+                IndexTuple tuple;
+                int count = 0;
+
+                while ( ( tuple = sorted.next() ) != null )
+                {
+                    if ( previous != null )
+                    {
+                        assertTrue( IndexTuple.COMPARATOR.compare( previous, tuple ) <= 0 );
+                    }
+
+                    previous = tuple;
+                    count++;
+                }
+
+                assertEquals( 100000, count );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // All the runs have been deleted
+        assertEquals( 0, tempDir.toFile().listFiles( ( dir, name ) -> name.endsWith( ".run" ) ).length );
+    }
+
+
+    @Test
+    public void testLdifRecordReader() throws Exception
+    {
+        try ( LdifRecordReader reader = new LdifRecordReader( ldifFile ) )
+        {
+            String record = reader.next();
+            assertTrue( record.startsWith( "dn: uid=jdoe,ou=people,ou=test\n" ) );
+            assertEquals( "uid=jdoe,ou=people,ou=test", LdifRecordReader.getDn( record ) );
+
+            assertEquals( "ou=people,ou=test", LdifRecordReader.getDn( reader.next() ) );
+            assertEquals( "ou=test", LdifRecordReader.getDn( reader.next() ) );
+            assertEquals( "uid=jsmith,ou=people,ou=test", LdifRecordReader.getDn( reader.next() ) );
+            assertEquals( "uid=folded,ou=people,ou=test", LdifRecordReader.getDn( reader.next() ) );
+
+            int count = 5;
+
+            while ( reader.next() != null )
+            {
+                count++;
+            }
+
+            assertEquals( 9, count );
+        }
+    }
+
+
+    @Test
+    public void testLoadJdbm() throws Exception
+    {
+        testLoad( "jdbm" );
+    }
+
+
+    @Test
+    public void testLoadMavibot() throws Exception
+    {
+        testLoad( "mavibot" );
+    }
+
+
+    @Test
+    public void testLoadLmdb() throws Exception
+    {
+        testLoad( "lmdb" );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private void testLoad( String backend ) throws Exception
+    {
+        File partitionDir = new File( tempDir.toFile(), backend );
+        BulkLoader loader = new BulkLoader( schemaManager,
+            PartitionWriter.create( backend, schemaManager, partitionDir ) );
+        loader.setIndexedAttributes( Arrays.asList( "uid" ) );
+        loader.setThreads( 2 );
+        loader.setTmpDir( tempDir.toFile() );
+
+        // The orphan and the duplicate are skipped
+        assertEquals( 7L, loader.load( ldifFile ) );
+
+        Dn suffixDn = new Dn( schemaManager, "ou=test" );
+        PartitionWriter reader = PartitionWriter.create( backend, schemaManager, partitionDir );
+        AbstractBTreePartition partition = reader.open( backend, suffixDn, Arrays.asList( "uid" ) );
+
+        try
+        {
+            PartitionTxn txn = partition.beginReadTransaction();
+
+            assertEquals( 7L, partition.getMasterTable().count( txn ) );
+
+            // The RDN index
+            Index<ParentIdAndRdn, String> rdnIdx = partition.getRdnIndex();
+            String suffixId = rdnIdx.forwardLookup( txn, new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() ) );
+            assertNotNull( suffixId );
+            ParentIdAndRdn suffix = rdnIdx.reverseLookup( txn, suffixId );
+            assertEquals( 2, suffix.getNbChildren() );
+            assertEquals( 6, suffix.getNbDescendants() );
+
+            String peopleId = rdnIdx.forwardLookup( txn,
+                new ParentIdAndRdn( suffixId, new Rdn( schemaManager, "ou=People" ) ) );
+            assertNotNull( peopleId );
+            assertEquals( 3, rdnIdx.reverseLookup( txn, peopleId ).getNbChildren() );
+
+            String groupsId = rdnIdx.forwardLookup( txn,
+                new ParentIdAndRdn( suffixId, new Rdn( schemaManager, "ou=groups" ) ) );
+            assertNull( rdnIdx.forwardLookup( txn,
+                new ParentIdAndRdn( suffixId, new Rdn( schemaManager, "ou=missing" ) ) ) );
+
+            // The user and system indexes
+            Index<?, String> uidIdx = partition.getUserIndex( schemaManager.getAttributeType( "uid" ) );
+            String jdoeId = ( ( Index<String, String> ) uidIdx ).forwardLookup( txn, "jdoe" );
+            assertNotNull( jdoeId );
+            assertEquals( 3L, uidIdx.count( txn ) );
+            assertEquals( 3L, partition.getPresenceIndex().count( txn, SchemaConstants.UID_AT_OID ) );
+            // The top ObjectClass is not indexed
+            assertEquals( 11L, partition.getObjectClassIndex().count( txn ) );
+            assertEquals( 7L, partition.getEntryCsnIndex().count( txn ) );
+
+            Entry jdoe = partition.getMasterTable().get( txn, jdoeId );
+            assertEquals( peopleId, jdoe.get( ApacheSchemaConstants.ENTRY_PARENT_ID_AT ).getString() );
+            assertEquals( jdoeId, jdoe.get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+            assertNotNull( jdoe.get( SchemaConstants.ENTRY_CSN_AT ) );
+            assertNotNull( jdoe.get( SchemaConstants.CREATE_TIMESTAMP_AT ) );
+
+            // The alias indexes
+            String aliasId = partition.getAliasIndex().forwardLookup( txn,
+                new Dn( schemaManager, "uid=jdoe,ou=people,ou=test" ) );
+            assertNotNull( aliasId );
+            assertEquals( jdoeId, partition.getOneAliasIndex().forwardLookup( txn, groupsId ) );
+            assertEquals( jdoeId, partition.getSubAliasIndex().forwardLookup( txn, groupsId ) );
+
+            // The context entry holds the highest CSN
+            assertNotNull( partition.getMasterTable().get( txn, suffixId ).get( SchemaConstants.CONTEXT_CSN_AT ) );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+
+    @Test
+    public void testLoadWithRuns() throws Exception
+    {
+        File partitionDir = new File( tempDir.toFile(), "runs" );
+        BulkLoader loader = new BulkLoader( schemaManager,
+            PartitionWriter.create( "jdbm", schemaManager, partitionDir ) );
+        loader.setIndexedAttributes( Arrays.asList( "uid", "mail" ) );
+        loader.setMemoryBudget( 1024L * 1024L );
+        loader.setTmpDir( tempDir.toFile() );
+
+        File ldif = new File( BulkLoaderTest.class.getResource( "/30k.ldif" ).toURI() );
+        assertEquals( 30002L, loader.load( ldif ) );
+
+        Dn suffixDn = new Dn( schemaManager, "dc=example,dc=com" );
+        PartitionWriter reader = PartitionWriter.create( "jdbm", schemaManager, partitionDir );
+        AbstractBTreePartition partition = reader.open( "runs", suffixDn, Arrays.asList( "uid", "mail" ) );
+
+        try
+        {
+            PartitionTxn txn = partition.beginReadTransaction();
+
+            assertEquals( 30002L, partition.getMasterTable().count( txn ) );
+            assertEquals( 30000L, partition.getUserIndex( schemaManager.getAttributeType( "uid" ) ).count( txn ) );
+
+            String suffixId = partition.getRdnIndex().forwardLookup( txn,
+                new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() ) );
+            assertEquals( 30001, partition.getRdnIndex().reverseLookup( txn, suffixId ).getNbDescendants() );
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        assertEquals( Collections.emptyList(), Arrays.asList( tempDir.toFile().listFiles(
+            ( dir, name ) -> name.startsWith( "bulkloader" ) ) ) );
+    }
+}
@@ -48,6 +48,7 @@ import org.apache.directory.server.core.api.changelog.LogChange;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 
 
 /**
@@ -792,6 +793,20 @@ public interface CoreSession
     Cursor<Entry> search( SearchRequest searchRequest ) throws LdapException;
 
 
+    /**
+     * Searches the directory, resuming a previous search with the same request after the
+     * position of the last entry it returned. The partition may not be able to move its
+     * candidates there, the returned cursor then starts from the first entry : the caller
+     * has to check the operation context of the cursor to know if the search has been resumed.
+     *
+     * @param searchRequest The search request
+     * @param resumePosition The position of the last entry returned by the previous search
+     * @return A cursor to browse the search results
+     * @throws LdapException if there are failures while searching
+     */
+    Cursor<Entry> search( SearchRequest searchRequest, SearchPosition resumePosition ) throws LdapException;
+
+
     /**
      * Unbind from the current LdapSession.
      * 
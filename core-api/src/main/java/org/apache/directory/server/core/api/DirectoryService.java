@@ -42,6 +42,7 @@ import org.apache.directory.server.core.api.entry.ServerEntryFactory;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -579,6 +580,22 @@ public interface DirectoryService extends ServerEntryFactory
     long getSyncPeriodMillis();
 
 
+    /**
+     * Sets the memory budget of a server side sort. The entries of a sorted search are
+     * sorted in memory until their estimated size reaches this budget, and are then
+     * written on disk and merged.
+     *
+     * @param sortMemoryBudget the memory budget of a sort, in bytes
+     */
+    void setSortMemoryBudget( long sortMemoryBudget );
+
+
+    /**
+     * @return the memory budget of a server side sort, in bytes
+     */
+    long getSortMemoryBudget();
+
+
     /**
      * @return The AccessControl AdministrativePoint cache
      */
@@ -655,4 +672,12 @@ public interface DirectoryService extends ServerEntryFactory
      * @param timeProvider the time provider
      */
     void setTimeProvider( TimeProvider timeProvider );
+
+
+    /**
+     * Gets the metrics of the operations processed by this service.
+     * 
+     * @return the operation metrics
+     */
+    OperationMetrics getOperationMetrics();
 }
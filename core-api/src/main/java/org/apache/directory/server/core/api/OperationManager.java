@@ -38,6 +38,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveOperationCon
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
 
 
 /**
@@ -171,31 +172,39 @@ public interface OperationManager
 
 
     /**
-     * Acquires a WriteLock
+     * Acquires the server wide WriteLock. No other operation can be processed on
+     * any partition until it is released.
      */
     void lockWrite();
 
 
     /**
-     * Releases a WriteLock
+     * Releases the server wide WriteLock
      */
     void unlockWrite();
 
 
     /**
-     * Acquires a ReadLock
+     * Acquires the server wide ReadLock
      */
     void lockRead();
 
 
     /**
-     * Releases a ReadLock
+     * Releases the server wide ReadLock
      */
     void unlockRead();
 
 
     /**
-     * @return the OperationManager R/W lock
+     * @return the OperationManager server wide R/W lock
      */
     ReadWriteLock getRWLock();
+
+
+    /**
+     * @param partition The partition we want the lock for
+     * @return the R/W lock protecting the given partition against concurrent modifications
+     */
+    ReadWriteLock getRWLock( Partition partition );
 }
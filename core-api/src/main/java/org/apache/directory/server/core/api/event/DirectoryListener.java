@@ -89,4 +89,27 @@ public interface DirectoryListener
      * @return true if should be invoked synchronously, false otherwise
      */
     boolean isSynchronous();
+
+
+    /**
+     * Tells if the overflow policy of the event service applies to this asynchronous
+     * listener : when it can't keep up with the changes, some of them may be dropped, or
+     * the listener may be removed (see {@link #overflowed()}). Otherwise, the writers wait
+     * for the listener to catch up. The server internal listeners must not lose changes.
+     *
+     * @return true if the listener accepts to lose changes, false by default
+     */
+    default boolean acceptsOverflow()
+    {
+        return false;
+    }
+
+
+    /**
+     * Called when an asynchronous listener has been removed from the event service,
+     * because it could not keep up with the changes. Does nothing by default.
+     */
+    default void overflowed()
+    {
+    }
 }
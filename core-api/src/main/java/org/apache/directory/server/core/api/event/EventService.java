@@ -57,4 +57,14 @@ public interface EventService
      * @return The list of registration entries
      */
     List<RegistrationEntry> getRegistrationEntries();
+
+
+    /**
+     * Waits until the asynchronous listeners which can't lose changes have room for new
+     * ones. The writers call it once they have released their locks, as the changes are
+     * queued without waiting. Does nothing by default.
+     */
+    default void awaitDelivery()
+    {
+    }
 }
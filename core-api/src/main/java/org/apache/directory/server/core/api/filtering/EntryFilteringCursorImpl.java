@@ -34,10 +34,16 @@ import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.OperationAbandonedException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.entry.ServerEntryUtils;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -272,6 +278,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
 
         wrapped.close();
         prefetched = null;
+        logSlowSearch();
     }
 
 
@@ -287,6 +294,74 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
 
         wrapped.close( reason );
         prefetched = null;
+        logSlowSearch();
+    }
+
+
+    /**
+     * Applies a filter to an entry, adding the time it takes to the profile of the search
+     */
+    private boolean accept( EntryFilter filter, Entry entry ) throws LdapException
+    {
+        OperationProfile profile = operationContext.getProfile();
+
+        if ( profile == null )
+        {
+            return filter.accept( operationContext, entry );
+        }
+
+        long start = System.nanoTime();
+
+        try
+        {
+            return filter.accept( operationContext, entry );
+        }
+        finally
+        {
+            profile.addTime( filter.getClass().getSimpleName(), System.nanoTime() - start );
+        }
+    }
+
+
+    /**
+     * Logs the search if it has been profiled and it's slow, now that all its entries have
+     * been read. The paged and persistent searches are not logged, as they include the time
+     * the client waits between two pages or two changes.
+     */
+    private void logSlowSearch()
+    {
+        OperationProfile profile = operationContext.getProfile();
+
+        if ( profile == null )
+        {
+            return;
+        }
+
+        if ( operationContext.hasRequestControl( PagedResults.OID )
+            || operationContext.hasRequestControl( PersistentSearch.OID ) )
+        {
+            operationContext.setProfile( null );
+
+            return;
+        }
+
+        CoreSession session = operationContext.getSession();
+
+        try
+        {
+            if ( ( session != null ) && ( session.getDirectoryService() != null )
+                && ( session.getDirectoryService().getOperationMetrics() != null ) )
+            {
+                session.getDirectoryService().getOperationMetrics().getSlowOperationLog().record(
+                    OperationEnum.SEARCH.getMethodName(), operationContext, ResultCodeEnum.SUCCESS,
+                    profile.getElapsedNanos() );
+            }
+        }
+        finally
+        {
+            // Don't log the search twice
+            operationContext.setProfile( null );
+        }
     }
 
 
@@ -436,7 +511,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
                 return true;
             }
 
-            if ( ( filters.size() == 1 ) && filters.get( 0 ).accept( operationContext, tempResult ) )
+            if ( ( filters.size() == 1 ) && accept( filters.get( 0 ), tempResult ) )
             {
                 prefetched = tempResult;
                 ServerEntryUtils.filterContents(
@@ -450,7 +525,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
             for ( EntryFilter filter : filters )
             {
                 // if a filter rejects then short and continue with outer loop
-                if ( !filter.accept( operationContext, tempResult ) )
+                if ( !accept( filter, tempResult ) )
                 {
                     continue outer;
                 }
@@ -522,7 +597,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
                 return true;
             }
 
-            if ( ( filters.size() == 1 ) && filters.get( 0 ).accept( operationContext, tempResult ) )
+            if ( ( filters.size() == 1 ) && accept( filters.get( 0 ), tempResult ) )
             {
                 prefetched = tempResult;
                 ServerEntryUtils.filterContents(
@@ -537,7 +612,7 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
             for ( EntryFilter filter : filters )
             {
                 // if a filter rejects then short and continue with outer loop
-                if ( !filter.accept( operationContext, tempResult ) )
+                if ( !accept( filter, tempResult ) )
                 {
                     continue outer;
                 }
@@ -46,6 +46,7 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 
 
@@ -316,6 +317,22 @@ public abstract class BaseInterceptor implements Interceptor
     }
 
 
+    /**
+     * Tells the profile of an operation, if any, that the next interceptor has returned
+     * 
+     * @param operationContext The operation context
+     */
+    private static void exitInterceptor( OperationContext operationContext )
+    {
+        OperationProfile profile = operationContext.getProfile();
+
+        if ( profile != null )
+        {
+            profile.exit();
+        }
+    }
+
+
     // ------------------------------------------------------------------------
     // Interceptor's Invoke Method
     // ------------------------------------------------------------------------
@@ -338,7 +355,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( addContext );
 
-        interceptor.add( addContext );
+        try
+        {
+            interceptor.add( addContext );
+        }
+        finally
+        {
+            exitInterceptor( addContext );
+        }
     }
 
 
@@ -361,7 +385,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( bindContext );
 
-        interceptor.bind( bindContext );
+        try
+        {
+            interceptor.bind( bindContext );
+        }
+        finally
+        {
+            exitInterceptor( bindContext );
+        }
     }
 
 
@@ -383,7 +414,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( compareContext );
 
-        return interceptor.compare( compareContext );
+        try
+        {
+            return interceptor.compare( compareContext );
+        }
+        finally
+        {
+            exitInterceptor( compareContext );
+        }
     }
 
 
@@ -406,7 +444,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( deleteContext );
 
-        interceptor.delete( deleteContext );
+        try
+        {
+            interceptor.delete( deleteContext );
+        }
+        finally
+        {
+            exitInterceptor( deleteContext );
+        }
     }
 
 
@@ -431,7 +476,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( getRootDseContext );
 
-        return interceptor.getRootDse( getRootDseContext );
+        try
+        {
+            return interceptor.getRootDse( getRootDseContext );
+        }
+        finally
+        {
+            exitInterceptor( getRootDseContext );
+        }
     }
 
 
@@ -456,7 +508,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( hasEntryContext );
 
-        return interceptor.hasEntry( hasEntryContext );
+        try
+        {
+            return interceptor.hasEntry( hasEntryContext );
+        }
+        finally
+        {
+            exitInterceptor( hasEntryContext );
+        }
     }
 
 
@@ -480,7 +539,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( lookupContext );
 
-        return interceptor.lookup( lookupContext );
+        try
+        {
+            return interceptor.lookup( lookupContext );
+        }
+        finally
+        {
+            exitInterceptor( lookupContext );
+        }
     }
 
 
@@ -503,7 +569,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( modifyContext );
 
-        interceptor.modify( modifyContext );
+        try
+        {
+            interceptor.modify( modifyContext );
+        }
+        finally
+        {
+            exitInterceptor( modifyContext );
+        }
     }
 
 
@@ -526,7 +599,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( moveContext );
 
-        interceptor.move( moveContext );
+        try
+        {
+            interceptor.move( moveContext );
+        }
+        finally
+        {
+            exitInterceptor( moveContext );
+        }
     }
 
 
@@ -546,7 +626,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( moveAndRenameContext );
 
-        interceptor.moveAndRename( moveAndRenameContext );
+        try
+        {
+            interceptor.moveAndRename( moveAndRenameContext );
+        }
+        finally
+        {
+            exitInterceptor( moveAndRenameContext );
+        }
     }
 
 
@@ -569,7 +656,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( renameContext );
 
-        interceptor.rename( renameContext );
+        try
+        {
+            interceptor.rename( renameContext );
+        }
+        finally
+        {
+            exitInterceptor( renameContext );
+        }
     }
 
 
@@ -593,7 +687,14 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( searchContext );
 
-        return interceptor.search( searchContext );
+        try
+        {
+            return interceptor.search( searchContext );
+        }
+        finally
+        {
+            exitInterceptor( searchContext );
+        }
     }
 
 
@@ -616,6 +717,13 @@ public abstract class BaseInterceptor implements Interceptor
     {
         Interceptor interceptor = getNextInterceptor( unbindContext );
 
-        interceptor.unbind( unbindContext );
+        try
+        {
+            interceptor.unbind( unbindContext );
+        }
+        finally
+        {
+            exitInterceptor( unbindContext );
+        }
     }
 }
@@ -31,6 +31,7 @@ import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -83,6 +84,9 @@ public abstract class AbstractOperationContext implements OperationContext
     /** The partition this operation will be applied on */
     protected Partition partition;
 
+    /** The profile of this operation, if it's profiled */
+    protected OperationProfile profile;
+
 
     /**
      * Creates a new instance of AbstractOperationContext.
@@ -326,12 +330,22 @@ public abstract class AbstractOperationContext implements OperationContext
     {
         if ( currentInterceptor == interceptors.size() )
         {
+            if ( profile != null )
+            {
+                profile.enter( "partition" );
+            }
+
             return "FINAL";
         }
 
         String interceptor = interceptors.get( currentInterceptor );
         currentInterceptor++;
 
+        if ( profile != null )
+        {
+            profile.enter( interceptor );
+        }
+
         return interceptor;
     }
 
@@ -516,4 +530,24 @@ public abstract class AbstractOperationContext implements OperationContext
     {
         this.partition = partition;
     }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OperationProfile getProfile()
+    {
+        return profile;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setProfile( OperationProfile profile )
+    {
+        this.profile = profile;
+    }
 }
@@ -29,6 +29,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -309,4 +310,18 @@ public interface OperationContext
      */
     void setPartition( Partition partition );
 
+
+    /**
+     * @return The profile of this operation, null if it's not profiled
+     */
+    OperationProfile getProfile();
+
+
+    /**
+     * Profiles this operation : the time spent in each interceptor will be recorded in
+     * the profile.
+     *
+     * @param profile The profile of this operation, or null
+     */
+    void setProfile( OperationProfile profile );
 }
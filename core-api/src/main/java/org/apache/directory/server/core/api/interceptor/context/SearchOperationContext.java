@@ -34,6 +34,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.util.StringConstants;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 
 
 /**
@@ -65,6 +66,18 @@ public class SearchOperationContext extends FilteringOperationContext
 
     /** flag to indicate if this search is done for replication */
     private boolean syncreplSearch;
+
+    /** flag to indicate if the entries are returned in the order requested by the sort control */
+    private boolean sorted;
+
+    /** The position to resume the search after, if any */
+    private SearchPosition resumePosition;
+
+    /** flag to indicate if the partition has moved its candidates after the resume position */
+    private boolean resumed;
+
+    /** The position of the last candidate returned by the partition, when it's tracked */
+    private SearchPosition position;
     
     /**
      * Creates a new instance of SearchOperationContext.
@@ -221,6 +234,92 @@ public class SearchOperationContext extends FilteringOperationContext
     }
 
 
+    /**
+     * @return true if the partition returns the entries in the order requested by the sort control
+     */
+    public boolean isSorted()
+    {
+        return sorted;
+    }
+
+
+    /**
+     * Sets the flag to indicate if the partition returns the entries already sorted, so that
+     * they don't have to be sorted after the search
+     * 
+     * @param sorted The flag indicating the entries are sorted
+     */
+    public void setSorted( boolean sorted )
+    {
+        this.sorted = sorted;
+    }
+
+
+    /**
+     * @return The position the search has to be resumed after, or null to start from the
+     * first candidate
+     */
+    public SearchPosition getResumePosition()
+    {
+        return resumePosition;
+    }
+
+
+    /**
+     * Asks the partition to resume a previous search after the given position, if it
+     * still walks its candidates the same way. The partition tells if it did it with
+     * {@link #setResumed(boolean)}.
+     *
+     * @param resumePosition The position of the last entry returned by the previous search
+     */
+    public void setResumePosition( SearchPosition resumePosition )
+    {
+        this.resumePosition = resumePosition;
+    }
+
+
+    /**
+     * @return true if the partition has moved its candidates after the resume position : the
+     * returned cursor must not be moved before the first entry
+     */
+    public boolean isResumed()
+    {
+        return resumed;
+    }
+
+
+    /**
+     * Sets the flag to indicate if the partition has moved its candidates after the resume position
+     *
+     * @param resumed The flag indicating the search has been resumed
+     */
+    public void setResumed( boolean resumed )
+    {
+        this.resumed = resumed;
+    }
+
+
+    /**
+     * @return The position of the last candidate returned by the partition, or null if the
+     * partition does not track it
+     */
+    public SearchPosition getPosition()
+    {
+        return position;
+    }
+
+
+    /**
+     * Sets the position of the last candidate returned by the partition
+     *
+     * @param position The position of the candidate
+     */
+    public void setPosition( SearchPosition position )
+    {
+        this.position = position;
+    }
+
+
     /**
      * @return The alias dereferencing mode
      */
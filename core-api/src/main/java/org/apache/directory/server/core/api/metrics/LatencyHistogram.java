@@ -0,0 +1,322 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A lock free histogram of durations, in nanoseconds. As in an HDR histogram, the buckets
+ * are log-linear : each power of two is split in {@link #SUB_BUCKETS} buckets of the same
+ * width, so the error on a percentile is less than 1/16 of its value, whatever the range of
+ * the durations, for a fixed memory footprint.
+ * <br>
+ * Recording a duration is a few atomic increments, without any allocation. The durations
+ * longer than 2^{@link #MAX_EXPONENT} ns (about 18 minutes) are counted in the last bucket.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean
+{
+    /** The number of buckets per power of two */
+    public static final int SUB_BUCKETS = 16;
+
+    /** log2( SUB_BUCKETS ) */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /** The largest power of two with its own buckets */
+    public static final int MAX_EXPONENT = 40;
+
+    /** The number of buckets */
+    private static final int BUCKET_COUNT = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKETS;
+
+    /** The labels of the histogram, as name/value pairs */
+    private final String[] labels;
+
+    /** The number of durations in each bucket */
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKET_COUNT );
+
+    /** The number of recorded durations */
+    private final AtomicLong count = new AtomicLong();
+
+    /** The sum of the recorded durations */
+    private final AtomicLong sum = new AtomicLong();
+
+    /** The longest recorded duration */
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of LatencyHistogram
+     *
+     * @param labels The labels describing what is measured, as name/value pairs
+     */
+    public LatencyHistogram( String... labels )
+    {
+        if ( ( labels.length % 2 ) != 0 )
+        {
+            throw new IllegalArgumentException( "The labels must be name/value pairs" );
+        }
+
+        this.labels = labels;
+    }
+
+
+    /**
+     * Computes the bucket of a duration
+     *
+     * @param value The duration, in nanoseconds
+     * @return The index of its bucket
+     */
+    /* No qualifier */static int getBucket( long value )
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return ( int ) Math.max( 0L, value );
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+
+        if ( exponent > MAX_EXPONENT )
+        {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * Computes the smallest duration counted in a bucket
+     *
+     * @param bucket The index of the bucket
+     * @return The smallest duration of the bucket, in nanoseconds
+     */
+    /* No qualifier */static long getLowestValue( int bucket )
+    {
+        if ( bucket < SUB_BUCKETS )
+        {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+
+        return ( SUB_BUCKETS + subBucket ) << ( exponent - SUB_BUCKET_BITS );
+    }
+
+
+    /**
+     * Records a duration
+     *
+     * @param nanos The duration, in nanoseconds
+     */
+    public void record( long nanos )
+    {
+        buckets.incrementAndGet( getBucket( nanos ) );
+        count.incrementAndGet();
+        sum.addAndGet( nanos );
+
+        long currentMax = max.get();
+
+        while ( ( nanos > currentMax ) && !max.compareAndSet( currentMax, nanos ) )
+        {
+            currentMax = max.get();
+        }
+    }
+
+
+    /**
+     * Records the time elapsed since a start time
+     *
+     * @param startNanos The start time, given by {@link System#nanoTime()}
+     */
+    public void recordSince( long startNanos )
+    {
+        record( System.nanoTime() - startNanos );
+    }
+
+
+    /**
+     * Gets the duration below which a given ratio of the recorded durations are. The
+     * returned value is the highest value of the bucket holding the percentile, capped
+     * by the longest recorded duration.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The duration, in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        long total = count.get();
+
+        if ( total == 0L )
+        {
+            return 0L;
+        }
+
+        long rank = ( long ) Math.ceil( Math.min( 100d, Math.max( 0d, percentile ) ) / 100d * total );
+        rank = Math.max( 1L, rank );
+        long seen = 0L;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            seen += buckets.get( i );
+
+            if ( seen >= rank )
+            {
+                long highest = ( i == BUCKET_COUNT - 1 ) ? Long.MAX_VALUE : getLowestValue( i + 1 ) - 1;
+
+                return Math.min( highest, max.get() );
+            }
+        }
+
+        // The buckets have been updated after the count was read
+        return max.get();
+    }
+
+
+    /**
+     * @return The labels of the histogram, as name/value pairs
+     */
+    public String[] getLabels()
+    {
+        return labels.clone();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount()
+    {
+        return count.get();
+    }
+
+
+    /**
+     * @return The sum of the recorded durations, in nanoseconds
+     */
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+
+    /**
+     * @return The longest recorded duration, in nanoseconds
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMeanMicros()
+    {
+        long total = count.get();
+
+        return ( total == 0L ) ? 0L : TimeUnit.NANOSECONDS.toMicros( sum.get() / total );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMaxMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( max.get() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getP50Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( getValueAtPercentile( 50d ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getP90Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( getValueAtPercentile( 90d ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getP99Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( getValueAtPercentile( 99d ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getP999Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( getValueAtPercentile( 99.9d ) );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder( "LatencyHistogram" );
+
+        for ( int i = 0; i < labels.length; i += 2 )
+        {
+            sb.append( i == 0 ? " {" : ", " ).append( labels[i] ).append( '=' ).append( labels[i + 1] );
+        }
+
+        if ( labels.length > 0 )
+        {
+            sb.append( '}' );
+        }
+
+        sb.append( " : " ).append( count.get() ).append( " values, mean " ).append( getMeanMicros() );
+        sb.append( "us, p99 " ).append( getP99Micros() ).append( "us, max " ).append( getMaxMicros() ).append( "us" );
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,760 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The metrics of the operations processed by a DirectoryService :
+ * <ul>
+ *   <li>the latency of the core operations, per operation, result code and partition</li>
+ *   <li>the latency of the LDAP requests, per request type and result code</li>
+ *   <li>the time the LDAP requests have waited for a thread, per pool</li>
+ *   <li>the number of operations and requests being processed</li>
+ *   <li>the number of requests, and the time spent handling them, per client address. This
+ *   breakdown is disabled by default, as it exposes the addresses of the clients. When it is
+ *   enabled, at most {@link #getMaxClients()} addresses are tracked, the other ones are
+ *   counted together</li>
+ *   <li>the last slow operations, in the {@link SlowOperationLog}</li>
+ * </ul>
+ * The histograms are created the first time a combination is seen, after that recording a
+ * value does not allocate anything nor take any lock.
+ * <br>
+ * The metrics can be exported as MXBeans, and written in the Prometheus text format.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationMetrics implements OperationMetricsMXBean
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( OperationMetrics.class );
+
+    /** The default maximum number of tracked client addresses : no client is tracked */
+    public static final int DEFAULT_MAX_CLIENTS = 0;
+
+    /** The name under which the untracked clients are counted */
+    public static final String OTHER_CLIENTS = "other";
+
+    /** The partition of the operations not done on a partition */
+    public static final String NO_PARTITION = "none";
+
+    /** The result of the requests without response */
+    public static final String NO_RESULT = "none";
+
+    /** The JMX domain of the MBeans */
+    public static final String JMX_DOMAIN = "org.apache.directory.server";
+
+    /** The quantiles written in the Prometheus format */
+    private static final double[] QUANTILES = { 0.5d, 0.9d, 0.99d, 0.999d };
+
+    /** The result codes, the histograms of a combination are indexed by their ordinal */
+    private static final ResultCodeEnum[] RESULT_CODES = ResultCodeEnum.values();
+
+    /** The core operations, by operation and partition */
+    private final ConcurrentMap<String, ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>>> operations =
+        new ConcurrentHashMap<>();
+
+    /** The LDAP requests, by type */
+    private final ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> requests = new ConcurrentHashMap<>();
+
+    /** The time waited for a thread, by pool */
+    private final ConcurrentMap<String, LatencyHistogram> queueWaits = new ConcurrentHashMap<>();
+
+    /** The requests, by client address */
+    private final ConcurrentMap<String, ClientStats> clients = new ConcurrentHashMap<>();
+
+    /** The maximum number of tracked client addresses, 0 if the clients are not tracked */
+    private volatile int maxClients;
+
+    /** Tells if the metrics are exported as MXBeans */
+    private volatile boolean jmxEnabled = true;
+
+    /** The number of core operations being executed */
+    private final AtomicInteger operationsInFlight = new AtomicInteger();
+
+    /** The number of LDAP requests being handled */
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    /** The last slow operations */
+    private final SlowOperationLog slowOperationLog = new SlowOperationLog();
+
+    /** The MBean server the MBeans are registered in, null if they are not exported */
+    private volatile MBeanServer mbeanServer;
+
+    /** The instance the MBeans belong to */
+    private volatile String instanceId;
+
+    /** The registered MBeans */
+    private final Set<ObjectName> registeredNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The requests of a client
+     */
+    private static final class ClientStats
+    {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+
+
+    /**
+     * Creates a new instance of OperationMetrics, which does not track the client addresses
+     */
+    public OperationMetrics()
+    {
+        this( DEFAULT_MAX_CLIENTS );
+    }
+
+
+    /**
+     * Creates a new instance of OperationMetrics
+     *
+     * @param maxClients The maximum number of tracked client addresses, 0 to not track them
+     */
+    public OperationMetrics( int maxClients )
+    {
+        setMaxClients( maxClients );
+    }
+
+
+    /**
+     * @return The maximum number of tracked client addresses, 0 if the clients are not tracked
+     */
+    public int getMaxClients()
+    {
+        return maxClients;
+    }
+
+
+    /**
+     * Sets the maximum number of tracked client addresses. The requests of the other
+     * addresses are counted together.
+     *
+     * @param maxClients The maximum number of tracked client addresses, 0 to not track them
+     */
+    public void setMaxClients( int maxClients )
+    {
+        this.maxClients = Math.max( 0, maxClients );
+
+        if ( this.maxClients == 0 )
+        {
+            clients.clear();
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the metrics are exported as MXBeans when the
+     * DirectoryService starts
+     */
+    public boolean isJmxEnabled()
+    {
+        return jmxEnabled;
+    }
+
+
+    /**
+     * Tells if the metrics have to be exported as MXBeans when the DirectoryService starts
+     *
+     * @param jmxEnabled <code>true</code> to export the metrics over JMX
+     */
+    public void setJmxEnabled( boolean jmxEnabled )
+    {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+
+    /**
+     * Tells that a core operation is starting
+     *
+     * @return The start time, to give to {@link #operationCompleted(String, ResultCodeEnum, String, long)}
+     */
+    public long operationStarted()
+    {
+        operationsInFlight.incrementAndGet();
+
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Tells that a core operation is completed
+     *
+     * @param operation The operation, like "search"
+     * @param resultCode The result of the operation
+     * @param partition The partition the operation has been done on, or null
+     * @param startNanos The start time returned by {@link #operationStarted()}
+     */
+    public void operationCompleted( String operation, ResultCodeEnum resultCode, String partition, long startNanos )
+    {
+        operationsInFlight.decrementAndGet();
+        getOperationHistogram( operation, resultCode, partition ).recordSince( startNanos );
+    }
+
+
+    /**
+     * Tells that an LDAP request is starting
+     *
+     * @return The start time, to give to {@link #requestCompleted(String, ResultCodeEnum, String, long)}
+     */
+    public long requestStarted()
+    {
+        requestsInFlight.incrementAndGet();
+
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Tells that an LDAP request is completed
+     *
+     * @param request The type of request, like "search"
+     * @param resultCode The result of the request, null if there is no response
+     * @param client The address of the client, or null
+     * @param startNanos The start time returned by {@link #requestStarted()}
+     */
+    public void requestCompleted( String request, ResultCodeEnum resultCode, String client, long startNanos )
+    {
+        long duration = System.nanoTime() - startNanos;
+        requestsInFlight.decrementAndGet();
+        getRequestHistogram( request, resultCode ).record( duration );
+
+        if ( ( client != null ) && ( maxClients > 0 ) )
+        {
+            ClientStats stats = getClientStats( client );
+            stats.count.increment();
+            stats.nanos.add( duration );
+        }
+    }
+
+
+    /**
+     * Records the time a request has waited for a thread
+     *
+     * @param pool The pool of threads
+     * @param nanos The waited time, in nanoseconds
+     */
+    public void recordQueueWait( String pool, long nanos )
+    {
+        getQueueWaitHistogram( pool ).record( nanos );
+    }
+
+
+    /**
+     * Gets the histogram of a core operation, creating it if needed
+     *
+     * @param operation The operation
+     * @param resultCode The result of the operation
+     * @param partition The partition, or null
+     * @return The histogram
+     */
+    public LatencyHistogram getOperationHistogram( String operation, ResultCodeEnum resultCode, String partition )
+    {
+        String partitionId = ( partition == null ) ? NO_PARTITION : partition;
+        AtomicReferenceArray<LatencyHistogram> histograms = operations
+            .computeIfAbsent( operation, k -> new ConcurrentHashMap<>() )
+            .computeIfAbsent( partitionId, k -> new AtomicReferenceArray<>( RESULT_CODES.length + 1 ) );
+
+        return getHistogram( histograms, resultCode, "operation", operation, "result", getResultName( resultCode ),
+            "partition", partitionId );
+    }
+
+
+    /**
+     * Gets the histogram of an LDAP request, creating it if needed
+     *
+     * @param request The type of request
+     * @param resultCode The result of the request, null if there is no response
+     * @return The histogram
+     */
+    public LatencyHistogram getRequestHistogram( String request, ResultCodeEnum resultCode )
+    {
+        AtomicReferenceArray<LatencyHistogram> histograms = requests.computeIfAbsent( request,
+            k -> new AtomicReferenceArray<>( RESULT_CODES.length + 1 ) );
+
+        return getHistogram( histograms, resultCode, "request", request, "result", getResultName( resultCode ) );
+    }
+
+
+    /**
+     * Gets the histogram of the time waited for a thread of a pool, creating it if needed
+     *
+     * @param pool The pool of threads
+     * @return The histogram
+     */
+    public LatencyHistogram getQueueWaitHistogram( String pool )
+    {
+        LatencyHistogram histogram = queueWaits.get( pool );
+
+        if ( histogram == null )
+        {
+            LatencyHistogram newHistogram = new LatencyHistogram( "pool", pool );
+            histogram = queueWaits.putIfAbsent( pool, newHistogram );
+
+            if ( histogram == null )
+            {
+                histogram = newHistogram;
+                register( histogram, "queueWait" );
+            }
+        }
+
+        return histogram;
+    }
+
+
+    private LatencyHistogram getHistogram( AtomicReferenceArray<LatencyHistogram> histograms,
+        ResultCodeEnum resultCode, String... labels )
+    {
+        int index = ( resultCode == null ) ? RESULT_CODES.length : resultCode.ordinal();
+        LatencyHistogram histogram = histograms.get( index );
+
+        if ( histogram == null )
+        {
+            LatencyHistogram newHistogram = new LatencyHistogram( labels );
+
+            if ( histograms.compareAndSet( index, null, newHistogram ) )
+            {
+                histogram = newHistogram;
+                register( histogram, labels[0] );
+            }
+            else
+            {
+                histogram = histograms.get( index );
+            }
+        }
+
+        return histogram;
+    }
+
+
+    private static String getResultName( ResultCodeEnum resultCode )
+    {
+        return ( resultCode == null ) ? NO_RESULT : resultCode.getMessage();
+    }
+
+
+    private ClientStats getClientStats( String client )
+    {
+        ClientStats stats = clients.get( client );
+
+        if ( stats != null )
+        {
+            return stats;
+        }
+
+        if ( clients.size() >= maxClients )
+        {
+            return clients.computeIfAbsent( OTHER_CLIENTS, k -> new ClientStats() );
+        }
+
+        return clients.computeIfAbsent( client, k -> new ClientStats() );
+    }
+
+
+    /**
+     * @return The histograms of the core operations
+     */
+    public List<LatencyHistogram> getOperationHistograms()
+    {
+        List<LatencyHistogram> histograms = new ArrayList<>();
+
+        for ( ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> partitions : operations.values() )
+        {
+            for ( AtomicReferenceArray<LatencyHistogram> array : partitions.values() )
+            {
+                collect( array, histograms );
+            }
+        }
+
+        return histograms;
+    }
+
+
+    /**
+     * @return The histograms of the LDAP requests
+     */
+    public List<LatencyHistogram> getRequestHistograms()
+    {
+        List<LatencyHistogram> histograms = new ArrayList<>();
+
+        for ( AtomicReferenceArray<LatencyHistogram> array : requests.values() )
+        {
+            collect( array, histograms );
+        }
+
+        return histograms;
+    }
+
+
+    /**
+     * @return The histograms of the time waited for a thread
+     */
+    public List<LatencyHistogram> getQueueWaitHistograms()
+    {
+        return new ArrayList<>( queueWaits.values() );
+    }
+
+
+    private static void collect( AtomicReferenceArray<LatencyHistogram> array, List<LatencyHistogram> histograms )
+    {
+        for ( int i = 0; i < array.length(); i++ )
+        {
+            LatencyHistogram histogram = array.get( i );
+
+            if ( histogram != null )
+            {
+                histograms.add( histogram );
+            }
+        }
+    }
+
+
+    /**
+     * @return The log of the slow operations
+     */
+    public SlowOperationLog getSlowOperationLog()
+    {
+        return slowOperationLog;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getOperationsInFlight()
+    {
+        return operationsInFlight.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRequestsInFlight()
+    {
+        return requestsInFlight.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getClientRequestCounts()
+    {
+        Map<String, Long> counts = new TreeMap<>();
+
+        for ( Map.Entry<String, ClientStats> entry : clients.entrySet() )
+        {
+            counts.put( entry.getKey(), entry.getValue().count.sum() );
+        }
+
+        return counts;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getClientRequestMicros()
+    {
+        Map<String, Long> micros = new TreeMap<>();
+
+        for ( Map.Entry<String, ClientStats> entry : clients.entrySet() )
+        {
+            micros.put( entry.getKey(), TimeUnit.NANOSECONDS.toMicros( entry.getValue().nanos.sum() ) );
+        }
+
+        return micros;
+    }
+
+
+    /**
+     * Registers the metrics as MXBeans in the platform MBean server. The histograms created
+     * later are registered when they are created.
+     *
+     * @param instanceId The DirectoryService instance the metrics belong to
+     */
+    public void registerMBeans( String instanceId )
+    {
+        this.instanceId = instanceId;
+        this.mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try
+        {
+            ObjectName name = new ObjectName( JMX_DOMAIN + ":type=OperationMetrics,instance="
+                + ObjectName.quote( instanceId ) );
+            register( this, name );
+        }
+        catch ( JMException jme )
+        {
+            LOG.warn( "Cannot register the operation metrics MBean : {}", jme.getMessage() );
+        }
+
+        for ( LatencyHistogram histogram : getOperationHistograms() )
+        {
+            register( histogram, "operation" );
+        }
+
+        for ( LatencyHistogram histogram : getRequestHistograms() )
+        {
+            register( histogram, "request" );
+        }
+
+        for ( LatencyHistogram histogram : getQueueWaitHistograms() )
+        {
+            register( histogram, "queueWait" );
+        }
+    }
+
+
+    /**
+     * Unregisters all the MBeans registered by {@link #registerMBeans(String)}
+     */
+    public void unregisterMBeans()
+    {
+        MBeanServer server = mbeanServer;
+        mbeanServer = null;
+
+        if ( server == null )
+        {
+            return;
+        }
+
+        for ( ObjectName name : registeredNames )
+        {
+            try
+            {
+                server.unregisterMBean( name );
+            }
+            catch ( JMException jme )
+            {
+                LOG.debug( "Cannot unregister the MBean {} : {}", name, jme.getMessage() );
+            }
+        }
+
+        registeredNames.clear();
+    }
+
+
+    private void register( LatencyHistogram histogram, String kind )
+    {
+        if ( mbeanServer == null )
+        {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder( JMX_DOMAIN );
+        sb.append( ":type=OperationMetrics,instance=" ).append( ObjectName.quote( instanceId ) );
+        sb.append( ",kind=" ).append( kind );
+        String[] labels = histogram.getLabels();
+
+        for ( int i = 0; i < labels.length; i += 2 )
+        {
+            sb.append( ',' ).append( labels[i] ).append( '=' ).append( ObjectName.quote( labels[i + 1] ) );
+        }
+
+        try
+        {
+            register( histogram, new ObjectName( sb.toString() ) );
+        }
+        catch ( JMException jme )
+        {
+            LOG.warn( "Cannot register the MBean of {} : {}", histogram, jme.getMessage() );
+        }
+    }
+
+
+    private void register( Object mbean, ObjectName name ) throws JMException
+    {
+        MBeanServer server = mbeanServer;
+
+        if ( server == null )
+        {
+            return;
+        }
+
+        if ( server.isRegistered( name ) )
+        {
+            // Left by a previous instance with the same id
+            server.unregisterMBean( name );
+        }
+
+        server.registerMBean( mbean, name );
+        registeredNames.add( name );
+    }
+
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format
+     *
+     * @param out Where to write the metrics
+     * @throws IOException If the metrics can't be written
+     */
+    public void writePrometheus( Appendable out ) throws IOException
+    {
+        writeSummaries( out, "apacheds_operation_duration_seconds",
+            "The duration of the core operations, per operation, result and partition", getOperationHistograms() );
+        writeGauge( out, "apacheds_operations_in_flight", "The number of core operations being executed",
+            operationsInFlight.get() );
+        writeSummaries( out, "apacheds_ldap_request_duration_seconds",
+            "The duration of the LDAP requests, per request and result", getRequestHistograms() );
+        writeGauge( out, "apacheds_ldap_requests_in_flight", "The number of LDAP requests being handled",
+            requestsInFlight.get() );
+        writeSummaries( out, "apacheds_ldap_queue_wait_seconds",
+            "The time the LDAP requests have waited for a thread, per pool", getQueueWaitHistograms() );
+
+        if ( clients.isEmpty() )
+        {
+            return;
+        }
+
+        out.append( "# HELP apacheds_ldap_client_requests_total The number of LDAP requests, per client address\n" );
+        out.append( "# TYPE apacheds_ldap_client_requests_total counter\n" );
+
+        for ( Map.Entry<String, Long> entry : getClientRequestCounts().entrySet() )
+        {
+            out.append( "apacheds_ldap_client_requests_total{client=\"" ).append( escape( entry.getKey() ) );
+            out.append( "\"} " ).append( Long.toString( entry.getValue() ) ).append( '\n' );
+        }
+
+        out.append( "# HELP apacheds_ldap_client_request_seconds_total The time spent handling the LDAP requests,"
+            + " per client address\n" );
+        out.append( "# TYPE apacheds_ldap_client_request_seconds_total counter\n" );
+
+        for ( Map.Entry<String, ClientStats> entry : new TreeMap<>( clients ).entrySet() )
+        {
+            out.append( "apacheds_ldap_client_request_seconds_total{client=\"" ).append( escape( entry.getKey() ) );
+            out.append( "\"} " ).append( toSeconds( entry.getValue().nanos.sum() ) ).append( '\n' );
+        }
+    }
+
+
+    private static void writeSummaries( Appendable out, String name, String help, List<LatencyHistogram> histograms )
+        throws IOException
+    {
+        if ( histograms.isEmpty() )
+        {
+            return;
+        }
+
+        out.append( "# HELP " ).append( name ).append( ' ' ).append( help ).append( '\n' );
+        out.append( "# TYPE " ).append( name ).append( " summary\n" );
+
+        for ( LatencyHistogram histogram : histograms )
+        {
+            String labels = toLabels( histogram.getLabels() );
+
+            for ( double quantile : QUANTILES )
+            {
+                out.append( name ).append( '{' ).append( labels ).append( ",quantile=\"" );
+                out.append( Double.toString( quantile ) ).append( "\"} " );
+                out.append( toSeconds( histogram.getValueAtPercentile( quantile * 100d ) ) ).append( '\n' );
+            }
+
+            out.append( name ).append( "_sum{" ).append( labels ).append( "} " );
+            out.append( toSeconds( histogram.getSum() ) ).append( '\n' );
+            out.append( name ).append( "_count{" ).append( labels ).append( "} " );
+            out.append( Long.toString( histogram.getCount() ) ).append( '\n' );
+        }
+    }
+
+
+    private static void writeGauge( Appendable out, String name, String help, long value ) throws IOException
+    {
+        out.append( "# HELP " ).append( name ).append( ' ' ).append( help ).append( '\n' );
+        out.append( "# TYPE " ).append( name ).append( " gauge\n" );
+        out.append( name ).append( ' ' ).append( Long.toString( value ) ).append( '\n' );
+    }
+
+
+    private static String toLabels( String[] labels )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < labels.length; i += 2 )
+        {
+            if ( i > 0 )
+            {
+                sb.append( ',' );
+            }
+
+            sb.append( labels[i] ).append( "=\"" ).append( escape( labels[i + 1] ) ).append( '"' );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Escapes a label value : '\', '"' and the new lines have to be escaped
+     */
+    private static String escape( String value )
+    {
+        if ( ( value.indexOf( '\\' ) < 0 ) && ( value.indexOf( '"' ) < 0 ) && ( value.indexOf( '\n' ) < 0 ) )
+        {
+            return value;
+        }
+
+        return value.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+    }
+
+
+    private static String toSeconds( long nanos )
+    {
+        return Double.toString( nanos / 1_000_000_000d );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "OperationMetrics : " + operationsInFlight.get() + " operations and " + requestsInFlight.get()
+            + " requests in flight, " + clients.size() + " clients";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.Map;
+
+
+/**
+ * The view of the {@link OperationMetrics} exported over JMX. The latencies are exported
+ * by one {@link LatencyHistogramMXBean} per operation, result code and partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface OperationMetricsMXBean
+{
+    /**
+     * @return The number of core operations being executed
+     */
+    int getOperationsInFlight();
+
+
+    /**
+     * @return The number of LDAP requests being handled
+     */
+    int getRequestsInFlight();
+
+
+    /**
+     * @return The number of LDAP requests of each client address, empty if the clients are not tracked
+     */
+    Map<String, Long> getClientRequestCounts();
+
+
+    /**
+     * @return The time spent handling the LDAP requests of each client address, in microseconds, empty
+     * if the clients are not tracked
+     */
+    Map<String, Long> getClientRequestMicros();
+}
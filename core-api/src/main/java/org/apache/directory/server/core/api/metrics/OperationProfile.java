@@ -0,0 +1,326 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Where the time of an operation goes. The time is split in phases :
+ * <ul>
+ *   <li>the nested phases, entered and exited in order, like the interceptors : the
+ *   time of a phase does not include the time of the phases it calls</li>
+ *   <li>the times added to a phase, like the time spent fetching the entries while a
+ *   search cursor is read</li>
+ * </ul>
+ * The profile also holds the annotations describing how the operation has been executed,
+ * like the search plan, and, for the searches, the number of entries scanned, matching
+ * the filter and returned.
+ * <br>
+ * A profile is used by one thread at a time, it's not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationProfile
+{
+    /** The maximum number of nested phases */
+    private static final int MAX_DEPTH = 64;
+
+    /** The time the operation has started */
+    private final long startNanos;
+
+    /** The phase names, in the order they have been seen */
+    private String[] phases = new String[16];
+
+    /** The time spent in each phase */
+    private long[] phaseNanos = new long[16];
+
+    /** The number of phases */
+    private int phaseCount;
+
+    /** The nested phases being executed */
+    private final int[] stack = new int[MAX_DEPTH];
+
+    /** The number of nested phases */
+    private int depth;
+
+    /** The time the current phase has been entered or resumed */
+    private long mark;
+
+    /** The annotations, as name/value pairs */
+    private final StringBuilder annotations = new StringBuilder();
+
+    /** The number of candidates read by a search */
+    private long entriesScanned;
+
+    /** The number of candidates matching the filter */
+    private long entriesMatched;
+
+    /** The number of entries sent to the client */
+    private long entriesReturned;
+
+
+    /**
+     * Creates a new instance of OperationProfile, starting now
+     */
+    public OperationProfile()
+    {
+        startNanos = System.nanoTime();
+        mark = startNanos;
+    }
+
+
+    /**
+     * Enters a nested phase : the time spent since the last change is given to the current
+     * phase, if any.
+     *
+     * @param phase The phase name
+     */
+    public void enter( String phase )
+    {
+        long now = System.nanoTime();
+
+        if ( depth > 0 )
+        {
+            phaseNanos[stack[depth - 1]] += now - mark;
+        }
+
+        if ( depth < MAX_DEPTH )
+        {
+            stack[depth] = getPhase( phase );
+        }
+
+        depth++;
+        mark = now;
+    }
+
+
+    /**
+     * Exits the current nested phase : the time spent since the last change is given to it.
+     */
+    public void exit()
+    {
+        if ( depth == 0 )
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        depth--;
+
+        if ( depth < MAX_DEPTH )
+        {
+            phaseNanos[stack[depth]] += now - mark;
+        }
+
+        mark = now;
+    }
+
+
+    /**
+     * Exits all the nested phases, when the operation is completed
+     */
+    public void finish()
+    {
+        while ( depth > 0 )
+        {
+            exit();
+        }
+    }
+
+
+    /**
+     * Adds some time to a phase, outside of the nested phases
+     *
+     * @param phase The phase name
+     * @param nanos The time to add, in nanoseconds
+     */
+    public void addTime( String phase, long nanos )
+    {
+        phaseNanos[getPhase( phase )] += nanos;
+    }
+
+
+    private int getPhase( String phase )
+    {
+        for ( int i = 0; i < phaseCount; i++ )
+        {
+            if ( phases[i].equals( phase ) )
+            {
+                return i;
+            }
+        }
+
+        if ( phaseCount == phases.length )
+        {
+            phases = Arrays.copyOf( phases, phaseCount * 2 );
+            phaseNanos = Arrays.copyOf( phaseNanos, phaseCount * 2 );
+        }
+
+        phases[phaseCount] = phase;
+
+        return phaseCount++;
+    }
+
+
+    /**
+     * Adds an annotation
+     *
+     * @param name The annotation name
+     * @param value The annotation value
+     */
+    public void annotate( String name, Object value )
+    {
+        if ( annotations.length() > 0 )
+        {
+            annotations.append( ", " );
+        }
+
+        annotations.append( name ).append( '=' ).append( value );
+    }
+
+
+    /**
+     * Counts a candidate read by a search
+     *
+     * @param matched <code>true</code> if the candidate matches the filter
+     */
+    public void entryScanned( boolean matched )
+    {
+        entriesScanned++;
+
+        if ( matched )
+        {
+            entriesMatched++;
+        }
+    }
+
+
+    /**
+     * Counts an entry sent to the client
+     */
+    public void entryReturned()
+    {
+        entriesReturned++;
+    }
+
+
+    /**
+     * @return The time the operation has started, given by {@link System#nanoTime()}
+     */
+    public long getStartNanos()
+    {
+        return startNanos;
+    }
+
+
+    /**
+     * @return The time elapsed since the operation has started, in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return System.nanoTime() - startNanos;
+    }
+
+
+    /**
+     * Gets the time spent in a phase
+     *
+     * @param phase The phase name
+     * @return The time spent in the phase, in nanoseconds
+     */
+    public long getPhaseNanos( String phase )
+    {
+        for ( int i = 0; i < phaseCount; i++ )
+        {
+            if ( phases[i].equals( phase ) )
+            {
+                return phaseNanos[i];
+            }
+        }
+
+        return 0L;
+    }
+
+
+    /**
+     * @return The number of candidates read by a search
+     */
+    public long getEntriesScanned()
+    {
+        return entriesScanned;
+    }
+
+
+    /**
+     * @return The number of candidates matching the filter
+     */
+    public long getEntriesMatched()
+    {
+        return entriesMatched;
+    }
+
+
+    /**
+     * @return The number of entries sent to the client
+     */
+    public long getEntriesReturned()
+    {
+        return entriesReturned;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder( "phases [" );
+
+        for ( int i = 0; i < phaseCount; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( ", " );
+            }
+
+            sb.append( phases[i] ).append( '=' ).append( TimeUnit.NANOSECONDS.toMicros( phaseNanos[i] ) )
+                .append( "us" );
+        }
+
+        sb.append( ']' );
+
+        if ( entriesScanned + entriesReturned > 0 )
+        {
+            sb.append( ", entries scanned " ).append( entriesScanned ).append( ", matched " ).append( entriesMatched )
+                .append( ", returned " ).append( entriesReturned );
+        }
+
+        if ( annotations.length() > 0 )
+        {
+            sb.append( ", " ).append( annotations );
+        }
+
+        return sb.toString();
+    }
+}
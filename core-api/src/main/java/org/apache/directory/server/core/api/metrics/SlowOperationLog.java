@@ -0,0 +1,282 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps the last operations which have taken more than a threshold, with the breakdown of
+ * their time given by their {@link OperationProfile}, and logs them in a dedicated logger.
+ * <br>
+ * When the log is enabled, every operation is profiled. Profiling an operation costs a
+ * couple of clock reads per interceptor, and per entry read by a search.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SlowOperationLog
+{
+    /** The logger the slow operations are written to */
+    private static final Logger SLOW_OPERATION_LOG = LoggerFactory.getLogger( "org.apache.directory.server.SLOW_OPERATIONS" );
+
+    /** The default threshold, in ms */
+    public static final long DEFAULT_THRESHOLD = 1000L;
+
+    /** The default number of slow operations kept */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /** The threshold, in nanoseconds, 0 if the log is disabled */
+    private volatile long thresholdNanos;
+
+    /** The number of slow operations kept, guarded by the operations lock */
+    private int capacity;
+
+    /** The last slow operations, the most recent last */
+    private final ArrayDeque<String> operations;
+
+    /** The number of slow operations seen */
+    private final AtomicLong slowCount = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of SlowOperationLog, with the default threshold and capacity
+     */
+    public SlowOperationLog()
+    {
+        this( DEFAULT_THRESHOLD, DEFAULT_CAPACITY );
+    }
+
+
+    /**
+     * Creates a new instance of SlowOperationLog
+     *
+     * @param thresholdMillis The time above which an operation is slow, 0 to disable the log
+     * @param capacity The number of slow operations kept
+     */
+    public SlowOperationLog( long thresholdMillis, int capacity )
+    {
+        setThreshold( thresholdMillis );
+        this.capacity = Math.max( 1, capacity );
+        operations = new ArrayDeque<>( this.capacity );
+    }
+
+
+    /**
+     * @return <code>true</code> if the slow operations are logged
+     */
+    public boolean isEnabled()
+    {
+        return thresholdNanos > 0L;
+    }
+
+
+    /**
+     * @return The time above which an operation is slow, in ms, 0 if the log is disabled
+     */
+    public long getThreshold()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( thresholdNanos );
+    }
+
+
+    /**
+     * Sets the time above which an operation is slow
+     *
+     * @param thresholdMillis The threshold, in ms, 0 to disable the log
+     */
+    public void setThreshold( long thresholdMillis )
+    {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 0L, thresholdMillis ) );
+    }
+
+
+    /**
+     * Creates the profile of an operation which is starting
+     *
+     * @return The profile, or null if the log is disabled
+     */
+    public OperationProfile startProfile()
+    {
+        return isEnabled() ? new OperationProfile() : null;
+    }
+
+
+    /**
+     * Tells if an operation is slow
+     *
+     * @param nanos The duration of the operation, in nanoseconds
+     * @return <code>true</code> if the log is enabled and the operation is slow
+     */
+    public boolean isSlow( long nanos )
+    {
+        long threshold = thresholdNanos;
+
+        return ( threshold > 0L ) && ( nanos >= threshold );
+    }
+
+
+    /**
+     * Records an operation if it's slow
+     *
+     * @param operation The operation, like "search"
+     * @param opContext The operation context
+     * @param resultCode The result of the operation
+     * @param nanos The duration of the operation, in nanoseconds
+     */
+    public void record( String operation, OperationContext opContext, ResultCodeEnum resultCode, long nanos )
+    {
+        if ( !isSlow( nanos ) )
+        {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append( Instant.now() ).append( ' ' ).append( operation );
+        sb.append( " took " ).append( TimeUnit.NANOSECONDS.toMillis( nanos ) ).append( "ms" );
+        sb.append( ", result " ).append( ( resultCode == null ) ? OperationMetrics.NO_RESULT : resultCode.getMessage() );
+        sb.append( ", dn " ).append( opContext.getDn() );
+
+        if ( opContext instanceof SearchOperationContext )
+        {
+            SearchOperationContext searchContext = ( SearchOperationContext ) opContext;
+            sb.append( ", scope " ).append( searchContext.getScope() );
+            sb.append( ", filter " ).append( searchContext.getFilter() );
+        }
+
+        CoreSession session = opContext.getSession();
+
+        if ( ( session != null ) && ( session.getEffectivePrincipal() != null ) )
+        {
+            sb.append( ", principal " ).append( session.getEffectivePrincipal().getName() );
+        }
+
+        if ( opContext.getPartition() != null )
+        {
+            sb.append( ", partition " ).append( opContext.getPartition().getId() );
+        }
+
+        if ( opContext.getProfile() != null )
+        {
+            sb.append( ", " ).append( opContext.getProfile() );
+        }
+
+        String description = sb.toString();
+        slowCount.incrementAndGet();
+        SLOW_OPERATION_LOG.warn( "Slow operation : {}", description );
+
+        synchronized ( operations )
+        {
+            while ( operations.size() >= capacity )
+            {
+                operations.poll();
+            }
+
+            operations.add( description );
+        }
+    }
+
+
+    /**
+     * Gets the last slow operations
+     *
+     * @param max The maximum number of operations to return
+     * @return The descriptions of the operations, the most recent first
+     */
+    public List<String> getSlowOperations( int max )
+    {
+        synchronized ( operations )
+        {
+            List<String> result = new ArrayList<>( Math.min( Math.max( 0, max ), operations.size() ) );
+            Iterator<String> iterator = operations.descendingIterator();
+
+            while ( iterator.hasNext() && ( result.size() < max ) )
+            {
+                result.add( iterator.next() );
+            }
+
+            return result;
+        }
+    }
+
+
+    /**
+     * @return The number of slow operations seen
+     */
+    public long getSlowCount()
+    {
+        return slowCount.get();
+    }
+
+
+    /**
+     * @return The number of slow operations kept
+     */
+    public int getCapacity()
+    {
+        synchronized ( operations )
+        {
+            return capacity;
+        }
+    }
+
+
+    /**
+     * Sets the number of slow operations kept. The oldest ones are dropped if there are
+     * more of them.
+     *
+     * @param capacity The number of slow operations kept
+     */
+    public void setCapacity( int capacity )
+    {
+        synchronized ( operations )
+        {
+            this.capacity = Math.max( 1, capacity );
+
+            while ( operations.size() > this.capacity )
+            {
+                operations.poll();
+            }
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "SlowOperationLog : threshold " + getThreshold() + "ms, " + slowCount.get() + " slow operations";
+    }
+}
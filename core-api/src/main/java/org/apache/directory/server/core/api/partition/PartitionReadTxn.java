@@ -28,6 +28,20 @@ import java.io.IOException;
  */
 public class PartitionReadTxn implements PartitionTxn
 {
+    /** The time the transaction has been created, before its snapshot is taken */
+    private final long startTime = System.nanoTime();
+
+
+    /**
+     * @return The {@link System#nanoTime()} at which the transaction has been created. The
+     * modifications committed later may not be visible to it.
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+
     /**
      * {@inheritDoc}
      */
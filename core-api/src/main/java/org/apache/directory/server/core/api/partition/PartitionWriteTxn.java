@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api.partition;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Write Transaction interface
@@ -28,12 +30,161 @@ import java.io.IOException;
  */
 public class PartitionWriteTxn implements PartitionTxn
 {
+    /** The actions to run once the transaction has been committed */
+    private List<Runnable> commitActions;
+
+    /** The actions to run once the transaction has ended, whatever its outcome */
+    private List<Runnable> endActions;
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void commit() throws IOException
     {
+        committed();
+    }
+
+
+    /**
+     * Commits the transaction, the partition being allowed to make the modifications durable
+     * later, in {@link #awaitDurability()}. This is called by the operation manager before it
+     * releases the partition locks, so that a partition can share one flush among the
+     * concurrent writers. The default implementation is a plain commit.
+     * 
+     * @throws IOException If the transaction can't be committed
+     */
+    public void commitDeferred() throws IOException
+    {
+        commit();
+    }
+
+
+    /**
+     * Waits until the modifications committed by {@link #commitDeferred()} are durable. This
+     * is called once the partition locks have been released. The default implementation does
+     * nothing, the modifications being durable when the commit returns.
+     * 
+     * @throws IOException If the modifications can't be made durable
+     */
+    public void awaitDurability() throws IOException
+    {
+    }
+
+
+    /**
+     * Registers an action to run once the transaction has been committed, when its
+     * modifications are visible to the other transactions. It's not run if the
+     * transaction is aborted.
+     * 
+     * @param action The action to run
+     */
+    public synchronized void onCommit( Runnable action )
+    {
+        if ( commitActions == null )
+        {
+            commitActions = new ArrayList<>();
+        }
+
+        commitActions.add( action );
+    }
+
+
+    /**
+     * Registers an action to run once the transaction has been committed or aborted.
+     * 
+     * @param action The action to run
+     */
+    public synchronized void onEnd( Runnable action )
+    {
+        if ( endActions == null )
+        {
+            endActions = new ArrayList<>();
+        }
+
+        endActions.add( action );
+    }
+
+
+    /**
+     * Runs the commit and end actions. Called by the implementations once the
+     * transaction has been committed.
+     */
+    protected void committed()
+    {
+        List<Runnable> actions;
+
+        synchronized ( this )
+        {
+            actions = commitActions;
+            commitActions = null;
+        }
+
+        run( actions );
+        ended();
+    }
+
+
+    /**
+     * Runs the end actions, dropping the commit actions. Called by the implementations
+     * once the transaction has been aborted.
+     */
+    protected void ended()
+    {
+        List<Runnable> actions;
+
+        synchronized ( this )
+        {
+            actions = endActions;
+            endActions = null;
+            commitActions = null;
+        }
+
+        run( actions );
+    }
+
+
+    /**
+     * Moves the registered actions to an enclosing transaction, when this one is
+     * committed into it.
+     * 
+     * @param parent The enclosing transaction
+     */
+    protected void moveActionsTo( PartitionWriteTxn parent )
+    {
+        List<Runnable> commits;
+        List<Runnable> ends;
+
+        synchronized ( this )
+        {
+            commits = commitActions;
+            ends = endActions;
+            commitActions = null;
+            endActions = null;
+        }
+
+        if ( commits != null )
+        {
+            commits.forEach( parent::onCommit );
+        }
+
+        if ( ends != null )
+        {
+            ends.forEach( parent::onEnd );
+        }
+    }
+
+
+    private static void run( List<Runnable> actions )
+    {
+        if ( actions != null )
+        {
+            for ( Runnable action : actions )
+            {
+                action.run();
+            }
+        }
     }
 
 
@@ -43,6 +194,7 @@ public class PartitionWriteTxn implements PartitionTxn
     @Override
     public void abort() throws IOException
     {
+        ended();
     }
 
 
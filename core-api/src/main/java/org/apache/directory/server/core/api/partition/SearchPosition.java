@@ -0,0 +1,92 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.partition;
+
+
+/**
+ * The position of a search in the candidates a partition walks : the key and the entry ID
+ * of the last returned candidate, and the walk they belong to. A search can be resumed
+ * after this position by a partition walking the same index the same way.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchPosition
+{
+    /** Describes the index walk the candidates come from */
+    private final String walk;
+
+    /** The index key of the last returned candidate */
+    private final Object key;
+
+    /** The ID of the last returned candidate */
+    private final String id;
+
+
+    /**
+     * Creates a new instance of SearchPosition
+     *
+     * @param walk The description of the index walk, as given by the partition
+     * @param key The index key of the candidate
+     * @param id The ID of the candidate
+     */
+    public SearchPosition( String walk, Object key, String id )
+    {
+        this.walk = walk;
+        this.key = key;
+        this.id = id;
+    }
+
+
+    /**
+     * @return The description of the index walk the candidate comes from
+     */
+    public String getWalk()
+    {
+        return walk;
+    }
+
+
+    /**
+     * @return The index key of the candidate
+     */
+    public Object getKey()
+    {
+        return key;
+    }
+
+
+    /**
+     * @return The ID of the candidate
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "<" + walk + ", " + key + ", " + id + ">";
+    }
+}
@@ -75,6 +75,7 @@ import org.apache.directory.server.core.api.interceptor.context.SearchOperationC
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 import org.apache.directory.server.i18n.I18n;
 
 
@@ -936,8 +937,15 @@ public class MockCoreSession implements CoreSession
 
 
     public Cursor<Entry> search( SearchRequest searchRequest ) throws LdapException
+    {
+        return search( searchRequest, null );
+    }
+
+
+    public Cursor<Entry> search( SearchRequest searchRequest, SearchPosition resumePosition ) throws LdapException
     {
         SearchOperationContext searchContext = new SearchOperationContext( this, searchRequest );
+        searchContext.setResumePosition( resumePosition );
         OperationManager operationManager = directoryService.getOperationManager();
         EntryFilteringCursor cursor = operationManager.search( searchContext );
         searchRequest.getResultResponse().addAllControls( searchContext.getResponseControls() );
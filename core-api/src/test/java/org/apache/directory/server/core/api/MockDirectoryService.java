@@ -45,6 +45,7 @@ import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -477,6 +478,19 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    @Override
+    public long getSortMemoryBudget()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public void setSortMemoryBudget( long sortMemoryBudget )
+    {
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -636,4 +650,14 @@ public class MockDirectoryService implements DirectoryService
     {
         // TODO Auto-generated method stub
     }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OperationMetrics getOperationMetrics()
+    {
+        return null;
+    }
 }
@@ -36,6 +36,7 @@ import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -271,4 +272,17 @@ public class MockOperation implements OperationContext
     {
         this.partition = partition;
     }
+
+
+    @Override
+    public OperationProfile getProfile()
+    {
+        return null;
+    }
+
+
+    @Override
+    public void setProfile( OperationProfile profile )
+    {
+    }
 }
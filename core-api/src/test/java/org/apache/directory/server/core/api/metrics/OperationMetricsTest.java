@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.junit.Test;
+
+
+/**
+ * Tests the latency histograms and the operation metrics.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationMetricsTest
+{
+    @Test
+    public void testBuckets()
+    {
+        for ( long value : new long[] { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, 1L << 40 } )
+        {
+            int bucket = LatencyHistogram.getBucket( value );
+
+            assertTrue( LatencyHistogram.getLowestValue( bucket ) <= value );
+            assertTrue( LatencyHistogram.getLowestValue( bucket + 1 ) > value );
+        }
+
+        // The error is less than 1/16 of the value
+        long value = 1_000_000L;
+        long lowest = LatencyHistogram.getLowestValue( LatencyHistogram.getBucket( value ) );
+        assertTrue( value - lowest < value / LatencyHistogram.SUB_BUCKETS );
+    }
+
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram( "operation", "add" );
+
+        assertEquals( 0L, histogram.getValueAtPercentile( 50d ) );
+
+        for ( long i = 1L; i <= 1000L; i++ )
+        {
+            histogram.record( i * 1000L );
+        }
+
+        assertEquals( 1000L, histogram.getCount() );
+        assertEquals( 1_000_000L, histogram.getMax() );
+        assertEquals( 500L, histogram.getMeanMicros() );
+
+        long median = histogram.getValueAtPercentile( 50d );
+        assertTrue( ( median >= 500_000L ) && ( median < 500_000L * 17 / 16 ) );
+        assertEquals( 1_000_000L, histogram.getValueAtPercentile( 100d ) );
+    }
+
+
+    @Test
+    public void testOperations()
+    {
+        OperationMetrics metrics = new OperationMetrics( 2 );
+
+        long start = metrics.operationStarted();
+        assertEquals( 1, metrics.getOperationsInFlight() );
+        metrics.operationCompleted( "search", ResultCodeEnum.SUCCESS, "example", start );
+        metrics.operationCompleted( "search", ResultCodeEnum.SUCCESS, "example", metrics.operationStarted() );
+        metrics.operationCompleted( "search", ResultCodeEnum.NO_SUCH_OBJECT, "example", metrics.operationStarted() );
+        metrics.operationCompleted( "bind", ResultCodeEnum.SUCCESS, null, metrics.operationStarted() );
+        assertEquals( 0, metrics.getOperationsInFlight() );
+
+        assertEquals( 3, metrics.getOperationHistograms().size() );
+        LatencyHistogram histogram = metrics.getOperationHistogram( "search", ResultCodeEnum.SUCCESS, "example" );
+        assertEquals( 2L, histogram.getCount() );
+        assertSame( histogram, metrics.getOperationHistogram( "search", ResultCodeEnum.SUCCESS, "example" ) );
+        assertEquals( 1L,
+            metrics.getOperationHistogram( "bind", ResultCodeEnum.SUCCESS, OperationMetrics.NO_PARTITION ).getCount() );
+    }
+
+
+    @Test
+    public void testClients()
+    {
+        OperationMetrics metrics = new OperationMetrics( 2 );
+
+        metrics.requestCompleted( "search", ResultCodeEnum.SUCCESS, "10.0.0.1", metrics.requestStarted() );
+        metrics.requestCompleted( "search", ResultCodeEnum.SUCCESS, "10.0.0.2", metrics.requestStarted() );
+        metrics.requestCompleted( "abandon", null, "10.0.0.1", metrics.requestStarted() );
+
+        // Only 2 clients are tracked
+        metrics.requestCompleted( "search", ResultCodeEnum.SUCCESS, "10.0.0.3", metrics.requestStarted() );
+        metrics.requestCompleted( "search", ResultCodeEnum.SUCCESS, "10.0.0.4", metrics.requestStarted() );
+
+        Map<String, Long> counts = metrics.getClientRequestCounts();
+        assertEquals( 3, counts.size() );
+        assertEquals( Long.valueOf( 2L ), counts.get( "10.0.0.1" ) );
+        assertEquals( Long.valueOf( 1L ), counts.get( "10.0.0.2" ) );
+        assertEquals( Long.valueOf( 2L ), counts.get( OperationMetrics.OTHER_CLIENTS ) );
+        assertEquals( 0, metrics.getRequestsInFlight() );
+    }
+
+
+    @Test
+    public void testNoClientsByDefault() throws Exception
+    {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.requestCompleted( "search", ResultCodeEnum.SUCCESS, "10.0.0.1", metrics.requestStarted() );
+
+        assertTrue( metrics.getClientRequestCounts().isEmpty() );
+        assertEquals( 1L, metrics.getRequestHistogram( "search", ResultCodeEnum.SUCCESS ).getCount() );
+
+        StringBuilder sb = new StringBuilder();
+        metrics.writePrometheus( sb );
+        assertFalse( sb.toString().contains( "10.0.0.1" ) );
+
+        // Enabled by the configuration
+        metrics.setMaxClients( 10 );
+        metrics.requestCompleted( "search", ResultCodeEnum.SUCCESS, "10.0.0.1", metrics.requestStarted() );
+        assertEquals( Long.valueOf( 1L ), metrics.getClientRequestCounts().get( "10.0.0.1" ) );
+    }
+
+
+    @Test
+    public void testPrometheus() throws Exception
+    {
+        OperationMetrics metrics = new OperationMetrics( 10 );
+        metrics.operationCompleted( "add", ResultCodeEnum.SUCCESS, "dc=\"a\"", metrics.operationStarted() );
+        metrics.requestCompleted( "add", ResultCodeEnum.SUCCESS, "127.0.0.1", metrics.requestStarted() );
+        metrics.recordQueueWait( "default", 1000L );
+
+        StringBuilder sb = new StringBuilder();
+        metrics.writePrometheus( sb );
+        String text = sb.toString();
+
+        assertTrue( text.contains( "# TYPE apacheds_operation_duration_seconds summary\n" ) );
+        assertTrue( text.contains(
+            "apacheds_operation_duration_seconds_count{operation=\"add\",result=\"success\",partition=\"dc=\\\"a\\\"\"} 1\n" ) );
+        assertTrue( text.contains(
+            "apacheds_ldap_request_duration_seconds{request=\"add\",result=\"success\",quantile=\"0.99\"} " ) );
+        assertTrue( text.contains( "apacheds_ldap_queue_wait_seconds_sum{pool=\"default\"} 1.0E-6\n" ) );
+        assertTrue( text.contains( "apacheds_operations_in_flight 0\n" ) );
+        assertTrue( text.contains( "apacheds_ldap_client_requests_total{client=\"127.0.0.1\"} 1\n" ) );
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.junit.Test;
+
+
+/**
+ * Tests the operation profiles and the slow operation log.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SlowOperationLogTest
+{
+    @Test
+    public void testProfile()
+    {
+        OperationProfile profile = new OperationProfile();
+
+        profile.enter( "a" );
+        profile.enter( "b" );
+        profile.exit();
+        profile.enter( "b" );
+        profile.finish();
+        profile.addTime( "write", 2000L );
+        profile.entryScanned( true );
+        profile.entryScanned( false );
+        profile.entryReturned();
+        profile.annotate( "candidates", "full scan" );
+
+        assertTrue( profile.getPhaseNanos( "a" ) >= 0L );
+        assertEquals( 2000L, profile.getPhaseNanos( "write" ) );
+        assertEquals( 0L, profile.getPhaseNanos( "unknown" ) );
+        assertEquals( 2L, profile.getEntriesScanned() );
+        assertEquals( 1L, profile.getEntriesMatched() );
+        assertEquals( 1L, profile.getEntriesReturned() );
+
+        String text = profile.toString();
+        assertTrue( text.startsWith( "phases [a=" ) );
+        assertTrue( text.contains( ", b=" ) );
+        assertTrue( text.contains( ", write=2us]" ) );
+        assertTrue( text.contains( "entries scanned 2, matched 1, returned 1" ) );
+        assertTrue( text.endsWith( "candidates=full scan" ) );
+    }
+
+
+    @Test
+    public void testDisabled()
+    {
+        SlowOperationLog log = new SlowOperationLog( 0L, 10 );
+
+        assertFalse( log.isEnabled() );
+        assertNull( log.startProfile() );
+        assertFalse( log.isSlow( Long.MAX_VALUE ) );
+    }
+
+
+    @Test
+    public void testRecord() throws Exception
+    {
+        SlowOperationLog log = new SlowOperationLog( 10L, 2 );
+        long slow = TimeUnit.MILLISECONDS.toNanos( 20L );
+
+        DeleteOperationContext deleteContext = new DeleteOperationContext( null );
+        deleteContext.setDn( new Dn( "ou=fast" ) );
+        log.record( "delete", deleteContext, ResultCodeEnum.SUCCESS, TimeUnit.MILLISECONDS.toNanos( 5L ) );
+        assertEquals( 0L, log.getSlowCount() );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            deleteContext = new DeleteOperationContext( null );
+            deleteContext.setDn( new Dn( "ou=slow" + i ) );
+            deleteContext.setProfile( log.startProfile() );
+            log.record( "delete", deleteContext, ResultCodeEnum.SUCCESS, slow );
+        }
+
+        assertEquals( 3L, log.getSlowCount() );
+
+        // Only the last 2 operations are kept, the most recent first
+        List<String> operations = log.getSlowOperations( 10 );
+        assertEquals( 2, operations.size() );
+        assertTrue( operations.get( 0 ).contains( " delete took 20ms, result success, dn ou=slow2, phases [" ) );
+        assertTrue( operations.get( 1 ).contains( "dn ou=slow1" ) );
+        assertEquals( 1, log.getSlowOperations( 1 ).size() );
+
+        // Reducing the capacity drops the oldest operations
+        log.setCapacity( 1 );
+        operations = log.getSlowOperations( 10 );
+        assertEquals( 1, operations.size() );
+        assertTrue( operations.get( 0 ).contains( "dn ou=slow2" ) );
+    }
+}
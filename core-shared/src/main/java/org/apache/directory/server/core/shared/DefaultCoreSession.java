@@ -20,10 +20,8 @@
 package org.apache.directory.server.core.shared;
 
 
-import java.io.File;
 import java.io.IOException;
 import java.net.SocketAddress;
-import java.nio.file.Files;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,8 +31,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import jdbm.recman.BaseRecordManager;
-
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
 import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
@@ -95,6 +91,7 @@ import org.apache.directory.server.core.api.interceptor.context.SearchOperationC
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.mina.core.session.IoSession;
 import org.slf4j.Logger;
@@ -1184,8 +1181,19 @@ public class DefaultCoreSession implements CoreSession
      */
     @Override
     public Cursor<Entry> search( SearchRequest searchRequest ) throws LdapException
+    {
+        return search( searchRequest, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Entry> search( SearchRequest searchRequest, SearchPosition resumePosition ) throws LdapException
     {
         SearchOperationContext searchContext = new SearchOperationContext( this, searchRequest );
+        searchContext.setResumePosition( resumePosition );
         searchContext.setSyncreplSearch( searchRequest.getControls().containsKey( SyncRequestValue.OID ) );
 
         OperationManager operationManager = directoryService.getOperationManager();
@@ -1218,9 +1226,12 @@ public class DefaultCoreSession implements CoreSession
         {
             cursor = operationManager.search( searchContext );
 
-            if ( ( sortRespCtrl != null ) && ( sortRespCtrl.getSortResult() == SortResultCode.SUCCESS ) )
+            // The partition may have already returned the entries in order, using an index
+            if ( ( sortRespCtrl != null ) && ( sortRespCtrl.getSortResult() == SortResultCode.SUCCESS )
+                && !searchContext.isSorted() )
             {
-                cursor = sortResults( cursor, sortControl, getDirectoryService().getSchemaManager() );
+                cursor = sortResults( cursor, searchContext.getSizeLimit(), sortControl,
+                    getDirectoryService().getSchemaManager(), getDirectoryService().getSortMemoryBudget() );
             }
 
             // the below condition is to satisfy the scenario 6 in section 2 of rfc2891
@@ -1304,82 +1315,79 @@ public class DefaultCoreSession implements CoreSession
     {
         SortResponse resp = new SortResponseImpl();
 
-        List<SortKey> keys = sortControl.getSortKeys();
-
-        // only ONE key is supported by the server for now
-        if ( keys.size() > 1 )
-        {
-            ldapResult.setDiagnosticMessage( "Cannot sort results based on more than one attribute" );
-            resp.setSortResult( SortResultCode.UNWILLINGTOPERFORM );
-            return resp;
-        }
-
-        SortKey sk = keys.get( 0 );
-
-        AttributeType at = schemaManager.getAttributeType( sk.getAttributeTypeDesc() );
-
-        if ( at == null )
-        {
-            ldapResult.setDiagnosticMessage( "No attribute with the name " + sk.getAttributeTypeDesc()
-                + " exists in the server's schema" );
-            resp.setSortResult( SortResultCode.NOSUCHATTRIBUTE );
-            resp.setAttributeName( sk.getAttributeTypeDesc() );
-            return resp;
-        }
-
-        String mrOid = sk.getMatchingRuleId();
-
-        if ( mrOid != null )
+        // All the keys must be usable, the first failing one is reported
+        for ( SortKey sk : sortControl.getSortKeys() )
         {
-            MatchingRule mr = at.getOrdering();
+            AttributeType at = schemaManager.getAttributeType( sk.getAttributeTypeDesc() );
 
-            if ( ( mr != null ) && ( !mrOid.equals( mr.getOid() ) ) )
+            if ( at == null )
             {
-                ldapResult.setDiagnosticMessage( "Given matchingrule " + mrOid
-                    + " is not applicable for the attribute " + sk.getAttributeTypeDesc() );
-                resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
+                ldapResult.setDiagnosticMessage( "No attribute with the name " + sk.getAttributeTypeDesc()
+                    + " exists in the server's schema" );
+                resp.setSortResult( SortResultCode.NOSUCHATTRIBUTE );
                 resp.setAttributeName( sk.getAttributeTypeDesc() );
                 return resp;
             }
 
-            try
+            String mrOid = sk.getMatchingRuleId();
+
+            if ( mrOid != null )
             {
-                schemaManager.lookupComparatorRegistry( mrOid );
+                MatchingRule mr = at.getOrdering();
+
+                if ( ( mr != null ) && ( !mrOid.equals( mr.getOid() ) ) )
+                {
+                    ldapResult.setDiagnosticMessage( "Given matchingrule " + mrOid
+                        + " is not applicable for the attribute " + sk.getAttributeTypeDesc() );
+                    resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
+                    resp.setAttributeName( sk.getAttributeTypeDesc() );
+                    return resp;
+                }
+
+                try
+                {
+                    schemaManager.lookupComparatorRegistry( mrOid );
+                }
+                catch ( LdapException e )
+                {
+                    ldapResult.setDiagnosticMessage( "Given matchingrule " + mrOid + " is not supported" );
+                    resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
+                    resp.setAttributeName( sk.getAttributeTypeDesc() );
+                    return resp;
+                }
             }
-            catch ( LdapException e )
+            else
             {
-                ldapResult.setDiagnosticMessage( "Given matchingrule " + mrOid + " is not supported" );
-                resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
-                resp.setAttributeName( sk.getAttributeTypeDesc() );
-                return resp;
-            }
-        }
-        else
-        {
-            MatchingRule mr = at.getOrdering();
+                MatchingRule mr = at.getOrdering();
 
-            if ( mr == null )
-            {
-                mr = at.getEquality();
-            }
+                if ( mr == null )
+                {
+                    mr = at.getEquality();
+                }
 
-            ldapResult.setDiagnosticMessage( "Matchingrule is required for sorting by the attribute "
-                + sk.getAttributeTypeDesc() );
-            resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
-            resp.setAttributeName( sk.getAttributeTypeDesc() );
+                boolean hasComparator = false;
 
-            if ( mr == null )
-            {
-                return resp;
-            }
+                if ( mr != null )
+                {
+                    try
+                    {
+                        schemaManager.lookupComparatorRegistry( mr.getOid() );
+                        hasComparator = true;
+                    }
+                    catch ( LdapException e )
+                    {
+                        // Handled below
+                    }
+                }
 
-            try
-            {
-                schemaManager.lookupComparatorRegistry( mr.getOid() );
-            }
-            catch ( LdapException e )
-            {
-                return resp;
+                if ( !hasComparator )
+                {
+                    ldapResult.setDiagnosticMessage( "Matchingrule is required for sorting by the attribute "
+                        + sk.getAttributeTypeDesc() );
+                    resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
+                    resp.setAttributeName( sk.getAttributeTypeDesc() );
+                    return resp;
+                }
             }
         }
 
@@ -1390,19 +1398,25 @@ public class DefaultCoreSession implements CoreSession
 
 
     /**
-     * Sorts the entries based on the given sortkey and returns the cursor
+     * Sorts the entries based on the given sort keys and returns the cursor. The entries
+     * are sorted in memory, and spilled on disk if they don't fit in the sort memory budget
+     * (see {@link DirectoryService#getSortMemoryBudget()}). When the search has a size limit,
+     * only the entries which can be returned are kept. This size limit must be the effective
+     * one : the protocol layer sets the request size limit to the smallest of the requested
+     * and the server limits before searching.
      * 
      * @param unsortedEntries the cursor containing un-sorted entries
+     * @param sizeLimit the maximum number of entries to return, 0 if there is no limit
      * @param control the sort control
      * @param schemaManager schema manager
+     * @param memoryBudget the memory budget of the sort, in bytes
      * @return a cursor containing sorted entries
      * @throws CursorException
      * @throws LdapException
      * @throws IOException
-     * @throws KeyNotFoundException 
      */
-    private Cursor<Entry> sortResults( Cursor<Entry> unsortedEntries, SortRequest control, SchemaManager schemaManager )
-        throws CursorException, LdapException, IOException
+    static Cursor<Entry> sortResults( Cursor<Entry> unsortedEntries, long sizeLimit, SortRequest control,
+        SchemaManager schemaManager, long memoryBudget ) throws CursorException, LdapException, IOException
     {
         unsortedEntries.beforeFirst();
 
@@ -1420,49 +1434,45 @@ public class DefaultCoreSession implements CoreSession
             return unsortedEntries;
         }
 
-        SortKey sk = control.getSortKeys().get( 0 );
+        // One more entry than the size limit is kept, so that the size limit is still detected
+        int topN = 0;
 
-        AttributeType at = schemaManager.getAttributeType( sk.getAttributeTypeDesc() );
-
-        SortedEntryComparator comparator = new SortedEntryComparator( at, sk.getMatchingRuleId(), sk.isReverseOrder(),
-            schemaManager );
-
-        SortedEntrySerializer keySerializer = new SortedEntrySerializer();
-        SortedEntrySerializer.setSchemaManager( schemaManager );
-        
-        File file = null;
-        
-        try 
+        if ( sizeLimit > 0 )
         {
-            file = Files.createTempFile( "replica", ".sorted-data" ).toFile();    // see DIRSERVER-2007
-        } 
-        catch ( IOException e ) 
-        {
-            // see DIRSERVER-2091
-            LOG.error( "Error creating temp file in directory {} for sorting: {}",  
-                System.getProperty( "java.io.tmpdir" ),  e.getMessage(), e );
-            throw e;
+            topN = ( int ) Math.min( sizeLimit + 1, Integer.MAX_VALUE );
         }
 
-        BaseRecordManager recMan = new BaseRecordManager( file.getAbsolutePath() );
+        EntrySorter sorter = new EntrySorter( control.getSortKeys(), schemaManager, memoryBudget, topN );
 
-        jdbm.btree.BTree<Entry, String> btree = new jdbm.btree.BTree<>( recMan, comparator, keySerializer, NullStringSerializer.INSTANCE );
-        
+        try
+        {
+            sorter.add( first );
+
+            // at this stage the cursor will be _on_ the next element, so read it
+            sorter.add( unsortedEntries.get() );
 
-        btree.insert( first, "", false );
+            while ( unsortedEntries.next() )
+            {
+                sorter.add( unsortedEntries.get() );
+            }
 
-        // at this stage the cursor will be _on_ the next element, so read it
-        btree.insert( unsortedEntries.get(), "", false );
+            unsortedEntries.close();
 
-        while ( unsortedEntries.next() )
+            return sorter.sort();
+        }
+        catch ( IOException e )
         {
-            Entry entry = unsortedEntries.get();
-            btree.insert( entry, "", false );
+            // see DIRSERVER-2091
+            LOG.error( "Error while sorting the entries in directory {} : {}",
+                System.getProperty( "java.io.tmpdir" ), e.getMessage(), e );
+            sorter.deleteRuns();
+            throw e;
+        }
+        catch ( LdapException | CursorException | RuntimeException e )
+        {
+            sorter.deleteRuns();
+            throw e;
         }
-
-        unsortedEntries.close();
-
-        return new SortedEntryCursor( btree, recMan, file );
     }
 
 
@@ -0,0 +1,488 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.shared;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Sorts the entries returned by a search using the server side sort control.
+ * <br>
+ * The entries are sorted in memory as long as their estimated size is below a budget. Above this
+ * budget, the sorted entries are written to a temporary file (a run) and a new batch is started.
+ * When all the entries have been added, the runs are merged into a single file, which is read
+ * by a {@link SortedEntryCursor}. At most {@link #MAX_FAN_IN} runs are merged at once, so the
+ * runs may be merged in several passes.
+ * <br>
+ * When only the N first entries are needed (the search has a size limit), the entries are kept
+ * in a bounded heap, and the other entries are dropped as soon as they are added.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntrySorter
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( EntrySorter.class );
+
+    /** The default memory budget of a sort : 16 MB */
+    public static final long DEFAULT_MEMORY_BUDGET = 16L * 1024L * 1024L;
+
+    /** The estimated memory used by an entry, an attribute and a value, excluding the value bytes */
+    private static final int ENTRY_SIZE = 256;
+    private static final int ATTRIBUTE_SIZE = 96;
+    private static final int VALUE_SIZE = 48;
+
+    /** The maximum number of runs merged at once */
+    static final int MAX_FAN_IN = 64;
+
+    /** The comparator used on the sort values */
+    private final SortedEntryComparator comparator;
+
+    /** The comparator used on the buffered entries : the sort values, then the order of arrival */
+    private final Comparator<SortedEntry> entryComparator;
+
+    /** The maximum estimated size of the buffered entries */
+    private final long memoryBudget;
+
+    /** The number of entries to return, 0 if we need all of them */
+    private final int topN;
+
+    /** The entries sorted in memory */
+    private List<SortedEntry> buffer = new ArrayList<>();
+
+    /** The N best entries seen so far, the worst one on top. Null if we don't have a top N */
+    private PriorityQueue<SortedEntry> topEntries;
+
+    /** The estimated size of the buffered entries */
+    private long bufferSize;
+
+    /** The number of added entries */
+    private long sequence;
+
+    /** The runs already written on disk, in order of creation */
+    private final List<File> runs = new ArrayList<>();
+
+    /** The serializer used to write the entries on disk */
+    private final SortedEntrySerializer serializer = new SortedEntrySerializer();
+
+    /**
+     * An entry, with its sort values
+     */
+    private static final class SortedEntry
+    {
+        private final Entry entry;
+        private final Object[] values;
+        private final long sequence;
+        private final long size;
+
+
+        private SortedEntry( Entry entry, Object[] values, long sequence, long size )
+        {
+            this.entry = entry;
+            this.values = values;
+            this.sequence = sequence;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The entry currently read from a run, during the merge
+     */
+    private final class RunReader
+    {
+        private final DataInputStream in;
+        private final int index;
+        private byte[] bytes;
+        private Object[] values;
+
+
+        private RunReader( File run, int index ) throws IOException
+        {
+            this.in = new DataInputStream( new BufferedInputStream( new FileInputStream( run ) ) );
+            this.index = index;
+        }
+
+
+        /**
+         * Reads the next entry of the run, returning false at the end of the run
+         */
+        private boolean next() throws IOException, LdapException
+        {
+            int length;
+
+            try
+            {
+                length = in.readInt();
+            }
+            catch ( EOFException eofe )
+            {
+                return false;
+            }
+
+            bytes = new byte[length];
+            in.readFully( bytes );
+            values = comparator.getSortValues( ( Entry ) serializer.deserialize( bytes ) );
+
+            return true;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of EntrySorter.
+     *
+     * @param sortKeys the sort keys
+     * @param schemaManager the schema manager
+     * @param memoryBudget the maximum estimated size of the entries sorted in memory, in bytes
+     * @param topN the number of entries we need, or 0 if all the entries must be returned
+     * @throws LdapException if the sort keys can't be used
+     */
+    public EntrySorter( List<SortKey> sortKeys, SchemaManager schemaManager, long memoryBudget, int topN )
+        throws LdapException
+    {
+        this.comparator = new SortedEntryComparator( sortKeys, schemaManager );
+        this.memoryBudget = memoryBudget;
+        this.topN = topN;
+
+        entryComparator = ( entry1, entry2 ) ->
+        {
+            int c = comparator.compare( entry1.values, entry2.values );
+
+            return ( c != 0 ) ? c : Long.compare( entry1.sequence, entry2.sequence );
+        };
+
+        if ( topN > 0 )
+        {
+            topEntries = new PriorityQueue<>( Math.min( topN, 1024 ), entryComparator.reversed() );
+        }
+
+        SortedEntrySerializer.setSchemaManager( schemaManager );
+    }
+
+
+    /**
+     * Adds an entry to sort.
+     *
+     * @param entry the entry
+     * @throws LdapException if the entry's sort values can't be computed
+     * @throws IOException if the entries can't be written on disk
+     */
+    public void add( Entry entry ) throws LdapException, IOException
+    {
+        SortedEntry sortedEntry = new SortedEntry( entry, comparator.getSortValues( entry ), sequence++,
+            estimateSize( entry ) );
+
+        if ( topEntries != null )
+        {
+            if ( topEntries.size() == topN )
+            {
+                if ( entryComparator.compare( sortedEntry, topEntries.peek() ) > 0 )
+                {
+                    // Not in the N first entries
+                    return;
+                }
+
+                bufferSize -= topEntries.poll().size;
+            }
+
+            topEntries.add( sortedEntry );
+            bufferSize += sortedEntry.size;
+
+            if ( bufferSize > memoryBudget )
+            {
+                // The N first entries don't fit in memory, sort all the entries
+                buffer.addAll( topEntries );
+                topEntries = null;
+                spill();
+            }
+
+            return;
+        }
+
+        buffer.add( sortedEntry );
+        bufferSize += sortedEntry.size;
+
+        if ( bufferSize > memoryBudget )
+        {
+            spill();
+        }
+    }
+
+
+    /**
+     * Sorts the added entries.
+     *
+     * @return a cursor on the sorted entries
+     * @throws LdapException if the entries can't be read back
+     * @throws IOException if the entries can't be merged on disk
+     */
+    public Cursor<Entry> sort() throws LdapException, IOException
+    {
+        if ( runs.isEmpty() )
+        {
+            List<SortedEntry> sorted = ( topEntries != null ) ? new ArrayList<>( topEntries ) : buffer;
+            sorted.sort( entryComparator );
+
+            List<Entry> entries = new ArrayList<>( sorted.size() );
+
+            for ( SortedEntry sortedEntry : sorted )
+            {
+                entries.add( sortedEntry.entry );
+            }
+
+            return new ListCursor<>( entries );
+        }
+
+        if ( !buffer.isEmpty() )
+        {
+            spill();
+        }
+
+        try
+        {
+            return merge();
+        }
+        finally
+        {
+            deleteRuns();
+        }
+    }
+
+
+    /**
+     * Deletes the temporary files. This must be called if the sort is not completed.
+     */
+    public void deleteRuns()
+    {
+        for ( File run : runs )
+        {
+            if ( !run.delete() )
+            {
+                LOG.warn( "Failed to delete the sorted entries run {}", run );
+            }
+        }
+
+        runs.clear();
+    }
+
+
+    /**
+     * Sorts the buffered entries, and writes them in a new run.
+     */
+    private void spill() throws IOException
+    {
+        buffer.sort( entryComparator );
+
+        File run = Files.createTempFile( "sorted", ".run" ).toFile();
+        runs.add( run );
+
+        LOG.debug( "Writing {} sorted entries in {}", buffer.size(), run );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( run ) ) ) )
+        {
+            for ( SortedEntry sortedEntry : buffer )
+            {
+                byte[] bytes = serializer.serialize( sortedEntry.entry );
+                out.writeInt( bytes.length );
+                out.write( bytes );
+            }
+        }
+
+        buffer = new ArrayList<>();
+        bufferSize = 0L;
+    }
+
+
+    /**
+     * Merges all the runs into a single file. When there are too many runs to be merged at once,
+     * consecutive runs are first merged in bigger runs, in several passes if needed.
+     */
+    private Cursor<Entry> merge() throws IOException, LdapException
+    {
+        while ( runs.size() > MAX_FAN_IN )
+        {
+            List<File> merged = new ArrayList<>( ( runs.size() + MAX_FAN_IN - 1 ) / MAX_FAN_IN );
+
+            try
+            {
+                for ( int i = 0; i < runs.size(); i += MAX_FAN_IN )
+                {
+                    File run = Files.createTempFile( "sorted", ".run" ).toFile();
+                    merged.add( run );
+                    mergeRuns( runs.subList( i, Math.min( i + MAX_FAN_IN, runs.size() ) ), run, false );
+                }
+            }
+            catch ( IOException | LdapException | RuntimeException e )
+            {
+                for ( File run : merged )
+                {
+                    if ( run.exists() && !run.delete() )
+                    {
+                        LOG.warn( "Failed to delete the sorted entries run {}", run );
+                    }
+                }
+
+                throw e;
+            }
+
+            LOG.debug( "Merged {} runs into {} runs", runs.size(), merged.size() );
+
+            deleteRuns();
+            runs.addAll( merged );
+        }
+
+        File merged = Files.createTempFile( "sorted", ".data" ).toFile();
+        long[] offsets = mergeRuns( runs, merged, true );
+
+        LOG.debug( "Merged {} runs, {} sorted entries in {}", runs.size(), offsets.length, merged );
+
+        return new SortedEntryCursor( merged, offsets );
+    }
+
+
+    /**
+     * Merges some runs into a file. A run contains older entries than the next runs, so the run
+     * index is used to keep the order of arrival of equal entries. The file is deleted if the
+     * merge fails.
+     *
+     * @param group the runs to merge, in order of creation
+     * @param target the file to write
+     * @param withOffsets if the offsets of the written entries are needed
+     * @return the offsets of the entries in the file, or null if not needed
+     */
+    private long[] mergeRuns( List<File> group, File target, boolean withOffsets ) throws IOException, LdapException
+    {
+        PriorityQueue<RunReader> readers = new PriorityQueue<>( group.size(), ( reader1, reader2 ) ->
+        {
+            int c = comparator.compare( reader1.values, reader2.values );
+
+            return ( c != 0 ) ? c : Integer.compare( reader1.index, reader2.index );
+        } );
+
+        List<RunReader> allReaders = new ArrayList<>( group.size() );
+        long[] offsets = withOffsets ? new long[1024] : null;
+        int count = 0;
+        long offset = 0L;
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( target ) ) ) )
+        {
+            for ( int i = 0; i < group.size(); i++ )
+            {
+                RunReader reader = new RunReader( group.get( i ), i );
+                allReaders.add( reader );
+
+                if ( reader.next() )
+                {
+                    readers.add( reader );
+                }
+            }
+
+            while ( !readers.isEmpty() )
+            {
+                RunReader reader = readers.poll();
+
+                if ( withOffsets )
+                {
+                    if ( count == offsets.length )
+                    {
+                        offsets = Arrays.copyOf( offsets, count * 2 );
+                    }
+
+                    offsets[count++] = offset;
+                    offset += 4 + reader.bytes.length;
+                }
+
+                out.writeInt( reader.bytes.length );
+                out.write( reader.bytes );
+
+                if ( reader.next() )
+                {
+                    readers.add( reader );
+                }
+            }
+        }
+        catch ( IOException | LdapException | RuntimeException e )
+        {
+            if ( !target.delete() )
+            {
+                LOG.warn( "Failed to delete the sorted entries file {}", target );
+            }
+
+            throw e;
+        }
+        finally
+        {
+            for ( RunReader reader : allReaders )
+            {
+                reader.in.close();
+            }
+        }
+
+        return withOffsets ? Arrays.copyOf( offsets, count ) : null;
+    }
+
+
+    /**
+     * Estimates the memory used by an entry
+     */
+    private static long estimateSize( Entry entry )
+    {
+        long size = ENTRY_SIZE;
+
+        for ( Attribute attribute : entry )
+        {
+            size += ATTRIBUTE_SIZE;
+
+            for ( Value value : attribute )
+            {
+                // The human readable values are stored as bytes and as a string
+                size += VALUE_SIZE + ( value.isHumanReadable() ? 3L * value.length() : value.length() );
+            }
+        }
+
+        return size;
+    }
+}
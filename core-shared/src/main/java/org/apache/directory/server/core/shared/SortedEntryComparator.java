@@ -6,204 +6,236 @@
  *  to you under the Apache License, Version 2.0 (the
  *  "License"); you may not use this file except in compliance
  *  with the License.  You may obtain a copy of the License at
- * 
+ *
  *    http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  *  Unless required by applicable law or agreed to in writing,
  *  software distributed under the License is distributed on an
  *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
  *  KIND, either express or implied.  See the License for the
  *  specific language governing permissions and limitations
  *  under the License.
- * 
+ *
  */
 package org.apache.directory.server.core.shared;
 
 
-import java.io.Serializable;
 import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.List;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.LdapComparator;
 import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
-import org.apache.directory.api.ldap.model.schema.comparators.ParsedDnComparator;
+
 
 /**
- * A comparator to sort the entries as per <a href="http://tools.ietf.org/html/rfc2891">RFC 2891</a>
- * 
+ * A comparator to sort the entries as per <a href="http://tools.ietf.org/html/rfc2891">RFC 2891</a>,
+ * using all the sort keys of the control.
+ * <br>
+ * The values used to sort an entry are extracted once, using {@link #getSortValues(Entry)} :
+ * for each key, the smallest normalized value of the attribute, or null if the entry does not
+ * have it. Those arrays of values are then compared key after key.
+ *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-class SortedEntryComparator implements Comparator<Entry>, Serializable
+class SortedEntryComparator implements Comparator<Object[]>
 {
+    /** the sort keys' attribute types */
+    private final AttributeType[] types;
 
-    /** the attribute's type */
-    private transient AttributeType type;
-
-    /** comparator used for comparing the values of the given attribute type */
-    private transient LdapComparator comparator;
+    /** the comparators used for comparing the values of each sort key, null for the entryDn */
+    private final LdapComparator<Object>[] comparators;
 
-    /** flag to indicate if the attribute type is multivalued */
-    private boolean multivalued;
+    /** the normalizers used for each sort key */
+    private final Normalizer[] normalizers;
 
-    /** flag for indicating the order of sorting */
-    private boolean reverse;
+    /** flags for indicating the order of sorting, per key */
+    private final boolean[] reverse;
 
-    /** flag to indicate if the attribute is human readable or binary */
-    private boolean hr;
+    /** flags to indicate if the attribute is human readable or binary, per key */
+    private final boolean[] hr;
 
 
     /**
-     * 
      * Creates a new instance of SortedEntryComparator.
      *
-     * @param at the attribute's type
-     * @param mrOid the OID or name of the matchingrule
-     * @param reverse flag to indicate the sort order
+     * @param sortKeys the sort keys, in order of precedence
+     * @param schemaManager the schema manager
+     * @throws LdapException if an attribute type or a matching rule can't be found
      */
-    SortedEntryComparator( AttributeType at, String mrule, boolean reverse, SchemaManager schemaManager ) throws LdapException
+    @SuppressWarnings("unchecked")
+    SortedEntryComparator( List<SortKey> sortKeys, SchemaManager schemaManager ) throws LdapException
     {
-        this.type = at;
-        this.reverse = reverse;
-
-        if ( !at.isSingleValued() )
-        {
-            multivalued = true;
-        }
-        
-        // Special case : entryDn
-        if ( SchemaConstants.ENTRY_DN_AT_OID.equals( at.getOid() ) )
+        int nbKeys = sortKeys.size();
+        types = new AttributeType[nbKeys];
+        comparators = new LdapComparator[nbKeys];
+        normalizers = new Normalizer[nbKeys];
+        reverse = new boolean[nbKeys];
+        hr = new boolean[nbKeys];
+
+        for ( int i = 0; i < nbKeys; i++ )
         {
-            // We will use the Entry's DN comparator.
-            comparator = new ParsedDnComparator( SchemaConstants.ENTRY_DN_AT_OID );
-            comparator.setSchemaManager( schemaManager );
-            hr = true;
-        }
-        else
-        { 
-            hr = at.getSyntax().isHumanReadable();
-    
-            if ( mrule != null )
+            SortKey sk = sortKeys.get( i );
+            AttributeType at = schemaManager.lookupAttributeTypeRegistry( sk.getAttributeTypeDesc() );
+
+            types[i] = at;
+            reverse[i] = sk.isReverseOrder();
+
+            // Special case : entryDn. We will use the entry's DN
+            if ( SchemaConstants.ENTRY_DN_AT_OID.equals( at.getOid() ) )
             {
-                comparator = schemaManager.lookupComparatorRegistry( mrule );
+                continue;
+            }
+
+            hr[i] = at.getSyntax().isHumanReadable();
+
+            MatchingRule mr;
+
+            if ( sk.getMatchingRuleId() != null )
+            {
+                mr = schemaManager.lookupMatchingRuleRegistry( sk.getMatchingRuleId() );
             }
             else
             {
-                MatchingRule mr = at.getOrdering();
-                
+                mr = at.getOrdering();
+
                 if ( mr == null )
                 {
                     mr = at.getEquality();
                 }
-                
-                comparator = schemaManager.lookupComparatorRegistry( mr.getOid() );
             }
-            
-            comparator.setSchemaManager( schemaManager );
+
+            comparators[i] = ( LdapComparator<Object> ) mr.getLdapComparator();
+            normalizers[i] = mr.getNormalizer();
         }
     }
 
 
-    @Override
-    public int compare( Entry entry1, Entry entry2 )
+    /**
+     * Extracts the values used to sort an entry.
+     *
+     * @param entry the entry
+     * @return the values, one per sort key
+     * @throws LdapException if a value can't be normalized
+     */
+    Object[] getSortValues( Entry entry ) throws LdapException
     {
-        Attribute at1 = entry1.get( type );
-
-        Attribute at2 = entry2.get( type );
+        Object[] values = new Object[types.length];
 
-        // as per section 2.2 of the spec null values are considered larger
-        if ( at1 == null )
+        for ( int i = 0; i < types.length; i++ )
         {
-            return reverse ? -1 : 1;
-        }
-        else if ( at2 == null )
-        {
-            return reverse ? 1 : -1;
-        }
+            if ( comparators[i] == null )
+            {
+                values[i] = entry.getDn();
+                continue;
+            }
 
-        Object o1;
-        Object o2;
+            Attribute attribute = entry.get( types[i] );
 
-        if ( multivalued )
-        {
-            TreeSet ts = new TreeSet( comparator );
+            if ( attribute == null )
+            {
+                continue;
+            }
 
-            o1 = sortAndGetFirst( at1, ts );
+            // For multi-valued attributes, the least value is used
+            for ( Value value : attribute )
+            {
+                Object sortValue;
 
-            ts.clear();
-            o2 = sortAndGetFirst( at2, ts );
+                if ( hr[i] )
+                {
+                    sortValue = normalizers[i].normalize( value.getString() );
+                }
+                else
+                {
+                    sortValue = value.getBytes();
+                }
+
+                if ( ( values[i] == null ) || ( comparators[i].compare( sortValue, values[i] ) < 0 ) )
+                {
+                    values[i] = sortValue;
+                }
+            }
         }
-        else
+
+        return values;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compare( Object[] values1, Object[] values2 )
+    {
+        for ( int i = 0; i < types.length; i++ )
         {
-            Value v1 = at1.get();
-            Value v2 = at2.get();
+            Object value1 = values1[i];
+            Object value2 = values2[i];
+            int c;
 
-            if ( hr )
+            // as per section 2.2 of the spec null values are considered larger
+            if ( value1 == null )
             {
-                o1 = v1.getString();
-                o2 = v2.getString();
+                c = ( value2 == null ) ? 0 : 1;
             }
-            else
+            else if ( value2 == null )
             {
-                o1 = v1.getBytes();
-                o2 = v2.getBytes();
+                c = -1;
             }
-        }
-
-        int c;
-
-        try
-        {
-            if ( reverse )
+            else if ( comparators[i] == null )
             {
-                c = comparator.compare( comparator.getNormalizer().normalize( ( String ) o2 ), o1 );
+                c = compareDns( ( Dn ) value1, ( Dn ) value2 );
             }
             else
             {
-                c = comparator.compare( comparator.getNormalizer().normalize( ( String ) o1 ), o2 );
+                c = comparators[i].compare( value1, value2 );
             }
-    
-            if ( c == 0 )
+
+            if ( c != 0 )
             {
-                return 1;
+                return reverse[i] ? -c : c;
             }
-
-            return c;
-        }
-        catch ( LdapException le )
-        {
-            return 0;
         }
+
+        return 0;
     }
 
 
     /**
-     * sorts the values of an attribute and picks the least value
-     * 
-     * @param at the attribute
-     * @param ts the TreeSet for sorting 
-     * @return the least value among the values of the attribute
+     * Compares two DNs, RDN by RDN starting from the top. The descendants of an entry are
+     * sorted before the entry, so that the entries can be deleted in this order.
      */
-    private Object sortAndGetFirst( Attribute at, TreeSet ts )
+    private static int compareDns( Dn dn1, Dn dn2 )
     {
-        for ( Value v : at )
+        List<Rdn> rdns1 = dn1.getRdns();
+        List<Rdn> rdns2 = dn2.getRdns();
+        int pos1 = rdns1.size() - 1;
+        int pos2 = rdns2.size() - 1;
+
+        while ( ( pos1 >= 0 ) && ( pos2 >= 0 ) )
         {
-            if ( hr )
-            {
-                ts.add( v.getNormalized() );
-            }
-            else
+            int c = rdns1.get( pos1 ).getNormName().compareTo( rdns2.get( pos2 ).getNormName() );
+
+            if ( c != 0 )
             {
-                ts.add( v.getBytes() );
+                return c;
             }
+
+            pos1--;
+            pos2--;
         }
 
-        return ts.first();
+        return rdns2.size() - rdns1.size();
     }
-}
\ No newline at end of file
+}
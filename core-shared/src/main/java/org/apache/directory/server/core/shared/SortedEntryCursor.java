@@ -1,20 +1,20 @@
 /*
- *   Licensed to the Apache Software Foundation (ASF) under one
- *   or more contributor license agreements.  See the NOTICE file
- *   distributed with this work for additional information
- *   regarding copyright ownership.  The ASF licenses this file
- *   to you under the Apache License, Version 2.0 (the
- *   "License"); you may not use this file except in compliance
- *   with the License.  You may obtain a copy of the License at
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
  *
- *     http://www.apache.org/licenses/LICENSE-2.0
+ *    http://www.apache.org/licenses/LICENSE-2.0
  *
- *   Unless required by applicable law or agreed to in writing,
- *   software distributed under the License is distributed on an
- *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- *   KIND, either express or implied.  See the License for the
- *   specific language governing permissions and limitations
- *   under the License.
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
  *
  */
 package org.apache.directory.server.core.shared;
@@ -22,13 +22,8 @@ package org.apache.directory.server.core.shared;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.List;
-import java.util.NoSuchElementException;
-
-import jdbm.RecordManager;
-import jdbm.btree.BTree;
-import jdbm.helper.Tuple;
-import jdbm.helper.TupleBrowser;
 
 import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
@@ -43,10 +38,11 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * Cursor for sorted entries.
- * 
- * Note: This currently uses JDBM, but will be migrated to use Mavibot
- *       when ready.
+ * Cursor for sorted entries which have been spilled on disk by the {@link EntrySorter}.
+ *
+ * The data file contains the serialized entries, in order, each one prefixed by its
+ * length. The offset of each entry is kept in memory, so the cursor can move in
+ * both directions.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -54,31 +50,45 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
 {
 
     private static final Logger LOG = LoggerFactory.getLogger( SortedEntryCursor.class );
-    
-    private TupleBrowser browser;
 
-    private final Tuple tuple = new Tuple();
+    /** The serializer used to read the entries */
+    private final SortedEntrySerializer serializer = new SortedEntrySerializer();
+
+    /** The file containing the sorted entries */
+    private final File dataFile;
+
+    /** The opened data file */
+    private RandomAccessFile data;
 
-    private RecordManager recMan;
+    /** The position of each entry in the data file */
+    private final long[] offsets;
 
-    private File dataFile;
-    
-    private BTree<Entry, String> btree;
-    
+    /** The current position, -1 before the first entry, offsets.length after the last one */
+    private int pos = -1;
 
-    public SortedEntryCursor( BTree<Entry, String> btree, RecordManager recMan, File dataFile ) throws IOException
+    /** The current entry */
+    private Entry entry;
+
+
+    /**
+     * Creates a new instance of SortedEntryCursor.
+     *
+     * @param dataFile the file containing the sorted entries. It will be deleted when the cursor is closed
+     * @param offsets the position of each entry in the file
+     * @throws IOException if the file can't be opened
+     */
+    public SortedEntryCursor( File dataFile, long[] offsets ) throws IOException
     {
-        this.recMan = recMan;
         this.dataFile = dataFile;
-        this.btree = btree;
-        browser = btree.browse();
+        this.offsets = offsets;
+        data = new RandomAccessFile( dataFile, "r" );
     }
 
 
     @Override
     public boolean available()
     {
-        return tuple.getKey() != null;
+        return entry != null;
     }
 
 
@@ -99,31 +109,18 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
     @Override
     public void beforeFirst() throws LdapException, CursorException
     {
-        try
-        {
-            clearValue();
-            browser = btree.browse();
-        }
-        catch ( IOException e )
-        {
-            throw new CursorException( e );
-        }
+        checkNotClosed();
+        pos = -1;
+        entry = null;
     }
 
 
     @Override
     public void afterLast() throws LdapException, CursorException
     {
-        try
-        {
-            clearValue();
-            browser = btree.browse( null );
-        }
-        catch ( IOException e )
-        {
-            throw new CursorException( e );
-        }
-
+        checkNotClosed();
+        pos = offsets.length;
+        entry = null;
     }
 
 
@@ -146,73 +143,68 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
     @Override
     public boolean previous() throws LdapException, CursorException
     {
-        try
-        {
+        checkNotClosed();
 
-            if ( browser == null )
-            {
-                browser = btree.browse( null );
-            }
-            
-            if ( browser.getPrevious( tuple ) )
-            {
-                return true;
-            }
-        }
-        catch ( IOException e )
+        if ( pos >= 0 )
         {
-            throw new CursorException( e );
-        }
-        catch ( NoSuchElementException e )
-        {
-            // ignore this is due to the call wrapped.prev()
-            // instead of doing a check like if(wrapped.hasPrev())
+            pos--;
         }
 
-        clearValue();
-        return false;
+        return read();
     }
 
 
     @Override
     public boolean next() throws LdapException, CursorException
     {
+        checkNotClosed();
+
+        if ( pos < offsets.length )
+        {
+            pos++;
+        }
+
+        return read();
+    }
+
+
+    /**
+     * Reads the entry at the current position, if any
+     */
+    private boolean read() throws CursorException
+    {
+        if ( ( pos < 0 ) || ( pos >= offsets.length ) )
+        {
+            entry = null;
+
+            return false;
+        }
+
         try
         {
-            if ( browser == null )
-            {
-                browser = btree.browse();
-            }
-            
-            if ( browser.getNext( tuple ) )
-            {
-                return true;
-            }
+            data.seek( offsets[pos] );
+            byte[] bytes = new byte[data.readInt()];
+            data.readFully( bytes );
+            entry = ( Entry ) serializer.deserialize( bytes );
+
+            return true;
         }
         catch ( IOException e )
         {
             throw new CursorException( e );
         }
-        catch ( NoSuchElementException e )
-        {
-            // ignore, this is due to the call wrapped.prev()
-            // instead of doing a check like if(wrapped.hasNext())
-        }
-
-        clearValue();
-        return false;
     }
 
 
     @Override
     public Entry get() throws CursorException
     {
-        if ( tuple.getKey() == null )
+        if ( entry == null )
         {
             throw new InvalidCursorPositionException();
         }
 
-        return ( Entry ) tuple.getKey();
+        return entry;
     }
 
 
@@ -252,25 +244,23 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
         return null;
     }
 
-    
-    private void clearValue()
-    {
-        tuple.setKey( null );
-        tuple.setValue( null );
-    }
 
-    
     private void deleteFile()
     {
-        if ( recMan == null )
+        if ( data == null )
         {
             return;
         }
 
         try
         {
-            recMan.close();
-            dataFile.delete();
+            data.close();
+            data = null;
+
+            if ( !dataFile.delete() )
+            {
+                LOG.warn( "Failed to delete the sorted entry data file {}", dataFile );
+            }
         }
         catch ( IOException e )
         {
@@ -733,6 +733,9 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             // a CursorList into the EntryFilteringCursor
             List<EntryFilteringCursor> cursors = new ArrayList<>();
 
+            // The entries are only sorted if they all come from a single partition
+            boolean sorted = false;
+
             for ( Partition partition : partitions.values() )
             {
                 PartitionTxn partitionTxn = partition.beginReadTransaction();
@@ -747,6 +750,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
                 if ( partition.hasEntry( hasEntryContext ) )
                 {
                     searchContext.setDn( contextDn );
+                    searchContext.setSorted( false );
                     EntryFilteringCursor cursor = partition.search( searchContext );
 
                     try
@@ -755,6 +759,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
                         {
                             cursor.beforeFirst();
                             cursors.add( cursor );
+                            sorted = searchContext.isSorted();
                         }
                     }
                     catch ( CursorException e )
@@ -764,6 +769,8 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
                 }
             }
 
+            searchContext.setSorted( sorted && ( cursors.size() == 1 ) );
+
             // don't feed the above Cursors' list to a BaseEntryFilteringCursor it is skipping the naming context entry of each partition
             if ( cursors.isEmpty() )
             {
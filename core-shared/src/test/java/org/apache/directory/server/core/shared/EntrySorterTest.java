@@ -0,0 +1,294 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.shared;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortRequestImpl;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the sort of the search results : the {@link SortedEntryComparator}, the
+ * {@link EntrySorter} and {@link DefaultCoreSession#sortResults(Cursor, long, SortRequest, SchemaManager, long)}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntrySorterTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    /**
+     * Creates an entry with the given cn, and the given sn if not null
+     */
+    private static Entry createEntry( String cn, String sn ) throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "cn=" + cn + ",ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: " + cn );
+
+        if ( sn != null )
+        {
+            entry.add( "sn", sn );
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Reads all the entries of a cursor, and closes it
+     */
+    private static List<String> readCns( Cursor<Entry> cursor ) throws Exception
+    {
+        List<String> cns = new ArrayList<>();
+
+        try
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                cns.add( cursor.get().get( "cn" ).getString() );
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return cns;
+    }
+
+
+    @Test
+    public void testComparatorUsesAllKeys() throws Exception
+    {
+        // sn ascending, then cn descending
+        SortedEntryComparator comparator = new SortedEntryComparator(
+            Arrays.asList( new SortKey( "sn" ), new SortKey( "cn", null, true ) ), schemaManager );
+
+        Object[] a1 = comparator.getSortValues( createEntry( "a", "Smith" ) );
+        Object[] b1 = comparator.getSortValues( createEntry( "b", "smith" ) );
+        Object[] a2 = comparator.getSortValues( createEntry( "a", "Jones" ) );
+
+        // The sn are equal once normalized, so the cn decides, in reverse order
+        assertTrue( comparator.compare( b1, a1 ) < 0 );
+        assertTrue( comparator.compare( a1, b1 ) > 0 );
+
+        // The first key has precedence
+        assertTrue( comparator.compare( a2, a1 ) < 0 );
+        assertTrue( comparator.compare( a2, b1 ) < 0 );
+        assertEquals( 0, comparator.compare( a1, comparator.getSortValues( createEntry( "a", "SMITH" ) ) ) );
+    }
+
+
+    @Test
+    public void testComparatorMissingValuesLast() throws Exception
+    {
+        SortedEntryComparator comparator = new SortedEntryComparator(
+            Collections.singletonList( new SortKey( "sn" ) ), schemaManager );
+
+        Object[] withSn = comparator.getSortValues( createEntry( "a", "Zorro" ) );
+        Object[] withoutSn = comparator.getSortValues( createEntry( "b", null ) );
+
+        assertTrue( comparator.compare( withSn, withoutSn ) < 0 );
+        assertTrue( comparator.compare( withoutSn, withSn ) > 0 );
+
+        // Also in reverse order
+        comparator = new SortedEntryComparator(
+            Collections.singletonList( new SortKey( "sn", null, true ) ), schemaManager );
+
+        assertTrue( comparator.compare( comparator.getSortValues( createEntry( "a", "Zorro" ) ),
+            comparator.getSortValues( createEntry( "b", null ) ) ) < 0 );
+    }
+
+
+    @Test
+    public void testComparatorUsesLeastValue() throws Exception
+    {
+        SortedEntryComparator comparator = new SortedEntryComparator(
+            Collections.singletonList( new SortKey( "sn" ) ), schemaManager );
+
+        Entry multi = createEntry( "a", "Young" );
+        multi.add( "sn", "Adams" );
+
+        assertTrue( comparator.compare( comparator.getSortValues( multi ),
+            comparator.getSortValues( createEntry( "b", "Brown" ) ) ) < 0 );
+    }
+
+
+    @Test
+    public void testSortInMemory() throws Exception
+    {
+        EntrySorter sorter = new EntrySorter(
+            Arrays.asList( new SortKey( "sn" ), new SortKey( "cn" ) ), schemaManager,
+            EntrySorter.DEFAULT_MEMORY_BUDGET, 0 );
+
+        sorter.add( createEntry( "d", "b" ) );
+        sorter.add( createEntry( "c", null ) );
+        sorter.add( createEntry( "b", "b" ) );
+        sorter.add( createEntry( "a", "c" ) );
+        sorter.add( createEntry( "e", "a" ) );
+
+        Cursor<Entry> cursor = sorter.sort();
+
+        assertTrue( cursor instanceof ListCursor );
+        assertEquals( Arrays.asList( "e", "b", "d", "a", "c" ), readCns( cursor ) );
+    }
+
+
+    @Test
+    public void testSortSpilledInSeveralPasses() throws Exception
+    {
+        // Each entry is above the budget, so each one is written in its own run. There are
+        // more runs than can be merged at once
+        int nbEntries = EntrySorter.MAX_FAN_IN * 2 + 10;
+        EntrySorter sorter = new EntrySorter( Collections.singletonList( new SortKey( "sn" ) ), schemaManager,
+            1L, 0 );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            sorter.add( createEntry( Integer.toString( i ), Integer.toString( i % 10 ) ) );
+        }
+
+        Cursor<Entry> cursor = sorter.sort();
+
+        assertTrue( cursor instanceof SortedEntryCursor );
+
+        List<String> cns = readCns( cursor );
+        assertEquals( nbEntries, cns.size() );
+
+        // Sorted on sn, the entries having the same sn being kept in order of arrival
+        List<String> expected = new ArrayList<>();
+
+        for ( int sn = 0; sn < 10; sn++ )
+        {
+            for ( int i = sn; i < nbEntries; i += 10 )
+            {
+                expected.add( Integer.toString( i ) );
+            }
+        }
+
+        assertEquals( expected, cns );
+    }
+
+
+    @Test
+    public void testSortTopN() throws Exception
+    {
+        EntrySorter sorter = new EntrySorter( Collections.singletonList( new SortKey( "sn", null, true ) ),
+            schemaManager, EntrySorter.DEFAULT_MEMORY_BUDGET, 3 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            sorter.add( createEntry( Integer.toString( i ), String.format( "%03d", i ) ) );
+        }
+
+        assertEquals( Arrays.asList( "99", "98", "97" ), readCns( sorter.sort() ) );
+    }
+
+
+    @Test
+    public void testSortTopNSpilled() throws Exception
+    {
+        // The N first entries don't fit in memory : all the entries are sorted on disk
+        EntrySorter sorter = new EntrySorter( Collections.singletonList( new SortKey( "sn" ) ),
+            schemaManager, 1L, 3 );
+
+        for ( int i = 9; i >= 0; i-- )
+        {
+            sorter.add( createEntry( Integer.toString( i ), Integer.toString( i ) ) );
+        }
+
+        List<String> cns = readCns( sorter.sort() );
+
+        assertEquals( Arrays.asList( "0", "1", "2" ), cns.subList( 0, 3 ) );
+    }
+
+
+    @Test
+    public void testSortResultsKeepsSizeLimitPlusOne() throws Exception
+    {
+        SortRequest control = new SortRequestImpl();
+        control.addSortKey( new SortKey( "sn" ) );
+
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            entries.add( createEntry( Integer.toString( i ), String.format( "%02d", 19 - i ) ) );
+        }
+
+        // One more entry than the limit is kept, so that the limit is still detected
+        List<String> cns = readCns( DefaultCoreSession.sortResults( new ListCursor<>( entries ), 5L, control,
+            schemaManager, EntrySorter.DEFAULT_MEMORY_BUDGET ) );
+
+        assertEquals( Arrays.asList( "19", "18", "17", "16", "15", "14" ), cns );
+
+        // No limit : all the entries
+        cns = readCns( DefaultCoreSession.sortResults( new ListCursor<>( entries ), 0L, control, schemaManager,
+            EntrySorter.DEFAULT_MEMORY_BUDGET ) );
+
+        assertEquals( 20, cns.size() );
+        assertEquals( "19", cns.get( 0 ) );
+        assertEquals( "0", cns.get( 19 ) );
+    }
+
+
+    @Test
+    public void testSortResultsSingleEntry() throws Exception
+    {
+        SortRequest control = new SortRequestImpl();
+        control.addSortKey( new SortKey( "sn" ) );
+
+        Cursor<Entry> cursor = new ListCursor<>( Collections.singletonList( createEntry( "a", "a" ) ) );
+
+        assertSame( cursor, DefaultCoreSession.sortResults( cursor, 1L, control, schemaManager,
+            EntrySorter.DEFAULT_MEMORY_BUDGET ) );
+        assertEquals( Collections.singletonList( "a" ), readCns( cursor ) );
+    }
+}
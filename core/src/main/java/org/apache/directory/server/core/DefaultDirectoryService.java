@@ -100,6 +100,7 @@ import org.apache.directory.server.core.api.interceptor.context.HasEntryOperatio
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -123,6 +124,7 @@ import org.apache.directory.server.core.referral.ReferralInterceptor;
 import org.apache.directory.server.core.schema.SchemaInterceptor;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.core.shared.EntrySorter;
 import org.apache.directory.server.core.shared.partition.DefaultPartitionNexus;
 import org.apache.directory.server.core.subtree.SubentryInterceptor;
 import org.apache.directory.server.core.trigger.TriggerInterceptor;
@@ -198,6 +200,9 @@ public class DefaultDirectoryService implements DirectoryService
     /** The delay to wait between each sync on disk */
     private long syncPeriodMillis;
 
+    /** The memory budget of a server side sort, in bytes */
+    private long sortMemoryBudget = EntrySorter.DEFAULT_MEMORY_BUDGET;
+
     /** The default delay to wait between sync on disk : 15 seconds */
     private static final long DEFAULT_SYNC_PERIOD = 15000;
 
@@ -281,6 +286,9 @@ public class DefaultDirectoryService implements DirectoryService
     /** The Dn factory */
     private DnFactory dnFactory;
 
+    /** The metrics of the operations */
+    private final OperationMetrics operationMetrics = new OperationMetrics();
+
     /** The Subentry cache */
     SubentryCache subentryCache = new SubentryCache();
 
@@ -1244,6 +1252,11 @@ public class DefaultDirectoryService implements DirectoryService
         initialize();
         showSecurityWarnings();
 
+        if ( operationMetrics.isJmxEnabled() )
+        {
+            operationMetrics.registerMBeans( instanceId );
+        }
+
         started = true;
 
         if ( !testEntries.isEmpty() )
@@ -1323,6 +1336,8 @@ public class DefaultDirectoryService implements DirectoryService
         LOG.debug( "---Deleting the DnCache" );
         dnFactory = null;
 
+        operationMetrics.unregisterMBeans();
+
         if ( lockFile != null )
         {
             try
@@ -2321,6 +2336,26 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSortMemoryBudget()
+    {
+        return sortMemoryBudget;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSortMemoryBudget( long sortMemoryBudget )
+    {
+        this.sortMemoryBudget = sortMemoryBudget;
+    }
+
+
     /**
      * checks if the working directory is already in use by some other directory service, if yes
      * then throws a runtime exception else will obtain the lock on the working directory
@@ -2438,6 +2473,16 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OperationMetrics getOperationMetrics()
+    {
+        return operationMetrics;
+    }
+
+
     /**
      * {@inheritDoc}
      */
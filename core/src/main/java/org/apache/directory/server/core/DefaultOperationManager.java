@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
@@ -35,6 +34,7 @@ import org.apache.directory.api.ldap.model.exception.LdapAffectMultipleDsaExcept
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationErrorException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapPartialResultException;
 import org.apache.directory.api.ldap.model.exception.LdapReferralException;
@@ -47,8 +47,10 @@ import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.ReferralManager;
+import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -65,8 +67,12 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
+import org.apache.directory.server.core.api.metrics.SlowOperationLog;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,8 +102,17 @@ public class DefaultOperationManager implements OperationManager
     /** The directory service instance */
     private final DirectoryService directoryService;
 
-    /** A lock used to protect against concurrent operations */
-    private ReadWriteLock rwLock = new ReentrantReadWriteLock( true );
+    /** The locks used to protect the partitions against concurrent operations */
+    private final PartitionLockManager lockManager = new PartitionLockManager();
+
+    /**
+     * An operation, which result and duration are recorded in the metrics
+     */
+    @FunctionalInterface
+    private interface Operation<R>
+    {
+        R execute() throws LdapException;
+    }
 
     public DefaultOperationManager( DirectoryService directoryService )
     {
@@ -110,43 +125,61 @@ public class DefaultOperationManager implements OperationManager
      */
     public ReadWriteLock getRWLock()
     {
-        return rwLock;
+        return lockManager.getGlobalLock();
     }
 
 
     /**
-     * Acquires a ReadLock
+     * {@inheritDoc}
+     */
+    public ReadWriteLock getRWLock( Partition partition )
+    {
+        return lockManager.getLock( partition );
+    }
+
+
+    /**
+     * @return The manager handling the partition locks
+     */
+    public PartitionLockManager getLockManager()
+    {
+        return lockManager;
+    }
+
+
+    /**
+     * Acquires the server wide ReadLock
      */
     public void lockRead()
     {
-        rwLock.readLock().lock();
+        lockManager.getGlobalLock().readLock().lock();
     }
 
 
     /**
-     * Acquires a WriteLock
+     * Acquires the server wide WriteLock
      */
     public void lockWrite()
     {
-        rwLock.writeLock().lock();
+        lockManager.getGlobalLock().writeLock().lock();
     }
 
 
     /**
-     * Releases a WriteLock
+     * Releases the server wide WriteLock
      */
     public void unlockWrite()
     {
-        rwLock.writeLock().unlock();
+        lockManager.getGlobalLock().writeLock().unlock();
     }
 
 
     /**
-     * Releases a ReadLock
+     * Releases the server wide ReadLock
      */
     public void unlockRead()
     {
-        rwLock.readLock().unlock();
+        lockManager.getGlobalLock().readLock().unlock();
     }
 
 
@@ -210,6 +243,68 @@ public class DefaultOperationManager implements OperationManager
     }
 
 
+    /**
+     * Waits for the asynchronous listeners which can't lose changes, if they are late. The
+     * changes are queued without waiting while the partitions are locked, so the writer waits
+     * here, once its locks are released. An operation done while another one holds its locks,
+     * like a write done by an interceptor, does not wait.
+     */
+    private void awaitEventDelivery()
+    {
+        EventService eventService = directoryService.getEventService();
+
+        if ( ( eventService != null ) && !lockManager.holdsLocks() )
+        {
+            eventService.awaitDelivery();
+        }
+    }
+
+
+    /**
+     * Commits the transaction of a write operation. An operation which is not nested in another one lets the partition make its modifications
+     * durable once the locks are released, in {@link #awaitDurability(OperationContext)}, so that
+     * the concurrent writers can share the partition flushes.
+     */
+    private void commit( PartitionTxn transaction, boolean deferred ) throws IOException
+    {
+        if ( deferred && ( transaction instanceof PartitionWriteTxn ) )
+        {
+            ( ( PartitionWriteTxn ) transaction ).commitDeferred();
+        }
+        else
+        {
+            transaction.commit();
+        }
+    }
+
+
+    /**
+     * Waits until the modifications committed by an operation are durable. The operations done
+     * in a session transaction are made durable when the session transaction is committed.
+     */
+    private void awaitDurability( OperationContext opContext ) throws LdapException
+    {
+        if ( opContext.getSession().hasSessionTransaction() )
+        {
+            return;
+        }
+
+        PartitionTxn transaction = opContext.getTransaction();
+
+        if ( transaction instanceof PartitionWriteTxn )
+        {
+            try
+            {
+                ( ( PartitionWriteTxn ) transaction ).awaitDurability();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+    }
+
+
     private LdapReferralException buildReferralException( Entry parentEntry, Dn childDn ) throws LdapException
     {
         // Get the Ref attributeType
@@ -339,6 +434,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void add( AddOperationContext addContext ) throws LdapException
+    {
+        measure( OperationEnum.ADD, addContext, () ->
+        {
+            doAdd( addContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doAdd( AddOperationContext addContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -398,7 +504,10 @@ public class DefaultOperationManager implements OperationManager
         // Call the Add method
         Interceptor head = directoryService.getInterceptor( addContext.getNextInterceptor() );
 
-        lockWrite();
+        // A nested operation is made durable before its locks are released
+        boolean outermost = !lockManager.holdsLocks();
+
+        lockManager.lockWrite( partition );
 
         // Start a Write transaction right away
         PartitionTxn transaction = addContext.getSession().getTransaction( partition ); 
@@ -421,7 +530,7 @@ public class DefaultOperationManager implements OperationManager
             
             if ( !addContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction, outermost );
             }
         }
         catch ( LdapException le )
@@ -455,9 +564,18 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            lockManager.unlockWrite( partition );
         }
 
+        // Wait for the modifications to be durable, now that the partitions are unlocked
+        if ( outermost )
+        {
+            awaitDurability( addContext );
+        }
+
+        // Wait for the late listeners, now that the partitions are unlocked
+        awaitEventDelivery();
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< AddOperation successful" );
@@ -474,6 +592,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void bind( BindOperationContext bindContext ) throws LdapException
+    {
+        measure( OperationEnum.BIND, bindContext, () ->
+        {
+            doBind( bindContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doBind( BindOperationContext bindContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -501,12 +630,12 @@ public class DefaultOperationManager implements OperationManager
             bindContext.setDn( dn );
         }
 
-        lockRead();
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+        lockManager.lockRead( partition );
 
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 bindContext.setPartition( partition );
@@ -521,7 +650,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            lockManager.unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -540,6 +669,12 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public boolean compare( CompareOperationContext compareContext ) throws LdapException
+    {
+        return measure( OperationEnum.COMPARE, compareContext, () -> doCompare( compareContext ) );
+    }
+
+
+    private boolean doCompare( CompareOperationContext compareContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -616,12 +751,12 @@ public class DefaultOperationManager implements OperationManager
 
         boolean result = false;
 
-        lockRead();
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+        lockManager.lockRead( partition );
 
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 compareContext.setPartition( partition );
@@ -636,7 +771,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            lockManager.unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -657,6 +792,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void delete( DeleteOperationContext deleteContext ) throws LdapException
+    {
+        measure( OperationEnum.DELETE, deleteContext, () ->
+        {
+            doDelete( deleteContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doDelete( DeleteOperationContext deleteContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -729,7 +875,10 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // populate the context with the old entry
-        lockWrite();
+        // A nested operation is made durable before its locks are released
+        boolean outermost = !lockManager.holdsLocks();
+
+        lockManager.lockWrite( partition );
 
         // Start a Write transaction right away
         PartitionTxn transaction = deleteContext.getSession().getTransaction( partition ); 
@@ -757,7 +906,7 @@ public class DefaultOperationManager implements OperationManager
 
             if ( !deleteContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction, outermost );
             }
         }
         catch ( LdapException le )
@@ -791,9 +940,18 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            lockManager.unlockWrite( partition );
+        }
+
+        // Wait for the modifications to be durable, now that the partitions are unlocked
+        if ( outermost )
+        {
+            awaitDurability( deleteContext );
         }
 
+        // Wait for the late listeners, now that the partitions are unlocked
+        awaitEventDelivery();
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< DeleteOperation successful" );
@@ -810,6 +968,12 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public Entry getRootDse( GetRootDseOperationContext getRootDseContext ) throws LdapException
+    {
+        return measure( OperationEnum.GET_ROOT_DSE, getRootDseContext, () -> doGetRootDse( getRootDseContext ) );
+    }
+
+
+    private Entry doGetRootDse( GetRootDseOperationContext getRootDseContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -828,12 +992,12 @@ public class DefaultOperationManager implements OperationManager
         Interceptor head = directoryService.getInterceptor( getRootDseContext.getNextInterceptor() );
         Entry root;
 
+        Partition partition = directoryService.getPartitionNexus().getPartition( Dn.ROOT_DSE );
+
+        lockManager.lockRead( partition );
+
         try
         {
-            lockRead();
-            
-            Partition partition = directoryService.getPartitionNexus().getPartition( Dn.ROOT_DSE );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 getRootDseContext.setPartition( partition );
@@ -848,7 +1012,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            lockManager.unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -869,6 +1033,12 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public boolean hasEntry( HasEntryOperationContext hasEntryContext ) throws LdapException
+    {
+        return measure( OperationEnum.HAS_ENTRY, hasEntryContext, () -> doHasEntry( hasEntryContext ) );
+    }
+
+
+    private boolean doHasEntry( HasEntryOperationContext hasEntryContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -888,8 +1058,6 @@ public class DefaultOperationManager implements OperationManager
 
         boolean result = false;
 
-        lockRead();
-
         // Normalize the addContext Dn
         Dn dn = hasEntryContext.getDn();
         
@@ -899,10 +1067,12 @@ public class DefaultOperationManager implements OperationManager
             hasEntryContext.setDn( dn );
         }
 
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+        lockManager.lockRead( partition );
+
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 hasEntryContext.setPartition( partition );
@@ -917,7 +1087,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            lockManager.unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -938,6 +1108,12 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
+    {
+        return measure( OperationEnum.LOOKUP, lookupContext, () -> doLookup( lookupContext ) );
+    }
+
+
+    private Entry doLookup( LookupOperationContext lookupContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -974,7 +1150,7 @@ public class DefaultOperationManager implements OperationManager
         {
             lookupContext.setTransaction( transaction );
 
-            lockRead();
+            lockManager.lockRead( partition );
     
             try
             {
@@ -982,7 +1158,7 @@ public class DefaultOperationManager implements OperationManager
             }
             finally
             {
-                unlockRead();
+                lockManager.unlockRead( partition );
             }
         }
         catch ( IOException ioe )
@@ -1008,6 +1184,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void modify( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        measure( OperationEnum.MODIFY, modifyContext, () ->
+        {
+            doModify( modifyContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doModify( ModifyOperationContext modifyContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -1089,7 +1276,10 @@ public class DefaultOperationManager implements OperationManager
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         modifyContext.setPartition( partition );
         
-        lockWrite();
+        // A nested operation is made durable before its locks are released
+        boolean outermost = !lockManager.holdsLocks();
+
+        lockManager.lockWrite( partition );
         
         // Start a Write transaction right away
         PartitionTxn transaction = modifyContext.getSession().getTransaction( partition ); 
@@ -1118,7 +1308,7 @@ public class DefaultOperationManager implements OperationManager
             
             if ( !modifyContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction, outermost );
             }
         }
         catch ( LdapException le )
@@ -1152,9 +1342,18 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            lockManager.unlockWrite( partition );
         }
 
+        // Wait for the modifications to be durable, now that the partitions are unlocked
+        if ( outermost )
+        {
+            awaitDurability( modifyContext );
+        }
+
+        // Wait for the late listeners, now that the partitions are unlocked
+        awaitEventDelivery();
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< ModifyOperation successful" );
@@ -1171,6 +1370,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void move( MoveOperationContext moveContext ) throws LdapException
+    {
+        measure( OperationEnum.MOVE, moveContext, () ->
+        {
+            doMove( moveContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doMove( MoveOperationContext moveContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -1260,12 +1470,18 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-        
         // Find the working partition
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         moveContext.setPartition( partition );
 
+        // Lock both the source and the target partitions
+        Partition superiorPartition = getSuperiorPartition( newSuperiorDn, partition );
+
+        // A nested operation is made durable before its locks are released
+        boolean outermost = !lockManager.holdsLocks();
+
+        lockManager.lockWrite( partition, superiorPartition );
+
         // Start a Write transaction right away
         PartitionTxn transaction = moveContext.getSession().getTransaction( partition ); 
         
@@ -1293,7 +1509,7 @@ public class DefaultOperationManager implements OperationManager
             
             if ( !moveContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction, outermost );
             }
         }
         catch ( LdapException le )
@@ -1330,9 +1546,18 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            lockManager.unlockWrite( partition, superiorPartition );
         }
 
+        // Wait for the modifications to be durable, now that the partitions are unlocked
+        if ( outermost )
+        {
+            awaitDurability( moveContext );
+        }
+
+        // Wait for the late listeners, now that the partitions are unlocked
+        awaitEventDelivery();
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< MoveOperation successful" );
@@ -1349,6 +1574,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void moveAndRename( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
+    {
+        measure( OperationEnum.MOVE_AND_RENAME, moveAndRenameContext, () ->
+        {
+            doMoveAndRename( moveAndRenameContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doMoveAndRename( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -1443,7 +1679,13 @@ public class DefaultOperationManager implements OperationManager
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         moveAndRenameContext.setPartition( partition );
 
-        lockWrite();
+        // Lock both the source and the target partitions
+        Partition superiorPartition = getSuperiorPartition( moveAndRenameContext.getNewSuperiorDn(), partition );
+
+        // A nested operation is made durable before its locks are released
+        boolean outermost = !lockManager.holdsLocks();
+
+        lockManager.lockWrite( partition, superiorPartition );
         
         // Start a Write transaction right away
         PartitionTxn transaction = moveAndRenameContext.getSession().getTransaction( partition ); 
@@ -1471,7 +1713,7 @@ public class DefaultOperationManager implements OperationManager
 
             if ( !moveAndRenameContext.getSession().hasSessionTransaction() )
             {
-                transaction.commit();
+                commit( transaction, outermost );
             }
         }
         catch ( LdapException le )
@@ -1505,9 +1747,18 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            lockManager.unlockWrite( partition, superiorPartition );
+        }
+
+        // Wait for the modifications to be durable, now that the partitions are unlocked
+        if ( outermost )
+        {
+            awaitDurability( moveAndRenameContext );
         }
 
+        // Wait for the late listeners, now that the partitions are unlocked
+        awaitEventDelivery();
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< MoveAndRenameOperation successful" );
@@ -1524,6 +1775,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void rename( RenameOperationContext renameContext ) throws LdapException
+    {
+        measure( OperationEnum.RENAME, renameContext, () ->
+        {
+            doRename( renameContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doRename( RenameOperationContext renameContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -1611,26 +1873,15 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
 
-        // Start a Write transaction right away
-        PartitionTxn transaction = renameContext.getSession().getTransaction( partition ); 
-        
-        // Call the rename method
+        // A nested operation is made durable before its locks are released
+        boolean outermost = !lockManager.holdsLocks();
+
+        lockManager.lockWrite( partition );
+
         try
         {
-            if ( transaction == null )
-            {
-                transaction = partition.beginWriteTransaction();
-                
-                if ( renameContext.getSession().hasSessionTransaction() )
-                {
-                    renameContext.getSession().addTransaction( partition, transaction );
-                }
-            }
-
             renameContext.setPartition( partition );
 
             // populate the context with the old entry
@@ -1666,7 +1917,7 @@ public class DefaultOperationManager implements OperationManager
             Interceptor head = directoryService.getInterceptor( renameContext.getNextInterceptor() );
 
             // Start a Write transaction right away
-            transaction = renameContext.getSession().getTransaction( partition ); 
+            PartitionTxn transaction = renameContext.getSession().getTransaction( partition ); 
             
             // Call the Rename method
             try
@@ -1687,7 +1938,7 @@ public class DefaultOperationManager implements OperationManager
                 
                 if ( !renameContext.getSession().hasSessionTransaction() )
                 {
-                    transaction.commit();
+                    commit( transaction, outermost );
                 }
             }
             catch ( LdapException le )
@@ -1725,9 +1976,18 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            lockManager.unlockWrite( partition );
         }
 
+        // Wait for the modifications to be durable, now that the partitions are unlocked
+        if ( outermost )
+        {
+            awaitDurability( renameContext );
+        }
+
+        // Wait for the late listeners, now that the partitions are unlocked
+        awaitEventDelivery();
+
         if ( IS_DEBUG )
         {
             OPERATION_LOG.debug( "<< RenameOperation successful" );
@@ -1744,6 +2004,12 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public EntryFilteringCursor search( SearchOperationContext searchContext ) throws LdapException
+    {
+        return measure( OperationEnum.SEARCH, searchContext, () -> doSearch( searchContext ) );
+    }
+
+
+    private EntryFilteringCursor doSearch( SearchOperationContext searchContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -1824,7 +2090,7 @@ public class DefaultOperationManager implements OperationManager
         {
             searchContext.setPartition( partition );
             searchContext.setTransaction( partitionTxn );
-            lockRead();
+            lockManager.lockRead( partition );
     
             try
             {
@@ -1832,7 +2098,7 @@ public class DefaultOperationManager implements OperationManager
             }
             finally
             {
-                unlockRead();
+                lockManager.unlockRead( partition );
             }
         }
         catch ( IOException ioe )
@@ -1858,6 +2124,17 @@ public class DefaultOperationManager implements OperationManager
      * {@inheritDoc}
      */
     public void unbind( UnbindOperationContext unbindContext ) throws LdapException
+    {
+        measure( OperationEnum.UNBIND, unbindContext, () ->
+        {
+            doUnbind( unbindContext );
+
+            return null;
+        } );
+    }
+
+
+    private void doUnbind( UnbindOperationContext unbindContext ) throws LdapException
     {
         if ( IS_DEBUG )
         {
@@ -1890,6 +2167,83 @@ public class DefaultOperationManager implements OperationManager
     }
 
 
+    /**
+     * Executes an operation, recording its duration in the operation metrics, per result
+     * code and partition.
+     */
+    private <R> R measure( OperationEnum operation, OperationContext opContext, Operation<R> executor )
+        throws LdapException
+    {
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+
+        if ( metrics == null )
+        {
+            return executor.execute();
+        }
+
+        SlowOperationLog slowOperationLog = metrics.getSlowOperationLog();
+
+        if ( opContext.getProfile() == null )
+        {
+            opContext.setProfile( slowOperationLog.startProfile() );
+        }
+
+        long start = metrics.operationStarted();
+        ResultCodeEnum resultCode = ResultCodeEnum.OTHER;
+
+        try
+        {
+            R result = executor.execute();
+            resultCode = ResultCodeEnum.SUCCESS;
+
+            return result;
+        }
+        catch ( LdapOperationException loe )
+        {
+            resultCode = loe.getResultCode();
+
+            throw loe;
+        }
+        finally
+        {
+            Partition partition = opContext.getPartition();
+            metrics.operationCompleted( operation.getMethodName(), resultCode,
+                ( partition == null ) ? null : partition.getId(), start );
+
+            OperationProfile profile = opContext.getProfile();
+
+            if ( profile != null )
+            {
+                profile.finish();
+
+                // A successful search is still being read : it's recorded when its cursor is closed
+                if ( ( operation != OperationEnum.SEARCH ) || ( resultCode != ResultCodeEnum.SUCCESS ) )
+                {
+                    slowOperationLog.record( operation.getMethodName(), opContext, resultCode,
+                        profile.getElapsedNanos() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Get the partition the new superior of a moved entry belongs to. If there is
+     * none, we return the source partition, the move will fail later anyway.
+     */
+    private Partition getSuperiorPartition( Dn newSuperiorDn, Partition partition ) throws LdapException
+    {
+        try
+        {
+            return directoryService.getPartitionNexus().getPartition( newSuperiorDn );
+        }
+        catch ( LdapNoSuchObjectException lnsoe )
+        {
+            return partition;
+        }
+    }
+
+
     private void ensureStarted() throws LdapServiceUnavailableException
     {
         if ( !directoryService.isStarted() )
@@ -0,0 +1,329 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core;
+
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Manages the locks protecting the partitions against concurrent operations. We
+ * have one R/W lock per partition, so that writes done on different partitions
+ * can be processed in parallel, plus a server wide lock :
+ * <ul>
+ *   <li>every partition operation holds the server wide read lock</li>
+ *   <li>acquiring the server wide write lock excludes all the partition operations
+ *   (this is used when we need to flush all the partitions)</li>
+ * </ul>
+ *
+ * Deadlocks are avoided by acquiring the partition locks in a fixed order (the
+ * partition's suffix normalized name). When a thread already holding a partition
+ * lock needs a lock that comes before it in this order (typically, an interceptor
+ * reading an entry in another partition while processing a write), we wait for
+ * at most <em>lockTimeout</em> ms before giving up with a BUSY error.
+ *
+ * The B-tree backends don't support concurrent writes inside a partition, so
+ * the partition is the finest lock granularity we can offer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionLockManager
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PartitionLockManager.class );
+
+    /** The default time we wait for an out of order lock, in ms */
+    public static final long DEFAULT_LOCK_TIMEOUT = 10000L;
+
+    /** The server wide lock */
+    private final ReadWriteLock globalLock = new ReentrantReadWriteLock( true );
+
+    /** The partition locks, per partition suffix */
+    private final Map<String, ReadWriteLock> partitionLocks = new ConcurrentHashMap<>();
+
+    /** The partition locks held by the current thread, with their hold count */
+    private final ThreadLocal<NavigableMap<String, Integer>> heldLocks = ThreadLocal.withInitial( TreeMap::new );
+
+    /** The time we wait for an out of order lock, in ms */
+    private long lockTimeout = DEFAULT_LOCK_TIMEOUT;
+
+
+    /**
+     * @return The server wide R/W lock
+     */
+    public ReadWriteLock getGlobalLock()
+    {
+        return globalLock;
+    }
+
+
+    /**
+     * Get the R/W lock associated with a partition. It will be created if it does not exist.
+     *
+     * @param partition The partition
+     * @return The partition R/W lock
+     */
+    public ReadWriteLock getLock( Partition partition )
+    {
+        return getLock( getLockKey( partition ) );
+    }
+
+
+    private ReadWriteLock getLock( String key )
+    {
+        return partitionLocks.computeIfAbsent( key, k -> new ReentrantReadWriteLock( true ) );
+    }
+
+
+    /**
+     * Acquires the server wide read lock and the read lock on the given partition.
+     *
+     * @param partition The partition to lock
+     * @throws LdapException If the lock could not be acquired in time
+     */
+    public void lockRead( Partition partition ) throws LdapException
+    {
+        globalLock.readLock().lock();
+
+        try
+        {
+            acquire( getLockKey( partition ), false );
+        }
+        catch ( LdapException le )
+        {
+            globalLock.readLock().unlock();
+
+            throw le;
+        }
+    }
+
+
+    /**
+     * Releases the read lock on the given partition and the server wide read lock.
+     *
+     * @param partition The partition to unlock
+     */
+    public void unlockRead( Partition partition )
+    {
+        release( getLockKey( partition ), false );
+        globalLock.readLock().unlock();
+    }
+
+
+    /**
+     * Acquires the server wide read lock and the write locks on the given partitions. The
+     * partitions are locked in order, so that two operations involving the same partitions
+     * (like a move from one partition to another) can't deadlock.
+     *
+     * @param partitions The partitions to lock
+     * @throws LdapException If the locks could not be acquired in time
+     */
+    public void lockWrite( Partition... partitions ) throws LdapException
+    {
+        TreeSet<String> keys = getLockKeys( partitions );
+
+        globalLock.readLock().lock();
+
+        String lastAcquired = null;
+
+        try
+        {
+            for ( String key : keys )
+            {
+                acquire( key, true );
+                lastAcquired = key;
+            }
+        }
+        catch ( LdapException le )
+        {
+            if ( lastAcquired != null )
+            {
+                for ( String key : keys.headSet( lastAcquired, true ).descendingSet() )
+                {
+                    release( key, true );
+                }
+            }
+
+            globalLock.readLock().unlock();
+
+            throw le;
+        }
+    }
+
+
+    /**
+     * Releases the write locks on the given partitions and the server wide read lock.
+     *
+     * @param partitions The partitions to unlock
+     */
+    public void unlockWrite( Partition... partitions )
+    {
+        for ( String key : getLockKeys( partitions ).descendingSet() )
+        {
+            release( key, true );
+        }
+
+        globalLock.readLock().unlock();
+    }
+
+
+    /**
+     * @return The time we wait for a lock acquired out of order, in ms
+     */
+    public long getLockTimeout()
+    {
+        return lockTimeout;
+    }
+
+
+    /**
+     * @param lockTimeout The time we wait for a lock acquired out of order, in ms
+     */
+    public void setLockTimeout( long lockTimeout )
+    {
+        this.lockTimeout = lockTimeout;
+    }
+
+
+    /**
+     * Acquire a partition lock. If the current thread holds a lock on a partition which
+     * comes after this one, we may deadlock with a thread doing the opposite, so we don't
+     * wait forever.
+     */
+    private void acquire( String key, boolean write ) throws LdapException
+    {
+        ReadWriteLock rwLock = getLock( key );
+        Lock lock = write ? rwLock.writeLock() : rwLock.readLock();
+        NavigableMap<String, Integer> held = heldLocks.get();
+
+        if ( held.isEmpty() || held.containsKey( key ) || ( held.lastKey().compareTo( key ) < 0 ) )
+        {
+            lock.lock();
+        }
+        else
+        {
+            LOG.debug( "Out of order lock request on partition '{}' while holding {}", key, held.keySet() );
+
+            try
+            {
+                if ( !lock.tryLock( lockTimeout, TimeUnit.MILLISECONDS ) )
+                {
+                    throw new LdapServiceUnavailableException( ResultCodeEnum.BUSY,
+                        I18n.err( I18n.ERR_751_PARTITION_LOCK_TIMEOUT, key, lockTimeout ) );
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+
+                throw new LdapServiceUnavailableException( ResultCodeEnum.BUSY,
+                    I18n.err( I18n.ERR_751_PARTITION_LOCK_TIMEOUT, key, lockTimeout ) );
+            }
+        }
+
+        held.merge( key, 1, Integer::sum );
+    }
+
+
+    /**
+     * Release a partition lock
+     */
+    private void release( String key, boolean write )
+    {
+        ReadWriteLock rwLock = getLock( key );
+
+        if ( write )
+        {
+            rwLock.writeLock().unlock();
+        }
+        else
+        {
+            rwLock.readLock().unlock();
+        }
+
+        NavigableMap<String, Integer> held = heldLocks.get();
+        Integer count = held.get( key );
+
+        if ( ( count == null ) || ( count <= 1 ) )
+        {
+            held.remove( key );
+        }
+        else
+        {
+            held.put( key, count - 1 );
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the current thread holds a partition lock
+     */
+    public boolean holdsLocks()
+    {
+        return !heldLocks.get().isEmpty();
+    }
+
+
+    private TreeSet<String> getLockKeys( Partition... partitions )
+    {
+        TreeSet<String> keys = new TreeSet<>();
+
+        for ( Partition partition : partitions )
+        {
+            keys.add( getLockKey( partition ) );
+        }
+
+        return keys;
+    }
+
+
+    /**
+     * The lock key is the partition suffix normalized name. The RootDSE, which is not associated
+     * with any real partition, uses an empty key.
+     */
+    private String getLockKey( Partition partition )
+    {
+        Dn suffixDn = partition.getSuffixDn();
+
+        if ( ( suffixDn == null ) || suffixDn.isRootDse() )
+        {
+            return "";
+        }
+
+        return suffixDn.getNormName();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core;
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.model.exception.LdapServiceUnavailableException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.shared.partition.RootPartition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test for the PartitionLockManager class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionLockManagerTest
+{
+    private PartitionLockManager lockManager;
+    private ExecutorService executor;
+    private Partition partitionA;
+    private Partition partitionB;
+
+
+    private static Partition createPartition( String suffix ) throws Exception
+    {
+        Partition partition = new RootPartition( null )
+        {
+        };
+
+        partition.setSuffixDn( new Dn( suffix ) );
+
+        return partition;
+    }
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        lockManager = new PartitionLockManager();
+        executor = Executors.newSingleThreadExecutor();
+        partitionA = createPartition( "dc=a" );
+        partitionB = createPartition( "dc=b" );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+
+    private Future<?> lockWriteInBackground( Partition partition )
+    {
+        return executor.submit( () ->
+        {
+            lockManager.lockWrite( partition );
+            lockManager.unlockWrite( partition );
+
+            return null;
+        } );
+    }
+
+
+    @Test
+    public void testWritesOnDistinctPartitionsDontBlock() throws Exception
+    {
+        lockManager.lockWrite( partitionA );
+
+        try
+        {
+            lockWriteInBackground( partitionB ).get( 5, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            lockManager.unlockWrite( partitionA );
+        }
+    }
+
+
+    @Test
+    public void testWritesOnSamePartitionBlock() throws Exception
+    {
+        Future<?> future;
+
+        lockManager.lockWrite( partitionA );
+
+        try
+        {
+            future = lockWriteInBackground( partitionA );
+
+            try
+            {
+                future.get( 200, TimeUnit.MILLISECONDS );
+                fail();
+            }
+            catch ( TimeoutException te )
+            {
+                // Expected
+            }
+        }
+        finally
+        {
+            lockManager.unlockWrite( partitionA );
+        }
+
+        future.get( 5, TimeUnit.SECONDS );
+    }
+
+
+    @Test
+    public void testGlobalWriteLockExcludesPartitionWrites() throws Exception
+    {
+        Future<?> future;
+
+        lockManager.getGlobalLock().writeLock().lock();
+
+        try
+        {
+            future = lockWriteInBackground( partitionB );
+
+            try
+            {
+                future.get( 200, TimeUnit.MILLISECONDS );
+                fail();
+            }
+            catch ( TimeoutException te )
+            {
+                // Expected
+            }
+        }
+        finally
+        {
+            lockManager.getGlobalLock().writeLock().unlock();
+        }
+
+        future.get( 5, TimeUnit.SECONDS );
+    }
+
+
+    @Test
+    public void testMultiplePartitionsLock() throws Exception
+    {
+        lockManager.lockWrite( partitionB, partitionA );
+
+        assertTrue( ( ( ReentrantReadWriteLock ) lockManager.getLock( partitionA ) ).isWriteLocked() );
+        assertTrue( ( ( ReentrantReadWriteLock ) lockManager.getLock( partitionB ) ).isWriteLocked() );
+
+        lockManager.unlockWrite( partitionB, partitionA );
+
+        assertFalse( ( ( ReentrantReadWriteLock ) lockManager.getLock( partitionA ) ).isWriteLocked() );
+        assertFalse( ( ( ReentrantReadWriteLock ) lockManager.getLock( partitionB ) ).isWriteLocked() );
+    }
+
+
+    @Test
+    public void testOutOfOrderLockTimesOut() throws Exception
+    {
+        lockManager.setLockTimeout( 100L );
+        CountDownLatch locked = new CountDownLatch( 1 );
+        CountDownLatch done = new CountDownLatch( 1 );
+
+        // Another thread holds the first partition
+        Future<?> future = executor.submit( () ->
+        {
+            lockManager.lockWrite( partitionA );
+            locked.countDown();
+            done.await();
+            lockManager.unlockWrite( partitionA );
+
+            return null;
+        } );
+
+        locked.await();
+        lockManager.lockWrite( partitionB );
+
+        try
+        {
+            // dc=a comes before dc=b : we must not wait forever
+            lockManager.lockRead( partitionA );
+            fail();
+        }
+        catch ( LdapServiceUnavailableException lsue )
+        {
+            // Expected
+        }
+        finally
+        {
+            lockManager.unlockWrite( partitionB );
+            done.countDown();
+        }
+
+        future.get( 5, TimeUnit.SECONDS );
+    }
+}
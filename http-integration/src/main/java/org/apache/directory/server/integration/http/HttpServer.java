@@ -32,15 +32,19 @@ import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.bridge.http.HttpDirectoryService;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
 import org.apache.directory.server.core.security.TlsKeyGenerator;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.protocol.shared.transport.TcpTransport;
@@ -54,6 +58,7 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.InetAccessHandler;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.jetty.xml.XmlConfiguration;
@@ -90,6 +95,15 @@ public class HttpServer
     /** protocol identifier for https */
     public static final String HTTPS_TRANSPORT_ID = "https";
 
+    /** The addresses allowed to read the metrics when none is configured : the loopback ones */
+    public static final String[] DEFAULT_METRICS_ALLOWED_ADDRESSES = { "127.0.0.0/8", "::1" };
+
+    /** The path the operation metrics are exposed on, null if they are not exposed */
+    private String metricsPath;
+
+    /** The addresses allowed to read the metrics */
+    private List<String> metricsAllowedAddresses = new ArrayList<>();
+
     /** an internal flag to check the server configuration */
     private boolean configured = false;
 
@@ -153,6 +167,8 @@ public class HttpServer
                 }
             }
 
+            addMetricsHandler();
+
             LOG.info( "starting jetty http server" );
             jetty.start();
         }
@@ -164,6 +180,54 @@ public class HttpServer
     }
 
 
+    /*
+     * Exposes the operation metrics of the DirectoryService, in front of the configured handlers,
+     * if a path has been configured. Only the allowed addresses can read them.
+     */
+    private void addMetricsHandler()
+    {
+        OperationMetrics metrics = dirService.getOperationMetrics();
+
+        if ( Strings.isEmpty( metricsPath ) || ( metrics == null ) )
+        {
+            return;
+        }
+
+        InetAccessHandler accessHandler = new InetAccessHandler();
+
+        if ( ( metricsAllowedAddresses == null ) || metricsAllowedAddresses.isEmpty() )
+        {
+            accessHandler.include( DEFAULT_METRICS_ALLOWED_ADDRESSES );
+        }
+        else
+        {
+            for ( String address : metricsAllowedAddresses )
+            {
+                accessHandler.include( address );
+            }
+        }
+
+        accessHandler.setHandler( new MetricsHandler( metrics ) );
+
+        ContextHandler metricsContext = new ContextHandler( metricsPath );
+        metricsContext.setHandler( accessHandler );
+
+        HandlerList handlers = new HandlerList();
+        handlers.addHandler( metricsContext );
+
+        if ( jetty.getHandler() != null )
+        {
+            handlers.addHandler( jetty.getHandler() );
+        }
+
+        jetty.setHandler( handlers );
+
+        LOG.info( "exposing the operation metrics on {} to {}", metricsPath,
+            ( ( metricsAllowedAddresses == null ) || metricsAllowedAddresses.isEmpty() ) ? "the loopback addresses"
+                : metricsAllowedAddresses );
+    }
+
+
     /*
      * configure the jetty server programmatically without using any configuration file 
      */
@@ -345,4 +409,45 @@ public class HttpServer
         this.httpsTransport = httpsTransport;
     }
 
+
+    /**
+     * @return The path the operation metrics are exposed on, null if they are not exposed
+     */
+    public String getMetricsPath()
+    {
+        return metricsPath;
+    }
+
+
+    /**
+     * Sets the path the operation metrics are exposed on. They are not exposed by default.
+     *
+     * @param metricsPath The path of the metrics, null to not expose them
+     */
+    public void setMetricsPath( String metricsPath )
+    {
+        this.metricsPath = metricsPath;
+    }
+
+
+    /**
+     * @return The addresses allowed to read the metrics, the loopback ones if empty
+     */
+    public List<String> getMetricsAllowedAddresses()
+    {
+        return metricsAllowedAddresses;
+    }
+
+
+    /**
+     * Sets the addresses allowed to read the metrics : addresses, CIDR blocks or ranges of
+     * addresses. Only the loopback addresses are allowed by default.
+     *
+     * @param metricsAllowedAddresses The allowed addresses
+     */
+    public void setMetricsAllowedAddresses( List<String> metricsAllowedAddresses )
+    {
+        this.metricsAllowedAddresses = metricsAllowedAddresses;
+    }
+
 }
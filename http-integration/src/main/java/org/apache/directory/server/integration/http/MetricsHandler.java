@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.integration.http;
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+
+/**
+ * A Jetty handler writing the operation metrics of the DirectoryService in the Prometheus
+ * text exposition format, so that they can be scraped.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MetricsHandler extends AbstractHandler
+{
+    /** The content type of the Prometheus text format */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** The metrics to export */
+    private final OperationMetrics metrics;
+
+
+    /**
+     * Creates a new instance of MetricsHandler
+     *
+     * @param metrics The metrics to export
+     */
+    public MetricsHandler( OperationMetrics metrics )
+    {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handle( String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response )
+        throws IOException
+    {
+        if ( !"GET".equals( request.getMethod() ) && !"HEAD".equals( request.getMethod() ) )
+        {
+            response.sendError( HttpServletResponse.SC_METHOD_NOT_ALLOWED );
+            baseRequest.setHandled( true );
+
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder( 8192 );
+        metrics.writePrometheus( sb );
+
+        response.setStatus( HttpServletResponse.SC_OK );
+        response.setContentType( CONTENT_TYPE );
+        response.setCharacterEncoding( StandardCharsets.UTF_8.name() );
+
+        try ( Writer writer = response.getWriter() )
+        {
+            writer.write( sb.toString() );
+        }
+
+        baseRequest.setHandled( true );
+    }
+}
@@ -784,7 +784,17 @@ public enum I18n
     ERR_747("ERR_747"),
     ERR_748("ERR_748"),
     ERR_749("ERR_749"),
-    ERR_750("ERR_750");
+    ERR_750("ERR_750"),
+    ERR_751_PARTITION_LOCK_TIMEOUT("ERR_751_PARTITION_LOCK_TIMEOUT"),
+    ERR_752_DISTINCT_CURSOR_UNORDERED("ERR_752_DISTINCT_CURSOR_UNORDERED"),
+    ERR_753_LMDB_MAP_FULL("ERR_753_LMDB_MAP_FULL"),
+    ERR_754_LMDB_ERROR("ERR_754_LMDB_ERROR"),
+    ERR_755_UNKNOWN_ENTRY_FORMAT("ERR_755_UNKNOWN_ENTRY_FORMAT"),
+    ERR_756_UNKNOWN_ATTRIBUTE_ID("ERR_756_UNKNOWN_ATTRIBUTE_ID"),
+    ERR_757_PLAN_CONTROL_ADMIN_ONLY("ERR_757_PLAN_CONTROL_ADMIN_ONLY"),
+    ERR_758_UNKNOWN_DICTIONARY_ATTRIBUTE("ERR_758_UNKNOWN_DICTIONARY_ATTRIBUTE"),
+    ERR_759_JDBM_GROUP_ROLLED_BACK("ERR_759_JDBM_GROUP_ROLLED_BACK"),
+    ERR_760_JDBM_COMMIT_INTERRUPTED("ERR_760_JDBM_COMMIT_INTERRUPTED");
 
     private static final ResourceBundle ERR_BUNDLE = ResourceBundle
         .getBundle( "org.apache.directory.server.i18n.errors", Locale.ROOT );
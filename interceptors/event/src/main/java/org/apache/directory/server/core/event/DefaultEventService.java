@@ -20,10 +20,16 @@
 package org.apache.directory.server.core.event;
 
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
@@ -31,7 +37,9 @@ import org.apache.directory.api.ldap.model.schema.normalizers.ConcreteNameCompon
 import org.apache.directory.api.ldap.model.schema.normalizers.NameComponentNormalizer;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.event.Evaluator;
 import org.apache.directory.server.core.api.event.EventService;
+import org.apache.directory.server.core.api.event.EventType;
 import org.apache.directory.server.core.api.event.NotificationCriteria;
 import org.apache.directory.server.core.api.event.RegistrationEntry;
 import org.apache.directory.server.core.api.normalization.FilterNormalizingVisitor;
@@ -40,6 +48,9 @@ import org.apache.directory.server.core.api.normalization.FilterNormalizingVisit
 /**
  * A class implementing the EventService interface. It stores all the Listener 
  * associated with a DirectoryService.
+ * <br>
+ * The listeners having the same base, scope and normalized filter are grouped, so
+ * that a change is evaluated once per group, and not once per listener.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -48,21 +59,28 @@ class DefaultEventService implements EventService
     /** The list of RegistrationEntries being registered */
     private List<RegistrationEntry> registrations = new CopyOnWriteArrayList<>();
 
+    /** The groups of listeners, by key */
+    private Map<String, ListenerGroup> groups = new ConcurrentHashMap<>();
+
     /** The DirectoryService instance */
     private DirectoryService directoryService;
 
     /** A normalizer used for filters */
     private FilterNormalizingVisitor filterNormalizer;
 
+    /** The dispatcher of the asynchronous listeners' changes */
+    private EventDispatcher dispatcher;
+
 
     /**
      * Create an instance of EventService
      * @param directoryService The associated DirectoryService
-     * @param registrations The list of Registrations
+     * @param dispatcher The dispatcher of the asynchronous listeners' changes
      */
-    DefaultEventService( DirectoryService directoryService )
+    DefaultEventService( DirectoryService directoryService, EventDispatcher dispatcher )
     {
         this.directoryService = directoryService;
+        this.dispatcher = dispatcher;
         SchemaManager schemaManager = directoryService.getSchemaManager();
         NameComponentNormalizer ncn = new ConcreteNameComponentNormalizer( schemaManager );
         filterNormalizer = new FilterNormalizingVisitor( ncn, schemaManager );
@@ -82,7 +100,22 @@ class DefaultEventService implements EventService
 
         ExprNode result = ( ExprNode ) criteria.getFilter().accept( filterNormalizer );
         criteria.setFilter( result );
-        registrations.add( new RegistrationEntry( listener, criteria ) );
+
+        if ( ( dispatcher != null ) && !listener.isSynchronous() )
+        {
+            // The listener's changes are queued as soon as it's registered
+            dispatcher.register( listener );
+        }
+
+        ListenerGroup group = groups.compute( ListenerGroup.getKey( criteria ), ( key, existing ) ->
+        {
+            ListenerGroup joined = ( existing == null ) ? new ListenerGroup( criteria ) : existing;
+            joined.increment();
+
+            return joined;
+        } );
+
+        registrations.add( new GroupedRegistrationEntry( listener, criteria, group ) );
     }
 
 
@@ -94,11 +127,78 @@ class DefaultEventService implements EventService
     {
         for ( RegistrationEntry entry : registrations )
         {
-            if ( entry.getListener() == listener )
+            if ( ( entry.getListener() == listener ) && registrations.remove( entry ) )
             {
-                registrations.remove( entry );
+                ListenerGroup group = ( ( GroupedRegistrationEntry ) entry ).group;
+
+                groups.computeIfPresent( group.getKey(), ( key, existing ) ->
+                    ( existing.decrement() > 0 ) ? existing : null );
             }
         }
+
+        if ( dispatcher != null )
+        {
+            // Drop the changes not yet delivered to the listener
+            dispatcher.remove( listener );
+        }
+    }
+
+
+    /**
+     * Find the registrations selected by a change, in registration order. The scope and
+     * the filter are evaluated once for each group of listeners.
+     *
+     * @param name The changed entry's DN
+     * @param entry The changed entry
+     * @param type The type of change. The listeners which event mask does not include it
+     * are skipped, and their group is not evaluated for them
+     * @param evaluator The filter evaluator
+     * @return The selected registrations
+     * @throws LdapException If a filter can't be evaluated
+     */
+    List<RegistrationEntry> getSelectingRegistrations( Dn name, Entry entry, EventType type, Evaluator evaluator )
+        throws LdapException
+    {
+        if ( registrations.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        Map<ListenerGroup, Boolean> evaluated = new IdentityHashMap<>();
+        List<RegistrationEntry> selecting = new ArrayList<>();
+
+        for ( RegistrationEntry registration : registrations )
+        {
+            if ( ( registration.getCriteria().getEventMask() & type.getMask() ) == 0 )
+            {
+                continue;
+            }
+
+            ListenerGroup group = ( ( GroupedRegistrationEntry ) registration ).group;
+            Boolean selected = evaluated.get( group );
+
+            if ( selected == null )
+            {
+                selected = group.selects( name, entry, evaluator );
+                evaluated.put( group, selected );
+            }
+
+            if ( selected )
+            {
+                selecting.add( registration );
+            }
+        }
+
+        return selecting;
+    }
+
+
+    /**
+     * @return The number of groups of listeners
+     */
+    int getGroupCount()
+    {
+        return groups.size();
     }
 
 
@@ -110,4 +210,35 @@ class DefaultEventService implements EventService
     {
         return Collections.unmodifiableList( registrations );
     }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void awaitDelivery()
+    {
+        if ( dispatcher != null )
+        {
+            dispatcher.awaitDelivery();
+        }
+    }
+
+
+    /**
+     * A registration, with the group of its listener
+     */
+    private static final class GroupedRegistrationEntry extends RegistrationEntry
+    {
+        /** The group of the listener */
+        private final ListenerGroup group;
+
+
+        private GroupedRegistrationEntry( DirectoryListener listener, NotificationCriteria criteria,
+            ListenerGroup group )
+        {
+            super( listener, criteria );
+            this.group = group;
+        }
+    }
 }
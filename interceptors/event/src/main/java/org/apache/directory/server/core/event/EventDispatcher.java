@@ -0,0 +1,738 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.event;
+
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.event.EventType;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Delivers the changes to the asynchronous listeners. Each listener has its own ring
+ * buffer of pending changes, which are delivered in order by a pool of threads : a
+ * listener is never called by two threads at the same time, and a slow listener only
+ * delays its own changes.
+ * <br>
+ * A thread delivers up to {@link #BATCH_SIZE} consecutive changes to a listener before
+ * moving to the next listener, so that a busy listener is not rescheduled for each
+ * change, but can't starve the other ones either.
+ * <br>
+ * When the ring buffer of a listener is full, the {@link OverflowPolicy} decides what
+ * happens to the new change. The policy only applies to the listeners accepting it (see
+ * {@link DirectoryListener#acceptsOverflow()}) : the changes of the other listeners, like
+ * the server internal ones, are never lost, as with the {@link OverflowPolicy#BLOCK} policy.
+ * <br>
+ * The changes are queued while the writer holds its partition locks, so it never waits
+ * there : a writer waits for the late listeners in {@link #awaitDelivery()}, once its locks
+ * are released.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EventDispatcher
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( EventDispatcher.class );
+
+    /** The default number of pending changes per listener */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /** The default number of dispatching threads */
+    public static final int DEFAULT_THREADS = 10;
+
+    /** The maximum number of changes delivered to a listener before moving to the next one */
+    public static final int BATCH_SIZE = 64;
+
+    /**
+     * What to do with a change when the ring buffer of a listener is full
+     */
+    public enum OverflowPolicy
+    {
+        /** The writing thread waits until the listener has consumed some changes, once its locks are released */
+        BLOCK,
+
+        /** The oldest pending change of the listener is dropped */
+        DROP_OLDEST,
+
+        /** The listener is removed from the event service, and told so */
+        DISCONNECT
+    }
+
+    /** The directory service, used to remove the disconnected listeners */
+    private final DirectoryService directoryService;
+
+    /** The number of pending changes per listener */
+    private final int queueSize;
+
+    /** The overflow policy */
+    private final OverflowPolicy overflowPolicy;
+
+    /** The threads delivering the changes */
+    private final ExecutorService executor;
+
+    /** The ring buffers, per registered listener */
+    private final Map<DirectoryListener, ListenerQueue> queues = new ConcurrentHashMap<>();
+
+    /** The threads delivering the changes, which never wait for a listener */
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    /** The statistics */
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong disconnectedCount = new AtomicLong();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * A pending change
+     */
+    private static final class Event
+    {
+        private final OperationContext opContext;
+        private final EventType type;
+        private final long queuedAt;
+
+
+        private Event( OperationContext opContext, EventType type )
+        {
+            this.opContext = opContext;
+            this.type = type;
+            queuedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * The ring buffer of a listener. It is scheduled on the executor when a change is
+     * added while it's not already scheduled.
+     */
+    private final class ListenerQueue implements Runnable
+    {
+        private final DirectoryListener listener;
+
+        /** Tells if the writers wait for this listener when its ring buffer is full */
+        private final boolean blocking;
+
+        /** The pending changes. The ArrayDeque is a ring buffer, which grows up to the queue size */
+        private final ArrayDeque<Event> ring = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private boolean scheduled;
+        private boolean closed;
+
+
+        private ListenerQueue( DirectoryListener listener )
+        {
+            this.listener = listener;
+            blocking = ( overflowPolicy == OverflowPolicy.BLOCK ) || !listener.acceptsOverflow();
+        }
+
+
+        /**
+         * Adds a change at the end of the ring buffer. This never waits : when the listener
+         * does not lose changes, the ring buffer goes beyond its size, and the writer will
+         * wait in {@link #awaitRoom()}.
+         *
+         * @return <code>false</code> if the listener has to be disconnected
+         */
+        private boolean offer( Event event )
+        {
+            boolean schedule = false;
+
+            lock.lock();
+
+            try
+            {
+                if ( closed )
+                {
+                    return true;
+                }
+
+                if ( !blocking && ( ring.size() >= queueSize ) )
+                {
+                    if ( overflowPolicy == OverflowPolicy.DISCONNECT )
+                    {
+                        close();
+
+                        return false;
+                    }
+
+                    poll();
+                    droppedCount.incrementAndGet();
+                }
+
+                ring.add( event );
+
+                if ( !scheduled )
+                {
+                    scheduled = true;
+                    schedule = true;
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            if ( schedule )
+            {
+                executor.execute( this );
+            }
+
+            return true;
+        }
+
+
+        /**
+         * Waits until the ring buffer is not full anymore, if the writers wait for this listener
+         */
+        private void awaitRoom()
+        {
+            if ( !blocking )
+            {
+                return;
+            }
+
+            lock.lock();
+
+            try
+            {
+                if ( !closed && ( ring.size() >= queueSize ) )
+                {
+                    blockedCount.incrementAndGet();
+
+                    while ( !closed && ( ring.size() >= queueSize ) )
+                    {
+                        notFull.await();
+                    }
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+
+        /**
+         * Removes the first change of the ring buffer. Must be called with the lock held.
+         */
+        private Event poll()
+        {
+            Event event = ring.poll();
+
+            if ( ring.size() < queueSize )
+            {
+                notFull.signalAll();
+            }
+
+            return event;
+        }
+
+
+        /**
+         * Gets the next change to deliver, or unschedules the queue if it's empty
+         */
+        private Event next()
+        {
+            lock.lock();
+
+            try
+            {
+                if ( closed || ring.isEmpty() )
+                {
+                    scheduled = false;
+
+                    return null;
+                }
+
+                return poll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+
+        /**
+         * Drops the pending changes, and wakes up the blocked writers. Must be called with
+         * the lock held.
+         */
+        private void close()
+        {
+            closed = true;
+            ring.clear();
+            notFull.signalAll();
+        }
+
+
+        private int size()
+        {
+            lock.lock();
+
+            try
+            {
+                return ring.size();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+
+        /**
+         * Delivers a batch of changes, then gives the thread to the next listener
+         */
+        @Override
+        public void run()
+        {
+            for ( int i = 0; i < BATCH_SIZE; i++ )
+            {
+                Event event = next();
+
+                if ( event == null )
+                {
+                    return;
+                }
+
+                try
+                {
+                    deliver( event.opContext, event.type, listener );
+                }
+                catch ( RuntimeException re )
+                {
+                    LOG.error( "The listener {} failed to handle a {} event : {}", listener, event.type,
+                        re.getMessage(), re );
+                }
+
+                long latency = System.nanoTime() - event.queuedAt;
+                dispatchedCount.incrementAndGet();
+                totalLatency.add( latency );
+                maxLatency.accumulateAndGet( latency, Math::max );
+            }
+
+            lock.lock();
+
+            try
+            {
+                if ( closed || ring.isEmpty() )
+                {
+                    scheduled = false;
+
+                    return;
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            executor.execute( this );
+        }
+    }
+
+
+    /**
+     * Creates a new instance of EventDispatcher
+     *
+     * @param directoryService The directory service
+     * @param queueSize The number of pending changes per listener
+     * @param overflowPolicy What to do with a change when the ring buffer of a listener is full
+     * @param nbThreads The number of threads delivering the changes
+     */
+    public EventDispatcher( DirectoryService directoryService, int queueSize, OverflowPolicy overflowPolicy,
+        int nbThreads )
+    {
+        this.directoryService = directoryService;
+        this.queueSize = Math.max( 1, queueSize );
+        this.overflowPolicy = overflowPolicy;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        executor = Executors.newFixedThreadPool( Math.max( 1, nbThreads ), runnable ->
+        {
+            Thread thread = new Thread( () ->
+            {
+                try
+                {
+                    runnable.run();
+                }
+                finally
+                {
+                    threads.remove( Thread.currentThread() );
+                }
+            }, "event-dispatcher-" + threadNumber.incrementAndGet() );
+            thread.setDaemon( true );
+            threads.add( thread );
+
+            return thread;
+        } );
+    }
+
+
+    /**
+     * Gets the overflow policy from its name, like "drop-oldest" or "DROP_OLDEST"
+     *
+     * @param name The policy's name
+     * @return The policy, {@link OverflowPolicy#DISCONNECT} if the name is null
+     * @throws IllegalArgumentException If the name is not a valid policy
+     */
+    public static OverflowPolicy parseOverflowPolicy( String name )
+    {
+        if ( name == null )
+        {
+            return OverflowPolicy.DISCONNECT;
+        }
+
+        try
+        {
+            return OverflowPolicy.valueOf( name.trim().replace( '-', '_' ).toUpperCase( Locale.ROOT ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new IllegalArgumentException( "Unknown event overflow policy '" + name + "', expected one of "
+                + Arrays.toString( OverflowPolicy.values() ) );
+        }
+    }
+
+
+    /**
+     * Creates the ring buffer of an asynchronous listener. This must be done before the
+     * listener is registered in the event service.
+     *
+     * @param listener The listener
+     */
+    public void register( DirectoryListener listener )
+    {
+        queues.computeIfAbsent( listener, ListenerQueue::new );
+    }
+
+
+    /**
+     * Queues a change for an asynchronous listener. The change is ignored if the listener
+     * has been removed meanwhile.
+     *
+     * @param opContext The change
+     * @param type The type of change
+     * @param listener The listener
+     */
+    public void dispatch( OperationContext opContext, EventType type, DirectoryListener listener )
+    {
+        ListenerQueue queue = queues.get( listener );
+
+        if ( queue == null )
+        {
+            return;
+        }
+
+        if ( !queue.offer( new Event( opContext, type ) ) )
+        {
+            disconnect( listener );
+        }
+    }
+
+
+    /**
+     * Waits until the listeners which don't lose changes have room for new ones. This must
+     * be called by the writers once they have released their locks. The threads delivering
+     * the changes don't wait, as they may be the ones the writer waits for.
+     */
+    public void awaitDelivery()
+    {
+        if ( threads.contains( Thread.currentThread() ) )
+        {
+            return;
+        }
+
+        for ( ListenerQueue queue : queues.values() )
+        {
+            queue.awaitRoom();
+        }
+    }
+
+
+    /**
+     * Removes a listener which can't keep up with the changes
+     */
+    private void disconnect( DirectoryListener listener )
+    {
+        disconnectedCount.incrementAndGet();
+        LOG.warn( "Removing the listener {} : it has {} changes waiting to be delivered", listener, queueSize );
+
+        directoryService.getEventService().removeListener( listener );
+        remove( listener );
+
+        try
+        {
+            listener.overflowed();
+        }
+        catch ( RuntimeException re )
+        {
+            LOG.error( "The listener {} failed to handle its removal : {}", listener, re.getMessage(), re );
+        }
+    }
+
+
+    /**
+     * Forgets a listener, and drops its pending changes
+     *
+     * @param listener The listener
+     */
+    public void remove( DirectoryListener listener )
+    {
+        ListenerQueue queue = queues.remove( listener );
+
+        if ( queue != null )
+        {
+            queue.lock.lock();
+
+            try
+            {
+                queue.close();
+            }
+            finally
+            {
+                queue.lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Stops the threads, and drops all the pending changes
+     */
+    public void stop()
+    {
+        for ( DirectoryListener listener : queues.keySet() )
+        {
+            remove( listener );
+        }
+
+        executor.shutdown();
+
+        try
+        {
+            executor.awaitTermination( 1, TimeUnit.SECONDS );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Calls the listener method associated with a change
+     *
+     * @param opContext The change
+     * @param type The type of change
+     * @param listener The listener
+     */
+    static void deliver( OperationContext opContext, EventType type, DirectoryListener listener )
+    {
+        switch ( type )
+        {
+            case ADD:
+                listener.entryAdded( ( AddOperationContext ) opContext );
+                break;
+
+            case DELETE:
+                listener.entryDeleted( ( DeleteOperationContext ) opContext );
+                break;
+
+            case MODIFY:
+                listener.entryModified( ( ModifyOperationContext ) opContext );
+                break;
+
+            case MOVE:
+                listener.entryMoved( ( MoveOperationContext ) opContext );
+                break;
+
+            case RENAME:
+                listener.entryRenamed( ( RenameOperationContext ) opContext );
+                break;
+
+            case MOVE_AND_RENAME:
+                listener.entryMovedAndRenamed( ( MoveAndRenameOperationContext ) opContext );
+                break;
+
+            default:
+                throw new IllegalArgumentException( "Unexpected event type " + type );
+        }
+    }
+
+
+    /**
+     * @return The number of pending changes per listener
+     */
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+
+    /**
+     * @return The overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+
+    /**
+     * @return The number of asynchronous listeners
+     */
+    public int getListenerCount()
+    {
+        return queues.size();
+    }
+
+
+    /**
+     * @return The number of changes waiting to be delivered, for all the listeners
+     */
+    public int getQueueDepth()
+    {
+        int depth = 0;
+
+        for ( ListenerQueue queue : queues.values() )
+        {
+            depth += queue.size();
+        }
+
+        return depth;
+    }
+
+
+    /**
+     * @return The largest number of changes waiting to be delivered to a listener
+     */
+    public int getMaxQueueDepth()
+    {
+        int depth = 0;
+
+        for ( ListenerQueue queue : queues.values() )
+        {
+            depth = Math.max( depth, queue.size() );
+        }
+
+        return depth;
+    }
+
+
+    /**
+     * @return The number of changes delivered
+     */
+    public long getDispatchedCount()
+    {
+        return dispatchedCount.get();
+    }
+
+
+    /**
+     * @return The number of changes dropped because a ring buffer was full
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+
+    /**
+     * @return The number of times a writer has waited because a ring buffer was full
+     */
+    public long getBlockedCount()
+    {
+        return blockedCount.get();
+    }
+
+
+    /**
+     * @return The number of listeners removed because their ring buffer was full
+     */
+    public long getDisconnectedCount()
+    {
+        return disconnectedCount.get();
+    }
+
+
+    /**
+     * @return The average time between a change and its delivery, in microseconds
+     */
+    public long getAverageLatency()
+    {
+        long dispatched = dispatchedCount.get();
+
+        return ( dispatched == 0L ) ? 0L : TimeUnit.NANOSECONDS.toMicros( totalLatency.sum() / dispatched );
+    }
+
+
+    /**
+     * @return The longest time between a change and its delivery, in microseconds
+     */
+    public long getMaxLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMicros( maxLatency.get() );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "EventDispatcher : " + queues.size() + " listeners, " + getQueueDepth() + " pending, "
+            + dispatchedCount.get() + " dispatched, " + droppedCount.get() + " dropped, " + blockedCount.get()
+            + " blocked, " + disconnectedCount.get() + " disconnected, average latency " + getAverageLatency()
+            + "us, policy " + overflowPolicy;
+    }
+}
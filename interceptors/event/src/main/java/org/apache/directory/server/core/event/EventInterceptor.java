@@ -20,24 +20,13 @@
 package org.apache.directory.server.core.event;
 
 
-import static org.apache.directory.api.ldap.model.message.SearchScope.OBJECT;
-import static org.apache.directory.api.ldap.model.message.SearchScope.ONELEVEL;
-import static org.apache.directory.api.ldap.model.message.SearchScope.SUBTREE;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -45,6 +34,7 @@ import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.event.DirectoryListener;
 import org.apache.directory.server.core.api.event.Evaluator;
+import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.event.EventType;
 import org.apache.directory.server.core.api.event.ExpressionEvaluator;
 import org.apache.directory.server.core.api.event.NotificationCriteria;
@@ -58,6 +48,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.event.EventDispatcher.OverflowPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,7 +64,18 @@ public class EventInterceptor extends BaseInterceptor
     private static final Logger LOG = LoggerFactory.getLogger( EventInterceptor.class );
 
     private Evaluator evaluator;
-    private ExecutorService executor;
+
+    /** The dispatcher of the asynchronous listeners' changes */
+    private EventDispatcher dispatcher;
+
+    /** The number of changes waiting to be delivered to an asynchronous listener */
+    private int queueSize = EventDispatcher.DEFAULT_QUEUE_SIZE;
+
+    /** What to do with a change when the queue of a listener is full */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+
+    /** The number of threads delivering the changes to the asynchronous listeners */
+    private int threads = EventDispatcher.DEFAULT_THREADS;
 
 
     /**
@@ -86,8 +88,8 @@ public class EventInterceptor extends BaseInterceptor
 
 
     /**
-     * Initialize the event interceptor. It creates a pool of executor which will be used
-     * to call the listeners in separate threads.
+     * Initialize the event interceptor. It creates the dispatcher which will be used
+     * to call the asynchronous listeners in separate threads.
      */
     @Override
     public void init( DirectoryService directoryService ) throws LdapException
@@ -96,151 +98,98 @@ public class EventInterceptor extends BaseInterceptor
         super.init( directoryService );
 
         evaluator = new ExpressionEvaluator( schemaManager );
-        executor = new ThreadPoolExecutor( 1, 10, 1000, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>( 100 ) );
-        
-        ThreadFactory threadFactory = new ThreadFactory() 
-        {
-            @Override
-            public Thread newThread( Runnable runnable ) 
-            {
-                Thread newThread = Executors.defaultThreadFactory().newThread( runnable );
-                newThread.setDaemon( true );
-                
-                return newThread;
-            }
-        };
-        
-        executor = new ThreadPoolExecutor( 1, 10, 1000, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>( 100 ),
-            threadFactory );
+        dispatcher = new EventDispatcher( directoryService, queueSize, overflowPolicy, threads );
 
-        this.directoryService.setEventService( new DefaultEventService( directoryService ) );
+        this.directoryService.setEventService( new DefaultEventService( directoryService, dispatcher ) );
         LOG.info( "Initialization complete." );
     }
 
 
     /**
-     * Call the listener passing it the context.
+     * @return The dispatcher of the asynchronous listeners' changes
+     */
+    public EventDispatcher getEventDispatcher()
+    {
+        return dispatcher;
+    }
+
+
+    /**
+     * @return The number of changes waiting to be delivered to an asynchronous listener
+     */
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+
+    /**
+     * Sets the number of changes waiting to be delivered to an asynchronous listener. This
+     * must be done before the interceptor is initialized.
+     *
+     * @param queueSize The number of pending changes per listener
+     */
+    public void setQueueSize( int queueSize )
+    {
+        this.queueSize = queueSize;
+    }
+
+
+    /**
+     * @return What to do with a change when the queue of a listener is full
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+
+    /**
+     * Sets what to do with a change when the queue of a listener is full. This must be
+     * done before the interceptor is initialized.
+     *
+     * @param overflowPolicy The overflow policy
+     */
+    public void setOverflowPolicy( OverflowPolicy overflowPolicy )
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+
+    /**
+     * @return The number of threads delivering the changes to the asynchronous listeners
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+
+    /**
+     * Sets the number of threads delivering the changes to the asynchronous listeners. This
+     * must be done before the interceptor is initialized.
+     *
+     * @param threads The number of threads
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
+
+    /**
+     * Call the listener passing it the context : directly if the listener is
+     * synchronous, through its queue otherwise.
      */
     private void fire( final OperationContext opContext, EventType type, final DirectoryListener listener )
     {
-        switch ( type )
+        if ( listener.isSynchronous() )
         {
-            case ADD:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryAdded( ( AddOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryAdded( ( AddOperationContext ) opContext );
-                        }
-                    } );
-                }
-
-                break;
-
-            case DELETE:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryDeleted( ( DeleteOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryDeleted( ( DeleteOperationContext ) opContext );
-                        }
-                    } );
-                }
-
-                break;
-
-            case MODIFY:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryModified( ( ModifyOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryModified( ( ModifyOperationContext ) opContext );
-                        }
-                    } );
-                }
-
-                break;
-
-            case MOVE:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryMoved( ( MoveOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryMoved( ( MoveOperationContext ) opContext );
-                        }
-                    } );
-                }
-
-                break;
-
-            case RENAME:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryRenamed( ( RenameOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryRenamed( ( RenameOperationContext ) opContext );
-                        }
-                    } );
-                }
-
-                break;
-
-            case MOVE_AND_RENAME:
-                if ( listener.isSynchronous() )
-                {
-                    listener.entryMovedAndRenamed( ( MoveAndRenameOperationContext ) opContext );
-                }
-                else
-                {
-                    executor.execute( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            listener.entryMovedAndRenamed( ( MoveAndRenameOperationContext ) opContext );
-                        }
-                    } );
-                }
-
-                break;
-
-            default:
-                throw new IllegalArgumentException( "Unexpected event type " + type );
+            EventDispatcher.deliver( opContext, type, listener );
+        }
+        else
+        {
+            dispatcher.dispatch( opContext, type, listener );
         }
     }
 
@@ -253,7 +202,8 @@ public class EventInterceptor extends BaseInterceptor
     {
         next( addContext );
 
-        List<RegistrationEntry> selecting = getSelectingRegistrations( addContext.getDn(), addContext.getEntry() );
+        List<RegistrationEntry> selecting = getSelectingRegistrations( addContext.getDn(), addContext.getEntry(),
+            EventType.ADD );
 
         if ( selecting.isEmpty() )
         {
@@ -262,10 +212,7 @@ public class EventInterceptor extends BaseInterceptor
 
         for ( final RegistrationEntry registration : selecting )
         {
-            if ( EventType.isAdd( registration.getCriteria().getEventMask() ) )
-            {
-                fire( addContext, EventType.ADD, registration.getListener() );
-            }
+            fire( addContext, EventType.ADD, registration.getListener() );
         }
     }
 
@@ -278,7 +225,8 @@ public class EventInterceptor extends BaseInterceptor
     {
         next( deleteContext );
 
-        List<RegistrationEntry> selecting = getSelectingRegistrations( deleteContext.getDn(), deleteContext.getEntry() );
+        List<RegistrationEntry> selecting = getSelectingRegistrations( deleteContext.getDn(), deleteContext.getEntry(),
+            EventType.DELETE );
 
         if ( selecting.isEmpty() )
         {
@@ -287,10 +235,7 @@ public class EventInterceptor extends BaseInterceptor
 
         for ( final RegistrationEntry registration : selecting )
         {
-            if ( EventType.isDelete( registration.getCriteria().getEventMask() ) )
-            {
-                fire( deleteContext, EventType.DELETE, registration.getListener() );
-            }
+            fire( deleteContext, EventType.DELETE, registration.getListener() );
         }
     }
 
@@ -309,7 +254,7 @@ public class EventInterceptor extends BaseInterceptor
             next( modifyContext );
         }
 
-        List<RegistrationEntry> selecting = getSelectingRegistrations( modifyContext.getDn(), oriEntry );
+        List<RegistrationEntry> selecting = getSelectingRegistrations( modifyContext.getDn(), oriEntry, EventType.MODIFY );
 
         if ( selecting.isEmpty() )
         {
@@ -328,10 +273,7 @@ public class EventInterceptor extends BaseInterceptor
 
         for ( final RegistrationEntry registration : selecting )
         {
-            if ( EventType.isModify( registration.getCriteria().getEventMask() ) )
-            {
-                fire( modifyContext, EventType.MODIFY, registration.getListener() );
-            }
+            fire( modifyContext, EventType.MODIFY, registration.getListener() );
         }
     }
 
@@ -346,7 +288,7 @@ public class EventInterceptor extends BaseInterceptor
 
         next( moveContext );
 
-        List<RegistrationEntry> selecting = getSelectingRegistrations( moveContext.getDn(), oriEntry );
+        List<RegistrationEntry> selecting = getSelectingRegistrations( moveContext.getDn(), oriEntry, EventType.MOVE );
 
         if ( selecting.isEmpty() )
         {
@@ -355,10 +297,7 @@ public class EventInterceptor extends BaseInterceptor
 
         for ( final RegistrationEntry registration : selecting )
         {
-            if ( EventType.isMove( registration.getCriteria().getEventMask() ) )
-            {
-                fire( moveContext, EventType.MOVE, registration.getListener() );
-            }
+            fire( moveContext, EventType.MOVE, registration.getListener() );
         }
     }
 
@@ -372,7 +311,8 @@ public class EventInterceptor extends BaseInterceptor
         Entry oriEntry = moveAndRenameContext.getOriginalEntry();
         next( moveAndRenameContext );
 
-        List<RegistrationEntry> selecting = getSelectingRegistrations( moveAndRenameContext.getDn(), oriEntry );
+        List<RegistrationEntry> selecting = getSelectingRegistrations( moveAndRenameContext.getDn(), oriEntry,
+            EventType.MOVE_AND_RENAME );
 
         if ( selecting.isEmpty() )
         {
@@ -381,10 +321,7 @@ public class EventInterceptor extends BaseInterceptor
 
         for ( final RegistrationEntry registration : selecting )
         {
-            if ( EventType.isMoveAndRename( registration.getCriteria().getEventMask() ) )
-            {
-                fire( moveAndRenameContext, EventType.MOVE_AND_RENAME, registration.getListener() );
-            }
+            fire( moveAndRenameContext, EventType.MOVE_AND_RENAME, registration.getListener() );
         }
     }
 
@@ -399,7 +336,7 @@ public class EventInterceptor extends BaseInterceptor
 
         next( renameContext );
 
-        List<RegistrationEntry> selecting = getSelectingRegistrations( renameContext.getDn(), oriEntry );
+        List<RegistrationEntry> selecting = getSelectingRegistrations( renameContext.getDn(), oriEntry, EventType.RENAME );
 
         if ( selecting.isEmpty() )
         {
@@ -418,21 +355,27 @@ public class EventInterceptor extends BaseInterceptor
 
         for ( final RegistrationEntry registration : selecting )
         {
-            if ( EventType.isRename( registration.getCriteria().getEventMask() ) )
-            {
-                fire( renameContext, EventType.RENAME, registration.getListener() );
-            }
+            fire( renameContext, EventType.RENAME, registration.getListener() );
         }
     }
 
 
     /**
      * Find a list of registrationEntries given an entry and a name. We check against
-     * the criteria for each registrationEntry
+     * the criteria of each group of registrationEntries, for the listeners interested
+     * in this type of change
      */
-    private List<RegistrationEntry> getSelectingRegistrations( Dn name, Entry entry ) throws LdapException
+    private List<RegistrationEntry> getSelectingRegistrations( Dn name, Entry entry, EventType type )
+        throws LdapException
     {
-        List<RegistrationEntry> registrations = directoryService.getEventService().getRegistrationEntries();
+        EventService eventService = directoryService.getEventService();
+
+        if ( eventService instanceof DefaultEventService )
+        {
+            return ( ( DefaultEventService ) eventService ).getSelectingRegistrations( name, entry, type, evaluator );
+        }
+
+        List<RegistrationEntry> registrations = eventService.getRegistrationEntries();
 
         if ( registrations.isEmpty() )
         {
@@ -445,17 +388,15 @@ public class EventInterceptor extends BaseInterceptor
         {
             NotificationCriteria criteria = registration.getCriteria();
 
+            if ( ( criteria.getEventMask() & type.getMask() ) == 0 )
+            {
+                continue;
+            }
+
             Dn base = criteria.getBase();
 
-            SearchScope scope = criteria.getScope();
-            
-            // fix for DIRSERVER-1502
-            boolean inscope =
-                    ( ( ( scope == OBJECT ) && name.equals( base ) )
-                    || ( ( scope == ONELEVEL ) && name.getParent().equals( base ) )
-                    || ( ( scope == SUBTREE ) && ( name.isDescendantOf( base ) || name.equals( base ) ) ) );
-            
-            if ( inscope && evaluator.evaluate( criteria.getFilter(), base, entry ) )
+            if ( ListenerGroup.isInScope( name, base, criteria.getScope() )
+                && evaluator.evaluate( criteria.getFilter(), base, entry ) )
             {
                 selecting.add( registration );
             }
@@ -471,6 +412,6 @@ public class EventInterceptor extends BaseInterceptor
     @Override
     public void destroy()
     {
-       executor.shutdown();
+        dispatcher.stop();
     }
 }
@@ -0,0 +1,170 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.event;
+
+
+import static org.apache.directory.api.ldap.model.message.SearchScope.OBJECT;
+import static org.apache.directory.api.ldap.model.message.SearchScope.ONELEVEL;
+import static org.apache.directory.api.ldap.model.message.SearchScope.SUBTREE;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.event.Evaluator;
+import org.apache.directory.server.core.api.event.NotificationCriteria;
+
+
+/**
+ * The listeners registered with the same base, scope and normalized filter. Whether a
+ * change selects them is computed once for the whole group : with many persistent
+ * searches and replication consumers sharing a few filters, the cost of a change depends
+ * on the number of distinct filters, not on the number of listeners.
+ * <br>
+ * The event mask is not part of the group, it is checked for each listener.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ListenerGroup
+{
+    /** The key of the group */
+    private final String key;
+
+    /** The base of the listeners */
+    private final Dn base;
+
+    /** The scope of the listeners */
+    private final SearchScope scope;
+
+    /** The normalized filter of the listeners */
+    private final ExprNode filter;
+
+    /** The number of listeners in the group */
+    private volatile int size;
+
+
+    /**
+     * Creates a new group for the listeners having the same criteria as the given one
+     *
+     * @param criteria The normalized criteria of the first listener
+     */
+    ListenerGroup( NotificationCriteria criteria )
+    {
+        key = getKey( criteria );
+        base = criteria.getBase();
+        scope = criteria.getScope();
+        filter = criteria.getFilter();
+    }
+
+
+    /**
+     * Gets the key of the group of a listener
+     *
+     * @param criteria The normalized criteria of the listener
+     * @return The key of its group
+     */
+    static String getKey( NotificationCriteria criteria )
+    {
+        return criteria.getBase().getNormName() + '|' + criteria.getScope() + '|' + criteria.getFilter();
+    }
+
+
+    /**
+     * Tells if an entry is in the scope of a search
+     *
+     * @param name The entry's DN
+     * @param base The search base
+     * @param scope The search scope
+     * @return <code>true</code> if the entry is in scope
+     */
+    static boolean isInScope( Dn name, Dn base, SearchScope scope )
+    {
+        // fix for DIRSERVER-1502
+        return ( ( scope == OBJECT ) && name.equals( base ) )
+            || ( ( scope == ONELEVEL ) && name.getParent().equals( base ) )
+            || ( ( scope == SUBTREE ) && ( name.isDescendantOf( base ) || name.equals( base ) ) );
+    }
+
+
+    /**
+     * Tells if a change selects the listeners of this group
+     *
+     * @param name The changed entry's DN
+     * @param entry The changed entry
+     * @param evaluator The filter evaluator
+     * @return <code>true</code> if the entry is in scope, and matches the filter
+     * @throws LdapException If the filter can't be evaluated
+     */
+    boolean selects( Dn name, Entry entry, Evaluator evaluator ) throws LdapException
+    {
+        return isInScope( name, base, scope ) && evaluator.evaluate( filter, base, entry );
+    }
+
+
+    /**
+     * @return The key of the group
+     */
+    String getKey()
+    {
+        return key;
+    }
+
+
+    /**
+     * Adds a listener to the group
+     *
+     * @return The number of listeners in the group
+     */
+    int increment()
+    {
+        return ++size;
+    }
+
+
+    /**
+     * Removes a listener from the group
+     *
+     * @return The number of remaining listeners in the group
+     */
+    int decrement()
+    {
+        return --size;
+    }
+
+
+    /**
+     * @return The number of listeners in the group
+     */
+    int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "ListenerGroup : " + key + ", " + size + " listeners";
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.event;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.event.DirectoryListenerAdapter;
+import org.apache.directory.server.core.api.event.Evaluator;
+import org.apache.directory.server.core.api.event.EventType;
+import org.apache.directory.server.core.api.event.NotificationCriteria;
+import org.apache.directory.server.core.api.event.RegistrationEntry;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the grouping of the listeners by base, scope and filter, and the selection of the
+ * listeners by a change.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DefaultEventServiceTest
+{
+    private static SchemaManager schemaManager;
+
+    /** The event service being tested */
+    private DefaultEventService eventService;
+
+    /** The entry changed in the tests */
+    private Dn name;
+    private Entry entry;
+
+    /**
+     * A listener ignoring all the changes
+     */
+    private static class TestListener extends DirectoryListenerAdapter
+    {
+    }
+
+    /**
+     * An evaluator counting its calls
+     */
+    private static class CountingEvaluator implements Evaluator
+    {
+        private final boolean result;
+        private int count;
+
+
+        private CountingEvaluator( boolean result )
+        {
+            this.result = result;
+        }
+
+
+        @Override
+        public boolean evaluate( ExprNode refinement, Dn dn, Entry entry ) throws LdapException
+        {
+            count++;
+
+            return result;
+        }
+    }
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void createEventService() throws Exception
+    {
+        MockDirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+
+        // Only synchronous listeners are used, there is no dispatcher
+        eventService = new DefaultEventService( directoryService, null );
+
+        name = new Dn( schemaManager, "cn=test,ou=system" );
+        entry = new DefaultEntry( schemaManager, name,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test" );
+    }
+
+
+    private NotificationCriteria createCriteria( String base, SearchScope scope, String filter,
+        EventType... eventTypes ) throws Exception
+    {
+        NotificationCriteria criteria = new NotificationCriteria( schemaManager );
+        criteria.setBase( new Dn( base ) );
+        criteria.setScope( scope );
+        criteria.setFilter( filter );
+
+        if ( eventTypes.length > 0 )
+        {
+            criteria.setEventMask( eventTypes );
+        }
+
+        return criteria;
+    }
+
+
+    @Test
+    public void testGroupByNormalizedCriteria() throws Exception
+    {
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(objectClass=person)" ) );
+        eventService.addListener( new TestListener(),
+            createCriteria( "OU=System", SearchScope.ONELEVEL, "(objectclass=person)" ) );
+
+        // The base and the filter are the same once normalized
+        assertEquals( 1, eventService.getGroupCount() );
+
+        // The event mask is not part of the group
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(objectClass=person)", EventType.DELETE ) );
+
+        assertEquals( 1, eventService.getGroupCount() );
+        assertEquals( 3, eventService.getRegistrationEntries().size() );
+    }
+
+
+    @Test
+    public void testDistinctGroups() throws Exception
+    {
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(objectClass=person)" ) );
+
+        // Another scope
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=system", SearchScope.SUBTREE, "(objectClass=person)" ) );
+
+        assertEquals( 2, eventService.getGroupCount() );
+
+        // Another filter
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)" ) );
+
+        assertEquals( 3, eventService.getGroupCount() );
+
+        // Another base
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=users,ou=system", SearchScope.ONELEVEL, "(objectClass=person)" ) );
+
+        assertEquals( 4, eventService.getGroupCount() );
+    }
+
+
+    @Test
+    public void testRemoveLastListenerRemovesGroup() throws Exception
+    {
+        DirectoryListener first = new TestListener();
+        DirectoryListener second = new TestListener();
+
+        eventService.addListener( first, createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)" ) );
+        eventService.addListener( second, createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)" ) );
+
+        assertEquals( 1, eventService.getGroupCount() );
+
+        eventService.removeListener( first );
+
+        assertEquals( 1, eventService.getGroupCount() );
+        assertEquals( 1, eventService.getRegistrationEntries().size() );
+
+        eventService.removeListener( second );
+
+        assertEquals( 0, eventService.getGroupCount() );
+        assertTrue( eventService.getRegistrationEntries().isEmpty() );
+
+        // Removing an unknown listener does nothing
+        eventService.removeListener( first );
+
+        assertEquals( 0, eventService.getGroupCount() );
+
+        // A new listener with the same criteria creates a new group
+        eventService.addListener( first, createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)" ) );
+
+        assertEquals( 1, eventService.getGroupCount() );
+    }
+
+
+    @Test
+    public void testGroupEvaluatedOnce() throws Exception
+    {
+        for ( int i = 0; i < 10; i++ )
+        {
+            eventService.addListener( new TestListener(),
+                createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)" ) );
+        }
+
+        CountingEvaluator evaluator = new CountingEvaluator( true );
+        List<RegistrationEntry> selecting = eventService.getSelectingRegistrations( name, entry, EventType.ADD,
+            evaluator );
+
+        assertEquals( 10, selecting.size() );
+        assertEquals( 1, evaluator.count );
+
+        // A filter which does not match selects none of the listeners
+        evaluator = new CountingEvaluator( false );
+
+        assertTrue( eventService.getSelectingRegistrations( name, entry, EventType.ADD, evaluator ).isEmpty() );
+        assertEquals( 1, evaluator.count );
+    }
+
+
+    @Test
+    public void testEventMaskCheckedPerListener() throws Exception
+    {
+        DirectoryListener addListener = new TestListener();
+        DirectoryListener deleteListener = new TestListener();
+
+        eventService.addListener( addListener,
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)", EventType.ADD ) );
+        eventService.addListener( deleteListener,
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)", EventType.DELETE ) );
+
+        assertEquals( 1, eventService.getGroupCount() );
+
+        CountingEvaluator evaluator = new CountingEvaluator( true );
+        List<RegistrationEntry> selecting = eventService.getSelectingRegistrations( name, entry, EventType.ADD,
+            evaluator );
+
+        assertEquals( 1, selecting.size() );
+        assertSame( addListener, selecting.get( 0 ).getListener() );
+        assertEquals( 1, evaluator.count );
+
+        selecting = eventService.getSelectingRegistrations( name, entry, EventType.DELETE, evaluator );
+
+        assertEquals( 1, selecting.size() );
+        assertSame( deleteListener, selecting.get( 0 ).getListener() );
+        assertEquals( 2, evaluator.count );
+    }
+
+
+    @Test
+    public void testNoListenerForEventType() throws Exception
+    {
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=system", SearchScope.ONELEVEL, "(cn=test)", EventType.ADD, EventType.DELETE ) );
+
+        CountingEvaluator evaluator = new CountingEvaluator( true );
+
+        // No listener wants this type of change : the group is not evaluated
+        assertTrue( eventService.getSelectingRegistrations( name, entry, EventType.MODIFY, evaluator ).isEmpty() );
+        assertEquals( 0, evaluator.count );
+    }
+
+
+    @Test
+    public void testOutOfScope() throws Exception
+    {
+        eventService.addListener( new TestListener(),
+            createCriteria( "ou=users,ou=system", SearchScope.SUBTREE, "(cn=test)" ) );
+
+        CountingEvaluator evaluator = new CountingEvaluator( true );
+
+        // The filter is not evaluated when the entry is out of scope
+        assertTrue( eventService.getSelectingRegistrations( name, entry, EventType.ADD, evaluator ).isEmpty() );
+        assertEquals( 0, evaluator.count );
+    }
+
+
+    @Test
+    public void testIsInScope() throws Exception
+    {
+        Dn base = new Dn( "ou=system" );
+        Dn child = new Dn( "ou=users,ou=system" );
+        Dn grandChild = new Dn( "cn=test,ou=users,ou=system" );
+        Dn other = new Dn( "ou=other" );
+
+        assertTrue( ListenerGroup.isInScope( base, base, SearchScope.OBJECT ) );
+        assertFalse( ListenerGroup.isInScope( child, base, SearchScope.OBJECT ) );
+
+        assertTrue( ListenerGroup.isInScope( child, base, SearchScope.ONELEVEL ) );
+        assertFalse( ListenerGroup.isInScope( grandChild, base, SearchScope.ONELEVEL ) );
+
+        assertTrue( ListenerGroup.isInScope( base, base, SearchScope.SUBTREE ) );
+        assertTrue( ListenerGroup.isInScope( child, base, SearchScope.SUBTREE ) );
+        assertTrue( ListenerGroup.isInScope( grandChild, base, SearchScope.SUBTREE ) );
+        assertFalse( ListenerGroup.isInScope( other, base, SearchScope.SUBTREE ) );
+    }
+}
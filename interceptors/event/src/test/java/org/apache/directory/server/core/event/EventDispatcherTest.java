@@ -0,0 +1,391 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.event;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.event.DirectoryListenerAdapter;
+import org.apache.directory.server.core.api.event.EventService;
+import org.apache.directory.server.core.api.event.EventType;
+import org.apache.directory.server.core.api.event.NotificationCriteria;
+import org.apache.directory.server.core.api.event.RegistrationEntry;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.event.EventDispatcher.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+
+/**
+ * Tests the delivery of the changes to the asynchronous listeners, and the overflow policies.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EventDispatcherTest
+{
+    /** The ring buffer size used in the tests */
+    private static final int QUEUE_SIZE = 2;
+
+    /** The listeners removed from the event service */
+    private final List<DirectoryListener> removed = new CopyOnWriteArrayList<>();
+
+    /** The dispatcher being tested */
+    private EventDispatcher dispatcher;
+
+    /**
+     * An event service which only records the removed listeners
+     */
+    private class RecordingEventService implements EventService
+    {
+        @Override
+        public void addListener( DirectoryListener listener, NotificationCriteria criteria )
+        {
+        }
+
+
+        @Override
+        public void removeListener( DirectoryListener listener )
+        {
+            removed.add( listener );
+            dispatcher.remove( listener );
+        }
+
+
+        @Override
+        public List<RegistrationEntry> getRegistrationEntries()
+        {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * A listener recording the changes it gets. It is stuck on the first change until it's released.
+     */
+    private static class SlowListener extends DirectoryListenerAdapter
+    {
+        private final boolean acceptsOverflow;
+        private final CountDownLatch started = new CountDownLatch( 1 );
+        private final CountDownLatch release = new CountDownLatch( 1 );
+        private final List<AddOperationContext> received = new CopyOnWriteArrayList<>();
+        private volatile boolean overflowed;
+
+
+        private SlowListener( boolean acceptsOverflow )
+        {
+            this.acceptsOverflow = acceptsOverflow;
+        }
+
+
+        @Override
+        public void entryAdded( AddOperationContext addContext )
+        {
+            started.countDown();
+
+            try
+            {
+                release.await( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            received.add( addContext );
+        }
+
+
+        @Override
+        public boolean acceptsOverflow()
+        {
+            return acceptsOverflow;
+        }
+
+
+        @Override
+        public void overflowed()
+        {
+            overflowed = true;
+        }
+
+
+        /**
+         * Waits until the listener has received the given number of changes
+         */
+        private void awaitReceived( int count ) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + 10000L;
+
+            while ( ( received.size() < count ) && ( System.currentTimeMillis() < end ) )
+            {
+                Thread.sleep( 10L );
+            }
+        }
+    }
+
+
+    private EventDispatcher createDispatcher( OverflowPolicy policy )
+    {
+        MockDirectoryService directoryService = new MockDirectoryService()
+        {
+            private final EventService eventService = new RecordingEventService();
+
+
+            @Override
+            public EventService getEventService()
+            {
+                return eventService;
+            }
+        };
+
+        dispatcher = new EventDispatcher( directoryService, QUEUE_SIZE, policy, 1 );
+
+        return dispatcher;
+    }
+
+
+    @After
+    public void stop()
+    {
+        if ( dispatcher != null )
+        {
+            dispatcher.stop();
+        }
+    }
+
+
+    /**
+     * Sends some changes to a listener. The first one is being delivered, the other ones are
+     * queued.
+     */
+    private List<AddOperationContext> fill( SlowListener listener, int count ) throws InterruptedException
+    {
+        List<AddOperationContext> changes = new ArrayList<>();
+
+        for ( int i = 0; i < count; i++ )
+        {
+            AddOperationContext change = new AddOperationContext( null );
+            changes.add( change );
+            dispatcher.dispatch( change, EventType.ADD, listener );
+
+            if ( i == 0 )
+            {
+                assertTrue( listener.started.await( 10, TimeUnit.SECONDS ) );
+            }
+        }
+
+        return changes;
+    }
+
+
+    /**
+     * Calls awaitDelivery in another thread
+     */
+    private Thread awaitDelivery( CountDownLatch done )
+    {
+        Thread writer = new Thread( () ->
+        {
+            dispatcher.awaitDelivery();
+            done.countDown();
+        } );
+
+        writer.start();
+
+        return writer;
+    }
+
+
+    @Test
+    public void testParsePolicy()
+    {
+        assertEquals( OverflowPolicy.DISCONNECT, EventDispatcher.parseOverflowPolicy( null ) );
+        assertEquals( OverflowPolicy.DROP_OLDEST, EventDispatcher.parseOverflowPolicy( "drop-oldest" ) );
+        assertEquals( OverflowPolicy.BLOCK, EventDispatcher.parseOverflowPolicy( " Block " ) );
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseUnknownPolicy()
+    {
+        EventDispatcher.parseOverflowPolicy( "wait" );
+    }
+
+
+    @Test
+    public void testDropOldest() throws Exception
+    {
+        createDispatcher( OverflowPolicy.DROP_OLDEST );
+        SlowListener listener = new SlowListener( true );
+        dispatcher.register( listener );
+
+        // The first change is being delivered, the two next ones are dropped
+        List<AddOperationContext> changes = fill( listener, 5 );
+
+        assertEquals( 2, dispatcher.getDroppedCount() );
+        assertEquals( QUEUE_SIZE, dispatcher.getQueueDepth() );
+
+        listener.release.countDown();
+        listener.awaitReceived( 3 );
+
+        assertEquals( 3, listener.received.size() );
+        assertTrue( listener.received.get( 0 ) == changes.get( 0 ) );
+        assertTrue( listener.received.get( 1 ) == changes.get( 3 ) );
+        assertTrue( listener.received.get( 2 ) == changes.get( 4 ) );
+        assertFalse( listener.overflowed );
+    }
+
+
+    @Test
+    public void testDisconnect() throws Exception
+    {
+        createDispatcher( OverflowPolicy.DISCONNECT );
+        SlowListener listener = new SlowListener( true );
+        dispatcher.register( listener );
+
+        fill( listener, QUEUE_SIZE + 2 );
+
+        assertTrue( listener.overflowed );
+        assertEquals( 1, dispatcher.getDisconnectedCount() );
+        assertEquals( Collections.singletonList( listener ), removed );
+        assertEquals( 0, dispatcher.getListenerCount() );
+        assertEquals( 0, dispatcher.getQueueDepth() );
+
+        // The changes sent after the removal are ignored
+        dispatcher.dispatch( new AddOperationContext( null ), EventType.ADD, listener );
+
+        assertEquals( 0, dispatcher.getListenerCount() );
+
+        listener.release.countDown();
+        listener.awaitReceived( 1 );
+        Thread.sleep( 100L );
+
+        assertEquals( 1, listener.received.size() );
+    }
+
+
+    @Test
+    public void testDisconnectSparesInternalListeners() throws Exception
+    {
+        createDispatcher( OverflowPolicy.DISCONNECT );
+
+        // The listeners which don't accept to lose changes are handled as with BLOCK
+        SlowListener listener = new SlowListener( false );
+        dispatcher.register( listener );
+
+        // Queuing never waits
+        List<AddOperationContext> changes = fill( listener, QUEUE_SIZE + 3 );
+
+        assertFalse( listener.overflowed );
+        assertTrue( removed.isEmpty() );
+        assertEquals( 0, dispatcher.getDroppedCount() );
+        assertEquals( QUEUE_SIZE + 2, dispatcher.getQueueDepth() );
+
+        // But the writers wait for the listener once their locks are released
+        CountDownLatch done = new CountDownLatch( 1 );
+        Thread writer = awaitDelivery( done );
+
+        assertFalse( done.await( 200, TimeUnit.MILLISECONDS ) );
+
+        listener.release.countDown();
+
+        assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+        writer.join();
+
+        listener.awaitReceived( changes.size() );
+
+        assertEquals( changes, listener.received );
+        assertEquals( 1, dispatcher.getBlockedCount() );
+    }
+
+
+    @Test
+    public void testBlock() throws Exception
+    {
+        createDispatcher( OverflowPolicy.BLOCK );
+        SlowListener listener = new SlowListener( true );
+        dispatcher.register( listener );
+
+        List<AddOperationContext> changes = fill( listener, QUEUE_SIZE + 3 );
+
+        assertEquals( 0, dispatcher.getDroppedCount() );
+        assertEquals( 0, dispatcher.getDisconnectedCount() );
+
+        CountDownLatch done = new CountDownLatch( 1 );
+        Thread writer = awaitDelivery( done );
+
+        assertFalse( done.await( 200, TimeUnit.MILLISECONDS ) );
+
+        listener.release.countDown();
+
+        assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+        writer.join();
+
+        listener.awaitReceived( changes.size() );
+
+        assertEquals( changes, listener.received );
+    }
+
+
+    @Test
+    public void testAwaitDeliveryWithRoom() throws Exception
+    {
+        createDispatcher( OverflowPolicy.BLOCK );
+        SlowListener listener = new SlowListener( false );
+        dispatcher.register( listener );
+
+        fill( listener, QUEUE_SIZE );
+
+        // The ring buffer is not full : the writer does not wait
+        dispatcher.awaitDelivery();
+
+        assertEquals( 0, dispatcher.getBlockedCount() );
+
+        listener.release.countDown();
+    }
+
+
+    @Test
+    public void testDispatchAfterRemove() throws Exception
+    {
+        createDispatcher( OverflowPolicy.BLOCK );
+        SlowListener listener = new SlowListener( false );
+        listener.release.countDown();
+
+        dispatcher.register( listener );
+        dispatcher.remove( listener );
+
+        // A change selected before the listener was removed does not recreate its queue
+        dispatcher.dispatch( new AddOperationContext( null ), EventType.ADD, listener );
+
+        assertEquals( 0, dispatcher.getListenerCount() );
+        Thread.sleep( 100L );
+        assertTrue( listener.received.isEmpty() );
+    }
+}
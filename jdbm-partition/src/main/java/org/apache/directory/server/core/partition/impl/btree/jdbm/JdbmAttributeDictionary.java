@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdbm.RecordManager;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+
+
+/**
+ * The attribute dictionary of a JDBM partition, stored in a named record of its record
+ * manager : the list of the OIDs, the index being the id. The list is small, it's written
+ * again when an id is added.
+ * <br>
+ * A new id is written in the current transaction of the record manager, with the entry
+ * using it. The partition removes the ids added by a transaction which is rolled back.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmAttributeDictionary extends AttributeDictionary
+{
+    /** The name of the record storing the dictionary */
+    static final String DICTIONARY_RECORD = "attributeDictionary";
+
+    /** The record manager */
+    private final RecordManager recMan;
+
+    /** The id of the record storing the dictionary */
+    private final long recId;
+
+
+    /**
+     * Creates the dictionary, and reads the ids it already contains.
+     *
+     * @param schemaManager The schema manager
+     * @param recMan The record manager of the partition
+     * @throws IOException If the dictionary can't be read or created
+     */
+    @SuppressWarnings("unchecked")
+    public JdbmAttributeDictionary( SchemaManager schemaManager, RecordManager recMan ) throws IOException
+    {
+        super( schemaManager );
+        this.recMan = recMan;
+
+        long dictionaryId = recMan.getNamedObject( DICTIONARY_RECORD );
+
+        if ( dictionaryId == 0 )
+        {
+            // Created in its own transaction, so that a rollback does not remove it
+            dictionaryId = recMan.insert( new ArrayList<String>() );
+            recMan.setNamedObject( DICTIONARY_RECORD, dictionaryId );
+            recMan.commit();
+        }
+        else
+        {
+            load( ( List<String> ) recMan.fetch( dictionaryId ) );
+        }
+
+        recId = dictionaryId;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void store( int id, String oid ) throws IOException
+    {
+        ArrayList<String> oids = new ArrayList<>( getOids() );
+        oids.add( oid );
+
+        recMan.update( recId, oids );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return DICTIONARY_RECORD;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Commits the write transactions of a JDBM partition in groups. Each JDBM commit forces the
+ * record manager log to the disk, which is what makes a write expensive. Instead of committing
+ * each transaction when its operation ends, a writer leaves its modifications in the current
+ * JDBM transaction, releases the partition lock and waits. The next writers, which were
+ * waiting for the partition lock, do the same. Then one of the waiting writers, the leader,
+ * takes the partition write lock back and commits the record manager once for all of them :
+ * they are all acknowledged after this single log synchronization.
+ * <br>
+ * The leader asks for the partition write lock like any writer, so it gets it after the
+ * writers which were already waiting, and the group gets larger as the load increases. With
+ * a single writer, the group has one transaction and the cost is one more lock acquisition.
+ * <br>
+ * All the transactions of a group share the same JDBM transaction, which can't be partially
+ * rolled back. A transaction which is aborted without having modified anything, like one
+ * rejected by an interceptor, does not touch it. A transaction which is aborted after having
+ * written something rolls back the whole JDBM transaction, and the transactions of its group
+ * fail : their writers have not been acknowledged yet, and get an error.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmGroupCommit
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbmGroupCommit.class );
+
+    /** The partition record manager */
+    private final JdbmRecordManager recordManager;
+
+    /** The partition, which write lock is held while committing */
+    private final JdbmPartition partition;
+
+    /** Protects the fields below */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when a leader is done */
+    private final Condition flushed = lock.newCondition();
+
+    /** The transactions left in the current JDBM transaction, waiting for the next commit */
+    private List<JdbmPartitionWriteTxn> pending = new ArrayList<>();
+
+    /** Tells if a waiting writer is committing the pending transactions */
+    private boolean leading;
+
+    /** The number of JDBM commits */
+    private long commitCount;
+
+    /** The number of transactions committed by these commits */
+    private long transactionCount;
+
+
+    /**
+     * Creates a new instance of JdbmGroupCommit
+     *
+     * @param recordManager The partition record manager
+     * @param partition The partition
+     */
+    public JdbmGroupCommit( JdbmRecordManager recordManager, JdbmPartition partition )
+    {
+        this.recordManager = recordManager;
+        this.partition = partition;
+    }
+
+
+    /**
+     * @return The partition record manager
+     */
+    public JdbmRecordManager getRecordManager()
+    {
+        return recordManager;
+    }
+
+
+    /**
+     * Commits a transaction right away, with the pending ones. The caller holds the partition
+     * write lock, or is the only writer.
+     *
+     * @param writeTxn The transaction to commit
+     * @throws IOException If the record manager can't be committed
+     */
+    public void commit( JdbmPartitionWriteTxn writeTxn ) throws IOException
+    {
+        lock.lock();
+
+        try
+        {
+            pending.add( writeTxn );
+            writeTxn.setPending( true );
+            flush( false );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Leaves a transaction in the current JDBM transaction, to be committed with the next
+     * writers. The caller holds the partition write lock, and calls {@link #awaitDurability(JdbmPartitionWriteTxn)}
+     * once it has released it.
+     *
+     * @param writeTxn The transaction to commit
+     * @throws IOException If the transaction is committed right away and the record manager can't be committed
+     */
+    public void commitDeferred( JdbmPartitionWriteTxn writeTxn ) throws IOException
+    {
+        if ( partition.getReadWriteLock() == null )
+        {
+            // No lock to take back to commit later
+            commit( writeTxn );
+
+            return;
+        }
+
+        lock.lock();
+
+        try
+        {
+            if ( writeTxn.hasModifications() )
+            {
+                pending.add( writeTxn );
+                writeTxn.setPending( true );
+
+                return;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        // Nothing to make durable
+        writeTxn.acknowledge();
+    }
+
+
+    /**
+     * Waits until a transaction committed by {@link #commitDeferred(JdbmPartitionWriteTxn)} is
+     * durable. If no other writer is committing the pending transactions, this one does. The
+     * caller must not hold the partition lock.
+     *
+     * @param writeTxn The transaction
+     * @throws IOException If the transaction has been rolled back, or can't be committed
+     */
+    public void awaitDurability( JdbmPartitionWriteTxn writeTxn ) throws IOException
+    {
+        lock.lock();
+
+        try
+        {
+            while ( writeTxn.isPending() )
+            {
+                if ( leading )
+                {
+                    flushed.await();
+                }
+                else
+                {
+                    leading = true;
+                    lock.unlock();
+
+                    try
+                    {
+                        lead();
+                    }
+                    finally
+                    {
+                        lock.lock();
+                        leading = false;
+                        flushed.signalAll();
+                    }
+                }
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException( I18n.err( I18n.ERR_760_JDBM_COMMIT_INTERRUPTED, partition.getId() ) );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        writeTxn.checkFailure();
+    }
+
+
+    /**
+     * Takes the partition write lock, once the writers already waiting for it have left
+     * their modifications, and commits all the pending transactions.
+     */
+    private void lead() throws IOException
+    {
+        Lock writeLock = partition.getReadWriteLock().writeLock();
+        writeLock.lock();
+
+        try
+        {
+            lock.lock();
+
+            try
+            {
+                if ( !pending.isEmpty() )
+                {
+                    flush( false );
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+
+    /**
+     * Aborts a transaction. The JDBM transaction is only rolled back if this transaction has
+     * modified something, in which case the pending transactions, which share the same JDBM
+     * transaction, fail. The caller holds the partition write lock.
+     *
+     * @param writeTxn The transaction to abort
+     * @throws IOException If the record manager can't be rolled back
+     */
+    public void abort( JdbmPartitionWriteTxn writeTxn ) throws IOException
+    {
+        List<JdbmPartitionWriteTxn> rolledBack = null;
+
+        lock.lock();
+
+        try
+        {
+            if ( writeTxn.hasModifications() )
+            {
+                rolledBack = pending;
+                pending = new ArrayList<>();
+
+                try
+                {
+                    recordManager.rollback();
+                }
+                finally
+                {
+                    if ( !rolledBack.isEmpty() )
+                    {
+                        LOG.warn( "Rolling back {} transactions of the {} partition with a failed one",
+                            rolledBack.size(), partition.getId() );
+
+                        fail( rolledBack, new IOException( I18n.err( I18n.ERR_759_JDBM_GROUP_ROLLED_BACK,
+                            partition.getId() ) ) );
+                        flushed.signalAll();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+            writeTxn.aborted();
+        }
+    }
+
+
+    /**
+     * Commits the pending transactions, and copies the log into the database file. The caller
+     * holds the partition write lock, or the partition is not used anymore.
+     *
+     * @throws IOException If the record manager can't be committed
+     */
+    public void checkpoint() throws IOException
+    {
+        lock.lock();
+
+        try
+        {
+            flush( true );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Commits the record manager and acknowledges the pending transactions. If the partition
+     * syncs on write, the log is also copied into the database file.
+     */
+    private void flush( boolean checkpoint ) throws IOException
+    {
+        List<JdbmPartitionWriteTxn> group = pending;
+        pending = new ArrayList<>();
+
+        try
+        {
+            recordManager.commit();
+
+            if ( checkpoint || partition.isSyncOnWrite() )
+            {
+                recordManager.getBaseRecordManager().getTransactionManager().synchronizeLog();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            fail( group, ioe );
+
+            throw ioe;
+        }
+
+        commitCount++;
+        transactionCount += group.size();
+
+        if ( group.size() > 1 )
+        {
+            LOG.debug( "Committed {} transactions of the {} partition at once", group.size(), partition.getId() );
+        }
+
+        for ( JdbmPartitionWriteTxn writeTxn : group )
+        {
+            writeTxn.setPending( false );
+        }
+
+        for ( JdbmPartitionWriteTxn writeTxn : group )
+        {
+            writeTxn.acknowledge();
+        }
+    }
+
+
+    /**
+     * Fails the transactions of a group which could not be committed
+     */
+    private void fail( List<JdbmPartitionWriteTxn> group, IOException failure )
+    {
+        for ( JdbmPartitionWriteTxn writeTxn : group )
+        {
+            writeTxn.setFailure( failure );
+            writeTxn.setPending( false );
+        }
+
+        for ( JdbmPartitionWriteTxn writeTxn : group )
+        {
+            writeTxn.aborted();
+        }
+    }
+
+
+    /**
+     * @return The number of JDBM commits
+     */
+    public long getCommitCount()
+    {
+        lock.lock();
+
+        try
+        {
+            return commitCount;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return The average number of transactions committed by a JDBM commit
+     */
+    public double getAverageGroupSize()
+    {
+        lock.lock();
+
+        try
+        {
+            return commitCount == 0L ? 0d : ( double ) transactionCount / commitCount;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "JdbmGroupCommit " + partition.getId() + " : " + getCommitCount() + " commits, "
+            + getAverageGroupSize() + " transactions per commit";
+    }
+}
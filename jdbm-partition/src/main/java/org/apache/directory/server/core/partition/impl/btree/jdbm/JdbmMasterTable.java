@@ -21,14 +21,19 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import java.io.IOException;
+import java.util.Set;
 import java.util.UUID;
 
 import jdbm.RecordManager;
 import jdbm.helper.Serializer;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.AttributeDictionary;
 import org.apache.directory.server.xdbm.MasterTable;
 
 
@@ -55,6 +60,25 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
     }
 
 
+    /**
+     * Creates the master table using JDBM B+Trees for the backing store, the entries
+     * being encoded with the partition attribute dictionary.
+     *
+     * @param recMan the JDBM record manager
+     * @param schemaManager the schema manager
+     * @param dictionary the partition attribute dictionary
+     * @throws IOException if there is an error opening the Db file.
+     */
+    public JdbmMasterTable( RecordManager recMan, SchemaManager schemaManager, AttributeDictionary dictionary )
+        throws IOException
+    {
+        super( schemaManager, DBF, recMan, UuidComparator.INSTANCE, UuidSerializer.INSTANCE,
+            new EntrySerializer( schemaManager, dictionary ) );
+
+        UuidComparator.INSTANCE.setSchemaManager( schemaManager );
+    }
+
+
     protected JdbmMasterTable( RecordManager recMan, SchemaManager schemaManager, String dbName, Serializer serializer )
         throws Exception
     {
@@ -74,4 +98,19 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
     {
         return UUID.randomUUID().toString();
     }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The projection is not supported : the whole entry is returned. JDBM decodes all the
+     * entries of a page when it reads it, and keeps them in its cache, so the stored bytes
+     * of an entry are not available anymore. The partition caches the whole entry, and
+     * copies its projected attributes.
+     */
+    @Override
+    public Entry get( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes ) throws LdapException
+    {
+        return get( partitionTxn, id );
+    }
 }
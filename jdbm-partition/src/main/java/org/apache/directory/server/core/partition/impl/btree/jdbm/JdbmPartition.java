@@ -48,38 +48,25 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
-import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.OperationContext;
-import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AttributeDictionary;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
-import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
 import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
 import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
-import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-
 import jdbm.RecordManager;
-import jdbm.helper.MRU;
 import jdbm.recman.BaseRecordManager;
-import jdbm.recman.CacheRecordManager;
 import jdbm.recman.TransactionManager;
 
 
@@ -109,8 +96,11 @@ public class JdbmPartition extends AbstractBTreePartition
     /** the JDBM record manager used by this database */
     private RecordManager recMan;
 
-    /** the entry cache */
-    private Cache< String, Entry > entryCache;
+    /** Commits the write transactions, several at once when there are concurrent writers */
+    private JdbmGroupCommit groupCommit;
+
+    /** The dictionary of the attribute types stored in the entries */
+    private AttributeDictionary dictionary;
 
 
     /**
@@ -402,14 +392,7 @@ public class JdbmPartition extends AbstractBTreePartition
             BaseRecordManager base;
 
             // setup optimizer and registries for parent
-            if ( !optimizerEnabled )
-            {
-                setOptimizer( new NoOpOptimizer() );
-            }
-            else
-            {
-                setOptimizer( new DefaultOptimizer( this ) );
-            }
+            setOptimizer( createOptimizer() );
 
             EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
             CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
@@ -441,7 +424,9 @@ public class JdbmPartition extends AbstractBTreePartition
                 
                 LOG.info( "Setting CacheRecondManager's cache size to {}", recCacheSize );
                 
-                recMan = new CacheRecordManager( base, new MRU( recCacheSize ) );
+                JdbmRecordManager jdbmRecordManager = new JdbmRecordManager( base, recCacheSize );
+                recMan = jdbmRecordManager;
+                groupCommit = new JdbmGroupCommit( jdbmRecordManager, this );
             }
             catch ( IOException ioe )
             {
@@ -523,7 +508,8 @@ public class JdbmPartition extends AbstractBTreePartition
             // Create the master table (the table containing all the entries)
             try
             {
-                master = new JdbmMasterTable( recMan, schemaManager );
+                dictionary = new JdbmAttributeDictionary( schemaManager, recMan );
+                master = new JdbmMasterTable( recMan, schemaManager, dictionary );
             }
             catch ( IOException ioe )
             {
@@ -535,8 +521,6 @@ public class JdbmPartition extends AbstractBTreePartition
                 buildUserIndex( beginReadTransaction(), indexToBuild );
             }
 
-            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
-
             // Initialization of the context entry
             if ( ( suffixDn != null ) && ( contextEntry != null ) )
             {
@@ -675,22 +659,8 @@ public class JdbmPartition extends AbstractBTreePartition
         
         try
         {
-            // Commit
-            recMan.commit();
-    
-            // And flush the journal
-            BaseRecordManager baseRecordManager = null;
-    
-            if ( recMan instanceof CacheRecordManager )
-            {
-                baseRecordManager = ( ( BaseRecordManager ) ( ( CacheRecordManager ) recMan ).getRecordManager() );
-            }
-            else
-            {
-                baseRecordManager = ( ( BaseRecordManager ) recMan );
-            }
-    
-            baseRecordManager.getTransactionManager().synchronizeLog();
+            // Commit, with the pending transactions, and flush the journal
+            groupCommit.checkpoint();
         }
         catch ( IOException ioe )
         {
@@ -864,6 +834,8 @@ public class JdbmPartition extends AbstractBTreePartition
         // This is specific to the JDBM store : close the record manager
         try
         {
+            // The transactions still waiting for a commit are acknowledged
+            groupCommit.checkpoint();
             recMan.close();
             LOG.debug( "Closed record manager for {} partition.", suffixDn );
         }
@@ -872,13 +844,6 @@ public class JdbmPartition extends AbstractBTreePartition
             LOG.error( I18n.err( I18n.ERR_127 ), t );
             errors.addThrowable( t );
         }
-        finally
-        {
-            if ( entryCache != null )
-            {
-                entryCache.invalidateAll();
-            }
-        }
 
         if ( errors.size() > 0 )
         {
@@ -922,86 +887,23 @@ public class JdbmPartition extends AbstractBTreePartition
 
 
     @Override
-    public void updateCache( OperationContext opCtx )
-    {
-        if ( entryCache == null )
-        {
-            return;
-        }
-
-        try
-        {
-            if ( opCtx instanceof ModifyOperationContext )
-            {
-                // replace the entry
-                ModifyOperationContext modCtx = ( ModifyOperationContext ) opCtx;
-                Entry entry = modCtx.getAlteredEntry();
-                String id = entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
-
-                if ( entry instanceof ClonedServerEntry )
-                {
-                    entry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
-                }
-
-                entryCache.put( id, entry );
-            }
-            else if ( ( opCtx instanceof MoveOperationContext )
-                || ( opCtx instanceof MoveAndRenameOperationContext )
-                || ( opCtx instanceof RenameOperationContext ) )
-            {
-                // clear the cache it is not worth updating all the children
-                entryCache.invalidateAll();
-            }
-            else if ( opCtx instanceof DeleteOperationContext )
-            {
-                // delete the entry
-                DeleteOperationContext delCtx = ( DeleteOperationContext ) opCtx;
-                entryCache.invalidate( delCtx.getEntry().get( SchemaConstants.ENTRY_UUID_AT ).getString() );
-            }
-        }
-        catch ( LdapException e )
-        {
-            LOG.warn( "Failed to update entry cache", e );
-        }
-    }
-
-
-    @Override
-    public Entry lookupCache( String id )
+    public PartitionReadTxn beginReadTransaction()
     {
-        return ( entryCache != null ) ? entryCache.getIfPresent( id ) : null;
+        return new PartitionReadTxn();
     }
 
 
     @Override
-    public void addToCache( String id, Entry entry )
+    public PartitionWriteTxn beginWriteTransaction()
     {
-        if ( entryCache == null )
-        {
-            return;
-        }
+        JdbmPartitionWriteTxn writeTxn = new JdbmPartitionWriteTxn( groupCommit );
 
-        Entry addedEntry = entry;
-        
-        if ( entry instanceof ClonedServerEntry )
+        // The ids added to the dictionary in this transaction are lost if it's rolled back
+        if ( dictionary != null )
         {
-            addedEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+            dictionary.rollbackOnAbort( writeTxn );
         }
 
-        entryCache.put( id, addedEntry );
-    }
-
-
-    @Override
-    public PartitionReadTxn beginReadTransaction()
-    {
-        return new PartitionReadTxn();
-    }
-
-
-    @Override
-    public PartitionWriteTxn beginWriteTransaction()
-    {
-        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite() );
+        return writeTxn;
     }
 }
@@ -23,33 +23,35 @@ import java.io.IOException;
 
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 
-import jdbm.RecordManager;
-import jdbm.recman.BaseRecordManager;
-import jdbm.recman.CacheRecordManager;
-
 /**
- * The JDBM partition write transaction
+ * The JDBM partition write transaction. The commits are done by the partition
+ * {@link JdbmGroupCommit}, which may commit several transactions at once.
  *  
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class JdbmPartitionWriteTxn extends PartitionWriteTxn
 {
-    /** The associated record manager */
-    private RecordManager recordManager;
+    /** The partition group commit */
+    private final JdbmGroupCommit groupCommit;
+    
+    /** The number of modifications of the record manager when the transaction started */
+    private final long startModifications;
     
-    /** A flag used to flush data immediately or not */
-    private boolean syncOnWrite = false;
+    /** Tells if the transaction is waiting to be committed. Protected by the group commit lock */
+    private boolean pending;
+    
+    /** The reason why the transaction could not be committed. Protected by the group commit lock */
+    private IOException failure;
     
     /**
      * Create an instance of JdbmPartitionWriteTxn
      * 
-     * @param recordManager The RecordManager instance
-     * @param syncOnWrite If we want to data to be flushed on each write
+     * @param groupCommit The partition group commit
      */
-    public JdbmPartitionWriteTxn( RecordManager recordManager, boolean syncOnWrite )
+    public JdbmPartitionWriteTxn( JdbmGroupCommit groupCommit )
     {
-        this.recordManager = recordManager;
-        this.syncOnWrite = syncOnWrite;
+        this.groupCommit = groupCommit;
+        startModifications = groupCommit.getRecordManager().getModificationCount();
     }
     
     
@@ -59,25 +61,27 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     @Override
     public void commit() throws IOException
     {
-        recordManager.commit();
-        
-        // And flush the journal
-        BaseRecordManager baseRecordManager = null;
+        groupCommit.commit( this );
+    }
 
-        if ( recordManager instanceof CacheRecordManager )
-        {
-            baseRecordManager = ( ( BaseRecordManager ) ( ( CacheRecordManager ) recordManager ).getRecordManager() );
-        }
-        else
-        {
-            baseRecordManager = ( ( BaseRecordManager ) recordManager );
-        }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitDeferred() throws IOException
+    {
+        groupCommit.commitDeferred( this );
+    }
 
-        if ( syncOnWrite )
-        {
-            baseRecordManager.getTransactionManager().synchronizeLog();
-        }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void awaitDurability() throws IOException
+    {
+        groupCommit.awaitDurability( this );
     }
 
 
@@ -87,7 +91,64 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     @Override
     public void abort() throws IOException
     {
-        recordManager.rollback();
+        groupCommit.abort( this );
+    }
+
+
+    /**
+     * @return <code>true</code> if the record manager has been modified since the transaction started
+     */
+    /* No qualifier */boolean hasModifications()
+    {
+        return groupCommit.getRecordManager().getModificationCount() != startModifications;
+    }
+
+
+    /* No qualifier */boolean isPending()
+    {
+        return pending;
+    }
+
+
+    /* No qualifier */void setPending( boolean pending )
+    {
+        this.pending = pending;
+    }
+
+
+    /* No qualifier */void setFailure( IOException failure )
+    {
+        this.failure = failure;
+    }
+
+
+    /**
+     * Throws the error which prevented the transaction to be committed, if any
+     */
+    /* No qualifier */void checkFailure() throws IOException
+    {
+        if ( failure != null )
+        {
+            throw new IOException( failure.getMessage(), failure );
+        }
+    }
+
+
+    /**
+     * Runs the commit actions, once the transaction is durable
+     */
+    /* No qualifier */void acknowledge()
+    {
+        committed();
+    }
+
+
+    /**
+     * Runs the end actions, once the transaction has been rolled back
+     */
+    /* No qualifier */void aborted()
+    {
+        ended();
     }
 
 
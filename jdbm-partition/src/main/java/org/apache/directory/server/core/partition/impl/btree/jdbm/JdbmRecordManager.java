@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdbm.helper.MRU;
+import jdbm.helper.Serializer;
+import jdbm.recman.BaseRecordManager;
+import jdbm.recman.CacheRecordManager;
+
+
+/**
+ * The record manager of a JDBM partition : a {@link CacheRecordManager} counting the
+ * modifications, so that a write transaction can tell if it has modified something since it
+ * has started. The modifications of all the transactions waiting for the same group commit
+ * are in the same JDBM transaction, and a rollback would drop them all.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmRecordManager extends CacheRecordManager
+{
+    /** The number of modifications done since the record manager has been opened */
+    private final AtomicLong modifications = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of JdbmRecordManager
+     *
+     * @param recordManager The underlying record manager
+     * @param cacheSize The number of records kept in the cache
+     */
+    public JdbmRecordManager( BaseRecordManager recordManager, int cacheSize )
+    {
+        super( recordManager, new MRU( cacheSize ) );
+    }
+
+
+    /**
+     * @return The number of modifications done since the record manager has been opened
+     */
+    public long getModificationCount()
+    {
+        return modifications.get();
+    }
+
+
+    /**
+     * @return The underlying record manager, which log is synchronized on checkpoints
+     */
+    public BaseRecordManager getBaseRecordManager()
+    {
+        return ( BaseRecordManager ) getRecordManager();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long insert( Object obj ) throws IOException
+    {
+        modifications.incrementAndGet();
+
+        return super.insert( obj );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long insert( Object obj, Serializer serializer ) throws IOException
+    {
+        modifications.incrementAndGet();
+
+        return super.insert( obj, serializer );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( long recid ) throws IOException
+    {
+        modifications.incrementAndGet();
+        super.delete( recid );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update( long recid, Object obj ) throws IOException
+    {
+        modifications.incrementAndGet();
+        super.update( recid, obj );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update( long recid, Object obj, Serializer serializer ) throws IOException
+    {
+        modifications.incrementAndGet();
+        super.update( recid, obj, serializer );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRoot( int id, long rowid ) throws IOException
+    {
+        modifications.incrementAndGet();
+        super.setRoot( id, rowid );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNamedObject( String name, long recid ) throws IOException
+    {
+        modifications.incrementAndGet();
+        super.setNamedObject( name, recid );
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdbm.recman.BaseRecordManager;
+
+
+/**
+ * Tests the JdbmGroupCommit. The writers hold the partition write lock while they write
+ * and commit, as the operation manager does, and wait for the durability once they have
+ * released it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmGroupCommitTest
+{
+    /** The partition write lock */
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock( true );
+
+    private File dbDir;
+    private String dbPath;
+    private JdbmRecordManager recMan;
+    private JdbmGroupCommit groupCommit;
+
+
+    @Before
+    public void createRecordManager() throws Exception
+    {
+        DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+
+        JdbmPartition partition = new JdbmPartition( schemaManager, new DefaultDnFactory( schemaManager, 100 ) )
+        {
+            @Override
+            public ReadWriteLock getReadWriteLock()
+            {
+                return rwLock;
+            }
+        };
+
+        partition.setId( "groupCommit" );
+
+        dbDir = Files.createTempDirectory( getClass().getSimpleName() ).toFile();
+        dbPath = new File( dbDir, "groupCommit" ).getPath();
+        recMan = new JdbmRecordManager( new BaseRecordManager( dbPath ), 100 );
+        groupCommit = new JdbmGroupCommit( recMan, partition );
+    }
+
+
+    @After
+    public void closeRecordManager() throws Exception
+    {
+        if ( recMan != null )
+        {
+            recMan.close();
+        }
+
+        FileUtils.deleteDirectory( dbDir );
+    }
+
+
+    /**
+     * Inserts a record in a transaction, and commits it without waiting for the durability
+     */
+    private JdbmPartitionWriteTxn insert( String value, List<Long> recids ) throws Exception
+    {
+        rwLock.writeLock().lock();
+
+        try
+        {
+            JdbmPartitionWriteTxn writeTxn = new JdbmPartitionWriteTxn( groupCommit );
+            recids.add( recMan.insert( value ) );
+            writeTxn.commitDeferred();
+
+            return writeTxn;
+        }
+        finally
+        {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Reopens the record manager, to read what has been committed
+     */
+    private void reopen() throws Exception
+    {
+        recMan.close();
+        recMan = null;
+        recMan = new JdbmRecordManager( new BaseRecordManager( dbPath ), 100 );
+    }
+
+
+    @Test
+    public void testOneCommitForTheGroup() throws Exception
+    {
+        List<Long> recids = new ArrayList<>();
+        JdbmPartitionWriteTxn first = insert( "first", recids );
+        JdbmPartitionWriteTxn second = insert( "second", recids );
+
+        assertEquals( 0L, groupCommit.getCommitCount() );
+
+        // The first writer commits both transactions
+        first.awaitDurability();
+        assertEquals( 1L, groupCommit.getCommitCount() );
+
+        second.awaitDurability();
+        assertEquals( 1L, groupCommit.getCommitCount() );
+        assertEquals( 2d, groupCommit.getAverageGroupSize(), 0d );
+
+        reopen();
+
+        assertEquals( "first", recMan.fetch( recids.get( 0 ) ) );
+        assertEquals( "second", recMan.fetch( recids.get( 1 ) ) );
+    }
+
+
+    @Test
+    public void testCommitActionsOnceDurable() throws Exception
+    {
+        AtomicBoolean committed = new AtomicBoolean();
+        JdbmPartitionWriteTxn writeTxn;
+
+        rwLock.writeLock().lock();
+
+        try
+        {
+            writeTxn = new JdbmPartitionWriteTxn( groupCommit );
+            writeTxn.onCommit( () -> committed.set( true ) );
+            recMan.insert( "value" );
+            writeTxn.commitDeferred();
+        }
+        finally
+        {
+            rwLock.writeLock().unlock();
+        }
+
+        assertFalse( committed.get() );
+
+        writeTxn.awaitDurability();
+        assertTrue( committed.get() );
+    }
+
+
+    @Test
+    public void testCommitIncludesPendingTransactions() throws Exception
+    {
+        List<Long> recids = new ArrayList<>();
+        JdbmPartitionWriteTxn pending = insert( "pending", recids );
+
+        // A transaction committed right away, like a session transaction
+        rwLock.writeLock().lock();
+
+        try
+        {
+            JdbmPartitionWriteTxn writeTxn = new JdbmPartitionWriteTxn( groupCommit );
+            recids.add( recMan.insert( "committed" ) );
+            writeTxn.commit();
+        }
+        finally
+        {
+            rwLock.writeLock().unlock();
+        }
+
+        assertEquals( 1L, groupCommit.getCommitCount() );
+
+        pending.awaitDurability();
+        assertEquals( 1L, groupCommit.getCommitCount() );
+    }
+
+
+    @Test
+    public void testCleanAbortKeepsPendingTransactions() throws Exception
+    {
+        List<Long> recids = new ArrayList<>();
+        JdbmPartitionWriteTxn pending = insert( "pending", recids );
+        AtomicBoolean ended = new AtomicBoolean();
+
+        // Rejected before having written anything, like by an interceptor
+        rwLock.writeLock().lock();
+
+        try
+        {
+            JdbmPartitionWriteTxn writeTxn = new JdbmPartitionWriteTxn( groupCommit );
+            writeTxn.onEnd( () -> ended.set( true ) );
+            writeTxn.abort();
+        }
+        finally
+        {
+            rwLock.writeLock().unlock();
+        }
+
+        assertTrue( ended.get() );
+
+        pending.awaitDurability();
+        reopen();
+
+        assertEquals( "pending", recMan.fetch( recids.get( 0 ) ) );
+    }
+
+
+    @Test
+    public void testAbortFailsTheGroup() throws Exception
+    {
+        List<Long> recids = new ArrayList<>();
+        AtomicBoolean committed = new AtomicBoolean();
+        AtomicBoolean ended = new AtomicBoolean();
+        JdbmPartitionWriteTxn pending;
+
+        rwLock.writeLock().lock();
+
+        try
+        {
+            pending = new JdbmPartitionWriteTxn( groupCommit );
+            pending.onCommit( () -> committed.set( true ) );
+            pending.onEnd( () -> ended.set( true ) );
+            recids.add( recMan.insert( "pending" ) );
+            pending.commitDeferred();
+        }
+        finally
+        {
+            rwLock.writeLock().unlock();
+        }
+
+        // Fails after having written something : the JDBM transaction is rolled back
+        rwLock.writeLock().lock();
+
+        try
+        {
+            JdbmPartitionWriteTxn writeTxn = new JdbmPartitionWriteTxn( groupCommit );
+            recMan.insert( "failed" );
+            writeTxn.abort();
+        }
+        finally
+        {
+            rwLock.writeLock().unlock();
+        }
+
+        try
+        {
+            pending.awaitDurability();
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        assertFalse( committed.get() );
+        assertTrue( ended.get() );
+        assertEquals( 0L, groupCommit.getCommitCount() );
+    }
+
+
+    @Test
+    public void testConcurrentWriters() throws Exception
+    {
+        int nbWriters = 8;
+        int nbValues = 200;
+        ExecutorService executor = Executors.newFixedThreadPool( nbWriters );
+        List<Future<Long>> futures = new ArrayList<>();
+
+        try
+        {
+            for ( int i = 0; i < nbValues; i++ )
+            {
+                String value = "value" + i;
+
+                futures.add( executor.submit( ( Callable<Long> ) () ->
+                {
+                    List<Long> recids = new ArrayList<>();
+                    insert( value, recids ).awaitDurability();
+
+                    return recids.get( 0 );
+                } ) );
+            }
+
+            List<Long> recids = new ArrayList<>();
+
+            for ( Future<Long> future : futures )
+            {
+                recids.add( future.get() );
+            }
+
+            assertTrue( groupCommit.getCommitCount() <= nbValues );
+
+            reopen();
+
+            for ( int i = 0; i < nbValues; i++ )
+            {
+                assertEquals( "value" + i, recMan.fetch( recids.get( i ) ) );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
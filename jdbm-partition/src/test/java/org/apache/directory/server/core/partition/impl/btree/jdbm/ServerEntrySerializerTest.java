@@ -21,6 +21,7 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -42,6 +43,8 @@ import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+import org.apache.directory.server.xdbm.EntryCodec;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -287,4 +290,28 @@ public class ServerEntrySerializerTest
 
         assertEquals( entry, result );
     }
+
+
+    @Test
+    public void testSerializeServerEntryWithDictionary() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager,
+            "",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "SN: Test",
+            "userPassword", Strings.getBytesUtf8( "password" ) );
+
+        EntrySerializer legacy = new EntrySerializer( schemaManager );
+        EntrySerializer ses = new EntrySerializer( schemaManager, new AttributeDictionary( schemaManager ) );
+
+        byte[] data = ses.serialize( entry );
+
+        assertTrue( EntryCodec.isEncoded( data ) );
+        assertEquals( entry, ses.deserialize( data ) );
+
+        // The entries serialized by the former versions are still read
+        assertEquals( entry, ses.deserialize( legacy.serialize( entry ) ) );
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Serializes a Dn as its normalized name, in UTF-8, so that two equal Dns have the same bytes.
+ * <br><br>
+ * <b>This class must *not* be used outside of the server.</b>
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DnSerializer implements LmdbSerializer<Dn>
+{
+    /** The schemaManager reference */
+    private final SchemaManager schemaManager;
+
+
+    /**
+     * Creates a new instance of DnSerializer.
+     * 
+     * @param schemaManager The reference to the global schemaManager
+     */
+    public DnSerializer( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( Dn dn )
+    {
+        return StringSerializer.INSTANCE.serialize( dn.getNormName() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Dn deserialize( ByteBuffer buffer ) throws IOException
+    {
+        String normName = StringSerializer.INSTANCE.deserialize( buffer );
+
+        if ( Strings.isEmpty( normName ) )
+        {
+            return Dn.EMPTY_DN;
+        }
+
+        try
+        {
+            return new Dn( schemaManager, normName );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            throw new IOException( lide.getMessage(), lide );
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+import org.apache.directory.server.xdbm.EntryCodec;
+
+
+/**
+ * Serialize and deserialize the entries of the master table, using the {@link EntryCodec}
+ * format. The entries are decoded directly from the LMDB memory map, without copying their
+ * bytes first.
+ * <br><br>
+ * <b>This class must *not* be used outside of the server.</b>
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntrySerializer implements LmdbSerializer<Entry>
+{
+    /** The codec used to encode and decode the entries */
+    private final EntryCodec codec;
+
+
+    /**
+     * Creates a new instance of EntrySerializer.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     * @param dictionary The partition attribute dictionary
+     */
+    public EntrySerializer( SchemaManager schemaManager, AttributeDictionary dictionary )
+    {
+        codec = new EntryCodec( schemaManager, dictionary );
+    }
+
+
+    /**
+     * @return The codec used to encode and decode the entries
+     */
+    public EntryCodec getCodec()
+    {
+        return codec;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( Entry entry ) throws IOException
+    {
+        return codec.encode( entry );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry deserialize( ByteBuffer buffer ) throws IOException
+    {
+        return codec.decode( buffer );
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Serializes the normalized values of the INTEGER attributes so that their bytes are
+ * ordered like the numbers, and not like the Strings ("9" &lt; "10"). The layout is :
+ * <ul>
+ *   <li>the positive numbers and zero : 0x01, the number of digits on 2 bytes, the digits</li>
+ *   <li>the negative numbers : 0x00, then the same fields, all the bits inverted, so that
+ *   the longest numbers come first</li>
+ *   <li>anything else (the value is not a number) : 0x02, the UTF-8 bytes of the value</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class IntegerKeySerializer implements LmdbSerializer<String>
+{
+    /** The shared instance */
+    public static final IntegerKeySerializer INSTANCE = new IntegerKeySerializer();
+
+    /** The prefix of the negative numbers */
+    private static final byte NEGATIVE = 0x00;
+
+    /** The prefix of the positive numbers */
+    private static final byte POSITIVE = 0x01;
+
+    /** The prefix of the values which are not numbers */
+    private static final byte OTHER = 0x02;
+
+
+    private IntegerKeySerializer()
+    {
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( String element )
+    {
+        if ( !isNumber( element ) )
+        {
+            byte[] bytes = Strings.getBytesUtf8( element );
+            byte[] result = new byte[bytes.length + 1];
+            result[0] = OTHER;
+            System.arraycopy( bytes, 0, result, 1, bytes.length );
+
+            return result;
+        }
+
+        boolean negative = element.charAt( 0 ) == '-';
+        int start = negative ? 1 : 0;
+        int nbDigits = element.length() - start;
+        byte[] result = new byte[nbDigits + 3];
+        int mask = negative ? 0xFF : 0x00;
+
+        result[0] = negative ? NEGATIVE : POSITIVE;
+        result[1] = ( byte ) ( ( nbDigits >> 8 ) ^ mask );
+        result[2] = ( byte ) ( ( nbDigits & 0xFF ) ^ mask );
+
+        for ( int i = 0; i < nbDigits; i++ )
+        {
+            result[i + 3] = ( byte ) ( element.charAt( start + i ) ^ mask );
+        }
+
+        return result;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String deserialize( ByteBuffer buffer )
+    {
+        byte prefix = buffer.get();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get( bytes );
+
+        if ( prefix == OTHER )
+        {
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+
+        boolean negative = prefix == NEGATIVE;
+        int mask = negative ? 0xFF : 0x00;
+        StringBuilder sb = new StringBuilder( bytes.length );
+
+        if ( negative )
+        {
+            sb.append( '-' );
+        }
+
+        // Skip the number of digits
+        for ( int i = 2; i < bytes.length; i++ )
+        {
+            sb.append( ( char ) ( ( bytes[i] ^ mask ) & 0xFF ) );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Tells if a normalized value is an integer without leading zero, as produced by the
+     * INTEGER normalizer
+     */
+    private static boolean isNumber( String value )
+    {
+        if ( Strings.isEmpty( value ) )
+        {
+            return false;
+        }
+
+        int start = ( value.charAt( 0 ) == '-' ) ? 1 : 0;
+        int length = value.length();
+
+        if ( ( start == length ) || ( length - start > 0xFFFF ) )
+        {
+            return false;
+        }
+
+        // The leading zeros would break the ordering
+        if ( ( value.charAt( start ) == '0' ) && ( length - start > 1 ) )
+        {
+            return false;
+        }
+
+        for ( int i = start; i < length; i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( ( c < '0' ) || ( c > '9' ) )
+            {
+                return false;
+            }
+        }
+
+        // "-0" is not a normalized value
+        return !( ( start == 1 ) && ( value.charAt( 1 ) == '0' ) );
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+import org.lmdbjava.Cursor;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.Txn;
+
+
+/**
+ * The attribute dictionary of a LMDB partition, stored in a database of its environment.
+ * The key is the id, as a 4 bytes big endian integer, and the value is the OID.
+ * <br>
+ * A new id is written in the write transaction of the current thread, the one writing the
+ * entry using it, and is removed from the dictionary if this transaction is aborted.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbAttributeDictionary extends AttributeDictionary
+{
+    /** The name of the database storing the dictionary */
+    static final String DICTIONARY_DB = "_dictionary";
+
+    /** The LMDB environment */
+    private final LmdbEnvironment environment;
+
+    /** The database storing the dictionary */
+    private final Dbi<ByteBuffer> dbi;
+
+
+    /**
+     * Creates the dictionary, and reads the ids it already contains.
+     *
+     * @param schemaManager The schema manager
+     * @param environment The LMDB environment of the partition
+     */
+    public LmdbAttributeDictionary( SchemaManager schemaManager, LmdbEnvironment environment )
+    {
+        super( schemaManager );
+        this.environment = environment;
+
+        dbi = environment.openDbi( DICTIONARY_DB, false );
+
+        List<String> oids = new ArrayList<>();
+
+        try ( Txn<ByteBuffer> txn = environment.getEnv().txnRead();
+            Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+        {
+            for ( boolean found = cursor.first(); found; found = cursor.next() )
+            {
+                int id = cursor.key().getInt();
+
+                while ( oids.size() <= id )
+                {
+                    oids.add( null );
+                }
+
+                oids.set( id, StandardCharsets.UTF_8.decode( cursor.val() ).toString() );
+            }
+        }
+
+        load( oids );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void store( int id, String oid ) throws IOException
+    {
+        LmdbPartitionWriteTxn writeTxn = environment.getCurrentWriteTxn();
+
+        if ( writeTxn == null )
+        {
+            throw new IOException( "The attribute type " + oid
+                + " can only be added to the dictionary in a write transaction" );
+        }
+
+        rollbackOnAbort( writeTxn );
+
+        ByteBuffer key = ByteBuffer.allocateDirect( 4 );
+        key.putInt( id ).flip();
+
+        try
+        {
+            dbi.put( writeTxn.getTxn(), key, environment.toBuffer( 1, oid.getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+        catch ( LmdbException le )
+        {
+            throw new IOException( le.getMessage(), le );
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return DICTIONARY_DB;
+    }
+}
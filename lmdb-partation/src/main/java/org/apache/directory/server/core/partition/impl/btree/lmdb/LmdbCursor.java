@@ -0,0 +1,588 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.SeekOp;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Cursor over the Tuples of a LMDB table, or over the Tuples of one key of a table allowing
+ * duplicate values. A Tuple is returned for each value.
+ * <br>
+ * When it's created in a write transaction, the cursor reads the pending changes, and is
+ * closed when the transaction ends. When it's created in a read transaction, the cursor
+ * reads the snapshot of this transaction, like all the other cursors of the operation, and
+ * keeps it open until the cursor is closed. Otherwise, the cursor owns a read transaction.
+ * The cursor must be closed, a read transaction prevents LMDB from reusing the pages freed
+ * after its snapshot.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class LmdbCursor<K, V> extends AbstractCursor<Tuple<K, V>>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( "CURSOR" );
+
+    /** The cursor is before the first Tuple */
+    private static final int BEFORE_FIRST = 0;
+
+    /** The cursor is after the last Tuple */
+    private static final int AFTER_LAST = 1;
+
+    /** The LMDB cursor is on the Tuple returned by the next call to next() */
+    private static final int BEFORE = 2;
+
+    /** The LMDB cursor is on the current Tuple */
+    private static final int ON = 3;
+
+    /** The LMDB cursor is on the Tuple returned by the next call to previous() */
+    private static final int AFTER = 4;
+
+    /** The table we are building a cursor over */
+    private final LmdbTable<K, V> table;
+
+    /** The transaction the cursor reads from */
+    private Txn<ByteBuffer> txn;
+
+    /** The write transaction the cursor has been created in, if any */
+    private final LmdbPartitionWriteTxn writeTxn;
+
+    /** The read transaction the cursor shares the snapshot of, if any */
+    private LmdbPartitionReadTxn readTxn;
+
+    /** The LMDB cursor */
+    private org.lmdbjava.Cursor<ByteBuffer> cursor;
+
+    /** The only key this cursor browses, if any */
+    private final K onlyKey;
+
+    /** The serialized only key */
+    private final byte[] onlyKeyBytes;
+
+    /** The cursor position */
+    private int state = BEFORE_FIRST;
+
+    /** The tuple which will be returned */
+    private Tuple<K, V> returnedTuple;
+
+
+    /**
+     * Creates a Cursor over the tuples of a LMDB table.
+     *
+     * @param table The table to build a Cursor over
+     * @param partitionTxn The transaction the cursor is created in, may be null
+     * @param onlyKey The only key to browse, or null to browse the whole table
+     * @param onlyKeyBytes The serialized only key
+     */
+    LmdbCursor( LmdbTable<K, V> table, PartitionTxn partitionTxn, K onlyKey, byte[] onlyKeyBytes )
+    {
+        LOG_CURSOR.debug( "Creating LmdbCursor {}", this );
+        this.table = table;
+        this.onlyKey = onlyKey;
+        this.onlyKeyBytes = onlyKeyBytes;
+
+        LmdbEnvironment environment = table.getEnvironment();
+        writeTxn = environment.getWriteTxn( partitionTxn );
+
+        if ( writeTxn != null )
+        {
+            txn = writeTxn.getTxn();
+            writeTxn.addCursor( this );
+        }
+        else
+        {
+            if ( partitionTxn instanceof LmdbPartitionReadTxn )
+            {
+                readTxn = ( LmdbPartitionReadTxn ) partitionTxn;
+                txn = readTxn.acquire();
+            }
+
+            if ( txn == null )
+            {
+                // There is no snapshot to share
+                readTxn = null;
+                txn = environment.getEnv().txnRead();
+            }
+        }
+
+        cursor = table.getDbi().openCursor( txn );
+    }
+
+
+    /**
+     * Cleanup the returned tuple, and set the new position.
+     */
+    private void setState( int state )
+    {
+        this.state = state;
+        returnedTuple = null;
+    }
+
+
+    /**
+     * Reads the Tuple the LMDB cursor is on, which becomes the current Tuple
+     */
+    private void setCurrent() throws CursorException
+    {
+        try
+        {
+            K key = ( onlyKey != null ) ? onlyKey : table.decodeKey( txn, cursor.key() );
+            V value = table.decodeValue( txn, cursor.val() );
+
+            state = ON;
+            returnedTuple = new Tuple<>( key, value );
+        }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( ioe );
+        }
+    }
+
+
+    /**
+     * Compares a serialized key with the only key, and positions the cursor before or after
+     * all the Tuples if they are different.
+     *
+     * @return <code>true</code> if the keys are equal
+     */
+    private boolean checkOnlyKey( byte[] keyBytes )
+    {
+        int comparison = LmdbTable.compare( ByteBuffer.wrap( onlyKeyBytes ), keyBytes );
+
+        if ( comparison > 0 )
+        {
+            setState( BEFORE_FIRST );
+        }
+        else if ( comparison < 0 )
+        {
+            setState( AFTER_LAST );
+        }
+
+        return comparison == 0;
+    }
+
+
+    /**
+     * Moves the LMDB cursor on the first record with a key greater than a given key
+     */
+    private void positionAfterKey( byte[] keyBytes )
+    {
+        boolean found = cursor.get( table.getEnvironment().toBuffer( 0, keyBytes ), GetOp.MDB_SET_RANGE );
+
+        if ( found && ( LmdbTable.compare( cursor.key(), keyBytes ) == 0 ) )
+        {
+            found = table.isDupsEnabled() ? cursor.seek( SeekOp.MDB_NEXT_NODUP ) : cursor.next();
+        }
+
+        setState( found ? BEFORE : AFTER_LAST );
+    }
+
+
+    private boolean moveFirst()
+    {
+        if ( onlyKey == null )
+        {
+            return cursor.first();
+        }
+
+        return cursor.get( table.getEnvironment().toBuffer( 0, onlyKeyBytes ), GetOp.MDB_SET_KEY );
+    }
+
+
+    private boolean moveLast()
+    {
+        if ( onlyKey == null )
+        {
+            return cursor.last();
+        }
+
+        return cursor.get( table.getEnvironment().toBuffer( 0, onlyKeyBytes ), GetOp.MDB_SET_KEY )
+            && cursor.seek( SeekOp.MDB_LAST_DUP );
+    }
+
+
+    private boolean moveNext()
+    {
+        return ( onlyKey == null ) ? cursor.next() : cursor.seek( SeekOp.MDB_NEXT_DUP );
+    }
+
+
+    private boolean movePrevious()
+    {
+        return ( onlyKey == null ) ? cursor.prev() : cursor.seek( SeekOp.MDB_PREV_DUP );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return returnedTuple != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        try
+        {
+            byte[] keyBytes = table.encodeKey( element.getKey() );
+
+            if ( ( onlyKey != null ) && !checkOnlyKey( keyBytes ) )
+            {
+                return;
+            }
+
+            if ( table.isDupsEnabled() && ( element.getValue() != null ) )
+            {
+                LmdbEnvironment environment = table.getEnvironment();
+
+                if ( cursor.get( environment.toBuffer( 0, keyBytes ),
+                    environment.toBuffer( 1, table.encodeValue( element.getValue() ) ), SeekOp.MDB_GET_BOTH_RANGE ) )
+                {
+                    setState( BEFORE );
+                }
+                else if ( onlyKey != null )
+                {
+                    setState( AFTER_LAST );
+                }
+                else
+                {
+                    positionAfterKey( keyBytes );
+                }
+            }
+            else if ( onlyKey != null )
+            {
+                setState( BEFORE_FIRST );
+            }
+            else
+            {
+                boolean found = cursor.get( table.getEnvironment().toBuffer( 0, keyBytes ), GetOp.MDB_SET_RANGE );
+                setState( found ? BEFORE : AFTER_LAST );
+            }
+        }
+        catch ( IOException | LmdbException e )
+        {
+            throw new CursorException( e );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        try
+        {
+            byte[] keyBytes = table.encodeKey( element.getKey() );
+
+            if ( ( onlyKey != null ) && !checkOnlyKey( keyBytes ) )
+            {
+                return;
+            }
+
+            if ( table.isDupsEnabled() && ( element.getValue() != null ) )
+            {
+                LmdbEnvironment environment = table.getEnvironment();
+                byte[] valueBytes = table.encodeValue( element.getValue() );
+
+                if ( cursor.get( environment.toBuffer( 0, keyBytes ), environment.toBuffer( 1, valueBytes ),
+                    SeekOp.MDB_GET_BOTH_RANGE ) )
+                {
+                    setState( ( LmdbTable.compare( cursor.val(), valueBytes ) == 0 ) ? AFTER : BEFORE );
+                }
+                else if ( onlyKey != null )
+                {
+                    setState( AFTER_LAST );
+                }
+                else
+                {
+                    positionAfterKey( keyBytes );
+                }
+            }
+            else if ( onlyKey != null )
+            {
+                setState( AFTER_LAST );
+            }
+            else if ( !cursor.get( table.getEnvironment().toBuffer( 0, keyBytes ), GetOp.MDB_SET_RANGE ) )
+            {
+                setState( AFTER_LAST );
+            }
+            else if ( LmdbTable.compare( cursor.key(), keyBytes ) == 0 )
+            {
+                // Skip all the values of the key
+                if ( table.isDupsEnabled() )
+                {
+                    cursor.seek( SeekOp.MDB_LAST_DUP );
+                }
+
+                setState( AFTER );
+            }
+            else
+            {
+                setState( BEFORE );
+            }
+        }
+        catch ( IOException | LmdbException e )
+        {
+            throw new CursorException( e );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        setState( BEFORE_FIRST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        setState( AFTER_LAST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        try
+        {
+            boolean found;
+
+            switch ( state )
+            {
+                case BEFORE_FIRST:
+                    return false;
+
+                case AFTER_LAST:
+                    found = moveLast();
+                    break;
+
+                case AFTER:
+                    found = true;
+                    break;
+
+                default:
+                    found = movePrevious();
+                    break;
+            }
+
+            if ( found )
+            {
+                setCurrent();
+            }
+            else
+            {
+                setState( BEFORE_FIRST );
+            }
+
+            return found;
+        }
+        catch ( LmdbException le )
+        {
+            throw new CursorException( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        try
+        {
+            boolean found;
+
+            switch ( state )
+            {
+                case AFTER_LAST:
+                    return false;
+
+                case BEFORE_FIRST:
+                    found = moveFirst();
+                    break;
+
+                case BEFORE:
+                    found = true;
+                    break;
+
+                default:
+                    found = moveNext();
+                    break;
+            }
+
+            if ( found )
+            {
+                setCurrent();
+            }
+            else
+            {
+                setState( AFTER_LAST );
+            }
+
+            return found;
+        }
+        catch ( LmdbException le )
+        {
+            throw new CursorException( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tuple<K, V> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( returnedTuple != null )
+        {
+            return returnedTuple;
+        }
+
+        throw new InvalidCursorPositionException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        LOG_CURSOR.debug( "Closing LmdbCursor {}", this );
+        super.close();
+        release();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        LOG_CURSOR.debug( "Closing LmdbCursor {}", this );
+        super.close( cause );
+        release();
+    }
+
+
+    /**
+     * Closes the LMDB cursor, and the read transaction it owns or shares, if any
+     */
+    private void release()
+    {
+        if ( cursor == null )
+        {
+            return;
+        }
+
+        cursor.close();
+        cursor = null;
+        returnedTuple = null;
+
+        if ( writeTxn != null )
+        {
+            writeTxn.removeCursor( this );
+        }
+        else if ( readTxn != null )
+        {
+            readTxn.release();
+        }
+        else
+        {
+            txn.close();
+        }
+
+        txn = null;
+    }
+}
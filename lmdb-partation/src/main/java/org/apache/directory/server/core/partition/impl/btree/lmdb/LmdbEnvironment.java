@@ -0,0 +1,352 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.Env;
+import org.lmdbjava.EnvFlags;
+import org.lmdbjava.Txn;
+
+
+/**
+ * The LMDB environment of a partition : the memory map holding all its databases, and the
+ * transactions opened on it.
+ * <br>
+ * The keys, and the values of the databases accepting duplicate values, are limited to
+ * {@link #getMaxKeySize()} bytes. A longer key is stored as its first bytes followed by
+ * the MD5 digest of the whole key, and the whole key is kept in a shared overflow database.
+ * The overflow records are never removed : they are small, and shared by all the tables
+ * storing the same key.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbEnvironment
+{
+    /** The name of the database storing the long keys */
+    private static final String OVERFLOW_DB = "_overflow";
+
+    /** The size of a MD5 digest */
+    private static final int DIGEST_SIZE = 16;
+
+    /** The LMDB environment */
+    private final Env<ByteBuffer> env;
+
+    /** The size of the memory map */
+    private final long mapSize;
+
+    /** The maximum size of a key */
+    private final int maxKeySize;
+
+    /** The database storing the long keys */
+    private final Dbi<ByteBuffer> overflow;
+
+    /** The write transaction the current thread is running on this environment */
+    private final ThreadLocal<LmdbPartitionWriteTxn> currentWriteTxn = new ThreadLocal<>();
+
+    /** The buffers used to pass the keys and the values to LMDB, per thread */
+    private final ThreadLocal<ByteBuffer[]> buffers;
+
+
+    /**
+     * Opens a LMDB environment
+     *
+     * @param directory The directory containing the memory map
+     * @param mapSize The maximum size of the memory map, in bytes
+     * @param maxDbs The maximum number of databases
+     * @param maxReaders The maximum number of read transactions opened at the same time
+     * @param syncOnWrite If the memory map must be flushed on disk on each commit
+     */
+    public LmdbEnvironment( File directory, long mapSize, int maxDbs, int maxReaders, boolean syncOnWrite )
+    {
+        this.mapSize = mapSize;
+
+        Env.Builder<ByteBuffer> builder = Env.create()
+            .setMapSize( mapSize )
+            .setMaxDbs( maxDbs + 1 )
+            .setMaxReaders( maxReaders );
+
+        // The read transactions are shared by the cursors, which may be used by another thread
+        if ( syncOnWrite )
+        {
+            env = builder.open( directory, EnvFlags.MDB_NOTLS );
+        }
+        else
+        {
+            env = builder.open( directory, EnvFlags.MDB_NOTLS, EnvFlags.MDB_NOSYNC );
+        }
+
+        maxKeySize = env.getMaxKeySize();
+        overflow = env.openDbi( OVERFLOW_DB, DbiFlags.MDB_CREATE );
+
+        buffers = ThreadLocal.withInitial( () -> new ByteBuffer[]
+            { ByteBuffer.allocateDirect( maxKeySize ), ByteBuffer.allocateDirect( maxKeySize ) } );
+    }
+
+
+    /**
+     * @return The LMDB environment
+     */
+    public Env<ByteBuffer> getEnv()
+    {
+        return env;
+    }
+
+
+    /**
+     * @return The maximum size of the memory map, in bytes
+     */
+    public long getMapSize()
+    {
+        return mapSize;
+    }
+
+
+    /**
+     * @return The maximum size of a key, and of a duplicate value
+     */
+    public int getMaxKeySize()
+    {
+        return maxKeySize;
+    }
+
+
+    /**
+     * Opens a database in this environment, creating it if needed
+     *
+     * @param name The database name
+     * @param allowsDuplicates If the database accepts many values per key
+     * @return The database
+     */
+    Dbi<ByteBuffer> openDbi( String name, boolean allowsDuplicates )
+    {
+        if ( allowsDuplicates )
+        {
+            return env.openDbi( name, DbiFlags.MDB_CREATE, DbiFlags.MDB_DUPSORT );
+        }
+        else
+        {
+            return env.openDbi( name, DbiFlags.MDB_CREATE );
+        }
+    }
+
+
+    /**
+     * @return The write transaction the current thread is running on this environment, if any
+     */
+    LmdbPartitionWriteTxn getCurrentWriteTxn()
+    {
+        return currentWriteTxn.get();
+    }
+
+
+    /**
+     * Sets the write transaction the current thread is running on this environment
+     *
+     * @param writeTxn The write transaction, or null when the outermost transaction ends
+     */
+    void setCurrentWriteTxn( LmdbPartitionWriteTxn writeTxn )
+    {
+        if ( writeTxn == null )
+        {
+            currentWriteTxn.remove();
+        }
+        else
+        {
+            currentWriteTxn.set( writeTxn );
+        }
+    }
+
+
+    /**
+     * Gets the write transaction to use for an operation : the given transaction if it's
+     * a write transaction, otherwise the write transaction of the current thread.
+     *
+     * @param partitionTxn The transaction given to the operation
+     * @return The open write transaction, or null if there is none
+     */
+    LmdbPartitionWriteTxn getWriteTxn( PartitionTxn partitionTxn )
+    {
+        if ( ( partitionTxn instanceof LmdbPartitionWriteTxn ) && !partitionTxn.isClosed() )
+        {
+            return ( LmdbPartitionWriteTxn ) partitionTxn;
+        }
+
+        return currentWriteTxn.get();
+    }
+
+
+    /**
+     * Gets the LMDB transaction to read from : the write transaction in progress, so that
+     * the pending changes are visible, or the snapshot of the given read transaction. This
+     * snapshot is still used once the read transaction is closed, as long as one of its
+     * cursors is open : the entries are then read from the snapshot the cursors browse.
+     *
+     * @param partitionTxn The transaction given to the operation
+     * @return The LMDB transaction, or null if a temporary read transaction must be used
+     */
+    Txn<ByteBuffer> getReadTxn( PartitionTxn partitionTxn )
+    {
+        LmdbPartitionWriteTxn writeTxn = getWriteTxn( partitionTxn );
+
+        if ( writeTxn != null )
+        {
+            return writeTxn.getTxn();
+        }
+
+        if ( partitionTxn instanceof LmdbPartitionReadTxn )
+        {
+            return ( ( LmdbPartitionReadTxn ) partitionTxn ).getTxn();
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Copies some bytes in one of the buffers of the current thread. Two buffers are
+     * available, to pass a key and a value to the same LMDB call. They are only valid until
+     * the next call using the same buffer.
+     *
+     * @param index The buffer to use, 0 or 1
+     * @param bytes The bytes to copy
+     * @return The buffer
+     */
+    ByteBuffer toBuffer( int index, byte[] bytes )
+    {
+        ByteBuffer[] threadBuffers = buffers.get();
+        ByteBuffer buffer = threadBuffers[index];
+
+        if ( buffer.capacity() < bytes.length )
+        {
+            buffer = ByteBuffer.allocateDirect( Math.max( bytes.length, buffer.capacity() * 2 ) );
+            threadBuffers[index] = buffer;
+        }
+
+        buffer.clear();
+        buffer.put( bytes ).flip();
+
+        return buffer;
+    }
+
+
+    /**
+     * Tells if some serialized bytes are too long to be stored as a key
+     *
+     * @param bytes The serialized key
+     * @return <code>true</code> if the key will be shortened
+     */
+    boolean isLong( byte[] bytes )
+    {
+        return bytes.length >= maxKeySize;
+    }
+
+
+    /**
+     * Shortens a key which is too long : its first bytes are kept, followed by the digest
+     * of the whole key, for a total of {@link #getMaxKeySize()} bytes.
+     *
+     * @param bytes The serialized key
+     * @return The stored key
+     */
+    byte[] shorten( byte[] bytes )
+    {
+        if ( !isLong( bytes ) )
+        {
+            return bytes;
+        }
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "MD5" ).digest( bytes );
+            byte[] shortened = Arrays.copyOf( bytes, maxKeySize );
+            System.arraycopy( digest, 0, shortened, maxKeySize - DIGEST_SIZE, DIGEST_SIZE );
+
+            return shortened;
+        }
+        catch ( NoSuchAlgorithmException nsae )
+        {
+            // MD5 is always available
+            throw new IllegalStateException( nsae );
+        }
+    }
+
+
+    /**
+     * Stores a long key in the overflow database, so that it can be read back from its
+     * shortened form
+     *
+     * @param txn The write transaction
+     * @param shortened The shortened key
+     * @param bytes The whole key
+     */
+    void putOverflow( Txn<ByteBuffer> txn, byte[] shortened, byte[] bytes )
+    {
+        overflow.put( txn, toBuffer( 0, shortened ), toBuffer( 1, bytes ) );
+    }
+
+
+    /**
+     * Reads a stored key, or a stored duplicate value, restoring it if it has been shortened
+     *
+     * @param txn The transaction to read from
+     * @param stored The buffer read from LMDB
+     * @return A buffer containing the whole key
+     */
+    ByteBuffer expand( Txn<ByteBuffer> txn, ByteBuffer stored )
+    {
+        if ( stored.remaining() < maxKeySize )
+        {
+            return stored;
+        }
+
+        byte[] shortened = new byte[stored.remaining()];
+        stored.duplicate().get( shortened );
+        ByteBuffer whole = overflow.get( txn, toBuffer( 0, shortened ) );
+
+        return ( whole == null ) ? stored : whole;
+    }
+
+
+    /**
+     * Flushes the memory map on disk
+     */
+    public void sync()
+    {
+        env.sync( true );
+    }
+
+
+    /**
+     * Closes the environment. All the transactions must have been closed.
+     */
+    public void close()
+    {
+        env.close();
+    }
+}
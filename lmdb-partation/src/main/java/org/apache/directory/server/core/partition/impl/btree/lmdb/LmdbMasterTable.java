@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+import org.apache.directory.server.xdbm.EntryCodec;
+import org.apache.directory.server.xdbm.MasterTable;
+
+
+/**
+ * The master table used to store the entries, by ID.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbMasterTable extends LmdbTable<String, Entry> implements MasterTable
+{
+    /** The codec used to decode the projected entries */
+    private final EntryCodec codec;
+
+
+    /**
+     * Creates the master table, in a LMDB database.
+     *
+     * @param environment The LMDB environment
+     * @param schemaManager the schema manager
+     * @param dictionary the partition attribute dictionary
+     */
+    public LmdbMasterTable( LmdbEnvironment environment, SchemaManager schemaManager, AttributeDictionary dictionary )
+    {
+        super( schemaManager, DBF, environment, false, UuidComparator.INSTANCE, null, StringSerializer.INSTANCE,
+            new EntrySerializer( schemaManager, dictionary ) );
+
+        codec = new EntryCodec( schemaManager, dictionary );
+        UuidComparator.INSTANCE.setSchemaManager( schemaManager );
+    }
+
+
+    /**
+     * Gets a new entry ID, which is a random UUID.
+     *
+     * @param entry The entry to store
+     * @return the new entry ID
+     */
+    @Override
+    public String getNextId( Entry entry )
+    {
+        return UUID.randomUUID().toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the requested attributes are decoded. The stored bytes are copied out of the memory
+     * map, which is only valid during the transaction, so that the other attributes can be
+     * decoded later.
+     */
+    @Override
+    public Entry get( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes ) throws LdapException
+    {
+        return get( partitionTxn, id, buffer ->
+        {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get( bytes );
+
+            return codec.project( bytes, attributeTypes );
+        } );
+    }
+}
@@ -0,0 +1,627 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.exception.MultiException;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
+import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
+import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
+import org.lmdbjava.LmdbException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A {@link Partition} that stores entries in a <a href="https://www.symas.com/lmdb">LMDB</a>
+ * environment : the master table and the indexes are LMDB databases of a memory mapped file.
+ * <br>
+ * The reads don't copy the data out of the memory map before deserializing it, and they
+ * are never blocked by the writes : each read transaction, and each cursor, sees a snapshot
+ * of the partition. There is no log to replay after a crash, a commit is atomic.
+ * <br>
+ * The write transactions are bound to the thread which has started them : the transactions
+ * spanning many LDAP requests, or many threads, are not supported by this partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartition extends AbstractBTreePartition
+{
+    /** static logger */
+    private static final Logger LOG = LoggerFactory.getLogger( LmdbPartition.class );
+
+    /** The default maximum size of the memory map, 1GB */
+    public static final long DEFAULT_MAP_SIZE = 1024L * 1024L * 1024L;
+
+    /** The maximum number of read transactions opened at the same time */
+    private static final int DEFAULT_MAX_READERS = 1024;
+
+    /** The number of databases reserved for the master table, the attribute dictionary and the system indexes */
+    private static final int SYSTEM_DATABASES = 32;
+
+    /** The number of entries indexed in a transaction when building a new index */
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    /** The maximum size of the memory map */
+    private long mapSize = DEFAULT_MAP_SIZE;
+
+    /** The LMDB environment */
+    private LmdbEnvironment environment;
+
+
+    /**
+     * Creates a store based on LMDB.
+     * 
+     * @param schemaManager The SchemaManager instance
+     * @param dnFactory The DN factory instance
+     */
+    public LmdbPartition( SchemaManager schemaManager, DnFactory dnFactory )
+    {
+        super( schemaManager, dnFactory );
+
+        // Initialize the cache size
+        if ( cacheSize < 0 )
+        {
+            cacheSize = DEFAULT_CACHE_SIZE;
+            LOG.debug( "Using the default entry cache size of {} for {} partition", cacheSize, id );
+        }
+        else
+        {
+            LOG.debug( "Using the custom configured cache size of {} for {} partition", cacheSize, id );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRepair() throws LdapException
+    {
+        // Nothing to do : LMDB commits are atomic, there is no log to replay
+    }
+
+
+    /**
+     * @return The maximum size of the memory map, in bytes
+     */
+    public long getMapSize()
+    {
+        return mapSize;
+    }
+
+
+    /**
+     * Sets the maximum size of the memory map. The partition can't store more data : the
+     * writes fail once the map is full. The disk space is only used when the data is written.
+     * 
+     * @param mapSize The maximum size of the memory map, in bytes
+     */
+    public void setMapSize( long mapSize )
+    {
+        checkInitialized( "mapSize" );
+        this.mapSize = mapSize;
+    }
+
+
+    /**
+     * @return The LMDB environment, once the partition is initialized
+     */
+    public LmdbEnvironment getEnvironment()
+    {
+        return environment;
+    }
+
+
+    @Override
+    protected void doInit() throws LdapException
+    {
+        if ( !initialized )
+        {
+            // setup optimizer and registries for parent
+            setOptimizer( createOptimizer() );
+
+            EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
+            CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
+
+            setSearchEngine( new DefaultSearchEngine( this, cursorBuilder, evaluatorBuilder, getOptimizer() ) );
+
+            // Create the underlying directories (only if needed)
+            File partitionDir = new File( getPartitionPath() );
+
+            if ( !partitionDir.exists() && !partitionDir.mkdirs() )
+            {
+                throw new LdapOtherException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, partitionDir ) );
+            }
+
+            // Each index uses two databases
+            int maxDbs = SYSTEM_DATABASES + 2 * getIndexedAttributes().size();
+
+            try
+            {
+                environment = new LmdbEnvironment( partitionDir, mapSize, maxDbs, DEFAULT_MAX_READERS,
+                    isSyncOnWrite() );
+            }
+            catch ( LmdbException le )
+            {
+                throw new LdapOtherException( le.getMessage(), le );
+            }
+
+            // Iterate on the declared indexes, to find the new ones
+            Set<String> databases = new HashSet<>();
+
+            for ( byte[] name : environment.getEnv().getDbiNames() )
+            {
+                databases.add( new String( name, StandardCharsets.UTF_8 ) );
+            }
+
+            List<Index<?, String>> indexToBuild = new ArrayList<>();
+
+            for ( Index<?, String> index : getIndexedAttributes() )
+            {
+                String oid = schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() ).getOid();
+
+                // Check the forward index only (we suppose we never will add a reverse index later on)
+                if ( !databases.contains( oid + LmdbIndex.FORWARD_BTREE ) )
+                {
+                    indexToBuild.add( index );
+                }
+            }
+
+            // Initialize the indexes
+            super.doInit();
+
+            if ( cacheSize < 0 )
+            {
+                cacheSize = DEFAULT_CACHE_SIZE;
+                LOG.debug( "Using the default entry cache size of {} for {} partition", cacheSize, id );
+            }
+            else
+            {
+                LOG.debug( "Using the custom configured cache size of {} for {} partition", cacheSize, id );
+            }
+
+            // Create the master table (the table containing all the entries)
+            try
+            {
+                AttributeDictionary dictionary = new LmdbAttributeDictionary( schemaManager, environment );
+                master = new LmdbMasterTable( environment, schemaManager, dictionary );
+            }
+            catch ( LmdbException le )
+            {
+                throw new LdapOtherException( le.getMessage(), le );
+            }
+
+            // A new database has no entry, there is nothing to index
+            if ( !indexToBuild.isEmpty() && databases.contains( LmdbMasterTable.DBF ) )
+            {
+                buildUserIndex( indexToBuild );
+            }
+
+            initContextEntry();
+
+            // We are done !
+            initialized = true;
+        }
+    }
+
+
+    /**
+     * Adds the context entry, if it has been configured and doesn't exist yet
+     */
+    private void initContextEntry() throws LdapException
+    {
+        if ( ( suffixDn == null ) || ( contextEntry == null ) )
+        {
+            return;
+        }
+
+        Dn contextEntryDn = contextEntry.getDn();
+
+        // Checking if the context entry DN is schema aware
+        if ( !contextEntryDn.isSchemaAware() )
+        {
+            contextEntryDn = new Dn( schemaManager, contextEntryDn );
+        }
+
+        // We're only adding the entry if the two DNs are equal
+        if ( !suffixDn.equals( contextEntryDn ) )
+        {
+            return;
+        }
+
+        // Looking for the current context entry
+        Entry suffixEntry;
+        LookupOperationContext lookupContext = new LookupOperationContext( null, suffixDn );
+        lookupContext.setPartition( this );
+
+        try ( PartitionTxn partitionTxn = beginReadTransaction() )
+        {
+            lookupContext.setTransaction( partitionTxn );
+            suffixEntry = lookup( lookupContext );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        // We're only adding the context entry if it doesn't already exist
+        if ( suffixEntry != null )
+        {
+            return;
+        }
+
+        // Checking of the context entry is schema aware
+        if ( !contextEntry.isSchemaAware() )
+        {
+            contextEntry = new DefaultEntry( schemaManager, contextEntry );
+        }
+
+        // Adding the 'entryCsn' attribute
+        if ( contextEntry.get( SchemaConstants.ENTRY_CSN_AT ) == null )
+        {
+            contextEntry.add( SchemaConstants.ENTRY_CSN_AT, new CsnFactory( 0 ).newInstance().toString() );
+        }
+
+        // Adding the 'entryUuid' attribute
+        if ( contextEntry.get( SchemaConstants.ENTRY_UUID_AT ) == null )
+        {
+            contextEntry.add( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+        }
+
+        // And add this entry to the underlying partition
+        PartitionTxn partitionTxn = beginWriteTransaction();
+        AddOperationContext addContext = new AddOperationContext( null, contextEntry );
+
+        try
+        {
+            addContext.setTransaction( partitionTxn );
+            add( addContext );
+            partitionTxn.commit();
+        }
+        catch ( LdapException | IOException e )
+        {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            if ( e instanceof LdapException )
+            {
+                throw ( LdapException ) e;
+            }
+
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}}
+     */
+    public String getDefaultId()
+    {
+        return Partition.DEFAULT_ID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getRootId()
+    {
+        return Partition.ROOT_ID;
+    }
+
+
+    /**
+     * Flushes the memory map on disk. The commits are already flushed when the partition is
+     * synchronized on each write.
+     * 
+     * @throws LdapException on failures to sync the memory map to disk
+     */
+    @Override
+    public void sync() throws LdapException
+    {
+        if ( !initialized )
+        {
+            return;
+        }
+
+        try
+        {
+            environment.sync();
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+    }
+
+
+    /**
+     * Builds user defined indexes on a attributes by browsing all the entries present in the
+     * master table. The master table is read from a snapshot, and the index is written in
+     * transactions of {@link #BUILD_BATCH_SIZE} entries, so that the pending changes are
+     * kept small.
+     * 
+     * Note: if the given list of indices contains any system index that will be skipped.
+     * 
+     * WARN: MUST be called after calling super.doInit()
+     * 
+     * @param indices then selected indexes that need to be built
+     * @throws LdapException in case of any problems while building the index
+     */
+    private void buildUserIndex( List<Index<?, String>> indices ) throws LdapException
+    {
+        // The cursor is opened out of any write transaction, so it reads its own snapshot
+        Cursor<Tuple<String, Entry>> cursor = master.cursor();
+        PartitionTxn partitionTxn = null;
+
+        try
+        {
+            int nbEntries = 0;
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                if ( partitionTxn == null )
+                {
+                    partitionTxn = beginWriteTransaction();
+                }
+
+                Tuple<String, Entry> tuple = cursor.get();
+                String id = tuple.getKey();
+                Entry entry = tuple.getValue();
+
+                for ( Index index : indices )
+                {
+                    AttributeType atType = index.getAttribute();
+                    String attributeOid = atType.getOid();
+
+                    if ( systemIndices.get( attributeOid ) != null )
+                    {
+                        // skipping building of the system index
+                        continue;
+                    }
+
+                    Attribute entryAttr = entry.get( atType );
+
+                    if ( entryAttr != null )
+                    {
+                        for ( Value value : entryAttr )
+                        {
+                            index.add( partitionTxn, value.getNormalized(), id );
+                        }
+
+                        // Adds only those attributes that are indexed
+                        presenceIdx.add( partitionTxn, attributeOid, id );
+                    }
+                }
+
+                nbEntries++;
+
+                if ( nbEntries % BUILD_BATCH_SIZE == 0 )
+                {
+                    partitionTxn.commit();
+                    partitionTxn = null;
+                }
+            }
+
+            if ( partitionTxn != null )
+            {
+                partitionTxn.commit();
+                partitionTxn = null;
+            }
+
+            LOG.info( "Built the indexes {} on {} entries", indices, nbEntries );
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            try
+            {
+                if ( partitionTxn != null )
+                {
+                    partitionTxn.abort();
+                }
+
+                cursor.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to close the index builder cursor", ioe );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Index<?, String> convertAndInit( Index<?, String> index ) throws LdapException
+    {
+        LmdbIndex<?> lmdbIndex;
+
+        if ( index instanceof LmdbIndex<?> )
+        {
+            lmdbIndex = ( LmdbIndex<?> ) index;
+        }
+        else
+        {
+            LOG.debug( "Supplied index {} is not a LmdbIndex.  "
+                + "Will create new LmdbIndex using copied configuration parameters.", index );
+            lmdbIndex = new LmdbIndex<>( index.getAttributeId(), true );
+            lmdbIndex.setCacheSize( index.getCacheSize() );
+        }
+
+        try
+        {
+            lmdbIndex.init( environment, schemaManager,
+                schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+
+        return lmdbIndex;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized void doDestroy( PartitionTxn partitionTxn ) throws LdapException
+    {
+        MultiException errors = new MultiException( I18n.err( I18n.ERR_577 ) );
+
+        if ( !initialized )
+        {
+            return;
+        }
+
+        try
+        {
+            super.doDestroy( partitionTxn );
+        }
+        catch ( Exception e )
+        {
+            errors.addThrowable( e );
+        }
+
+        // This is specific to the LMDB store : close the environment
+        try
+        {
+            environment.close();
+            LOG.debug( "Closed the LMDB environment for {} partition.", suffixDn );
+        }
+        catch ( LmdbException le )
+        {
+            LOG.error( I18n.err( I18n.ERR_127 ), le );
+            errors.addThrowable( le );
+        }
+
+        if ( errors.size() > 0 )
+        {
+            throw new LdapOtherException( errors.getMessage(), errors );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Index createSystemIndex( String oid, URI path, boolean withReverse ) throws LdapException
+    {
+        LOG.debug( "Supplied index {} is not a LmdbIndex.  "
+            + "Will create new LmdbIndex using copied configuration parameters.", oid );
+        LmdbIndex<?> lmdbIndex;
+
+        if ( oid.equals( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
+        {
+            lmdbIndex = new LmdbRdnIndex();
+            lmdbIndex.setAttributeId( ApacheSchemaConstants.APACHE_RDN_AT_OID );
+        }
+        else if ( oid.equals( ApacheSchemaConstants.APACHE_ALIAS_AT_OID ) )
+        {
+            lmdbIndex = new LmdbDnIndex( ApacheSchemaConstants.APACHE_ALIAS_AT_OID );
+            lmdbIndex.setAttributeId( ApacheSchemaConstants.APACHE_ALIAS_AT_OID );
+        }
+        else
+        {
+            lmdbIndex = new LmdbIndex<>( oid, withReverse );
+        }
+
+        lmdbIndex.setWkDirPath( path );
+
+        return lmdbIndex;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PartitionReadTxn beginReadTransaction()
+    {
+        return new LmdbPartitionReadTxn( environment );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PartitionWriteTxn beginWriteTransaction()
+    {
+        return new LmdbPartitionWriteTxn( environment );
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+import org.lmdbjava.Txn;
+
+/**
+ * The LMDB partition read transaction. It's mapped on a LMDB read transaction, opened when
+ * the first read is done : all the reads done with this transaction, and all the cursors
+ * created in it, see the same snapshot and share a single LMDB reader slot.
+ * <br>
+ * The search engine closes the transaction before its cursors are read. The LMDB
+ * transaction is then kept open until the last of these cursors is closed.
+ *  
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartitionReadTxn extends PartitionReadTxn
+{
+    /** The LMDB environment */
+    private final LmdbEnvironment environment;
+
+    /** The LMDB read transaction, opened on the first read */
+    private Txn<ByteBuffer> txn;
+
+    /** The number of open cursors using the LMDB transaction */
+    private int nbCursors;
+
+    /** Tells if the transaction has been closed */
+    private boolean closed;
+
+
+    /**
+     * Create an instance of LmdbPartitionReadTxn
+     * 
+     * @param environment The LMDB environment
+     */
+    public LmdbPartitionReadTxn( LmdbEnvironment environment )
+    {
+        this.environment = environment;
+    }
+
+
+    /**
+     * @return The LMDB read transaction, opened if needed, or null if this transaction
+     * has been closed and none of its cursors is still open
+     */
+    synchronized Txn<ByteBuffer> getTxn()
+    {
+        if ( ( txn == null ) && !closed )
+        {
+            txn = environment.getEnv().txnRead();
+        }
+
+        return txn;
+    }
+
+
+    /**
+     * Gets the LMDB read transaction for a new cursor. It won't be closed before the
+     * cursor is.
+     *
+     * @return The LMDB read transaction, or null if this transaction has been closed and
+     * none of its cursors is still open
+     */
+    synchronized Txn<ByteBuffer> acquire()
+    {
+        Txn<ByteBuffer> cursorTxn = getTxn();
+
+        if ( cursorTxn != null )
+        {
+            nbCursors++;
+        }
+
+        return cursorTxn;
+    }
+
+
+    /**
+     * Tells that a cursor using the LMDB transaction has been closed. The LMDB
+     * transaction is closed with the last cursor, if this transaction is closed.
+     */
+    synchronized void release()
+    {
+        nbCursors--;
+
+        if ( closed && ( nbCursors == 0 ) )
+        {
+            closeTxn();
+        }
+    }
+
+
+    private void closeTxn()
+    {
+        if ( txn != null )
+        {
+            txn.close();
+            txn = null;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws IOException
+    {
+        close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() throws IOException
+    {
+        close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        closed = true;
+
+        if ( nbCursors == 0 )
+        {
+            closeTxn();
+        }
+    }
+}
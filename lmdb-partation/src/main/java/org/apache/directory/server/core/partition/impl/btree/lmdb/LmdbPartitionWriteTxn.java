@@ -0,0 +1,202 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.Txn;
+
+/**
+ * The LMDB partition write transaction. It's mapped on a LMDB write transaction, which must
+ * be used by the thread which has created it, and which is committed or aborted as a whole.
+ * <br>
+ * LMDB accepts only one write transaction at a time. If the thread already runs a write
+ * transaction on the partition, this transaction is a nested LMDB transaction : its changes
+ * are only visible to the other threads once the outermost transaction is committed.
+ *  
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartitionWriteTxn extends PartitionWriteTxn
+{
+    /** The LMDB environment */
+    private final LmdbEnvironment environment;
+
+    /** The enclosing transaction, if any */
+    private final LmdbPartitionWriteTxn parent;
+
+    /** The LMDB write transaction */
+    private final Txn<ByteBuffer> txn;
+
+    /** The cursors opened in this transaction, which must be closed before it ends */
+    private final List<LmdbCursor<?, ?>> cursors = new ArrayList<>();
+
+    /** Tells if the transaction has been committed or aborted */
+    private boolean closed;
+
+
+    /**
+     * Create an instance of LmdbPartitionWriteTxn, and makes it the current write transaction
+     * of the thread
+     * 
+     * @param environment The LMDB environment
+     */
+    public LmdbPartitionWriteTxn( LmdbEnvironment environment )
+    {
+        this.environment = environment;
+        parent = environment.getCurrentWriteTxn();
+
+        if ( parent == null )
+        {
+            txn = environment.getEnv().txnWrite();
+        }
+        else
+        {
+            txn = environment.getEnv().txn( parent.txn );
+        }
+
+        environment.setCurrentWriteTxn( this );
+    }
+
+
+    /**
+     * @return The LMDB write transaction
+     */
+    Txn<ByteBuffer> getTxn()
+    {
+        return txn;
+    }
+
+
+    /**
+     * Registers a cursor opened in this transaction
+     */
+    void addCursor( LmdbCursor<?, ?> cursor )
+    {
+        cursors.add( cursor );
+    }
+
+
+    /**
+     * Unregisters a cursor which has been closed
+     */
+    void removeCursor( LmdbCursor<?, ?> cursor )
+    {
+        cursors.remove( cursor );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws IOException
+    {
+        end( true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() throws IOException
+    {
+        end( false );
+    }
+
+
+    /**
+     * Commits or aborts the transaction, and restores the enclosing transaction
+     */
+    private void end( boolean commit ) throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+        boolean committed = false;
+
+        try
+        {
+            // The LMDB cursors are invalid once the transaction has ended
+            for ( LmdbCursor<?, ?> cursor : new ArrayList<>( cursors ) )
+            {
+                cursor.close();
+            }
+
+            if ( commit )
+            {
+                txn.commit();
+                committed = true;
+            }
+        }
+        catch ( LmdbException le )
+        {
+            throw new IOException( le.getMessage(), le );
+        }
+        finally
+        {
+            // Aborts the transaction if it has not been committed
+            txn.close();
+            environment.setCurrentWriteTxn( parent );
+
+            if ( !committed )
+            {
+                ended();
+            }
+            else if ( parent != null )
+            {
+                // The modifications are only visible once the enclosing transaction is committed
+                moveActionsTo( parent );
+            }
+            else
+            {
+                committed();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        commit();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.apache.directory.server.xdbm.ParentIdAndRdnComparator;
+
+
+/**
+ * A special index which stores Rdn objects. The forward keys are serialized so that the
+ * children of an entry are stored together, in the order of the {@link ParentIdAndRdnComparator}.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbRdnIndex extends LmdbIndex<ParentIdAndRdn>
+{
+    public LmdbRdnIndex()
+    {
+        super( ApacheSchemaConstants.APACHE_RDN_AT_OID, true );
+        initialized = false;
+    }
+
+
+    /**
+     * Initializes the forward and reverse tables used by this Index.
+     * 
+     * @param schemaManager The server schemaManager
+     * @throws IOException if we cannot initialize the forward and reverse
+     * tables
+     */
+    @Override
+    protected void initTables( SchemaManager schemaManager ) throws IOException
+    {
+        MatchingRule mr = attributeType.getEquality();
+
+        if ( mr == null )
+        {
+            throw new IOException( I18n.err( I18n.ERR_574, attributeType.getName() ) );
+        }
+
+        ParentIdAndRdnComparator<String> comp = new ParentIdAndRdnComparator<>( mr.getOid() );
+
+        UuidComparator.INSTANCE.setSchemaManager( schemaManager );
+
+        forward = new LmdbTable<>( schemaManager, attributeType.getOid() + FORWARD_BTREE, environment, false,
+            comp, UuidComparator.INSTANCE, new ParentIdAndRdnKeySerializer( schemaManager ),
+            StringSerializer.INSTANCE );
+        reverse = new LmdbTable<>( schemaManager, attributeType.getOid() + REVERSE_BTREE, environment, false,
+            UuidComparator.INSTANCE, comp, StringSerializer.INSTANCE, new ParentIdAndRdnSerializer( schemaManager ) );
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Converts the keys and the values stored in a LMDB database. LMDB orders the keys, and the
+ * duplicate values, by comparing their bytes : the serializers used for the keys of an index
+ * must produce bytes ordered like the index comparator orders the keys.
+ * 
+ * @param <T> The serialized type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LmdbSerializer<T>
+{
+    /**
+     * Serializes an element
+     * 
+     * @param element The element to serialize
+     * @return The serialized element
+     * @throws IOException If the serialization failed
+     */
+    byte[] serialize( T element ) throws IOException;
+
+
+    /**
+     * Deserializes an element. The buffer may point into the LMDB memory map, and is only valid
+     * until the transaction it has been read from ends : the element must not keep a reference
+     * to it.
+     * 
+     * @param buffer The buffer containing the serialized element, from its position to its limit
+     * @return The deserialized element
+     * @throws IOException If the deserialization failed
+     */
+    T deserialize( ByteBuffer buffer ) throws IOException;
+}
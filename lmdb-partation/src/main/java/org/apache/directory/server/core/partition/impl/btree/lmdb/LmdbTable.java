@@ -0,0 +1,785 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.EmptyCursor;
+import org.apache.directory.api.ldap.model.cursor.SingletonCursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractTable;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.Env;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.SeekOp;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Table implementation backed by a LMDB database. When the table allows duplicate values,
+ * the database is opened with MDB_DUPSORT, and each value is a distinct record : LMDB keeps
+ * the values of a key sorted, there is no container to read and rewrite on each update.
+ * <br>
+ * The keys and the values are ordered by their serialized bytes, not by the table
+ * comparators : the serializers are chosen so that both orders match.
+ * <br>
+ * The operations are executed in the write transaction of the current thread, if any, so
+ * that they see its pending changes. Otherwise, the reads use the snapshot of the given read
+ * transaction, or a temporary one, and the writes are committed immediately.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbTable<K, V> extends AbstractTable<K, V>
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LmdbTable.class );
+
+    /** The LMDB environment this table is stored in */
+    private final LmdbEnvironment environment;
+
+    /** The LMDB database */
+    private final Dbi<ByteBuffer> dbi;
+
+    /** The key serializer */
+    private final LmdbSerializer<K> keySerializer;
+
+    /** The value serializer */
+    private final LmdbSerializer<V> valueSerializer;
+
+
+    /**
+     * An operation executed in a LMDB transaction
+     */
+    @FunctionalInterface
+    private interface TxnOperation<T>
+    {
+        T execute( Txn<ByteBuffer> txn ) throws IOException;
+    }
+
+
+    /**
+     * Converts a value read from the database, instead of the value serializer
+     */
+    @FunctionalInterface
+    interface ValueReader<T>
+    {
+        T read( ByteBuffer buffer ) throws IOException;
+    }
+
+
+    /**
+     * Creates a new instance of LmdbTable, opening its database.
+     *
+     * @param schemaManager The server schemaManager
+     * @param name The table name, also the LMDB database name
+     * @param environment The LMDB environment
+     * @param allowsDuplicates If the table accepts many values per key
+     * @param keyComparator The key comparator
+     * @param valueComparator The value comparator
+     * @param keySerializer The key serializer
+     * @param valueSerializer The value serializer
+     */
+    public LmdbTable( SchemaManager schemaManager, String name, LmdbEnvironment environment, boolean allowsDuplicates,
+        Comparator<K> keyComparator, Comparator<V> valueComparator, LmdbSerializer<K> keySerializer,
+        LmdbSerializer<V> valueSerializer )
+    {
+        super( schemaManager, name, keyComparator, valueComparator );
+
+        if ( allowsDuplicates && ( valueComparator == null ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_592 ) );
+        }
+
+        this.environment = environment;
+        this.allowsDuplicates = allowsDuplicates;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+
+        dbi = environment.openDbi( name, allowsDuplicates );
+
+        try ( Txn<ByteBuffer> txn = environment.getEnv().txnRead() )
+        {
+            count = dbi.stat( txn ).entries;
+        }
+
+        LOG.debug( "Opened the LMDB table {} ({} elements)", name, count );
+    }
+
+
+    /**
+     * @return The LMDB database
+     */
+    Dbi<ByteBuffer> getDbi()
+    {
+        return dbi;
+    }
+
+
+    /**
+     * @return The LMDB environment
+     */
+    LmdbEnvironment getEnvironment()
+    {
+        return environment;
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Serialization helpers
+    // ------------------------------------------------------------------------
+    /**
+     * Serializes a key, shortening it if it's too long.
+     */
+    byte[] encodeKey( K key ) throws IOException
+    {
+        return environment.shorten( keySerializer.serialize( key ) );
+    }
+
+
+    /**
+     * Serializes a value, shortening it if it's a duplicate value too long to be stored.
+     */
+    byte[] encodeValue( V value ) throws IOException
+    {
+        byte[] bytes = valueSerializer.serialize( value );
+
+        return allowsDuplicates ? environment.shorten( bytes ) : bytes;
+    }
+
+
+    /**
+     * Deserializes a key read from the database
+     */
+    K decodeKey( Txn<ByteBuffer> txn, ByteBuffer buffer ) throws IOException
+    {
+        return keySerializer.deserialize( environment.expand( txn, buffer ) );
+    }
+
+
+    /**
+     * Deserializes a value read from the database
+     */
+    V decodeValue( Txn<ByteBuffer> txn, ByteBuffer buffer ) throws IOException
+    {
+        if ( allowsDuplicates )
+        {
+            return valueSerializer.deserialize( environment.expand( txn, buffer ) );
+        }
+
+        return valueSerializer.deserialize( buffer );
+    }
+
+
+    /**
+     * Converts a LMDB failure
+     */
+    LdapException toLdapException( LmdbException le )
+    {
+        if ( le instanceof Env.MapFullException )
+        {
+            return new LdapOtherException( I18n.err( I18n.ERR_753_LMDB_MAP_FULL, name, environment.getMapSize() ),
+                le );
+        }
+
+        return new LdapOtherException( I18n.err( I18n.ERR_754_LMDB_ERROR, name, le.getMessage() ), le );
+    }
+
+
+    /**
+     * Executes a read operation, in the transaction associated with the given one, or in a
+     * temporary read transaction
+     */
+    private <T> T read( PartitionTxn partitionTxn, TxnOperation<T> operation ) throws LdapException
+    {
+        Txn<ByteBuffer> txn = environment.getReadTxn( partitionTxn );
+        boolean temporary = txn == null;
+
+        try
+        {
+            if ( temporary )
+            {
+                txn = environment.getEnv().txnRead();
+            }
+
+            return operation.execute( txn );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        catch ( LmdbException le )
+        {
+            throw toLdapException( le );
+        }
+        finally
+        {
+            if ( temporary && ( txn != null ) )
+            {
+                txn.close();
+            }
+        }
+    }
+
+
+    /**
+     * Executes a write operation, in the write transaction associated with the given one, or
+     * in a transaction committed immediately
+     */
+    private void write( PartitionTxn partitionTxn, TxnOperation<Void> operation ) throws LdapException
+    {
+        LmdbPartitionWriteTxn writeTxn = environment.getWriteTxn( partitionTxn );
+        boolean temporary = writeTxn == null;
+
+        try
+        {
+            // The temporary transaction is the current one of the thread while it's open, so
+            // that the attribute dictionary stores its new ids in it
+            if ( temporary )
+            {
+                writeTxn = new LmdbPartitionWriteTxn( environment );
+            }
+
+            operation.execute( writeTxn.getTxn() );
+
+            if ( temporary )
+            {
+                writeTxn.commit();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            if ( ioe.getCause() instanceof LmdbException )
+            {
+                throw toLdapException( ( LmdbException ) ioe.getCause() );
+            }
+
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        catch ( LmdbException le )
+        {
+            throw toLdapException( le );
+        }
+        finally
+        {
+            // Aborts the temporary transaction if it has not been committed
+            if ( temporary && ( writeTxn != null ) && !writeTxn.isClosed() )
+            {
+                try
+                {
+                    writeTxn.abort();
+                }
+                catch ( IOException ioe )
+                {
+                    LOG.warn( "Cannot abort the transaction on table {} : {}", name, ioe.getMessage() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Compares some bytes with the bytes of a buffer, as LMDB does
+     */
+    static int compare( ByteBuffer buffer, byte[] bytes )
+    {
+        int length = Math.min( buffer.remaining(), bytes.length );
+        int position = buffer.position();
+
+        for ( int i = 0; i < length; i++ )
+        {
+            int diff = ( buffer.get( position + i ) & 0xFF ) - ( bytes[i] & 0xFF );
+
+            if ( diff != 0 )
+            {
+                return diff;
+            }
+        }
+
+        return buffer.remaining() - bytes.length;
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Count Overloads
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( PartitionTxn transaction ) throws LdapException
+    {
+        count = read( transaction, txn -> dbi.stat( txn ).entries );
+
+        return count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return 0L;
+        }
+
+        return read( transaction, txn ->
+        {
+            try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+            {
+                if ( !cursor.get( environment.toBuffer( 0, encodeKey( key ) ), GetOp.MDB_SET_KEY ) )
+                {
+                    return 0L;
+                }
+
+                return allowsDuplicates ? cursor.count() : 1L;
+            }
+        } );
+    }
+
+
+    // ------------------------------------------------------------------------
+    // get/has/put/remove Methods and Overloads
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V get( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return null;
+        }
+
+        return read( transaction, txn ->
+        {
+            // With duplicates, LMDB returns the first value
+            ByteBuffer value = dbi.get( txn, environment.toBuffer( 0, encodeKey( key ) ) );
+
+            return ( value == null ) ? null : decodeValue( txn, value );
+        } );
+    }
+
+
+    /**
+     * Gets the value associated with a key, converted by the given reader. The buffer given to
+     * the reader points into the LMDB memory map, and is only valid while it's called.
+     *
+     * @param transaction The transaction to use
+     * @param key The key
+     * @param reader The reader converting the stored value
+     * @return The converted value, or null if the key does not exist
+     * @throws LdapException If the value can't be read
+     */
+    <T> T get( PartitionTxn transaction, K key, ValueReader<T> reader ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return null;
+        }
+
+        return read( transaction, txn ->
+        {
+            ByteBuffer value = dbi.get( txn, environment.toBuffer( 0, encodeKey( key ) ) );
+
+            return ( value == null ) ? null : reader.read( value );
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return read( transaction, txn -> dbi.get( txn, environment.toBuffer( 0, encodeKey( key ) ) ) != null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has( PartitionTxn transaction, K key, V value ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return read( transaction, txn ->
+        {
+            ByteBuffer keyBuffer = environment.toBuffer( 0, encodeKey( key ) );
+            byte[] valueBytes = encodeValue( value );
+
+            if ( !allowsDuplicates )
+            {
+                ByteBuffer stored = dbi.get( txn, keyBuffer );
+
+                return ( stored != null ) && ( compare( stored, valueBytes ) == 0 );
+            }
+
+            try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+            {
+                return cursor.get( keyBuffer, environment.toBuffer( 1, valueBytes ), SeekOp.MDB_GET_BOTH );
+            }
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasGreaterOrEqual( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return read( transaction, txn ->
+        {
+            try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+            {
+                return cursor.get( environment.toBuffer( 0, encodeKey( key ) ), GetOp.MDB_SET_RANGE );
+            }
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasLessOrEqual( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return read( transaction, txn ->
+        {
+            try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+            {
+                byte[] keyBytes = encodeKey( key );
+
+                if ( !cursor.get( environment.toBuffer( 0, keyBytes ), GetOp.MDB_SET_RANGE ) )
+                {
+                    // All the keys are lower
+                    return cursor.last();
+                }
+
+                return ( compare( cursor.key(), keyBytes ) == 0 ) || cursor.prev();
+            }
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasGreaterOrEqual( PartitionTxn transaction, K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            throw new UnsupportedOperationException( I18n.err( I18n.ERR_593 ) );
+        }
+
+        return read( transaction, txn ->
+        {
+            try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+            {
+                return cursor.get( environment.toBuffer( 0, encodeKey( key ) ),
+                    environment.toBuffer( 1, encodeValue( val ) ), SeekOp.MDB_GET_BOTH_RANGE );
+            }
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasLessOrEqual( PartitionTxn transaction, K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            throw new UnsupportedOperationException( I18n.err( I18n.ERR_593 ) );
+        }
+
+        return read( transaction, txn ->
+        {
+            try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+            {
+                // The cursor is set on the lowest value of the key
+                return cursor.get( environment.toBuffer( 0, encodeKey( key ) ), GetOp.MDB_SET_KEY )
+                    && ( compare( cursor.val(), encodeValue( val ) ) <= 0 );
+            }
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( PartitionTxn transaction, K key, V value ) throws LdapException
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "---> Add {} = {}", name, key );
+        }
+
+        if ( ( value == null ) || ( key == null ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_594 ) );
+        }
+
+        write( transaction, txn ->
+        {
+            byte[] keyBytes = keySerializer.serialize( key );
+            byte[] storedKey = environment.shorten( keyBytes );
+            byte[] valueBytes = valueSerializer.serialize( value );
+            byte[] storedValue = allowsDuplicates ? environment.shorten( valueBytes ) : valueBytes;
+
+            if ( storedKey != keyBytes )
+            {
+                environment.putOverflow( txn, storedKey, keyBytes );
+            }
+
+            if ( storedValue != valueBytes )
+            {
+                environment.putOverflow( txn, storedValue, valueBytes );
+            }
+
+            // Adding an existing value to a MDB_DUPSORT database does nothing
+            dbi.put( txn, environment.toBuffer( 0, storedKey ), environment.toBuffer( 1, storedValue ) );
+
+            return null;
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "---> Remove {} = {}", name, key );
+        }
+
+        if ( key == null )
+        {
+            return;
+        }
+
+        // Removes all the values of the key
+        write( transaction, txn ->
+        {
+            dbi.delete( txn, environment.toBuffer( 0, encodeKey( key ) ) );
+
+            return null;
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove( PartitionTxn transaction, K key, V value ) throws LdapException
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "---> Remove {} = {}, {}", name, key, value );
+        }
+
+        if ( key == null )
+        {
+            return;
+        }
+
+        write( transaction, txn ->
+        {
+            ByteBuffer keyBuffer = environment.toBuffer( 0, encodeKey( key ) );
+            byte[] valueBytes = encodeValue( value );
+
+            if ( allowsDuplicates )
+            {
+                dbi.delete( txn, keyBuffer, environment.toBuffer( 1, valueBytes ) );
+            }
+            else
+            {
+                // LMDB ignores the value when the database has no duplicates
+                ByteBuffer stored = dbi.get( txn, keyBuffer );
+
+                if ( ( stored != null ) && ( compare( stored, valueBytes ) == 0 ) )
+                {
+                    dbi.delete( txn, keyBuffer );
+                }
+            }
+
+            return null;
+        } );
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Cursors
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Tuple<K, V>> cursor()
+    {
+        return new LmdbCursor<>( this, null, null, null );
+    }
+
+
+    /**
+     * Creates a cursor over all the Tuples of the table, reading the snapshot of the given
+     * transaction.
+     *
+     * @param partitionTxn The transaction the cursor is created in
+     * @return The cursor
+     */
+    Cursor<Tuple<K, V>> cursor( PartitionTxn partitionTxn )
+    {
+        return new LmdbCursor<>( this, partitionTxn, null, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Tuple<K, V>> cursor( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<>();
+        }
+
+        if ( !allowsDuplicates )
+        {
+            V value = get( partitionTxn, key );
+
+            if ( value == null )
+            {
+                return new EmptyCursor<>();
+            }
+
+            return new SingletonCursor<>( new Tuple<>( key, value ) );
+        }
+
+        try
+        {
+            return new LmdbCursor<>( this, partitionTxn, key, encodeKey( key ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        catch ( LmdbException le )
+        {
+            throw toLdapException( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<V> valueCursor( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<>();
+        }
+
+        if ( !allowsDuplicates )
+        {
+            V value = get( transaction, key );
+
+            if ( value == null )
+            {
+                return new EmptyCursor<>();
+            }
+
+            return new SingletonCursor<>( value );
+        }
+
+        return new LmdbValueCursor<>( cursor( transaction, key ), key );
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Maintenance Operations
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( PartitionTxn transaction ) throws LdapException
+    {
+        // The databases are closed with the environment
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+
+
+/**
+ * Serializes the ParentIdAndRdn keys of the forward Rdn index, so that their bytes are ordered
+ * like {@link ParentIdAndRdn#compareTo(ParentIdAndRdn)} orders them : the children of an entry
+ * are stored together, after the key <code>(parentId, null)</code> used to position a cursor
+ * before the first child. The layout is :
+ * <ul>
+ *   <li>the parent ID, in UTF-8, followed by a 0x00 byte</li>
+ *   <li>the number of Rdns, on one byte, 0 when the Rdns are null</li>
+ *   <li>for each Rdn, its normalized name, in UTF-8, followed by a 0x00 byte</li>
+ * </ul>
+ * The number of children and of descendants are not part of the key, they are read from the
+ * reverse index.
+ * <br><br>
+ * <b>This class must *not* be used outside of the server.</b>
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParentIdAndRdnKeySerializer implements LmdbSerializer<ParentIdAndRdn>
+{
+    /** The schemaManager reference */
+    private final SchemaManager schemaManager;
+
+
+    /**
+     * Creates a new instance of ParentIdAndRdnKeySerializer.
+     * 
+     * @param schemaManager The reference to the global schemaManager
+     */
+    public ParentIdAndRdnKeySerializer( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( ParentIdAndRdn parentIdAndRdn )
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream( 64 );
+        byte[] parentId = Strings.getBytesUtf8( parentIdAndRdn.getParentId() );
+        baos.write( parentId, 0, parentId.length );
+        baos.write( 0x00 );
+
+        Rdn[] rdns = parentIdAndRdn.getRdns();
+
+        if ( rdns == null )
+        {
+            baos.write( 0 );
+        }
+        else
+        {
+            baos.write( rdns.length );
+
+            for ( Rdn rdn : rdns )
+            {
+                byte[] normName = Strings.getBytesUtf8( rdn.getNormName() );
+                baos.write( normName, 0, normName.length );
+                baos.write( 0x00 );
+            }
+        }
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParentIdAndRdn deserialize( ByteBuffer buffer ) throws IOException
+    {
+        String parentId = readString( buffer );
+        int nbRdns = buffer.get() & 0xFF;
+        Rdn[] rdns = new Rdn[nbRdns];
+
+        try
+        {
+            for ( int i = 0; i < nbRdns; i++ )
+            {
+                rdns[i] = new Rdn( schemaManager, readString( buffer ) );
+            }
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            throw new IOException( lide.getMessage(), lide );
+        }
+
+        return new ParentIdAndRdn( parentId, rdns );
+    }
+
+
+    /**
+     * Reads a String terminated by a 0x00 byte
+     */
+    private static String readString( ByteBuffer buffer )
+    {
+        int start = buffer.position();
+        int end = start;
+
+        while ( buffer.get( end ) != 0x00 )
+        {
+            end++;
+        }
+
+        byte[] bytes = new byte[end - start];
+        buffer.get( bytes );
+
+        // Skip the terminating 0x00
+        buffer.get();
+
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+}
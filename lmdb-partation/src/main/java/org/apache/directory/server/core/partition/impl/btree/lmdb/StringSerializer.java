@@ -0,0 +1,87 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Serializes the Strings in UTF-8. The UTF-8 bytes are ordered like the code points, so
+ * this serializer can be used for the entry IDs and for the normalized values of the
+ * indexes whose keys are compared as Strings.
+ * <br>
+ * LMDB does not accept empty keys : the empty String, and the null key used for the
+ * attributes without value, are stored as a single 0x00 byte.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class StringSerializer implements LmdbSerializer<String>
+{
+    /** The shared instance */
+    public static final StringSerializer INSTANCE = new StringSerializer();
+
+    /** The bytes of an empty String */
+    private static final byte[] EMPTY = new byte[]
+        { 0x00 };
+
+
+    private StringSerializer()
+    {
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( String element )
+    {
+        if ( Strings.isEmpty( element ) )
+        {
+            return EMPTY;
+        }
+
+        return Strings.getBytesUtf8( element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String deserialize( ByteBuffer buffer )
+    {
+        int length = buffer.remaining();
+
+        if ( ( length == 1 ) && ( buffer.get( buffer.position() ) == 0x00 ) )
+        {
+            return "";
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get( bytes );
+
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the attribute dictionary stored in the LMDB environment of a partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbAttributeDictionaryTest
+{
+    private static SchemaManager schemaManager;
+    private static AttributeType cn;
+    private static AttributeType sn;
+
+    private File dbDir;
+    private LmdbEnvironment environment;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+        cn = schemaManager.lookupAttributeTypeRegistry( "cn" );
+        sn = schemaManager.lookupAttributeTypeRegistry( "sn" );
+    }
+
+
+    @Before
+    public void createEnvironment() throws Exception
+    {
+        dbDir = Files.createTempDirectory( getClass().getSimpleName() ).toFile();
+        environment = new LmdbEnvironment( dbDir, 16L * 1024L * 1024L, 4, 16, false );
+    }
+
+
+    @After
+    public void destroyEnvironment() throws Exception
+    {
+        if ( environment != null )
+        {
+            environment.close();
+        }
+
+        try ( Stream<Path> files = Files.walk( dbDir.toPath() ) )
+        {
+            files.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+        }
+    }
+
+
+    @Test
+    public void testStoredInEnvironment() throws Exception
+    {
+        LmdbAttributeDictionary dictionary = new LmdbAttributeDictionary( schemaManager, environment );
+
+        try ( LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment ) )
+        {
+            assertEquals( 0, dictionary.getId( cn ) );
+            assertEquals( 1, dictionary.getId( sn ) );
+            assertEquals( 0, dictionary.getId( cn ) );
+        }
+
+        LmdbAttributeDictionary reloaded = new LmdbAttributeDictionary( schemaManager, environment );
+
+        assertEquals( 2, reloaded.size() );
+        assertEquals( cn, reloaded.getAttributeType( 0 ) );
+        assertEquals( sn, reloaded.getAttributeType( 1 ) );
+        assertEquals( 1, reloaded.getId( sn ) );
+    }
+
+
+    @Test
+    public void testAbortRemovesIds() throws Exception
+    {
+        LmdbAttributeDictionary dictionary = new LmdbAttributeDictionary( schemaManager, environment );
+
+        try ( LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment ) )
+        {
+            dictionary.getId( cn );
+        }
+
+        LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment );
+        assertEquals( 1, dictionary.getId( sn ) );
+        writeTxn.abort();
+
+        // The id has not been stored, it's not known anymore
+        assertEquals( 1, dictionary.size() );
+        assertEquals( 1, new LmdbAttributeDictionary( schemaManager, environment ).size() );
+
+        try ( LmdbPartitionWriteTxn retryTxn = new LmdbPartitionWriteTxn( environment ) )
+        {
+            assertEquals( 1, dictionary.getId( sn ) );
+        }
+
+        assertEquals( sn, new LmdbAttributeDictionary( schemaManager, environment ).getAttributeType( 1 ) );
+    }
+
+
+    @Test
+    public void testAbortNestedTransaction() throws Exception
+    {
+        LmdbAttributeDictionary dictionary = new LmdbAttributeDictionary( schemaManager, environment );
+
+        try ( LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment ) )
+        {
+            dictionary.getId( cn );
+
+            LmdbPartitionWriteTxn nestedTxn = new LmdbPartitionWriteTxn( environment );
+            dictionary.getId( sn );
+            nestedTxn.abort();
+
+            // Only the id added by the nested transaction is removed
+            assertEquals( 1, dictionary.size() );
+        }
+
+        assertEquals( 1, new LmdbAttributeDictionary( schemaManager, environment ).size() );
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testAddOutsideTransaction() throws Exception
+    {
+        new LmdbAttributeDictionary( schemaManager, environment ).getId( cn );
+    }
+
+
+    @Test
+    public void testUnknownAttributeType() throws Exception
+    {
+        LmdbAttributeDictionary dictionary = new LmdbAttributeDictionary( schemaManager, environment );
+
+        // An attribute type removed from the schema since it has been stored
+        try ( LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment ) )
+        {
+            dictionary.store( 0, "1.3.6.1.4.1.18060.0.4.1.2.999999" );
+        }
+
+        LmdbAttributeDictionary reloaded = new LmdbAttributeDictionary( schemaManager, environment );
+
+        assertEquals( 1, reloaded.size() );
+        assertNull( reloaded.findAttributeType( 0 ) );
+
+        try
+        {
+            reloaded.getAttributeType( 0 );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        // The id is not reused
+        try ( LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment ) )
+        {
+            assertEquals( 1, reloaded.getId( cn ) );
+        }
+    }
+}
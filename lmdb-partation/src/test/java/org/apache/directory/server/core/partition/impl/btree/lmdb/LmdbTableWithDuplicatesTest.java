@@ -0,0 +1,284 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.SerializableComparator;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.MockPartitionReadTxn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the LMDB tables allowing duplicate values.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbTableWithDuplicatesTest
+{
+    private static SchemaManager schemaManager;
+
+    private File dbDir;
+    private LmdbEnvironment environment;
+    private LmdbTable<String, String> table;
+    private PartitionTxn partitionTxn;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = LmdbTableWithDuplicatesTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    @Before
+    public void createTable() throws Exception
+    {
+        dbDir = Files.createTempDirectory( getClass().getSimpleName() ).toFile();
+        environment = new LmdbEnvironment( dbDir, 16L * 1024L * 1024L, 4, 16, false );
+        table = createTable( environment );
+        partitionTxn = new MockPartitionReadTxn();
+    }
+
+
+    private static LmdbTable<String, String> createTable( LmdbEnvironment environment )
+    {
+        SerializableComparator<String> comparator = new SerializableComparator<>(
+            SchemaConstants.INTEGER_ORDERING_MATCH_MR_OID );
+        comparator.setSchemaManager( schemaManager );
+
+        return new LmdbTable<>( schemaManager, "test", environment, true, comparator, comparator,
+            IntegerKeySerializer.INSTANCE, IntegerKeySerializer.INSTANCE );
+    }
+
+
+    @After
+    public void destroyTable() throws Exception
+    {
+        if ( environment != null )
+        {
+            environment.close();
+        }
+
+        try ( Stream<Path> files = Files.walk( dbDir.toPath() ) )
+        {
+            files.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+        }
+    }
+
+
+    @Test
+    public void testPutGetRemove() throws Exception
+    {
+        table.put( partitionTxn, "1", "3" );
+        table.put( partitionTxn, "1", "2" );
+        table.put( partitionTxn, "1", "2" );
+        table.put( partitionTxn, "-5", "1" );
+
+        assertEquals( 3, table.count( partitionTxn ) );
+        assertEquals( 2, table.count( partitionTxn, "1" ) );
+        assertEquals( "2", table.get( partitionTxn, "1" ) );
+        assertTrue( table.has( partitionTxn, "1", "3" ) );
+        assertFalse( table.has( partitionTxn, "1", "4" ) );
+        assertTrue( table.hasGreaterOrEqual( partitionTxn, "0" ) );
+        assertFalse( table.hasGreaterOrEqual( partitionTxn, "2" ) );
+        assertTrue( table.hasLessOrEqual( partitionTxn, "-5" ) );
+
+        table.remove( partitionTxn, "1", "2" );
+        assertEquals( "3", table.get( partitionTxn, "1" ) );
+
+        table.remove( partitionTxn, "1" );
+        assertNull( table.get( partitionTxn, "1" ) );
+        assertEquals( 1, table.count( partitionTxn ) );
+    }
+
+
+    @Test
+    public void testCursorOrder() throws Exception
+    {
+        // The keys are sorted as numbers, not as strings
+        String[] keys = { "10", "-2", "9", "0", "-10" };
+
+        for ( String key : keys )
+        {
+            table.put( partitionTxn, key, key );
+        }
+
+        String[] expected = { "-10", "-2", "0", "9", "10" };
+        int i = 0;
+
+        try ( Cursor<Tuple<String, String>> cursor = table.cursor() )
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                assertEquals( expected[i++], cursor.get().getKey() );
+            }
+        }
+
+        assertEquals( expected.length, i );
+    }
+
+
+    @Test
+    public void testCommitAndAbort() throws Exception
+    {
+        LmdbPartitionWriteTxn writeTxn = new LmdbPartitionWriteTxn( environment );
+        table.put( writeTxn, "1", "1" );
+        writeTxn.abort();
+
+        assertEquals( 0, table.count( partitionTxn ) );
+
+        writeTxn = new LmdbPartitionWriteTxn( environment );
+        table.put( writeTxn, "1", "1" );
+
+        // A nested transaction is committed with its parent
+        LmdbPartitionWriteTxn nestedTxn = new LmdbPartitionWriteTxn( environment );
+        table.put( nestedTxn, "2", "2" );
+        nestedTxn.commit();
+        writeTxn.commit();
+
+        assertEquals( 2, table.count( partitionTxn ) );
+
+        // The data are still there once the environment has been reopened
+        environment.close();
+        environment = new LmdbEnvironment( dbDir, 16L * 1024L * 1024L, 4, 16, false );
+        table = createTable( environment );
+
+        assertEquals( "2", table.get( partitionTxn, "2" ) );
+    }
+
+
+    @Test
+    public void testLongValues() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < environment.getMaxKeySize(); i++ )
+        {
+            sb.append( i % 10 );
+        }
+
+        String longValue = sb.toString();
+        table.put( partitionTxn, "1", longValue );
+        table.put( partitionTxn, longValue, "1" );
+
+        assertTrue( table.has( partitionTxn, "1", longValue ) );
+        assertEquals( longValue, table.get( partitionTxn, "1" ) );
+        assertEquals( "1", table.get( partitionTxn, longValue ) );
+    }
+
+
+    /**
+     * Counts the Tuples of a cursor, and closes it
+     */
+    private static int count( Cursor<Tuple<String, String>> cursor ) throws Exception
+    {
+        int count = 0;
+
+        try
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                count++;
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return count;
+    }
+
+
+    @Test
+    public void testCursorsShareReadSnapshot() throws Exception
+    {
+        table.put( partitionTxn, "1", "1" );
+
+        LmdbPartitionReadTxn readTxn = new LmdbPartitionReadTxn( environment );
+        Cursor<Tuple<String, String>> first = table.cursor( readTxn, "1" );
+
+        // The transaction is closed before its cursors are read, as the search engine does
+        readTxn.close();
+        assertTrue( readTxn.isClosed() );
+
+        table.put( partitionTxn, "1", "2" );
+
+        // The cursors and the reads of the operation still see the same snapshot
+        Cursor<Tuple<String, String>> second = table.cursor( readTxn, "1" );
+        assertEquals( 1, table.count( readTxn, "1" ) );
+        assertEquals( 1, count( first ) );
+        assertEquals( 1, count( second ) );
+
+        // The snapshot is released with the last cursor
+        assertNull( readTxn.getTxn() );
+        assertEquals( 2, table.count( readTxn, "1" ) );
+        assertEquals( 2, count( table.cursor( readTxn, "1" ) ) );
+    }
+}
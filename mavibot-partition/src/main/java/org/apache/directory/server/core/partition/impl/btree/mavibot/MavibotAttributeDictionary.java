@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.mavibot;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.mavibot.btree.BTree;
+import org.apache.directory.mavibot.btree.BTreeFactory;
+import org.apache.directory.mavibot.btree.RecordManager;
+import org.apache.directory.mavibot.btree.Tuple;
+import org.apache.directory.mavibot.btree.TupleCursor;
+import org.apache.directory.mavibot.btree.exception.BTreeAlreadyManagedException;
+import org.apache.directory.mavibot.btree.exception.KeyNotFoundException;
+import org.apache.directory.mavibot.btree.serializer.IntSerializer;
+import org.apache.directory.mavibot.btree.serializer.StringSerializer;
+import org.apache.directory.server.xdbm.AttributeDictionary;
+
+
+/**
+ * The attribute dictionary of a Mavibot partition, stored in a BTree of its record manager,
+ * associating the ids with the OIDs. A new id is written before the entry using it, as
+ * each Mavibot update is written immediately.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MavibotAttributeDictionary extends AttributeDictionary
+{
+    /** The name of the BTree storing the dictionary */
+    static final String DICTIONARY_TREE = "attributeDictionary";
+
+    /** The BTree storing the dictionary */
+    private final BTree<Integer, String> bt;
+
+
+    /**
+     * Creates the dictionary, and reads the ids it already contains.
+     *
+     * @param schemaManager The schema manager
+     * @param recordMan The record manager of the partition
+     * @throws IOException If the dictionary can't be read or created
+     */
+    public MavibotAttributeDictionary( SchemaManager schemaManager, RecordManager recordMan ) throws IOException
+    {
+        super( schemaManager );
+
+        BTree<Integer, String> tree = recordMan.getManagedTree( DICTIONARY_TREE );
+
+        if ( tree == null )
+        {
+            tree = BTreeFactory.createPersistedBTree( DICTIONARY_TREE, IntSerializer.INSTANCE,
+                StringSerializer.INSTANCE, false );
+
+            try
+            {
+                recordMan.manage( tree );
+            }
+            catch ( BTreeAlreadyManagedException e )
+            {
+                // should never happen
+                throw new RuntimeException( e );
+            }
+        }
+
+        bt = tree;
+
+        List<String> oids = new ArrayList<>();
+        TupleCursor<Integer, String> cursor = null;
+
+        try
+        {
+            cursor = bt.browse();
+
+            while ( cursor.hasNext() )
+            {
+                Tuple<Integer, String> tuple = cursor.next();
+
+                while ( oids.size() <= tuple.getKey() )
+                {
+                    oids.add( null );
+                }
+
+                oids.set( tuple.getKey(), tuple.getValue() );
+            }
+        }
+        catch ( KeyNotFoundException knfe )
+        {
+            throw new IOException( knfe.getMessage(), knfe );
+        }
+        finally
+        {
+            if ( cursor != null )
+            {
+                cursor.close();
+            }
+        }
+
+        load( oids );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void store( int id, String oid ) throws IOException
+    {
+        bt.insert( id, oid );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return DICTIONARY_TREE;
+    }
+}
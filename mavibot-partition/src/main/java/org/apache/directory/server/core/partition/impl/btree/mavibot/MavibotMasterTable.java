@@ -21,12 +21,17 @@ package org.apache.directory.server.core.partition.impl.btree.mavibot;
 
 
 import java.io.IOException;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.mavibot.btree.RecordManager;
 import org.apache.directory.mavibot.btree.serializer.StringSerializer;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.AttributeDictionary;
 import org.apache.directory.server.xdbm.MasterTable;
 
 
@@ -43,6 +48,13 @@ public class MavibotMasterTable extends MavibotTable<String, Entry> implements M
         super( recordMan, schemaManager, name, StringSerializer.INSTANCE, new MavibotEntrySerializer(), false, cacheSize );
     }
 
+    public MavibotMasterTable( RecordManager recordMan, SchemaManager schemaManager, String name, int cacheSize,
+        AttributeDictionary dictionary ) throws IOException
+    {
+        super( recordMan, schemaManager, name, StringSerializer.INSTANCE, new MavibotEntrySerializer( dictionary ),
+            false, cacheSize );
+    }
+
     public MavibotMasterTable( RecordManager recordMan, SchemaManager schemaManager, String name )
         throws IOException
     {
@@ -55,4 +67,18 @@ public class MavibotMasterTable extends MavibotTable<String, Entry> implements M
     {
         return UUID.randomUUID().toString();
     }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The projection is not supported : the whole entry is returned. Mavibot keeps the
+     * decoded values in the pages of its cache, a partial entry would be returned to the
+     * next reads. The partition caches the whole entry, and copies its projected attributes.
+     */
+    @Override
+    public Entry get( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes ) throws LdapException
+    {
+        return get( partitionTxn, id );
+    }
 }
@@ -30,7 +30,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.Tuple;
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -44,31 +43,20 @@ import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.mavibot.btree.RecordManager;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
-import org.apache.directory.server.core.api.entry.ClonedServerEntry;
-import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
-import org.apache.directory.server.core.api.interceptor.context.OperationContext;
-import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AttributeDictionary;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
-import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
 import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
 import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
-import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-
 
 /**
  * A Mavibot partition
@@ -94,9 +82,6 @@ public class MavibotPartition extends AbstractBTreePartition
 
     private RecordManager recordMan;
 
-    /** the entry cache */
-    private Cache< String, Entry > entryCache;
-
 
     public MavibotPartition( SchemaManager schemaManager, DnFactory dnFactory )
     {
@@ -136,14 +121,7 @@ public class MavibotPartition extends AbstractBTreePartition
         if ( !initialized )
         {
             // setup optimizer and registries for parent
-            if ( !isOptimizerEnabled() )
-            {
-                setOptimizer( new NoOpOptimizer() );
-            }
-            else
-            {
-                setOptimizer( new DefaultOptimizer( this ) );
-            }
+            setOptimizer( createOptimizer() );
 
             EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
             CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
@@ -177,7 +155,8 @@ public class MavibotPartition extends AbstractBTreePartition
 
             try
             {
-                master = new MavibotMasterTable( recordMan, schemaManager, "master", cacheSize );
+                AttributeDictionary dictionary = new MavibotAttributeDictionary( schemaManager, recordMan );
+                master = new MavibotMasterTable( recordMan, schemaManager, "master", cacheSize, dictionary );
             }
             catch ( IOException ioe )
             {
@@ -229,8 +208,6 @@ public class MavibotPartition extends AbstractBTreePartition
                         deleteUnusedIndexFiles( allIndices, allIndexDbFiles );
             */
 
-            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
-
             // We are done !
             initialized = true;
         }
@@ -316,13 +293,6 @@ public class MavibotPartition extends AbstractBTreePartition
             LOG.error( I18n.err( I18n.ERR_127 ), t );
             errors.addThrowable( t );
         }
-        finally
-        {
-            if ( entryCache != null )
-            {
-                entryCache.invalidateAll();
-            }
-        }
 
         if ( errors.size() > 0 )
         {
@@ -437,77 +407,6 @@ public class MavibotPartition extends AbstractBTreePartition
         return recordMan;
     }
 
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Entry lookupCache( String id )
-    {
-        return ( entryCache != null ) ? entryCache.getIfPresent( id ) : null;
-    }
-
-
-    @Override
-    public void addToCache( String id, Entry entry )
-    {
-        if ( entryCache == null )
-        {
-            return;
-        }
-
-        if ( entry instanceof ClonedServerEntry )
-        {
-            entry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
-        }
-
-        entryCache.put( id, entry );
-    }
-
-
-    @Override
-    public void updateCache( OperationContext opCtx )
-    {
-        if ( entryCache == null )
-        {
-            return;
-        }
-
-        try
-        {
-            if ( opCtx instanceof ModifyOperationContext )
-            {
-                // replace the entry
-                ModifyOperationContext modCtx = ( ModifyOperationContext ) opCtx;
-                Entry entry = modCtx.getAlteredEntry();
-                String id = entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
-
-                if ( entry instanceof ClonedServerEntry )
-                {
-                    entry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
-                }
-
-                entryCache.put( id, entry );
-            }
-            else if ( ( opCtx instanceof MoveOperationContext ) || ( opCtx instanceof MoveAndRenameOperationContext )
-                || ( opCtx instanceof RenameOperationContext ) )
-            {
-                // clear the cache it is not worth updating all the children
-                entryCache.invalidateAll();
-            }
-            else if ( opCtx instanceof DeleteOperationContext )
-            {
-                // delete the entry
-                DeleteOperationContext delCtx = ( DeleteOperationContext ) opCtx;
-                entryCache.invalidate( delCtx.getEntry().get( SchemaConstants.ENTRY_UUID_AT ).getString() );
-            }
-        }
-        catch ( LdapException e )
-        {
-            LOG.warn( "Failed to update entry cache", e );
-        }
-    }
-
     
     /**
      * @return The set of system and user indexes
@@ -0,0 +1,486 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.event.DirectoryListenerAdapter;
+import org.apache.directory.server.core.api.event.EventService;
+import org.apache.directory.server.core.api.event.NotificationCriteria;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+
+/**
+ * A cache of the encoded SearchResultEntry responses. Many clients read the same entries
+ * again and again, with the same attributes : instead of encoding the entry each time, we
+ * keep its encoded form, and only change the message ID when we send it.
+ * <br>
+ * The encoded entry depends on the entry itself, on the requested attributes, and on the
+ * user, as the access control may hide some attributes. The key is built from the entry's
+ * entryUUID and entryCSN, read in the original entry before the attributes have been
+ * filtered, the requested attributes and the authenticated user. A modified entry gets a new
+ * entryCSN, so its old encoded form is never used again, and is eventually evicted.
+ * <br>
+ * The access control of an entry also depends on the subentries and on the groups, which are
+ * not part of the key : the whole cache is cleared when one of them is modified.
+ * <br>
+ * We don't cache the entries when some operational attributes are requested, as some of them
+ * are computed, like numSubordinates, and may change without the entryCSN being modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EncodedResponseCache
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( EncodedResponseCache.class );
+
+    /** The ASN.1 tags of the LdapMessage envelope */
+    private static final byte SEQUENCE_TAG = 0x30;
+    private static final byte INTEGER_TAG = 0x02;
+
+    /** The filter selecting the entries which may change the access control of other entries */
+    private static final String ACCESS_CONTROL_FILTER = "(|(objectClass=subentry)(objectClass=groupOfNames)"
+        + "(objectClass=groupOfUniqueNames))";
+
+    /** The codec used to encode the responses */
+    private final LdapApiService codec;
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The encoded protocolOp of the responses, without the message ID */
+    private final Cache<String, byte[]> responses;
+
+    /** The event service we are registered on, if any */
+    private EventService eventService;
+
+    /** The listener clearing the cache when the access control may have changed */
+    private final AccessControlListener listener = new AccessControlListener();
+
+
+    /**
+     * Creates a new instance of EncodedResponseCache
+     *
+     * @param codec The codec used to encode the responses
+     * @param schemaManager The schema manager
+     * @param size The maximum number of cached responses
+     */
+    public EncodedResponseCache( LdapApiService codec, SchemaManager schemaManager, int size )
+    {
+        this.codec = codec;
+        this.schemaManager = schemaManager;
+        responses = Caffeine.newBuilder().maximumSize( size ).recordStats().build();
+    }
+
+
+    /**
+     * Registers the cache on the event service, to be cleared when a subentry or a group
+     * is modified.
+     *
+     * @param eventService The event service
+     * @throws Exception If the listener can't be registered
+     */
+    public void register( EventService eventService ) throws Exception
+    {
+        NotificationCriteria criteria = new NotificationCriteria( schemaManager );
+        criteria.setBase( Dn.ROOT_DSE );
+        criteria.setScope( SearchScope.SUBTREE );
+        criteria.setFilter( ACCESS_CONTROL_FILTER );
+
+        eventService.addListener( listener, criteria );
+        this.eventService = eventService;
+    }
+
+
+    /**
+     * Unregisters the cache from the event service, and clears it.
+     */
+    public void unregister()
+    {
+        if ( eventService != null )
+        {
+            eventService.removeListener( listener );
+            eventService = null;
+        }
+
+        clear();
+    }
+
+
+    /**
+     * Computes the key of the response for an entry.
+     *
+     * @param session The session the entry is sent on
+     * @param req The search request
+     * @param entry The entry, as returned by the search cursor
+     * @return The key, or null if the response should not be cached
+     */
+    public String getKey( LdapSession session, SearchRequest req, Entry entry )
+    {
+        if ( !( entry instanceof ClonedServerEntry ) || ( entry.get( SchemaConstants.REF_AT ) != null ) )
+        {
+            return null;
+        }
+
+        Entry originalEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        Attribute uuid = originalEntry.get( SchemaConstants.ENTRY_UUID_AT );
+        Attribute csn = originalEntry.get( SchemaConstants.ENTRY_CSN_AT );
+        CoreSession coreSession = session.getCoreSession();
+
+        if ( ( uuid == null ) || ( csn == null ) || ( coreSession == null ) )
+        {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append( uuid.getString() ).append( '|' ).append( csn.getString() ).append( '|' );
+        sb.append( entry.getDn().getName() ).append( '|' ).append( req.getTypesOnly() );
+
+        for ( String attribute : req.getAttributes() )
+        {
+            if ( !isUserAttribute( attribute ) )
+            {
+                return null;
+            }
+
+            sb.append( '|' ).append( attribute );
+        }
+
+        LdapPrincipal principal = coreSession.getEffectivePrincipal();
+        sb.append( "|#" ).append( coreSession.getDirectoryService().isPasswordHidden() );
+
+        if ( principal != null )
+        {
+            sb.append( '|' ).append( principal.getDn().getNormName() );
+            sb.append( '|' ).append( principal.getAuthenticationLevel() );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Tells if a requested attribute is '*', '1.1' or a user attribute
+     */
+    private boolean isUserAttribute( String attribute )
+    {
+        if ( SchemaConstants.ALL_USER_ATTRIBUTES.equals( attribute )
+            || SchemaConstants.NO_ATTRIBUTE.equals( attribute ) )
+        {
+            return true;
+        }
+
+        AttributeType attributeType = schemaManager.getAttributeType( attribute );
+
+        return ( attributeType != null ) && attributeType.isUser();
+    }
+
+
+    /**
+     * Gets a cached response, with its message ID set.
+     *
+     * @param key The response key
+     * @param messageId The message ID of the response
+     * @return The encoded response, ready to be written, or null if it's not cached
+     */
+    public IoBuffer get( String key, int messageId )
+    {
+        byte[] protocolOp = responses.getIfPresent( key );
+
+        if ( protocolOp == null )
+        {
+            return null;
+        }
+
+        return wrap( messageId, protocolOp );
+    }
+
+
+    /**
+     * Encodes a response and caches it.
+     *
+     * @param key The response key
+     * @param response The response to encode, without any control
+     * @return The encoded response, ready to be written, or null if it can't be cached
+     */
+    public IoBuffer put( String key, SearchResultEntry response )
+    {
+        if ( !response.getControls().isEmpty() )
+        {
+            return null;
+        }
+
+        byte[] protocolOp;
+
+        try
+        {
+            ByteBuffer encoded = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, response );
+            protocolOp = getProtocolOp( encoded.array() );
+        }
+        catch ( EncoderException | RuntimeException e )
+        {
+            LOG.debug( "Cannot encode the entry {} : {}", response.getObjectName(), e.getMessage() );
+
+            return null;
+        }
+
+        responses.put( key, protocolOp );
+
+        return wrap( response.getMessageId(), protocolOp );
+    }
+
+
+    /**
+     * Drops all the cached responses
+     */
+    public void clear()
+    {
+        responses.invalidateAll();
+    }
+
+
+    /**
+     * @return The number of entries found in the cache, divided by the number of entries sent
+     */
+    public double getHitRatio()
+    {
+        return responses.stats().hitRate();
+    }
+
+
+    /**
+     * Extracts the protocolOp of an encoded LdapMessage : the bytes following the message ID
+     *
+     * <pre>
+     * LDAPMessage ::= SEQUENCE {
+     *     messageID       MessageID,
+     *     protocolOp      CHOICE { ... },
+     *     controls        [0] Controls OPTIONAL }
+     * </pre>
+     */
+    /* No qualifier */static byte[] getProtocolOp( byte[] message )
+    {
+        if ( message[0] != SEQUENCE_TAG )
+        {
+            throw new IllegalArgumentException( "Not an LdapMessage" );
+        }
+
+        int pos = 1;
+        int length = message[pos++] & 0xFF;
+
+        if ( length > 0x80 )
+        {
+            // Long form
+            int nbBytes = length & 0x7F;
+            length = 0;
+
+            for ( int i = 0; i < nbBytes; i++ )
+            {
+                length = ( length << 8 ) | ( message[pos++] & 0xFF );
+            }
+        }
+
+        int end = pos + length;
+
+        if ( message[pos++] != INTEGER_TAG )
+        {
+            throw new IllegalArgumentException( "No message ID" );
+        }
+
+        int idLength = message[pos++] & 0xFF;
+        pos += idLength;
+
+        byte[] protocolOp = new byte[end - pos];
+        System.arraycopy( message, pos, protocolOp, 0, protocolOp.length );
+
+        return protocolOp;
+    }
+
+
+    /**
+     * Builds an LdapMessage from a message ID and an encoded protocolOp
+     */
+    /* No qualifier */static IoBuffer wrap( int messageId, byte[] protocolOp )
+    {
+        byte[] id = encodeInteger( messageId );
+        int contentLength = 2 + id.length + protocolOp.length;
+        byte[] length = encodeLength( contentLength );
+
+        IoBuffer buffer = IoBuffer.allocate( 1 + length.length + contentLength );
+        buffer.put( SEQUENCE_TAG );
+        buffer.put( length );
+        buffer.put( INTEGER_TAG );
+        buffer.put( ( byte ) id.length );
+        buffer.put( id );
+        buffer.put( protocolOp );
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    /**
+     * Encodes a positive integer in the minimal number of bytes, the first bit being the sign
+     */
+    private static byte[] encodeInteger( int value )
+    {
+        int nbBytes = 1;
+
+        while ( ( nbBytes < 4 ) && ( ( value >> ( nbBytes * 8 - 1 ) ) != 0 ) )
+        {
+            nbBytes++;
+        }
+
+        if ( ( nbBytes == 4 ) && ( value < 0 ) )
+        {
+            // Can't happen, the message ID is in [0, 2^31-1]
+            throw new IllegalArgumentException( "Negative message ID" );
+        }
+
+        byte[] bytes = new byte[nbBytes];
+
+        for ( int i = nbBytes - 1; i >= 0; i-- )
+        {
+            bytes[i] = ( byte ) value;
+            value >>= 8;
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Encodes a BER length, using the short form when possible
+     */
+    private static byte[] encodeLength( int length )
+    {
+        if ( length < 0x80 )
+        {
+            return new byte[]
+                { ( byte ) length };
+        }
+
+        int nbBytes = ( length > 0xFFFFFF ) ? 4 : ( ( length > 0xFFFF ) ? 3 : ( ( length > 0xFF ) ? 2 : 1 ) );
+        byte[] bytes = new byte[nbBytes + 1];
+        bytes[0] = ( byte ) ( 0x80 | nbBytes );
+
+        for ( int i = nbBytes; i > 0; i-- )
+        {
+            bytes[i] = ( byte ) length;
+            length >>>= 8;
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "EncodedResponseCache : " + responses.estimatedSize() + " responses, " + responses.stats().hitCount()
+            + " hits, " + responses.stats().missCount() + " misses";
+    }
+
+    /**
+     * Clears the cache when a subentry or a group is added, modified or removed. This must be
+     * done before the operation returns, so the listener is synchronous.
+     */
+    private class AccessControlListener extends DirectoryListenerAdapter
+    {
+        @Override
+        public void entryAdded( AddOperationContext addContext )
+        {
+            clear();
+        }
+
+
+        @Override
+        public void entryDeleted( DeleteOperationContext deleteContext )
+        {
+            clear();
+        }
+
+
+        @Override
+        public void entryModified( ModifyOperationContext modifyContext )
+        {
+            clear();
+        }
+
+
+        @Override
+        public void entryRenamed( RenameOperationContext renameContext )
+        {
+            clear();
+        }
+
+
+        @Override
+        public void entryMoved( MoveOperationContext moveContext )
+        {
+            clear();
+        }
+
+
+        @Override
+        public void entryMovedAndRenamed( MoveAndRenameOperationContext moveAndRenameContext )
+        {
+            clear();
+        }
+
+
+        @Override
+        public boolean isSynchronous()
+        {
+            return true;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
 import org.apache.directory.api.ldap.model.message.extended.NoticeOfDisconnect;
+import org.apache.directory.server.i18n.I18n;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.FilterEvent;
@@ -132,6 +133,16 @@ class LdapProtocolHandler extends DemuxingIoHandler
         // Abandon all the requests
         ldapSession.abandonAllOutstandingRequests();
 
+        // Close the cursors of the paged searches the client hasn't completed
+        try
+        {
+            ldapSession.closeAllPagedSearches();
+        }
+        catch ( Exception e )
+        {
+            LOG.error( I18n.err( I18n.ERR_172, e.getLocalizedMessage() ) );
+        }
+
         if ( !ldapSession.getIoSession().isClosing() || ldapSession.getIoSession().isConnected() )
         {
             try
@@ -152,6 +163,14 @@ class LdapProtocolHandler extends DemuxingIoHandler
     @Override
     public void messageSent( IoSession session, Object message ) throws Exception
     {
+        LdapSession ldapSession = ldapServer.getLdapSessionManager().getLdapSession( session );
+
+        if ( ldapSession != null )
+        {
+            // A search may be waiting for the client to read its responses
+            ldapSession.messageWritten();
+        }
+
         // Do nothing : we have to ignore this message, otherwise we get an exception,
         // thanks to the way MINA 2 works ...
         if ( message instanceof IoBuffer )
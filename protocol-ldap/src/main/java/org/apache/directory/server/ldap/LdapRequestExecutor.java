@@ -0,0 +1,688 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.message.AbandonRequest;
+import org.apache.directory.api.ldap.model.message.AbandonableRequest;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.UnbindRequest;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The Executor used by the LdapServer to process the decoded requests. Depending on its
+ * mode, the requests are processed by :
+ * <ul>
+ *   <li>a single pool of threads, shared by all the operations (the default)</li>
+ *   <li>a pool of threads per type of operation : binds, searches, writes (add, modify,
+ *   delete and moddn) and the other operations, so that slow operations of one type don't
+ *   starve the other ones</li>
+ *   <li>a new virtual thread per request, when the JVM supports them (Java 21 and above).
+ *   Otherwise, we fall back to a single pool</li>
+ * </ul>
+ * The number of waiting requests and the time they have waited for a thread are kept for
+ * each pool, to help sizing them.
+ * <br>
+ * The number of requests of a session executed at the same time can be limited. The
+ * other requests of the session wait in the session, in the order they have been received,
+ * until one of the running requests is completed. As a session never has more than this
+ * number of requests in the pools, the threads are shared between the sessions instead
+ * of being taken by the one sending the most requests. The abandon and unbind requests
+ * are never delayed, and a waiting request which is abandoned is never executed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapRequestExecutor implements Executor
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LdapRequestExecutor.class );
+
+    /** The pool names */
+    public static final String DEFAULT_POOL = "default";
+    public static final String BIND_POOL = "bind";
+    public static final String SEARCH_POOL = "search";
+    public static final String WRITE_POOL = "write";
+    public static final String OTHER_POOL = "other";
+
+    /**
+     * The ways the requests can be executed
+     */
+    public enum Mode
+    {
+        /** A single pool of threads */
+        POOL,
+
+        /** A pool of threads per type of operation */
+        PER_OPERATION,
+
+        /** A virtual thread per request */
+        VIRTUAL
+    }
+
+    /** The time an idle thread is kept in a pool */
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    /** The mode really used */
+    private final Mode mode;
+
+    /** The pools, by name */
+    private final Map<String, Pool> pools = new LinkedHashMap<>();
+
+    /** The pool used when there is only one */
+    private final Pool defaultPool;
+
+    /** The maximum number of requests of a session executed at the same time, 0 if not limited */
+    private final int maxInFlight;
+
+    /** The number of requests which have waited for a running request of their session */
+    private final AtomicLong delayedCount = new AtomicLong();
+
+    /** The metrics the waiting times are recorded in, if any */
+    private volatile OperationMetrics operationMetrics;
+
+    /** The key of the window stored in each session */
+    private static final AttributeKey WINDOW_KEY = new AttributeKey( LdapRequestExecutor.class, "window" );
+
+    /**
+     * An executor, with its statistics
+     */
+    private static final class Pool
+    {
+        private final String name;
+
+        private final ExecutorService executor;
+
+        /** The number of submitted requests not yet started */
+        private final AtomicLong queued = new AtomicLong();
+
+        /** The number of started requests */
+        private final AtomicLong started = new AtomicLong();
+
+        /** The total and maximum time the requests have waited for a thread, in nanoseconds */
+        private final AtomicLong totalWait = new AtomicLong();
+        private final AtomicLong maxWait = new AtomicLong();
+
+
+        private Pool( String name, ExecutorService executor )
+        {
+            this.name = name;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * The requests of a session : the number of running ones, and the ones waiting for
+     * a running request to be completed
+     */
+    private static final class Window
+    {
+        private int running;
+        private final ArrayDeque<IoFilterEvent> waiting = new ArrayDeque<>();
+    }
+
+
+    /**
+     * Creates a new instance of LdapRequestExecutor
+     *
+     * @param mode The way the requests are executed
+     * @param nbThreads The number of threads in each pool
+     */
+    public LdapRequestExecutor( Mode mode, int nbThreads )
+    {
+        this( mode, nbThreads, 0 );
+    }
+
+
+    /**
+     * Creates a new instance of LdapRequestExecutor
+     *
+     * @param mode The way the requests are executed
+     * @param nbThreads The number of threads in each pool
+     * @param maxInFlight The maximum number of requests of a session executed at the same
+     * time. A negative or null value removes the limit
+     */
+    public LdapRequestExecutor( Mode mode, int nbThreads, int maxInFlight )
+    {
+        this.maxInFlight = Math.max( 0, maxInFlight );
+        ExecutorService virtualExecutor = null;
+
+        if ( mode == Mode.VIRTUAL )
+        {
+            virtualExecutor = createVirtualThreadExecutor();
+
+            if ( virtualExecutor == null )
+            {
+                LOG.warn( "Virtual threads are not supported by this JVM, using a pool of {} threads", nbThreads );
+                mode = Mode.POOL;
+            }
+        }
+
+        this.mode = mode;
+
+        switch ( mode )
+        {
+            case PER_OPERATION:
+                pools.put( BIND_POOL, new Pool( BIND_POOL, createThreadPool( BIND_POOL, nbThreads ) ) );
+                pools.put( SEARCH_POOL, new Pool( SEARCH_POOL, createThreadPool( SEARCH_POOL, nbThreads ) ) );
+                pools.put( WRITE_POOL, new Pool( WRITE_POOL, createThreadPool( WRITE_POOL, nbThreads ) ) );
+                pools.put( OTHER_POOL, new Pool( OTHER_POOL, createThreadPool( OTHER_POOL, nbThreads ) ) );
+                defaultPool = pools.get( OTHER_POOL );
+                break;
+
+            case VIRTUAL:
+                defaultPool = new Pool( DEFAULT_POOL, virtualExecutor );
+                pools.put( DEFAULT_POOL, defaultPool );
+                break;
+
+            default:
+                defaultPool = new Pool( DEFAULT_POOL, createThreadPool( DEFAULT_POOL, nbThreads ) );
+                pools.put( DEFAULT_POOL, defaultPool );
+                break;
+        }
+    }
+
+
+    /**
+     * Creates a pool of threads. The threads are stopped when they have been idle for a while.
+     */
+    private static ExecutorService createThreadPool( String poolName, int nbThreads )
+    {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( nbThreads, nbThreads, KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> new Thread( runnable, "ldap-" + poolName + "-" + threadNumber.incrementAndGet() ) );
+        executor.allowCoreThreadTimeOut( true );
+
+        return executor;
+    }
+
+
+    /**
+     * Creates an executor starting a virtual thread per task, using reflection as we
+     * are compiled for Java 8.
+     *
+     * @return The executor, or null if the JVM does not support virtual threads
+     */
+    private static ExecutorService createVirtualThreadExecutor()
+    {
+        try
+        {
+            Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return ( ExecutorService ) method.invoke( null );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Parses a mode name, case insensitive, with '-' or '_' between the words.
+     *
+     * @param name The mode name, like "pool", "per-operation" or "virtual"
+     * @return The mode, or {@link Mode#POOL} if the name is null or empty
+     * @throws IllegalArgumentException If the name is not a known mode
+     */
+    public static Mode parseMode( String name )
+    {
+        if ( ( name == null ) || name.trim().isEmpty() )
+        {
+            return Mode.POOL;
+        }
+
+        try
+        {
+            return Mode.valueOf( name.trim().replace( '-', '_' ).toUpperCase( Locale.ROOT ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new IllegalArgumentException( "Unknown execution mode " + name
+                + ", expected pool, per-operation or virtual", iae );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute( Runnable command )
+    {
+        if ( ( maxInFlight == 0 ) || !( command instanceof IoFilterEvent ) )
+        {
+            submit( command, null );
+
+            return;
+        }
+
+        IoFilterEvent event = ( IoFilterEvent ) command;
+        Object message = event.getParameter();
+
+        if ( message instanceof AbandonRequest )
+        {
+            if ( !abandonWaiting( event.getSession(), ( ( AbandonRequest ) message ).getAbandoned() ) )
+            {
+                // The abandoned request is running, or already completed
+                submit( command, null );
+            }
+
+            return;
+        }
+
+        if ( message instanceof UnbindRequest )
+        {
+            submit( command, null );
+
+            return;
+        }
+
+        Window window = getWindow( event.getSession() );
+
+        synchronized ( window )
+        {
+            if ( window.running >= maxInFlight )
+            {
+                delayedCount.incrementAndGet();
+                window.waiting.add( event );
+
+                return;
+            }
+
+            window.running++;
+        }
+
+        submit( command, window );
+    }
+
+
+    /**
+     * Gets the window of a session, creating it if needed
+     */
+    private static Window getWindow( IoSession session )
+    {
+        Window window = ( Window ) session.getAttribute( WINDOW_KEY );
+
+        if ( window == null )
+        {
+            Window newWindow = new Window();
+            window = ( Window ) session.setAttributeIfAbsent( WINDOW_KEY, newWindow );
+
+            if ( window == null )
+            {
+                window = newWindow;
+            }
+        }
+
+        return window;
+    }
+
+
+    /**
+     * Abandons a request waiting in the window of its session. There is no response to an
+     * abandon request, so we don't need to execute it if we have found the request.
+     *
+     * @return <code>true</code> if the request was waiting
+     */
+    private static boolean abandonWaiting( IoSession session, int messageId )
+    {
+        Window window = ( Window ) session.getAttribute( WINDOW_KEY );
+
+        if ( window == null )
+        {
+            return false;
+        }
+
+        synchronized ( window )
+        {
+            Iterator<IoFilterEvent> iterator = window.waiting.iterator();
+
+            while ( iterator.hasNext() )
+            {
+                Object message = iterator.next().getParameter();
+
+                if ( ( message instanceof Request ) && ( ( ( Request ) message ).getMessageId() == messageId ) )
+                {
+                    iterator.remove();
+
+                    if ( message instanceof AbandonableRequest )
+                    {
+                        ( ( AbandonableRequest ) message ).abandon();
+                    }
+
+                    LOG.debug( "Request {} abandoned before being executed", messageId );
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Called when a request of a session is completed : the next waiting request, if any,
+     * takes its place. The abandoned requests are skipped, and all the waiting requests are
+     * dropped if the session is closing.
+     */
+    private void completed( Window window, IoSession session )
+    {
+        IoFilterEvent next = null;
+
+        synchronized ( window )
+        {
+            if ( session.isClosing() )
+            {
+                window.waiting.clear();
+            }
+
+            while ( !window.waiting.isEmpty() )
+            {
+                IoFilterEvent event = window.waiting.poll();
+                Object message = event.getParameter();
+
+                if ( !( message instanceof AbandonableRequest ) || !( ( AbandonableRequest ) message ).isAbandoned() )
+                {
+                    next = event;
+                    break;
+                }
+            }
+
+            if ( next == null )
+            {
+                window.running--;
+
+                return;
+            }
+        }
+
+        try
+        {
+            submit( next, window );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            // We are being shut down
+            synchronized ( window )
+            {
+                window.running--;
+            }
+        }
+    }
+
+
+    /**
+     * Submits a task to its pool. If the task uses a slot of a session window, the slot is
+     * released when it's completed.
+     */
+    private void submit( Runnable command, Window window )
+    {
+        Pool pool = getPool( command );
+        long submitted = System.nanoTime();
+        pool.queued.incrementAndGet();
+
+        try
+        {
+            pool.executor.execute( () ->
+            {
+                long wait = System.nanoTime() - submitted;
+                pool.queued.decrementAndGet();
+                pool.started.incrementAndGet();
+                pool.totalWait.addAndGet( wait );
+                pool.maxWait.accumulateAndGet( wait, Math::max );
+
+                OperationMetrics metrics = operationMetrics;
+
+                if ( metrics != null )
+                {
+                    metrics.recordQueueWait( pool.name, wait );
+                }
+
+                try
+                {
+                    command.run();
+                }
+                finally
+                {
+                    if ( window != null )
+                    {
+                        completed( window, ( ( IoFilterEvent ) command ).getSession() );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            pool.queued.decrementAndGet();
+
+            throw ree;
+        }
+    }
+
+
+    /**
+     * Selects the pool for a MINA event, using the request it carries
+     */
+    private Pool getPool( Runnable command )
+    {
+        if ( mode != Mode.PER_OPERATION )
+        {
+            return defaultPool;
+        }
+
+        Object message = ( command instanceof IoFilterEvent ) ? ( ( IoFilterEvent ) command ).getParameter() : null;
+
+        if ( message instanceof SearchRequest )
+        {
+            return pools.get( SEARCH_POOL );
+        }
+        else if ( message instanceof BindRequest )
+        {
+            return pools.get( BIND_POOL );
+        }
+        else if ( ( message instanceof AddRequest ) || ( message instanceof ModifyRequest )
+            || ( message instanceof DeleteRequest ) || ( message instanceof ModifyDnRequest ) )
+        {
+            return pools.get( WRITE_POOL );
+        }
+
+        return defaultPool;
+    }
+
+
+    /**
+     * Sets the metrics the time the requests wait for a thread is recorded in
+     *
+     * @param operationMetrics The metrics, or null to stop recording the waiting times
+     */
+    public void setOperationMetrics( OperationMetrics operationMetrics )
+    {
+        this.operationMetrics = operationMetrics;
+    }
+
+
+    /**
+     * @return The mode really used, which may differ from the requested one if virtual
+     * threads are not supported
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+
+    /**
+     * @return The maximum number of requests of a session executed at the same time, 0 if
+     * there is no limit
+     */
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+
+    /**
+     * @return The number of requests which have waited for another request of their session
+     * to be completed before being executed
+     */
+    public long getDelayedCount()
+    {
+        return delayedCount.get();
+    }
+
+
+    /**
+     * @return The names of the pools
+     */
+    public Set<String> getPoolNames()
+    {
+        return Collections.unmodifiableSet( pools.keySet() );
+    }
+
+
+    /**
+     * @param poolName The pool name
+     * @return The number of requests waiting for a thread in this pool
+     */
+    public long getQueueDepth( String poolName )
+    {
+        return getStatisticsPool( poolName ).queued.get();
+    }
+
+
+    /**
+     * @param poolName The pool name
+     * @return The number of requests started by this pool
+     */
+    public long getStartedCount( String poolName )
+    {
+        return getStatisticsPool( poolName ).started.get();
+    }
+
+
+    /**
+     * @param poolName The pool name
+     * @return The average time the requests have waited for a thread in this pool, in microseconds
+     */
+    public long getAverageWaitTime( String poolName )
+    {
+        Pool pool = getStatisticsPool( poolName );
+        long started = pool.started.get();
+
+        return ( started == 0L ) ? 0L : TimeUnit.NANOSECONDS.toMicros( pool.totalWait.get() / started );
+    }
+
+
+    /**
+     * @param poolName The pool name
+     * @return The longest time a request has waited for a thread in this pool, in microseconds
+     */
+    public long getMaxWaitTime( String poolName )
+    {
+        return TimeUnit.NANOSECONDS.toMicros( getStatisticsPool( poolName ).maxWait.get() );
+    }
+
+
+    private Pool getStatisticsPool( String poolName )
+    {
+        Pool pool = pools.get( poolName );
+
+        if ( pool == null )
+        {
+            throw new IllegalArgumentException( "Unknown pool " + poolName );
+        }
+
+        return pool;
+    }
+
+
+    /**
+     * Stops all the pools. The running requests are not interrupted.
+     */
+    public void shutdown()
+    {
+        for ( Pool pool : pools.values() )
+        {
+            pool.executor.shutdown();
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "LdapRequestExecutor (" ).append( mode ).append( ")" );
+
+        if ( maxInFlight > 0 )
+        {
+            sb.append( ", " ).append( maxInFlight ).append( " requests in flight per session, " );
+            sb.append( delayedCount.get() ).append( " delayed" );
+        }
+
+        for ( String poolName : pools.keySet() )
+        {
+            sb.append( "\n  " ).append( poolName );
+            sb.append( " : queued " ).append( getQueueDepth( poolName ) );
+            sb.append( ", started " ).append( getStartedCount( poolName ) );
+            sb.append( ", average wait " ).append( getAverageWaitTime( poolName ) ).append( "us" );
+            sb.append( ", max wait " ).append( getMaxWaitTime( poolName ) ).append( "us" );
+        }
+
+        return sb.toString();
+    }
+}
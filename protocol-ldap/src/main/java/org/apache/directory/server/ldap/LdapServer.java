@@ -23,6 +23,7 @@ package org.apache.directory.server.ldap;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -65,6 +66,8 @@ import org.apache.directory.server.core.security.CertificateUtil;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.handlers.LdapRequestHandler;
 import org.apache.directory.server.ldap.handlers.LdapResponseHandler;
+import org.apache.directory.server.ldap.handlers.controls.PagedSearchManager;
+import org.apache.directory.server.ldap.handlers.controls.VlvSearchContext;
 import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
 import org.apache.directory.server.ldap.handlers.request.AbandonRequestHandler;
 import org.apache.directory.server.ldap.handlers.request.AddRequestHandler;
@@ -106,7 +109,6 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
-import org.apache.mina.filter.executor.UnorderedThreadPoolExecutor;
 import org.apache.mina.handler.demux.MessageHandler;
 import org.apache.mina.transport.socket.AbstractSocketSessionConfig;
 import org.apache.mina.transport.socket.SocketAcceptor;
@@ -171,6 +173,60 @@ public class LdapServer extends DirectoryBackedService
     /** The maximum size for an incoming PDU */
     private int maxPDUSize = Integer.MAX_VALUE;
 
+    /** The default number of bytes queued on a session above which a search stops sending entries : 4 MB */
+    public static final long WRITE_HIGH_WATER_MARK_DEFAULT = 4L * 1024L * 1024L;
+
+    /** The default number of bytes queued on a session below which a paused search resumes : 1 MB */
+    public static final long WRITE_LOW_WATER_MARK_DEFAULT = 1024L * 1024L;
+
+    /** The number of queued bytes above which a search waits for the client to read its responses */
+    private long writeHighWaterMark = WRITE_HIGH_WATER_MARK_DEFAULT;
+
+    /** The number of queued bytes below which a paused search resumes */
+    private long writeLowWaterMark = WRITE_LOW_WATER_MARK_DEFAULT;
+
+    /** The way the decoded requests are executed */
+    private LdapRequestExecutor.Mode executionMode = LdapRequestExecutor.Mode.POOL;
+
+    /** The default maximum number of requests of a session executed at the same time */
+    public static final int MAX_IN_FLIGHT_REQUESTS_DEFAULT = 32;
+
+    /** The maximum number of requests of a session executed at the same time */
+    private int maxInFlightRequests = MAX_IN_FLIGHT_REQUESTS_DEFAULT;
+
+    /** The default number of encoded search result entries kept in memory */
+    public static final int ENCODED_RESPONSE_CACHE_SIZE_DEFAULT = 10000;
+
+    /** The number of encoded search result entries kept in memory, 0 if they are not cached */
+    private int encodedResponseCacheSize = ENCODED_RESPONSE_CACHE_SIZE_DEFAULT;
+
+    /** The cache of the encoded search result entries */
+    private EncodedResponseCache encodedResponseCache;
+
+    /** The maximum number of open paged search cursors, 0 if not limited */
+    private int pagedSearchMaxCursors = PagedSearchManager.DEFAULT_MAX_OPEN_CURSORS;
+
+    /** The time after which the cursor of an idle paged search is closed, in seconds */
+    private int pagedSearchIdleTimeout = PagedSearchManager.DEFAULT_IDLE_TIMEOUT;
+
+    /** The time after which an idle paged search is removed, in seconds */
+    private int pagedSearchMaxIdleTime = PagedSearchManager.DEFAULT_MAX_IDLE_TIME;
+
+    /** The manager of the paged search contexts */
+    private PagedSearchManager pagedSearchManager;
+
+    /** The default maximum number of notifications of a persistent search waiting to be sent */
+    public static final int PERSISTENT_SEARCH_QUEUE_SIZE_DEFAULT = 1000;
+
+    /** The maximum number of notifications of a persistent search waiting to be sent, 0 if not limited */
+    private int persistentSearchQueueSize = PERSISTENT_SEARCH_QUEUE_SIZE_DEFAULT;
+
+    /** The maximum number of entries of a Virtual List View list */
+    private int vlvMaxEntries = VlvSearchContext.DEFAULT_MAX_ENTRIES;
+
+    /** The executors processing the requests, one per transport */
+    private final List<LdapRequestExecutor> requestExecutors = new ArrayList<>();
+
     /** If LDAPS is activated : the external Keystore file, if defined */
     private String keystoreFile;
 
@@ -441,6 +497,17 @@ public class LdapServer extends DirectoryBackedService
         // Install the replication handler if we have one
         startReplicationProducer();
 
+        pagedSearchManager = new PagedSearchManager( pagedSearchMaxCursors, pagedSearchIdleTimeout,
+            pagedSearchMaxIdleTime );
+        pagedSearchManager.start();
+
+        if ( encodedResponseCacheSize > 0 )
+        {
+            encodedResponseCache = new EncodedResponseCache( getDirectoryService().getLdapCodecService(),
+                getDirectoryService().getSchemaManager(), encodedResponseCacheSize );
+            encodedResponseCache.register( getDirectoryService().getEventService() );
+        }
+
         for ( Transport transport : transports )
         {
             if ( !( transport instanceof TcpTransport ) )
@@ -467,8 +534,12 @@ public class LdapServer extends DirectoryBackedService
             // Now inject an ExecutorFilter for the write operations
             // We use the same number of thread than the number of IoProcessor
             // (NOTE : this has to be double checked)
+            LdapRequestExecutor requestExecutor = new LdapRequestExecutor( executionMode, transport.getNbThreads(),
+                maxInFlightRequests );
+            requestExecutor.setOperationMetrics( getDirectoryService().getOperationMetrics() );
+            requestExecutors.add( requestExecutor );
             ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new ExecutorFilter(
-                new UnorderedThreadPoolExecutor( transport.getNbThreads() ), IoEventType.MESSAGE_RECEIVED ) );
+                requestExecutor, IoEventType.MESSAGE_RECEIVED ) );
 
             /*
             // Trace all the incoming and outgoing message to the console
@@ -583,6 +654,25 @@ public class LdapServer extends DirectoryBackedService
             }
 
             stopConsumers();
+
+            for ( LdapRequestExecutor requestExecutor : requestExecutors )
+            {
+                requestExecutor.shutdown();
+            }
+
+            requestExecutors.clear();
+
+            if ( encodedResponseCache != null )
+            {
+                encodedResponseCache.unregister();
+                encodedResponseCache = null;
+            }
+
+            if ( pagedSearchManager != null )
+            {
+                pagedSearchManager.stop();
+                pagedSearchManager = null;
+            }
         }
         catch ( Exception e )
         {
@@ -1675,6 +1765,258 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * @return The way the decoded requests are executed
+     */
+    public LdapRequestExecutor.Mode getExecutionMode()
+    {
+        return executionMode;
+    }
+
+
+    /**
+     * Sets the way the decoded requests are executed : by a single pool of threads (the
+     * default), by a pool per type of operation, or by a virtual thread per request. This
+     * must be set before the server is started.
+     *
+     * @param executionMode The execution mode
+     */
+    public void setExecutionMode( LdapRequestExecutor.Mode executionMode )
+    {
+        this.executionMode = ( executionMode == null ) ? LdapRequestExecutor.Mode.POOL : executionMode;
+    }
+
+
+    /**
+     * @return The maximum number of requests of a session executed at the same time
+     */
+    public int getMaxInFlightRequests()
+    {
+        return maxInFlightRequests;
+    }
+
+
+    /**
+     * Sets the maximum number of requests of a session executed at the same time. The
+     * other requests of the session wait until one of them is completed, so that a client
+     * sending many asynchronous requests can't take all the threads. This must be set
+     * before the server is started.
+     *
+     * @param maxInFlightRequests The maximum number of requests. A negative or null value
+     * removes the limit
+     */
+    public void setMaxInFlightRequests( int maxInFlightRequests )
+    {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+
+    /**
+     * @return The number of encoded search result entries kept in memory
+     */
+    public int getEncodedResponseCacheSize()
+    {
+        return encodedResponseCacheSize;
+    }
+
+
+    /**
+     * Sets the number of encoded search result entries kept in memory, to be sent again
+     * without being encoded. This must be set before the server is started.
+     *
+     * @param encodedResponseCacheSize The number of entries, 0 to disable the cache
+     */
+    public void setEncodedResponseCacheSize( int encodedResponseCacheSize )
+    {
+        this.encodedResponseCacheSize = encodedResponseCacheSize;
+    }
+
+
+    /**
+     * @return The cache of the encoded search result entries, or null if it's disabled or
+     * the server is not started
+     */
+    public EncodedResponseCache getEncodedResponseCache()
+    {
+        return encodedResponseCache;
+    }
+
+
+    /**
+     * @return The maximum number of open paged search cursors
+     */
+    public int getPagedSearchMaxCursors()
+    {
+        return pagedSearchMaxCursors;
+    }
+
+
+    /**
+     * Sets the maximum number of paged search cursors kept open between two pages, for all
+     * the sessions. Above, the cursors of the least recently used searches are closed, and
+     * recreated when their next page is requested. This must be set before the server is
+     * started.
+     *
+     * @param pagedSearchMaxCursors The maximum number of cursors, 0 if not limited
+     */
+    public void setPagedSearchMaxCursors( int pagedSearchMaxCursors )
+    {
+        this.pagedSearchMaxCursors = pagedSearchMaxCursors;
+    }
+
+
+    /**
+     * @return The time after which the cursor of an idle paged search is closed, in seconds
+     */
+    public int getPagedSearchIdleTimeout()
+    {
+        return pagedSearchIdleTimeout;
+    }
+
+
+    /**
+     * Sets the time after which the cursor of a paged search whose next page has not been
+     * requested is closed. It will be recreated when the next page is requested. This must
+     * be set before the server is started.
+     *
+     * @param pagedSearchIdleTimeout The time in seconds, 0 to keep the cursors open
+     */
+    public void setPagedSearchIdleTimeout( int pagedSearchIdleTimeout )
+    {
+        this.pagedSearchIdleTimeout = pagedSearchIdleTimeout;
+    }
+
+
+    /**
+     * @return The time after which an idle paged search is removed, in seconds
+     */
+    public int getPagedSearchMaxIdleTime()
+    {
+        return pagedSearchMaxIdleTime;
+    }
+
+
+    /**
+     * Sets the time after which a paged search whose next page has not been requested is
+     * removed from its session. This must be set before the server is started.
+     *
+     * @param pagedSearchMaxIdleTime The time in seconds, 0 to keep the paged searches
+     */
+    public void setPagedSearchMaxIdleTime( int pagedSearchMaxIdleTime )
+    {
+        this.pagedSearchMaxIdleTime = pagedSearchMaxIdleTime;
+    }
+
+
+    /**
+     * @return The maximum number of notifications of a persistent search waiting to be
+     * sent to the client
+     */
+    public int getPersistentSearchQueueSize()
+    {
+        return persistentSearchQueueSize;
+    }
+
+
+    /**
+     * Sets the maximum number of notifications of a persistent search waiting to be sent
+     * to the client. A persistent search whose client does not read its notifications fast
+     * enough is ended with an adminLimitExceeded result, instead of filling the memory.
+     *
+     * @param persistentSearchQueueSize The maximum number of notifications, 0 if not limited
+     */
+    public void setPersistentSearchQueueSize( int persistentSearchQueueSize )
+    {
+        this.persistentSearchQueueSize = persistentSearchQueueSize;
+    }
+
+
+    /**
+     * @return The maximum number of entries of a Virtual List View list
+     */
+    public int getVlvMaxEntries()
+    {
+        return vlvMaxEntries;
+    }
+
+
+    /**
+     * Sets the maximum number of entries a Virtual List View list can hold. A VLV search
+     * whose result is larger than this limit is ended with an adminLimitExceeded result.
+     *
+     * @param vlvMaxEntries The maximum number of entries of a list
+     */
+    public void setVlvMaxEntries( int vlvMaxEntries )
+    {
+        this.vlvMaxEntries = vlvMaxEntries;
+    }
+
+
+    /**
+     * @return The manager of the paged search contexts, with their statistics, or null if
+     * the server is not started
+     */
+    public PagedSearchManager getPagedSearchManager()
+    {
+        return pagedSearchManager;
+    }
+
+
+    /**
+     * @return The executors processing the requests, one per transport, with their queue
+     * depth and wait time statistics
+     */
+    public List<LdapRequestExecutor> getRequestExecutors()
+    {
+        return Collections.unmodifiableList( requestExecutors );
+    }
+
+
+    /**
+     * @return The number of bytes queued for writing on a session above which a search
+     * waits for the client to read the responses
+     */
+    public long getWriteHighWaterMark()
+    {
+        return writeHighWaterMark;
+    }
+
+
+    /**
+     * Sets the number of bytes queued for writing on a session above which a search stops
+     * sending entries, until the client has read enough of them.
+     *
+     * @param writeHighWaterMark A positive number of bytes. A negative or null value
+     * disables the flow control
+     */
+    public void setWriteHighWaterMark( long writeHighWaterMark )
+    {
+        this.writeHighWaterMark = writeHighWaterMark;
+    }
+
+
+    /**
+     * @return The number of bytes queued for writing on a session below which a paused
+     * search resumes
+     */
+    public long getWriteLowWaterMark()
+    {
+        return Math.min( writeLowWaterMark, writeHighWaterMark );
+    }
+
+
+    /**
+     * Sets the number of bytes queued for writing on a session below which a paused
+     * search resumes. It can't be above the high water mark.
+     *
+     * @param writeLowWaterMark A number of bytes
+     */
+    public void setWriteLowWaterMark( long writeLowWaterMark )
+    {
+        this.writeLowWaterMark = writeLowWaterMark;
+    }
+
+
     /**
      * @return the number of seconds pinger thread sleeps between subsequent pings
      */
@@ -26,6 +26,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -39,6 +42,8 @@ import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.SearchRequestContainer;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.handlers.controls.PagedSearchContext;
+import org.apache.directory.server.ldap.handlers.controls.PagedSearchManager;
+import org.apache.directory.server.ldap.handlers.controls.VlvSearchContext;
 import org.apache.mina.core.session.IoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +101,30 @@ public class LdapSession
     /** A map containing all the paged search context */
     private Map<Integer, PagedSearchContext> pagedSearchContexts;
 
+    /** The maximum number of Virtual List View contexts kept per session */
+    private static final int MAX_VLV_CONTEXTS = 4;
+
+    /** A map containing the Virtual List View contexts */
+    private Map<Integer, VlvSearchContext> vlvSearchContexts;
+
+    /** The ID of the last Virtual List View context */
+    private final AtomicInteger vlvContextId = new AtomicInteger();
+
+    /** The maximum time to wait for a write notification before checking the queue again, in ms */
+    private static final long WRITE_WAIT_TIMEOUT = 100L;
+
+    /**
+     * The lock used to wait for the queued responses to be written. We don't use a monitor,
+     * which would pin the carrier thread when the request runs on a virtual thread
+     */
+    private final Lock writeLock = new ReentrantLock();
+
+    /** The condition signaled when a response has been written */
+    private final Condition written = writeLock.newCondition();
+
+    /** Tells if a request is waiting for the queued responses to be written */
+    private volatile boolean writeWaiting;
+
 
     /**
      * Creates a new instance of LdapSession associated with the underlying
@@ -112,6 +141,89 @@ public class LdapSession
         bindStatus = BindStatus.ANONYMOUS;
         saslProperties = new HashMap<>();
         pagedSearchContexts = new ConcurrentHashMap<>();
+        vlvSearchContexts = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * @return The number of bytes of the responses queued for writing on this session
+     */
+    public long getScheduledWriteBytes()
+    {
+        return ioSession.getScheduledWriteBytes();
+    }
+
+
+    /**
+     * Waits for the client to read the responses queued on this session. If more than
+     * highWaterMark bytes are queued, we wait until they are below lowWaterMark, the
+     * session is closed or the request is abandoned.
+     *
+     * @param highWaterMark The number of queued bytes above which we wait, 0 to never wait
+     * @param lowWaterMark The number of queued bytes below which we stop waiting
+     * @param request The request sending the responses
+     * @return <code>false</code> if the session has been closed or the request abandoned
+     * @throws InterruptedException If the thread has been interrupted while waiting
+     */
+    public boolean awaitWritable( long highWaterMark, long lowWaterMark, AbandonableRequest request )
+        throws InterruptedException
+    {
+        if ( ( highWaterMark <= 0 ) || ( ioSession.getScheduledWriteBytes() < highWaterMark ) )
+        {
+            return true;
+        }
+
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "{} bytes queued on session {}, waiting for the client to read them",
+                ioSession.getScheduledWriteBytes(), ioSession.getId() );
+        }
+
+        writeLock.lock();
+
+        try
+        {
+            writeWaiting = true;
+
+            while ( ioSession.getScheduledWriteBytes() > lowWaterMark )
+            {
+                if ( ioSession.isClosing() || request.isAbandoned() )
+                {
+                    return false;
+                }
+
+                written.await( WRITE_WAIT_TIMEOUT, TimeUnit.MILLISECONDS );
+            }
+        }
+        finally
+        {
+            writeWaiting = false;
+            writeLock.unlock();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Tells the session that a response has been written, waking up the request waiting
+     * for the queue to be drained, if any.
+     */
+    public void messageWritten()
+    {
+        if ( writeWaiting )
+        {
+            writeLock.lock();
+
+            try
+            {
+                written.signalAll();
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
     }
 
 
@@ -519,9 +631,20 @@ public class LdapSession
     public void addPagedSearchContext( PagedSearchContext context )
     {
         PagedSearchContext oldContext = pagedSearchContexts.put( context.getCookieValue(), context );
+        PagedSearchManager pagedSearchManager = getPagedSearchManager();
+
+        if ( pagedSearchManager != null )
+        {
+            pagedSearchManager.register( this, context );
+        }
 
         if ( oldContext != null )
         {
+            if ( pagedSearchManager != null )
+            {
+                pagedSearchManager.unregister( oldContext );
+            }
+
             // ??? Very unlikely to happen ...
             Cursor<Entry> cursor = oldContext.getCursor();
 
@@ -548,7 +671,24 @@ public class LdapSession
      */
     public PagedSearchContext removePagedSearchContext( int contextId )
     {
-        return pagedSearchContexts.remove( contextId );
+        PagedSearchContext context = pagedSearchContexts.remove( contextId );
+        PagedSearchManager pagedSearchManager = getPagedSearchManager();
+
+        if ( ( context != null ) && ( pagedSearchManager != null ) )
+        {
+            pagedSearchManager.unregister( context );
+        }
+
+        return context;
+    }
+
+
+    /**
+     * @return The manager of the paged search contexts of the server, if any
+     */
+    private PagedSearchManager getPagedSearchManager()
+    {
+        return ( ldapServer == null ) ? null : ldapServer.getPagedSearchManager();
     }
 
 
@@ -559,8 +699,15 @@ public class LdapSession
      */
     public void closeAllPagedSearches() throws IOException
     {
+        PagedSearchManager pagedSearchManager = getPagedSearchManager();
+
         for ( Map.Entry<Integer, PagedSearchContext> entry : pagedSearchContexts.entrySet() )
         {
+            if ( pagedSearchManager != null )
+            {
+                pagedSearchManager.unregister( entry.getValue() );
+            }
+
             Cursor<Entry> cursor = entry.getValue().getCursor();
 
             if ( cursor != null )
@@ -581,6 +728,64 @@ public class LdapSession
     }
 
 
+    /**
+     * @return A new ID for a Virtual List View context
+     */
+    public int getNextVlvContextId()
+    {
+        return vlvContextId.incrementAndGet();
+    }
+
+
+    /**
+     * Add a new Virtual List View context. The oldest context is removed if the
+     * session has too many of them.
+     *
+     * @param context The context to add
+     */
+    public void addVlvSearchContext( VlvSearchContext context )
+    {
+        vlvSearchContexts.put( context.getContextIdValue(), context );
+
+        while ( vlvSearchContexts.size() > MAX_VLV_CONTEXTS )
+        {
+            // The IDs are increasing, the smallest one is the oldest context
+            int oldest = Integer.MAX_VALUE;
+
+            for ( Integer contextId : vlvSearchContexts.keySet() )
+            {
+                oldest = Math.min( oldest, contextId );
+            }
+
+            vlvSearchContexts.remove( oldest );
+        }
+    }
+
+
+    /**
+     * Get the Virtual List View context associated with an ID
+     *
+     * @param contextId The id for the context we want to get
+     * @return The associated context, if any
+     */
+    public VlvSearchContext getVlvSearchContext( int contextId )
+    {
+        return vlvSearchContexts.get( contextId );
+    }
+
+
+    /**
+     * Remove a Virtual List View context.
+     *
+     * @param contextId The context ID to remove
+     * @return The removed context if any found
+     */
+    public VlvSearchContext removeVlvSearchContext( int contextId )
+    {
+        return vlvSearchContexts.remove( contextId );
+    }
+
+
     /**
      * The principal and remote address associated with this session.
      * @see Object#toString()
@@ -20,6 +20,12 @@
 package org.apache.directory.server.ldap.handlers;
 
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
@@ -30,6 +36,7 @@ import org.apache.directory.api.ldap.model.message.BindResponse;
 import org.apache.directory.api.ldap.model.message.BindResponseImpl;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
 import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
 import org.apache.directory.api.ldap.model.message.Referral;
 import org.apache.directory.api.ldap.model.message.ReferralImpl;
 import org.apache.directory.api.ldap.model.message.Request;
@@ -37,6 +44,8 @@ import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
 import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapServer;
@@ -59,6 +68,17 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
     /** The logger for this class */
     protected static final Logger LOG = LoggerFactory.getLogger( LdapRequestHandler.class );
 
+    /** The names of the requests in the metrics, like "search" or "modifydn" */
+    private static final Map<MessageTypeEnum, String> REQUEST_NAMES = new EnumMap<>( MessageTypeEnum.class );
+
+    static
+    {
+        for ( MessageTypeEnum type : MessageTypeEnum.values() )
+        {
+            REQUEST_NAMES.put( type, type.name().toLowerCase( Locale.ROOT ).replace( "_request", "" ) );
+        }
+    }
+
     /** The reference on the Ldap server instance */
     protected LdapServer ldapServer;
 
@@ -123,6 +143,43 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
      */
     @Override
     public final void handleMessage( IoSession session, T message ) throws Exception
+    {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        OperationMetrics metrics = ( directoryService == null ) ? null : directoryService.getOperationMetrics();
+
+        if ( metrics == null )
+        {
+            handleRequest( session, message );
+
+            return;
+        }
+
+        long start = metrics.requestStarted();
+
+        try
+        {
+            handleRequest( session, message );
+        }
+        finally
+        {
+            ResultCodeEnum resultCode = null;
+
+            if ( message instanceof ResultResponseRequest )
+            {
+                resultCode = ( ( ResultResponseRequest ) message ).getResultResponse().getLdapResult().getResultCode();
+            }
+
+            SocketAddress address = session.getRemoteAddress();
+            String client = ( address instanceof InetSocketAddress )
+                ? ( ( InetSocketAddress ) address ).getHostString()
+                : null;
+
+            metrics.requestCompleted( REQUEST_NAMES.get( message.getType() ), resultCode, client, start );
+        }
+    }
+
+
+    private void handleRequest( IoSession session, T message ) throws Exception
     {
         LdapSession ldapSession = ldapServer.getLdapSessionManager().getLdapSession( session );
 
@@ -20,11 +20,16 @@
 package org.apache.directory.server.ldap.handlers;
 
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.AbandonListener;
 import org.apache.directory.api.ldap.model.message.AbandonableRequest;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
@@ -44,7 +49,10 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,7 +65,9 @@ import org.slf4j.LoggerFactory;
  * 
  * This listener is disabled only when a session closes or when an abandon request 
  * cancels it.  Hence time and size limits in normal search operations do not apply
- * here.
+ * here. It is also disabled when the client does not read the notifications : when too
+ * many of them are waiting to be sent, the search is ended with an adminLimitExceeded
+ * result.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -71,6 +81,18 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
     private LookupOperationContext filterCtx;
     private SchemaManager schemaManager;
 
+    /** The number of notifications written to the session, but not yet sent */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** The maximum number of notifications waiting to be sent, 0 if not limited */
+    private final int maxPending;
+
+    /** Tells if the search has been ended because the client was too slow */
+    private volatile boolean overflowed;
+
+    /** Called when a notification has been sent */
+    private final IoFutureListener<WriteFuture> sentListener = future -> pending.decrementAndGet();
+
     public PersistentSearchListener( LdapSession session, SearchRequest req )
     {
         this.session = session;
@@ -80,6 +102,9 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         
         filterCtx = new LookupOperationContext( session.getCoreSession(), req.getAttributes().toArray( Strings.EMPTY_STRING_ARRAY ) );
         schemaManager = session.getCoreSession().getDirectoryService().getSchemaManager();
+
+        LdapServer ldapServer = session.getLdapServer();
+        maxPending = ( ldapServer == null ) ? 0 : Math.max( 0, ldapServer.getPersistentSearchQueueSize() );
     }
 
     
@@ -116,6 +141,26 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
     }
 
 
+    /**
+     * The client is told when the search is ended because it can't keep up with the changes
+     */
+    @Override
+    public boolean acceptsOverflow()
+    {
+        return true;
+    }
+
+
+    /**
+     * The event service could not deliver the changes fast enough : the search is ended
+     */
+    @Override
+    public void overflowed()
+    {
+        overflow();
+    }
+
+
     private void setECResponseControl( SearchResultEntry response, ChangeOperationContext opContext, ChangeType type )
     {
         if ( psearchControl.isReturnECs() )
@@ -159,7 +204,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         respEntry.setEntry( entry );
         
         setECResponseControl( respEntry, addContext, ChangeType.ADD );
-        session.getIoSession().write( respEntry );
+        write( respEntry );
     }
 
 
@@ -175,7 +220,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         filterEntry( deleteContext.getEntry() );
         respEntry.setEntry( deleteContext.getEntry() );
         setECResponseControl( respEntry, deleteContext, ChangeType.DELETE );
-        session.getIoSession().write( respEntry );
+        write( respEntry );
     }
 
 
@@ -194,7 +239,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         respEntry.setEntry( entry );
 
         setECResponseControl( respEntry, modifyContext, ChangeType.MODIFY );
-        session.getIoSession().write( respEntry );
+        write( respEntry );
     }
 
 
@@ -213,7 +258,7 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         respEntry.setEntry( entry );
         
         setECResponseControl( respEntry, moveContext, ChangeType.MODDN );
-        session.getIoSession().write( respEntry );
+        write( respEntry );
     }
 
 
@@ -238,7 +283,62 @@ public class PersistentSearchListener implements DirectoryListener, AbandonListe
         respEntry.setEntry( entry );
         
         setECResponseControl( respEntry, renameContext, ChangeType.MODDN );
-        session.getIoSession().write( respEntry );
+        write( respEntry );
+    }
+    
+    
+    /**
+     * Writes a notification, unless the client already has too many notifications waiting
+     * to be sent : the search is then ended, so that a client which does not read its
+     * notifications can't fill the memory with them.
+     */
+    private void write( SearchResultEntry response )
+    {
+        if ( overflowed )
+        {
+            return;
+        }
+
+        if ( maxPending == 0 )
+        {
+            session.getIoSession().write( response );
+
+            return;
+        }
+
+        if ( pending.incrementAndGet() > maxPending )
+        {
+            overflow();
+
+            return;
+        }
+
+        session.getIoSession().write( response ).addListener( sentListener );
+    }
+
+
+    /**
+     * Ends the search, as the client is too slow
+     */
+    private synchronized void overflow()
+    {
+        if ( overflowed )
+        {
+            return;
+        }
+
+        overflowed = true;
+        LOG.warn( "Ending the persistent search {} of {} : the client can't keep up with the changes",
+            req.getMessageId(), session );
+
+        session.getCoreSession().getDirectoryService().getEventService().removeListener( this );
+        session.unregisterOutstandingRequest( req );
+
+        SearchResultDone done = ( SearchResultDone ) req.getResultResponse();
+        LdapResult ldapResult = done.getLdapResult();
+        ldapResult.setResultCode( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED );
+        ldapResult.setDiagnosticMessage( "Too many changes are waiting to be sent" );
+        session.getIoSession().write( done );
     }
     
     
@@ -20,6 +20,7 @@
 package org.apache.directory.server.ldap.handlers.controls;
 
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,6 +35,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 import org.apache.directory.server.ldap.LdapSession;
 
 
@@ -41,6 +43,12 @@ import org.apache.directory.server.ldap.LdapSession;
  * The structure which stores the informations relative to the pagedSearch control.
  * They are associated to a cookie, stored into the session and associated to an
  * instance of this class.
+ * <br>
+ * The cursor of an idle context may be closed by the {@link PagedSearchManager}, to free
+ * its resources : the context is then spilled, and only keeps the number of returned
+ * entries, the DN of the last returned one and its position in the partition candidates.
+ * The cursor is recreated when the next page is requested, and moved after the last
+ * returned entry. A context is acquired while a page is read, and can't be spilled then.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -61,6 +69,21 @@ public class PagedSearchContext
     /** The associated cursor for the current search request */
     private Cursor<Entry> cursor;
 
+    /** The last time a page has been read, in milliseconds */
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    /** Tells if a page is being read */
+    private boolean inUse;
+
+    /** Tells if the cursor has been closed while the context was idle */
+    private boolean spilled;
+
+    /** The DN of the last returned entry */
+    private Dn lastDn;
+
+    /** The position of the last returned entry in the partition candidates, if known */
+    private SearchPosition lastPosition;
+
 
     /**
      * Creates a new instance of this class, storing the SearchRequest into it.
@@ -303,7 +326,7 @@ public class PagedSearchContext
     /**
      * @return The associated cursor
      */
-    public Cursor<Entry> getCursor()
+    public synchronized Cursor<Entry> getCursor()
     {
         return cursor;
     }
@@ -313,9 +336,177 @@ public class PagedSearchContext
      * Set the new cursor for this search request
      * @param cursor The associated cursor
      */
-    public void setCursor( Cursor<Entry> cursor )
+    public synchronized void setCursor( Cursor<Entry> cursor )
     {
         this.cursor = cursor;
+        spilled = false;
+    }
+
+
+    /**
+     * Gives a spilled context its recreated cursor, moved after the last returned entry.
+     * The partition has already moved the cursor there when it could seek its candidates
+     * to the position of this entry. Otherwise the entries are compared on their DN, so
+     * the entries added or removed since the previous page don't make the search skip or
+     * repeat entries. If the last returned entry has been removed, we skip as many entries
+     * as have already been returned.
+     *
+     * @param newCursor The recreated cursor
+     * @param positioned Tells if the partition has already moved the cursor after the last
+     * returned entry
+     * @return <code>false</code> if the last returned entry has not been found, and the
+     * cursor has been moved using the number of returned entries
+     * @throws Exception If the cursor can't be read
+     */
+    public boolean resume( Cursor<Entry> newCursor, boolean positioned ) throws Exception
+    {
+        setCursor( newCursor );
+
+        if ( positioned )
+        {
+            return true;
+        }
+
+        newCursor.beforeFirst();
+
+        if ( lastDn == null )
+        {
+            return true;
+        }
+
+        while ( newCursor.next() )
+        {
+            if ( lastDn.equals( newCursor.get().getDn() ) )
+            {
+                return true;
+            }
+        }
+
+        newCursor.beforeFirst();
+
+        for ( int i = 0; ( i < currentPosition ) && newCursor.next(); i++ )
+        {
+            // Skip the entries already returned
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Marks the context as being used to read a page : its cursor can't be closed until
+     * it's released.
+     */
+    public synchronized void acquire()
+    {
+        inUse = true;
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Marks the context as idle
+     */
+    public synchronized void release()
+    {
+        inUse = false;
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+
+    /**
+     * @return <code>true</code> if a page is being read
+     */
+    public synchronized boolean isInUse()
+    {
+        return inUse;
+    }
+
+
+    /**
+     * Closes the cursor of an idle context, keeping the position and the last returned
+     * entry. The cursor will be recreated when the next page is requested.
+     *
+     * @return <code>true</code> if the cursor has been closed
+     * @throws IOException If the cursor can't be closed
+     */
+    public synchronized boolean spill() throws IOException
+    {
+        if ( inUse || ( cursor == null ) )
+        {
+            return false;
+        }
+
+        Cursor<Entry> spilledCursor = cursor;
+        cursor = null;
+        spilled = true;
+        spilledCursor.close();
+
+        return true;
+    }
+
+
+    /**
+     * @return <code>true</code> if the cursor has been closed while the context was idle
+     */
+    public synchronized boolean isSpilled()
+    {
+        return spilled;
+    }
+
+
+    /**
+     * @return <code>true</code> if the context holds an open cursor
+     */
+    public synchronized boolean hasCursor()
+    {
+        return cursor != null;
+    }
+
+
+    /**
+     * @return The last time a page has been read, in milliseconds
+     */
+    public long getLastAccessTime()
+    {
+        return lastAccessTime;
+    }
+
+
+    /**
+     * @return The DN of the last returned entry, if any
+     */
+    public Dn getLastDn()
+    {
+        return lastDn;
+    }
+
+
+    /**
+     * @param lastDn The DN of the last returned entry
+     */
+    public void setLastDn( Dn lastDn )
+    {
+        this.lastDn = lastDn;
+    }
+
+
+    /**
+     * @return The position of the last returned entry in the partition candidates, or null
+     * if the partition does not give it
+     */
+    public SearchPosition getLastPosition()
+    {
+        return lastPosition;
+    }
+
+
+    /**
+     * @param lastPosition The position of the last returned entry in the partition candidates
+     */
+    public void setLastPosition( SearchPosition lastPosition )
+    {
+        this.lastPosition = lastPosition;
     }
 
 
@@ -330,6 +521,12 @@ public class PagedSearchContext
         sb.append( Strings.dumpBytes( cookie ) );
         sb.append( ", " );
         sb.append( currentPosition );
+
+        if ( spilled )
+        {
+            sb.append( ", spilled" );
+        }
+
         sb.append( ">" );
 
         return sb.toString();
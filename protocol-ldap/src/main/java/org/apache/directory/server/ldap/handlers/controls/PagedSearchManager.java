@@ -0,0 +1,427 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.ldap.LdapSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps track of the paged search contexts of all the sessions, so that the clients which
+ * never read the last page of their searches don't keep the cursors, and their read
+ * transactions, open forever :
+ * <ul>
+ *   <li>the cursor of a context which has been idle for more than the idle timeout is
+ *   closed : the context is spilled, and its cursor is recreated, after the last returned
+ *   entry, when the next page is requested</li>
+ *   <li>when there are more open cursors than the server wide budget, the cursors of the least
+ *   recently used idle contexts are closed the same way</li>
+ *   <li>a context which has been idle for more than the maximum idle time is removed from
+ *   its session : the next request using its cookie will be rejected</li>
+ * </ul>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchManager
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PagedSearchManager.class );
+
+    /** The default maximum number of open paged search cursors */
+    public static final int DEFAULT_MAX_OPEN_CURSORS = 256;
+
+    /** The default time after which the cursor of an idle context is closed, in seconds */
+    public static final int DEFAULT_IDLE_TIMEOUT = 10;
+
+    /** The default time after which an idle context is removed, in seconds */
+    public static final int DEFAULT_MAX_IDLE_TIME = 600;
+
+    /** The contexts, with their session */
+    private final Map<PagedSearchContext, LdapSession> contexts = new ConcurrentHashMap<>();
+
+    /** The maximum number of open cursors, 0 if not limited */
+    private final int maxOpenCursors;
+
+    /** The time after which the cursor of an idle context is closed, in ms, 0 to keep it open */
+    private final long idleTimeout;
+
+    /** The time after which an idle context is removed, in ms, 0 to keep it */
+    private final long maxIdleTime;
+
+    /** The statistics */
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong resumedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /** The thread checking the idle contexts */
+    private ScheduledExecutorService sweeper;
+
+
+    /**
+     * Creates a new instance of PagedSearchManager
+     *
+     * @param maxOpenCursors The maximum number of open cursors, 0 if not limited
+     * @param idleTimeout The time after which the cursor of an idle context is closed, in
+     * seconds, 0 to keep it open
+     * @param maxIdleTime The time after which an idle context is removed, in seconds, 0 to
+     * keep it
+     */
+    public PagedSearchManager( int maxOpenCursors, int idleTimeout, int maxIdleTime )
+    {
+        this.maxOpenCursors = Math.max( 0, maxOpenCursors );
+        this.idleTimeout = TimeUnit.SECONDS.toMillis( Math.max( 0, idleTimeout ) );
+        this.maxIdleTime = TimeUnit.SECONDS.toMillis( Math.max( 0, maxIdleTime ) );
+    }
+
+
+    /**
+     * Starts the thread checking the idle contexts
+     */
+    public void start()
+    {
+        long period = Math.min( idleTimeout > 0 ? idleTimeout : Long.MAX_VALUE,
+            maxIdleTime > 0 ? maxIdleTime : Long.MAX_VALUE );
+
+        if ( period == Long.MAX_VALUE )
+        {
+            return;
+        }
+
+        period = Math.max( 1000L, period / 2 );
+
+        sweeper = Executors.newSingleThreadScheduledExecutor( runnable ->
+        {
+            Thread thread = new Thread( runnable, "ldap-paged-search-sweeper" );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+
+        sweeper.scheduleWithFixedDelay( this::sweep, period, period, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Stops the thread checking the idle contexts, and forgets all the contexts
+     */
+    public void stop()
+    {
+        if ( sweeper != null )
+        {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+
+        contexts.clear();
+    }
+
+
+    /**
+     * Registers a new context, and closes the cursors of the least recently used contexts
+     * if we have too many of them.
+     *
+     * @param session The session the context belongs to
+     * @param context The context
+     */
+    public void register( LdapSession session, PagedSearchContext context )
+    {
+        contexts.put( context, session );
+        enforceBudget();
+    }
+
+
+    /**
+     * Forgets a context, when the search is completed or abandoned
+     *
+     * @param context The context
+     */
+    public void unregister( PagedSearchContext context )
+    {
+        contexts.remove( context );
+    }
+
+
+    /**
+     * Releases a context after a page has been read, and closes the cursors of the least
+     * recently used contexts if we have too many of them.
+     *
+     * @param context The context
+     */
+    public void release( PagedSearchContext context )
+    {
+        context.release();
+        enforceBudget();
+    }
+
+
+    /**
+     * Tells the manager that the cursor of a spilled context has been recreated
+     */
+    public void resumed()
+    {
+        resumedCount.incrementAndGet();
+    }
+
+
+    /**
+     * Closes the cursors of the contexts idle for too long, and removes the contexts idle
+     * for even longer.
+     */
+    /* No qualifier */void sweep()
+    {
+        sweep( System.currentTimeMillis() );
+    }
+
+
+    /**
+     * Closes the cursors of the contexts idle for too long, and removes the contexts idle
+     * for even longer.
+     *
+     * @param now The current time, in milliseconds
+     */
+    /* No qualifier */void sweep( long now )
+    {
+        for ( Map.Entry<PagedSearchContext, LdapSession> entry : contexts.entrySet() )
+        {
+            PagedSearchContext context = entry.getKey();
+
+            if ( context.isInUse() )
+            {
+                continue;
+            }
+
+            long idle = now - context.getLastAccessTime();
+
+            try
+            {
+                if ( ( maxIdleTime > 0 ) && ( idle > maxIdleTime ) )
+                {
+                    evict( entry.getValue(), context );
+                }
+                else if ( ( idleTimeout > 0 ) && ( idle > idleTimeout ) )
+                {
+                    spill( context );
+                }
+            }
+            catch ( Exception e )
+            {
+                LOG.warn( "Cannot close the cursor of the paged search {} : {}", context, e.getMessage() );
+            }
+        }
+    }
+
+
+    /**
+     * Closes the cursors of the least recently used idle contexts, until we are within
+     * the budget
+     */
+    private void enforceBudget()
+    {
+        if ( maxOpenCursors == 0 )
+        {
+            return;
+        }
+
+        List<PagedSearchContext> idleContexts = new ArrayList<>();
+        int openCursors = 0;
+
+        for ( PagedSearchContext context : contexts.keySet() )
+        {
+            if ( context.hasCursor() )
+            {
+                openCursors++;
+
+                if ( !context.isInUse() )
+                {
+                    idleContexts.add( context );
+                }
+            }
+        }
+
+        if ( openCursors <= maxOpenCursors )
+        {
+            return;
+        }
+
+        idleContexts.sort( Comparator.comparingLong( PagedSearchContext::getLastAccessTime ) );
+
+        for ( PagedSearchContext context : idleContexts )
+        {
+            if ( openCursors <= maxOpenCursors )
+            {
+                break;
+            }
+
+            try
+            {
+                if ( spill( context ) )
+                {
+                    openCursors--;
+                }
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Cannot close the cursor of the paged search {} : {}", context, ioe.getMessage() );
+            }
+        }
+    }
+
+
+    private boolean spill( PagedSearchContext context ) throws IOException
+    {
+        if ( context.spill() )
+        {
+            spilledCount.incrementAndGet();
+            LOG.debug( "Closed the cursor of the idle paged search {}", context );
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    private void evict( LdapSession session, PagedSearchContext context ) throws IOException
+    {
+        contexts.remove( context );
+        session.removePagedSearchContext( context.getCookieValue() );
+        context.spill();
+        evictedCount.incrementAndGet();
+        LOG.debug( "Removed the idle paged search {}", context );
+    }
+
+
+    /**
+     * @return The number of paged search contexts
+     */
+    public int getContextCount()
+    {
+        return contexts.size();
+    }
+
+
+    /**
+     * @return The number of paged search contexts holding an open cursor
+     */
+    public int getOpenCursorCount()
+    {
+        int openCursors = 0;
+
+        for ( PagedSearchContext context : contexts.keySet() )
+        {
+            if ( context.hasCursor() )
+            {
+                openCursors++;
+            }
+        }
+
+        return openCursors;
+    }
+
+
+    /**
+     * @return The number of cursors closed because their context was idle
+     */
+    public long getSpilledCount()
+    {
+        return spilledCount.get();
+    }
+
+
+    /**
+     * @return The number of cursors recreated for a spilled context
+     */
+    public long getResumedCount()
+    {
+        return resumedCount.get();
+    }
+
+
+    /**
+     * @return The number of contexts removed because they were idle for too long
+     */
+    public long getEvictedCount()
+    {
+        return evictedCount.get();
+    }
+
+
+    /**
+     * Describes the paged search contexts : the session, the cookie, the position, the time
+     * since the last page has been read and the state of the cursor.
+     *
+     * @return One line per context
+     */
+    public List<String> getContextDescriptions()
+    {
+        long now = System.currentTimeMillis();
+        List<String> descriptions = new ArrayList<>( contexts.size() );
+
+        for ( Map.Entry<PagedSearchContext, LdapSession> entry : contexts.entrySet() )
+        {
+            PagedSearchContext context = entry.getKey();
+            StringBuilder sb = new StringBuilder();
+
+            sb.append( "session " ).append( entry.getValue().getIoSession().getId() );
+            sb.append( ", cookie " ).append( Strings.dumpBytes( context.getCookie() ) );
+            sb.append( ", base " ).append( context.getPreviousSearchRequest().getBase() );
+            sb.append( ", position " ).append( context.getCurrentPosition() );
+            sb.append( ", idle " ).append( now - context.getLastAccessTime() ).append( "ms" );
+
+            if ( context.isInUse() )
+            {
+                sb.append( ", reading" );
+            }
+            else if ( context.isSpilled() )
+            {
+                sb.append( ", spilled" );
+            }
+
+            descriptions.add( sb.toString() );
+        }
+
+        return descriptions;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "PagedSearchManager : " + contexts.size() + " contexts, " + getOpenCursorCount() + " open cursors, "
+            + spilledCount.get() + " spilled, " + resumedCount.get() + " resumed, " + evictedCount.get() + " evicted";
+    }
+}
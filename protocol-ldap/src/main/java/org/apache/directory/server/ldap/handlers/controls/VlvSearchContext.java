@@ -0,0 +1,444 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+
+
+/**
+ * The sorted result set of a Virtual List View search, as described in
+ * draft-ietf-ldapext-ldapv3-vlv. The sorted search is done once, and the DN of each
+ * returned entry is kept, with the value of the first sort key. The following requests
+ * using the same context ID and the same search only read the entries of their window :
+ * <ul>
+ *   <li>an offset is converted to a position in constant time</li>
+ *   <li>an assertion value is located by a binary search on the values of the first sort
+ *   key, the entries being sorted on this key first</li>
+ * </ul>
+ * The entries of the window are read again when they are returned, so the changes done
+ * since the search are visible, but the entries added since then are not in the list.
+ * The list is rebuilt when it gets older than the maximum age.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class VlvSearchContext
+{
+    /** The default maximum number of entries of a list */
+    public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+    /** The default time after which a list is rebuilt, in ms */
+    public static final long DEFAULT_MAX_AGE = 60000L;
+
+    /** The context ID */
+    private final int contextIdValue;
+
+    /** The encoded context ID */
+    private final byte[] contextId;
+
+    /** The search which has built the list, without its message ID and its attributes */
+    private final String signature;
+
+    /** The first sort key's attribute type */
+    private final AttributeType type;
+
+    /** The comparator of the first sort key's values, null for the entryDn */
+    private final LdapComparator<Object> comparator;
+
+    /** The normalizer of the first sort key's values */
+    private final Normalizer normalizer;
+
+    /** Tells if the first sort key is in reverse order */
+    private final boolean reverse;
+
+    /** Tells if the first sort key's attribute is human readable */
+    private final boolean hr;
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The DNs of the entries, in order */
+    private final List<String> dns = new ArrayList<>();
+
+    /** The values of the first sort key, in the same order */
+    private final List<Object> keys = new ArrayList<>();
+
+    /** The time the list has been built */
+    private final long creationTime = System.currentTimeMillis();
+
+
+    /**
+     * Creates a new instance of VlvSearchContext.
+     *
+     * @param contextIdValue The context ID
+     * @param searchRequest The sorted search
+     * @param schemaManager The schema manager
+     * @throws LdapException If the first sort key's attribute type or matching rule can't be found
+     */
+    @SuppressWarnings("unchecked")
+    public VlvSearchContext( int contextIdValue, SearchRequest searchRequest, SchemaManager schemaManager )
+        throws LdapException
+    {
+        this.contextIdValue = contextIdValue;
+        this.schemaManager = schemaManager;
+        contextId = BerValue.getBytes( contextIdValue );
+        signature = getSignature( searchRequest );
+
+        SortKey sortKey = ( ( SortRequest ) searchRequest.getControls().get( SortRequest.OID ) ).getSortKeys().get( 0 );
+        type = schemaManager.lookupAttributeTypeRegistry( sortKey.getAttributeTypeDesc() );
+        reverse = sortKey.isReverseOrder();
+
+        if ( SchemaConstants.ENTRY_DN_AT_OID.equals( type.getOid() ) )
+        {
+            comparator = null;
+            normalizer = null;
+            hr = true;
+
+            return;
+        }
+
+        MatchingRule mr;
+
+        if ( sortKey.getMatchingRuleId() != null )
+        {
+            mr = schemaManager.lookupMatchingRuleRegistry( sortKey.getMatchingRuleId() );
+        }
+        else
+        {
+            mr = type.getOrdering();
+
+            if ( mr == null )
+            {
+                mr = type.getEquality();
+            }
+        }
+
+        comparator = ( LdapComparator<Object> ) mr.getLdapComparator();
+        normalizer = mr.getNormalizer();
+        hr = type.getSyntax().isHumanReadable();
+    }
+
+
+    /**
+     * Gets what identifies the list of a search : its base, scope, alias dereferencing mode,
+     * filter and sort keys. The returned attributes and the limits don't change the list.
+     *
+     * @param searchRequest The search request
+     * @return The signature of the search
+     */
+    public static String getSignature( SearchRequest searchRequest )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( searchRequest.getBase().getNormName() );
+        sb.append( '|' ).append( searchRequest.getScope() );
+        sb.append( '|' ).append( searchRequest.getDerefAliases() );
+        sb.append( '|' ).append( searchRequest.getFilter() );
+
+        SortRequest sortRequest = ( SortRequest ) searchRequest.getControls().get( SortRequest.OID );
+
+        if ( sortRequest != null )
+        {
+            for ( SortKey sortKey : sortRequest.getSortKeys() )
+            {
+                sb.append( '|' ).append( Strings.toLowerCaseAscii( sortKey.getAttributeTypeDesc() ) );
+                sb.append( ':' ).append( sortKey.getMatchingRuleId() );
+                sb.append( ':' ).append( sortKey.isReverseOrder() );
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Adds an entry at the end of the list. The entries must be added in order.
+     *
+     * @param entry The entry
+     * @throws LdapException If the value of the sort key can't be normalized
+     */
+    public void add( Entry entry ) throws LdapException
+    {
+        Entry original = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            // The sort key may not be one of the returned attributes
+            original = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        dns.add( entry.getDn().getName() );
+
+        if ( comparator == null )
+        {
+            keys.add( entry.getDn() );
+
+            return;
+        }
+
+        Attribute attribute = original.get( type );
+        Object key = null;
+
+        if ( attribute != null )
+        {
+            // For multi-valued attributes, the least value is used
+            for ( Value value : attribute )
+            {
+                Object sortValue = hr ? normalizer.normalize( value.getString() ) : value.getBytes();
+
+                if ( ( key == null ) || ( comparator.compare( sortValue, key ) < 0 ) )
+                {
+                    key = sortValue;
+                }
+            }
+        }
+
+        keys.add( key );
+    }
+
+
+    /**
+     * Converts an offset into a position in the list, as per section 5 of the draft : the
+     * offset is relative to the content count the client has, which may be an estimate.
+     *
+     * @param offset The offset, starting at 1
+     * @param contentCount The content count of the client, or 0 if it does not know it
+     * @return The position of the target entry, starting at 1, or the size of the list plus
+     * one if the target is after the last entry, or 0 if the offset is invalid
+     */
+    public int getTargetPosition( int offset, int contentCount )
+    {
+        if ( ( offset < 1 ) || ( contentCount < 0 ) )
+        {
+            return 0;
+        }
+
+        int size = dns.size();
+        long position;
+
+        if ( contentCount == 0 )
+        {
+            position = offset;
+        }
+        else if ( offset > contentCount )
+        {
+            position = size + 1L;
+        }
+        else if ( contentCount == 1 )
+        {
+            position = 1;
+        }
+        else
+        {
+            // The first offset is the first entry, the last offset is the last entry
+            position = 1L + Math.round( ( double ) ( offset - 1 ) * ( size - 1 ) / ( contentCount - 1 ) );
+        }
+
+        return ( int ) Math.min( position, size + 1L );
+    }
+
+
+    /**
+     * Finds the first entry whose first sort key's value is greater than or equal to an
+     * assertion value, in the sort order : less than or equal to it if the order is reversed.
+     *
+     * @param assertionValue The assertion value
+     * @return The position of the target entry, starting at 1, or the size of the list plus
+     * one if all the entries are before the assertion value
+     * @throws LdapException If the assertion value can't be normalized
+     */
+    public int getTargetPosition( byte[] assertionValue ) throws LdapException
+    {
+        Object assertion;
+
+        if ( comparator == null )
+        {
+            assertion = new Dn( schemaManager, Strings.utf8ToString( assertionValue ) );
+        }
+        else if ( hr )
+        {
+            assertion = normalizer.normalize( Strings.utf8ToString( assertionValue ) );
+        }
+        else
+        {
+            assertion = assertionValue;
+        }
+
+        int low = 0;
+        int high = keys.size();
+
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+
+            if ( compare( keys.get( middle ), assertion ) < 0 )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low + 1;
+    }
+
+
+    /**
+     * Compares two values of the first sort key, in the sort order. As per section 2.2 of
+     * RFC 2891, the missing values are larger than the other ones.
+     */
+    private int compare( Object value1, Object value2 )
+    {
+        int c;
+
+        if ( value1 == null )
+        {
+            c = ( value2 == null ) ? 0 : 1;
+        }
+        else if ( value2 == null )
+        {
+            c = -1;
+        }
+        else if ( comparator == null )
+        {
+            c = compareDns( ( Dn ) value1, ( Dn ) value2 );
+        }
+        else
+        {
+            c = comparator.compare( value1, value2 );
+        }
+
+        return reverse ? -c : c;
+    }
+
+
+    /**
+     * Compares two DNs the way the sorted search does : RDN by RDN starting from the top,
+     * the descendants of an entry being sorted before the entry.
+     */
+    private static int compareDns( Dn dn1, Dn dn2 )
+    {
+        List<Rdn> rdns1 = dn1.getRdns();
+        List<Rdn> rdns2 = dn2.getRdns();
+        int pos1 = rdns1.size() - 1;
+        int pos2 = rdns2.size() - 1;
+
+        while ( ( pos1 >= 0 ) && ( pos2 >= 0 ) )
+        {
+            int c = rdns1.get( pos1 ).getNormName().compareTo( rdns2.get( pos2 ).getNormName() );
+
+            if ( c != 0 )
+            {
+                return c;
+            }
+
+            pos1--;
+            pos2--;
+        }
+
+        return rdns2.size() - rdns1.size();
+    }
+
+
+    /**
+     * Gets the DN of an entry of the list.
+     *
+     * @param position The position of the entry, starting at 1
+     * @return The DN of the entry
+     */
+    public String getDn( int position )
+    {
+        return dns.get( position - 1 );
+    }
+
+
+    /**
+     * @return The number of entries in the list
+     */
+    public int size()
+    {
+        return dns.size();
+    }
+
+
+    /**
+     * Tells if this list can be used for a search.
+     *
+     * @param searchRequest The search
+     * @param maxAge The time after which the list is rebuilt, in ms
+     * @return <code>true</code> if the list has been built by the same search, and is not too old
+     */
+    public boolean isValidFor( SearchRequest searchRequest, long maxAge )
+    {
+        return ( System.currentTimeMillis() - creationTime <= maxAge )
+            && signature.equals( getSignature( searchRequest ) );
+    }
+
+
+    /**
+     * @return The context ID
+     */
+    public int getContextIdValue()
+    {
+        return contextIdValue;
+    }
+
+
+    /**
+     * @return The encoded context ID, sent back to the client
+     */
+    public byte[] getContextId()
+    {
+        return contextId;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "VlvSearchContext : " + contextIdValue + ", " + dns.size() + " entries, sorted on " + type.getName()
+            + ( reverse ? " (reverse)" : "" );
+    }
+}
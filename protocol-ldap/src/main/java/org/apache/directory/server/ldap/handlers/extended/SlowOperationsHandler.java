@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.metrics.OperationMetrics;
+import org.apache.directory.server.core.api.metrics.SlowOperationLog;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A handler returning the last slow operations kept by the {@link SlowOperationLog}. The
+ * request value, if any, is the maximum number of operations to return, as an UTF-8 decimal
+ * number. The response value is an UTF-8 text, with one operation per line, the most recent
+ * first. Only the administrators can use this operation.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SlowOperationsHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse>
+{
+    private static final Logger LOG = LoggerFactory.getLogger( SlowOperationsHandler.class );
+
+    /** The OID of the request and of the response */
+    public static final String EXTENSION_OID = "1.3.6.1.4.1.18060.0.1.20";
+
+    public static final Set<String> EXTENSION_OIDS = Collections.singleton( EXTENSION_OID );
+
+    /** The LDAP server */
+    private LdapServer ldapServer;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getOid()
+    {
+        return EXTENSION_OID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handleExtendedOperation( LdapSession requestor, ExtendedRequest req ) throws Exception
+    {
+        OpaqueExtendedResponse response = new OpaqueExtendedResponse( req.getMessageId(), EXTENSION_OID );
+
+        if ( !requestor.getCoreSession().isAnAdministrator() )
+        {
+            LOG.info( "Rejected the slow operations request of {}",
+                requestor.getCoreSession().getEffectivePrincipal().getName() );
+            response.getLdapResult().setResultCode( ResultCodeEnum.INSUFFICIENT_ACCESS_RIGHTS );
+            requestor.getIoSession().write( response );
+
+            return;
+        }
+
+        OperationMetrics metrics = ldapServer.getDirectoryService().getOperationMetrics();
+
+        if ( metrics == null )
+        {
+            response.getLdapResult().setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            response.getLdapResult().setDiagnosticMessage( "The operation metrics are not available" );
+            requestor.getIoSession().write( response );
+
+            return;
+        }
+
+        SlowOperationLog slowOperationLog = metrics.getSlowOperationLog();
+        int max = slowOperationLog.getCapacity();
+
+        if ( req instanceof OpaqueExtendedRequest )
+        {
+            byte[] value = ( ( OpaqueExtendedRequest ) req ).getRequestValue();
+
+            if ( !Strings.isEmpty( value ) )
+            {
+                try
+                {
+                    max = Integer.parseInt( Strings.utf8ToString( value ).trim() );
+                }
+                catch ( NumberFormatException nfe )
+                {
+                    response.getLdapResult().setResultCode( ResultCodeEnum.PROTOCOL_ERROR );
+                    response.getLdapResult().setDiagnosticMessage( "Invalid number of operations : "
+                        + Strings.utf8ToString( value ) );
+                    requestor.getIoSession().write( response );
+
+                    return;
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( String operation : slowOperationLog.getSlowOperations( max ) )
+        {
+            sb.append( operation ).append( '\n' );
+        }
+
+        response.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+        response.setResponseValue( Strings.getBytesUtf8( sb.toString() ) );
+        requestor.getIoSession().write( response );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getExtensionOids()
+    {
+        return EXTENSION_OIDS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setLdapServer( LdapServer ldapServer )
+    {
+        this.ldapServer = ldapServer;
+    }
+}
@@ -29,7 +29,14 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.asn1.ber.tlv.IntegerDecoder;
+import org.apache.directory.api.asn1.ber.tlv.IntegerDecoderException;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequest;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponse;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponseImpl;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResultCode;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorClosedException;
@@ -63,8 +70,13 @@ import org.apache.directory.api.ldap.model.message.controls.ManageDsaIT;
 import org.apache.directory.api.ldap.model.message.controls.PagedResults;
 import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
 import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortResponse;
+import org.apache.directory.api.ldap.model.message.controls.SortResponseImpl;
+import org.apache.directory.api.ldap.model.message.controls.SortResultCode;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -73,15 +85,21 @@ import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.event.EventType;
 import org.apache.directory.server.core.api.event.NotificationCriteria;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.EncodedResponseCache;
 import org.apache.directory.server.ldap.LdapSession;
 import org.apache.directory.server.ldap.handlers.LdapRequestHandler;
 import org.apache.directory.server.ldap.handlers.PersistentSearchListener;
 import org.apache.directory.server.ldap.handlers.SearchAbandonListener;
 import org.apache.directory.server.ldap.handlers.SearchTimeLimitingMonitor;
 import org.apache.directory.server.ldap.handlers.controls.PagedSearchContext;
+import org.apache.directory.server.ldap.handlers.controls.PagedSearchManager;
+import org.apache.directory.server.ldap.handlers.controls.VlvSearchContext;
 import org.apache.directory.server.ldap.replication.provider.ReplicationRequestHandler;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -371,10 +389,50 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Searches in the core session, with the effective size limit : the smallest of the
+     * requested and the server limits. This way, a sorted search only keeps the entries
+     * which can be returned. The requested size limit is restored once the search is done.
+     */
+    private Cursor<Entry> search( LdapSession session, SearchRequest req ) throws LdapException
+    {
+        return search( session, req, null );
+    }
+
+
+    /**
+     * Searches the directory, resuming a paged search after the position of the last
+     * entry it returned, if known.
+     */
+    private Cursor<Entry> search( LdapSession session, SearchRequest req, SearchPosition resumePosition )
+        throws LdapException
+    {
+        long requestLimit = req.getSizeLimit();
+        long sizeLimit = min( requestLimit == 0L ? Long.MAX_VALUE : requestLimit, getServerSizeLimit( session, req ) );
+
+        req.setSizeLimit( sizeLimit == Long.MAX_VALUE ? 0L : sizeLimit );
+
+        try
+        {
+            return session.getCoreSession().search( req, resumePosition );
+        }
+        finally
+        {
+            req.setSizeLimit( requestLimit );
+        }
+    }
+
+
     private void writeResults( LdapSession session, SearchRequest req, LdapResult ldapResult,
         Cursor<Entry> cursor, long sizeLimit ) throws Exception
     {
         long count = 0;
+        OperationProfile profile = null;
+
+        if ( cursor instanceof EntryFilteringCursor )
+        {
+            profile = ( ( EntryFilteringCursor ) cursor ).getOperationContext().getProfile();
+        }
 
         while ( ( count < sizeLimit ) && cursor.next() )
         {
@@ -405,7 +463,8 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             }
 
             Entry entry = cursor.get();
-            session.getIoSession().write( generateResponse( session, req, entry ) );
+            long writeStart = System.nanoTime();
+            writeEntry( session, req, entry );
 
             if ( IS_DEBUG )
             {
@@ -413,6 +472,18 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             }
 
             count++;
+            boolean writable = awaitWritable( session, req );
+
+            if ( profile != null )
+            {
+                profile.addTime( "write", System.nanoTime() - writeStart );
+                profile.entryReturned();
+            }
+
+            if ( !writable )
+            {
+                break;
+            }
         }
 
         // check if the result code is not already set
@@ -435,6 +506,58 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Writes the response for an entry. If the encoded response is in the cache, we send it
+     * with the request's message ID, otherwise we encode it and cache it.
+     */
+    private void writeEntry( LdapSession session, SearchRequest req, Entry entry ) throws Exception
+    {
+        EncodedResponseCache cache = ldapServer.getEncodedResponseCache();
+        String key = ( cache == null ) ? null : cache.getKey( session, req, entry );
+
+        if ( key != null )
+        {
+            IoBuffer encoded = cache.get( key, req.getMessageId() );
+
+            if ( encoded == null )
+            {
+                Response response = generateResponse( session, req, entry );
+
+                if ( response instanceof SearchResultEntry )
+                {
+                    encoded = cache.put( key, ( SearchResultEntry ) response );
+                }
+
+                if ( encoded == null )
+                {
+                    session.getIoSession().write( response );
+
+                    return;
+                }
+            }
+
+            session.getIoSession().write( encoded );
+
+            return;
+        }
+
+        session.getIoSession().write( generateResponse( session, req, entry ) );
+    }
+
+
+    /**
+     * Waits for the client to read the responses already queued on the session when there
+     * are too many of them, so that a slow client can't fill the memory with its pending
+     * responses : the cursor is not read while we wait.
+     *
+     * @return <code>false</code> if the session has been closed or the request abandoned
+     */
+    private boolean awaitWritable( LdapSession session, SearchRequest req ) throws InterruptedException
+    {
+        return session.awaitWritable( ldapServer.getWriteHighWaterMark(), ldapServer.getWriteLowWaterMark(), req );
+    }
+
+
     private void readPagedResults( LdapSession session, SearchRequest req, LdapResult ldapResult,
         Cursor<Entry> cursor, long sizeLimit, int pagedLimit, PagedSearchContext pagedContext,
         PagedResults pagedResultsControl ) throws Exception
@@ -460,9 +583,22 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             }
 
             Entry entry = cursor.get();
-            session.getIoSession().write( generateResponse( session, req, entry ) );
+            writeEntry( session, req, entry );
+            pagedContext.setLastDn( entry.getDn() );
+
+            if ( cursor instanceof EntryFilteringCursor )
+            {
+                // The partition tells where this entry is in its candidates
+                pagedContext.setLastPosition( ( ( EntryFilteringCursor ) cursor ).getOperationContext().getPosition() );
+            }
+
             count++;
             pageCount++;
+
+            if ( !awaitWritable( session, req ) )
+            {
+                break;
+            }
         }
 
         // DO NOT WRITE THE RESPONSE - JUST RETURN IT
@@ -587,6 +723,41 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Recreates the cursor of a paged search context, which has been closed while the
+     * context was idle, and moves it after the last returned entry. The partition seeks
+     * its candidates to the position of this entry when it walks them the same way,
+     * otherwise the new cursor is read until this entry is found.
+     *
+     * @return The new cursor
+     */
+    private Cursor<Entry> resumePagedSearch( LdapSession session, SearchRequest req,
+        PagedSearchContext pagedContext ) throws Exception
+    {
+        Cursor<Entry> cursor = search( session, req, pagedContext.getLastPosition() );
+        boolean positioned = ( cursor instanceof EntryFilteringCursor )
+            && ( ( EntryFilteringCursor ) cursor ).getOperationContext().isResumed();
+
+        if ( !pagedContext.resume( cursor, positioned ) )
+        {
+            LOG.debug( "The last entry returned by the paged search {} is gone, skipping the returned entries",
+                pagedContext );
+        }
+
+        if ( pagedContext.getLastDn() != null )
+        {
+            PagedSearchManager pagedSearchManager = ldapServer.getPagedSearchManager();
+
+            if ( pagedSearchManager != null )
+            {
+                pagedSearchManager.resumed();
+            }
+        }
+
+        return cursor;
+    }
+
+
     /**
      * Handle a Paged Search request.
      */
@@ -635,7 +806,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         if ( Strings.isEmpty( cookie ) )
         {
             // No cursor : do a search.
-            cursor = session.getCoreSession().search( req );
+            cursor = search( session, req );
 
             // Position the cursor at the beginning
             cursor.beforeFirst();
@@ -672,6 +843,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             {
                 // Case 2 : create the context
                 pagedContext = new PagedSearchContext( req );
+                pagedContext.acquire();
 
                 session.addPagedSearchContext( pagedContext );
                 cookie = pagedContext.getCookie();
@@ -703,9 +875,16 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
             if ( pagedContext.hasSameRequest( req, session ) )
             {
-                // Case 3 : continue the search
+                // Case 3 : continue the search. The cursor may have been closed if the
+                // context was idle, we then have to recreate it
+                pagedContext.acquire();
                 cursor = pagedContext.getCursor();
 
+                if ( cursor == null )
+                {
+                    cursor = resumePagedSearch( session, req, pagedContext );
+                }
+
                 // get the cookie
                 cookie = pagedContext.getCookie();
                 pagedResultsControl = new PagedResultsImpl();
@@ -725,10 +904,14 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                     cursor.close();
                 }
 
+                removeContext( session, pagedContext );
+
                 // Now create a new context and stores it into the session
                 pagedContext = new PagedSearchContext( req );
+                pagedContext.acquire();
 
                 session.addPagedSearchContext( pagedContext );
+                cursor = resumePagedSearch( session, req, pagedContext );
 
                 cookie = pagedContext.getCookie();
                 pagedResultsControl = new PagedResultsImpl();
@@ -762,11 +945,293 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 }
             }
         }
+        finally
+        {
+            PagedSearchManager pagedSearchManager = ldapServer.getPagedSearchManager();
+
+            if ( pagedSearchManager != null )
+            {
+                pagedSearchManager.release( pagedContext );
+            }
+            else
+            {
+                pagedContext.release();
+            }
+        }
 
         return ( SearchResultDone ) req.getResultResponse();
     }
 
 
+    /**
+     * Handle a Virtual List View search. The sorted list of the matching entries is built
+     * by the first request and kept in the session, so that the next requests using the
+     * same context ID only read the entries of their window, instead of sorting the entries
+     * again.
+     */
+    private SearchResultDone doVlvSearch( LdapSession session, SearchRequest req, VirtualListViewRequest vlvRequest )
+        throws Exception
+    {
+        SearchResultDone done = ( SearchResultDone ) req.getResultResponse();
+        LdapResult ldapResult = done.getLdapResult();
+        VirtualListViewResponse vlvResponse = new VirtualListViewResponseImpl();
+        SortRequest sortRequest = ( SortRequest ) req.getControls().get( SortRequest.OID );
+
+        if ( ( sortRequest == null ) || sortRequest.getSortKeys().isEmpty() )
+        {
+            // The entries must be sorted
+            vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.SORTCONTROLMISSING );
+            ldapResult.setDiagnosticMessage( "A Virtual List View search requires a sort control" );
+            ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            done.addControl( vlvResponse );
+
+            return done;
+        }
+
+        if ( req.getControls().containsKey( PagedResults.OID ) )
+        {
+            vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.UNWILLINGTOPERFORM );
+            ldapResult.setDiagnosticMessage( "A Virtual List View search can't be a paged search" );
+            ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            done.addControl( vlvResponse );
+
+            return done;
+        }
+
+        VlvSearchContext vlvContext = getVlvSearchContext( session, req, vlvRequest );
+
+        if ( vlvContext == null )
+        {
+            // The search has failed, or has been abandoned : the result code is already set
+            if ( ldapResult.getResultCode() == ResultCodeEnum.ADMIN_LIMIT_EXCEEDED )
+            {
+                vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.ADMINLIMITEXCEEDED );
+            }
+            else
+            {
+                vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.UNWILLINGTOPERFORM );
+            }
+
+            if ( ldapResult.getResultCode() == null )
+            {
+                ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            }
+
+            done.addControl( vlvResponse );
+
+            return done;
+        }
+
+        int size = vlvContext.size();
+        int target;
+
+        if ( vlvRequest.hasAssertionValue() )
+        {
+            target = vlvContext.getTargetPosition( vlvRequest.getAssertionValue() );
+        }
+        else
+        {
+            target = vlvContext.getTargetPosition( vlvRequest.getOffset(), vlvRequest.getContentCount() );
+        }
+
+        vlvResponse.setContextId( vlvContext.getContextId() );
+        vlvResponse.setContentCount( size );
+
+        if ( target == 0 )
+        {
+            vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.OFFSETRANGEERROR );
+            ldapResult.setDiagnosticMessage( "Invalid Virtual List View offset : " + vlvRequest.getOffset() );
+            ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            done.addControl( vlvResponse );
+
+            return done;
+        }
+
+        // The size limit applies to the entries of the window
+        long requestLimit = req.getSizeLimit() == 0L ? Long.MAX_VALUE : req.getSizeLimit();
+        long sizeLimit = min( requestLimit, getServerSizeLimit( session, req ) );
+        int first = ( int ) Math.max( 1L, ( long ) target - vlvRequest.getBeforeCount() );
+        int last = ( int ) Math.min( size, ( long ) target + vlvRequest.getAfterCount() );
+        SchemaManager schemaManager = session.getCoreSession().getDirectoryService().getSchemaManager();
+        String[] attributes = req.getAttributes().toArray( new String[0] );
+        long count = 0;
+
+        for ( int position = first; position <= last; position++ )
+        {
+            if ( session.getIoSession().isClosing() || req.isAbandoned() )
+            {
+                break;
+            }
+
+            if ( count >= sizeLimit )
+            {
+                ldapResult.setResultCode( ResultCodeEnum.SIZE_LIMIT_EXCEEDED );
+                break;
+            }
+
+            Entry entry;
+
+            try
+            {
+                // The entry is read again, with the access controls of the session
+                entry = session.getCoreSession().lookup( new Dn( schemaManager, vlvContext.getDn( position ) ),
+                    attributes );
+            }
+            catch ( LdapException le )
+            {
+                // The entry has been deleted since the list has been built
+                if ( IS_DEBUG )
+                {
+                    LOG.debug( "Skipping {} in the Virtual List View {} : {}", vlvContext.getDn( position ),
+                        vlvContext, le.getMessage() );
+                }
+
+                continue;
+            }
+
+            if ( entry == null )
+            {
+                continue;
+            }
+
+            writeEntry( session, req, entry );
+            count++;
+
+            if ( !awaitWritable( session, req ) )
+            {
+                break;
+            }
+        }
+
+        if ( ldapResult.getResultCode() == null )
+        {
+            ldapResult.setResultCode( ResultCodeEnum.SUCCESS );
+        }
+
+        vlvResponse.setTargetPosition( target );
+        vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.SUCCESS );
+        done.addControl( vlvResponse );
+
+        return done;
+    }
+
+
+    /**
+     * Gets the sorted list of a Virtual List View search : the one associated with the
+     * context ID of the request if it has been built by the same search, otherwise a new one.
+     *
+     * @return The list, or null if the search has failed
+     */
+    private VlvSearchContext getVlvSearchContext( LdapSession session, SearchRequest req,
+        VirtualListViewRequest vlvRequest ) throws Exception
+    {
+        byte[] contextId = vlvRequest.getContextId();
+        VlvSearchContext vlvContext = null;
+
+        if ( !Strings.isEmpty( contextId ) )
+        {
+            try
+            {
+                vlvContext = session.getVlvSearchContext( IntegerDecoder.parse( new BerValue( contextId ) ) );
+            }
+            catch ( IntegerDecoderException ide )
+            {
+                // Not one of our context IDs : the list is built again
+            }
+        }
+
+        if ( vlvContext != null )
+        {
+            if ( vlvContext.isValidFor( req, VlvSearchContext.DEFAULT_MAX_AGE ) )
+            {
+                // The entries have already been sorted
+                SortResponse sortResponse = new SortResponseImpl();
+                sortResponse.setSortResult( SortResultCode.SUCCESS );
+                req.getResultResponse().addControl( sortResponse );
+
+                return vlvContext;
+            }
+
+            session.removeVlvSearchContext( vlvContext.getContextIdValue() );
+        }
+
+        SchemaManager schemaManager = session.getCoreSession().getDirectoryService().getSchemaManager();
+        vlvContext = new VlvSearchContext( session.getNextVlvContextId(), req, schemaManager );
+
+        // The size limit applies to the window, not to the list
+        long sizeLimit = req.getSizeLimit();
+        req.setSizeLimit( 0L );
+        Cursor<Entry> cursor;
+
+        try
+        {
+            cursor = session.getCoreSession().search( req );
+        }
+        finally
+        {
+            req.setSizeLimit( sizeLimit );
+        }
+
+        LdapResult ldapResult = req.getResultResponse().getLdapResult();
+        SortResponse sortResponse = ( SortResponse ) req.getResultResponse().getControls().get( SortResponse.OID );
+
+        try
+        {
+            if ( ( ldapResult.getResultCode() != null )
+                || ( ( sortResponse != null ) && ( sortResponse.getSortResult() != SortResultCode.SUCCESS ) ) )
+            {
+                // The entries can't be sorted
+                return null;
+            }
+
+            session.registerSearchRequest( req, cursor );
+            req.addAbandonListener( new SearchAbandonListener( ldapServer, cursor ) );
+            setTimeLimitsOnCursor( req, session, cursor );
+
+            int maxEntries = ldapServer.getVlvMaxEntries();
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                if ( session.getIoSession().isClosing() || req.isAbandoned() )
+                {
+                    return null;
+                }
+
+                if ( vlvContext.size() >= maxEntries )
+                {
+                    ldapResult.setDiagnosticMessage( "Too many entries for a Virtual List View" );
+                    ldapResult.setResultCode( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED );
+
+                    return null;
+                }
+
+                vlvContext.add( cursor.get() );
+            }
+        }
+        finally
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.error( I18n.err( I18n.ERR_168 ), e );
+            }
+        }
+
+        session.addVlvSearchContext( vlvContext );
+
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "Built the Virtual List View {}", vlvContext );
+        }
+
+        return vlvContext;
+    }
+
+
     /**
      * Conducts a simple search across the result set returning each entry
      * back except for the search response done.  This is calculated but not
@@ -782,6 +1247,14 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     {
         LdapResult ldapResult = req.getResultResponse().getLdapResult();
 
+        // Check if we are using the Virtual List View Control
+        Object vlvControl = req.getControls().get( VirtualListViewRequest.OID );
+
+        if ( vlvControl != null )
+        {
+            return doVlvSearch( session, req, ( VirtualListViewRequest ) vlvControl );
+        }
+
         // Check if we are using the Paged Search Control
         Object control = req.getControls().get( PagedResults.OID );
 
@@ -794,7 +1267,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         // A normal search
         // Check that we have a cursor or not.
         // No cursor : do a search.
-        Cursor<Entry> cursor = session.getCoreSession().search( req );
+        Cursor<Entry> cursor = search( session, req );
 
         // register the request in the session
         session.registerSearchRequest( req, cursor );
@@ -0,0 +1,431 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.event.EventService;
+import org.apache.directory.server.core.api.event.NotificationCriteria;
+import org.apache.directory.server.core.api.event.RegistrationEntry;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the EncodedResponseCache : a cached response must be the same as the response
+ * encoded with the new message ID, and must not be sent to another user, for other requested
+ * attributes, or once the entry or the access control have changed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EncodedResponseCacheTest
+{
+    private static final LdapApiService CODEC = LdapApiServiceFactory.getSingleton();
+
+    private static final String ADMIN_DN = "uid=admin,ou=system";
+    private static final String USER_DN = "uid=user,ou=users,ou=system";
+    private static final String ENTRY_UUID = "f290425c-8272-4e62-8a67-92b06f38dbf5";
+    private static final String ENTRY_CSN = "20261016120000.000000Z#000000#000#000000";
+
+    private static SchemaManager schemaManager;
+
+    private MockDirectoryService directoryService;
+    private EncodedResponseCache cache;
+
+    /** The listeners added to the event service, with their criteria */
+    private final List<DirectoryListener> listeners = new ArrayList<>();
+    private final List<NotificationCriteria> criterias = new ArrayList<>();
+
+    /** The listeners removed from the event service */
+    private final List<DirectoryListener> removed = new ArrayList<>();
+
+    /**
+     * An event service which only records the added and removed listeners
+     */
+    private class RecordingEventService implements EventService
+    {
+        @Override
+        public void addListener( DirectoryListener listener, NotificationCriteria criteria )
+        {
+            listeners.add( listener );
+            criterias.add( criteria );
+        }
+
+
+        @Override
+        public void removeListener( DirectoryListener listener )
+        {
+            removed.add( listener );
+        }
+
+
+        @Override
+        public List<RegistrationEntry> getRegistrationEntries()
+        {
+            return Collections.emptyList();
+        }
+    }
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void createCache()
+    {
+        directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        cache = new EncodedResponseCache( CODEC, schemaManager, 10 );
+    }
+
+
+    private LdapSession createSession( String principalDn, AuthenticationLevel level ) throws Exception
+    {
+        LdapPrincipal principal = new LdapPrincipal( schemaManager, new Dn( schemaManager, principalDn ), level );
+
+        LdapSession session = new LdapSession( new DummySession() );
+        session.setCoreSession( new MockCoreSession( principal, directoryService ) );
+
+        return session;
+    }
+
+
+    private static SearchRequest createRequest( boolean typesOnly, String... attributes ) throws Exception
+    {
+        SearchRequest req = new SearchRequestImpl();
+        req.setMessageId( 1 );
+        req.setBase( new Dn( schemaManager, "ou=system" ) );
+        req.setScope( SearchScope.SUBTREE );
+        req.setFilter( "(objectClass=*)" );
+        req.setTypesOnly( typesOnly );
+        req.addAttributes( attributes );
+
+        return req;
+    }
+
+
+    /**
+     * Creates an entry as returned by the search cursor
+     */
+    private static Entry createEntry( String csn ) throws Exception
+    {
+        Entry original = new DefaultEntry( schemaManager, "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "entryUUID: " + ENTRY_UUID,
+            "entryCSN: " + csn );
+
+        return new ClonedServerEntry( original );
+    }
+
+
+    private static SearchResultEntry createResponse( int messageId, Entry entry )
+    {
+        SearchResultEntry response = new SearchResultEntryImpl( messageId );
+        response.setEntry( entry );
+        response.setObjectName( entry.getDn() );
+
+        return response;
+    }
+
+
+    private static byte[] encode( SearchResultEntry response ) throws Exception
+    {
+        ByteBuffer encoded = LdapEncoder.encodeMessage( new Asn1Buffer(), CODEC, response );
+
+        return encoded.array();
+    }
+
+
+    private static byte[] toBytes( IoBuffer buffer )
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get( bytes );
+
+        return bytes;
+    }
+
+
+    @Test
+    public void testMessageIdIsPatched() throws Exception
+    {
+        StringBuilder description = new StringBuilder();
+
+        for ( int i = 0; i < 300; i++ )
+        {
+            description.append( 'x' );
+        }
+
+        Entry entry = new DefaultEntry( "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "description: " + description );
+
+        EncodedResponseCache cache = new EncodedResponseCache( CODEC, null, 10 );
+
+        // Encoded with a 1 byte message ID, sent with 1, 2, 3 and 4 bytes IDs
+        IoBuffer first = cache.put( "key", createResponse( 1, entry ) );
+        assertArrayEquals( encode( createResponse( 1, entry ) ), toBytes( first ) );
+
+        for ( int messageId : new int[]
+            { 5, 127, 128, 40000, 8000000, Integer.MAX_VALUE } )
+        {
+            assertArrayEquals( encode( createResponse( messageId, entry ) ),
+                toBytes( cache.get( "key", messageId ) ) );
+        }
+
+        assertNull( cache.get( "unknown", 1 ) );
+    }
+
+
+    @Test
+    public void testSameKey() throws Exception
+    {
+        String key = cache.getKey( createSession( ADMIN_DN, AuthenticationLevel.SIMPLE ),
+            createRequest( false, "cn", "sn" ), createEntry( ENTRY_CSN ) );
+
+        assertNotNull( key );
+        assertEquals( key, cache.getKey( createSession( ADMIN_DN, AuthenticationLevel.SIMPLE ),
+            createRequest( false, "cn", "sn" ), createEntry( ENTRY_CSN ) ) );
+    }
+
+
+    @Test
+    public void testKeyDependsOnPrincipal() throws Exception
+    {
+        SearchRequest req = createRequest( false, "cn" );
+        Entry entry = createEntry( ENTRY_CSN );
+
+        String adminKey = cache.getKey( createSession( ADMIN_DN, AuthenticationLevel.SIMPLE ), req, entry );
+        String userKey = cache.getKey( createSession( USER_DN, AuthenticationLevel.SIMPLE ), req, entry );
+        String anonymousKey = cache.getKey( createSession( "", AuthenticationLevel.NONE ), req, entry );
+
+        assertNotEquals( adminKey, userKey );
+        assertNotEquals( adminKey, anonymousKey );
+        assertNotEquals( userKey, anonymousKey );
+    }
+
+
+    @Test
+    public void testKeyDependsOnAuthenticationLevel() throws Exception
+    {
+        SearchRequest req = createRequest( false, "cn" );
+        Entry entry = createEntry( ENTRY_CSN );
+
+        // The access control may depend on the authentication level
+        assertNotEquals( cache.getKey( createSession( USER_DN, AuthenticationLevel.SIMPLE ), req, entry ),
+            cache.getKey( createSession( USER_DN, AuthenticationLevel.STRONG ), req, entry ) );
+    }
+
+
+    @Test
+    public void testKeyDependsOnRequestedAttributes() throws Exception
+    {
+        LdapSession session = createSession( ADMIN_DN, AuthenticationLevel.SIMPLE );
+        Entry entry = createEntry( ENTRY_CSN );
+
+        String cnKey = cache.getKey( session, createRequest( false, "cn" ), entry );
+        String snKey = cache.getKey( session, createRequest( false, "sn" ), entry );
+        String allKey = cache.getKey( session, createRequest( false, "*" ), entry );
+        String noneKey = cache.getKey( session, createRequest( false, "1.1" ), entry );
+
+        assertNotNull( cnKey );
+        assertNotNull( allKey );
+        assertNotNull( noneKey );
+        assertNotEquals( cnKey, snKey );
+        assertNotEquals( cnKey, allKey );
+        assertNotEquals( allKey, noneKey );
+        assertNotEquals( cnKey, cache.getKey( session, createRequest( false, "cn", "sn" ), entry ) );
+    }
+
+
+    @Test
+    public void testKeyDependsOnTypesOnly() throws Exception
+    {
+        LdapSession session = createSession( ADMIN_DN, AuthenticationLevel.SIMPLE );
+        Entry entry = createEntry( ENTRY_CSN );
+
+        assertNotEquals( cache.getKey( session, createRequest( false, "cn" ), entry ),
+            cache.getKey( session, createRequest( true, "cn" ), entry ) );
+    }
+
+
+    @Test
+    public void testNoKey() throws Exception
+    {
+        LdapSession session = createSession( ADMIN_DN, AuthenticationLevel.SIMPLE );
+        Entry entry = createEntry( ENTRY_CSN );
+
+        // The operational attributes may be computed, they are not cached
+        assertNull( cache.getKey( session, createRequest( false, "+" ), entry ) );
+        assertNull( cache.getKey( session, createRequest( false, "cn", "entryUUID" ), entry ) );
+
+        // The entry must come from the backend, with its entryUUID and its entryCSN
+        assertNull( cache.getKey( session, createRequest( false, "cn" ),
+            ( ( ClonedServerEntry ) entry ).getOriginalEntry() ) );
+
+        Entry noCsn = new DefaultEntry( schemaManager, "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test",
+            "entryUUID: " + ENTRY_UUID );
+
+        assertNull( cache.getKey( session, createRequest( false, "cn" ), new ClonedServerEntry( noCsn ) ) );
+    }
+
+
+    @Test
+    public void testModifiedEntryIsNotFound() throws Exception
+    {
+        LdapSession session = createSession( ADMIN_DN, AuthenticationLevel.SIMPLE );
+        SearchRequest req = createRequest( false, "cn" );
+        Entry entry = createEntry( ENTRY_CSN );
+
+        String key = cache.getKey( session, req, entry );
+        assertNotNull( cache.put( key, createResponse( 1, entry ) ) );
+        assertNotNull( cache.get( key, 2 ) );
+
+        // The modified entry has a new entryCSN, so a new key
+        Entry modified = createEntry( "20261016120001.000000Z#000000#000#000000" );
+        String modifiedKey = cache.getKey( session, req, modified );
+
+        assertNotEquals( key, modifiedKey );
+        assertNull( cache.get( modifiedKey, 2 ) );
+    }
+
+
+    @Test
+    public void testListenerWiring() throws Exception
+    {
+        EventService eventService = new RecordingEventService();
+        cache.register( eventService );
+
+        assertEquals( 1, listeners.size() );
+
+        DirectoryListener listener = listeners.get( 0 );
+        NotificationCriteria criteria = criterias.get( 0 );
+
+        // Cleared before the modification of a subentry or a group returns
+        assertTrue( listener.isSynchronous() );
+        assertEquals( Dn.ROOT_DSE, criteria.getBase() );
+        assertEquals( SearchScope.SUBTREE, criteria.getScope() );
+
+        String filter = criteria.getFilter().toString();
+        assertTrue( filter.contains( "subentry" ) );
+        assertTrue( filter.contains( "groupOfNames" ) );
+        assertTrue( filter.contains( "groupOfUniqueNames" ) );
+
+        cache.put( "key", createResponse( 1, createEntry( ENTRY_CSN ) ) );
+        cache.unregister();
+
+        assertEquals( 1, removed.size() );
+        assertSame( listener, removed.get( 0 ) );
+        assertNull( cache.get( "key", 1 ) );
+
+        // Only removed once
+        cache.unregister();
+        assertEquals( 1, removed.size() );
+    }
+
+
+    @Test
+    public void testClearedOnAccessControlChange() throws Exception
+    {
+        cache.register( new RecordingEventService() );
+        DirectoryListener listener = listeners.get( 0 );
+        CoreSession coreSession = createSession( ADMIN_DN, AuthenticationLevel.SIMPLE ).getCoreSession();
+        Entry entry = createEntry( ENTRY_CSN );
+
+        cache.put( "key", createResponse( 1, entry ) );
+        listener.entryAdded( new AddOperationContext( coreSession, entry ) );
+        assertNull( cache.get( "key", 1 ) );
+
+        cache.put( "key", createResponse( 1, entry ) );
+        listener.entryDeleted( new DeleteOperationContext( coreSession ) );
+        assertNull( cache.get( "key", 1 ) );
+
+        cache.put( "key", createResponse( 1, entry ) );
+        listener.entryModified( new ModifyOperationContext( coreSession ) );
+        assertNull( cache.get( "key", 1 ) );
+
+        cache.put( "key", createResponse( 1, entry ) );
+        listener.entryRenamed( new RenameOperationContext( coreSession ) );
+        assertNull( cache.get( "key", 1 ) );
+
+        cache.put( "key", createResponse( 1, entry ) );
+        listener.entryMoved( new MoveOperationContext( coreSession ) );
+        assertNull( cache.get( "key", 1 ) );
+
+        cache.put( "key", createResponse( 1, entry ) );
+        listener.entryMovedAndRenamed( new MoveAndRenameOperationContext( coreSession ) );
+        assertNull( cache.get( "key", 1 ) );
+    }
+}
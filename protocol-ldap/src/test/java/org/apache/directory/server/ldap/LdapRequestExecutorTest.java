@@ -0,0 +1,217 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.message.AbandonRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.junit.Test;
+
+
+/**
+ * Tests the LdapRequestExecutor modes and statistics.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapRequestExecutorTest
+{
+    @Test
+    public void testParseMode()
+    {
+        assertEquals( LdapRequestExecutor.Mode.POOL, LdapRequestExecutor.parseMode( null ) );
+        assertEquals( LdapRequestExecutor.Mode.POOL, LdapRequestExecutor.parseMode( "Pool" ) );
+        assertEquals( LdapRequestExecutor.Mode.PER_OPERATION, LdapRequestExecutor.parseMode( "per-operation" ) );
+        assertEquals( LdapRequestExecutor.Mode.VIRTUAL, LdapRequestExecutor.parseMode( " virtual " ) );
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseUnknownMode()
+    {
+        LdapRequestExecutor.parseMode( "fork" );
+    }
+
+
+    @Test
+    public void testPerOperationPools()
+    {
+        LdapRequestExecutor executor = new LdapRequestExecutor( LdapRequestExecutor.Mode.PER_OPERATION, 2 );
+
+        try
+        {
+            assertEquals( 4, executor.getPoolNames().size() );
+            assertTrue( executor.getPoolNames().contains( LdapRequestExecutor.SEARCH_POOL ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testStatistics() throws Exception
+    {
+        LdapRequestExecutor executor = new LdapRequestExecutor( LdapRequestExecutor.Mode.POOL, 1 );
+
+        try
+        {
+            CountDownLatch blocked = new CountDownLatch( 1 );
+            CountDownLatch done = new CountDownLatch( 3 );
+
+            // The first task blocks the only thread, the next ones wait
+            executor.execute( () ->
+            {
+                try
+                {
+                    blocked.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                done.countDown();
+            } );
+            executor.execute( done::countDown );
+            executor.execute( done::countDown );
+
+            assertEquals( 2L, executor.getQueueDepth( LdapRequestExecutor.DEFAULT_POOL ) );
+
+            blocked.countDown();
+            assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+
+            assertEquals( 0L, executor.getQueueDepth( LdapRequestExecutor.DEFAULT_POOL ) );
+            assertEquals( 3L, executor.getStartedCount( LdapRequestExecutor.DEFAULT_POOL ) );
+            assertTrue( executor.getMaxWaitTime( LdapRequestExecutor.DEFAULT_POOL ) >= executor
+                .getAverageWaitTime( LdapRequestExecutor.DEFAULT_POOL ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * A received message, which records its execution instead of going down the filter chain
+     */
+    private static class Received extends IoFilterEvent
+    {
+        private final List<Integer> executed;
+        private final CountDownLatch latch;
+
+
+        Received( IoSession session, Object message, List<Integer> executed, CountDownLatch latch )
+        {
+            super( null, IoEventType.MESSAGE_RECEIVED, session, message );
+            this.executed = executed;
+            this.latch = latch;
+        }
+
+
+        @Override
+        public void fire()
+        {
+            try
+            {
+                latch.await( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if ( getParameter() instanceof SearchRequest )
+            {
+                executed.add( ( ( SearchRequest ) getParameter() ).getMessageId() );
+            }
+        }
+    }
+
+
+    private static SearchRequest search( int messageId )
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setMessageId( messageId );
+
+        return searchRequest;
+    }
+
+
+    @Test
+    public void testInFlightWindow() throws Exception
+    {
+        LdapRequestExecutor executor = new LdapRequestExecutor( LdapRequestExecutor.Mode.POOL, 4, 1 );
+        IoSession session = new DummySession();
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch blocked = new CountDownLatch( 1 );
+        CountDownLatch open = new CountDownLatch( 0 );
+
+        try
+        {
+            SearchRequest abandoned = search( 2 );
+
+            executor.execute( new Received( session, search( 1 ), executed, blocked ) );
+            executor.execute( new Received( session, abandoned, executed, open ) );
+            executor.execute( new Received( session, search( 3 ), executed, open ) );
+
+            // The abandon request is not delayed, and removes the waiting request
+            AbandonRequestImpl abandonRequest = new AbandonRequestImpl( 2 );
+            abandonRequest.setMessageId( 4 );
+            executor.execute( new Received( session, abandonRequest, executed, open ) );
+
+            assertEquals( 2L, executor.getDelayedCount() );
+            assertTrue( abandoned.isAbandoned() );
+            assertTrue( executed.isEmpty() );
+
+            blocked.countDown();
+
+            long deadline = System.currentTimeMillis() + 10000L;
+
+            while ( ( executed.size() < 2 ) && ( System.currentTimeMillis() < deadline ) )
+            {
+                Thread.sleep( 10L );
+            }
+
+            assertEquals( 1, executed.get( 0 ).intValue() );
+            assertEquals( 3, executed.get( 1 ).intValue() );
+            assertFalse( executed.contains( 2 ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -91,4 +91,22 @@ public class LdapServerSettingsTest
         server.removeSaslMechanismHandler( SupportedSaslMechanisms.PLAIN );
         assertNull( server.getMechanismHandler( SupportedSaslMechanisms.PLAIN ) );
     }
+
+
+    @Test
+    public void testSetWriteWaterMarks()
+    {
+        LdapServer server = new LdapServer();
+        assertEquals( LdapServer.WRITE_HIGH_WATER_MARK_DEFAULT, server.getWriteHighWaterMark() );
+        assertEquals( LdapServer.WRITE_LOW_WATER_MARK_DEFAULT, server.getWriteLowWaterMark() );
+
+        server.setWriteHighWaterMark( 65536L );
+        server.setWriteLowWaterMark( 16384L );
+        assertEquals( 65536L, server.getWriteHighWaterMark() );
+        assertEquals( 16384L, server.getWriteLowWaterMark() );
+
+        // The low water mark can't be above the high one
+        server.setWriteLowWaterMark( 131072L );
+        assertEquals( 65536L, server.getWriteLowWaterMark() );
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearchImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.event.DirectoryListener;
+import org.apache.directory.server.core.api.event.EventService;
+import org.apache.directory.server.core.api.event.NotificationCriteria;
+import org.apache.directory.server.core.api.event.RegistrationEntry;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the limit on the notifications a persistent search can have waiting to be sent.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PersistentSearchListenerTest
+{
+    /** The maximum number of notifications waiting to be sent */
+    private static final int QUEUE_SIZE = 2;
+
+    private static SchemaManager schemaManager;
+
+    /** The listeners removed from the event service */
+    private final List<DirectoryListener> removed = new ArrayList<>();
+
+    /** The session the notifications are written to */
+    private RecordingSession ioSession;
+
+    private LdapSession session;
+    private CoreSession coreSession;
+    private SearchRequest req;
+
+    /**
+     * A session recording the written messages. The writes are only completed when the
+     * test says so.
+     */
+    private static class RecordingSession extends DummySession
+    {
+        private final List<Object> messages = new ArrayList<>();
+        private final List<DefaultWriteFuture> futures = new ArrayList<>();
+
+
+        @Override
+        public WriteFuture write( Object message )
+        {
+            DefaultWriteFuture future = new DefaultWriteFuture( this );
+            messages.add( message );
+            futures.add( future );
+
+            return future;
+        }
+
+
+        /**
+         * Tells that all the written messages have been sent
+         */
+        private void sendAll()
+        {
+            for ( DefaultWriteFuture future : futures )
+            {
+                future.setWritten();
+            }
+
+            futures.clear();
+        }
+    }
+
+    /**
+     * An event service which only records the removed listeners
+     */
+    private class RecordingEventService implements EventService
+    {
+        @Override
+        public void addListener( DirectoryListener listener, NotificationCriteria criteria )
+        {
+        }
+
+
+        @Override
+        public void removeListener( DirectoryListener listener )
+        {
+            removed.add( listener );
+        }
+
+
+        @Override
+        public List<RegistrationEntry> getRegistrationEntries()
+        {
+            return Collections.emptyList();
+        }
+    }
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void createSession() throws Exception
+    {
+        MockDirectoryService directoryService = new MockDirectoryService()
+        {
+            private final EventService eventService = new RecordingEventService();
+
+
+            @Override
+            public EventService getEventService()
+            {
+                return eventService;
+            }
+        };
+
+        directoryService.setSchemaManager( schemaManager );
+        coreSession = new MockCoreSession( new LdapPrincipal(), directoryService );
+
+        LdapServer ldapServer = new LdapServer();
+        ldapServer.setPersistentSearchQueueSize( QUEUE_SIZE );
+
+        ioSession = new RecordingSession();
+        session = new LdapSession( ioSession );
+        session.setCoreSession( coreSession );
+        session.setLdapServer( ldapServer );
+
+        PersistentSearch psearch = new PersistentSearchImpl();
+        psearch.setChangesOnly( true );
+
+        req = new SearchRequestImpl();
+        req.setMessageId( 1 );
+        req.setBase( new Dn( schemaManager, "ou=system" ) );
+        req.setScope( SearchScope.SUBTREE );
+        req.setFilter( "(objectClass=*)" );
+        req.addControl( psearch );
+    }
+
+
+    private AddOperationContext createAddContext( int i ) throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "cn=test" + i + ",ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test" + i,
+            "sn: test" );
+
+        return new AddOperationContext( coreSession, entry );
+    }
+
+
+    @Test
+    public void testAcceptsOverflow()
+    {
+        PersistentSearchListener listener = new PersistentSearchListener( session, req );
+
+        assertTrue( listener.acceptsOverflow() );
+    }
+
+
+    @Test
+    public void testTooManyPendingNotifications() throws Exception
+    {
+        PersistentSearchListener listener = new PersistentSearchListener( session, req );
+
+        for ( int i = 0; i < QUEUE_SIZE; i++ )
+        {
+            listener.entryAdded( createAddContext( i ) );
+        }
+
+        assertEquals( QUEUE_SIZE, ioSession.messages.size() );
+        assertTrue( removed.isEmpty() );
+
+        // The client has not read the previous notifications : the search is ended
+        listener.entryAdded( createAddContext( QUEUE_SIZE ) );
+
+        assertEquals( QUEUE_SIZE + 1, ioSession.messages.size() );
+        assertTrue( ioSession.messages.get( QUEUE_SIZE ) instanceof SearchResultDone );
+
+        SearchResultDone done = ( SearchResultDone ) ioSession.messages.get( QUEUE_SIZE );
+        assertEquals( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED, done.getLdapResult().getResultCode() );
+        assertEquals( Collections.singletonList( listener ), removed );
+
+        // The changes coming after the end of the search are ignored
+        ioSession.sendAll();
+        listener.entryAdded( createAddContext( QUEUE_SIZE + 1 ) );
+
+        assertEquals( QUEUE_SIZE + 1, ioSession.messages.size() );
+        assertEquals( 1, removed.size() );
+    }
+
+
+    @Test
+    public void testSentNotificationsAreNotPending() throws Exception
+    {
+        PersistentSearchListener listener = new PersistentSearchListener( session, req );
+
+        // The client reads the notifications as they come
+        for ( int i = 0; i < QUEUE_SIZE * 5; i++ )
+        {
+            listener.entryAdded( createAddContext( i ) );
+            ioSession.sendAll();
+        }
+
+        assertEquals( QUEUE_SIZE * 5, ioSession.messages.size() );
+        assertTrue( removed.isEmpty() );
+
+        for ( Object message : ioSession.messages )
+        {
+            assertTrue( message instanceof SearchResultEntry );
+        }
+    }
+
+
+    @Test
+    public void testOverflowedByEventService() throws Exception
+    {
+        PersistentSearchListener listener = new PersistentSearchListener( session, req );
+
+        // The event service could not deliver the changes : the search is ended once
+        listener.overflowed();
+        listener.overflowed();
+
+        assertEquals( 1, ioSession.messages.size() );
+
+        SearchResultDone done = ( SearchResultDone ) ioSession.messages.get( 0 );
+        assertEquals( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED, done.getLdapResult().getResultCode() );
+        assertEquals( 1, removed.size() );
+        assertSame( listener, removed.get( 0 ) );
+    }
+}
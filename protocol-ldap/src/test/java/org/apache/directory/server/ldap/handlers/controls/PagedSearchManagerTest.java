@@ -0,0 +1,311 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.ldap.LdapSession;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Test;
+
+
+/**
+ * Tests the PagedSearchManager budget, and the spill, resume and eviction of the idle
+ * paged search contexts.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchManagerTest
+{
+    private static PagedSearchContext createContext( int messageId ) throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setMessageId( messageId );
+        searchRequest.setBase( new Dn( "ou=system" ) );
+
+        PagedSearchContext context = new PagedSearchContext( searchRequest );
+        context.setCursor( new ListCursor<Entry>( new ArrayList<Entry>() ) );
+
+        return context;
+    }
+
+
+    /**
+     * Creates a cursor on some entries, named after the given cn
+     */
+    private static Cursor<Entry> createCursor( String... cns ) throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( String cn : cns )
+        {
+            entries.add( new DefaultEntry( "cn=" + cn + ",ou=system" ) );
+        }
+
+        return new ListCursor<>( entries );
+    }
+
+
+    /**
+     * Reads some entries of a context, as a page would do
+     */
+    private static void readPage( PagedSearchContext context, int size ) throws Exception
+    {
+        context.acquire();
+        Cursor<Entry> cursor = context.getCursor();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            assertTrue( cursor.next() );
+            context.setLastDn( cursor.get().getDn() );
+        }
+
+        context.incrementCurrentPosition( size );
+    }
+
+
+    /**
+     * @return The cn of the next entry of a cursor
+     */
+    private static String next( Cursor<Entry> cursor ) throws Exception
+    {
+        assertTrue( cursor.next() );
+
+        return cursor.get().getDn().getRdn().getValue();
+    }
+
+
+    @Test
+    public void testBudget() throws Exception
+    {
+        PagedSearchManager manager = new PagedSearchManager( 2, 0, 0 );
+        LdapSession session = new LdapSession( new DummySession() );
+
+        PagedSearchContext first = createContext( 1 );
+        PagedSearchContext second = createContext( 2 );
+        PagedSearchContext third = createContext( 3 );
+
+        manager.register( session, first );
+        Thread.sleep( 5L );
+        manager.register( session, second );
+        assertEquals( 2, manager.getOpenCursorCount() );
+
+        // The first context is being read : it can't be spilled
+        first.acquire();
+        Thread.sleep( 5L );
+        third.acquire();
+        manager.register( session, third );
+        manager.release( third );
+
+        assertTrue( first.hasCursor() );
+        assertFalse( second.hasCursor() );
+        assertTrue( second.isSpilled() );
+        assertNull( second.getCursor() );
+        assertEquals( 1L, manager.getSpilledCount() );
+        assertEquals( 2, manager.getOpenCursorCount() );
+        assertEquals( 3, manager.getContextDescriptions().size() );
+
+        // The resumed context gets a new cursor
+        second.setCursor( new ListCursor<Entry>( new ArrayList<Entry>() ) );
+        assertFalse( second.isSpilled() );
+
+        manager.unregister( first );
+        manager.unregister( second );
+        manager.unregister( third );
+        assertEquals( 0, manager.getContextCount() );
+    }
+
+
+    @Test
+    public void testSpillIdleContext() throws Exception
+    {
+        PagedSearchManager manager = new PagedSearchManager( 0, 1, 0 );
+        LdapSession session = new LdapSession( new DummySession() );
+
+        PagedSearchContext idle = createContext( 1 );
+        PagedSearchContext reading = createContext( 2 );
+        Cursor<Entry> idleCursor = idle.getCursor();
+
+        manager.register( session, idle );
+        manager.register( session, reading );
+        reading.acquire();
+
+        // Not idle for long enough
+        manager.sweep( System.currentTimeMillis() );
+        assertEquals( 2, manager.getOpenCursorCount() );
+
+        // The context being read is not spilled
+        manager.sweep( System.currentTimeMillis() + 2000L );
+
+        assertTrue( idle.isSpilled() );
+        assertTrue( idleCursor.isClosed() );
+        assertFalse( reading.isSpilled() );
+        assertTrue( reading.hasCursor() );
+        assertEquals( 1L, manager.getSpilledCount() );
+        assertEquals( 1, manager.getOpenCursorCount() );
+
+        // A spilled context is kept
+        assertEquals( 2, manager.getContextCount() );
+    }
+
+
+    @Test
+    public void testResumeAfterLastDn() throws Exception
+    {
+        PagedSearchContext context = createContext( 1 );
+        context.setCursor( createCursor( "a", "b", "c", "d", "e" ) );
+
+        readPage( context, 2 );
+        context.release();
+        assertTrue( context.spill() );
+
+        // Some entries have been added and removed before the last returned one : the
+        // search goes on after it, not at the same position
+        Cursor<Entry> cursor = createCursor( "0", "1", "b", "c", "d", "e" );
+
+        assertTrue( context.resume( cursor, false ) );
+        assertFalse( context.isSpilled() );
+        assertEquals( cursor, context.getCursor() );
+        assertEquals( 2, context.getCurrentPosition() );
+        assertEquals( "c", next( cursor ) );
+        assertEquals( "d", next( cursor ) );
+    }
+
+
+    @Test
+    public void testResumeLastDnGone() throws Exception
+    {
+        PagedSearchContext context = createContext( 1 );
+        context.setCursor( createCursor( "a", "b", "c" ) );
+
+        readPage( context, 2 );
+        context.release();
+        assertTrue( context.spill() );
+
+        // The last returned entry has been removed : we skip as many entries as have
+        // been returned
+        Cursor<Entry> cursor = createCursor( "0", "a", "c" );
+
+        assertFalse( context.resume( cursor, false ) );
+        assertFalse( cursor.isClosed() );
+        assertEquals( cursor, context.getCursor() );
+        assertFalse( context.isSpilled() );
+        assertEquals( "c", next( cursor ) );
+    }
+
+
+    @Test
+    public void testResumePositioned() throws Exception
+    {
+        PagedSearchContext context = createContext( 1 );
+        context.setCursor( createCursor( "a", "b", "c" ) );
+
+        readPage( context, 2 );
+        context.release();
+        assertTrue( context.spill() );
+
+        // The partition has already moved the new cursor after the last returned entry,
+        // which has been removed meanwhile
+        Cursor<Entry> cursor = createCursor( "a", "c" );
+        assertEquals( "a", next( cursor ) );
+
+        assertTrue( context.resume( cursor, true ) );
+        assertEquals( cursor, context.getCursor() );
+        assertEquals( "c", next( cursor ) );
+    }
+
+
+    @Test
+    public void testResumeBeforeFirstPage() throws Exception
+    {
+        PagedSearchContext context = createContext( 1 );
+        assertTrue( context.spill() );
+
+        // No entry returned yet : the search starts from the beginning
+        Cursor<Entry> cursor = createCursor( "a", "b" );
+
+        assertTrue( context.resume( cursor, false ) );
+        assertEquals( "a", next( cursor ) );
+    }
+
+
+    @Test
+    public void testEvictIdleContext() throws Exception
+    {
+        PagedSearchManager manager = new PagedSearchManager( 0, 1, 2 );
+        LdapSession session = new LdapSession( new DummySession() );
+
+        PagedSearchContext context = createContext( 1 );
+        Cursor<Entry> cursor = context.getCursor();
+        session.addPagedSearchContext( context );
+        manager.register( session, context );
+
+        assertNotNull( session.getPagedSearchContext( context.getCookieValue() ) );
+
+        // Idle for more than the idle timeout : only spilled
+        manager.sweep( System.currentTimeMillis() + 1500L );
+
+        assertTrue( context.isSpilled() );
+        assertEquals( 1, manager.getContextCount() );
+        assertEquals( 0L, manager.getEvictedCount() );
+
+        // Idle for more than the maximum idle time : removed from the session
+        manager.sweep( System.currentTimeMillis() + 3000L );
+
+        assertTrue( cursor.isClosed() );
+        assertNull( session.getPagedSearchContext( context.getCookieValue() ) );
+        assertEquals( 0, manager.getContextCount() );
+        assertEquals( 1L, manager.getEvictedCount() );
+    }
+
+
+    @Test
+    public void testEvictSkipsContextBeingRead() throws Exception
+    {
+        PagedSearchManager manager = new PagedSearchManager( 0, 1, 2 );
+        LdapSession session = new LdapSession( new DummySession() );
+
+        PagedSearchContext context = createContext( 1 );
+        session.addPagedSearchContext( context );
+        manager.register( session, context );
+        context.acquire();
+
+        manager.sweep( System.currentTimeMillis() + 3000L );
+
+        assertTrue( context.hasCursor() );
+        assertNotNull( session.getPagedSearchContext( context.getCookieValue() ) );
+        assertEquals( 0L, manager.getEvictedCount() );
+    }
+}
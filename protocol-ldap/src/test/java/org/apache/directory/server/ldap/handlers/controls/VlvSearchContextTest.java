@@ -0,0 +1,168 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the positioning in a Virtual List View.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class VlvSearchContextTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    private static SearchRequest createRequest( boolean reverse ) throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( schemaManager, "ou=system" ) );
+        searchRequest.setScope( SearchScope.ONELEVEL );
+        searchRequest.setFilter( "(objectClass=*)" );
+
+        SortRequest sortRequest = new SortRequestImpl();
+        sortRequest.addSortKey( new SortKey( "cn", null, reverse ) );
+        searchRequest.addControl( sortRequest );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Creates a list of entries whose cn are the given letters, which must be in the
+     * sort order
+     */
+    private static VlvSearchContext createContext( boolean reverse, String... names ) throws Exception
+    {
+        VlvSearchContext context = new VlvSearchContext( 1, createRequest( reverse ), schemaManager );
+
+        for ( String name : names )
+        {
+            context.add( new DefaultEntry( schemaManager, "cn=" + name + ",ou=system",
+                "objectClass: person",
+                "cn", name,
+                "sn", name ) );
+        }
+
+        return context;
+    }
+
+
+    @Test
+    public void testOffset() throws Exception
+    {
+        VlvSearchContext context = createContext( false, "a", "b", "c", "d", "e" );
+
+        assertEquals( 5, context.size() );
+
+        // The content count is not known by the client
+        assertEquals( 1, context.getTargetPosition( 1, 0 ) );
+        assertEquals( 3, context.getTargetPosition( 3, 0 ) );
+        assertEquals( 6, context.getTargetPosition( 10, 0 ) );
+
+        // The content count of the client is the same as ours
+        assertEquals( 2, context.getTargetPosition( 2, 5 ) );
+        assertEquals( "cn=b,ou=system", context.getDn( 2 ) );
+
+        // The client thinks there are 100 entries : the middle is still the middle
+        assertEquals( 1, context.getTargetPosition( 1, 100 ) );
+        assertEquals( 3, context.getTargetPosition( 50, 100 ) );
+        assertEquals( 5, context.getTargetPosition( 100, 100 ) );
+        assertEquals( 6, context.getTargetPosition( 101, 100 ) );
+
+        // Invalid offset
+        assertEquals( 0, context.getTargetPosition( 0, 0 ) );
+    }
+
+
+    @Test
+    public void testAssertionValue() throws Exception
+    {
+        VlvSearchContext context = createContext( false, "alice", "bob", "carol", "dave", "eve" );
+
+        assertEquals( 1, context.getTargetPosition( Strings.getBytesUtf8( "a" ) ) );
+        assertEquals( 2, context.getTargetPosition( Strings.getBytesUtf8( "Bob" ) ) );
+        assertEquals( 3, context.getTargetPosition( Strings.getBytesUtf8( "bz" ) ) );
+        assertEquals( 5, context.getTargetPosition( Strings.getBytesUtf8( "e" ) ) );
+        assertEquals( 6, context.getTargetPosition( Strings.getBytesUtf8( "zorro" ) ) );
+    }
+
+
+    @Test
+    public void testAssertionValueReverse() throws Exception
+    {
+        VlvSearchContext context = createContext( true, "eve", "dave", "carol", "bob", "alice" );
+
+        assertEquals( 1, context.getTargetPosition( Strings.getBytesUtf8( "zorro" ) ) );
+        assertEquals( 3, context.getTargetPosition( Strings.getBytesUtf8( "carol" ) ) );
+        assertEquals( 4, context.getTargetPosition( Strings.getBytesUtf8( "bz" ) ) );
+        assertEquals( 6, context.getTargetPosition( Strings.getBytesUtf8( "a" ) ) );
+    }
+
+
+    @Test
+    public void testIsValidFor() throws Exception
+    {
+        VlvSearchContext context = createContext( false, "a", "b" );
+
+        SearchRequest sameSearch = createRequest( false );
+        sameSearch.setMessageId( 12 );
+        sameSearch.addAttributes( "cn" );
+        assertTrue( context.isValidFor( sameSearch, VlvSearchContext.DEFAULT_MAX_AGE ) );
+
+        // Another sort order
+        assertFalse( context.isValidFor( createRequest( true ), VlvSearchContext.DEFAULT_MAX_AGE ) );
+
+        // Another filter
+        SearchRequest otherSearch = createRequest( false );
+        otherSearch.setFilter( "(cn=a*)" );
+        assertFalse( context.isValidFor( otherSearch, VlvSearchContext.DEFAULT_MAX_AGE ) );
+
+        // Too old
+        Thread.sleep( 5L );
+        assertFalse( context.isValidFor( sameSearch, 1L ) );
+    }
+}
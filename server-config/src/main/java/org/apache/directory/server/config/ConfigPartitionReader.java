@@ -84,6 +84,9 @@ public class ConfigPartitionReader
     /** the schema manager set in the config partition */
     private SchemaManager schemaManager;
 
+    /** The optional attribute types not in the schema, which have already been reported */
+    private final Set<String> unknownAttributeTypes = new HashSet<>();
+
     /** The prefix for all the configuration ObjectClass names */
     private static final String ADS_PREFIX = "ads-";
 
@@ -636,7 +639,16 @@ public class ConfigPartitionReader
                     // Checking if we have a value for the attribute type
                     if ( ( fieldAttributeType != null ) && ( !"".equals( fieldAttributeType ) ) )
                     {
-                        readFieldValue( bean, field, entry, fieldAttributeType, !isOptional );
+                        // An optional element may not be known by an older configuration schema
+                        if ( !isOptional || ( schemaManager.getAttributeType( fieldAttributeType ) != null ) )
+                        {
+                            readFieldValue( bean, field, entry, fieldAttributeType, !isOptional );
+                        }
+                        else if ( unknownAttributeTypes.add( fieldAttributeType ) )
+                        {
+                            LOG.warn( "The attribute type {} is not in the configuration schema, the default value "
+                                + "of {}.{} is used", fieldAttributeType, beanClass.getSimpleName(), field.getName() );
+                        }
                     }
                     // Checking if we have a value for the object class
                     else if ( ( fieldObjectClass != null ) && ( !"".equals( fieldObjectClass ) ) )
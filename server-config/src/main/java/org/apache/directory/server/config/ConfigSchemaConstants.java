@@ -41,28 +41,42 @@ public enum ConfigSchemaConstants
 
     ADS_DIRECTORY_SERVICE_OC("ads-directoryService", "1.3.6.1.4.1.18060.0.4.1.3.100"),
 
+    ADS_DIRECTORY_SERVICE_OPTIONS_OC("ads-directoryServiceOptions", "1.3.6.1.4.1.18060.0.4.1.3.101"),
+
     ADS_CHANGE_LOG_OC("ads-changeLog", "1.3.6.1.4.1.18060.0.4.1.3.120"),
 
     ADS_INTERCEPTOR_OC("ads-interceptor", "1.3.6.1.4.1.18060.0.4.1.3.130"),
 
     ADS_AUTHENTICATION_INTERCEPTOR_OC("ads-authenticationInterceptor", "1.3.6.1.4.1.18060.0.4.1.3.131"),
 
+    ADS_EVENT_INTERCEPTOR_OC("ads-eventInterceptor", "1.3.6.1.4.1.18060.0.4.1.3.139"),
+
     ADS_JOURNAL_OC("ads-journal", "1.3.6.1.4.1.18060.0.4.1.3.140"),
 
     ADS_PARTITION_OC("ads-partition", "1.3.6.1.4.1.18060.0.4.1.3.150"),
 
     ADS_JDBM_PARTITION_OC("ads-jdbmPartition", "1.3.6.1.4.1.18060.0.4.1.3.151"),
 
+    ADS_LMDB_PARTITION_OC("ads-lmdbPartition", "1.3.6.1.4.1.18060.0.4.1.3.153"),
+
     ADS_INDEX_OC("ads-index", "1.3.6.1.4.1.18060.0.4.1.3.160"),
 
     ADS_JDBM_INDEX_OC("ads-jdbmIndex", "1.3.6.1.4.1.18060.0.4.1.3.161"),
 
+    ADS_LMDB_INDEX_OC("ads-lmdbIndex", "1.3.6.1.4.1.18060.0.4.1.3.163"),
+
+    ADS_INDEX_OPTIONS_OC("ads-indexOptions", "1.3.6.1.4.1.18060.0.4.1.3.164"),
+
+    ADS_PARTITION_OPTIONS_OC("ads-partitionOptions", "1.3.6.1.4.1.18060.0.4.1.3.165"),
+
     ADS_SERVER_OC("ads-server", "1.3.6.1.4.1.18060.0.4.1.3.250"),
 
     ADS_DS_BASED_SERVER_OC("ads-dsBasedServer", "1.3.6.1.4.1.18060.0.4.1.3.260"),
 
     ADS_LDAP_SERVER_OC("ads-ldapServer", "1.3.6.1.4.1.18060.0.4.1.3.300"),
 
+    ADS_LDAP_SERVER_OPTIONS_OC("ads-ldapServerOptions", "1.3.6.1.4.1.18060.0.4.1.3.301"),
+
     ADS_KERBEROS_SERVER_OC("ads-kdcServer", "1.3.6.1.4.1.18060.0.4.1.3.400"),
 
     ADS_DNS_SERVER_OC("ads-dnsServer", "1.3.6.1.4.1.18060.0.4.1.3.500"),
@@ -81,6 +95,8 @@ public enum ConfigSchemaConstants
 
     ADS_HTTP_SERVER_OC("ads-httpServer", "1.3.6.1.4.1.18060.0.4.1.3.804"),
 
+    ADS_HTTP_SERVER_OPTIONS_OC("ads-httpServerOptions", "1.3.6.1.4.1.18060.0.4.1.3.807"),
+
     ADS_REPL_EVENT_LOG_OC("ads-replEventLog", "1.3.6.1.4.1.18060.0.4.1.3.805"),
 
     ADS_REPL_CONSUMER_OC("ads-replConsumer", "1.3.6.1.4.1.18060.0.4.1.3.806"),
@@ -181,6 +197,8 @@ public enum ConfigSchemaConstants
 
     ADS_INDEX_HAS_REVERSE("ads-indexHasReverse", ""),
 
+    ADS_INDEX_TRIGRAM("ads-indexTrigram", ""),
+
     ADS_JDBMINDEX("ads-jdbmIndex", ""),
 
     ADS_INDEX_CACHESIZE("ads-indexCacheSize", ""),
@@ -275,7 +293,28 @@ public enum ConfigSchemaConstants
 
     ADS_LDAP_SERVER_KEYSTORE_FILE("ads-ldapserverkeystorefile", ""),
 
-    ADS_LDAP_SERVER_CERT_PASSWORD("ads-ldapServerCertificatePassword", "");
+    ADS_LDAP_SERVER_CERT_PASSWORD("ads-ldapServerCertificatePassword", ""),
+
+    ADS_LDAP_SERVER_WRITE_HIGH_WATER_MARK("ads-ldapServerWriteHighWaterMark", ""),
+
+    ADS_LDAP_SERVER_WRITE_LOW_WATER_MARK("ads-ldapServerWriteLowWaterMark", ""),
+
+    ADS_LDAP_SERVER_EXECUTION_MODE("ads-ldapServerExecutionMode", ""),
+
+    ADS_LDAP_SERVER_MAX_IN_FLIGHT_REQUESTS("ads-ldapServerMaxInFlightRequests", ""),
+
+    ADS_LDAP_SERVER_ENCODED_RESPONSE_CACHE_SIZE("ads-ldapServerEncodedResponseCacheSize", ""),
+
+    ADS_LDAP_SERVER_PAGED_SEARCH_MAX_CURSORS("ads-ldapServerPagedSearchMaxCursors", ""),
+
+    ADS_LDAP_SERVER_PAGED_SEARCH_IDLE_TIMEOUT("ads-ldapServerPagedSearchIdleTimeout", ""),
+
+    ADS_LDAP_SERVER_PAGED_SEARCH_MAX_IDLE_TIME("ads-ldapServerPagedSearchMaxIdleTime", ""),
+    ADS_LDAP_SERVER_PERSISTENT_SEARCH_QUEUE_SIZE("ads-ldapServerPersistentSearchQueueSize", ""),
+
+    ADS_LDAP_SERVER_VLV_MAX_ENTRIES("ads-ldapServerVlvMaxEntries", ""),
+
+    ADS_LMDB_MAP_SIZE("ads-lmdbMapSize", "");
 
     /** The interned value */
     private String value;
@@ -377,6 +377,14 @@ public class ConfigWriter
 
                             // Adding values to the entry
                             addAttributeTypeValues( configurationElement.attributeType(), fieldValue, entry );
+
+                            // The attribute type may be declared by an auxiliary object class
+                            String auxiliaryObjectClass = configurationElement.auxiliaryObjectClass();
+
+                            if ( ( fieldValue != null ) && ( !"".equals( auxiliaryObjectClass ) ) )
+                            {
+                                addAttributeTypeValues( SchemaConstants.OBJECT_CLASS_AT, auxiliaryObjectClass, entry );
+                            }
                         }
                         // Checking if we have a value for the object class
                         else if ( ( objectClass != null ) && ( !"".equals( objectClass ) ) )
@@ -55,6 +55,15 @@ public @interface ConfigurationElement
     String objectClass() default "";
 
 
+    /**
+     * Returns the auxiliary object class declaring the attribute type, when
+     * the attribute type is not allowed by the object class of the bean.
+     *
+     * @return the auxiliary object class
+     */
+    String auxiliaryObjectClass() default "";
+
+
     /**
      * Returns true if of the qualified field (attribute type and value) 
      * is the Rdn of the entry.
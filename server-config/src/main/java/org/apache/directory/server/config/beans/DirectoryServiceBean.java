@@ -66,6 +66,31 @@ public class DirectoryServiceBean extends AdsBaseBean
     @ConfigurationElement(attributeType = "ads-dsTestEntries", isOptional = true)
     private String dsTestEntries;
 
+    /** The maximum number of client addresses the metrics are broken down by, 0 to not track them */
+    @ConfigurationElement(attributeType = "ads-dsMetricsMaxClients",
+        auxiliaryObjectClass = "ads-directoryServiceOptions", isOptional = true)
+    private int dsMetricsMaxClients = 0;
+
+    /** The flag that tells if the operation metrics are exported over JMX */
+    @ConfigurationElement(attributeType = "ads-dsMetricsJmxEnabled",
+        auxiliaryObjectClass = "ads-directoryServiceOptions", isOptional = true)
+    private boolean dsMetricsJmxEnabled = true;
+
+    /** The time above which an operation is logged as slow, in ms, 0 to disable the log */
+    @ConfigurationElement(attributeType = "ads-dsSlowOperationThreshold",
+        auxiliaryObjectClass = "ads-directoryServiceOptions", isOptional = true)
+    private long dsSlowOperationThreshold = 1000L;
+
+    /** The number of slow operations kept in memory */
+    @ConfigurationElement(attributeType = "ads-dsSlowOperationCapacity",
+        auxiliaryObjectClass = "ads-directoryServiceOptions", isOptional = true)
+    private int dsSlowOperationCapacity = 100;
+
+    /** The memory budget of a server side sort, in bytes */
+    @ConfigurationElement(attributeType = "ads-dsSortMemoryBudget",
+        auxiliaryObjectClass = "ads-directoryServiceOptions", isOptional = true)
+    private long dsSortMemoryBudget = 16L * 1024L * 1024L;
+
     /** The ChangeLog component */
     @ConfigurationElement(objectClass = "ads-changelog")
     private ChangeLogBean changeLog;
@@ -283,6 +308,98 @@ public class DirectoryServiceBean extends AdsBaseBean
     }
 
 
+    /**
+     * @return the maximum number of client addresses the metrics are broken down by
+     */
+    public int getDsMetricsMaxClients()
+    {
+        return dsMetricsMaxClients;
+    }
+
+
+    /**
+     * @param dsMetricsMaxClients the maximum number of client addresses the metrics are broken
+     * down by, 0 to not track the clients
+     */
+    public void setDsMetricsMaxClients( int dsMetricsMaxClients )
+    {
+        this.dsMetricsMaxClients = dsMetricsMaxClients;
+    }
+
+
+    /**
+     * @return <code>true</code> if the operation metrics are exported over JMX
+     */
+    public boolean isDsMetricsJmxEnabled()
+    {
+        return dsMetricsJmxEnabled;
+    }
+
+
+    /**
+     * @param dsMetricsJmxEnabled <code>true</code> to export the operation metrics over JMX
+     */
+    public void setDsMetricsJmxEnabled( boolean dsMetricsJmxEnabled )
+    {
+        this.dsMetricsJmxEnabled = dsMetricsJmxEnabled;
+    }
+
+
+    /**
+     * @return the time above which an operation is logged as slow, in ms
+     */
+    public long getDsSlowOperationThreshold()
+    {
+        return dsSlowOperationThreshold;
+    }
+
+
+    /**
+     * @param dsSlowOperationThreshold the time above which an operation is logged as slow, in ms,
+     * 0 to disable the log
+     */
+    public void setDsSlowOperationThreshold( long dsSlowOperationThreshold )
+    {
+        this.dsSlowOperationThreshold = dsSlowOperationThreshold;
+    }
+
+
+    /**
+     * @return the number of slow operations kept in memory
+     */
+    public int getDsSlowOperationCapacity()
+    {
+        return dsSlowOperationCapacity;
+    }
+
+
+    /**
+     * @param dsSlowOperationCapacity the number of slow operations kept in memory
+     */
+    public void setDsSlowOperationCapacity( int dsSlowOperationCapacity )
+    {
+        this.dsSlowOperationCapacity = dsSlowOperationCapacity;
+    }
+
+
+    /**
+     * @return the memory budget of a server side sort, in bytes
+     */
+    public long getDsSortMemoryBudget()
+    {
+        return dsSortMemoryBudget;
+    }
+
+
+    /**
+     * @param dsSortMemoryBudget the memory budget of a server side sort, in bytes
+     */
+    public void setDsSortMemoryBudget( long dsSortMemoryBudget )
+    {
+        this.dsSortMemoryBudget = dsSortMemoryBudget;
+    }
+
+
     /**
      * @return the ChangeLog
      */
@@ -527,6 +644,11 @@ public class DirectoryServiceBean extends AdsBaseBean
         sb.append( toString( "  ", "password hidden", dsPasswordHidden ) );
         sb.append( "  sync period millisecond : " ).append( dsSyncPeriodMillis ).append( '\n' );
         sb.append( toString( "  ", "test entries", dsTestEntries ) );
+        sb.append( "  metrics max clients : " ).append( dsMetricsMaxClients ).append( '\n' );
+        sb.append( toString( "  ", "metrics JMX enabled", dsMetricsJmxEnabled ) );
+        sb.append( "  slow operation threshold : " ).append( dsSlowOperationThreshold ).append( '\n' );
+        sb.append( "  slow operation capacity : " ).append( dsSlowOperationCapacity ).append( '\n' );
+        sb.append( "  sort memory budget : " ).append( dsSortMemoryBudget ).append( '\n' );
 
         sb.append( "  interceptors : \n" );
 
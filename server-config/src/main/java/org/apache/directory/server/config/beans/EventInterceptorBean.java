@@ -0,0 +1,126 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.config.beans;
+
+
+import org.apache.directory.server.config.ConfigurationElement;
+
+
+/**
+ * A bean used to store the event interceptor configuration : how the changes are
+ * delivered to the asynchronous listeners.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EventInterceptorBean extends InterceptorBean
+{
+    /** The number of changes waiting to be delivered to a listener */
+    @ConfigurationElement(attributeType = "ads-eventQueueSize", isOptional = true)
+    private int eventQueueSize = 10000;
+
+    /** What to do with a change when the queue of a listener is full */
+    @ConfigurationElement(attributeType = "ads-eventOverflowPolicy", isOptional = true)
+    private String eventOverflowPolicy;
+
+    /** The number of threads delivering the changes */
+    @ConfigurationElement(attributeType = "ads-eventThreads", isOptional = true)
+    private int eventThreads = 10;
+
+
+    /**
+     * Creates a new EventInterceptorBean instance
+     */
+    public EventInterceptorBean()
+    {
+        super();
+    }
+
+
+    /**
+     * @return the number of changes waiting to be delivered to a listener
+     */
+    public int getEventQueueSize()
+    {
+        return eventQueueSize;
+    }
+
+
+    /**
+     * @param eventQueueSize the number of changes waiting to be delivered to a listener
+     */
+    public void setEventQueueSize( int eventQueueSize )
+    {
+        this.eventQueueSize = eventQueueSize;
+    }
+
+
+    /**
+     * @return the overflow policy : block, drop-oldest or disconnect
+     */
+    public String getEventOverflowPolicy()
+    {
+        return eventOverflowPolicy;
+    }
+
+
+    /**
+     * @param eventOverflowPolicy the overflow policy : block, drop-oldest or disconnect
+     */
+    public void setEventOverflowPolicy( String eventOverflowPolicy )
+    {
+        this.eventOverflowPolicy = eventOverflowPolicy;
+    }
+
+
+    /**
+     * @return the number of threads delivering the changes
+     */
+    public int getEventThreads()
+    {
+        return eventThreads;
+    }
+
+
+    /**
+     * @param eventThreads the number of threads delivering the changes
+     */
+    public void setEventThreads( int eventThreads )
+    {
+        this.eventThreads = eventThreads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "EventInterceptor :\n" );
+        sb.append( super.toString( tabs + "  " ) );
+        sb.append( tabs ).append( "  queue size : " ).append( eventQueueSize ).append( '\n' );
+        sb.append( toString( tabs, "  overflow policy", eventOverflowPolicy ) );
+        sb.append( tabs ).append( "  threads : " ).append( eventThreads ).append( '\n' );
+
+        return sb.toString();
+    }
+}
@@ -41,6 +41,16 @@ public class HttpServerBean extends ServerBean
     @ConfigurationElement(objectClass = "ads-httpWebApp", container = "httpWebApps")
     private List<HttpWebAppBean> httpWebApps = new ArrayList<>();
 
+    /** The path the operation metrics are exposed on, they are not exposed if null */
+    @ConfigurationElement(attributeType = "ads-httpMetricsPath",
+        auxiliaryObjectClass = "ads-httpServerOptions", isOptional = true)
+    private String httpMetricsPath;
+
+    /** The addresses allowed to read the metrics, the loopback ones if empty */
+    @ConfigurationElement(attributeType = "ads-httpMetricsAllowedAddresses",
+        auxiliaryObjectClass = "ads-httpServerOptions", isOptional = true)
+    private List<String> httpMetricsAllowedAddresses = new ArrayList<>();
+
 
     /**
      * Create a new HttpServerBean instance
@@ -102,6 +112,54 @@ public class HttpServerBean extends ServerBean
     }
 
 
+    /**
+     * @return the path the operation metrics are exposed on, null if they are not exposed
+     */
+    public String getHttpMetricsPath()
+    {
+        return httpMetricsPath;
+    }
+
+
+    /**
+     * @param httpMetricsPath the path the operation metrics are exposed on
+     */
+    public void setHttpMetricsPath( String httpMetricsPath )
+    {
+        this.httpMetricsPath = httpMetricsPath;
+    }
+
+
+    /**
+     * @return the addresses allowed to read the metrics
+     */
+    public List<String> getHttpMetricsAllowedAddresses()
+    {
+        return httpMetricsAllowedAddresses;
+    }
+
+
+    /**
+     * @param httpMetricsAllowedAddresses the addresses allowed to read the metrics
+     */
+    public void setHttpMetricsAllowedAddresses( List<String> httpMetricsAllowedAddresses )
+    {
+        this.httpMetricsAllowedAddresses = httpMetricsAllowedAddresses;
+    }
+
+
+    /**
+     * @param httpMetricsAllowedAddresses the addresses allowed to read the metrics to add
+     */
+    public void addHttpMetricsAllowedAddresses( String... httpMetricsAllowedAddresses )
+    {
+        for ( String httpMetricsAllowedAddress : httpMetricsAllowedAddresses )
+        {
+            this.httpMetricsAllowedAddresses.add( httpMetricsAllowedAddress );
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -113,6 +171,13 @@ public class HttpServerBean extends ServerBean
         sb.append( tabs ).append( "HttpServer :\n" );
         sb.append( super.toString( tabs + "  " ) );
         sb.append( toString( tabs, "  http configuration file", httpConfFile ) );
+        sb.append( toString( tabs, "  metrics path", httpMetricsPath ) );
+
+        if ( ( httpMetricsAllowedAddresses != null ) && !httpMetricsAllowedAddresses.isEmpty() )
+        {
+            sb.append( tabs ).append( "  metrics allowed addresses : " ).append( httpMetricsAllowedAddresses )
+                .append( '\n' );
+        }
 
         if ( ( httpWebApps != null ) && !httpWebApps.isEmpty() )
         {
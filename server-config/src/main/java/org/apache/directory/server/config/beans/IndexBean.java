@@ -37,6 +37,11 @@ public abstract class IndexBean extends AdsBaseBean
     @ConfigurationElement(attributeType = "ads-indexHasReverse")
     private boolean indexHasReverse;
 
+    /** Tells if a trigram index is built for substring searches */
+    @ConfigurationElement(attributeType = "ads-indexTrigram", auxiliaryObjectClass = "ads-indexOptions",
+        isOptional = true)
+    private boolean indexTrigram;
+
 
     /**
      * Create a new IndexBean instance
@@ -82,6 +87,24 @@ public abstract class IndexBean extends AdsBaseBean
     }
 
 
+    /**
+     * @param indexTrigram the indexTrigram to set
+     */
+    public void setIndexTrigram( boolean indexTrigram )
+    {
+        this.indexTrigram = indexTrigram;
+    }
+
+
+    /**
+     * @return the indexTrigram
+     */
+    public boolean getIndexTrigram()
+    {
+        return indexTrigram;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -93,6 +116,7 @@ public abstract class IndexBean extends AdsBaseBean
         sb.append( super.toString( tabs + "  " ) );
         sb.append( tabs ).append( "  indexed attribute ID : " ).append( indexAttributeId ).append( '\n' );
         sb.append( tabs ).append( "  indexed has reverse : " ).append( indexHasReverse ).append( '\n' );
+        sb.append( tabs ).append( "  indexed trigrams : " ).append( indexTrigram ).append( '\n' );
 
         return sb.toString();
     }
@@ -50,6 +50,56 @@ public class LdapServerBean extends DSBasedServerBean
     @ConfigurationElement(attributeType = "ads-maxPDUSize")
     private int maxPDUSize = 2048;
 
+    /** The number of bytes queued on a session above which a search stops sending entries */
+    @ConfigurationElement(attributeType = "ads-ldapServerWriteHighWaterMark",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private long ldapServerWriteHighWaterMark = 4L * 1024L * 1024L;
+
+    /** The number of bytes queued on a session below which a paused search resumes */
+    @ConfigurationElement(attributeType = "ads-ldapServerWriteLowWaterMark",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private long ldapServerWriteLowWaterMark = 1024L * 1024L;
+
+    /** The way the requests are executed : pool, per-operation or virtual */
+    @ConfigurationElement(attributeType = "ads-ldapServerExecutionMode",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private String ldapServerExecutionMode;
+
+    /** The maximum number of requests of a session executed at the same time */
+    @ConfigurationElement(attributeType = "ads-ldapServerMaxInFlightRequests",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerMaxInFlightRequests = 32;
+
+    /** The number of encoded search result entries kept in memory */
+    @ConfigurationElement(attributeType = "ads-ldapServerEncodedResponseCacheSize",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerEncodedResponseCacheSize = 10000;
+
+    /** The maximum number of paged search cursors kept open between two pages */
+    @ConfigurationElement(attributeType = "ads-ldapServerPagedSearchMaxCursors",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerPagedSearchMaxCursors = 256;
+
+    /** The number of seconds after which the cursor of an idle paged search is closed */
+    @ConfigurationElement(attributeType = "ads-ldapServerPagedSearchIdleTimeout",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerPagedSearchIdleTimeout = 10;
+
+    /** The number of seconds after which an idle paged search is removed */
+    @ConfigurationElement(attributeType = "ads-ldapServerPagedSearchMaxIdleTime",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerPagedSearchMaxIdleTime = 600;
+
+    /** The maximum number of notifications of a persistent search waiting to be sent */
+    @ConfigurationElement(attributeType = "ads-ldapServerPersistentSearchQueueSize",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerPersistentSearchQueueSize = 1000;
+
+    /** The maximum number of entries of a Virtual List View list */
+    @ConfigurationElement(attributeType = "ads-ldapServerVlvMaxEntries",
+        auxiliaryObjectClass = "ads-ldapServerOptions", isOptional = true)
+    private int ldapServerVlvMaxEntries = 1000000;
+
     /** The SASL host */
     @ConfigurationElement(attributeType = "ads-saslHost")
     private String saslHost;
@@ -389,6 +439,186 @@ public class LdapServerBean extends DSBasedServerBean
     }
 
 
+    /**
+     * @return the ldapServerWriteHighWaterMark
+     */
+    public long getLdapServerWriteHighWaterMark()
+    {
+        return ldapServerWriteHighWaterMark;
+    }
+
+
+    /**
+     * @param ldapServerWriteHighWaterMark the ldapServerWriteHighWaterMark to set
+     */
+    public void setLdapServerWriteHighWaterMark( long ldapServerWriteHighWaterMark )
+    {
+        this.ldapServerWriteHighWaterMark = ldapServerWriteHighWaterMark;
+    }
+
+
+    /**
+     * @return the ldapServerWriteLowWaterMark
+     */
+    public long getLdapServerWriteLowWaterMark()
+    {
+        return ldapServerWriteLowWaterMark;
+    }
+
+
+    /**
+     * @param ldapServerWriteLowWaterMark the ldapServerWriteLowWaterMark to set
+     */
+    public void setLdapServerWriteLowWaterMark( long ldapServerWriteLowWaterMark )
+    {
+        this.ldapServerWriteLowWaterMark = ldapServerWriteLowWaterMark;
+    }
+
+
+    /**
+     * @return the ldapServerExecutionMode
+     */
+    public String getLdapServerExecutionMode()
+    {
+        return ldapServerExecutionMode;
+    }
+
+
+    /**
+     * @param ldapServerExecutionMode the ldapServerExecutionMode to set
+     */
+    public void setLdapServerExecutionMode( String ldapServerExecutionMode )
+    {
+        this.ldapServerExecutionMode = ldapServerExecutionMode;
+    }
+
+
+    /**
+     * @return the ldapServerMaxInFlightRequests
+     */
+    public int getLdapServerMaxInFlightRequests()
+    {
+        return ldapServerMaxInFlightRequests;
+    }
+
+
+    /**
+     * @param ldapServerMaxInFlightRequests the ldapServerMaxInFlightRequests to set
+     */
+    public void setLdapServerMaxInFlightRequests( int ldapServerMaxInFlightRequests )
+    {
+        this.ldapServerMaxInFlightRequests = ldapServerMaxInFlightRequests;
+    }
+
+
+    /**
+     * @return the ldapServerEncodedResponseCacheSize
+     */
+    public int getLdapServerEncodedResponseCacheSize()
+    {
+        return ldapServerEncodedResponseCacheSize;
+    }
+
+
+    /**
+     * @param ldapServerEncodedResponseCacheSize the ldapServerEncodedResponseCacheSize to set
+     */
+    public void setLdapServerEncodedResponseCacheSize( int ldapServerEncodedResponseCacheSize )
+    {
+        this.ldapServerEncodedResponseCacheSize = ldapServerEncodedResponseCacheSize;
+    }
+
+
+    /**
+     * @return the ldapServerPagedSearchMaxCursors
+     */
+    public int getLdapServerPagedSearchMaxCursors()
+    {
+        return ldapServerPagedSearchMaxCursors;
+    }
+
+
+    /**
+     * @param ldapServerPagedSearchMaxCursors the ldapServerPagedSearchMaxCursors to set
+     */
+    public void setLdapServerPagedSearchMaxCursors( int ldapServerPagedSearchMaxCursors )
+    {
+        this.ldapServerPagedSearchMaxCursors = ldapServerPagedSearchMaxCursors;
+    }
+
+
+    /**
+     * @return the ldapServerPagedSearchIdleTimeout
+     */
+    public int getLdapServerPagedSearchIdleTimeout()
+    {
+        return ldapServerPagedSearchIdleTimeout;
+    }
+
+
+    /**
+     * @param ldapServerPagedSearchIdleTimeout the ldapServerPagedSearchIdleTimeout to set
+     */
+    public void setLdapServerPagedSearchIdleTimeout( int ldapServerPagedSearchIdleTimeout )
+    {
+        this.ldapServerPagedSearchIdleTimeout = ldapServerPagedSearchIdleTimeout;
+    }
+
+
+    /**
+     * @return the ldapServerPagedSearchMaxIdleTime
+     */
+    public int getLdapServerPagedSearchMaxIdleTime()
+    {
+        return ldapServerPagedSearchMaxIdleTime;
+    }
+
+
+    /**
+     * @param ldapServerPagedSearchMaxIdleTime the ldapServerPagedSearchMaxIdleTime to set
+     */
+    public void setLdapServerPagedSearchMaxIdleTime( int ldapServerPagedSearchMaxIdleTime )
+    {
+        this.ldapServerPagedSearchMaxIdleTime = ldapServerPagedSearchMaxIdleTime;
+    }
+
+
+    /**
+     * @return the ldapServerPersistentSearchQueueSize
+     */
+    public int getLdapServerPersistentSearchQueueSize()
+    {
+        return ldapServerPersistentSearchQueueSize;
+    }
+
+
+    /**
+     * @param ldapServerPersistentSearchQueueSize the ldapServerPersistentSearchQueueSize to set
+     */
+    public void setLdapServerPersistentSearchQueueSize( int ldapServerPersistentSearchQueueSize )
+    {
+        this.ldapServerPersistentSearchQueueSize = ldapServerPersistentSearchQueueSize;
+    }
+
+
+    /**
+     * @return the ldapServerVlvMaxEntries
+     */
+    public int getLdapServerVlvMaxEntries()
+    {
+        return ldapServerVlvMaxEntries;
+    }
+
+
+    /**
+     * @param ldapServerVlvMaxEntries the ldapServerVlvMaxEntries to set
+     */
+    public void setLdapServerVlvMaxEntries( int ldapServerVlvMaxEntries )
+    {
+        this.ldapServerVlvMaxEntries = ldapServerVlvMaxEntries;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -402,6 +632,16 @@ public class LdapServerBean extends DSBasedServerBean
         sb.append( tabs ).append( "  max size limit : " ).append( maxSizeLimit ).append( '\n' );
         sb.append( tabs ).append( "  max time limit : " ).append( maxTimeLimit ).append( '\n' );
         sb.append( "  max PDU size : " ).append( maxPDUSize ).append( '\n' );
+        sb.append( "  write high water mark : " ).append( ldapServerWriteHighWaterMark ).append( '\n' );
+        sb.append( "  write low water mark : " ).append( ldapServerWriteLowWaterMark ).append( '\n' );
+        sb.append( "  execution mode : " ).append( ldapServerExecutionMode ).append( '\n' );
+        sb.append( "  max in flight requests : " ).append( ldapServerMaxInFlightRequests ).append( '\n' );
+        sb.append( "  encoded response cache size : " ).append( ldapServerEncodedResponseCacheSize ).append( '\n' );
+        sb.append( "  paged search max cursors : " ).append( ldapServerPagedSearchMaxCursors ).append( '\n' );
+        sb.append( "  paged search idle timeout : " ).append( ldapServerPagedSearchIdleTimeout ).append( '\n' );
+        sb.append( "  paged search max idle time : " ).append( ldapServerPagedSearchMaxIdleTime ).append( '\n' );
+        sb.append( "  persistent search queue size : " ).append( ldapServerPersistentSearchQueueSize ).append( '\n' );
+        sb.append( "  VLV max entries : " ).append( ldapServerVlvMaxEntries ).append( '\n' );
         sb.append( toString( tabs, "  certificate password", certificatePassword ) );
         sb.append( toString( tabs, "  keystore file", keystoreFile ) );
         sb.append( toString( tabs, "  sasl principal", saslPrincipal ) );
@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.config.beans;
+
+
+import org.apache.directory.server.config.ConfigurationElement;
+
+
+/**
+ * A class used to store the LmdbPartition configuration.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartitionBean extends PartitionBean
+{
+    /** The Entry cache size for this partition */
+    @ConfigurationElement(attributeType = "ads-partitionCacheSize", isOptional = true, defaultValue = "-1")
+    private int partitionCacheSize = -1;
+
+    /** The maximum size of the memory map, in bytes. 0 means the default size */
+    @ConfigurationElement(attributeType = "ads-lmdbMapSize", isOptional = true, defaultValue = "0")
+    private long lmdbMapSize = 0L;
+
+
+    /**
+     * Create a new LmdbPartitionBean instance
+     */
+    public LmdbPartitionBean()
+    {
+    }
+
+
+    /**
+     * @param partitionCacheSize the maximum size of the cache in the number of entries
+     */
+    public void setPartitionCacheSize( int partitionCacheSize )
+    {
+        this.partitionCacheSize = partitionCacheSize;
+    }
+
+
+    /**
+     * @return the maximum size of the cache as the number of entries
+     */
+    public int getPartitionCacheSize()
+    {
+        return partitionCacheSize;
+    }
+
+
+    /**
+     * @return the maximum size of the memory map, in bytes, 0 for the default size
+     */
+    public long getLmdbMapSize()
+    {
+        return lmdbMapSize;
+    }
+
+
+    /**
+     * @param lmdbMapSize the maximum size of the memory map, in bytes
+     */
+    public void setLmdbMapSize( long lmdbMapSize )
+    {
+        this.lmdbMapSize = lmdbMapSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "LmdbPartitionBean :\n" );
+        sb.append( super.toString( tabs ) );
+        sb.append( tabs ).append( "  partition cache size : " ).append( partitionCacheSize ).append( '\n' );
+        sb.append( tabs ).append( "  map size : " ).append( lmdbMapSize ).append( '\n' );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -50,6 +50,31 @@ public abstract class PartitionBean extends AdsBaseBean
     @ConfigurationElement(attributeType = "ads-contextEntry", isOptional = true)
     private String contextEntry;
 
+    /** Tells if the search candidates are streamed from the indexes */
+    @ConfigurationElement(attributeType = "ads-partitionSearchStreaming",
+        auxiliaryObjectClass = "ads-partitionOptions", isOptional = true)
+    private boolean partitionSearchStreaming = true;
+
+    /** Tells if a sorted search can walk the index of its sort key */
+    @ConfigurationElement(attributeType = "ads-partitionSearchSortedIndex",
+        auxiliaryObjectClass = "ads-partitionOptions", isOptional = true)
+    private boolean partitionSearchSortedIndex = true;
+
+    /** Tells if the optimizer uses the statistics of the indexes */
+    @ConfigurationElement(attributeType = "ads-partitionStatisticsOptimizerEnabled",
+        auxiliaryObjectClass = "ads-partitionOptions", isOptional = true)
+    private boolean partitionStatisticsOptimizerEnabled = true;
+
+    /** The number of cached search plans, 0 to disable the cache */
+    @ConfigurationElement(attributeType = "ads-partitionSearchPlanCacheSize",
+        auxiliaryObjectClass = "ads-partitionOptions", isOptional = true)
+    private int partitionSearchPlanCacheSize = 512;
+
+    /** Tells if only the attributes a search needs are decoded */
+    @ConfigurationElement(attributeType = "ads-partitionSearchProjection",
+        auxiliaryObjectClass = "ads-partitionOptions", isOptional = true)
+    private boolean partitionSearchProjection = true;
+
     /** The list of declared indexes */
     @ConfigurationElement(objectClass = "ads-index", container = "indexes")
     private List<IndexBean> indexes = new ArrayList<>();
@@ -153,6 +178,96 @@ public abstract class PartitionBean extends AdsBaseBean
     }
 
 
+    /**
+     * @return the partitionSearchStreaming
+     */
+    public boolean isPartitionSearchStreaming()
+    {
+        return partitionSearchStreaming;
+    }
+
+
+    /**
+     * @param partitionSearchStreaming the partitionSearchStreaming to set
+     */
+    public void setPartitionSearchStreaming( boolean partitionSearchStreaming )
+    {
+        this.partitionSearchStreaming = partitionSearchStreaming;
+    }
+
+
+    /**
+     * @return the partitionSearchSortedIndex
+     */
+    public boolean isPartitionSearchSortedIndex()
+    {
+        return partitionSearchSortedIndex;
+    }
+
+
+    /**
+     * @param partitionSearchSortedIndex the partitionSearchSortedIndex to set
+     */
+    public void setPartitionSearchSortedIndex( boolean partitionSearchSortedIndex )
+    {
+        this.partitionSearchSortedIndex = partitionSearchSortedIndex;
+    }
+
+
+    /**
+     * @return the partitionStatisticsOptimizerEnabled
+     */
+    public boolean isPartitionStatisticsOptimizerEnabled()
+    {
+        return partitionStatisticsOptimizerEnabled;
+    }
+
+
+    /**
+     * @param partitionStatisticsOptimizerEnabled the partitionStatisticsOptimizerEnabled to set
+     */
+    public void setPartitionStatisticsOptimizerEnabled( boolean partitionStatisticsOptimizerEnabled )
+    {
+        this.partitionStatisticsOptimizerEnabled = partitionStatisticsOptimizerEnabled;
+    }
+
+
+    /**
+     * @return the partitionSearchPlanCacheSize
+     */
+    public int getPartitionSearchPlanCacheSize()
+    {
+        return partitionSearchPlanCacheSize;
+    }
+
+
+    /**
+     * @param partitionSearchPlanCacheSize the partitionSearchPlanCacheSize to set
+     */
+    public void setPartitionSearchPlanCacheSize( int partitionSearchPlanCacheSize )
+    {
+        this.partitionSearchPlanCacheSize = partitionSearchPlanCacheSize;
+    }
+
+
+    /**
+     * @return the partitionSearchProjection
+     */
+    public boolean isPartitionSearchProjection()
+    {
+        return partitionSearchProjection;
+    }
+
+
+    /**
+     * @param partitionSearchProjection the partitionSearchProjection to set
+     */
+    public void setPartitionSearchProjection( boolean partitionSearchProjection )
+    {
+        this.partitionSearchProjection = partitionSearchProjection;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -166,6 +281,11 @@ public abstract class PartitionBean extends AdsBaseBean
         sb.append( tabs ).append( "  suffix : " ).append( partitionSuffix.getName() ).append( '\n' );
         sb.append( toString( tabs, "  sync on write", partitionSyncOnWrite ) );
         sb.append( toString( tabs, "  contextEntry", contextEntry ) );
+        sb.append( toString( tabs, "  search streaming", partitionSearchStreaming ) );
+        sb.append( toString( tabs, "  search sorted index", partitionSearchSortedIndex ) );
+        sb.append( toString( tabs, "  statistics optimizer enabled", partitionStatisticsOptimizerEnabled ) );
+        sb.append( toString( tabs, "  search plan cache size", partitionSearchPlanCacheSize ) );
+        sb.append( toString( tabs, "  search projection", partitionSearchProjection ) );
 
         sb.append( tabs ).append( "  indexes : \n" );
 
@@ -21,7 +21,9 @@
 package org.apache.directory.server.config;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.List;
@@ -124,6 +126,11 @@ public class HttpServerConfigReaderTest
         HttpServerBean httpServerBean = ( HttpServerBean ) configBean.getDirectoryServiceBeans().get( 0 );
         assertNotNull( httpServerBean );
 
+        // Declared by the ads-httpServerOptions auxiliary object class
+        assertEquals( "/metrics", httpServerBean.getHttpMetricsPath() );
+        assertEquals( 2, httpServerBean.getHttpMetricsAllowedAddresses().size() );
+        assertTrue( httpServerBean.getHttpMetricsAllowedAddresses().contains( "10.0.0.0/8" ) );
+
         configPartition.destroy( configPartition.beginReadTransaction() );
     }
 }
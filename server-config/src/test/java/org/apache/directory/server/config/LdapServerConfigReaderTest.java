@@ -21,6 +21,7 @@
 package org.apache.directory.server.config;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.File;
@@ -124,6 +125,10 @@ public class LdapServerConfigReaderTest
         LdapServerBean ldapServerBean = ( LdapServerBean ) configBean.getDirectoryServiceBeans().get( 0 );
         assertNotNull( ldapServerBean );
 
+        // Declared by the ads-ldapServerOptions auxiliary object class
+        assertEquals( 8L * 1024L * 1024L, ldapServerBean.getLdapServerWriteHighWaterMark() );
+        assertEquals( 2L * 1024L * 1024L, ldapServerBean.getLdapServerWriteLowWaterMark() );
+
         configPartition.destroy( configPartition.beginReadTransaction() );
     }
 }
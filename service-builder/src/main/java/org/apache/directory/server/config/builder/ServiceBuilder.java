@@ -53,6 +53,7 @@ import org.apache.directory.server.config.beans.ChangeLogBean;
 import org.apache.directory.server.config.beans.ChangePasswordServerBean;
 import org.apache.directory.server.config.beans.DelegatingAuthenticatorBean;
 import org.apache.directory.server.config.beans.DirectoryServiceBean;
+import org.apache.directory.server.config.beans.EventInterceptorBean;
 import org.apache.directory.server.config.beans.ExtendedOpHandlerBean;
 import org.apache.directory.server.config.beans.HttpServerBean;
 import org.apache.directory.server.config.beans.HttpWebAppBean;
@@ -63,6 +64,8 @@ import org.apache.directory.server.config.beans.JdbmPartitionBean;
 import org.apache.directory.server.config.beans.JournalBean;
 import org.apache.directory.server.config.beans.KdcServerBean;
 import org.apache.directory.server.config.beans.LdapServerBean;
+import org.apache.directory.server.config.beans.LmdbIndexBean;
+import org.apache.directory.server.config.beans.LmdbPartitionBean;
 import org.apache.directory.server.config.beans.MavibotIndexBean;
 import org.apache.directory.server.config.beans.MavibotPartitionBean;
 import org.apache.directory.server.config.beans.NtpServerBean;
@@ -84,6 +87,7 @@ import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
 import org.apache.directory.server.core.api.journal.JournalStore;
+import org.apache.directory.server.core.api.metrics.SlowOperationLog;
 import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.authn.AuthenticationInterceptor;
@@ -91,12 +95,19 @@ import org.apache.directory.server.core.authn.Authenticator;
 import org.apache.directory.server.core.authn.DelegatingAuthenticator;
 import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
 import org.apache.directory.server.core.changelog.DefaultChangeLog;
+import org.apache.directory.server.core.event.EventDispatcher;
+import org.apache.directory.server.core.event.EventInterceptor;
 import org.apache.directory.server.core.journal.DefaultJournal;
 import org.apache.directory.server.core.journal.DefaultJournalStore;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmDnIndex;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmIndex;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmRdnIndex;
+import org.apache.directory.server.core.partition.impl.btree.lmdb.LmdbDnIndex;
+import org.apache.directory.server.core.partition.impl.btree.lmdb.LmdbIndex;
+import org.apache.directory.server.core.partition.impl.btree.lmdb.LmdbPartition;
+import org.apache.directory.server.core.partition.impl.btree.lmdb.LmdbRdnIndex;
 import org.apache.directory.server.core.partition.impl.btree.mavibot.MavibotDnIndex;
 import org.apache.directory.server.core.partition.impl.btree.mavibot.MavibotIndex;
 import org.apache.directory.server.core.partition.impl.btree.mavibot.MavibotPartition;
@@ -109,6 +120,7 @@ import org.apache.directory.server.kerberos.KerberosConfig;
 import org.apache.directory.server.kerberos.changepwd.ChangePasswordServer;
 import org.apache.directory.server.kerberos.kdc.KdcServer;
 import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapRequestExecutor;
 import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.handlers.sasl.MechanismHandler;
 import org.apache.directory.server.ldap.handlers.sasl.ntlm.NtlmMechanismHandler;
@@ -230,6 +242,16 @@ public final class ServiceBuilder
 
                     ( ( AuthenticationInterceptor ) interceptor ).setPwdPolicies( ppolicyContainer );
                 }
+                else if ( interceptorBean instanceof EventInterceptorBean )
+                {
+                    // The delivery of the changes to the asynchronous listeners
+                    EventInterceptorBean eventInterceptorBean = ( EventInterceptorBean ) interceptorBean;
+                    EventInterceptor eventInterceptor = ( EventInterceptor ) interceptor;
+                    eventInterceptor.setQueueSize( eventInterceptorBean.getEventQueueSize() );
+                    eventInterceptor.setOverflowPolicy(
+                        EventDispatcher.parseOverflowPolicy( eventInterceptorBean.getEventOverflowPolicy() ) );
+                    eventInterceptor.setThreads( eventInterceptorBean.getEventThreads() );
+                }
 
                 interceptors.add( interceptor );
             }
@@ -935,6 +957,10 @@ public final class ServiceBuilder
         // The webApps
         httpServer.setWebApps( createHttpWebApps( httpServerBean.getHttpWebApps(), directoryService ) );
 
+        // The operation metrics, only exposed if a path is configured
+        httpServer.setMetricsPath( httpServerBean.getHttpMetricsPath() );
+        httpServer.setMetricsAllowedAddresses( httpServerBean.getHttpMetricsAllowedAddresses() );
+
         return httpServer;
     }
 
@@ -1047,6 +1073,26 @@ public final class ServiceBuilder
         // MaxPDUSize
         ldapServer.setMaxPDUSize( ldapServerBean.getMaxPDUSize() );
 
+        // Search results flow control
+        ldapServer.setWriteHighWaterMark( ldapServerBean.getLdapServerWriteHighWaterMark() );
+        ldapServer.setWriteLowWaterMark( ldapServerBean.getLdapServerWriteLowWaterMark() );
+
+        // The way the requests are executed
+        ldapServer.setExecutionMode( LdapRequestExecutor.parseMode( ldapServerBean.getLdapServerExecutionMode() ) );
+        ldapServer.setMaxInFlightRequests( ldapServerBean.getLdapServerMaxInFlightRequests() );
+
+        // The cache of the encoded search result entries
+        ldapServer.setEncodedResponseCacheSize( ldapServerBean.getLdapServerEncodedResponseCacheSize() );
+
+        // The paged search contexts
+        ldapServer.setPagedSearchMaxCursors( ldapServerBean.getLdapServerPagedSearchMaxCursors() );
+        ldapServer.setPagedSearchIdleTimeout( ldapServerBean.getLdapServerPagedSearchIdleTimeout() );
+        ldapServer.setPagedSearchMaxIdleTime( ldapServerBean.getLdapServerPagedSearchMaxIdleTime() );
+        ldapServer.setPersistentSearchQueueSize( ldapServerBean.getLdapServerPersistentSearchQueueSize() );
+
+        // The Virtual List View lists
+        ldapServer.setVlvMaxEntries( ldapServerBean.getLdapServerVlvMaxEntries() );
+
         // Sasl Host
         ldapServer.setSaslHost( ldapServerBean.getLdapServerSaslHost() );
 
@@ -1259,6 +1305,7 @@ public final class ServiceBuilder
 
         index.setCacheSize( jdbmIndexBean.getIndexCacheSize() );
         index.setNumDupLimit( jdbmIndexBean.getIndexNumDupLimit() );
+        index.setTrigram( jdbmIndexBean.getIndexTrigram() );
 
         // Find the OID for this index
         if ( jdbmIndexBean.getIndexWorkingDir() != null )
@@ -1338,6 +1385,7 @@ public final class ServiceBuilder
             directoryService ) );
 
         setContextEntry( jdbmPartitionBean, jdbmPartition );
+        setSearchOptions( jdbmPartitionBean, jdbmPartition );
 
         return jdbmPartition;
     }
@@ -1367,6 +1415,10 @@ public final class ServiceBuilder
         {
             return createMavibotPartition( directoryService, ( MavibotPartitionBean ) partitionBean );
         }
+        else if ( partitionBean instanceof LmdbPartitionBean )
+        {
+            return createLmdbPartition( directoryService, ( LmdbPartitionBean ) partitionBean );
+        }
         else
         {
             return null;
@@ -1482,6 +1534,18 @@ public final class ServiceBuilder
         // SyncPeriodMillis
         directoryService.setSyncPeriodMillis( directoryServiceBean.getDsSyncPeriodMillis() );
 
+        // SortMemoryBudget
+        directoryService.setSortMemoryBudget( directoryServiceBean.getDsSortMemoryBudget() );
+
+        // The operation metrics
+        directoryService.getOperationMetrics().setMaxClients( directoryServiceBean.getDsMetricsMaxClients() );
+        directoryService.getOperationMetrics().setJmxEnabled( directoryServiceBean.isDsMetricsJmxEnabled() );
+
+        // The slow operation log
+        SlowOperationLog slowOperationLog = directoryService.getOperationMetrics().getSlowOperationLog();
+        slowOperationLog.setThreshold( directoryServiceBean.getDsSlowOperationThreshold() );
+        slowOperationLog.setCapacity( directoryServiceBean.getDsSlowOperationCapacity() );
+
         // testEntries
         String entryFilePath = directoryServiceBean.getDsTestEntries();
 
@@ -1531,6 +1595,7 @@ public final class ServiceBuilder
             directoryService ) );
 
         setContextEntry( mvbtPartitionBean, mvbtPartition );
+        setSearchOptions( mvbtPartitionBean, mvbtPartition );
 
         return mvbtPartition;
     }
@@ -1593,11 +1658,130 @@ public final class ServiceBuilder
         }
 
         index.setWkDirPath( partition.getPartitionPath() );
+        index.setTrigram( mavibotIndexBean.getIndexTrigram() );
 
         return index;
     }
 
 
+    public static LmdbPartition createLmdbPartition( DirectoryService directoryService,
+        LmdbPartitionBean lmdbPartitionBean ) throws ConfigurationException
+    {
+        if ( ( lmdbPartitionBean == null ) || lmdbPartitionBean.isDisabled() )
+        {
+            return null;
+        }
+
+        LmdbPartition lmdbPartition = new LmdbPartition( directoryService.getSchemaManager(),
+            directoryService.getDnFactory() );
+        lmdbPartition.setCacheSize( lmdbPartitionBean.getPartitionCacheSize() );
+
+        if ( lmdbPartitionBean.getLmdbMapSize() > 0L )
+        {
+            lmdbPartition.setMapSize( lmdbPartitionBean.getLmdbMapSize() );
+        }
+
+        lmdbPartition.setId( lmdbPartitionBean.getPartitionId() );
+        File partitionPath = new File( directoryService.getInstanceLayout().getPartitionsDirectory(),
+            lmdbPartitionBean.getPartitionId() );
+        lmdbPartition.setPartitionPath( partitionPath.toURI() );
+
+        try
+        {
+            lmdbPartition.setSuffixDn( lmdbPartitionBean.getPartitionSuffix() );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            String message = "Cannot set the Dn " + lmdbPartitionBean.getPartitionSuffix() + ", " + lide.getMessage();
+            LOG.error( message );
+            throw new ConfigurationException( message );
+        }
+
+        lmdbPartition.setSyncOnWrite( lmdbPartitionBean.isPartitionSyncOnWrite() );
+        lmdbPartition.setIndexedAttributes( createLmdbIndexes( lmdbPartition, lmdbPartitionBean.getIndexes() ) );
+
+        setContextEntry( lmdbPartitionBean, lmdbPartition );
+        setSearchOptions( lmdbPartitionBean, lmdbPartition );
+
+        return lmdbPartition;
+    }
+
+
+    /**
+     * Create the list of LmdbIndex from the configuration
+     */
+    private static Set<Index<?, String>> createLmdbIndexes( LmdbPartition partition, List<IndexBean> indexesBeans )
+    {
+        Set<Index<?, String>> indexes = new HashSet<>();
+
+        for ( IndexBean indexBean : indexesBeans )
+        {
+            if ( indexBean.isEnabled() && ( indexBean instanceof LmdbIndexBean ) )
+            {
+                indexes.add( createLmdbIndex( partition, ( LmdbIndexBean ) indexBean ) );
+            }
+        }
+
+        return indexes;
+    }
+
+
+    /**
+     * Create a new instance of a LmdbIndex from an instance of LmdbIndexBean
+     * 
+     * @param partition The LMDB partition instance
+     * @param lmdbIndexBean The LmdbIndexBean to convert
+     * @return An LmdbIndex instance
+     */
+    public static LmdbIndex<?> createLmdbIndex( LmdbPartition partition, LmdbIndexBean lmdbIndexBean )
+    {
+        if ( ( lmdbIndexBean == null ) || lmdbIndexBean.isDisabled() )
+        {
+            return null;
+        }
+
+        LmdbIndex<?> index = null;
+
+        boolean hasReverse = lmdbIndexBean.getIndexHasReverse();
+
+        if ( lmdbIndexBean.getIndexAttributeId().equalsIgnoreCase( ApacheSchemaConstants.APACHE_RDN_AT )
+            || lmdbIndexBean.getIndexAttributeId().equalsIgnoreCase( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
+        {
+            index = new LmdbRdnIndex();
+        }
+        else if ( lmdbIndexBean.getIndexAttributeId().equalsIgnoreCase( ApacheSchemaConstants.APACHE_ALIAS_AT )
+            || lmdbIndexBean.getIndexAttributeId().equalsIgnoreCase( ApacheSchemaConstants.APACHE_ALIAS_AT_OID ) )
+        {
+            index = new LmdbDnIndex( ApacheSchemaConstants.APACHE_ALIAS_AT_OID );
+        }
+        else
+        {
+            index = new LmdbIndex<>( lmdbIndexBean.getIndexAttributeId(), hasReverse );
+        }
+
+        index.setWkDirPath( partition.getPartitionPath() );
+        index.setTrigram( lmdbIndexBean.getIndexTrigram() );
+
+        return index;
+    }
+
+
+    /**
+     * Sets the search settings of a partition from its configuration
+     *
+     * @param bean the partition configuration bean
+     * @param partition the partition instance
+     */
+    private static void setSearchOptions( PartitionBean bean, AbstractBTreePartition partition )
+    {
+        partition.setSearchStreaming( bean.isPartitionSearchStreaming() );
+        partition.setSearchSortedIndex( bean.isPartitionSearchSortedIndex() );
+        partition.setStatisticsOptimizerEnabled( bean.isPartitionStatisticsOptimizerEnabled() );
+        partition.setSearchPlanCacheSize( bean.getPartitionSearchPlanCacheSize() );
+        partition.setSearchProjection( bean.isPartitionSearchProjection() );
+    }
+
+
     /**
      * Sets the configured context entry if present in the given partition bean 
      *
@@ -36,10 +36,8 @@ import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
 import org.apache.directory.server.xdbm.impl.avl.AvlMasterTable;
 import org.apache.directory.server.xdbm.impl.avl.AvlRdnIndex;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
-import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
 import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
 import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
-import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,14 +98,7 @@ public class AvlPartition extends AbstractBTreePartition
             CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
 
             // setup optimizer and registries for parent
-            if ( !optimizerEnabled )
-            {
-                setOptimizer( new NoOpOptimizer() );
-            }
-            else
-            {
-                setOptimizer( new DefaultOptimizer( this ) );
-            }
+            setOptimizer( createOptimizer() );
 
             setSearchEngine( new DefaultSearchEngine( this, cursorBuilder, evaluatorBuilder, getOptimizer() ) );
 
@@ -25,12 +25,15 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -56,6 +59,7 @@ import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
 import org.apache.directory.api.ldap.model.name.Ava;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
@@ -84,24 +88,34 @@ import org.apache.directory.server.core.api.interceptor.context.SearchOperationC
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.api.partition.Subordinates;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.EntryNumberMap;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.IndexStatistics;
 import org.apache.directory.server.xdbm.MasterTable;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.apache.directory.server.xdbm.ProjectedEntry;
 import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.TrigramIndex;
 import org.apache.directory.server.xdbm.search.Optimizer;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.SearchEngine;
+import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
+import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
+import org.apache.directory.server.xdbm.search.impl.SearchPlanCache;
+import org.apache.directory.server.xdbm.search.impl.StatisticsOptimizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 
 /**
@@ -123,12 +137,44 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** Tells if the Optimizer is enabled */
     protected boolean optimizerEnabled = true;
 
+    /** Tells if the search candidates are streamed from the indexes */
+    private boolean searchStreaming = true;
+
+    /** Tells if a sorted search can walk the index of its sort key */
+    private boolean searchSortedIndex = true;
+
+    /** Tells if the optimizer uses the statistics of the indexes */
+    private boolean statisticsOptimizerEnabled = true;
+
+    /** The number of cached search plans, 0 to disable the cache */
+    private int searchPlanCacheSize = SearchPlanCache.DEFAULT_SIZE;
+
+    /** Tells if only the attributes a search needs are decoded */
+    private boolean searchProjection = true;
+
     /** The default cache size is set to 10 000 objects */
     public static final int DEFAULT_CACHE_SIZE = 10000;
 
     /** The Entry cache size for this partition */
     protected int cacheSize = DEFAULT_CACHE_SIZE;
 
+    /** The average entry size used to compute the default entry cache size, in bytes */
+    public static final long DEFAULT_ENTRY_WEIGHT = 2048L;
+
+    /** The maximum size of the entry cache, in bytes. A negative value means cacheSize * DEFAULT_ENTRY_WEIGHT */
+    protected long entryCacheMaxBytes = -1L;
+
+    /** The estimated memory footprint of an entry, an attribute and a value, in bytes */
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int ATTRIBUTE_OVERHEAD = 96;
+    private static final int VALUE_OVERHEAD = 64;
+
+    /** The entry cache, containing detached copies of the entries read from the master table */
+    private Cache<String, Entry> entryCache;
+
+    /** The time the last write transaction which modified an entry has ended */
+    private volatile long lastWriteEnd = System.nanoTime();
+
     /** The alias cache */
     protected Cache<String, Dn> aliasCache;
 
@@ -153,6 +199,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** a map of attributeType numeric UUID to user userIndices */
     protected Map<String, Index<?, String>> userIndices = new HashMap<>();
 
+    /** a map of attributeType numeric UUID to the trigram indices built on top of user indices */
+    protected Map<String, TrigramIndex> trigramIndices = new HashMap<>();
+
+    /** a map of attributeType numeric UUID to the statistics of user indices */
+    protected Map<String, IndexStatistics> indexStatistics = new HashMap<>();
+
+    /** The numbers of the entries in the candidate bitmaps */
+    protected EntryNumberMap entryNumberMap = new EntryNumberMap();
+
     /** a map of attributeType numeric UUID to system userIndices */
     protected Map<String, Index<?, String>> systemIndices = new HashMap<>();
 
@@ -209,6 +264,19 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
     /** a cache to hold <entryUUID, Dn> pairs, this is used for speeding up the buildEntryDn() method */
     private Cache<String, Dn> entryDnCache;
+
+    /**
+     * The IDs of the cached DNs, sorted by reversed normalized DN so that a subtree can be found by
+     * a range scan when an entry is renamed or moved. Protected by its own monitor.
+     */
+    private final NavigableMap<String, String> entryDnSubtrees = new TreeMap<>();
+
+    /** The number of DNs added to the entryDnSubtrees map since it has been pruned */
+    private int entryDnSubtreesAdded;
+
+    /** The separators used to build the entryDnSubtrees keys */
+    private static final char RDN_SEPARATOR = '\u0001';
+    private static final char ID_SEPARATOR = '\u0000';
     
     /** a semaphore to serialize the writes on context entry while updating contextCSN attribute */
     private Semaphore ctxCsnSemaphore = new Semaphore( 1 );
@@ -308,6 +376,140 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Gets the maximum size of the entry cache, in bytes.
+     *
+     * @return the maximum size of the entry cache, or a negative value if it's computed from the cache size
+     */
+    public long getEntryCacheMaxBytes()
+    {
+        return entryCacheMaxBytes;
+    }
+
+
+    /**
+     * Sets the maximum size of the entry cache, in bytes. The size of each entry is estimated
+     * from its values. When not set, the cache size multiplied by {@link #DEFAULT_ENTRY_WEIGHT}
+     * is used. This has to be set before the partition is initialized.
+     *
+     * @param entryCacheMaxBytes the maximum size of the entry cache, 0 to disable it
+     */
+    public void setEntryCacheMaxBytes( long entryCacheMaxBytes )
+    {
+        this.entryCacheMaxBytes = entryCacheMaxBytes;
+    }
+
+
+    /**
+     * @return <code>true</code> if the search candidates are streamed from the indexes
+     */
+    public boolean isSearchStreaming()
+    {
+        return searchStreaming;
+    }
+
+
+    /**
+     * Tells the search engine to stream the candidates from the indexes, or to gather them
+     * in a set before returning the first entry. This has to be set before the partition
+     * is initialized.
+     *
+     * @param searchStreaming <code>true</code> if the candidates should be streamed
+     */
+    public void setSearchStreaming( boolean searchStreaming )
+    {
+        this.searchStreaming = searchStreaming;
+    }
+
+
+    /**
+     * @return <code>true</code> if a sorted search can walk the index of its sort key
+     */
+    public boolean isSearchSortedIndex()
+    {
+        return searchSortedIndex;
+    }
+
+
+    /**
+     * Tells the search engine to return the entries in the order of the index of the sort
+     * key, when a search has a sort control with a single key, instead of sorting them after
+     * the search. This has to be set before the partition is initialized.
+     *
+     * @param searchSortedIndex <code>true</code> if the sort key index can be used
+     */
+    public void setSearchSortedIndex( boolean searchSortedIndex )
+    {
+        this.searchSortedIndex = searchSortedIndex;
+    }
+
+
+    /**
+     * @return <code>true</code> if the optimizer uses the statistics of the indexes
+     */
+    public boolean isStatisticsOptimizerEnabled()
+    {
+        return statisticsOptimizerEnabled;
+    }
+
+
+    /**
+     * Tells the partition to use a {@link StatisticsOptimizer}, which annotates the filters
+     * from the statistics of the indexes, or a {@link DefaultOptimizer}, which counts the
+     * candidates of each index. This has to be set before the partition is initialized.
+     *
+     * @param statisticsOptimizerEnabled <code>true</code> if the statistics based optimizer should be used
+     */
+    public void setStatisticsOptimizerEnabled( boolean statisticsOptimizerEnabled )
+    {
+        this.statisticsOptimizerEnabled = statisticsOptimizerEnabled;
+    }
+
+
+    /**
+     * @return The number of cached search plans, 0 if the plans are not cached
+     */
+    public int getSearchPlanCacheSize()
+    {
+        return searchPlanCacheSize;
+    }
+
+
+    /**
+     * Sets the number of search plans the search engine keeps, by filter shape, to avoid
+     * optimizing the same filters again. This has to be set before the partition is
+     * initialized.
+     *
+     * @param searchPlanCacheSize The number of cached search plans, 0 to disable the cache
+     */
+    public void setSearchPlanCacheSize( int searchPlanCacheSize )
+    {
+        this.searchPlanCacheSize = searchPlanCacheSize;
+    }
+
+
+    /**
+     * @return <code>true</code> if only the attributes a search needs are decoded
+     */
+    public boolean isSearchProjection()
+    {
+        return searchProjection;
+    }
+
+
+    /**
+     * Tells the search engine to decode only the attributes a search needs when the
+     * candidates are fetched, or the whole entries. This has to be set before the partition
+     * is initialized.
+     *
+     * @param searchProjection <code>true</code> if only the needed attributes should be decoded
+     */
+    public void setSearchProjection( boolean searchProjection )
+    {
+        this.searchProjection = searchProjection;
+    }
+
+
     /**
      * Tells if the Optimizer is enabled or not
      * @return true if the optimizer is enabled
@@ -328,6 +530,29 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Creates the optimizer used by the search engine : a {@link NoOpOptimizer} if the
+     * optimizer is disabled, otherwise a {@link StatisticsOptimizer}, unless the statistics
+     * based optimizer is disabled.
+     *
+     * @return The optimizer to use
+     */
+    protected Optimizer createOptimizer()
+    {
+        if ( !optimizerEnabled )
+        {
+            return new NoOpOptimizer();
+        }
+
+        if ( statisticsOptimizerEnabled )
+        {
+            return new StatisticsOptimizer( this );
+        }
+
+        return new DefaultOptimizer( this );
+    }
+
+
     /**
      * Sets the path in which this Partition stores data. This may be an URL to
      * a file or directory, or an JDBC URL.
@@ -462,6 +687,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         // convert and initialize system indices
         Map<String, Index<?, String>> tmp = new HashMap<>();
+        Map<String, TrigramIndex> trigrams = new HashMap<>();
+        Map<String, IndexStatistics> statistics = new HashMap<>();
 
         for ( Map.Entry<String, Index<?, String>> elem : userIndices.entrySet() )
         {
@@ -474,8 +701,17 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             if ( mr != null )
             {
                 Index<?, String> index = elem.getValue();
+                boolean trigram = index.isTrigram();
                 index = convertAndInit( index );
                 tmp.put( oid, index );
+
+                statistics.put( oid, new IndexStatistics( ( Index<String, String> ) index, presenceIdx ) );
+
+                // The trigram index only makes sense on strings
+                if ( trigram && attributeType.getSyntax().isHumanReadable() )
+                {
+                    trigrams.put( oid, new TrigramIndex( ( Index<String, String> ) index, entryNumberMap ) );
+                }
             }
             else
             {
@@ -484,6 +720,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
 
         userIndices = tmp;
+        trigramIndices = trigrams;
+        indexStatistics = statistics;
     }
 
 
@@ -547,6 +785,14 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         piarCache.invalidateAll();
         entryDnCache.invalidateAll();
 
+        synchronized ( entryDnSubtrees )
+        {
+            entryDnSubtrees.clear();
+        }
+
+        LOG.debug( "Entry cache statistics for {} partition : {}", id, entryCache.stats() );
+        entryCache.invalidateAll();
+
         MultiException errors = new MultiException( I18n.err( I18n.ERR_577 ) );
 
         for ( Index<?, String> index : userIndices.values() )
@@ -637,6 +883,40 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         entryDnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
             .build();
+
+        long maxBytes = entryCacheMaxBytes;
+
+        if ( maxBytes < 0 )
+        {
+            maxBytes = ( cacheSize < 0 ? DEFAULT_CACHE_SIZE : cacheSize ) * DEFAULT_ENTRY_WEIGHT;
+        }
+
+        LOG.debug( "Using an entry cache of {} bytes for {} partition", maxBytes, id );
+
+        entryCache = Caffeine.newBuilder().maximumWeight( maxBytes )
+            .weigher( ( String entryId, Entry entry ) -> weigh( entry ) ).recordStats().build();
+    }
+
+
+    /**
+     * Estimates the memory used by an entry. Human readable values are counted four times :
+     * the user provided and normalized forms are stored as UTF-16 strings.
+     */
+    private static int weigh( Entry entry )
+    {
+        long weight = ENTRY_OVERHEAD;
+
+        for ( Attribute attribute : entry )
+        {
+            weight += ATTRIBUTE_OVERHEAD;
+
+            for ( Value value : attribute )
+            {
+                weight += VALUE_OVERHEAD + ( value.isHumanReadable() ? 4L * value.length() : value.length() );
+            }
+        }
+
+        return ( int ) Math.min( weight, Integer.MAX_VALUE );
     }
 
 
@@ -929,6 +1209,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
                 // And finally add the entry into the master table
                 master.put( partitionTxn, id, entry );
+
+                updateDerivedIndices( partitionTxn, id, Collections.emptyMap(), getIndexedValues( entry ) );
             }
             finally
             {
@@ -1161,6 +1443,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 }
 
                 master.remove( partitionTxn, id );
+                invalidateCache( partitionTxn, id );
+
+                updateDerivedIndices( partitionTxn, id, getIndexedValues( entry ), Collections.emptyMap() );
+
+                // Once the trigram indices don't reference the entry anymore
+                afterCommit( partitionTxn, () -> entryNumberMap.release( id ) );
             }
             finally
             {
@@ -1218,7 +1506,14 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             
             PartitionSearchResult searchResult = searchEngine.computeResult( partitionTxn, schemaManager, searchContext );
 
-            Cursor<Entry> result = new EntryCursorAdaptor( partitionTxn, this, searchResult );
+            EntryCursorAdaptor result = new EntryCursorAdaptor( partitionTxn, this, searchResult );
+            result.setProfile( searchContext.getProfile() );
+
+            // A paged search may have to be resumed after its last returned entry
+            if ( ( searchResult.getWalk() != null ) && searchContext.hasRequestControl( PagedResults.OID ) )
+            {
+                result.trackPosition( searchContext, searchResult.getWalk() );
+            }
 
             return new EntryFilteringCursorImpl( result, searchContext, schemaManager );
         }
@@ -1335,6 +1630,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
             if ( entry != null )
             {
+                // The cached entry is shared, work on a copy
+                entry = entry.clone();
                 entry.setDn( dn );
 
                 entry = new ClonedServerEntry( entry );
@@ -1360,6 +1657,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 rwLock.readLock().lock();
                 entry = master.get( partitionTxn, id );
+
+                if ( entry != null )
+                {
+                    addToCache( partitionTxn, id, entry );
+                }
             }
             finally
             {
@@ -1371,9 +1673,6 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 // We have to store the DN in this entry
                 entry.setDn( dn );
 
-                // always store original entry in the cache
-                addToCache( id, entry );
-
                 entry = new ClonedServerEntry( entry );
 
                 if ( !entry.containsAttribute( entryDnAT ) )
@@ -1393,6 +1692,103 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry fetch( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes )
+        throws LdapException
+    {
+        if ( attributeTypes == null )
+        {
+            return fetch( partitionTxn, id );
+        }
+
+        try
+        {
+            rwLock.readLock().lock();
+
+            if ( id == null )
+            {
+                id = "";
+            }
+
+            Dn dn = buildEntryDn( partitionTxn, id );
+
+            return fetch( partitionTxn, id, dn, attributeTypes );
+        }
+        catch ( Exception e )
+        {
+            throw new LdapOperationErrorException( e.getMessage(), e );
+        }
+        finally
+        {
+            rwLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * A cached entry is not copied, only its projected attributes are. Otherwise, the master
+     * table decodes the projected attributes if it can, and the partial entry is not cached.
+     */
+    @Override
+    public Entry fetch( PartitionTxn partitionTxn, String id, Dn dn, Set<AttributeType> attributeTypes )
+        throws LdapException
+    {
+        if ( attributeTypes == null )
+        {
+            return fetch( partitionTxn, id, dn );
+        }
+
+        try
+        {
+            Entry entry = lookupCache( id );
+
+            if ( entry == null )
+            {
+                try
+                {
+                    rwLock.readLock().lock();
+                    entry = master.get( partitionTxn, id, attributeTypes );
+
+                    if ( ( entry != null ) && !( entry instanceof ProjectedEntry ) )
+                    {
+                        // The table has decoded the whole entry, we can cache it
+                        addToCache( partitionTxn, id, entry );
+                    }
+                }
+                finally
+                {
+                    rwLock.readLock().unlock();
+                }
+
+                if ( entry == null )
+                {
+                    return null;
+                }
+            }
+
+            if ( !( entry instanceof ProjectedEntry ) )
+            {
+                // The complete entry is shared, the projected attributes are copied
+                entry = new ProjectedEntry( schemaManager, entry, attributeTypes );
+            }
+
+            entry.setDn( dn );
+            entry.put( entryDnAT, new Value( entryDnAT, dn.getName(), dn.getNormName() ) );
+
+            return new ClonedServerEntry( entry );
+        }
+        catch ( Exception e )
+        {
+            throw new LdapOperationErrorException( e.getMessage(), e );
+        }
+    }
+
+
     //---------------------------------------------------------------------------------------------
     // The Modify operation
     //---------------------------------------------------------------------------------------------
@@ -1434,6 +1830,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         String id = getEntryId( partitionTxn, dn );
         Entry entry = master.get( partitionTxn, id );
+        Map<String, Set<String>> oldValues = getIndexedValues( entry );
 
         for ( Modification mod : mods )
         {
@@ -1477,6 +1874,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         setContextCsn( entry.get( entryCsnAT ).getString() );
         
         master.put( partitionTxn, id, entry );
+        invalidateCache( partitionTxn, id );
+
+        updateDerivedIndices( partitionTxn, id, oldValues, getIndexedValues( entry ) );
 
         return entry;
     }
@@ -2140,6 +2540,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // Update the Rdn index
         // First drop the old entry
         ParentIdAndRdn movedEntry = rdnIdx.reverseLookup( partitionTxn, entryId );
+        Dn movedDn = buildEntryDn( partitionTxn, entryId );
 
         updateRdnIdx( partitionTxn, oldParentId, REMOVE_CHILD, movedEntry.getNbDescendants() );
 
@@ -2151,6 +2552,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         rdnIdx.add( partitionTxn, movedEntry, entryId );
         updatePiarCache( movedEntry, entryId, ADD_CACHE );
 
+        // The moved entry and its descendants have a new DN
+        invalidateEntryDnSubtree( movedDn );
+
         updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
 
         /*
@@ -2190,11 +2594,10 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // Remove the EntryDN
         modifiedEntry.removeAttributes( entryDnAT );
 
-        entryDnCache.invalidateAll();
-        
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
         master.put( partitionTxn, entryId, modifiedEntry );
+        invalidateCache( partitionTxn, entryId );
 
         if ( isSyncOnWrite.get() )
         {
@@ -2297,6 +2700,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         //Get the info about the moved entry
         ParentIdAndRdn movedEntry = rdnIdx.reverseLookup( partitionTxn, entryId );
+        Dn movedDn = buildEntryDn( partitionTxn, entryId );
         
         // First drop the moved entry from the rdn index
         rdnIdx.drop( partitionTxn, entryId );
@@ -2328,6 +2732,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         rdnIdx.add( partitionTxn, movedEntry, entryId );
         updatePiarCache( movedEntry, entryId, ADD_CACHE );
 
+        // The moved entry and its descendants have a new DN
+        invalidateEntryDnSubtree( movedDn );
+
         updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
 
         // Process the modified indexes now
@@ -2368,14 +2775,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // Update the entryParentId attribute
         modifiedEntry.removeAttributes( ApacheSchemaConstants.ENTRY_PARENT_ID_OID );
         modifiedEntry.add( ApacheSchemaConstants.ENTRY_PARENT_ID_OID, newParentId );
-        
-        // Doom the DN cache now
-        entryDnCache.invalidateAll();
 
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
         // save the modified entry at the new place
         master.put( partitionTxn, entryId, modifiedEntry );
+        invalidateCache( partitionTxn, entryId );
     }
     
     
@@ -2411,6 +2816,22 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                         // Add Value in the index
                         ( ( Index ) index ).add( partitionTxn, modDnAva.getAva().getValue().getNormalized(), entryId );
 
+                        // The trigrams of the removed values are kept : they only add candidates
+                        TrigramIndex trigramIndex = trigramIndices.get( attributeType.getOid() );
+
+                        if ( trigramIndex != null )
+                        {
+                            trigramIndex.addTrigrams( entryId, Collections.emptySet(),
+                                Collections.singleton( modDnAva.getAva().getValue().getNormalized() ) );
+                        }
+
+                        if ( indexStatistics.containsKey( attributeType.getOid() ) )
+                        {
+                            IndexStatistics statistics = indexStatistics.get( attributeType.getOid() );
+                            String addedValue = modDnAva.getAva().getValue().getNormalized();
+                            afterCommit( partitionTxn, () -> statistics.addValue( addedValue ) );
+                        }
+
                         /*
                          * If there is no value for id in this index due to our
                          * add above we add the entry in the presence idx
@@ -2426,6 +2847,13 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                     case UPDATE_DELETE :
                         ( ( Index ) index ).drop( partitionTxn, modDnAva.getAva().getValue().getNormalized(), entryId );
 
+                        if ( indexStatistics.containsKey( attributeType.getOid() ) )
+                        {
+                            IndexStatistics statistics = indexStatistics.get( attributeType.getOid() );
+                            String droppedValue = modDnAva.getAva().getValue().getNormalized();
+                            afterCommit( partitionTxn, () -> statistics.dropValue( droppedValue ) );
+                        }
+
                         /*
                          * If there is no value for id in this index due to our
                          * drop above we remove the oldRdnAttr from the presence idx
@@ -2647,6 +3075,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         // And save the modified entry
         master.put( partitionTxn, oldId, entry );
+        invalidateCache( partitionTxn, oldId );
     }
 
 
@@ -2679,6 +3108,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         // Get the old parentIdAndRdn to get the nb of children and descendant
         ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, oldId );
+        Dn oldDn = buildEntryDn( partitionTxn, oldId );
 
         // Now we can drop it
         rdnIdx.drop( partitionTxn, oldId );
@@ -2693,7 +3123,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         updatePiarCache( parentIdAndRdn, oldId, ADD_CACHE );
 
-        entryDnCache.invalidateAll();
+        // The renamed entry and its descendants have a new DN
+        invalidateEntryDnSubtree( oldDn );
         
         if ( isSyncOnWrite.get() )
         {
@@ -2800,6 +3231,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         int pos = 0;
 
         Dn dn = null;
+        Dn ancestorDn = null;
         
         try
         {
@@ -2817,6 +3249,17 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             
             do
             {
+                // Stop as soon as we find an ancestor which DN is cached
+                if ( pos > 0 )
+                {
+                    ancestorDn = entryDnCache.getIfPresent( parentId );
+
+                    if ( ancestorDn != null )
+                    {
+                        break;
+                    }
+                }
+
                 ParentIdAndRdn cur;
             
                 if ( piarCache != null )
@@ -2863,10 +3306,22 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 parentId = cur.getParentId();
             }
             while ( !parentId.equals( rootId ) );
+
+            if ( ancestorDn != null )
+            {
+                List<Rdn> ancestorRdns = ancestorDn.getRdns();
+                rdnArray = Arrays.copyOf( rdnArray, pos + ancestorRdns.size() );
+
+                for ( Rdn rdn : ancestorRdns )
+                {
+                    rdnArray[pos++] = rdn;
+                }
+            }
             
             dn = new Dn( schemaManager, Arrays.copyOf( rdnArray, pos ) );
             
-            entryDnCache.put( id, dn );
+            addToEntryDnCache( id, dn );
+
             return dn;
         }
         finally
@@ -2876,6 +3331,72 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Builds the key used to find the subtree of an entry in the entryDnSubtrees map : the
+     * normalized RDNs, starting from the top.
+     */
+    private static String getSubtreeKey( Dn dn )
+    {
+        StringBuilder sb = new StringBuilder();
+        List<Rdn> rdns = dn.getRdns();
+
+        for ( int i = rdns.size() - 1; i >= 0; i-- )
+        {
+            sb.append( rdns.get( i ).getNormName() ).append( RDN_SEPARATOR );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Adds a DN in the entryDnCache, and references it in the entryDnSubtrees map.
+     * From time to time, the references to the DNs which are not cached anymore are removed.
+     */
+    private void addToEntryDnCache( String id, Dn dn )
+    {
+        String key = getSubtreeKey( dn ) + ID_SEPARATOR + id;
+
+        synchronized ( entryDnSubtrees )
+        {
+            entryDnSubtrees.put( key, id );
+            entryDnCache.put( id, dn );
+            entryDnSubtreesAdded++;
+
+            if ( entryDnSubtreesAdded > cacheSize )
+            {
+                Map<String, Dn> cachedDns = entryDnCache.asMap();
+                entryDnSubtrees.values().removeIf( cachedId -> !cachedDns.containsKey( cachedId ) );
+                entryDnSubtreesAdded = 0;
+            }
+        }
+    }
+
+
+    /**
+     * Removes from the entryDnCache the DN of an entry and the DNs of all its descendants.
+     * This is called when an entry is renamed or moved.
+     *
+     * @param dn The DN of the entry, before it was renamed or moved
+     */
+    private void invalidateEntryDnSubtree( Dn dn )
+    {
+        if ( dn == null )
+        {
+            return;
+        }
+
+        String key = getSubtreeKey( dn );
+
+        synchronized ( entryDnSubtrees )
+        {
+            Map<String, String> subtree = entryDnSubtrees.subMap( key, key + Character.MAX_VALUE );
+            entryDnCache.invalidateAll( subtree.values() );
+            subtree.clear();
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -3019,6 +3540,124 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     //------------------------------------------------------------------------
     // Index handling
     //------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TrigramIndex getTrigramIndex( AttributeType attributeType )
+    {
+        return trigramIndices.get( attributeType.getOid() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EntryNumberMap getEntryNumberMap()
+    {
+        return entryNumberMap;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexStatistics getIndexStatistics( PartitionTxn partitionTxn, AttributeType attributeType )
+        throws LdapException
+    {
+        IndexStatistics statistics = indexStatistics.get( attributeType.getOid() );
+
+        if ( statistics != null )
+        {
+            statistics.build( partitionTxn );
+        }
+
+        return statistics;
+    }
+
+
+    /**
+     * Gets the normalized values of the attributes having a user index in an entry.
+     */
+    private Map<String, Set<String>> getIndexedValues( Entry entry )
+    {
+        Map<String, Set<String>> values = new HashMap<>();
+
+        for ( IndexStatistics statistics : indexStatistics.values() )
+        {
+            Attribute attribute = entry.get( statistics.getAttributeType() );
+
+            if ( attribute != null )
+            {
+                Set<String> normalizedValues = new HashSet<>();
+
+                for ( Value value : attribute )
+                {
+                    normalizedValues.add( value.getNormalized() );
+                }
+
+                values.put( statistics.getAttributeType().getOid(), normalizedValues );
+            }
+        }
+
+        return values;
+    }
+
+
+    /**
+     * Updates the index statistics and the trigram indices after an entry has been added,
+     * modified or deleted. The statistics are updated once the transaction is committed,
+     * so that an aborted transaction doesn't alter them. The trigrams of the added values
+     * are added right away, so that a committed value is never missing from the candidates.
+     */
+    private void updateDerivedIndices( PartitionTxn partitionTxn, String id, Map<String, Set<String>> oldValues,
+        Map<String, Set<String>> newValues )
+    {
+        for ( Map.Entry<String, IndexStatistics> statistics : indexStatistics.entrySet() )
+        {
+            Set<String> oldAttributeValues = oldValues.getOrDefault( statistics.getKey(), Collections.emptySet() );
+            Set<String> newAttributeValues = newValues.getOrDefault( statistics.getKey(), Collections.emptySet() );
+
+            if ( oldAttributeValues.equals( newAttributeValues ) )
+            {
+                continue;
+            }
+
+            IndexStatistics indexStatistic = statistics.getValue();
+            afterCommit( partitionTxn, () -> indexStatistic.update( oldAttributeValues, newAttributeValues ) );
+
+            TrigramIndex trigramIndex = trigramIndices.get( statistics.getKey() );
+
+            if ( trigramIndex != null )
+            {
+                // An aborted transaction only leaves extra candidates
+                trigramIndex.addTrigrams( id, oldAttributeValues, newAttributeValues );
+                afterCommit( partitionTxn, () -> trigramIndex.removeTrigrams( id, oldAttributeValues,
+                    newAttributeValues ) );
+            }
+        }
+    }
+
+
+    /**
+     * Runs an action once the transaction has been committed. A transaction which is not
+     * a write transaction is not committed : the action is run right away.
+     */
+    private void afterCommit( PartitionTxn partitionTxn, Runnable action )
+    {
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).onCommit( action );
+        }
+        else
+        {
+            action.run();
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -3662,30 +4301,33 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
 
     /**
-     * updates the cache based on the type of OperationContext
+     * updates the cache based on the type of OperationContext. The entry cache is already
+     * updated by the write operations, this is a hook for implementations which need to
+     * maintain their own caches.
      * 
      * @param opCtx the operation's context
      */
     public void updateCache( OperationContext opCtx )
     {
-        // partition implementations should override this if they want to use cache
+        // partition implementations should override this if they want to use another cache
     }
 
 
     /**
-     * looks up for the entry with the given ID in the cache
+     * looks up for the entry with the given ID in the cache. The returned entry is shared,
+     * it must not be modified.
      *
      * @param id the ID of the entry
      * @return the Entry if exists, null otherwise
      */
     public Entry lookupCache( String id )
     {
-        return null;
+        return ( entryCache != null ) ? entryCache.getIfPresent( id ) : null;
     }
 
 
     /**
-     * adds the given entry to cache
+     * adds a copy of the given entry to cache
      *  
      * Note: this method is not called during add operation to avoid filling the cache
      *       with all the added entries
@@ -3695,6 +4337,109 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     public void addToCache( String id, Entry entry )
     {
+        if ( entryCache == null )
+        {
+            return;
+        }
+
+        entryCache.put( id, detach( entry ) );
+    }
+
+
+    /**
+     * Adds a copy of an entry read from the master table to the cache. The entry is only
+     * cached if the read transaction has started after the end of the last write : an
+     * older snapshot may contain a version which has been modified since. The entries
+     * read by a write transaction are not cached either, they may not be committed.
+     */
+    private void addToCache( PartitionTxn partitionTxn, String id, Entry entry )
+    {
+        Cache<String, Entry> cache = entryCache;
+
+        if ( ( cache == null ) || !( partitionTxn instanceof PartitionReadTxn ) )
+        {
+            return;
+        }
+
+        long startTime = ( ( PartitionReadTxn ) partitionTxn ).getStartTime();
+
+        if ( startTime - lastWriteEnd <= 0L )
+        {
+            return;
+        }
+
+        Entry cachedEntry = detach( entry );
+
+        // Check again atomically with the cache update : a write ending now invalidates
+        // the entry after having updated lastWriteEnd
+        cache.asMap().compute( id, ( key, current ) -> ( startTime - lastWriteEnd > 0L ) ? cachedEntry : current );
+    }
+
+
+    /**
+     * Removes a modified entry from the cache. It's removed right away, so that the
+     * transaction doesn't read a cached version, and again once the transaction has
+     * ended, as a reader may have cached the previous version meanwhile.
+     */
+    private void invalidateCache( PartitionTxn partitionTxn, String id )
+    {
+        if ( entryCache == null )
+        {
+            return;
+        }
+
+        entryCache.invalidate( id );
+
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).onEnd( () -> writeEnded( id ) );
+        }
+        else
+        {
+            writeEnded( id );
+        }
+    }
+
+
+    /**
+     * Invalidates a modified entry once its transaction has ended. The readers which have
+     * started before can't add it to the cache anymore.
+     */
+    private void writeEnded( String id )
+    {
+        lastWriteEnd = System.nanoTime();
+
+        Cache<String, Entry> cache = entryCache;
+
+        if ( cache != null )
+        {
+            cache.invalidate( id );
+        }
+    }
+
+
+    /**
+     * Gets a detached copy of an entry, to be cached.
+     */
+    private Entry detach( Entry entry )
+    {
+        Entry detachedEntry = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            detachedEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        return detachedEntry.clone();
+    }
+
+
+    /**
+     * @return The entry cache statistics : hits, misses and evictions
+     */
+    public CacheStats getEntryCacheStats()
+    {
+        return ( entryCache != null ) ? entryCache.stats() : CacheStats.empty();
     }
 
 
@@ -3734,7 +4479,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         if ( operationContext.getSession() != null )
         {
-            rwLock = operationContext.getSession().getDirectoryService().getOperationManager().getRWLock();
+            rwLock = operationContext.getSession().getDirectoryService().getOperationManager().getRWLock( this );
         }
         else
         {
@@ -3864,6 +4609,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             origEntry.add( contextCsnAT, contextCsn );
             
             master.put( partitionTxn, contextEntryId, origEntry );
+            invalidateCache( partitionTxn, contextEntryId );
             
             ctxCsnChanged = false;
             
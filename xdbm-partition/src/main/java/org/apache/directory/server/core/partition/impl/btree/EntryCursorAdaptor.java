@@ -21,6 +21,7 @@ package org.apache.directory.server.core.partition.impl.btree;
 
 
 import java.io.IOException;
+import java.util.Set;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
@@ -30,7 +31,11 @@ import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.SearchPosition;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.search.Evaluator;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
@@ -57,6 +62,21 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
     private final Cursor<IndexEntry<String, String>> indexCursor;
     private final Evaluator<? extends ExprNode> evaluator;
 
+    /** The partition the candidates are fetched from */
+    private final AbstractBTreePartition db;
+
+    /** The attributes to decode when fetching the candidates, null for all of them */
+    private final Set<AttributeType> projection;
+
+    /** The profile of the search, if it's profiled */
+    private OperationProfile profile;
+
+    /** The search the position of the returned candidates is given to, if it's tracked */
+    private SearchOperationContext searchContext;
+
+    /** The index walk the candidates come from */
+    private String walk;
+
 
     public EntryCursorAdaptor( PartitionTxn partitionTxn, AbstractBTreePartition db, PartitionSearchResult searchResult )
     {
@@ -67,7 +87,34 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
 
         indexCursor = searchResult.getResultSet();
         evaluator = searchResult.getEvaluator();
+        projection = searchResult.getProjection();
         this.partitionTxn = partitionTxn;
+        this.db = db;
+    }
+
+
+    /**
+     * Sets the profile the time spent fetching and evaluating the candidates is added to
+     *
+     * @param profile The profile of the search, or null
+     */
+    public void setProfile( OperationProfile profile )
+    {
+        this.profile = profile;
+    }
+
+
+    /**
+     * Gives the position of each returned candidate to the search, so that it can be
+     * resumed after it later.
+     *
+     * @param searchContext The search
+     * @param walk The description of the index walk the candidates come from
+     */
+    public void trackPosition( SearchOperationContext searchContext, String walk )
+    {
+        this.searchContext = searchContext;
+        this.walk = walk;
     }
 
 
@@ -165,6 +212,29 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
     }
 
 
+    /**
+     * Evaluates a candidate. When the search does not need all the attributes, the candidate
+     * is fetched here, before the evaluators do, decoding only the attributes the search needs.
+     */
+    private boolean evaluate( IndexEntry<String, String> indexEntry ) throws LdapException
+    {
+        if ( ( projection != null ) && ( indexEntry.getEntry() == null ) )
+        {
+            Entry entry = db.fetch( partitionTxn, indexEntry.getId(), projection );
+
+            if ( entry == null )
+            {
+                // The entry is not anymore present
+                return false;
+            }
+
+            indexEntry.setEntry( entry );
+        }
+
+        return evaluator.evaluate( partitionTxn, indexEntry );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -174,8 +244,27 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
 
         try
         {
-            if ( evaluator.evaluate( partitionTxn, indexEntry ) )
+            boolean matched;
+
+            if ( profile == null )
+            {
+                matched = evaluate( indexEntry );
+            }
+            else
             {
+                long start = System.nanoTime();
+                matched = evaluate( indexEntry );
+                profile.addTime( "evaluate", System.nanoTime() - start );
+                profile.entryScanned( matched );
+            }
+
+            if ( matched )
+            {
+                if ( searchContext != null )
+                {
+                    searchContext.setPosition( new SearchPosition( walk, indexEntry.getKey(), indexEntry.getId() ) );
+                }
+
                 Entry entry = indexEntry.getEntry();
                 indexEntry.setEntry( null );
 
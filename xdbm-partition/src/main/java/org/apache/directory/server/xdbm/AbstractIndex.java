@@ -49,6 +49,9 @@ public abstract class AbstractIndex<K, E> implements Index<K, E>
     /** Tells if this index has a Reverse table */
     protected boolean withReverse;
 
+    /** Tells if a trigram index is maintained for this attribute */
+    protected boolean trigram;
+
     /** A counter used to differ the commit on disk after N operations */
     protected AtomicInteger commitNumber;
 
@@ -162,4 +165,23 @@ public abstract class AbstractIndex<K, E> implements Index<K, E>
     {
         return withReverse;
     }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isTrigram()
+    {
+        return trigram;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTrigram( boolean trigram )
+    {
+        protect( "trigram" );
+        this.trigram = trigram;
+    }
 }
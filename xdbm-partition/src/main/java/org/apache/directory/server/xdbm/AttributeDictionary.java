@@ -0,0 +1,307 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The dictionary of the attribute types stored in the entries of a partition : the
+ * {@link EntryCodec} writes the small numeric id of an attribute type instead of its OID.
+ * <br>
+ * An id is never reused. This class keeps the dictionary in memory : the partitions
+ * extend it to store the ids in their own database, with {@link #store(int, String)},
+ * in the write transaction of the entry using the id. When that transaction is aborted,
+ * the ids it has added are removed, see {@link #rollbackOnAbort(PartitionWriteTxn)}.
+ * <br>
+ * An id whose attribute type is not in the schema anymore is kept : it's only an error
+ * to decode an attribute of this type.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AttributeDictionary
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( AttributeDictionary.class );
+
+    /** The schema manager */
+    protected final SchemaManager schemaManager;
+
+    /** The ids, per attribute type OID */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /** The OIDs, per id. Replaced when an id is added */
+    private volatile String[] oids = new String[0];
+
+    /** The attribute types, per id, null if not in the schema. Replaced when an id is added */
+    private volatile AttributeType[] attributeTypes = new AttributeType[0];
+
+
+    /**
+     * Creates a dictionary kept in memory, which can only decode the entries it has encoded.
+     *
+     * @param schemaManager The schema manager
+     */
+    public AttributeDictionary( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * Sets the ids read from the partition database. An OID which is not in the schema
+     * keeps its id, but the attributes of this type can't be decoded.
+     *
+     * @param storedOids The stored OIDs, per id. An id which has not been stored is null
+     */
+    protected synchronized void load( List<String> storedOids )
+    {
+        String[] newOids = storedOids.toArray( new String[0] );
+        AttributeType[] types = new AttributeType[newOids.length];
+        ids.clear();
+
+        for ( int id = 0; id < newOids.length; id++ )
+        {
+            String oid = newOids[id];
+
+            if ( oid == null )
+            {
+                LOG.warn( "The id {} is missing in the attribute dictionary {}", id, this );
+                continue;
+            }
+
+            types[id] = schemaManager.getAttributeType( oid );
+
+            if ( types[id] == null )
+            {
+                LOG.warn( "The attribute type {} of the attribute dictionary {} is not in the schema", oid, this );
+            }
+
+            ids.put( oid, id );
+        }
+
+        oids = newOids;
+        attributeTypes = types;
+        LOG.debug( "Loaded {} attribute types in the dictionary {}", types.length, this );
+    }
+
+
+    /**
+     * @return The OIDs, per id
+     */
+    protected List<String> getOids()
+    {
+        return Collections.unmodifiableList( Arrays.asList( oids ) );
+    }
+
+
+    /**
+     * Stores a new id. It's called before the id is used, in the write transaction of the
+     * entry using it, so that an entry can't reference an id the dictionary does not know
+     * about. The dictionary kept in memory does nothing.
+     *
+     * @param id The new id
+     * @param oid The OID of the attribute type
+     * @throws IOException If the id can't be stored
+     */
+    protected void store( int id, String oid ) throws IOException
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * Removes the ids added by a write transaction if it's aborted, as they have not been
+     * stored. The ids added from now on belong to this transaction.
+     *
+     * @param writeTxn The write transaction
+     */
+    public void rollbackOnAbort( PartitionWriteTxn writeTxn )
+    {
+        int size = size();
+        AtomicBoolean committed = new AtomicBoolean();
+
+        // The commit actions are run before the end actions
+        writeTxn.onCommit( () -> committed.set( true ) );
+        writeTxn.onEnd( () ->
+        {
+            if ( !committed.get() )
+            {
+                truncate( size );
+            }
+        } );
+    }
+
+
+    /**
+     * Removes the ids added after the dictionary had the given size
+     */
+    private synchronized void truncate( int size )
+    {
+        String[] current = oids;
+
+        if ( current.length <= size )
+        {
+            return;
+        }
+
+        for ( int id = size; id < current.length; id++ )
+        {
+            if ( current[id] != null )
+            {
+                ids.remove( current[id] );
+            }
+        }
+
+        attributeTypes = Arrays.copyOf( attributeTypes, size );
+        oids = Arrays.copyOf( current, size );
+        LOG.debug( "Removed {} ids from the attribute dictionary {}", current.length - size, this );
+    }
+
+
+    /**
+     * Gets the id of an attribute type, adding it to the dictionary if needed.
+     *
+     * @param attributeType The attribute type
+     * @return The attribute type id
+     * @throws IOException If the new id can't be stored
+     */
+    public int getId( AttributeType attributeType ) throws IOException
+    {
+        Integer id = ids.get( attributeType.getOid() );
+
+        if ( id != null )
+        {
+            return id;
+        }
+
+        return addId( attributeType );
+    }
+
+
+    private synchronized int addId( AttributeType attributeType ) throws IOException
+    {
+        String oid = attributeType.getOid();
+        Integer id = ids.get( oid );
+
+        // Another thread may have added it meanwhile
+        if ( id != null )
+        {
+            return id;
+        }
+
+        int newId = oids.length;
+        store( newId, oid );
+
+        String[] newOids = Arrays.copyOf( oids, newId + 1 );
+        newOids[newId] = oid;
+        AttributeType[] types = Arrays.copyOf( attributeTypes, newId + 1 );
+        types[newId] = attributeType;
+        oids = newOids;
+        attributeTypes = types;
+        ids.put( oid, newId );
+
+        return newId;
+    }
+
+
+    /**
+     * Gets the attribute type associated with an id.
+     *
+     * @param id The attribute type id
+     * @return The attribute type
+     * @throws IOException If the id is not in the dictionary, or its attribute type is not
+     * in the schema
+     */
+    public AttributeType getAttributeType( int id ) throws IOException
+    {
+        AttributeType attributeType = findAttributeType( id );
+
+        if ( attributeType == null )
+        {
+            throw new IOException( I18n.err( I18n.ERR_758_UNKNOWN_DICTIONARY_ATTRIBUTE, oids[id], id, this ) );
+        }
+
+        return attributeType;
+    }
+
+
+    /**
+     * Gets the attribute type associated with an id, if it's in the schema. The schema is
+     * checked again for a type which was not in it when the dictionary has been loaded.
+     *
+     * @param id The attribute type id
+     * @return The attribute type, or null if it's not in the schema
+     * @throws IOException If the id is not in the dictionary
+     */
+    public AttributeType findAttributeType( int id ) throws IOException
+    {
+        // The arrays may be replaced meanwhile, an aborted transaction shortening them
+        AttributeType[] types = attributeTypes;
+        String[] currentOids = oids;
+
+        if ( ( id < 0 ) || ( id >= types.length ) || ( id >= currentOids.length ) || ( currentOids[id] == null ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_756_UNKNOWN_ATTRIBUTE_ID, id, this ) );
+        }
+
+        AttributeType attributeType = types[id];
+
+        if ( attributeType == null )
+        {
+            attributeType = schemaManager.getAttributeType( currentOids[id] );
+        }
+
+        return attributeType;
+    }
+
+
+    /**
+     * @return The number of attribute types in the dictionary
+     */
+    public int size()
+    {
+        return oids.length;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "<memory>";
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * Encodes and decodes the entries stored in the master table of a partition. As in the
+ * former format, only the entry's Rdn is stored, not its Dn.
+ * <br>
+ * The entries are encoded as :
+ * <ul>
+ *   <li><b>[magic]</b> : the {@link #MAGIC} byte, followed by the format {@link #VERSION} byte</li>
+ *   <li><b>[Rdn length]</b> : a variable length integer, 0 if the Dn is empty</li>
+ *   <li><b>[Rdn]</b> : the entry's Rdn</li>
+ *   <li><b>[numberAttr]</b> : a variable length integer, the number of attributes</li>
+ *   <li>For each Attribute :
+ *     <ul>
+ *       <li><b>[id]</b> : the attribute type id in the partition {@link AttributeDictionary}</li>
+ *       <li><b>[length]</b> : the attribute length</li>
+ *       <li><b>[Attribute]</b> : the attribute and its values</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ * The variable length integers use 7 bits per byte. The length of the attributes allows
+ * to decode only some of them, skipping the others.
+ * <br>
+ * The entries stored by the former versions of the server, using the Java serialization,
+ * are still decoded : the partitions are migrated online, each entry being converted the
+ * next time it's written. A codec without dictionary writes the former format.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryCodec
+{
+    /** The first byte of an encoded entry. A serialized entry starts with 0xAC */
+    public static final byte MAGIC = ( byte ) 0xE5;
+
+    /** The current version of the format */
+    public static final byte VERSION = 1;
+
+    /** The first byte of a Java serialization stream */
+    private static final byte STREAM_MAGIC = ( byte ) 0xAC;
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The partition dictionary, null to write the former format */
+    private final AttributeDictionary dictionary;
+
+
+    /**
+     * Creates a new EntryCodec instance
+     *
+     * @param schemaManager The schema manager
+     * @param dictionary The partition attribute dictionary, or null to write the entries
+     * using the Java serialization
+     */
+    public EntryCodec( SchemaManager schemaManager, AttributeDictionary dictionary )
+    {
+        this.schemaManager = schemaManager;
+        this.dictionary = dictionary;
+    }
+
+
+    /**
+     * @return The partition attribute dictionary, null if the codec writes the former format
+     */
+    public AttributeDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+
+    /**
+     * Encodes an entry.
+     *
+     * @param entry The entry to encode
+     * @return The encoded entry
+     * @throws IOException If the entry can't be encoded
+     */
+    public byte[] encode( Entry entry ) throws IOException
+    {
+        if ( dictionary == null )
+        {
+            return serialize( entry );
+        }
+
+        EntryDataOutput out = new EntryDataOutput( 512 );
+        EntryDataOutput element = new EntryDataOutput( 256 );
+
+        out.writeByte( MAGIC );
+        out.writeByte( VERSION );
+
+        // First, the Rdn
+        Dn dn = entry.getDn();
+
+        if ( dn.isEmpty() )
+        {
+            out.writeVarInt( 0 );
+        }
+        else
+        {
+            dn.getRdn().writeExternal( element );
+            out.writeVarInt( element.size() );
+            out.writeContent( element );
+        }
+
+        // Then the attributes, prefixed by their length
+        out.writeVarInt( entry.size() );
+
+        for ( Attribute attribute : entry )
+        {
+            element.reset();
+            attribute.writeExternal( element );
+
+            out.writeVarInt( dictionary.getId( attribute.getAttributeType() ) );
+            out.writeVarInt( element.size() );
+            out.writeContent( element );
+        }
+
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Encodes an entry using the Java serialization, as the former versions of the server.
+     */
+    private static byte[] serialize( Entry entry ) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutput out = new ObjectOutputStream( baos );
+
+        // First, the Dn
+        Dn dn = entry.getDn();
+
+        // Write the Rdn of the Dn
+        if ( dn.isEmpty() )
+        {
+            out.writeByte( 0 );
+        }
+        else
+        {
+            out.writeByte( 1 );
+            Rdn rdn = dn.getRdn();
+            rdn.writeExternal( out );
+        }
+
+        // Then the attributes.
+        out.writeInt( entry.getAttributes().size() );
+
+        // Iterate through the keys. We store the Attribute
+        // here, to be able to restore it in the readExternal :
+        // we need access to the registries, which are not available
+        // in the ServerAttribute class.
+        for ( Attribute attribute : entry.getAttributes() )
+        {
+            // Write the oid to be able to restore the AttributeType when deserializing
+            // the attribute
+            out.writeUTF( attribute.getAttributeType().getOid() );
+
+            // Write the attribute
+            attribute.writeExternal( out );
+        }
+
+        out.flush();
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Tells if some bytes contain an entry in the current format
+     *
+     * @param bytes The encoded entry
+     * @return <code>true</code> if the entry is not in the Java serialization format
+     */
+    public static boolean isEncoded( byte[] bytes )
+    {
+        return ( bytes.length > 0 ) && ( bytes[0] == MAGIC );
+    }
+
+
+    /**
+     * Decodes an entry.
+     *
+     * @param bytes The encoded entry
+     * @return The decoded entry
+     * @throws IOException If the entry can't be decoded
+     */
+    public Entry decode( byte[] bytes ) throws IOException
+    {
+        return decode( ByteBuffer.wrap( bytes ), null );
+    }
+
+
+    /**
+     * Decodes an entry, reading the buffer from its position to its limit. The buffer is
+     * not copied.
+     *
+     * @param buffer The encoded entry
+     * @return The decoded entry
+     * @throws IOException If the entry can't be decoded
+     */
+    public Entry decode( ByteBuffer buffer ) throws IOException
+    {
+        return decode( buffer, null );
+    }
+
+
+    /**
+     * Decodes an entry, with only some of its attributes. The other attributes are
+     * skipped, their values are not read. The buffer is read from its position to its
+     * limit, and is not copied.
+     *
+     * @param buffer The encoded entry
+     * @param attributeTypes The attributes to decode, or null for all of them
+     * @return The decoded entry
+     * @throws IOException If the entry can't be decoded
+     */
+    public Entry decode( ByteBuffer buffer, Set<AttributeType> attributeTypes ) throws IOException
+    {
+        // A duplicate is read, so that the order of the caller's buffer does not matter
+        ByteBuffer data = buffer.duplicate().order( ByteOrder.BIG_ENDIAN );
+        buffer.position( buffer.limit() );
+
+        if ( !data.hasRemaining() )
+        {
+            throw new IOException( I18n.err( I18n.ERR_134, "empty entry" ) );
+        }
+
+        byte magic = data.get( data.position() );
+
+        if ( magic == STREAM_MAGIC )
+        {
+            return deserialize( new ByteBufferInputStream( data ), attributeTypes );
+        }
+
+        if ( magic != MAGIC )
+        {
+            throw new IOException( I18n.err( I18n.ERR_755_UNKNOWN_ENTRY_FORMAT, magic ) );
+        }
+
+        EntryDataInput in = new EntryDataInput( data );
+        in.readByte();
+        byte version = in.readByte();
+
+        if ( version != VERSION )
+        {
+            throw new IOException( I18n.err( I18n.ERR_755_UNKNOWN_ENTRY_FORMAT, version ) );
+        }
+
+        if ( dictionary == null )
+        {
+            throw new IOException( I18n.err( I18n.ERR_756_UNKNOWN_ATTRIBUTE_ID, "", "<none>" ) );
+        }
+
+        try
+        {
+            Entry entry = new DefaultEntry( schemaManager );
+
+            // Read the Dn, if any
+            int rdnLength = in.readVarInt();
+
+            if ( rdnLength > 0 )
+            {
+                Rdn rdn = new Rdn( schemaManager );
+                rdn.readExternal( in );
+                entry.setDn( new Dn( schemaManager, rdn ) );
+            }
+            else
+            {
+                entry.setDn( Dn.EMPTY_DN );
+            }
+
+            // Read the attributes
+            int nbAttributes = in.readVarInt();
+
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                int id = in.readVarInt();
+                int length = in.readVarInt();
+
+                // An attribute whose type is not in the schema anymore is only an error if it's decoded
+                AttributeType attributeType = ( attributeTypes == null ) ? dictionary.getAttributeType( id )
+                    : dictionary.findAttributeType( id );
+
+                if ( ( attributeTypes != null )
+                    && ( ( attributeType == null ) || !attributeTypes.contains( attributeType ) ) )
+                {
+                    if ( in.skipBytes( length ) != length )
+                    {
+                        throw new IOException( I18n.err( I18n.ERR_134, "truncated entry" ) );
+                    }
+
+                    continue;
+                }
+
+                Attribute attribute = new DefaultAttribute( attributeType );
+                attribute.readExternal( in );
+                entry.add( attribute );
+            }
+
+            return entry;
+        }
+        catch ( ClassNotFoundException | LdapException e )
+        {
+            throw new IOException( I18n.err( I18n.ERR_134, e.getLocalizedMessage() ), e );
+        }
+    }
+
+
+    /**
+     * Decodes an entry with only some of its attributes, the others being decoded on demand,
+     * when they are read by their type. The bytes are kept by the returned entry, they must
+     * not be modified. An entry in the former format is decoded completely.
+     *
+     * @param bytes The encoded entry
+     * @param attributeTypes The attributes to decode
+     * @return The projected entry
+     * @throws IOException If the entry can't be decoded
+     */
+    public ProjectedEntry project( byte[] bytes, Set<AttributeType> attributeTypes ) throws IOException
+    {
+        try
+        {
+            if ( isEncoded( bytes ) )
+            {
+                Entry entry = decode( ByteBuffer.wrap( bytes ), attributeTypes );
+
+                return new ProjectedEntry( schemaManager, entry, attributeTypes, this, bytes );
+            }
+
+            return new ProjectedEntry( schemaManager, decode( bytes ), attributeTypes );
+        }
+        catch ( LdapException le )
+        {
+            throw new IOException( I18n.err( I18n.ERR_134, le.getLocalizedMessage() ), le );
+        }
+    }
+
+
+    /**
+     * Decodes one attribute of an entry in the current format. The Rdn and the other
+     * attributes are skipped.
+     *
+     * @param bytes The encoded entry
+     * @param attributeType The attribute to decode
+     * @return The attribute, or null if the entry does not have it
+     * @throws IOException If the entry can't be decoded
+     */
+    public Attribute decodeAttribute( byte[] bytes, AttributeType attributeType ) throws IOException
+    {
+        if ( !isEncoded( bytes ) || ( dictionary == null ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_755_UNKNOWN_ENTRY_FORMAT, bytes.length > 0 ? bytes[0] : "" ) );
+        }
+
+        EntryDataInput in = new EntryDataInput( ByteBuffer.wrap( bytes ) );
+        in.readByte();
+        in.readByte();
+
+        try
+        {
+            int rdnLength = in.readVarInt();
+
+            if ( in.skipBytes( rdnLength ) != rdnLength )
+            {
+                throw new IOException( I18n.err( I18n.ERR_134, "truncated entry" ) );
+            }
+
+            int nbAttributes = in.readVarInt();
+
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                AttributeType type = dictionary.findAttributeType( in.readVarInt() );
+                int length = in.readVarInt();
+
+                if ( attributeType.equals( type ) )
+                {
+                    Attribute attribute = new DefaultAttribute( type );
+                    attribute.readExternal( in );
+
+                    return attribute;
+                }
+
+                if ( in.skipBytes( length ) != length )
+                {
+                    throw new IOException( I18n.err( I18n.ERR_134, "truncated entry" ) );
+                }
+            }
+
+            return null;
+        }
+        catch ( ClassNotFoundException e )
+        {
+            throw new IOException( I18n.err( I18n.ERR_134, e.getLocalizedMessage() ), e );
+        }
+    }
+
+
+    /**
+     * Decodes an entry serialized by the former versions of the server
+     */
+    private Entry deserialize( InputStream stream, Set<AttributeType> attributeTypes ) throws IOException
+    {
+        ObjectInput in = new ObjectInputStream( stream );
+
+        try
+        {
+            Entry entry = new DefaultEntry( schemaManager );
+
+            // Read the Dn, if any
+            byte hasDn = in.readByte();
+
+            if ( hasDn == 1 )
+            {
+                Rdn rdn = new Rdn( schemaManager );
+                rdn.readExternal( in );
+                entry.setDn( new Dn( schemaManager, rdn ) );
+            }
+            else
+            {
+                entry.setDn( Dn.EMPTY_DN );
+            }
+
+            // Read the number of attributes
+            int nbAttributes = in.readInt();
+
+            // Read the attributes : their length is unknown, they are all decoded
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                // Read the attribute's OID
+                AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry( in.readUTF() );
+
+                // Create the attribute we will read
+                Attribute attribute = new DefaultAttribute( attributeType );
+
+                // Read the attribute
+                attribute.readExternal( in );
+
+                if ( ( attributeTypes == null ) || attributeTypes.contains( attributeType ) )
+                {
+                    entry.add( attribute );
+                }
+            }
+
+            return entry;
+        }
+        catch ( ClassNotFoundException | LdapException e )
+        {
+            throw new IOException( I18n.err( I18n.ERR_134, e.getLocalizedMessage() ), e );
+        }
+    }
+
+
+    /**
+     * An InputStream reading a ByteBuffer
+     */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+
+        private ByteBufferInputStream( ByteBuffer buffer )
+        {
+            this.buffer = buffer;
+        }
+
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+
+        @Override
+        public int read( byte[] b, int off, int len )
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+
+            int length = Math.min( len, buffer.remaining() );
+            buffer.get( b, off, length );
+
+            return length;
+        }
+
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.nio.ByteBuffer;
+
+
+/**
+ * An {@link ObjectInput} reading the data written by an {@link EntryDataOutput} directly
+ * from a ByteBuffer, which may be a memory mapped or a direct buffer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class EntryDataInput implements ObjectInput
+{
+    /** The buffer to read */
+    private final ByteBuffer buffer;
+
+
+    /**
+     * Creates a new EntryDataInput instance. The data are read from the buffer position
+     * up to its limit, and the buffer position is moved accordingly.
+     *
+     * @param buffer The buffer to read
+     */
+    EntryDataInput( ByteBuffer buffer )
+    {
+        this.buffer = buffer;
+    }
+
+
+    private void ensure( int length ) throws EOFException
+    {
+        if ( buffer.remaining() < length )
+        {
+            throw new EOFException();
+        }
+    }
+
+
+    /**
+     * Reads an unsigned variable length integer written by {@link EntryDataOutput#writeVarInt(int)}
+     *
+     * @return The integer
+     * @throws IOException If the buffer does not contain an integer
+     */
+    int readVarInt() throws IOException
+    {
+        int value = 0;
+
+        for ( int shift = 0; shift < 32; shift += 7 )
+        {
+            int b = readUnsignedByte();
+            value |= ( b & 0x7F ) << shift;
+
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return value;
+            }
+        }
+
+        throw new IOException( "Malformed variable length integer" );
+    }
+
+
+    /**
+     * @return The underlying buffer
+     */
+    ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+
+    @Override
+    public void readFully( byte[] b ) throws IOException
+    {
+        readFully( b, 0, b.length );
+    }
+
+
+    @Override
+    public void readFully( byte[] b, int off, int len ) throws IOException
+    {
+        ensure( len );
+        buffer.get( b, off, len );
+    }
+
+
+    @Override
+    public int skipBytes( int n )
+    {
+        int skipped = Math.max( 0, Math.min( n, buffer.remaining() ) );
+        buffer.position( buffer.position() + skipped );
+
+        return skipped;
+    }
+
+
+    @Override
+    public boolean readBoolean() throws IOException
+    {
+        return readByte() != 0;
+    }
+
+
+    @Override
+    public byte readByte() throws IOException
+    {
+        ensure( 1 );
+
+        return buffer.get();
+    }
+
+
+    @Override
+    public int readUnsignedByte() throws IOException
+    {
+        return readByte() & 0xFF;
+    }
+
+
+    @Override
+    public short readShort() throws IOException
+    {
+        ensure( 2 );
+
+        return buffer.getShort();
+    }
+
+
+    @Override
+    public int readUnsignedShort() throws IOException
+    {
+        return readShort() & 0xFFFF;
+    }
+
+
+    @Override
+    public char readChar() throws IOException
+    {
+        ensure( 2 );
+
+        return buffer.getChar();
+    }
+
+
+    @Override
+    public int readInt() throws IOException
+    {
+        ensure( 4 );
+
+        return buffer.getInt();
+    }
+
+
+    @Override
+    public long readLong() throws IOException
+    {
+        ensure( 8 );
+
+        return buffer.getLong();
+    }
+
+
+    @Override
+    public float readFloat() throws IOException
+    {
+        ensure( 4 );
+
+        return buffer.getFloat();
+    }
+
+
+    @Override
+    public double readDouble() throws IOException
+    {
+        ensure( 8 );
+
+        return buffer.getDouble();
+    }
+
+
+    /**
+     * Reads the bytes up to the next line terminator, each byte being a char, as
+     * {@link java.io.DataInputStream#readLine()} does. The line terminator is a line feed,
+     * a carriage return, or a carriage return followed by a line feed.
+     *
+     * @return The line, without its terminator, or null if there is nothing to read
+     */
+    @Override
+    public String readLine()
+    {
+        if ( !buffer.hasRemaining() )
+        {
+            return null;
+        }
+
+        StringBuilder line = new StringBuilder();
+
+        while ( buffer.hasRemaining() )
+        {
+            char c = ( char ) ( buffer.get() & 0xFF );
+
+            if ( c == '\n' )
+            {
+                break;
+            }
+
+            if ( c == '\r' )
+            {
+                if ( buffer.hasRemaining() && ( buffer.get( buffer.position() ) == '\n' ) )
+                {
+                    buffer.get();
+                }
+
+                break;
+            }
+
+            line.append( c );
+        }
+
+        return line.toString();
+    }
+
+
+    @Override
+    public String readUTF() throws IOException
+    {
+        return DataInputStream.readUTF( this );
+    }
+
+
+    /**
+     * The objects are not serialized in an entry
+     */
+    @Override
+    public Object readObject() throws InvalidClassException
+    {
+        throw new InvalidClassException( "No object is serialized in an entry" );
+    }
+
+
+    @Override
+    public int read()
+    {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+
+    @Override
+    public int read( byte[] b )
+    {
+        return read( b, 0, b.length );
+    }
+
+
+    @Override
+    public int read( byte[] b, int off, int len )
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        if ( !buffer.hasRemaining() )
+        {
+            return -1;
+        }
+
+        int length = Math.min( len, buffer.remaining() );
+        buffer.get( b, off, length );
+
+        return length;
+    }
+
+
+    @Override
+    public long skip( long n )
+    {
+        return skipBytes( ( int ) Math.min( n, Integer.MAX_VALUE ) );
+    }
+
+
+    @Override
+    public int available()
+    {
+        return buffer.remaining();
+    }
+
+
+    @Override
+    public void close()
+    {
+        // Nothing to do
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutput;
+
+
+/**
+ * An {@link ObjectOutput} writing the raw data in a growable array, without the header
+ * and the block framing of an ObjectOutputStream. The elements written with their
+ * <code>writeExternal</code> method don't need anything else.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class EntryDataOutput extends DataOutputStream implements ObjectOutput
+{
+    /**
+     * A ByteArrayOutputStream giving access to its array
+     */
+    private static class Buffer extends ByteArrayOutputStream
+    {
+        Buffer( int size )
+        {
+            super( size );
+        }
+
+
+        byte[] array()
+        {
+            return buf;
+        }
+    }
+
+
+    /**
+     * Creates a new EntryDataOutput instance
+     *
+     * @param size The initial size of the buffer
+     */
+    EntryDataOutput( int size )
+    {
+        super( new Buffer( size ) );
+    }
+
+
+    /**
+     * Writes an unsigned variable length integer, 7 bits per byte, the lowest bits first
+     *
+     * @param value The integer to write, positive
+     */
+    void writeVarInt( int value )
+    {
+        Buffer buffer = ( Buffer ) out;
+        int remaining = value;
+
+        while ( ( remaining & ~0x7F ) != 0 )
+        {
+            buffer.write( ( remaining & 0x7F ) | 0x80 );
+            remaining >>>= 7;
+        }
+
+        buffer.write( remaining );
+        written = buffer.size();
+    }
+
+
+    /**
+     * Appends the content of another output
+     *
+     * @param other The output to copy
+     */
+    void writeContent( EntryDataOutput other )
+    {
+        Buffer buffer = ( Buffer ) out;
+        buffer.write( ( ( Buffer ) other.out ).array(), 0, other.size() );
+        written = buffer.size();
+    }
+
+
+    /**
+     * Empties the buffer, to reuse it
+     */
+    void reset()
+    {
+        ( ( Buffer ) out ).reset();
+        written = 0;
+    }
+
+
+    /**
+     * @return A copy of the written bytes
+     */
+    byte[] toByteArray()
+    {
+        return ( ( Buffer ) out ).toByteArray();
+    }
+
+
+    /**
+     * The objects are not serialized in an entry
+     */
+    @Override
+    public void writeObject( Object obj ) throws NotSerializableException
+    {
+        throw new NotSerializableException( obj == null ? "null" : obj.getClass().getName() );
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * Assigns a dense number to each entry ID of a partition, so that sets of candidates
+ * can be stored as bitmaps. There is one map per partition, shared by the cursor builder
+ * and the trigram indices. Numbers are assigned the first time an ID is seen, and are
+ * only valid for the lifetime of the partition instance : they are not persisted.
+ * <br>
+ * The entry IDs are UUIDs, which are stored as two longs, indexed by an open addressing
+ * hash table. This costs around 25 bytes per entry. IDs which are not in the canonical
+ * UUID form are stored in a plain map.
+ * <br>
+ * The number of a deleted entry is released, and given to the next new ID. A candidate
+ * bitmap computed before the deletion may then return the new entry, which is checked
+ * against the filter like any other candidate. The lookups don't take any lock unless
+ * they race with an assignment or a release.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryNumberMap
+{
+    /** The initial number of assignable numbers */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** A hash table slot which has never been used */
+    private static final int EMPTY = 0;
+
+    /** A hash table slot whose number has been released */
+    private static final int TOMBSTONE = -1;
+
+    /** The UUID most significant bits, per number */
+    private long[] mostSigBits = new long[INITIAL_CAPACITY];
+
+    /** The UUID least significant bits, per number */
+    private long[] leastSigBits = new long[INITIAL_CAPACITY];
+
+    /** Tells if a number is assigned to an ID */
+    private boolean[] assigned = new boolean[INITIAL_CAPACITY];
+
+    /** The hash table : each slot contains a number + 1, EMPTY or TOMBSTONE */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    /** The number of non empty slots, tombstones included */
+    private int usedSlots;
+
+    /** The numbers assigned to IDs which aren't canonical UUIDs */
+    private final Map<String, Integer> otherNumbers = new ConcurrentHashMap<>();
+
+    /** The IDs which aren't canonical UUIDs, per number */
+    private final Map<Integer, String> otherIds = new ConcurrentHashMap<>();
+
+    /** The released numbers, to be reused */
+    private int[] freeNumbers = new int[16];
+
+    /** The number of released numbers */
+    private int freeCount;
+
+    /** The highest assigned number + 1 */
+    private int count;
+
+    /** Protects the map against concurrent updates */
+    private final StampedLock lock = new StampedLock();
+
+
+    /**
+     * Get the number associated with an entry ID, assigning a new one if needed.
+     *
+     * @param id The entry ID
+     * @return The entry number
+     */
+    public int getNumber( String id )
+    {
+        UUID uuid = toUuid( id );
+        int number = find( id, uuid );
+
+        if ( number >= 0 )
+        {
+            return number;
+        }
+
+        long stamp = lock.writeLock();
+
+        try
+        {
+            // Someone else may have added it in the meantime
+            number = ( uuid == null ) ? lookup( id ) : lookup( uuid, slots, mostSigBits, leastSigBits );
+
+            if ( number >= 0 )
+            {
+                return number;
+            }
+
+            return ( uuid == null ) ? assign( id ) : assign( uuid );
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * Releases the number of a deleted entry, so that it can be given to another ID.
+     *
+     * @param id The deleted entry ID
+     */
+    public void release( String id )
+    {
+        UUID uuid = toUuid( id );
+        long stamp = lock.writeLock();
+
+        try
+        {
+            int number;
+
+            if ( uuid == null )
+            {
+                Integer otherNumber = otherNumbers.remove( id );
+
+                if ( otherNumber == null )
+                {
+                    return;
+                }
+
+                number = otherNumber;
+                otherIds.remove( number );
+            }
+            else
+            {
+                int pos = position( uuid );
+
+                if ( pos < 0 )
+                {
+                    return;
+                }
+
+                number = slots[pos] - 1;
+                slots[pos] = TOMBSTONE;
+            }
+
+            assigned[number] = false;
+
+            if ( freeCount == freeNumbers.length )
+            {
+                freeNumbers = Arrays.copyOf( freeNumbers, freeCount * 2 );
+            }
+
+            freeNumbers[freeCount++] = number;
+        }
+        finally
+        {
+            lock.unlockWrite( stamp );
+        }
+    }
+
+
+    /**
+     * Get the entry ID associated with a number.
+     *
+     * @param number The entry number
+     * @return The entry ID, or null if the number is not assigned
+     */
+    public String getId( int number )
+    {
+        if ( number < 0 )
+        {
+            return null;
+        }
+
+        String id = otherIds.get( number );
+
+        if ( id != null )
+        {
+            return id;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        UUID uuid = ( stamp == 0L ) ? null : readUuid( number );
+
+        if ( ( stamp == 0L ) || !lock.validate( stamp ) )
+        {
+            stamp = lock.readLock();
+
+            try
+            {
+                uuid = readUuid( number );
+            }
+            finally
+            {
+                lock.unlockRead( stamp );
+            }
+        }
+
+        return ( uuid == null ) ? otherIds.get( number ) : uuid.toString();
+    }
+
+
+    /**
+     * @return The number of IDs having a number
+     */
+    public int size()
+    {
+        long stamp = lock.readLock();
+
+        try
+        {
+            return count - freeCount;
+        }
+        finally
+        {
+            lock.unlockRead( stamp );
+        }
+    }
+
+
+    /**
+     * Reads the UUID of a number, without locking : the result must be validated.
+     */
+    private UUID readUuid( int number )
+    {
+        boolean[] assignedNumbers = assigned;
+        long[] msbs = mostSigBits;
+        long[] lsbs = leastSigBits;
+
+        if ( ( number >= count ) || ( number >= assignedNumbers.length ) || ( number >= msbs.length )
+            || ( number >= lsbs.length ) || !assignedNumbers[number] || otherIds.containsKey( number ) )
+        {
+            return null;
+        }
+
+        return new UUID( msbs[number], lsbs[number] );
+    }
+
+
+    /**
+     * Finds the number of an ID, first without locking.
+     */
+    private int find( String id, UUID uuid )
+    {
+        if ( uuid == null )
+        {
+            return lookup( id );
+        }
+
+        long stamp = lock.tryOptimisticRead();
+
+        if ( stamp != 0L )
+        {
+            int number;
+
+            try
+            {
+                number = lookup( uuid, slots, mostSigBits, leastSigBits );
+            }
+            catch ( ArrayIndexOutOfBoundsException aioobe )
+            {
+                // The arrays have been resized while we were reading them
+                number = -1;
+            }
+
+            if ( lock.validate( stamp ) )
+            {
+                return number;
+            }
+        }
+
+        stamp = lock.readLock();
+
+        try
+        {
+            return lookup( uuid, slots, mostSigBits, leastSigBits );
+        }
+        finally
+        {
+            lock.unlockRead( stamp );
+        }
+    }
+
+
+    /**
+     * Parse an ID, returning null if it's not a UUID we can restore as is.
+     */
+    private static UUID toUuid( String id )
+    {
+        if ( ( id == null ) || ( id.length() != 36 ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            UUID uuid = UUID.fromString( id );
+
+            return uuid.toString().equals( id ) ? uuid : null;
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            return null;
+        }
+    }
+
+
+    private static int hash( long msb, long lsb )
+    {
+        long h = msb ^ lsb;
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+
+        return ( int ) ( h ^ ( h >>> 32 ) );
+    }
+
+
+    /**
+     * Looks up a UUID in a hash table. The table always has empty slots, so the
+     * probe ends even when it's read while being modified.
+     */
+    private static int lookup( UUID uuid, int[] table, long[] msbs, long[] lsbs )
+    {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = table.length - 1;
+
+        for ( int pos = hash( msb, lsb ) & mask;; pos = ( pos + 1 ) & mask )
+        {
+            int slot = table[pos];
+
+            if ( slot == EMPTY )
+            {
+                return -1;
+            }
+
+            if ( slot == TOMBSTONE )
+            {
+                continue;
+            }
+
+            int number = slot - 1;
+
+            if ( ( msbs[number] == msb ) && ( lsbs[number] == lsb ) )
+            {
+                return number;
+            }
+        }
+    }
+
+
+    private int lookup( String id )
+    {
+        Integer number = otherNumbers.get( id );
+
+        return ( number == null ) ? -1 : number;
+    }
+
+
+    /**
+     * Gets the position of a UUID in the hash table, or -1. The write lock must be held.
+     */
+    private int position( UUID uuid )
+    {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = slots.length - 1;
+
+        for ( int pos = hash( msb, lsb ) & mask;; pos = ( pos + 1 ) & mask )
+        {
+            int slot = slots[pos];
+
+            if ( slot == EMPTY )
+            {
+                return -1;
+            }
+
+            if ( ( slot != TOMBSTONE ) && ( mostSigBits[slot - 1] == msb ) && ( leastSigBits[slot - 1] == lsb ) )
+            {
+                return pos;
+            }
+        }
+    }
+
+
+    private int assign( UUID uuid )
+    {
+        int number = newNumber();
+        mostSigBits[number] = uuid.getMostSignificantBits();
+        leastSigBits[number] = uuid.getLeastSignificantBits();
+        assigned[number] = true;
+
+        // Keep the hash table half empty, tombstones included
+        if ( ( usedSlots + 1 ) * 2 > slots.length )
+        {
+            int capacity = slots.length;
+
+            while ( ( count - freeCount ) * 4 > capacity )
+            {
+                capacity *= 2;
+            }
+
+            rehash( capacity );
+        }
+
+        insert( slots, number );
+
+        return number;
+    }
+
+
+    private int assign( String id )
+    {
+        int number = newNumber();
+        assigned[number] = true;
+        otherNumbers.put( id, number );
+        otherIds.put( number, id );
+
+        return number;
+    }
+
+
+    private int newNumber()
+    {
+        if ( freeCount > 0 )
+        {
+            return freeNumbers[--freeCount];
+        }
+
+        if ( count == mostSigBits.length )
+        {
+            int capacity = count * 2;
+
+            // Fill the new arrays before publishing them : they are read without lock
+            long[] msbs = Arrays.copyOf( mostSigBits, capacity );
+            long[] lsbs = Arrays.copyOf( leastSigBits, capacity );
+            assigned = Arrays.copyOf( assigned, capacity );
+            mostSigBits = msbs;
+            leastSigBits = lsbs;
+        }
+
+        return count++;
+    }
+
+
+    /**
+     * Rebuilds the hash table, dropping the tombstones.
+     */
+    private void rehash( int capacity )
+    {
+        int[] table = new int[capacity];
+        usedSlots = 0;
+
+        for ( int slot : slots )
+        {
+            if ( ( slot != EMPTY ) && ( slot != TOMBSTONE ) )
+            {
+                insert( table, slot - 1 );
+            }
+        }
+
+        slots = table;
+    }
+
+
+    private void insert( int[] table, int number )
+    {
+        int mask = table.length - 1;
+        int pos = hash( mostSigBits[number], leastSigBits[number] ) & mask;
+
+        // Tombstones can't be reused : a lock free reader may be probing past them
+        while ( table[pos] != EMPTY )
+        {
+            pos = ( pos + 1 ) & mask;
+        }
+
+        table[pos] = number + 1;
+        usedSlots++;
+    }
+}
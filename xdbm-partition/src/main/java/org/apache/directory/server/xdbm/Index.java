@@ -345,4 +345,21 @@ public interface Index<K, E>
      * @return true if the index has a reverse table
      */
     boolean hasReverse();
+
+
+    /**
+     * Tells if a trigram index is maintained for the indexed attribute, to answer the
+     * substring filters without an initial component
+     * 
+     * @return true if the attribute has a trigram index
+     */
+    boolean isTrigram();
+
+
+    /**
+     * Sets the flag telling if a trigram index is maintained for the indexed attribute.
+     * 
+     * @param trigram <code>true</code> if the attribute needs a trigram index
+     */
+    void setTrigram( boolean trigram );
 }
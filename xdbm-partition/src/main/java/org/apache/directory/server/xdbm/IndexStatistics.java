@@ -0,0 +1,554 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Statistics about the values of a user index, used by the optimizer to estimate the
+ * number of candidates of a filter without reading the index. They are kept in memory :
+ * <ul>
+ *   <li>the number of values, and the number of entries having the attribute</li>
+ *   <li>a count-min sketch of the values, to estimate the number of entries having a given value</li>
+ *   <li>a HyperLogLog sketch, to estimate the number of distinct values</li>
+ *   <li>a random sample of the values, used as a histogram for range and prefix estimates</li>
+ * </ul>
+ * The statistics are computed from the index the first time they are used, and then updated
+ * when the entries are added, modified or deleted. The distinct values sketch can't forget
+ * the removed values, so it only grows until the statistics are computed again.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class IndexStatistics
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( IndexStatistics.class );
+
+    /** The number of rows and columns in the count-min sketch */
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+
+    /** The number of bits of the hash used to select a HyperLogLog register */
+    private static final int REGISTER_BITS = 10;
+    private static final int NB_REGISTERS = 1 << REGISTER_BITS;
+
+    /** The number of values kept in the sample */
+    private static final int SAMPLE_SIZE = 1024;
+
+    /** The user index */
+    private final Index<String, String> index;
+
+    /** The presence index, used to count the entries having the attribute */
+    private final Index<String, String> presenceIndex;
+
+    /** The comparator giving the order of the index keys */
+    private final Comparator<String> comparator;
+
+    /** The count-min sketch counters */
+    private final int[][] sketch = new int[SKETCH_DEPTH][SKETCH_WIDTH];
+
+    /** The HyperLogLog registers */
+    private final byte[] registers = new byte[NB_REGISTERS];
+
+    /** The sampled values */
+    private final String[] sample = new String[SAMPLE_SIZE];
+
+    /** The number of sampled values */
+    private int sampleSize;
+
+    /** The number of values the sample has been drawn from */
+    private long seen;
+
+    /** Used to select the sampled values */
+    private final Random random = new Random();
+
+    /** The number of values in the index */
+    private long count;
+
+    /** The number of entries having the attribute */
+    private long entryCount;
+
+    /** Tells if the statistics have been computed */
+    private boolean built;
+
+
+    /**
+     * Creates a new instance of IndexStatistics
+     *
+     * @param index The user index
+     * @param presenceIndex The presence index of the partition
+     */
+    @SuppressWarnings("unchecked")
+    public IndexStatistics( Index<String, String> index, Index<String, String> presenceIndex )
+    {
+        this.index = index;
+        this.presenceIndex = presenceIndex;
+
+        AttributeType attributeType = index.getAttribute();
+
+        if ( ( attributeType.getEquality() != null ) && ( attributeType.getEquality().getLdapComparator() != null ) )
+        {
+            Comparator<Object> ldapComparator = ( Comparator<Object> ) attributeType.getEquality().getLdapComparator();
+            comparator = ldapComparator::compare;
+        }
+        else
+        {
+            comparator = Comparator.naturalOrder();
+        }
+    }
+
+
+    /**
+     * @return The attribute type of the index
+     */
+    public AttributeType getAttributeType()
+    {
+        return index.getAttribute();
+    }
+
+
+    /**
+     * Computes the statistics from the index, if not already done.
+     *
+     * @param partitionTxn The transaction to use
+     * @throws LdapException If the index can't be read
+     */
+    public synchronized void build( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( built )
+        {
+            return;
+        }
+
+        LOG.debug( "Computing the statistics of the {} index", index.getAttributeId() );
+
+        try ( Cursor<IndexEntry<String, String>> cursor = index.forwardCursor( partitionTxn ) )
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                add( cursor.get().getKey() );
+            }
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+
+        entryCount = presenceIndex.count( partitionTxn, index.getAttribute().getOid() );
+        built = true;
+
+        LOG.debug( "Statistics of the {} index : {}", index.getAttributeId(), this );
+    }
+
+
+    /**
+     * Updates the statistics after an entry has been added, modified or deleted.
+     *
+     * @param oldValues The normalized values of the attribute before the change
+     * @param newValues The normalized values of the attribute after the change
+     */
+    public synchronized void update( Collection<String> oldValues, Collection<String> newValues )
+    {
+        if ( !built )
+        {
+            // The statistics will be computed from the index
+            return;
+        }
+
+        for ( String value : oldValues )
+        {
+            if ( !newValues.contains( value ) )
+            {
+                drop( value );
+            }
+        }
+
+        for ( String value : newValues )
+        {
+            if ( !oldValues.contains( value ) )
+            {
+                add( value );
+            }
+        }
+
+        if ( oldValues.isEmpty() && !newValues.isEmpty() )
+        {
+            entryCount++;
+        }
+        else if ( !oldValues.isEmpty() && newValues.isEmpty() )
+        {
+            entryCount = Math.max( 0L, entryCount - 1L );
+        }
+    }
+
+
+    /**
+     * Updates the statistics after a value has been added to an entry which already had
+     * the attribute, when its RDN is changed.
+     *
+     * @param key The normalized value
+     */
+    public synchronized void addValue( String key )
+    {
+        if ( built )
+        {
+            add( key );
+        }
+    }
+
+
+    /**
+     * Updates the statistics after a value has been removed from an entry which still has
+     * the attribute, when its RDN is changed.
+     *
+     * @param key The normalized value
+     */
+    public synchronized void dropValue( String key )
+    {
+        if ( built )
+        {
+            drop( key );
+        }
+    }
+
+
+    /**
+     * @return The number of values in the index
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return The number of entries having the attribute
+     */
+    public synchronized long getEntryCount()
+    {
+        return entryCount;
+    }
+
+
+    /**
+     * @return The estimated number of distinct values in the index
+     */
+    public synchronized long getDistinctCount()
+    {
+        double sum = 0d;
+        int zeros = 0;
+
+        for ( byte register : registers )
+        {
+            sum += 1d / ( 1L << register );
+
+            if ( register == 0 )
+            {
+                zeros++;
+            }
+        }
+
+        double alpha = 0.7213d / ( 1d + 1.079d / NB_REGISTERS );
+        double estimate = alpha * NB_REGISTERS * NB_REGISTERS / sum;
+
+        if ( ( estimate <= 2.5d * NB_REGISTERS ) && ( zeros != 0 ) )
+        {
+            // Small range correction : linear counting
+            estimate = NB_REGISTERS * Math.log( ( double ) NB_REGISTERS / zeros );
+        }
+
+        return Math.min( Math.round( estimate ), count );
+    }
+
+
+    /**
+     * Estimates the number of entries having a value. The estimate is only 0 when no entry
+     * has this value.
+     *
+     * @param key The normalized value
+     * @return The estimated number of entries
+     */
+    public synchronized long equalityCount( String key )
+    {
+        long hash = hash( key );
+        long minimum = Long.MAX_VALUE;
+        long[] corrected = new long[SKETCH_DEPTH];
+
+        for ( int row = 0; row < SKETCH_DEPTH; row++ )
+        {
+            long counter = sketch[row][column( hash, row )];
+            minimum = Math.min( minimum, counter );
+
+            // Remove the expected noise added by the other values (count-mean-min)
+            corrected[row] = counter - ( count - counter ) / ( SKETCH_WIDTH - 1 );
+        }
+
+        if ( minimum == 0L )
+        {
+            return 0L;
+        }
+
+        Arrays.sort( corrected );
+        long median = ( corrected[SKETCH_DEPTH / 2 - 1] + corrected[SKETCH_DEPTH / 2] ) / 2;
+
+        return Math.max( 1L, Math.min( minimum, median ) );
+    }
+
+
+    /**
+     * Estimates the number of values greater than or equal to a value.
+     *
+     * @param key The normalized value
+     * @return The estimated number of values
+     */
+    public synchronized long greaterThanCount( String key )
+    {
+        int matches = 0;
+
+        for ( int i = 0; i < sampleSize; i++ )
+        {
+            if ( comparator.compare( sample[i], key ) >= 0 )
+            {
+                matches++;
+            }
+        }
+
+        return estimate( matches );
+    }
+
+
+    /**
+     * Estimates the number of values lower than or equal to a value.
+     *
+     * @param key The normalized value
+     * @return The estimated number of values
+     */
+    public synchronized long lessThanCount( String key )
+    {
+        int matches = 0;
+
+        for ( int i = 0; i < sampleSize; i++ )
+        {
+            if ( comparator.compare( sample[i], key ) <= 0 )
+            {
+                matches++;
+            }
+        }
+
+        return estimate( matches );
+    }
+
+
+    /**
+     * Estimates the number of values starting with a prefix.
+     *
+     * @param prefix The normalized prefix
+     * @return The estimated number of values
+     */
+    public synchronized long prefixCount( String prefix )
+    {
+        int matches = 0;
+
+        for ( int i = 0; i < sampleSize; i++ )
+        {
+            if ( sample[i].startsWith( prefix ) )
+            {
+                matches++;
+            }
+        }
+
+        return estimate( matches );
+    }
+
+
+    /**
+     * Extrapolates the number of sampled values matching a condition to the whole index. As
+     * we can't tell that no value matches, the estimate is never 0 for a non empty index.
+     */
+    private long estimate( int matches )
+    {
+        if ( ( count == 0L ) || ( sampleSize == 0 ) )
+        {
+            return count;
+        }
+
+        return Math.max( 1L, Math.round( count * ( matches + 0.5d ) / ( sampleSize + 1 ) ) );
+    }
+
+
+    /**
+     * Adds a value
+     */
+    private void add( String key )
+    {
+        long hash = hash( key );
+        count++;
+
+        for ( int row = 0; row < SKETCH_DEPTH; row++ )
+        {
+            sketch[row][column( hash, row )]++;
+        }
+
+        // The first bits select the register, the others give the rank of the first 1 bit
+        int register = ( int ) ( hash >>> ( Long.SIZE - REGISTER_BITS ) );
+        byte rank = ( byte ) ( Long.numberOfLeadingZeros( ( hash << REGISTER_BITS ) | ( 1L << ( REGISTER_BITS - 1 ) ) )
+            + 1 );
+
+        if ( rank > registers[register] )
+        {
+            registers[register] = rank;
+        }
+
+        // Reservoir sampling
+        seen++;
+
+        if ( sampleSize < SAMPLE_SIZE )
+        {
+            sample[sampleSize++] = key;
+        }
+        else
+        {
+            long position = ( long ) ( random.nextDouble() * seen );
+
+            if ( position < SAMPLE_SIZE )
+            {
+                sample[( int ) position] = key;
+            }
+        }
+    }
+
+
+    /**
+     * Removes a value
+     */
+    private void drop( String key )
+    {
+        long hash = hash( key );
+        count = Math.max( 0L, count - 1L );
+
+        for ( int row = 0; row < SKETCH_DEPTH; row++ )
+        {
+            int column = column( hash, row );
+
+            if ( sketch[row][column] > 0 )
+            {
+                sketch[row][column]--;
+            }
+        }
+
+        for ( int i = 0; i < sampleSize; i++ )
+        {
+            if ( sample[i].equals( key ) )
+            {
+                sample[i] = sample[--sampleSize];
+                sample[sampleSize] = null;
+                break;
+            }
+        }
+
+        seen = Math.max( sampleSize, seen - 1L );
+    }
+
+
+    /**
+     * Computes the column of a value in a row of the count-min sketch
+     */
+    private static int column( long hash, int row )
+    {
+        long rowHash = mix( hash + row * 0x9E3779B97F4A7C15L );
+
+        return ( int ) ( ( rowHash >>> 1 ) % SKETCH_WIDTH );
+    }
+
+
+    /**
+     * A 64 bits FNV-1a hash of the value, mixed to spread the bits
+     */
+    private static long hash( String key )
+    {
+        long hash = 0xCBF29CE484222325L;
+
+        for ( int i = 0; i < key.length(); i++ )
+        {
+            hash ^= key.charAt( i );
+            hash *= 0x100000001B3L;
+        }
+
+        return mix( hash );
+    }
+
+
+    /**
+     * The MurmurHash3 finalizer
+     */
+    private static long mix( long value )
+    {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "IndexStatistics on " ).append( index.getAttributeId() );
+
+        if ( built )
+        {
+            sb.append( " : " ).append( count ).append( " values, " );
+            sb.append( entryCount ).append( " entries, " );
+            sb.append( getDistinctCount() ).append( " distinct values" );
+        }
+        else
+        {
+            sb.append( " (not computed)" );
+        }
+
+        return sb.toString();
+    }
+}
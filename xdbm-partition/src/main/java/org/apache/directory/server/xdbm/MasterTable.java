@@ -20,7 +20,12 @@
 package org.apache.directory.server.xdbm;
 
 
+import java.util.Set;
+
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 
 
 /**
@@ -45,4 +50,19 @@ public interface MasterTable extends Table<String, Entry>
      * @return the current value of this MasterTable's sequence incremented by one
      */
     String getNextId( Entry entry );
+
+
+    /**
+     * Gets an entry, decoding only some of its attributes. A table which can't decode a
+     * part of an entry returns the whole entry, as {@link #get(PartitionTxn, Object)} :
+     * only a {@link ProjectedEntry} is a partial entry. Only the LMDB master table decodes
+     * a part of the entries, the JDBM, Mavibot and in-memory tables return them whole.
+     *
+     * @param partitionTxn The transaction to use
+     * @param id The entry ID
+     * @param attributeTypes The attributes to decode
+     * @return The entry, or null if it does not exist
+     * @throws LdapException If the entry can't be read
+     */
+    Entry get( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes ) throws LdapException;
 }
\ No newline at end of file
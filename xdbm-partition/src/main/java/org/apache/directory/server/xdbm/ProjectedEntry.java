@@ -0,0 +1,860 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * An entry read with only some of its attributes, the projection, typically the attributes
+ * a search returns and the attributes its filter uses. The projected attributes are the
+ * entry's attributes : they are the ones returned when the entry is iterated, counted by
+ * {@link #size()} or compared by {@link #equals(Object)}.
+ * <br>
+ * The other attributes of the stored entry are still available when they are asked for by
+ * their type, for instance by the authorization or the collective attributes checks : they
+ * are then decoded on demand, but they don't become part of the entry's attributes, unless
+ * they are modified. This way, an entry with many values, like a group, is only decoded if
+ * the values are used.
+ * <br>
+ * The attributes are decoded either from the stored bytes, or copied from a complete entry,
+ * like the one held by the entry cache. A projected entry is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ProjectedEntry implements Entry
+{
+    /** The projected attributes, and the attributes which have been modified */
+    private final Entry entry;
+
+    /** The schema manager */
+    private final SchemaManager schemaManager;
+
+    /** The objectClass AttributeType */
+    private final AttributeType objectClassAT;
+
+    /** The projected attribute types, shared by the clones */
+    private final Set<AttributeType> projection;
+
+    /** The complete entry the other attributes are copied from, if any */
+    private final Entry source;
+
+    /** The codec decoding the other attributes from the stored bytes, if any */
+    private final EntryCodec codec;
+
+    /** The stored bytes, shared by the clones */
+    private final byte[] bytes;
+
+    /** The attribute types which are not read from the stored entry anymore */
+    private final Set<AttributeType> overridden;
+
+    /** The other attributes decoded on demand, null if the entry does not have them */
+    private final Map<AttributeType, Attribute> loaded = new HashMap<>();
+
+    /** Set when the entry has been cleared or read, nothing is read from the stored entry then */
+    private boolean detached;
+
+
+    /**
+     * Creates a new instance of ProjectedEntry, copying the attributes of a complete entry.
+     * The complete entry is kept, it must not be modified while the projected entry is used.
+     *
+     * @param schemaManager The schema manager
+     * @param source The complete entry
+     * @param projection The projected attribute types
+     * @throws LdapException If the projected attributes can't be copied
+     */
+    public ProjectedEntry( SchemaManager schemaManager, Entry source, Set<AttributeType> projection )
+        throws LdapException
+    {
+        this.schemaManager = schemaManager;
+        this.source = source;
+        this.projection = projection;
+        codec = null;
+        bytes = null;
+        objectClassAT = schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT );
+        overridden = new HashSet<>();
+        entry = new DefaultEntry( schemaManager, source.getDn() );
+
+        for ( Attribute attribute : source )
+        {
+            if ( projection.contains( attribute.getAttributeType() ) )
+            {
+                entry.add( attribute.clone() );
+            }
+        }
+    }
+
+
+    /**
+     * Creates a new instance of ProjectedEntry, the other attributes being decoded from the
+     * stored bytes
+     *
+     * @param schemaManager The schema manager
+     * @param entry The entry with the projected attributes
+     * @param projection The projected attribute types
+     * @param codec The codec used to decode the other attributes
+     * @param bytes The stored entry
+     */
+    ProjectedEntry( SchemaManager schemaManager, Entry entry, Set<AttributeType> projection, EntryCodec codec,
+        byte[] bytes )
+    {
+        this.schemaManager = schemaManager;
+        this.entry = entry;
+        this.projection = projection;
+        this.codec = codec;
+        this.bytes = bytes;
+        source = null;
+        objectClassAT = schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT );
+        overridden = new HashSet<>();
+    }
+
+
+    /**
+     * Creates a copy of a projected entry, sharing its stored entry
+     */
+    private ProjectedEntry( ProjectedEntry original, Entry entry )
+    {
+        this.entry = entry;
+        schemaManager = original.schemaManager;
+        objectClassAT = original.objectClassAT;
+        projection = original.projection;
+        source = original.source;
+        codec = original.codec;
+        bytes = original.bytes;
+        overridden = new HashSet<>( original.overridden );
+        detached = original.detached;
+    }
+
+
+    /**
+     * @return The projected attribute types
+     */
+    public Set<AttributeType> getProjection()
+    {
+        return projection;
+    }
+
+
+    /**
+     * Gets an attribute, decoding it if it's not projected
+     */
+    private Attribute lookup( AttributeType attributeType )
+    {
+        Attribute attribute = entry.get( attributeType );
+
+        if ( ( attribute != null ) || ( attributeType == null ) || detached || projection.contains( attributeType )
+            || overridden.contains( attributeType ) )
+        {
+            return attribute;
+        }
+
+        if ( loaded.containsKey( attributeType ) )
+        {
+            return loaded.get( attributeType );
+        }
+
+        if ( source != null )
+        {
+            attribute = source.get( attributeType );
+
+            if ( attribute != null )
+            {
+                attribute = attribute.clone();
+            }
+        }
+        else
+        {
+            try
+            {
+                attribute = codec.decodeAttribute( bytes, attributeType );
+            }
+            catch ( IOException ioe )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_134, ioe.getLocalizedMessage() ), ioe );
+            }
+        }
+
+        loaded.put( attributeType, attribute );
+
+        return attribute;
+    }
+
+
+    /**
+     * Makes an attribute part of the entry before it's modified
+     */
+    private void reveal( AttributeType attributeType ) throws LdapException
+    {
+        if ( ( attributeType == null ) || entry.containsAttribute( attributeType ) )
+        {
+            return;
+        }
+
+        Attribute attribute = lookup( attributeType );
+        override( attributeType );
+
+        if ( attribute != null )
+        {
+            entry.put( attribute );
+        }
+    }
+
+
+    /**
+     * Stops reading an attribute from the stored entry, as it's replaced or removed
+     */
+    private void override( AttributeType attributeType )
+    {
+        if ( attributeType != null )
+        {
+            overridden.add( attributeType );
+            loaded.remove( attributeType );
+        }
+    }
+
+
+    /**
+     * Gets the AttributeType of an attribute ID, or null if it's unknown
+     */
+    private AttributeType getAttributeType( String id )
+    {
+        return ( id == null ) ? null : schemaManager.getAttributeType( id );
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        reveal( attributeType );
+        entry.add( attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, String... values ) throws LdapException
+    {
+        reveal( attributeType );
+        entry.add( attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        reveal( attributeType );
+        entry.add( attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        reveal( attributeType );
+        entry.add( upId, attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        reveal( attributeType );
+        entry.add( upId, attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        reveal( attributeType );
+        entry.add( upId, attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            reveal( attribute.getAttributeType() );
+        }
+
+        entry.add( attributes );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( String upId, String... values ) throws LdapException
+    {
+        reveal( getAttributeType( upId ) );
+        entry.add( upId, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( String upId, byte[]... values ) throws LdapException
+    {
+        reveal( getAttributeType( upId ) );
+        entry.add( upId, values );
+
+        return this;
+    }
+
+
+    @Override
+    public Entry add( String upId, Value... values ) throws LdapException
+    {
+        reveal( getAttributeType( upId ) );
+        entry.add( upId, values );
+
+        return this;
+    }
+
+
+    @Override
+    public boolean contains( AttributeType attributeType, byte[]... values )
+    {
+        Attribute attribute = lookup( attributeType );
+
+        return ( attribute != null ) && attribute.contains( values );
+    }
+
+
+    @Override
+    public boolean contains( AttributeType attributeType, String... values )
+    {
+        Attribute attribute = lookup( attributeType );
+
+        return ( attribute != null ) && attribute.contains( values );
+    }
+
+
+    @Override
+    public boolean contains( AttributeType attributeType, Value... values )
+    {
+        Attribute attribute = lookup( attributeType );
+
+        return ( attribute != null ) && attribute.contains( values );
+    }
+
+
+    @Override
+    public boolean contains( Attribute... attributes )
+    {
+        for ( Attribute attribute : attributes )
+        {
+            Attribute found = ( attribute.getAttributeType() == null ) ? entry.get( attribute.getUpId() )
+                : lookup( attribute.getAttributeType() );
+
+            if ( found == null )
+            {
+                return false;
+            }
+
+            for ( Value value : attribute )
+            {
+                if ( !found.contains( value ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public boolean contains( String upId, byte[]... values )
+    {
+        AttributeType attributeType = getAttributeType( upId );
+
+        return ( attributeType == null ) ? entry.contains( upId, values ) : contains( attributeType, values );
+    }
+
+
+    @Override
+    public boolean contains( String upId, String... values )
+    {
+        AttributeType attributeType = getAttributeType( upId );
+
+        return ( attributeType == null ) ? entry.contains( upId, values ) : contains( attributeType, values );
+    }
+
+
+    @Override
+    public boolean contains( String upId, Value... values )
+    {
+        AttributeType attributeType = getAttributeType( upId );
+
+        return ( attributeType == null ) ? entry.contains( upId, values ) : contains( attributeType, values );
+    }
+
+
+    @Override
+    public boolean containsAttribute( AttributeType attributeType )
+    {
+        return lookup( attributeType ) != null;
+    }
+
+
+    @Override
+    public boolean containsAttribute( String... attributes )
+    {
+        for ( String attribute : attributes )
+        {
+            AttributeType attributeType = getAttributeType( attribute );
+
+            if ( ( attributeType == null ) ? !entry.containsAttribute( attribute ) : ( lookup( attributeType ) == null ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public Attribute get( AttributeType attributeType )
+    {
+        return lookup( attributeType );
+    }
+
+
+    @Override
+    public Attribute get( String alias )
+    {
+        AttributeType attributeType = getAttributeType( alias );
+
+        return ( attributeType == null ) ? entry.get( alias ) : lookup( attributeType );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the projected and the modified attributes are returned.
+     */
+    @Override
+    public Collection<Attribute> getAttributes()
+    {
+        return entry.getAttributes();
+    }
+
+
+    @Override
+    public boolean hasObjectClass( Attribute... objectClasses )
+    {
+        Attribute objectClass = lookup( objectClassAT );
+
+        if ( objectClass == null )
+        {
+            return false;
+        }
+
+        for ( Attribute attribute : objectClasses )
+        {
+            for ( Value value : attribute )
+            {
+                if ( !objectClass.contains( value ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public boolean hasObjectClass( String... objectClasses )
+    {
+        Attribute objectClass = lookup( objectClassAT );
+
+        return ( objectClass != null ) && objectClass.contains( objectClasses );
+    }
+
+
+    @Override
+    public Attribute put( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        override( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    @Override
+    public Attribute put( AttributeType attributeType, String... values ) throws LdapException
+    {
+        override( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    @Override
+    public Attribute put( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        override( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    @Override
+    public Attribute put( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        override( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    @Override
+    public Attribute put( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        override( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    @Override
+    public Attribute put( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        override( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    @Override
+    public List<Attribute> put( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            override( attribute.getAttributeType() );
+        }
+
+        return entry.put( attributes );
+    }
+
+
+    @Override
+    public Attribute put( String upId, byte[]... values )
+    {
+        override( getAttributeType( upId ) );
+
+        return entry.put( upId, values );
+    }
+
+
+    @Override
+    public Attribute put( String upId, String... values )
+    {
+        override( getAttributeType( upId ) );
+
+        return entry.put( upId, values );
+    }
+
+
+    @Override
+    public Attribute put( String upId, Value... values )
+    {
+        override( getAttributeType( upId ) );
+
+        return entry.put( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        reveal( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, String... values ) throws LdapException
+    {
+        reveal( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        reveal( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public List<Attribute> remove( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            reveal( attribute.getAttributeType() );
+        }
+
+        return entry.remove( attributes );
+    }
+
+
+    @Override
+    public boolean remove( String upId, byte[]... values ) throws LdapException
+    {
+        reveal( getAttributeType( upId ) );
+
+        return entry.remove( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, String... values ) throws LdapException
+    {
+        reveal( getAttributeType( upId ) );
+
+        return entry.remove( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, Value... values ) throws LdapException
+    {
+        reveal( getAttributeType( upId ) );
+
+        return entry.remove( upId, values );
+    }
+
+
+    @Override
+    public void removeAttributes( AttributeType... attributes )
+    {
+        for ( AttributeType attributeType : attributes )
+        {
+            override( attributeType );
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    @Override
+    public void removeAttributes( String... attributes )
+    {
+        for ( String attribute : attributes )
+        {
+            override( getAttributeType( attribute ) );
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    @Override
+    public void clear()
+    {
+        entry.clear();
+        loaded.clear();
+        detached = true;
+    }
+
+
+    @Override
+    public Dn getDn()
+    {
+        return entry.getDn();
+    }
+
+
+    @Override
+    public void setDn( Dn dn )
+    {
+        entry.setDn( dn );
+    }
+
+
+    @Override
+    public void setDn( String dn ) throws LdapInvalidDnException
+    {
+        entry.setDn( dn );
+    }
+
+
+    @Override
+    public boolean isSchemaAware()
+    {
+        return entry.isSchemaAware();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the projected and the modified attributes are iterated.
+     */
+    @Override
+    public Iterator<Attribute> iterator()
+    {
+        return entry.iterator();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the projected and the modified attributes are counted.
+     */
+    @Override
+    public int size()
+    {
+        return entry.size();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The entry is replaced by the read one, the stored entry is not used anymore.
+     */
+    @Override
+    public void readExternal( ObjectInput in ) throws IOException, ClassNotFoundException
+    {
+        entry.readExternal( in );
+        loaded.clear();
+        detached = true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the projected and the modified attributes are written.
+     */
+    @Override
+    public void writeExternal( ObjectOutput out ) throws IOException
+    {
+        entry.writeExternal( out );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The clone shares the stored entry, the attributes it has not decoded yet are not copied.
+     */
+    @Override
+    public Entry clone()
+    {
+        return new ProjectedEntry( this, entry.clone() );
+    }
+
+
+    @Override
+    public Entry shallowClone()
+    {
+        return new ProjectedEntry( this, entry.shallowClone() );
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return entry.hashCode();
+    }
+
+
+    @Override
+    public boolean equals( Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+
+        if ( obj instanceof ProjectedEntry )
+        {
+            return entry.equals( ( ( ProjectedEntry ) obj ).entry );
+        }
+
+        return entry.equals( obj );
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+
+
+    @Override
+    public String toString( String tabs )
+    {
+        return entry.toString( tabs );
+    }
+}
@@ -286,6 +286,36 @@ public interface Store
     Index<?, String> getUserIndex( AttributeType attributeType ) throws IndexNotFoundException;
 
 
+    /**
+     * Get the statistics of the user index associated with the given attributeType. They
+     * are computed the first time they are requested.
+     * 
+     * @param partitionTxn The transaction to use
+     * @param attributeType The index attributeType we are looking for
+     * @return The statistics of the user index, or null if the attribute has no user index
+     * @throws LdapException If the statistics can't be computed
+     */
+    IndexStatistics getIndexStatistics( PartitionTxn partitionTxn, AttributeType attributeType ) throws LdapException;
+
+
+    /**
+     * Get the trigram index associated with the given attributeType
+     * 
+     * @param attributeType The index attributeType we are looking for
+     * @return The associated trigram index, or null if the attribute has no trigram index
+     */
+    TrigramIndex getTrigramIndex( AttributeType attributeType );
+
+
+    /**
+     * Get the map numbering the entries of this store in the candidate bitmaps. It's
+     * shared by all the searches and trigram indices.
+     * 
+     * @return The entry number map
+     */
+    EntryNumberMap getEntryNumberMap();
+
+
     /**
      * Get the system index associated with the given name
      * @param attributeType The index name we are looking for
@@ -374,6 +404,36 @@ public interface Store
     Entry fetch( PartitionTxn partitionTxn, String id, Dn dn ) throws LdapException;
 
 
+    /**
+     * Get back an entry knowing its UUID, with only some of its attributes : the other
+     * attributes are only decoded if they are asked for by their type, and they are not
+     * part of the entry's attributes when it's iterated.
+     *
+     * @param partitionTxn The transaction to use
+     * @param id The Entry UUID we want to get back
+     * @param attributeTypes The attributes to decode, or null for the whole entry
+     * @return The found Entry, or null if not found
+     * @throws LdapException If the lookup failed for any reason (except a not found entry)
+     * @see ProjectedEntry
+     */
+    Entry fetch( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes ) throws LdapException;
+
+
+    /**
+     * Get back an entry knowing its UUID and its DN, with only some of its attributes.
+     *
+     * @param partitionTxn The transaction to use
+     * @param id The Entry UUID we want to get back
+     * @param dn The entry DN
+     * @param attributeTypes The attributes to decode, or null for the whole entry
+     * @return The found Entry, or null if not found
+     * @throws LdapException If the lookup failed for any reason (except a not found entry)
+     * @see #fetch(PartitionTxn, String, Set)
+     */
+    Entry fetch( PartitionTxn partitionTxn, String id, Dn dn, Set<AttributeType> attributeTypes )
+        throws LdapException;
+
+
     /**
      * Gets the count of immediate children of the given entry UUID.
      *
@@ -0,0 +1,424 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.PrepareString;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.search.impl.CandidateBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An index of the 3 characters sequences (trigrams) found in the normalized values of
+ * an attribute. It's used to find the candidates for substring filters which don't have
+ * an initial component, like (mail=*@example.com) or (cn=*ohn*) : an entry can only
+ * match if its values contain all the trigrams of the filter's components.
+ * <br>
+ * The trigrams are kept in memory, each one associated with the bitmap of the numbers of
+ * the entries containing it. They are not persisted : the index is built from the user
+ * index of the attribute the first time it's used, and then updated when the entries are
+ * modified.
+ * <br>
+ * The candidates are a superset of the matching entries, which still have to be checked
+ * against the filter. To keep it so, the trigrams of the added values are added as soon as
+ * the user index is updated, before the transaction is committed, and the trigrams of the
+ * removed values are only removed once it's committed. An aborted transaction, a build
+ * reading an older snapshot or a value removed by a rename only leave extra candidates.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TrigramIndex
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( TrigramIndex.class );
+
+    /** The length of an indexed sequence */
+    private static final int GRAM_LENGTH = 3;
+
+    /** The user index of the attribute, used to build the trigram index */
+    private final Index<String, String> index;
+
+    /** The numbers used in the bitmaps, shared with the partition */
+    private final EntryNumberMap entryNumberMap;
+
+    /** The entries containing each trigram */
+    private final Map<String, CandidateBitmap> postings = new HashMap<>();
+
+    /** Tells if the index has been built */
+    private volatile boolean built;
+
+    /** Only one thread builds the index */
+    private final Object buildLock = new Object();
+
+
+    /**
+     * Creates a new instance of TrigramIndex
+     *
+     * @param index The user index of the attribute
+     * @param entryNumberMap The map numbering the entries of the partition
+     */
+    public TrigramIndex( Index<String, String> index, EntryNumberMap entryNumberMap )
+    {
+        this.index = index;
+        this.entryNumberMap = entryNumberMap;
+    }
+
+
+    /**
+     * @return The indexed attribute type
+     */
+    public AttributeType getAttributeType()
+    {
+        return index.getAttribute();
+    }
+
+
+    /**
+     * @return The map used to convert the entry numbers of the returned bitmaps to IDs
+     */
+    public EntryNumberMap getEntryNumberMap()
+    {
+        return entryNumberMap;
+    }
+
+
+    /**
+     * Tells if this index should be used for a substring filter. A filter with only an
+     * initial component is better served by a range scan of the user index.
+     *
+     * @param node The substring filter
+     * @return <code>true</code> if the filter has an any or a final component
+     */
+    public static boolean accepts( SubstringNode node )
+    {
+        return ( node.getFinal() != null ) || ( ( node.getAny() != null ) && !node.getAny().isEmpty() );
+    }
+
+
+    /**
+     * Gets the normalized components of a substring filter, to be looked up in this index.
+     *
+     * @param node The substring filter
+     * @return The normalized components
+     * @throws LdapException If a component can't be normalized
+     */
+    public List<String> getComponents( SubstringNode node ) throws LdapException
+    {
+        Normalizer normalizer = index.getAttribute().getEquality().getNormalizer();
+        List<String> components = new ArrayList<>();
+
+        if ( node.getInitial() != null )
+        {
+            components.add( normalizer.normalize( node.getInitial(), PrepareString.AssertionType.SUBSTRING_INITIAL )
+                .trim() );
+        }
+
+        if ( node.getAny() != null )
+        {
+            for ( String any : node.getAny() )
+            {
+                components.add( normalizer.normalize( any, PrepareString.AssertionType.SUBSTRING_ANY ).trim() );
+            }
+        }
+
+        if ( node.getFinal() != null )
+        {
+            components.add( normalizer.normalize( node.getFinal(), PrepareString.AssertionType.SUBSTRING_FINAL )
+                .trim() );
+        }
+
+        return components;
+    }
+
+
+    /**
+     * Adds the trigrams of the values added to an entry. This is done when the user index
+     * is updated, even before the index has been built : the build may read a snapshot
+     * which doesn't contain the values.
+     *
+     * @param id The entry ID
+     * @param oldValues The normalized values of the attribute before the change
+     * @param newValues The normalized values of the attribute after the change
+     */
+    public synchronized void addTrigrams( String id, Collection<String> oldValues, Collection<String> newValues )
+    {
+        Set<String> addedTrigrams = getTrigrams( newValues );
+        addedTrigrams.removeAll( getTrigrams( oldValues ) );
+
+        if ( addedTrigrams.isEmpty() )
+        {
+            return;
+        }
+
+        int number = entryNumberMap.getNumber( id );
+
+        for ( String trigram : addedTrigrams )
+        {
+            postings.computeIfAbsent( trigram, t -> new CandidateBitmap() ).add( number );
+        }
+    }
+
+
+    /**
+     * Removes the trigrams of the values removed from an entry, once the modification has
+     * been committed.
+     *
+     * @param id The entry ID
+     * @param oldValues The normalized values of the attribute before the change
+     * @param newValues The normalized values of the attribute after the change
+     */
+    public synchronized void removeTrigrams( String id, Collection<String> oldValues, Collection<String> newValues )
+    {
+        Set<String> removedTrigrams = getTrigrams( oldValues );
+        removedTrigrams.removeAll( getTrigrams( newValues ) );
+
+        if ( removedTrigrams.isEmpty() )
+        {
+            return;
+        }
+
+        int number = entryNumberMap.getNumber( id );
+
+        for ( String trigram : removedTrigrams )
+        {
+            CandidateBitmap bitmap = postings.get( trigram );
+
+            if ( bitmap != null )
+            {
+                bitmap.remove( number );
+
+                if ( bitmap.isEmpty() )
+                {
+                    postings.remove( trigram );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Gets the candidates for a substring filter.
+     *
+     * @param partitionTxn The transaction to use
+     * @param components The normalized components of the filter
+     * @return The numbers of the entries containing all the trigrams of the components, or null
+     * if the components are too short to be searched in this index
+     * @throws LdapException If the index can't be built
+     */
+    public CandidateBitmap lookup( PartitionTxn partitionTxn, Collection<String> components )
+        throws LdapException
+    {
+        Set<String> trigrams = getTrigrams( components );
+
+        if ( trigrams.isEmpty() )
+        {
+            return null;
+        }
+
+        build( partitionTxn );
+
+        synchronized ( this )
+        {
+            List<CandidateBitmap> bitmaps = getPostings( trigrams );
+
+            if ( bitmaps.isEmpty() )
+            {
+                return new CandidateBitmap();
+            }
+
+            // Start with the rarest trigram
+            bitmaps.sort( ( bitmap1, bitmap2 ) -> Integer.compare( bitmap1.getCardinality(),
+                bitmap2.getCardinality() ) );
+
+            CandidateBitmap result = bitmaps.get( 0 ).copy();
+
+            for ( int i = 1; ( i < bitmaps.size() ) && !result.isEmpty(); i++ )
+            {
+                result = result.and( bitmaps.get( i ) );
+            }
+
+            return result;
+        }
+    }
+
+
+    /**
+     * Estimates the number of candidates for a substring filter : the number of entries
+     * containing the rarest trigram.
+     *
+     * @param partitionTxn The transaction to use
+     * @param components The normalized components of the filter
+     * @return The estimated number of candidates, or -1 if the components are too short to be
+     * searched in this index
+     * @throws LdapException If the index can't be built
+     */
+    public long count( PartitionTxn partitionTxn, Collection<String> components ) throws LdapException
+    {
+        Set<String> trigrams = getTrigrams( components );
+
+        if ( trigrams.isEmpty() )
+        {
+            return -1L;
+        }
+
+        build( partitionTxn );
+
+        synchronized ( this )
+        {
+            List<CandidateBitmap> bitmaps = getPostings( trigrams );
+            long count = bitmaps.isEmpty() ? 0L : Long.MAX_VALUE;
+
+            for ( CandidateBitmap bitmap : bitmaps )
+            {
+                count = Math.min( count, bitmap.getCardinality() );
+            }
+
+            return count;
+        }
+    }
+
+
+    /**
+     * Gets the bitmaps of some trigrams. Returns an empty list if one of the trigrams is
+     * not present in the index.
+     */
+    private List<CandidateBitmap> getPostings( Set<String> trigrams )
+    {
+        List<CandidateBitmap> bitmaps = new ArrayList<>( trigrams.size() );
+
+        for ( String trigram : trigrams )
+        {
+            CandidateBitmap bitmap = postings.get( trigram );
+
+            if ( bitmap == null )
+            {
+                return new ArrayList<>();
+            }
+
+            bitmaps.add( bitmap );
+        }
+
+        return bitmaps;
+    }
+
+
+    /**
+     * Builds the index from the user index of the attribute, if not already done. The user
+     * index is read without blocking the updates, which go on in the postings : the read
+     * trigrams are merged with them at the end.
+     */
+    private void build( PartitionTxn partitionTxn ) throws LdapException
+    {
+        if ( built )
+        {
+            return;
+        }
+
+        synchronized ( buildLock )
+        {
+            if ( built )
+            {
+                return;
+            }
+
+            LOG.debug( "Building the trigram index for {}", index.getAttributeId() );
+
+            Map<String, CandidateBitmap> readPostings = new HashMap<>();
+
+            try ( Cursor<IndexEntry<String, String>> cursor = index.forwardCursor( partitionTxn ) )
+            {
+                cursor.beforeFirst();
+
+                while ( cursor.next() )
+                {
+                    IndexEntry<String, String> indexEntry = cursor.get();
+                    int number = entryNumberMap.getNumber( indexEntry.getId() );
+
+                    for ( String trigram : getTrigrams( Collections.singleton( indexEntry.getKey() ) ) )
+                    {
+                        readPostings.computeIfAbsent( trigram, t -> new CandidateBitmap() ).add( number );
+                    }
+                }
+            }
+            catch ( CursorException | IOException e )
+            {
+                throw new LdapOtherException( e.getMessage(), e );
+            }
+
+            synchronized ( this )
+            {
+                for ( Map.Entry<String, CandidateBitmap> readPosting : readPostings.entrySet() )
+                {
+                    CandidateBitmap bitmap = postings.get( readPosting.getKey() );
+
+                    postings.put( readPosting.getKey(),
+                        ( bitmap == null ) ? readPosting.getValue() : bitmap.or( readPosting.getValue() ) );
+                }
+
+                built = true;
+
+                LOG.debug( "Built the trigram index for {} : {} trigrams", index.getAttributeId(), postings.size() );
+            }
+        }
+    }
+
+
+    /**
+     * Gets all the trigrams of some strings
+     */
+    private static Set<String> getTrigrams( Collection<String> values )
+    {
+        Set<String> trigrams = new HashSet<>();
+
+        for ( String value : values )
+        {
+            if ( value == null )
+            {
+                continue;
+            }
+
+            for ( int i = 0; i + GRAM_LENGTH <= value.length(); i++ )
+            {
+                trigrams.add( value.substring( i, i + GRAM_LENGTH ) );
+            }
+        }
+
+        return trigrams;
+    }
+}
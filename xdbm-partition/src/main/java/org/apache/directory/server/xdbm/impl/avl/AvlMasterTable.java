@@ -21,9 +21,13 @@ package org.apache.directory.server.xdbm.impl.avl;
 
 
 import java.util.Comparator;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.xdbm.MasterTable;
 
 
@@ -49,4 +53,16 @@ public class AvlMasterTable extends AvlTable<String, Entry> implements MasterTab
     {
         return UUID.randomUUID().toString();
     }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The AVL tree stores the entries as objects, they are returned whole.
+     */
+    @Override
+    public Entry get( PartitionTxn partitionTxn, String id, Set<AttributeType> attributeTypes ) throws LdapException
+    {
+        return get( partitionTxn, id );
+    }
 }
@@ -22,9 +22,11 @@ package org.apache.directory.server.xdbm.search;
 
 import java.util.Set;
 
+import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.SetCursor;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.xdbm.IndexEntry;
 
@@ -32,17 +34,19 @@ import org.apache.directory.server.xdbm.IndexEntry;
 /**
  * A class containing the result of a search :
  * <ul>
- * <li>A set of candidate UUIDs</li>
+ * <li>A cursor over the candidate UUIDs</li>
  * <li>A set of aliased entry if we have any</li>
  * <li>A flag telling if we are dereferencing aliases or not</li>
  * <li>A hierarchy of evaluators to use to validate the candidates</li>
+ * <li>The attributes to decode when the candidates are fetched</li>
+ * <li>The index walk the candidates come from, when a search can be resumed after one of them</li>
  * </ul>
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class PartitionSearchResult
 {
-    /** The set of candidate UUIDs selected by the search */
-    private SetCursor<IndexEntry<String, String>> resultSet;
+    /** The candidate UUIDs selected by the search, either materialized or streamed */
+    private Cursor<IndexEntry<String, String>> resultSet;
 
     /** The set of candidate UUIDs */
     private Set<String> candidateSet;
@@ -56,6 +60,12 @@ public class PartitionSearchResult
     /** The SchemaManager */
     private SchemaManager schemaManager;
 
+    /** The attributes to decode when fetching the candidates, null for all of them */
+    private Set<AttributeType> projection;
+
+    /** Describes the index walk returning the candidates in a stable order, null if there is none */
+    private String walk;
+
 
     /**
      * Create a PartitionSearchResult instance
@@ -71,7 +81,7 @@ public class PartitionSearchResult
     /**
      * @return the resultSet
      */
-    public SetCursor<IndexEntry<String, String>> getResultSet()
+    public Cursor<IndexEntry<String, String>> getResultSet()
     {
         return resultSet;
     }
@@ -86,6 +96,17 @@ public class PartitionSearchResult
     }
 
 
+    /**
+     * Set a cursor which will fetch the candidates lazily from the indexes.
+     *
+     * @param cursor the cursor over the candidates
+     */
+    public void setResultSet( Cursor<IndexEntry<String, String>> cursor )
+    {
+        resultSet = cursor;
+    }
+
+
     /**
      * @return the candidateSet
      */
@@ -104,6 +125,25 @@ public class PartitionSearchResult
     }
 
 
+    /**
+     * @return The description of the index walk the streamed candidates come from, or null if
+     * the search can't be resumed after one of them
+     */
+    public String getWalk()
+    {
+        return walk;
+    }
+
+
+    /**
+     * @param walk The description of the index walk the streamed candidates come from
+     */
+    public void setWalk( String walk )
+    {
+        this.walk = walk;
+    }
+
+
     /**
      * @return the evaluator
      */
@@ -122,6 +162,24 @@ public class PartitionSearchResult
     }
 
 
+    /**
+     * @return The attributes to decode when fetching the candidates, null for all of them
+     */
+    public Set<AttributeType> getProjection()
+    {
+        return projection;
+    }
+
+
+    /**
+     * @param projection The attributes to decode when fetching the candidates, null for all of them
+     */
+    public void setProjection( Set<AttributeType> projection )
+    {
+        this.projection = projection;
+    }
+
+
     /**
      * @param aliasDerefMode the aliasDerefMode to set
      */
@@ -200,6 +258,11 @@ public class PartitionSearchResult
         {
             sb.append( "No UUID found" );
         }
+        else if ( !( resultSet instanceof SetCursor ) )
+        {
+            // Don't consume a streamed result
+            sb.append( resultSet.toString( "" ) );
+        }
         else
         {
             sb.append( '{' );
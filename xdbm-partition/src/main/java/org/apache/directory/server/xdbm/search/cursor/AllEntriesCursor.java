@@ -92,6 +92,12 @@ public class AllEntriesCursor extends AbstractIndexCursor<String>
     public void after( IndexEntry<String, String> indexEntry ) throws LdapException, CursorException
     {
         checkNotClosed();
+
+        // The MasterTable is keyed by the entry IDs
+        IndexEntry<String, String> position = new IndexEntry<>();
+        position.setKey( indexEntry.getId() );
+
+        wrapped.after( position );
     }
 
 
@@ -142,7 +142,8 @@ public class AndCursor<V> extends AbstractIndexCursor<V>
     /**
      * {@inheritDoc}
      */
-    public boolean previous( PartitionTxn partitionTxn ) throws LdapException, CursorException
+    @Override
+    public boolean previous() throws LdapException, CursorException
     {
         while ( wrapped.previous() )
         {
@@ -163,7 +164,8 @@ public class AndCursor<V> extends AbstractIndexCursor<V>
     /**
      * {@inheritDoc}
      */
-    public boolean next( PartitionTxn partitionTxn ) throws LdapException, CursorException
+    @Override
+    public boolean next() throws LdapException, CursorException
     {
         while ( wrapped.next() )
         {
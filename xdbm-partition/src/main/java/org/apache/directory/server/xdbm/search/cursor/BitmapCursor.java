@@ -0,0 +1,302 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractIndexCursor;
+import org.apache.directory.server.xdbm.EntryNumberMap;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.search.impl.CandidateBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor over the candidates stored in a {@link CandidateBitmap}. The entry numbers
+ * are converted back to entry IDs as the cursor moves.
+ * <br>
+ * The key of a returned candidate is its entry number, so that the cursor can be moved
+ * after a candidate which has been deleted since.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BitmapCursor extends AbstractIndexCursor<String>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The position before the first candidate */
+    private static final int BEFORE_FIRST = -1;
+
+    /** The position after the last candidate */
+    private static final int AFTER_LAST = Integer.MAX_VALUE;
+
+    /** The candidates */
+    private final CandidateBitmap bitmap;
+
+    /** The map used to convert the entry numbers to IDs */
+    private final EntryNumberMap entryNumberMap;
+
+    /** The current entry number */
+    private int current = BEFORE_FIRST;
+
+    /** The current candidate */
+    private IndexEntry<String, String> indexEntry;
+
+
+    /**
+     * Creates a new instance of BitmapCursor
+     *
+     * @param partitionTxn The transaction to use
+     * @param bitmap The candidates
+     * @param entryNumberMap The map used to build the bitmap
+     */
+    public BitmapCursor( PartitionTxn partitionTxn, CandidateBitmap bitmap, EntryNumberMap entryNumberMap )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating BitmapCursor {}", this );
+        }
+
+        this.partitionTxn = partitionTxn;
+        this.bitmap = bitmap;
+        this.entryNumberMap = entryNumberMap;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getUnsupportedMessage()
+    {
+        return UNSUPPORTED_MSG;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        current = BEFORE_FIRST;
+        setAvailable( false );
+    }
+
+
+    /**
+     * Moves the cursor after a candidate it has returned, using its entry number.
+     *
+     * @param element The candidate
+     * @throws LdapException If the cursor can't be moved
+     * @throws CursorException If the cursor can't be moved
+     */
+    @Override
+    public void after( IndexEntry<String, String> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        moveOut( Integer.parseInt( element.getKey() ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        current = AFTER_LAST;
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( current == BEFORE_FIRST )
+        {
+            return setAvailable( false );
+        }
+
+        // Skip the numbers released since the bitmap has been computed
+        for ( int number = bitmap.previous( current - 1 ); number >= 0; number = bitmap.previous( number - 1 ) )
+        {
+            String id = entryNumberMap.getId( number );
+
+            if ( id != null )
+            {
+                return moveTo( number, id );
+            }
+        }
+
+        return moveOut( BEFORE_FIRST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( current == AFTER_LAST )
+        {
+            return setAvailable( false );
+        }
+
+        for ( int number = bitmap.next( current + 1 ); number >= 0; number = bitmap.next( number + 1 ) )
+        {
+            String id = entryNumberMap.getId( number );
+
+            if ( id != null )
+            {
+                return moveTo( number, id );
+            }
+        }
+
+        return moveOut( AFTER_LAST );
+    }
+
+
+    private boolean moveTo( int number, String id )
+    {
+        current = number;
+        indexEntry = new IndexEntry<>();
+        indexEntry.setKey( Integer.toString( number ) );
+        indexEntry.setId( id );
+
+        return setAvailable( true );
+    }
+
+
+    private boolean moveOut( int outOfBounds )
+    {
+        current = outOfBounds;
+        indexEntry = null;
+
+        return setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public IndexEntry<String, String> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( available() )
+        {
+            return indexEntry;
+        }
+
+        throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing BitmapCursor {}", this );
+        }
+
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing BitmapCursor {}", this );
+        }
+
+        super.close( cause );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        return tabs + "BitmapCursor (" + ( available() ? "available" : "absent" ) + ") : " + bitmap;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractIndexCursor;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor removing the duplicate IDs returned by a cursor walking a range of a
+ * user index. When an entry has more than one value in the range (a multi-valued
+ * attribute), the index contains one tuple per value, and the entry would be
+ * returned more than once.
+ * <br>
+ * When the index has a reverse table, we don't need to remember the IDs we have
+ * already returned : a tuple is returned only if its key is the first value of the
+ * entry (in the walk order) accepted by the given matcher. Otherwise, we keep a set
+ * of the returned IDs.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DistinctCursor<V> extends AbstractIndexCursor<V>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The message for unsupported operations */
+    private static final String UNSUPPORTED_MSG = I18n.err( I18n.ERR_752_DISTINCT_CURSOR_UNORDERED );
+
+    /** The wrapped cursor, walking the user index in its natural order */
+    private final Cursor<IndexEntry<V, String>> wrapped;
+
+    /** The index the wrapped cursor is walking */
+    private final Index<V, String> index;
+
+    /** Tells if a value of the index is in the walked range */
+    private final Predicate<V> matcher;
+
+    /** The IDs already returned, when the index has no reverse table */
+    private final Set<String> returned;
+
+
+    /**
+     * Creates a new instance of DistinctCursor
+     *
+     * @param partitionTxn The transaction to use
+     * @param wrapped The cursor walking the index
+     * @param index The walked index
+     * @param matcher The predicate accepting the index values returned by the wrapped cursor
+     */
+    public DistinctCursor( PartitionTxn partitionTxn, Cursor<IndexEntry<V, String>> wrapped, Index<V, String> index,
+        Predicate<V> matcher )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating DistinctCursor {}", this );
+        }
+
+        this.partitionTxn = partitionTxn;
+        this.wrapped = wrapped;
+        this.index = index;
+        this.matcher = matcher;
+
+        if ( index.hasReverse() )
+        {
+            returned = null;
+        }
+        else
+        {
+            returned = new HashSet<>();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getUnsupportedMessage()
+    {
+        return UNSUPPORTED_MSG;
+    }
+
+
+    /**
+     * Moves the cursor after an element it has returned, so that a search can be resumed
+     * there. Without a reverse table, the IDs returned before the element are forgotten :
+     * an entry having a value on both sides of the element may be returned again.
+     *
+     * @param element The element
+     * @throws LdapException If the cursor can't be moved
+     * @throws CursorException If the cursor can't be moved
+     */
+    @Override
+    public void after( IndexEntry<V, String> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        wrapped.after( element );
+
+        if ( returned != null )
+        {
+            returned.clear();
+        }
+
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        wrapped.beforeFirst();
+
+        if ( returned != null )
+        {
+            returned.clear();
+        }
+
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        wrapped.afterLast();
+
+        if ( returned != null )
+        {
+            returned.clear();
+        }
+
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        while ( wrapped.previous() )
+        {
+            checkNotClosed();
+
+            if ( isDistinct( wrapped.get(), false ) )
+            {
+                return setAvailable( true );
+            }
+        }
+
+        return setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        while ( wrapped.next() )
+        {
+            checkNotClosed();
+
+            if ( isDistinct( wrapped.get(), true ) )
+            {
+                return setAvailable( true );
+            }
+        }
+
+        return setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public IndexEntry<V, String> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( available() )
+        {
+            return wrapped.get();
+        }
+
+        throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+    }
+
+
+    /**
+     * Tells if the candidate is the first tuple of its entry we meet. The values of an
+     * entry are sorted in the reverse table the same way they are in the forward table,
+     * so the candidate is the first one if it's the first (or the last, when walking
+     * backward) matching value of the entry.
+     */
+    private boolean isDistinct( IndexEntry<V, String> candidate, boolean forward ) throws LdapException, CursorException
+    {
+        String id = candidate.getId();
+
+        if ( returned != null )
+        {
+            return returned.add( id );
+        }
+
+        V expected = null;
+
+        try ( Cursor<V> values = index.reverseValueCursor( partitionTxn, id ) )
+        {
+            if ( forward )
+            {
+                values.beforeFirst();
+
+                while ( values.next() )
+                {
+                    V value = values.get();
+
+                    if ( matcher.test( value ) )
+                    {
+                        expected = value;
+                        break;
+                    }
+                }
+            }
+            else
+            {
+                values.afterLast();
+
+                while ( values.previous() )
+                {
+                    V value = values.get();
+
+                    if ( matcher.test( value ) )
+                    {
+                        expected = value;
+                        break;
+                    }
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( ioe.getMessage(), ioe );
+        }
+
+        // Don't drop the candidate if we can't tell
+        return ( expected == null ) || expected.equals( candidate.getKey() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing DistinctCursor {}", this );
+        }
+
+        super.close();
+        wrapped.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing DistinctCursor {}", this );
+        }
+
+        super.close( cause );
+        wrapped.close( cause );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "DistinctCursor (" );
+
+        if ( available() )
+        {
+            sb.append( "available)" );
+        }
+        else
+        {
+            sb.append( "absent)" );
+        }
+
+        sb.append( " :\n" );
+        sb.append( wrapped.toString( tabs + "  " ) );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
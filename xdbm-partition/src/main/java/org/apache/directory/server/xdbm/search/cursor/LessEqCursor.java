@@ -188,13 +188,15 @@ public class LessEqCursor<V> extends AbstractIndexCursor<V>
              * bounds as mandated by the assertion node.  To do so we compare
              * it's value with the value of the expression node.
              *
-             * If the element's value is equal to or greater than this upper
-             * bound then we position the userIdxCursor after the last node.
+             * If the element's value is greater than this upper bound, or
+             * equal to it without an ID, then we position the userIdxCursor
+             * after the last node.
              *
-             * If the element's value is smaller, then we delegate to the
-             * after() method of the userIdxCursor.
+             * Otherwise we delegate to the after() method of the userIdxCursor :
+             * the element may be followed by other entries having the upper
+             * bound as a value.
              */
-            if ( comparedValue >= 0 )
+            if ( ( comparedValue > 0 ) || ( ( comparedValue == 0 ) && ( element.getId() == null ) ) )
             {
                 afterLast();
                 return;
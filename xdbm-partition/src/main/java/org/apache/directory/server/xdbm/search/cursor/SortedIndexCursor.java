@@ -0,0 +1,466 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import java.io.IOException;
+import java.util.Objects;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractIndexCursor;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor returning the entry IDs in the order of the values of a user index, as
+ * requested by a server side sort control with a single sort key (RFC 2891).
+ * <br>
+ * The index is walked forward, or backward for a reverse order. An entry with more
+ * than one value is returned once, at the position of its smallest value, as the
+ * in memory sort does. The entries which don't have the attribute come last (or first
+ * for a reverse order) : they are read from a cursor over the search candidates,
+ * keeping only the IDs which are absent from the index.
+ * <br>
+ * The returned IDs still have to be checked against the search filter.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SortedIndexCursor<V> extends AbstractIndexCursor<String>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The sorted index */
+    private final Index<V, String> index;
+
+    /** The cursor walking the index */
+    private final Cursor<IndexEntry<V, String>> indexCursor;
+
+    /** The cursor over the candidates which may not have the attribute, null if all of them have it */
+    private final Cursor<IndexEntry<String, String>> missingCursor;
+
+    /** Tells if the values are returned in reverse order */
+    private final boolean reverse;
+
+    /** Tells if we are walking the entries which don't have the attribute */
+    private boolean inMissing;
+
+    /** The current candidate */
+    private IndexEntry<String, String> indexEntry;
+
+
+    /**
+     * Creates a new instance of SortedIndexCursor
+     *
+     * @param partitionTxn The transaction to use
+     * @param index The index of the sort key. It must have a reverse table
+     * @param reverse <code>true</code> if the entries are sorted in reverse order
+     * @param missingCursor A cursor over the candidates, to get the entries without the
+     * attribute, or null if all the candidates have the attribute
+     * @throws LdapException If the index cursor can't be created
+     */
+    public SortedIndexCursor( PartitionTxn partitionTxn, Index<V, String> index, boolean reverse,
+        Cursor<IndexEntry<String, String>> missingCursor ) throws LdapException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating SortedIndexCursor {}", this );
+        }
+
+        this.partitionTxn = partitionTxn;
+        this.index = index;
+        this.reverse = reverse;
+        this.missingCursor = missingCursor;
+        indexCursor = index.forwardCursor( partitionTxn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getUnsupportedMessage()
+    {
+        return UNSUPPORTED_MSG;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        // The entries without the attribute come first in reverse order
+        inMissing = reverse && ( missingCursor != null );
+        startIndex();
+
+        if ( missingCursor != null )
+        {
+            missingCursor.beforeFirst();
+        }
+
+        indexEntry = null;
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        // The entries without the attribute come last in natural order
+        inMissing = !reverse && ( missingCursor != null );
+        endIndex();
+
+        if ( missingCursor != null )
+        {
+            missingCursor.afterLast();
+        }
+
+        indexEntry = null;
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        while ( true )
+        {
+            if ( inMissing )
+            {
+                if ( nextMissing( true ) )
+                {
+                    return setAvailable( true );
+                }
+
+                if ( !reverse )
+                {
+                    return setAvailable( false );
+                }
+
+                // Done with the entries without the attribute, now walk the index
+                inMissing = false;
+                startIndex();
+            }
+            else
+            {
+                if ( nextIndexed( !reverse ) )
+                {
+                    return setAvailable( true );
+                }
+
+                if ( reverse || ( missingCursor == null ) )
+                {
+                    return setAvailable( false );
+                }
+
+                // Done with the index, now get the entries without the attribute
+                inMissing = true;
+                missingCursor.beforeFirst();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        while ( true )
+        {
+            if ( inMissing )
+            {
+                if ( nextMissing( false ) )
+                {
+                    return setAvailable( true );
+                }
+
+                if ( reverse )
+                {
+                    return setAvailable( false );
+                }
+
+                inMissing = false;
+                endIndex();
+            }
+            else
+            {
+                if ( nextIndexed( reverse ) )
+                {
+                    return setAvailable( true );
+                }
+
+                if ( !reverse || ( missingCursor == null ) )
+                {
+                    return setAvailable( false );
+                }
+
+                inMissing = true;
+                missingCursor.afterLast();
+            }
+        }
+    }
+
+
+    /**
+     * Positions the index cursor before the first entry in the sort order
+     */
+    private void startIndex() throws LdapException, CursorException
+    {
+        if ( reverse )
+        {
+            indexCursor.afterLast();
+        }
+        else
+        {
+            indexCursor.beforeFirst();
+        }
+    }
+
+
+    /**
+     * Positions the index cursor after the last entry in the sort order
+     */
+    private void endIndex() throws LdapException, CursorException
+    {
+        if ( reverse )
+        {
+            indexCursor.beforeFirst();
+        }
+        else
+        {
+            indexCursor.afterLast();
+        }
+    }
+
+
+    /**
+     * Moves the index cursor to the next tuple which is the smallest value of its entry
+     */
+    private boolean nextIndexed( boolean forward ) throws LdapException, CursorException
+    {
+        while ( forward ? indexCursor.next() : indexCursor.previous() )
+        {
+            IndexEntry<V, String> candidate = indexCursor.get();
+
+            if ( isSmallestValue( candidate ) )
+            {
+                indexEntry = new IndexEntry<>();
+                indexEntry.setId( candidate.getId() );
+
+                return true;
+            }
+        }
+
+        indexEntry = null;
+
+        return false;
+    }
+
+
+    /**
+     * Moves the candidates cursor to the next entry which does not have the attribute
+     */
+    private boolean nextMissing( boolean forward ) throws LdapException, CursorException
+    {
+        while ( forward ? missingCursor.next() : missingCursor.previous() )
+        {
+            String id = missingCursor.get().getId();
+
+            if ( !index.reverse( partitionTxn, id ) )
+            {
+                indexEntry = new IndexEntry<>();
+                indexEntry.setId( id );
+
+                return true;
+            }
+        }
+
+        indexEntry = null;
+
+        return false;
+    }
+
+
+    /**
+     * Tells if the candidate holds the smallest value of its entry. The values of an
+     * entry are sorted in the reverse table the same way they are in the forward table.
+     */
+    private boolean isSmallestValue( IndexEntry<V, String> candidate ) throws LdapException, CursorException
+    {
+        try ( Cursor<V> values = index.reverseValueCursor( partitionTxn, candidate.getId() ) )
+        {
+            values.beforeFirst();
+
+            // Don't drop the candidate if we can't tell
+            return !values.next() || Objects.deepEquals( values.get(), candidate.getKey() );
+        }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public IndexEntry<String, String> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( available() )
+        {
+            return indexEntry;
+        }
+
+        throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing SortedIndexCursor {}", this );
+        }
+
+        super.close();
+        indexCursor.close();
+
+        if ( missingCursor != null )
+        {
+            missingCursor.close();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing SortedIndexCursor {}", this );
+        }
+
+        super.close( cause );
+        indexCursor.close( cause );
+
+        if ( missingCursor != null )
+        {
+            missingCursor.close( cause );
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "SortedIndexCursor (" );
+
+        if ( available() )
+        {
+            sb.append( "available)" );
+        }
+        else
+        {
+            sb.append( "absent)" );
+        }
+
+        sb.append( " on " ).append( index.getAttributeId() );
+
+        if ( reverse )
+        {
+            sb.append( ", reverse order" );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -59,6 +59,9 @@ public class SubstringCursor extends AbstractIndexCursor<String>
     private final SubstringEvaluator evaluator;
     private final IndexEntry<String, String> indexEntry = new IndexEntry<>();
 
+    /** The normalized initial component, when the index can be scanned as a range of keys */
+    private final String prefix;
+
 
     /**
      * Creates a new instance of an SubstringCursor
@@ -102,6 +105,17 @@ public class SubstringCursor extends AbstractIndexCursor<String>
              */
             wrapped = new AllEntriesCursor( partitionTxn, store );
         }
+
+        if ( hasIndex && ( evaluator.getExpression().getInitial() != null ) )
+        {
+            // All the matching keys start with the initial component : only this range is read
+            prefix = evaluator.getExpression().getAttributeType().getEquality().getNormalizer().normalize(
+                evaluator.getExpression().getInitial(), PrepareString.AssertionType.SUBSTRING_INITIAL );
+        }
+        else
+        {
+            prefix = null;
+        }
     }
 
 
@@ -121,12 +135,10 @@ public class SubstringCursor extends AbstractIndexCursor<String>
     {
         checkNotClosed();
         
-        if ( evaluator.getExpression().getInitial() != null && hasIndex )
+        if ( prefix != null )
         {
             IndexEntry<String, String> beforeFirstIndexEntry = new IndexEntry<>();
-            String normalizedKey = evaluator.getExpression().getAttributeType().getEquality().getNormalizer().normalize( 
-                evaluator.getExpression().getInitial(), PrepareString.AssertionType.SUBSTRING_INITIAL );
-            beforeFirstIndexEntry.setKey( normalizedKey );
+            beforeFirstIndexEntry.setKey( prefix );
             wrapped.before( beforeFirstIndexEntry );
         }
         else
@@ -138,6 +150,31 @@ public class SubstringCursor extends AbstractIndexCursor<String>
     }
 
 
+    /**
+     * Moves the cursor after an element it has returned. This is only possible when the
+     * attribute is indexed : the index keys are then walked in order.
+     *
+     * @param element The element
+     * @throws LdapException If the cursor can't be moved
+     * @throws CursorException If the cursor can't be moved
+     */
+    @Override
+    public void after( IndexEntry<String, String> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( hasIndex )
+        {
+            wrapped.after( element );
+            clear();
+        }
+        else
+        {
+            super.after( element );
+        }
+    }
+
+
     private void clear()
     {
         setAvailable( false );
@@ -154,10 +191,21 @@ public class SubstringCursor extends AbstractIndexCursor<String>
     {
         checkNotClosed();
 
-        // to keep the cursor always *after* the last matched tuple
-        // This fixes an issue if the last matched tuple is also the last record present in the
-        // index. In this case the wrapped cursor is positioning on the last tuple instead of positioning after that
-        wrapped.afterLast();
+        if ( prefix != null )
+        {
+            // Position the cursor after all the keys starting with the prefix
+            IndexEntry<String, String> afterLastIndexEntry = new IndexEntry<>();
+            afterLastIndexEntry.setKey( prefix + '\uffff' );
+            wrapped.before( afterLastIndexEntry );
+        }
+        else
+        {
+            // to keep the cursor always *after* the last matched tuple
+            // This fixes an issue if the last matched tuple is also the last record present in the
+            // index. In this case the wrapped cursor is positioning on the last tuple instead of positioning after that
+            wrapped.afterLast();
+        }
+
         clear();
     }
 
@@ -186,6 +234,15 @@ public class SubstringCursor extends AbstractIndexCursor<String>
     }
 
 
+    /**
+     * Tells if the index cursor has left the range of keys starting with the prefix
+     */
+    private boolean isOutOfRange( IndexEntry<String, String> indexEntry )
+    {
+        return ( prefix != null ) && !indexEntry.getKey().startsWith( prefix );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -208,6 +265,11 @@ public class SubstringCursor extends AbstractIndexCursor<String>
             checkNotClosed();
             IndexEntry<String, String> entry = wrapped.get();
 
+            if ( isOutOfRange( entry ) )
+            {
+                break;
+            }
+
             if ( evaluateCandidate( partitionTxn, entry ) )
             {
                 setAvailable( true );
@@ -234,6 +296,11 @@ public class SubstringCursor extends AbstractIndexCursor<String>
             checkNotClosed();
             IndexEntry<String, String> entry = wrapped.get();
 
+            if ( isOutOfRange( entry ) )
+            {
+                break;
+            }
+
             if ( evaluateCandidate( partitionTxn, entry ) )
             {
                 setAvailable( true );
@@ -0,0 +1,706 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A compressed set of candidate entry numbers, as assigned by an
+ * {@link org.apache.directory.server.xdbm.EntryNumberMap}. The numbers are split in
+ * chunks of 65536 values sharing the same 16 high bits, and each chunk is stored either
+ * as a sorted array of its 16 low bits (when it contains less than 4096 values), or as
+ * a 8 kB bitmap. Intersections and unions are computed chunk by chunk.
+ * <br>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CandidateBitmap
+{
+    /** The max number of values stored in an array chunk */
+    private static final int ARRAY_MAX_SIZE = 4096;
+
+    /** The number of longs in a bitmap chunk */
+    private static final int BITMAP_SIZE = 1024;
+
+    /** The chunks high bits, sorted */
+    private char[] keys;
+
+    /** The chunks. They are never empty */
+    private Chunk[] chunks;
+
+    /** The number of chunks */
+    private int size;
+
+
+    /**
+     * Creates an empty CandidateBitmap
+     */
+    public CandidateBitmap()
+    {
+        keys = new char[4];
+        chunks = new Chunk[4];
+    }
+
+
+    /**
+     * Adds a number to the set
+     *
+     * @param number The number to add. It must be positive.
+     */
+    public void add( int number )
+    {
+        char key = ( char ) ( number >>> 16 );
+        int pos = Arrays.binarySearch( keys, 0, size, key );
+
+        if ( pos >= 0 )
+        {
+            chunks[pos] = chunks[pos].add( ( char ) number );
+        }
+        else
+        {
+            pos = -pos - 1;
+            insert( pos, key, new ArrayChunk().add( ( char ) number ) );
+        }
+    }
+
+
+    /**
+     * Removes a number from the set
+     *
+     * @param number The number to remove
+     */
+    public void remove( int number )
+    {
+        int pos = Arrays.binarySearch( keys, 0, size, ( char ) ( number >>> 16 ) );
+
+        if ( pos < 0 )
+        {
+            return;
+        }
+
+        Chunk chunk = chunks[pos].remove( ( char ) number );
+
+        if ( chunk.cardinality > 0 )
+        {
+            chunks[pos] = chunk;
+        }
+        else
+        {
+            // Chunks are never empty
+            System.arraycopy( keys, pos + 1, keys, pos, size - pos - 1 );
+            System.arraycopy( chunks, pos + 1, chunks, pos, size - pos - 1 );
+            size--;
+            chunks[size] = null;
+        }
+    }
+
+
+    /**
+     * @return A copy of this set
+     */
+    public CandidateBitmap copy()
+    {
+        CandidateBitmap result = new CandidateBitmap();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            result.insert( i, keys[i], chunks[i].copy() );
+        }
+
+        return result;
+    }
+
+
+    /**
+     * @param number The number we are looking for
+     * @return <code>true</code> if the number is in the set
+     */
+    public boolean contains( int number )
+    {
+        int pos = Arrays.binarySearch( keys, 0, size, ( char ) ( number >>> 16 ) );
+
+        return ( pos >= 0 ) && chunks[pos].contains( ( char ) number );
+    }
+
+
+    /**
+     * @return The number of elements in the set
+     */
+    public int getCardinality()
+    {
+        int cardinality = 0;
+
+        for ( int i = 0; i < size; i++ )
+        {
+            cardinality += chunks[i].cardinality;
+        }
+
+        return cardinality;
+    }
+
+
+    /**
+     * @return <code>true</code> if the set is empty
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    /**
+     * Computes the intersection of this set with another set.
+     *
+     * @param other The other set
+     * @return A new set containing the numbers present in both sets
+     */
+    public CandidateBitmap and( CandidateBitmap other )
+    {
+        CandidateBitmap result = new CandidateBitmap();
+        int i = 0;
+        int j = 0;
+
+        while ( ( i < size ) && ( j < other.size ) )
+        {
+            if ( keys[i] < other.keys[j] )
+            {
+                i++;
+            }
+            else if ( keys[i] > other.keys[j] )
+            {
+                j++;
+            }
+            else
+            {
+                Chunk chunk = chunks[i].and( other.chunks[j] );
+
+                if ( chunk.cardinality > 0 )
+                {
+                    result.insert( result.size, keys[i], chunk );
+                }
+
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Computes the union of this set with another set.
+     *
+     * @param other The other set
+     * @return A new set containing the numbers present in one of the sets
+     */
+    public CandidateBitmap or( CandidateBitmap other )
+    {
+        CandidateBitmap result = new CandidateBitmap();
+        int i = 0;
+        int j = 0;
+
+        while ( ( i < size ) || ( j < other.size ) )
+        {
+            if ( ( j == other.size ) || ( ( i < size ) && ( keys[i] < other.keys[j] ) ) )
+            {
+                result.insert( result.size, keys[i], chunks[i].copy() );
+                i++;
+            }
+            else if ( ( i == size ) || ( keys[i] > other.keys[j] ) )
+            {
+                result.insert( result.size, other.keys[j], other.chunks[j].copy() );
+                j++;
+            }
+            else
+            {
+                result.insert( result.size, keys[i], chunks[i].or( other.chunks[j] ) );
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Finds the smallest number in the set which is greater than or equal to the given number.
+     *
+     * @param from The lower bound
+     * @return The found number, or -1 if there is none
+     */
+    public int next( int from )
+    {
+        if ( from < 0 )
+        {
+            from = 0;
+        }
+
+        int pos = Arrays.binarySearch( keys, 0, size, ( char ) ( from >>> 16 ) );
+
+        if ( pos >= 0 )
+        {
+            int low = chunks[pos].next( from & 0xFFFF );
+
+            if ( low >= 0 )
+            {
+                return ( keys[pos] << 16 ) | low;
+            }
+
+            pos++;
+        }
+        else
+        {
+            pos = -pos - 1;
+        }
+
+        if ( pos < size )
+        {
+            return ( keys[pos] << 16 ) | chunks[pos].next( 0 );
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Finds the greatest number in the set which is lower than or equal to the given number.
+     *
+     * @param from The upper bound
+     * @return The found number, or -1 if there is none
+     */
+    public int previous( int from )
+    {
+        if ( from < 0 )
+        {
+            return -1;
+        }
+
+        int pos = Arrays.binarySearch( keys, 0, size, ( char ) ( from >>> 16 ) );
+
+        if ( pos >= 0 )
+        {
+            int low = chunks[pos].previous( from & 0xFFFF );
+
+            if ( low >= 0 )
+            {
+                return ( keys[pos] << 16 ) | low;
+            }
+        }
+        else
+        {
+            pos = -pos - 1;
+        }
+
+        pos--;
+
+        if ( pos >= 0 )
+        {
+            return ( keys[pos] << 16 ) | chunks[pos].previous( 0xFFFF );
+        }
+
+        return -1;
+    }
+
+
+    private void insert( int pos, char key, Chunk chunk )
+    {
+        if ( size == keys.length )
+        {
+            keys = Arrays.copyOf( keys, size * 2 );
+            chunks = Arrays.copyOf( chunks, size * 2 );
+        }
+
+        System.arraycopy( keys, pos, keys, pos + 1, size - pos );
+        System.arraycopy( chunks, pos, chunks, pos + 1, size - pos );
+        keys[pos] = key;
+        chunks[pos] = chunk;
+        size++;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "CandidateBitmap[" + getCardinality() + " candidates in " + size + " chunks]";
+    }
+
+
+    /**
+     * The 16 low bits of the numbers sharing the same high bits
+     */
+    private abstract static class Chunk
+    {
+        /** The number of values in this chunk */
+        protected int cardinality;
+
+
+        abstract Chunk add( char value );
+
+
+        abstract Chunk remove( char value );
+
+
+        abstract boolean contains( char value );
+
+
+        abstract int next( int from );
+
+
+        abstract int previous( int from );
+
+
+        abstract Chunk copy();
+
+
+        Chunk and( Chunk other )
+        {
+            Chunk smallest = ( cardinality <= other.cardinality ) ? this : other;
+            Chunk largest = ( smallest == this ) ? other : this;
+            Chunk result = new ArrayChunk();
+
+            for ( int value = smallest.next( 0 ); value >= 0; value = smallest.next( value + 1 ) )
+            {
+                if ( largest.contains( ( char ) value ) )
+                {
+                    result = result.add( ( char ) value );
+                }
+            }
+
+            return result;
+        }
+
+
+        Chunk or( Chunk other )
+        {
+            Chunk smallest = ( cardinality <= other.cardinality ) ? this : other;
+            Chunk result = ( smallest == this ) ? other.copy() : copy();
+
+            for ( int value = smallest.next( 0 ); value >= 0; value = smallest.next( value + 1 ) )
+            {
+                result = result.add( ( char ) value );
+            }
+
+            return result;
+        }
+    }
+
+
+    /**
+     * A chunk storing its values in a sorted array
+     */
+    private static class ArrayChunk extends Chunk
+    {
+        private char[] values = new char[4];
+
+
+        @Override
+        Chunk add( char value )
+        {
+            int pos = Arrays.binarySearch( values, 0, cardinality, value );
+
+            if ( pos >= 0 )
+            {
+                return this;
+            }
+
+            if ( cardinality == ARRAY_MAX_SIZE )
+            {
+                BitmapChunk bitmap = new BitmapChunk();
+
+                for ( int i = 0; i < cardinality; i++ )
+                {
+                    bitmap.add( values[i] );
+                }
+
+                return bitmap.add( value );
+            }
+
+            pos = -pos - 1;
+
+            if ( cardinality == values.length )
+            {
+                values = Arrays.copyOf( values, Math.min( cardinality * 2, ARRAY_MAX_SIZE ) );
+            }
+
+            System.arraycopy( values, pos, values, pos + 1, cardinality - pos );
+            values[pos] = value;
+            cardinality++;
+
+            return this;
+        }
+
+
+        @Override
+        Chunk remove( char value )
+        {
+            int pos = Arrays.binarySearch( values, 0, cardinality, value );
+
+            if ( pos >= 0 )
+            {
+                System.arraycopy( values, pos + 1, values, pos, cardinality - pos - 1 );
+                cardinality--;
+            }
+
+            return this;
+        }
+
+
+        @Override
+        boolean contains( char value )
+        {
+            return Arrays.binarySearch( values, 0, cardinality, value ) >= 0;
+        }
+
+
+        @Override
+        int next( int from )
+        {
+            if ( from > 0xFFFF )
+            {
+                return -1;
+            }
+
+            int pos = Arrays.binarySearch( values, 0, cardinality, ( char ) from );
+
+            if ( pos >= 0 )
+            {
+                return from;
+            }
+
+            pos = -pos - 1;
+
+            return ( pos < cardinality ) ? values[pos] : -1;
+        }
+
+
+        @Override
+        int previous( int from )
+        {
+            if ( from < 0 )
+            {
+                return -1;
+            }
+
+            int pos = Arrays.binarySearch( values, 0, cardinality, ( char ) from );
+
+            if ( pos >= 0 )
+            {
+                return from;
+            }
+
+            pos = -pos - 1;
+
+            return ( pos > 0 ) ? values[pos - 1] : -1;
+        }
+
+
+        @Override
+        Chunk copy()
+        {
+            ArrayChunk copy = new ArrayChunk();
+            copy.values = Arrays.copyOf( values, Math.max( cardinality, 4 ) );
+            copy.cardinality = cardinality;
+
+            return copy;
+        }
+    }
+
+
+    /**
+     * A chunk storing its values in a 65536 bits bitmap
+     */
+    private static class BitmapChunk extends Chunk
+    {
+        private final long[] words = new long[BITMAP_SIZE];
+
+
+        @Override
+        Chunk add( char value )
+        {
+            long mask = 1L << value;
+            int pos = value >>> 6;
+
+            if ( ( words[pos] & mask ) == 0 )
+            {
+                words[pos] |= mask;
+                cardinality++;
+            }
+
+            return this;
+        }
+
+
+        @Override
+        Chunk remove( char value )
+        {
+            long mask = 1L << value;
+            int pos = value >>> 6;
+
+            if ( ( words[pos] & mask ) != 0 )
+            {
+                words[pos] &= ~mask;
+                cardinality--;
+            }
+
+            return this;
+        }
+
+
+        @Override
+        boolean contains( char value )
+        {
+            return ( words[value >>> 6] & ( 1L << value ) ) != 0;
+        }
+
+
+        @Override
+        int next( int from )
+        {
+            if ( from > 0xFFFF )
+            {
+                return -1;
+            }
+
+            int pos = from >>> 6;
+            long word = words[pos] & ( -1L << from );
+
+            while ( true )
+            {
+                if ( word != 0 )
+                {
+                    return ( pos << 6 ) + Long.numberOfTrailingZeros( word );
+                }
+
+                pos++;
+
+                if ( pos == BITMAP_SIZE )
+                {
+                    return -1;
+                }
+
+                word = words[pos];
+            }
+        }
+
+
+        @Override
+        int previous( int from )
+        {
+            if ( from < 0 )
+            {
+                return -1;
+            }
+
+            int pos = from >>> 6;
+            long word = words[pos] & ( -1L >>> ( 63 - ( from & 63 ) ) );
+
+            while ( true )
+            {
+                if ( word != 0 )
+                {
+                    return ( pos << 6 ) + 63 - Long.numberOfLeadingZeros( word );
+                }
+
+                pos--;
+
+                if ( pos < 0 )
+                {
+                    return -1;
+                }
+
+                word = words[pos];
+            }
+        }
+
+
+        @Override
+        Chunk copy()
+        {
+            BitmapChunk copy = new BitmapChunk();
+            System.arraycopy( words, 0, copy.words, 0, BITMAP_SIZE );
+            copy.cardinality = cardinality;
+
+            return copy;
+        }
+
+
+        @Override
+        Chunk and( Chunk other )
+        {
+            if ( !( other instanceof BitmapChunk ) )
+            {
+                return super.and( other );
+            }
+
+            BitmapChunk result = new BitmapChunk();
+            long[] otherWords = ( ( BitmapChunk ) other ).words;
+
+            for ( int i = 0; i < BITMAP_SIZE; i++ )
+            {
+                result.words[i] = words[i] & otherWords[i];
+                result.cardinality += Long.bitCount( result.words[i] );
+            }
+
+            if ( result.cardinality > ARRAY_MAX_SIZE )
+            {
+                return result;
+            }
+
+            // Not worth a bitmap
+            Chunk array = new ArrayChunk();
+
+            for ( int value = result.next( 0 ); value >= 0; value = result.next( value + 1 ) )
+            {
+                array = array.add( ( char ) value );
+            }
+
+            return array;
+        }
+
+
+        @Override
+        Chunk or( Chunk other )
+        {
+            if ( !( other instanceof BitmapChunk ) )
+            {
+                return super.or( other );
+            }
+
+            BitmapChunk result = new BitmapChunk();
+            long[] otherWords = ( ( BitmapChunk ) other ).words;
+
+            for ( int i = 0; i < BITMAP_SIZE; i++ )
+            {
+                result.words[i] = words[i] | otherWords[i];
+                result.cardinality += Long.bitCount( result.words[i] );
+            }
+
+            return result;
+        }
+    }
+}
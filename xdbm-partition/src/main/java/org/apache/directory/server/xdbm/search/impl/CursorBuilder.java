@@ -21,12 +21,15 @@ package org.apache.directory.server.xdbm.search.impl;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.SetCursor;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
@@ -40,11 +43,13 @@ import org.apache.directory.api.ldap.model.filter.NotNode;
 import org.apache.directory.api.ldap.model.filter.OrNode;
 import org.apache.directory.api.ldap.model.filter.PresenceNode;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
+import org.apache.directory.api.ldap.model.filter.SimpleNode;
 import org.apache.directory.api.ldap.model.filter.SubstringNode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
 import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.PrepareString;
@@ -53,17 +58,28 @@ import org.apache.directory.api.util.exception.NotImplementedException;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.EmptyIndexCursor;
+import org.apache.directory.server.xdbm.EntryNumberMap;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.SingletonIndexCursor;
 import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.TrigramIndex;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.cursor.ApproximateCursor;
+import org.apache.directory.server.xdbm.search.cursor.BitmapCursor;
 import org.apache.directory.server.xdbm.search.cursor.ChildrenCursor;
 import org.apache.directory.server.xdbm.search.cursor.DescendantCursor;
+import org.apache.directory.server.xdbm.search.cursor.DistinctCursor;
+import org.apache.directory.server.xdbm.search.cursor.GreaterEqCursor;
+import org.apache.directory.server.xdbm.search.cursor.LessEqCursor;
+import org.apache.directory.server.xdbm.search.cursor.SubstringCursor;
 import org.apache.directory.server.xdbm.search.evaluator.ApproximateEvaluator;
+import org.apache.directory.server.xdbm.search.evaluator.GreaterEqEvaluator;
+import org.apache.directory.server.xdbm.search.evaluator.LessEqEvaluator;
+import org.apache.directory.server.xdbm.search.evaluator.SubstringEvaluator;
 
 
 /**
@@ -73,6 +89,22 @@ import org.apache.directory.server.xdbm.search.evaluator.ApproximateEvaluator;
  */
 public class CursorBuilder
 {
+    /**
+     * When the second smallest child of an AND has a count lower than its smallest count
+     * multiplied by this ratio, we intersect their candidates : reading sequentially
+     * an index is much cheaper than fetching an entry to evaluate it.
+     */
+    private static final long INTERSECTION_RATIO = 32L;
+
+    /** The annotation describing the order the cursor built for a node returns its candidates in */
+    public static final String WALK_ANNOTATION = "walk";
+
+    /** The walk of the cursors over candidate bitmaps, returning the candidates in entry number order */
+    public static final String BITMAP_WALK = "bitmap";
+
+    /** The walk of a full scan, returning the entries in ID order */
+    public static final String SCAN_WALK = "scan";
+
     /** The database used by this builder */
     private Store db = null;
 
@@ -854,4 +886,593 @@ public class CursorBuilder
 
         return Long.MAX_VALUE;
     }
+
+
+    /**
+     * Creates a Cursor fetching lazily the candidates selected by an annotated filter,
+     * instead of gathering them in the search result candidate set. The same rules
+     * are used to select the indexes to walk than in {@link #build(PartitionTxn, ExprNode, PartitionSearchResult)}.
+     * <br>
+     * The returned candidates are a superset of the entries matching the filter, each one
+     * being returned only once : they still have to be checked using the filter's evaluator.
+     * Alias dereferencing while searching is not handled.
+     * <br>
+     * The node is annotated with the {@link #WALK_ANNOTATION} of the cursor.
+     *
+     * @param partitionTxn The transaction to use
+     * @param node The annotated filter
+     * @return A Cursor over the candidates, or <code>null</code> if we have to scan the
+     * whole partition
+     * @throws LdapException If the Cursor can't be created
+     */
+    public Cursor<IndexEntry<String, String>> buildCursor( PartitionTxn partitionTxn, ExprNode node )
+        throws LdapException
+    {
+        Cursor<IndexEntry<String, String>> cursor = newCursor( partitionTxn, node );
+        node.set( WALK_ANNOTATION, getWalk( node, cursor ) );
+
+        return cursor;
+    }
+
+
+    private Cursor<IndexEntry<String, String>> newCursor( PartitionTxn partitionTxn, ExprNode node )
+        throws LdapException
+    {
+        Object count = node.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+        if ( ( count != null ) && ( ( Long ) count ) == 0L )
+        {
+            return new EmptyIndexCursor<>( partitionTxn );
+        }
+
+        try
+        {
+            switch ( node.getAssertionType() )
+            {
+            /* ---------- LEAF NODE HANDLING ---------- */
+
+                case APPROXIMATE:
+                    return approximateCursor( partitionTxn, ( ApproximateNode<?> ) node );
+
+                case EQUALITY:
+                    return equalityCursor( partitionTxn, ( EqualityNode<?> ) node );
+
+                case GREATEREQ:
+                    return greaterEqCursor( partitionTxn, ( GreaterEqNode<?> ) node );
+
+                case LESSEQ:
+                    return lessEqCursor( partitionTxn, ( LessEqNode<?> ) node );
+
+                case PRESENCE:
+                    return presenceCursor( partitionTxn, ( PresenceNode ) node );
+
+                case SCOPE:
+                    if ( ( ( ScopeNode ) node ).getScope() == SearchScope.ONELEVEL )
+                    {
+                        return oneLevelScopeCursor( partitionTxn, ( ScopeNode ) node );
+                    }
+                    else
+                    {
+                        return subLevelScopeCursor( partitionTxn, ( ScopeNode ) node );
+                    }
+
+                case SUBSTRING:
+                    return substringCursor( partitionTxn, ( SubstringNode ) node );
+
+                    /* ---------- LOGICAL OPERATORS ---------- */
+
+                case AND:
+                    return andCursor( partitionTxn, ( AndNode ) node );
+
+                case NOT:
+                    // We can't walk the complement of an index
+                    return null;
+
+                case OR:
+                    return orCursor( partitionTxn, ( OrNode ) node );
+
+                    /* ----------  NOT IMPLEMENTED  ---------- */
+
+                case ASSERTION:
+                case EXTENSIBLE:
+                    throw new NotImplementedException();
+
+                default:
+                    throw new IllegalStateException( I18n.err( I18n.ERR_260, node.getAssertionType() ) );
+            }
+        }
+        catch ( IndexNotFoundException | CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T> Cursor<IndexEntry<String, String>> approximateCursor( PartitionTxn partitionTxn,
+        ApproximateNode<T> node ) throws LdapException, IndexNotFoundException
+    {
+        if ( !db.hasIndexOn( node.getAttributeType() ) )
+        {
+            return null;
+        }
+
+        ApproximateEvaluator<T> evaluator = ( ApproximateEvaluator<T> ) evaluatorBuilder.build( partitionTxn, node );
+
+        return ( Cursor ) new ApproximateCursor<>( partitionTxn, db, evaluator );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T> Cursor<IndexEntry<String, String>> equalityCursor( PartitionTxn partitionTxn, EqualityNode<T> node )
+        throws LdapException, IndexNotFoundException
+    {
+        Set<String> thisCandidates = ( Set<String> ) node.get( DefaultOptimizer.CANDIDATES_ANNOTATION_KEY );
+
+        if ( thisCandidates != null )
+        {
+            // The optimizer has already read the index
+            Set<IndexEntry<String, String>> candidates = new HashSet<>();
+
+            for ( String candidate : thisCandidates )
+            {
+                IndexEntry<String, String> indexEntry = new IndexEntry<>();
+                indexEntry.setId( candidate );
+                candidates.add( indexEntry );
+            }
+
+            return new SetCursor<>( candidates );
+        }
+
+        AttributeType attributeType = node.getAttributeType();
+
+        if ( !db.hasIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( attributeType );
+
+        return ( Cursor ) userIndex.forwardCursor( partitionTxn, ( T ) node.getValue().getNormalized() );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T> Cursor<IndexEntry<String, String>> greaterEqCursor( PartitionTxn partitionTxn, GreaterEqNode<T> node )
+        throws LdapException, IndexNotFoundException
+    {
+        AttributeType attributeType = node.getAttributeType();
+
+        if ( !db.hasIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        GreaterEqEvaluator<T> evaluator = ( GreaterEqEvaluator<T> ) evaluatorBuilder.build( partitionTxn, node );
+        Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( attributeType );
+        String lowerBound = evaluator.getNormalizer().normalize( node.getValue().getString() );
+        LdapComparator<? super Object> comparator = evaluator.getComparator();
+
+        // A multi-valued attribute may have more than one value in the range
+        return ( Cursor ) new DistinctCursor<>( partitionTxn, new GreaterEqCursor<>( partitionTxn, db, evaluator ),
+            userIndex, value -> comparator.compare( value, lowerBound ) >= 0 );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T> Cursor<IndexEntry<String, String>> lessEqCursor( PartitionTxn partitionTxn, LessEqNode<T> node )
+        throws LdapException, IndexNotFoundException
+    {
+        AttributeType attributeType = node.getAttributeType();
+
+        if ( !db.hasIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        LessEqEvaluator<T> evaluator = ( LessEqEvaluator<T> ) evaluatorBuilder.build( partitionTxn, node );
+        Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( attributeType );
+        String upperBound = evaluator.getNormalizer().normalize( node.getValue().getString() );
+        LdapComparator<? super Object> comparator = evaluator.getComparator();
+
+        // A multi-valued attribute may have more than one value in the range
+        return ( Cursor ) new DistinctCursor<>( partitionTxn, new LessEqCursor<>( partitionTxn, db, evaluator ),
+            userIndex, value -> comparator.compare( value, upperBound ) <= 0 );
+    }
+
+
+    private Cursor<IndexEntry<String, String>> presenceCursor( PartitionTxn partitionTxn, PresenceNode node )
+        throws LdapException
+    {
+        AttributeType attributeType = node.getAttributeType();
+
+        if ( !db.hasIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        return db.getPresenceIndex().forwardCursor( partitionTxn, attributeType.getOid() );
+    }
+
+
+    private Cursor<IndexEntry<String, String>> oneLevelScopeCursor( PartitionTxn partitionTxn, ScopeNode node )
+        throws LdapException, CursorException
+    {
+        Cursor<IndexEntry<ParentIdAndRdn, String>> rdnCursor = db.getRdnIndex().forwardCursor( partitionTxn );
+
+        IndexEntry<ParentIdAndRdn, String> startingPos = new IndexEntry<>();
+        startingPos.setKey( new ParentIdAndRdn( node.getBaseId(), ( Rdn[] ) null ) );
+        rdnCursor.before( startingPos );
+
+        return new ChildrenCursor( partitionTxn, db, node.getBaseId(), rdnCursor );
+    }
+
+
+    private Cursor<IndexEntry<String, String>> subLevelScopeCursor( PartitionTxn partitionTxn, ScopeNode node )
+        throws LdapException
+    {
+        // If we are searching from the partition DN, all the entries are candidates
+        String contextEntryId = db.getEntryId( partitionTxn, ( ( Partition ) db ).getSuffixDn() );
+        String baseId = node.getBaseId();
+
+        if ( baseId.equals( contextEntryId ) )
+        {
+            return null;
+        }
+
+        ParentIdAndRdn parentIdAndRdn = db.getRdnIndex().reverseLookup( partitionTxn, baseId );
+        IndexEntry<ParentIdAndRdn, String> startingPos = new IndexEntry<>();
+
+        startingPos.setKey( parentIdAndRdn );
+        startingPos.setId( baseId );
+
+        Cursor<IndexEntry<ParentIdAndRdn, String>> rdnCursor = new SingletonIndexCursor<>( partitionTxn,
+            startingPos );
+
+        return new DescendantCursor( partitionTxn, db, baseId, parentIdAndRdn.getParentId(), rdnCursor );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Cursor<IndexEntry<String, String>> substringCursor( PartitionTxn partitionTxn, SubstringNode node )
+        throws LdapException, IndexNotFoundException
+    {
+        AttributeType attributeType = node.getAttributeType();
+
+        if ( attributeType.getSubstring() == null )
+        {
+            // No SUBSTRING matching rule : no candidate
+            return new EmptyIndexCursor<>( partitionTxn );
+        }
+
+        if ( !db.hasIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        TrigramIndex trigramIndex = db.getTrigramIndex( attributeType );
+
+        if ( ( trigramIndex != null ) && TrigramIndex.accepts( node ) )
+        {
+            // Only the entries containing all the trigrams of the filter can match
+            CandidateBitmap candidates = trigramIndex.lookup( partitionTxn, trigramIndex.getComponents( node ) );
+
+            if ( candidates != null )
+            {
+                return new BitmapCursor( partitionTxn, candidates, db.getEntryNumberMap() );
+            }
+        }
+
+        SubstringEvaluator evaluator = ( SubstringEvaluator ) evaluatorBuilder.build( partitionTxn, node );
+        Index<String, String> userIndex = ( Index<String, String> ) db.getIndex( attributeType );
+        Pattern regexp = evaluator.getPattern();
+
+        if ( regexp == null )
+        {
+            return new EmptyIndexCursor<>( partitionTxn );
+        }
+
+        // A multi-valued attribute may have more than one value matching the pattern
+        return new DistinctCursor<>( partitionTxn, new SubstringCursor( partitionTxn, db, evaluator ),
+            userIndex, value -> regexp.matcher( value ).matches() );
+    }
+
+
+    /**
+     * When at least two children are selective enough, we intersect their candidates,
+     * otherwise we walk the child with the smallest count. The other children will be
+     * checked by the filter evaluator. If the optimizer has chosen the number of children
+     * to intersect, we follow its plan.
+     */
+    private Cursor<IndexEntry<String, String>> andCursor( PartitionTxn partitionTxn, AndNode node )
+        throws LdapException, CursorException, IOException
+    {
+        List<ExprNode> children = sortByCount( node.getChildren() );
+        long minValue = getCount( children.get( 0 ) );
+
+        if ( minValue == 0L )
+        {
+            // No need to go any further : we won't have matching candidates anyway
+            return new EmptyIndexCursor<>( partitionTxn );
+        }
+
+        int intersected = getIntersected( node );
+
+        if ( intersected > 1 )
+        {
+            CandidateBitmap candidates = intersect( partitionTxn, children.subList( 0, intersected ), true );
+
+            if ( candidates != null )
+            {
+                return new BitmapCursor( partitionTxn, candidates, db.getEntryNumberMap() );
+            }
+        }
+        else if ( ( intersected < 0 ) && ( children.size() > 1 ) && ( minValue != Long.MAX_VALUE ) )
+        {
+            long secondValue = getCount( children.get( 1 ) );
+
+            if ( ( secondValue != Long.MAX_VALUE ) && ( secondValue <= minValue * INTERSECTION_RATIO ) )
+            {
+                CandidateBitmap candidates = intersect( partitionTxn, children, false );
+
+                if ( candidates != null )
+                {
+                    return new BitmapCursor( partitionTxn, candidates, db.getEntryNumberMap() );
+                }
+            }
+        }
+
+        return buildCursor( partitionTxn, children.get( 0 ) );
+    }
+
+
+    /**
+     * The union of the children candidates is computed in a bitmap, which removes the
+     * duplicates, unless one of them requires a full scan.
+     */
+    private Cursor<IndexEntry<String, String>> orCursor( PartitionTxn partitionTxn, OrNode node )
+        throws LdapException, CursorException, IOException
+    {
+        CandidateBitmap candidates = union( partitionTxn, node.getChildren() );
+
+        if ( candidates == null )
+        {
+            // We will anyway do a full scan
+            return null;
+        }
+
+        return new BitmapCursor( partitionTxn, candidates, db.getEntryNumberMap() );
+    }
+
+
+    /**
+     * Computes the candidates of a filter in a bitmap. The bitmap may contain candidates
+     * not matching the filter.
+     *
+     * @return The candidates, or null if we have to scan the whole partition
+     */
+    private CandidateBitmap computeBitmap( PartitionTxn partitionTxn, ExprNode node )
+        throws LdapException, CursorException, IOException
+    {
+        if ( getCount( node ) == 0L )
+        {
+            return new CandidateBitmap();
+        }
+
+        switch ( node.getAssertionType() )
+        {
+            case AND:
+                List<ExprNode> children = sortByCount( ( ( AndNode ) node ).getChildren() );
+                int intersected = getIntersected( node );
+
+                if ( intersected > 0 )
+                {
+                    return intersect( partitionTxn, children.subList( 0, Math.min( intersected, children.size() ) ),
+                        true );
+                }
+
+                return intersect( partitionTxn, children, false );
+
+            case OR:
+                return union( partitionTxn, ( ( OrNode ) node ).getChildren() );
+
+            case NOT:
+                return null;
+
+            default:
+                Cursor<IndexEntry<String, String>> cursor = buildCursor( partitionTxn, node );
+
+                if ( cursor == null )
+                {
+                    return null;
+                }
+
+                CandidateBitmap candidates = new CandidateBitmap();
+                EntryNumberMap entryNumberMap = db.getEntryNumberMap();
+
+                try
+                {
+                    cursor.beforeFirst();
+
+                    while ( cursor.next() )
+                    {
+                        candidates.add( entryNumberMap.getNumber( cursor.get().getId() ) );
+                    }
+                }
+                finally
+                {
+                    cursor.close();
+                }
+
+                return candidates;
+        }
+    }
+
+
+    /**
+     * Intersects the candidates of the children, sorted by increasing count. Unless the
+     * children have been chosen by the optimizer, we stop as soon as the next child is not
+     * selective enough compared to what we already have.
+     */
+    private CandidateBitmap intersect( PartitionTxn partitionTxn, List<ExprNode> children, boolean planned )
+        throws LdapException, CursorException, IOException
+    {
+        CandidateBitmap result = null;
+
+        for ( ExprNode child : children )
+        {
+            long count = getCount( child );
+
+            if ( ( count == Long.MAX_VALUE )
+                || ( !planned && ( result != null ) && ( count > result.getCardinality() * INTERSECTION_RATIO ) ) )
+            {
+                // The remaining children will be checked by the evaluator
+                break;
+            }
+
+            CandidateBitmap candidates = computeBitmap( partitionTxn, child );
+
+            if ( candidates == null )
+            {
+                continue;
+            }
+
+            result = ( result == null ) ? candidates : result.and( candidates );
+
+            if ( result.isEmpty() )
+            {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+
+    private CandidateBitmap union( PartitionTxn partitionTxn, List<ExprNode> children )
+        throws LdapException, CursorException, IOException
+    {
+        CandidateBitmap result = new CandidateBitmap();
+
+        for ( ExprNode child : children )
+        {
+            long count = getCount( child );
+
+            if ( count == 0L )
+            {
+                // We can skip the child, it will not return any candidate
+                continue;
+            }
+
+            if ( count == Long.MAX_VALUE )
+            {
+                return null;
+            }
+
+            CandidateBitmap candidates = computeBitmap( partitionTxn, child );
+
+            if ( candidates == null )
+            {
+                return null;
+            }
+
+            result = result.or( candidates );
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Describes the order the cursor built for a node returns its candidates in, so that a
+     * search can be resumed after one of them by a cursor walking the same index the same
+     * way. A cursor walking an index is described by the node it has been built for, an AND
+     * cursor by the child it walks. The scope cursors and the candidates gathered by the
+     * optimizer have no stable order.
+     *
+     * @return The description of the walk, or null if the candidates have no stable order
+     */
+    private static String getWalk( ExprNode node, Cursor<IndexEntry<String, String>> cursor )
+    {
+        if ( cursor == null )
+        {
+            return SCAN_WALK;
+        }
+
+        if ( cursor instanceof BitmapCursor )
+        {
+            return BITMAP_WALK;
+        }
+
+        if ( ( cursor instanceof SetCursor ) || ( cursor instanceof ChildrenCursor )
+            || ( cursor instanceof DescendantCursor ) || ( cursor instanceof EmptyIndexCursor ) )
+        {
+            return null;
+        }
+
+        if ( node instanceof AndNode )
+        {
+            List<ExprNode> children = ( ( AndNode ) node ).getChildren();
+            ExprNode walked = sortByCount( children ).get( 0 );
+            Object walk = walked.get( WALK_ANNOTATION );
+
+            return ( walk == null ) ? null : children.indexOf( walked ) + " " + walk;
+        }
+
+        StringBuilder sb = new StringBuilder( SearchPlanCache.getShape( node ) );
+
+        if ( node instanceof SimpleNode )
+        {
+            sb.append( ' ' ).append( ( ( SimpleNode<?> ) node ).getValue().getNormalized() );
+        }
+        else if ( node instanceof SubstringNode )
+        {
+            SubstringNode substringNode = ( SubstringNode ) node;
+            sb.append( ' ' ).append( substringNode.getInitial() ).append( ' ' ).append( substringNode.getAny() )
+                .append( ' ' ).append( substringNode.getFinal() );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @return The count computed by the optimizer, or Long.MAX_VALUE if there is none
+     */
+    private static long getCount( ExprNode node )
+    {
+        Object count = node.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+        return ( count == null ) ? Long.MAX_VALUE : ( Long ) count;
+    }
+
+
+    /**
+     * @return The number of children of an AND node to intersect, as chosen by the optimizer,
+     * or -1 if it has not made a choice
+     */
+    private static int getIntersected( ExprNode node )
+    {
+        Object intersected = node.get( DefaultOptimizer.INTERSECT_ANNOTATION );
+
+        return ( intersected == null ) ? -1 : ( Integer ) intersected;
+    }
+
+
+    private static List<ExprNode> sortByCount( List<ExprNode> children )
+    {
+        List<ExprNode> sorted = new ArrayList<>( children );
+        sorted.sort( ( node1, node2 ) -> Long.compare( getCount( node1 ), getCount( node2 ) ) );
+
+        return sorted;
+    }
+
+
+    /**
+     * @return The map used to number the entries in the candidate bitmaps
+     */
+    public EntryNumberMap getEntryNumberMap()
+    {
+        return db.getEntryNumberMap();
+    }
 }
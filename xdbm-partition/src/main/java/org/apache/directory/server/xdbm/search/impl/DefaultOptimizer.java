@@ -52,6 +52,7 @@ import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.TrigramIndex;
 import org.apache.directory.server.xdbm.search.Optimizer;
 
 
@@ -66,8 +67,11 @@ public class DefaultOptimizer implements Optimizer
     
     /* Package protected*/ static final String COUNT_ANNOTATION = "count"; 
 
+    /** The number of children of an AND node whose candidates should be intersected, set by some optimizers */
+    /* Package protected*/ static final String INTERSECT_ANNOTATION = "intersect";
+
     /** the database this optimizer operates on */
-    private final Store db;
+    protected final Store db;
     private String contextEntryId;
 
 
@@ -248,7 +252,7 @@ public class DefaultOptimizer implements Optimizer
      * @return the calculated scan count
      * @throws Exception if there is an error
      */
-    private long getConjunctionScan( PartitionTxn partitionTxn, BranchNode node ) throws LdapException
+    protected long getConjunctionScan( PartitionTxn partitionTxn, BranchNode node ) throws LdapException
     {
         long count = Long.MAX_VALUE;
         List<ExprNode> children = node.getChildren();
@@ -284,7 +288,7 @@ public class DefaultOptimizer implements Optimizer
      * @return the scan count on the OR node
      * @throws Exception if there is an error
      */
-    private long getDisjunctionScan( PartitionTxn partitionTxn, BranchNode node ) throws LdapException
+    protected long getDisjunctionScan( PartitionTxn partitionTxn, BranchNode node ) throws LdapException
     {
         List<ExprNode> children = node.getChildren();
         long total = 0L;
@@ -314,7 +318,7 @@ public class DefaultOptimizer implements Optimizer
      * @throws Exception if there is an error accessing an index
      */
     @SuppressWarnings("unchecked")
-    private <V> long getEqualityScan( PartitionTxn partitionTxn, SimpleNode<V> node ) throws LdapException, IndexNotFoundException, IOException
+    protected <V> long getEqualityScan( PartitionTxn partitionTxn, SimpleNode<V> node ) throws LdapException, IndexNotFoundException, IOException
     {
         if ( db.hasIndexOn( node.getAttributeType() ) )
         {
@@ -380,7 +384,7 @@ public class DefaultOptimizer implements Optimizer
      * @throws Exception if there is an error accessing an index
      */
     @SuppressWarnings("unchecked")
-    private <V> long getGreaterLessScan( PartitionTxn partitionTxn, SimpleNode<V> node, boolean isGreaterThan ) throws LdapException, IndexNotFoundException
+    protected <V> long getGreaterLessScan( PartitionTxn partitionTxn, SimpleNode<V> node, boolean isGreaterThan ) throws LdapException, IndexNotFoundException
     {
         if ( db.hasIndexOn( node.getAttributeType() ) )
         {
@@ -403,19 +407,30 @@ public class DefaultOptimizer implements Optimizer
 
     /**
      * Get a scan count based on a Substring node : we will count the entries that are greater
-     * than ABC where the filter is (attr=ABC*). Any other filter won't be evaluated (for instance,
-     * a filter like (attr=*ABC) will resolve to a full scan atm - we could have created a reverted
-     * index for such a case -, and filters like (attr=*ABC*) also esolve to a full scan).
+     * than ABC where the filter is (attr=ABC*). Filters like (attr=*ABC) or (attr=*ABC*) are
+     * evaluated using the trigram index of the attribute if it has one : the count is the number
+     * of entries containing the rarest trigram. Otherwise they resolve to a full index scan.
      * 
      * @param node The substring node
      * @return The number of candidates
      * @throws Exception If there is an error accessing an index
      */
-    private long getSubstringScan( PartitionTxn partitionTxn, SubstringNode node ) throws LdapException, IndexNotFoundException
+    protected long getSubstringScan( PartitionTxn partitionTxn, SubstringNode node ) throws LdapException, IndexNotFoundException
     {
         if ( db.hasIndexOn( node.getAttributeType() ) )
         {
             Index<String, String> idx = ( Index<String, String> ) db.getIndex( node.getAttributeType() );
+            TrigramIndex trigramIndex = db.getTrigramIndex( node.getAttributeType() );
+
+            if ( ( trigramIndex != null ) && TrigramIndex.accepts( node ) )
+            {
+                long count = trigramIndex.count( partitionTxn, trigramIndex.getComponents( node ) );
+
+                if ( count >= 0L )
+                {
+                    return count;
+                }
+            }
 
             String initial = node.getInitial();
 
@@ -446,7 +461,7 @@ public class DefaultOptimizer implements Optimizer
      * @return the worst case full scan count
      * @throws Exception if there is an error access database indices
      */
-    private long getFullScan( PartitionTxn partitionTxn, LeafNode node ) throws LdapException, IndexNotFoundException
+    protected long getFullScan( PartitionTxn partitionTxn, LeafNode node ) throws LdapException, IndexNotFoundException
     {
         if ( db.hasIndexOn( node.getAttributeType() ) )
         {
@@ -466,7 +481,7 @@ public class DefaultOptimizer implements Optimizer
      * @return the number of entries matched for the presence of an attribute
      * @throws Exception if errors result
      */
-    private long getPresenceScan( PartitionTxn partitionTxn, PresenceNode node ) throws LdapException
+    protected long getPresenceScan( PartitionTxn partitionTxn, PresenceNode node ) throws LdapException
     {
         if ( db.hasUserIndexOn( node.getAttributeType() )
              || node.getAttributeType().getOid().equals( SchemaConstants.ADMINISTRATIVE_ROLE_AT_OID ) )
@@ -21,33 +21,54 @@ package org.apache.directory.server.xdbm.search.impl;
 
 
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoPermissionException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.ExtensibleNode;
+import org.apache.directory.api.ldap.model.filter.LeafNode;
 import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.OpaqueControl;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.AttributeTypeOptions;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.registries.AttributeTypeRegistry;
+import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.metrics.OperationProfile;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.SearchPosition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.core.partition.impl.btree.IndexCursorAdaptor;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Evaluator;
 import org.apache.directory.server.xdbm.search.Optimizer;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.SearchEngine;
+import org.apache.directory.server.xdbm.search.cursor.AllEntriesCursor;
+import org.apache.directory.server.xdbm.search.cursor.SortedIndexCursor;
 import org.apache.directory.server.xdbm.search.evaluator.BaseLevelScopeEvaluator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,6 +97,41 @@ public class DefaultSearchEngine implements SearchEngine
     /** creates evaluators which check to see if candidates satisfy a filter expression */
     private final EvaluatorBuilder evaluatorBuilder;
 
+    /**
+     * Tells if the candidates are fetched lazily from the indexes while the entries are
+     * returned, or gathered in a set before the first entry is returned.
+     */
+    private boolean streaming = true;
+
+    /**
+     * Tells if a search with a sort control can return the entries in the order of the
+     * index of the sort key, instead of having them sorted after the search.
+     */
+    private boolean sortedIndex = true;
+
+    /**
+     * Tells if only the attributes a search needs are decoded when the candidates are fetched,
+     * when it does not return all the user attributes.
+     */
+    private boolean projection = true;
+
+    /** The cached optimizer annotations, null if the plans are not cached */
+    private SearchPlanCache planCache;
+
+    /**
+     * The OID of a request control asking for the plan of a search. The plan is returned in a
+     * response control with the same OID, as an UTF-8 string containing the optimizer, the
+     * annotated filter and the cursors used to get the candidates. Only the administrators
+     * can use it, the other requesters get an insufficientAccessRights error.
+     */
+    public static final String PLAN_CONTROL_OID = "1.3.6.1.4.1.18060.0.0.8";
+
+    /**
+     * The index is not walked when the filter selects less than 1/SORTED_INDEX_RATIO of the
+     * indexed entries : it's then cheaper to sort the few candidates.
+     */
+    private static final long SORTED_INDEX_RATIO = 10L;
+
 
     // ------------------------------------------------------------------------
     // C O N S T R U C T O R S
@@ -96,6 +152,26 @@ public class DefaultSearchEngine implements SearchEngine
         this.optimizer = optimizer;
         this.cursorBuilder = cursorBuilder;
         this.evaluatorBuilder = evaluatorBuilder;
+
+        int planCacheSize = SearchPlanCache.DEFAULT_SIZE;
+
+        // The search settings come from the partition configuration
+        if ( db instanceof AbstractBTreePartition )
+        {
+            AbstractBTreePartition partition = ( AbstractBTreePartition ) db;
+            streaming = partition.isSearchStreaming();
+            sortedIndex = partition.isSearchSortedIndex();
+            projection = partition.isSearchProjection();
+            planCacheSize = partition.getSearchPlanCacheSize();
+        }
+
+        SchemaManager schemaManager = ( ( Partition ) db ).getSchemaManager();
+
+        // There is nothing to cache if the filters are not optimized
+        if ( ( planCacheSize > 0 ) && ( schemaManager != null ) && !( optimizer instanceof NoOpOptimizer ) )
+        {
+            planCache = new SearchPlanCache( db, schemaManager, planCacheSize );
+        }
     }
 
 
@@ -111,6 +187,188 @@ public class DefaultSearchEngine implements SearchEngine
     }
 
 
+    /**
+     * @return The cache of the search plans, or null if the plans are not cached
+     */
+    public SearchPlanCache getPlanCache()
+    {
+        return planCache;
+    }
+
+
+    /**
+     * Drops the cached search plans. This must be called when the indices or the schema change.
+     */
+    public void clearPlanCache()
+    {
+        if ( planCache != null )
+        {
+            planCache.clear();
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the candidates are streamed from the indexes
+     */
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+
+    /**
+     * Tells the engine to stream the candidates from the indexes, or to gather them in a set
+     * before returning the first entry (the pre 2.0.0-M26 behavior). Streaming is not used
+     * when aliases are dereferenced while searching, as we then need the whole candidate set.
+     *
+     * @param streaming <code>true</code> if the candidates should be streamed
+     */
+    public void setStreaming( boolean streaming )
+    {
+        this.streaming = streaming;
+    }
+
+
+    /**
+     * @return <code>true</code> if a sorted search can walk the index of its sort key
+     */
+    public boolean isSortedIndex()
+    {
+        return sortedIndex;
+    }
+
+
+    /**
+     * Tells the engine to return the entries in the order of the index of the sort key,
+     * when a search has a sort control with a single key. This is only done when the
+     * candidates are streamed.
+     *
+     * @param sortedIndex <code>true</code> if the sort key index can be used
+     */
+    public void setSortedIndex( boolean sortedIndex )
+    {
+        this.sortedIndex = sortedIndex;
+    }
+
+
+    /**
+     * @return <code>true</code> if only the attributes a search needs are decoded
+     */
+    public boolean isProjection()
+    {
+        return projection;
+    }
+
+
+    /**
+     * Tells the engine to decode only the attributes a search needs when the candidates are
+     * fetched, or the whole entries.
+     *
+     * @param projection <code>true</code> if only the needed attributes should be decoded
+     */
+    public void setProjection( boolean projection )
+    {
+        this.projection = projection;
+    }
+
+
+    /**
+     * Computes the attributes to decode when the candidates of a search are fetched : the
+     * returned attributes, the attributes used by the filter and the sort keys, with their
+     * subtypes, and the objectClass. The other attributes are decoded on demand.
+     *
+     * @return The attributes to decode, or null if the whole entries have to be decoded
+     */
+    private Set<AttributeType> getProjection( SchemaManager schemaManager, SearchOperationContext searchContext )
+        throws LdapException
+    {
+        // All the user attributes are returned : the whole entries are needed
+        if ( !projection || ( schemaManager == null ) || searchContext.isAllUserAttributes() )
+        {
+            return null;
+        }
+
+        AttributeTypeRegistry registry = schemaManager.getAttributeTypeRegistry();
+        Set<AttributeType> attributeTypes = new HashSet<>();
+        addProjected( registry, attributeTypes, schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT ) );
+
+        if ( searchContext.isAllOperationalAttributes() )
+        {
+            for ( AttributeType attributeType : registry )
+            {
+                if ( !attributeType.isUser() )
+                {
+                    attributeTypes.add( attributeType );
+                }
+            }
+        }
+
+        if ( searchContext.getReturningAttributes() != null )
+        {
+            for ( AttributeTypeOptions attributeTypeOptions : searchContext.getReturningAttributes() )
+            {
+                addProjected( registry, attributeTypes, attributeTypeOptions.getAttributeType() );
+            }
+        }
+
+        addProjected( registry, attributeTypes, searchContext.getFilter() );
+
+        SortRequest sortControl = ( SortRequest ) searchContext.getRequestControl( SortRequest.OID );
+
+        if ( ( sortControl != null ) && ( sortControl.getSortKeys() != null ) )
+        {
+            for ( SortKey sortKey : sortControl.getSortKeys() )
+            {
+                addProjected( registry, attributeTypes, schemaManager.getAttributeType( sortKey.getAttributeTypeDesc() ) );
+            }
+        }
+
+        return attributeTypes;
+    }
+
+
+    /**
+     * Adds the attributes used by a filter to the projection
+     */
+    private void addProjected( AttributeTypeRegistry registry, Set<AttributeType> attributeTypes, ExprNode node )
+        throws LdapException
+    {
+        if ( node instanceof BranchNode )
+        {
+            for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+            {
+                addProjected( registry, attributeTypes, child );
+            }
+        }
+        else if ( node instanceof LeafNode )
+        {
+            addProjected( registry, attributeTypes, ( ( LeafNode ) node ).getAttributeType() );
+        }
+    }
+
+
+    /**
+     * Adds an attribute and its subtypes to the projection
+     */
+    private void addProjected( AttributeTypeRegistry registry, Set<AttributeType> attributeTypes,
+        AttributeType attributeType ) throws LdapException
+    {
+        if ( ( attributeType == null ) || !attributeTypes.add( attributeType )
+            || !registry.hasDescendants( attributeType ) )
+        {
+            return;
+        }
+
+        Iterator<AttributeType> descendants = registry.descendants( attributeType );
+
+        while ( descendants.hasNext() )
+        {
+            attributeTypes.add( descendants.next() );
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -123,12 +381,22 @@ public class DefaultSearchEngine implements SearchEngine
         AliasDerefMode aliasDerefMode = searchContext.getAliasDerefMode();
         ExprNode filter = searchContext.getFilter();
 
+        // The plan tells how many entries have an indexed value, including the entries the
+        // ACIs hide from the requester
+        if ( searchContext.hasRequestControl( PLAN_CONTROL_OID )
+            && ( ( searchContext.getSession() == null ) || !searchContext.getSession().isAdministrator() ) )
+        {
+            throw new LdapNoPermissionException( I18n.err( I18n.ERR_757_PLAN_CONTROL_ADMIN_ONLY ) );
+        }
+
         // Compute the UUID of the baseDN entry
         String baseId = db.getEntryId( partitionTxn, baseDn );
 
         // Prepare the instance containing the search result
         PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
         Set<IndexEntry<String, String>> resultSet = new HashSet<>();
+        Set<AttributeType> attributeTypes = getProjection( schemaManager, searchContext );
+        searchResult.setProjection( attributeTypes );
 
         // Check that we have an entry, otherwise we can immediately get out
         if ( baseId == null )
@@ -193,7 +461,7 @@ public class DefaultSearchEngine implements SearchEngine
             indexEntry.setId( effectiveBaseId );
 
             // Fetch the entry, as we have only one
-            Entry entry = db.fetch( partitionTxn, indexEntry.getId(), effectiveBase );
+            Entry entry = db.fetch( partitionTxn, indexEntry.getId(), effectiveBase, attributeTypes );
 
             Evaluator<? extends ExprNode> evaluator;
 
@@ -242,17 +510,61 @@ public class DefaultSearchEngine implements SearchEngine
         }
 
         // Annotate the node with the optimizer and return search enumeration.
-        optimizer.annotate( partitionTxn, root );
+        OperationProfile profile = searchContext.getProfile();
+        long optimizerStart = System.nanoTime();
+        boolean cachedPlan = annotate( partitionTxn, root );
+
+        if ( profile != null )
+        {
+            profile.addTime( "optimizer", System.nanoTime() - optimizerStart );
+        }
+
         Evaluator<? extends ExprNode> evaluator = evaluatorBuilder.build( partitionTxn, root );
+        searchResult.setEvaluator( evaluator );
+
+        if ( streaming && !aliasDerefMode.isDerefInSearching() && !aliasDerefMode.isDerefAlways() )
+        {
+            searchResult.setAliasDerefMode( aliasDerefMode );
+
+            Cursor<IndexEntry<String, String>> sorted = sortedResult( partitionTxn, schemaManager, searchContext,
+                root );
+
+            if ( sorted == null )
+            {
+                sorted = streamResult( partitionTxn, root );
+                resume( searchContext, searchResult, root, sorted );
+            }
+            else
+            {
+                searchContext.setSorted( true );
+            }
+
+            profile( profile, root, cachedPlan, searchContext.isSorted() ? "sorted" : "streamed" );
+            searchResult.setResultSet( sorted );
+            explain( searchContext, root, cachedPlan, sorted.toString( "  " ) );
+
+            return searchResult;
+        }
 
         Set<String> uuidSet = new HashSet<>();
         searchResult.setAliasDerefMode( aliasDerefMode );
         searchResult.setCandidateSet( uuidSet );
 
+        long cursorBuilderStart = System.nanoTime();
         long nbResults = cursorBuilder.build( partitionTxn, root, searchResult );
 
         LOG.debug( "Nb results : {} for filter : {}", nbResults, root );
 
+        if ( profile != null )
+        {
+            profile.addTime( "cursorBuilder", System.nanoTime() - cursorBuilderStart );
+            profile( profile, root, cachedPlan, ( nbResults < Long.MAX_VALUE ) ? uuidSet.size() + " candidates"
+                : "full scan" );
+        }
+
+        explain( searchContext, root, cachedPlan, ( nbResults < Long.MAX_VALUE ) ? "  " + uuidSet.size() + " candidates"
+            : "  full scan" );
+
         if ( nbResults < Long.MAX_VALUE )
         {
             for ( String uuid : uuidSet )
@@ -288,13 +600,310 @@ public class DefaultSearchEngine implements SearchEngine
             }
         }
 
-        searchResult.setEvaluator( evaluator );
         searchResult.setResultSet( resultSet );
 
         return searchResult;
     }
 
 
+    /**
+     * Annotates the filter with the optimizer, or with the plan cached for its shape.
+     *
+     * @return <code>true</code> if a cached plan has been used
+     */
+    private boolean annotate( PartitionTxn partitionTxn, ExprNode root ) throws LdapException
+    {
+        if ( ( planCache != null ) && planCache.apply( root ) )
+        {
+            return true;
+        }
+
+        optimizer.annotate( partitionTxn, root );
+
+        if ( planCache != null )
+        {
+            planCache.put( root );
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Adds the plan of the search to its profile, if it's profiled
+     */
+    private void profile( OperationProfile profile, ExprNode root, boolean cachedPlan, String candidates )
+    {
+        if ( profile == null )
+        {
+            return;
+        }
+
+        profile.annotate( "optimizer", optimizer.getClass().getSimpleName() );
+        profile.annotate( "cachedPlan", cachedPlan );
+        profile.annotate( "plan", root );
+        profile.annotate( "candidates", candidates );
+    }
+
+
+    /**
+     * Returns the plan of the search in a response control, if it has been requested
+     */
+    private void explain( SearchOperationContext searchContext, ExprNode root, boolean cachedPlan,
+        String candidates )
+    {
+        if ( !searchContext.hasRequestControl( PLAN_CONTROL_OID ) )
+        {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "optimizer : " ).append( optimizer.getClass().getSimpleName() );
+
+        if ( cachedPlan )
+        {
+            sb.append( " (cached plan)" );
+        }
+
+        sb.append( '\n' );
+        if ( planCache != null )
+        {
+            sb.append( "plan cache : " ).append( planCache ).append( ", hit ratio " )
+                .append( planCache.getHitRatio() ).append( '\n' );
+        }
+
+        sb.append( "filter : " ).append( root ).append( '\n' );
+        sb.append( "candidates :\n" ).append( candidates );
+
+        String plan = sb.toString();
+        LOG.debug( "Search plan for {} :\n{}", searchContext.getDn(), plan );
+
+        OpaqueControl planControl = new OpaqueControl( PLAN_CONTROL_OID );
+        planControl.setEncodedValue( Strings.getBytesUtf8( plan ) );
+        searchContext.addResponseControl( planControl );
+    }
+
+
+    /**
+     * Creates a Cursor over the candidates for the given filter. They will be read from
+     * the indexes (or the MasterTable when no index can be used) while the entries are
+     * being returned, so that we don't have to hold the whole result in memory.
+     */
+    private Cursor<IndexEntry<String, String>> streamResult( PartitionTxn partitionTxn, ExprNode root )
+        throws LdapException
+    {
+        Cursor<IndexEntry<String, String>> cursor = cursorBuilder.buildCursor( partitionTxn, root );
+
+        if ( cursor == null )
+        {
+            // Full scan : use the MasterTable
+            LOG.debug( "Full scan for filter : {}", root );
+            cursor = new AllEntriesCursor( partitionTxn, db );
+        }
+
+        try
+        {
+            cursor.beforeFirst();
+        }
+        catch ( CursorException ce )
+        {
+            throw new LdapOtherException( ce.getMessage(), ce );
+        }
+
+        return cursor;
+    }
+
+
+    /**
+     * Moves the streamed candidates after the position a search has to be resumed after,
+     * when they are walked the same way as when this position has been recorded. If the
+     * candidate at this position has been removed since, the cursor goes on with the next
+     * key. The walk is given to the search result, so that the positions of the returned
+     * candidates can be tracked.
+     */
+    @SuppressWarnings("unchecked")
+    private void resume( SearchOperationContext searchContext, PartitionSearchResult searchResult, ExprNode root,
+        Cursor<IndexEntry<String, String>> cursor ) throws LdapException
+    {
+        // The entries will be sorted after the search, not returned in the walk order
+        if ( searchContext.hasRequestControl( SortRequest.OID ) )
+        {
+            return;
+        }
+
+        String walk = ( String ) root.get( CursorBuilder.WALK_ANNOTATION );
+        searchResult.setWalk( walk );
+
+        SearchPosition position = searchContext.getResumePosition();
+
+        if ( ( walk == null ) || ( position == null ) || !walk.equals( position.getWalk() ) )
+        {
+            return;
+        }
+
+        IndexEntry<Object, String> indexEntry = new IndexEntry<>();
+        indexEntry.setKey( position.getKey() );
+        indexEntry.setId( position.getId() );
+
+        try
+        {
+            try
+            {
+                ( ( Cursor ) cursor ).after( indexEntry );
+                searchContext.setResumed( true );
+            }
+            catch ( UnsupportedOperationException uoe )
+            {
+                // The cursor can't be moved, the caller will look for the last returned entry
+                LOG.debug( "Can't resume the search after {} : {}", position, uoe.getMessage() );
+                cursor.beforeFirst();
+            }
+        }
+        catch ( CursorException ce )
+        {
+            throw new LdapOtherException( ce.getMessage(), ce );
+        }
+    }
+
+
+    /**
+     * Creates a Cursor over the candidates in the order requested by the sort control,
+     * walking the index of the sort key. This is possible when there is a single sort key,
+     * indexed with a matching rule giving the same order as the sort matching rule.
+     *
+     * @return The sorted cursor, or null if the index can't be used
+     */
+    @SuppressWarnings("unchecked")
+    private Cursor<IndexEntry<String, String>> sortedResult( PartitionTxn partitionTxn, SchemaManager schemaManager,
+        SearchOperationContext searchContext, ExprNode root ) throws LdapException
+    {
+        if ( !sortedIndex )
+        {
+            return null;
+        }
+
+        SortRequest sortControl = ( SortRequest ) searchContext.getRequestControl( SortRequest.OID );
+
+        if ( ( sortControl == null ) || ( sortControl.getSortKeys() == null )
+            || ( sortControl.getSortKeys().size() != 1 ) )
+        {
+            return null;
+        }
+
+        SortKey sortKey = sortControl.getSortKeys().get( 0 );
+        AttributeType attributeType = schemaManager.getAttributeType( sortKey.getAttributeTypeDesc() );
+
+        if ( ( attributeType == null ) || SchemaConstants.ENTRY_DN_AT_OID.equals( attributeType.getOid() )
+            || !db.hasUserIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        Index<Object, String> index = ( Index<Object, String> ) db.getUserIndex( attributeType );
+
+        if ( !index.hasReverse() || !isIndexOrdered( schemaManager, attributeType, sortKey ) )
+        {
+            return null;
+        }
+
+        // Don't walk the whole index for a few candidates
+        Object count = root.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+        if ( ( count instanceof Long ) && ( ( Long ) count * SORTED_INDEX_RATIO < index.count( partitionTxn ) ) )
+        {
+            return null;
+        }
+
+        LOG.debug( "Using the {} index to sort the entries", attributeType.getName() );
+
+        // We need the candidates without the attribute, unless the filter requires it
+        Cursor<IndexEntry<String, String>> missingCursor = null;
+
+        if ( !requiresAttribute( searchContext.getFilter(), attributeType ) )
+        {
+            missingCursor = streamResult( partitionTxn, root );
+        }
+
+        return new SortedIndexCursor<>( partitionTxn, index, sortKey.isReverseOrder(), missingCursor );
+    }
+
+
+    /**
+     * Tells if the index values are sorted the way the sort key requires. The index uses the
+     * equality matching rule, so the sort matching rule must compare and normalize the values
+     * the same way.
+     */
+    private boolean isIndexOrdered( SchemaManager schemaManager, AttributeType attributeType, SortKey sortKey )
+    {
+        MatchingRule equality = attributeType.getEquality();
+        MatchingRule sortRule;
+
+        if ( sortKey.getMatchingRuleId() != null )
+        {
+            try
+            {
+                sortRule = schemaManager.lookupMatchingRuleRegistry( sortKey.getMatchingRuleId() );
+            }
+            catch ( LdapException le )
+            {
+                return false;
+            }
+        }
+        else
+        {
+            sortRule = attributeType.getOrdering();
+
+            if ( sortRule == null )
+            {
+                sortRule = equality;
+            }
+        }
+
+        if ( ( equality == null ) || ( sortRule == null ) )
+        {
+            return false;
+        }
+
+        if ( equality == sortRule )
+        {
+            return true;
+        }
+
+        return ( equality.getLdapComparator() != null ) && ( sortRule.getLdapComparator() != null )
+            && ( equality.getNormalizer() != null ) && ( sortRule.getNormalizer() != null )
+            && ( equality.getLdapComparator().getClass() == sortRule.getLdapComparator().getClass() )
+            && ( equality.getNormalizer().getClass() == sortRule.getNormalizer().getClass() );
+    }
+
+
+    /**
+     * Tells if an entry matching the filter necessarily has a value for the attribute
+     */
+    private boolean requiresAttribute( ExprNode filter, AttributeType attributeType )
+    {
+        if ( ( filter instanceof LeafNode ) && !( filter instanceof ExtensibleNode ) )
+        {
+            return attributeType.equals( ( ( LeafNode ) filter ).getAttributeType() );
+        }
+
+        if ( filter instanceof AndNode )
+        {
+            List<ExprNode> children = ( ( AndNode ) filter ).getChildren();
+
+            for ( ExprNode child : children )
+            {
+                if ( requiresAttribute( child, attributeType ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,338 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.LeafNode;
+import org.apache.directory.api.ldap.model.filter.ScopeNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.xdbm.Store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+
+/**
+ * A cache of the optimizer annotations, keyed by the shape of the filter : its structure,
+ * attributes and assertion types, but not its values, plus the scope of the search and
+ * the alias dereferencing mode. The count of a one level or subtree scope depends on the
+ * base of the search, so the base entry is part of the shape for these scopes.
+ * Applications usually send the same few filter templates with different values, like
+ * (&amp;(objectClass=inetOrgPerson)(uid=xxx)), so the annotations computed for the first
+ * search of a shape are reused by the next ones instead of running the optimizer again.
+ * <br>
+ * A cached plan is dropped if one of its attributes is no longer the one known by the
+ * schema manager, or if its index has been added or removed. The plans also expire after
+ * a while, so that they follow the changes of the data. A count of 0 is never cached : it
+ * only holds for the values it was computed for, and would make the search return nothing.
+ * <br>
+ * The evaluators are not cached, as they hold the values of the filter.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchPlanCache
+{
+    /** The default number of cached plans */
+    public static final int DEFAULT_SIZE = 512;
+
+    /** The time after which a plan is computed again */
+    private static final Duration EXPIRATION = Duration.ofMinutes( 1 );
+
+    /** The database the plans are computed for */
+    private final Store db;
+
+    /** The schema manager, used to check that the attributes are still valid */
+    private final SchemaManager schemaManager;
+
+    /** The plans, keyed by filter shape */
+    private final Cache<String, Plan> plans;
+
+    /**
+     * The annotations of a filter, in depth first order
+     */
+    private static final class Plan
+    {
+        private final long[] counts;
+        private final Integer[] intersected;
+        private final AttributeType[] attributeTypes;
+        private final boolean[] indexed;
+
+
+        private Plan( int size )
+        {
+            counts = new long[size];
+            intersected = new Integer[size];
+            attributeTypes = new AttributeType[size];
+            indexed = new boolean[size];
+        }
+    }
+
+
+    /**
+     * Creates a new instance of SearchPlanCache
+     *
+     * @param db The database the plans are computed for
+     * @param schemaManager The schema manager
+     * @param size The maximum number of cached plans
+     */
+    public SearchPlanCache( Store db, SchemaManager schemaManager, int size )
+    {
+        this.db = db;
+        this.schemaManager = schemaManager;
+        plans = Caffeine.newBuilder().maximumSize( size ).expireAfterWrite( EXPIRATION ).recordStats().build();
+    }
+
+
+    /**
+     * Annotates a filter with the plan cached for its shape.
+     *
+     * @param root The filter, including the scope node
+     * @return <code>true</code> if a valid plan has been found
+     * @throws LdapException If the indices can't be checked
+     */
+    public boolean apply( ExprNode root ) throws LdapException
+    {
+        List<ExprNode> nodes = flatten( root );
+        String shape = getShape( root );
+        Plan plan = plans.getIfPresent( shape );
+
+        if ( plan == null )
+        {
+            return false;
+        }
+
+        if ( ( plan.counts.length != nodes.size() ) || !isValid( plan ) )
+        {
+            plans.invalidate( shape );
+
+            return false;
+        }
+
+        for ( int i = 0; i < nodes.size(); i++ )
+        {
+            ExprNode node = nodes.get( i );
+            node.set( DefaultOptimizer.COUNT_ANNOTATION, plan.counts[i] );
+
+            if ( plan.intersected[i] != null )
+            {
+                node.set( DefaultOptimizer.INTERSECT_ANNOTATION, plan.intersected[i] );
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Caches the annotations of a filter.
+     *
+     * @param root The annotated filter, including the scope node
+     * @throws LdapException If the indices can't be checked
+     */
+    public void put( ExprNode root ) throws LdapException
+    {
+        List<ExprNode> nodes = flatten( root );
+        Plan plan = new Plan( nodes.size() );
+
+        for ( int i = 0; i < nodes.size(); i++ )
+        {
+            ExprNode node = nodes.get( i );
+            Object count = node.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+            if ( count == null )
+            {
+                // Not fully annotated, the optimizer stopped early
+                return;
+            }
+
+            plan.counts[i] = Math.max( 1L, ( Long ) count );
+            plan.intersected[i] = ( Integer ) node.get( DefaultOptimizer.INTERSECT_ANNOTATION );
+
+            if ( ( node instanceof LeafNode ) && !( node instanceof ScopeNode ) )
+            {
+                AttributeType attributeType = ( ( LeafNode ) node ).getAttributeType();
+
+                plan.attributeTypes[i] = attributeType;
+                plan.indexed[i] = ( attributeType != null ) && db.hasIndexOn( attributeType );
+            }
+        }
+
+        plans.put( getShape( root ), plan );
+    }
+
+
+    /**
+     * Drops all the cached plans
+     */
+    public void clear()
+    {
+        plans.invalidateAll();
+    }
+
+
+    /**
+     * @return The number of searches which found a plan, divided by the number of searches
+     */
+    public double getHitRatio()
+    {
+        return plans.stats().hitRate();
+    }
+
+
+    /**
+     * @return The statistics of the cache : hits, misses and evictions
+     */
+    public CacheStats getStats()
+    {
+        return plans.stats();
+    }
+
+
+    /**
+     * Checks that the attributes and the indices are still the same
+     */
+    private boolean isValid( Plan plan ) throws LdapException
+    {
+        for ( int i = 0; i < plan.attributeTypes.length; i++ )
+        {
+            AttributeType attributeType = plan.attributeTypes[i];
+
+            if ( attributeType == null )
+            {
+                continue;
+            }
+
+            if ( ( schemaManager.getAttributeType( attributeType.getOid() ) != attributeType )
+                || ( db.hasIndexOn( attributeType ) != plan.indexed[i] ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Gets the shape of a filter : the filter without its values
+     */
+    /* No qualifier */static String getShape( ExprNode root )
+    {
+        StringBuilder sb = new StringBuilder();
+        appendShape( sb, root );
+
+        return sb.toString();
+    }
+
+
+    private static void appendShape( StringBuilder sb, ExprNode node )
+    {
+        sb.append( '(' ).append( node.getAssertionType() );
+
+        if ( node instanceof ScopeNode )
+        {
+            ScopeNode scopeNode = ( ScopeNode ) node;
+            sb.append( ' ' ).append( scopeNode.getScope() ).append( ' ' ).append( scopeNode.getDerefAliases() );
+
+            if ( scopeNode.getScope() != SearchScope.OBJECT )
+            {
+                // The number of entries in the scope depends on the base
+                sb.append( ' ' ).append( scopeNode.getBaseId() );
+            }
+        }
+        else if ( node instanceof LeafNode )
+        {
+            LeafNode leaf = ( LeafNode ) node;
+            sb.append( ' ' ).append( ( leaf.getAttributeType() != null ) ? leaf.getAttributeType().getOid()
+                : leaf.getAttribute() );
+
+            if ( node instanceof SubstringNode )
+            {
+                // The estimates depend on the components of the substring
+                SubstringNode substringNode = ( SubstringNode ) node;
+                sb.append( ( substringNode.getInitial() != null ) ? " i" : " -" );
+                sb.append( ( substringNode.getAny() != null ) ? substringNode.getAny().size() : 0 );
+                sb.append( ( substringNode.getFinal() != null ) ? "f" : "-" );
+            }
+        }
+        else if ( node instanceof BranchNode )
+        {
+            for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+            {
+                appendShape( sb, child );
+            }
+        }
+
+        sb.append( ')' );
+    }
+
+
+    /**
+     * Lists the nodes of a filter, in depth first order
+     */
+    private static List<ExprNode> flatten( ExprNode root )
+    {
+        List<ExprNode> nodes = new ArrayList<>();
+        List<ExprNode> stack = new ArrayList<>();
+        stack.add( root );
+
+        while ( !stack.isEmpty() )
+        {
+            ExprNode node = stack.remove( stack.size() - 1 );
+            nodes.add( node );
+
+            if ( node instanceof BranchNode )
+            {
+                List<ExprNode> children = ( ( BranchNode ) node ).getChildren();
+
+                for ( int i = children.size() - 1; i >= 0; i-- )
+                {
+                    stack.add( children.get( i ) );
+                }
+            }
+        }
+
+        return nodes;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        CacheStats stats = plans.stats();
+
+        return "SearchPlanCache : " + plans.estimatedSize() + " plans, " + stats.hitCount() + " hits, "
+            + stats.missCount() + " misses";
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.LeafNode;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.filter.SimpleNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.PrepareString;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.IndexStatistics;
+import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.TrigramIndex;
+
+
+/**
+ * An optimizer using the statistics kept on the user indices to estimate the number of
+ * candidates of each filter node, instead of reading the indices. The estimates of the
+ * AND and OR nodes suppose that their children are independent.
+ * <br>
+ * It also chooses how the candidates of an AND node are computed : either by walking the
+ * most selective child and evaluating the other ones on each candidate, or by intersecting
+ * the candidates of the N most selective children. The chosen number of children is stored
+ * in the node's {@link DefaultOptimizer#INTERSECT_ANNOTATION} annotation.
+ * <br>
+ * The statistics are updated once the modifications are committed, so they may lag behind
+ * the index : an estimate of 0 would make the search return nothing, it's replaced by the
+ * exact count read from the index.
+ * <br>
+ * The system indices and the attributes without statistics are handled by the
+ * {@link DefaultOptimizer}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StatisticsOptimizer extends DefaultOptimizer
+{
+    /**
+     * The cost of fetching a candidate and evaluating the filter on it, compared to
+     * the cost of reading an index tuple to build a bitmap
+     */
+    private static final long FETCH_COST = 8L;
+
+    /** Under this estimate, the equality candidates are read from the index */
+    private static final long EXACT_EQUALITY_LIMIT = 100L;
+
+
+    /**
+     * Creates an optimizer on a database.
+     *
+     * @param db the database this optimizer works for.
+     */
+    public StatisticsOptimizer( Store db )
+    {
+        super( db );
+    }
+
+
+    /**
+     * The number of candidates of an AND node is estimated by multiplying the selectivity
+     * of its children. The children are annotated, and the cheapest way to get the AND
+     * candidates is stored in the node.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getConjunctionScan( PartitionTxn partitionTxn, BranchNode node ) throws LdapException
+    {
+        List<Long> counts = new ArrayList<>( node.getChildren().size() );
+
+        for ( ExprNode child : node.getChildren() )
+        {
+            long count = annotate( partitionTxn, child );
+
+            if ( count == 0L )
+            {
+                // No need to continue
+                node.set( INTERSECT_ANNOTATION, 1 );
+
+                return 0L;
+            }
+
+            counts.add( count );
+        }
+
+        Collections.sort( counts );
+
+        long smallest = counts.get( 0 );
+        long total = db.count( partitionTxn );
+
+        if ( ( smallest == Long.MAX_VALUE ) || ( total <= 0L ) )
+        {
+            node.set( INTERSECT_ANNOTATION, 1 );
+
+            return smallest;
+        }
+
+        // Walking the smallest child : each candidate is fetched and evaluated
+        double bestCost = ( double ) smallest * FETCH_COST;
+        int intersected = 1;
+
+        // Intersecting the k first children : all their tuples are read, then the
+        // remaining candidates are fetched and evaluated
+        double readCost = smallest;
+        double selectivity = selectivity( smallest, total );
+
+        for ( int k = 1; k < counts.size(); k++ )
+        {
+            long count = counts.get( k );
+
+            if ( count == Long.MAX_VALUE )
+            {
+                break;
+            }
+
+            readCost += count;
+            selectivity *= selectivity( count, total );
+            double cost = readCost + ( total * selectivity * FETCH_COST );
+
+            if ( cost < bestCost )
+            {
+                bestCost = cost;
+                intersected = k + 1;
+            }
+        }
+
+        node.set( INTERSECT_ANNOTATION, intersected );
+
+        // The estimate can't be above the smallest count, and must not be 0 : this would
+        // mean there is no candidate at all
+        return Math.max( 1L, Math.min( smallest, Math.round( total * selectivity ) ) );
+    }
+
+
+    /**
+     * The number of candidates of an OR node is estimated as the number of entries
+     * matching at least one of its children, supposing they are independent.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getDisjunctionScan( PartitionTxn partitionTxn, BranchNode node ) throws LdapException
+    {
+        long total = db.count( partitionTxn );
+        long sum = 0L;
+        long largest = 0L;
+        double missed = 1D;
+
+        for ( ExprNode child : node.getChildren() )
+        {
+            long count = annotate( partitionTxn, child );
+
+            if ( count == Long.MAX_VALUE )
+            {
+                // We can stop here without evaluating the following filters
+                return Long.MAX_VALUE;
+            }
+
+            sum += count;
+            largest = Math.max( largest, count );
+            missed *= 1D - selectivity( count, total );
+        }
+
+        if ( total <= 0L )
+        {
+            return sum;
+        }
+
+        long estimate = Math.round( total * ( 1D - missed ) );
+
+        return Math.max( largest, Math.min( sum, estimate ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected <V> long getEqualityScan( PartitionTxn partitionTxn, SimpleNode<V> node )
+        throws LdapException, IndexNotFoundException, IOException
+    {
+        IndexStatistics statistics = db.getIndexStatistics( partitionTxn, node.getAttributeType() );
+
+        if ( statistics == null )
+        {
+            return super.getEqualityScan( partitionTxn, node );
+        }
+
+        long count = statistics.equalityCount( getNormalized( node ) );
+
+        // A value missing from the sketch is most likely absent, but the statistics may lag
+        // behind the index : only the index can tell that there is no candidate
+        if ( count < EXACT_EQUALITY_LIMIT )
+        {
+            // Cheap enough to read the candidates from the index
+            return super.getEqualityScan( partitionTxn, node );
+        }
+
+        node.set( CANDIDATES_ANNOTATION_KEY, null );
+
+        return count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected <V> long getGreaterLessScan( PartitionTxn partitionTxn, SimpleNode<V> node, boolean isGreaterThan )
+        throws LdapException, IndexNotFoundException
+    {
+        IndexStatistics statistics = db.getIndexStatistics( partitionTxn, node.getAttributeType() );
+
+        if ( statistics == null )
+        {
+            return super.getGreaterLessScan( partitionTxn, node, isGreaterThan );
+        }
+
+        String key = getNormalized( node );
+        long count = isGreaterThan ? statistics.greaterThanCount( key ) : statistics.lessThanCount( key );
+
+        if ( count == 0L )
+        {
+            return super.getGreaterLessScan( partitionTxn, node, isGreaterThan );
+        }
+
+        return count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getSubstringScan( PartitionTxn partitionTxn, SubstringNode node )
+        throws LdapException, IndexNotFoundException
+    {
+        AttributeType attributeType = node.getAttributeType();
+        IndexStatistics statistics = db.getIndexStatistics( partitionTxn, attributeType );
+
+        if ( statistics == null )
+        {
+            return super.getSubstringScan( partitionTxn, node );
+        }
+
+        TrigramIndex trigramIndex = db.getTrigramIndex( attributeType );
+
+        if ( ( trigramIndex != null ) && TrigramIndex.accepts( node ) )
+        {
+            long count = trigramIndex.count( partitionTxn, trigramIndex.getComponents( node ) );
+
+            // A missing trigram is not a proof that there is no candidate
+            if ( count > 0L )
+            {
+                return count;
+            }
+        }
+
+        String initial = node.getInitial();
+
+        long count;
+
+        if ( Strings.isEmpty( initial ) )
+        {
+            // Not a (attr=ABC*) filter : full index scan
+            count = statistics.getCount();
+        }
+        else
+        {
+            String prefix = attributeType.getEquality().getNormalizer().normalize( initial,
+                PrepareString.AssertionType.SUBSTRING_INITIAL );
+
+            count = statistics.prefixCount( prefix );
+        }
+
+        if ( count == 0L )
+        {
+            return super.getSubstringScan( partitionTxn, node );
+        }
+
+        return count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getFullScan( PartitionTxn partitionTxn, LeafNode node ) throws LdapException, IndexNotFoundException
+    {
+        IndexStatistics statistics = db.getIndexStatistics( partitionTxn, node.getAttributeType() );
+
+        if ( statistics == null )
+        {
+            return super.getFullScan( partitionTxn, node );
+        }
+
+        long count = statistics.getCount();
+
+        return ( count == 0L ) ? super.getFullScan( partitionTxn, node ) : count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getPresenceScan( PartitionTxn partitionTxn, PresenceNode node ) throws LdapException
+    {
+        IndexStatistics statistics = db.getIndexStatistics( partitionTxn, node.getAttributeType() );
+
+        if ( statistics == null )
+        {
+            return super.getPresenceScan( partitionTxn, node );
+        }
+
+        long count = statistics.getEntryCount();
+
+        return ( count == 0L ) ? super.getPresenceScan( partitionTxn, node ) : count;
+    }
+
+
+    /**
+     * Gets the normalized value of a simple node
+     */
+    private <V> String getNormalized( SimpleNode<V> node ) throws LdapException
+    {
+        if ( node.getValue().isSchemaAware() )
+        {
+            return node.getValue().getNormalized();
+        }
+
+        return node.getAttributeType().getEquality().getNormalizer().normalize( node.getValue().getString() );
+    }
+
+
+    /**
+     * Gets the fraction of the entries matching a node
+     */
+    private static double selectivity( long count, long total )
+    {
+        return Math.min( 1D, ( double ) count / total );
+    }
+}
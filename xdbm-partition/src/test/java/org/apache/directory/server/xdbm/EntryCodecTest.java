@@ -0,0 +1,347 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.xdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the EntryCodec and the AttributeDictionary.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryCodecTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = EntryCodecTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    private static Entry createEntry() throws Exception
+    {
+        return new DefaultEntry( schemaManager,
+            "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "cn: text",
+            "sn: Test",
+            "userPassword", Strings.getBytesUtf8( "secret" ) );
+    }
+
+
+    /**
+     * Only the Rdn of the entries is stored : the decoded entry gets the Dn of the expected one
+     */
+    private static void assertSameEntry( Entry expected, Entry result )
+    {
+        assertEquals( expected.getDn().getRdn(), result.getDn().getRdn() );
+        result.setDn( expected.getDn() );
+        assertEquals( expected, result );
+    }
+
+
+    @Test
+    public void testEncodeDecode() throws Exception
+    {
+        Entry entry = createEntry();
+        EntryCodec codec = new EntryCodec( schemaManager, new AttributeDictionary( schemaManager ) );
+
+        byte[] encoded = codec.encode( entry );
+        byte[] serialized = new EntryCodec( schemaManager, null ).encode( entry );
+
+        assertTrue( EntryCodec.isEncoded( encoded ) );
+        assertFalse( EntryCodec.isEncoded( serialized ) );
+        assertTrue( encoded.length < serialized.length );
+
+        Entry result = codec.decode( encoded );
+        assertSameEntry( entry, result );
+        assertEquals( 4, codec.getDictionary().size() );
+    }
+
+
+    @Test
+    public void testDecodeSerializedEntry() throws Exception
+    {
+        Entry entry = createEntry();
+        byte[] serialized = new EntryCodec( schemaManager, null ).encode( entry );
+        EntryCodec codec = new EntryCodec( schemaManager, new AttributeDictionary( schemaManager ) );
+
+        Entry result = codec.decode( ByteBuffer.wrap( serialized ) );
+        assertSameEntry( entry, result );
+
+        // Once written again, the entry is in the new format
+        assertTrue( EntryCodec.isEncoded( codec.encode( result ) ) );
+    }
+
+
+    @Test
+    public void testDecodeSomeAttributes() throws Exception
+    {
+        Entry entry = createEntry();
+        EntryCodec codec = new EntryCodec( schemaManager, new AttributeDictionary( schemaManager ) );
+        AttributeType sn = schemaManager.lookupAttributeTypeRegistry( "sn" );
+
+        Entry result = codec.decode( ByteBuffer.wrap( codec.encode( entry ) ), Collections.singleton( sn ) );
+
+        assertEquals( 1, result.size() );
+        assertEquals( entry.get( sn ), result.get( sn ) );
+        assertNull( result.get( "cn" ) );
+        assertEquals( entry.getDn().getRdn(), result.getDn().getRdn() );
+    }
+
+
+    @Test
+    public void testProjectEntry() throws Exception
+    {
+        Entry entry = createEntry();
+        EntryCodec codec = new EntryCodec( schemaManager, new AttributeDictionary( schemaManager ) );
+        AttributeType objectClass = schemaManager.lookupAttributeTypeRegistry( "objectClass" );
+        AttributeType cn = schemaManager.lookupAttributeTypeRegistry( "cn" );
+        AttributeType sn = schemaManager.lookupAttributeTypeRegistry( "sn" );
+        Set<AttributeType> projection = new HashSet<>( Arrays.asList( objectClass, cn ) );
+
+        byte[] encoded = codec.encode( entry );
+        byte[] serialized = new EntryCodec( schemaManager, null ).encode( entry );
+
+        for ( Entry result : Arrays.asList( codec.project( encoded, projection ),
+            codec.project( serialized, projection ), new ProjectedEntry( schemaManager, entry, projection ) ) )
+        {
+            // Only the projected attributes are part of the entry
+            assertEquals( 2, result.size() );
+            assertEquals( entry.get( cn ), result.get( cn ) );
+            assertTrue( result.hasObjectClass( "person" ) );
+
+            // The others are decoded on demand
+            assertEquals( entry.get( sn ), result.get( sn ) );
+            assertTrue( result.containsAttribute( "userPassword" ) );
+            assertTrue( result.contains( "sn", "test" ) );
+            assertEquals( 2, result.size() );
+
+            // A clone does not copy them
+            Entry clone = result.clone();
+            assertEquals( result, clone );
+            assertEquals( entry.get( sn ), clone.get( sn ) );
+
+            // They are not read anymore once removed, and are part of the entry once modified
+            result.removeAttributes( sn );
+            assertNull( result.get( sn ) );
+            result.add( "userPassword", Strings.getBytesUtf8( "other" ) );
+            assertEquals( 3, result.size() );
+            assertEquals( 2, result.get( "userPassword" ).size() );
+
+            assertEquals( entry.get( sn ), clone.get( sn ) );
+            assertEquals( 2, clone.size() );
+        }
+    }
+
+
+    /**
+     * A dictionary storing its ids in a list, as a partition does in its database
+     */
+    private static class StoredDictionary extends AttributeDictionary
+    {
+        private final List<String> stored;
+
+
+        private StoredDictionary( List<String> stored )
+        {
+            super( schemaManager );
+            this.stored = stored;
+            load( stored );
+        }
+
+
+        @Override
+        protected void store( int id, String oid )
+        {
+            assertEquals( id, stored.size() );
+            stored.add( oid );
+        }
+    }
+
+
+    @Test
+    public void testStoredDictionary() throws Exception
+    {
+        List<String> stored = new ArrayList<>();
+        AttributeDictionary dictionary = new StoredDictionary( stored );
+        byte[] encoded = new EntryCodec( schemaManager, dictionary ).encode( createEntry() );
+
+        assertEquals( dictionary.size(), stored.size() );
+
+        AttributeDictionary reloaded = new StoredDictionary( stored );
+        assertEquals( dictionary.size(), reloaded.size() );
+
+        Entry result = new EntryCodec( schemaManager, reloaded ).decode( encoded );
+        assertSameEntry( createEntry(), result );
+
+        try
+        {
+            reloaded.getAttributeType( reloaded.size() );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testUnknownAttributeTypeInDictionary() throws Exception
+    {
+        List<String> stored = new ArrayList<>();
+        byte[] encoded = new EntryCodec( schemaManager, new StoredDictionary( stored ) ).encode( createEntry() );
+
+        // The sn attribute type has been removed from the schema since it has been stored
+        AttributeType sn = schemaManager.getAttributeType( "sn" );
+        int snId = stored.indexOf( sn.getOid() );
+        stored.set( snId, "1.3.6.1.4.1.18060.0.4.1.2.999999" );
+
+        AttributeDictionary reloaded = new StoredDictionary( stored );
+        assertEquals( stored.size(), reloaded.size() );
+        assertNull( reloaded.findAttributeType( snId ) );
+
+        EntryCodec codec = new EntryCodec( schemaManager, reloaded );
+
+        // The other attributes can still be read
+        AttributeType cn = schemaManager.getAttributeType( "cn" );
+        Entry projected = codec.project( encoded, Collections.singleton( cn ) );
+        assertEquals( createEntry().get( cn ), projected.get( cn ) );
+        assertNull( codec.decodeAttribute( encoded, sn ) );
+
+        // But not the whole entry
+        try
+        {
+            codec.decode( encoded );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        // A new attribute type gets a new id
+        assertEquals( stored.size(), reloaded.getId( schemaManager.getAttributeType( "description" ) ) );
+    }
+
+
+    @Test
+    public void testRollbackOnAbort() throws Exception
+    {
+        List<String> stored = new ArrayList<>();
+        AttributeDictionary dictionary = new StoredDictionary( stored );
+        AttributeType cn = schemaManager.getAttributeType( "cn" );
+        AttributeType sn = schemaManager.getAttributeType( "sn" );
+
+        PartitionWriteTxn committedTxn = new PartitionWriteTxn();
+        dictionary.rollbackOnAbort( committedTxn );
+        assertEquals( 0, dictionary.getId( cn ) );
+        committedTxn.commit();
+
+        PartitionWriteTxn abortedTxn = new PartitionWriteTxn();
+        dictionary.rollbackOnAbort( abortedTxn );
+        assertEquals( 1, dictionary.getId( sn ) );
+        abortedTxn.abort();
+
+        assertEquals( 1, dictionary.size() );
+        assertEquals( 0, dictionary.getId( cn ) );
+
+        try
+        {
+            dictionary.getAttributeType( 1 );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testReadLine() throws Exception
+    {
+        EntryDataInput in = new EntryDataInput( ByteBuffer.wrap( "first\nsecond\r\nthird\rlast".getBytes(
+            StandardCharsets.ISO_8859_1 ) ) );
+
+        assertEquals( "first", in.readLine() );
+        assertEquals( "second", in.readLine() );
+        assertEquals( "third", in.readLine() );
+        assertEquals( "last", in.readLine() );
+        assertNull( in.readLine() );
+    }
+}
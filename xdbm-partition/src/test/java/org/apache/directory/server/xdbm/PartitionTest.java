@@ -57,6 +57,7 @@ import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.interceptor.context.ModDnAva;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
 import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
 import org.apache.directory.server.xdbm.impl.avl.AvlPartitionTest;
@@ -424,6 +425,113 @@ public class PartitionTest
     }
 
 
+    @Test
+    public void testEntryCache() throws Exception
+    {
+        PartitionTxn txn = partition.beginReadTransaction();
+
+        Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        String entryId = partition.getEntryId( txn, dn );
+
+        long hits = partition.getEntryCacheStats().hitCount();
+        Entry first = partition.fetch( txn, entryId );
+        Entry second = partition.fetch( txn, entryId );
+
+        assertEquals( hits + 1, partition.getEntryCacheStats().hitCount() );
+        assertNotSame( first, second );
+
+        // Modifying a fetched entry must not alter the cached one
+        first.add( "description", "not stored" );
+        second = partition.fetch( txn, entryId );
+        assertNull( second.get( "description" ) );
+
+        // The cached entry is invalidated by a modification
+        Attribute attrib = new DefaultAttribute( SchemaConstants.OU_AT, OU_AT );
+        attrib.add( "Marketing" );
+        partition.modify( txn, dn, new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, attrib ) );
+
+        assertTrue( partition.fetch( txn, entryId ).get( "ou" ).contains( "marketing" ) );
+
+        // and by a rename
+        Rdn newRdn = new Rdn( schemaManager, "cn=Johnny Walker Jr" );
+        partition.rename( txn, dn, newRdn, true, null );
+        Dn newDn = new Dn( schemaManager, "cn=Johnny Walker Jr,ou=Sales,o=Good Times Co." );
+
+        Entry renamed = partition.fetch( txn, entryId );
+        assertEquals( newDn, renamed.getDn() );
+        assertFalse( renamed.get( "cn" ).contains( "Johnny Walker" ) );
+        assertTrue( renamed.get( "cn" ).contains( "Johnny Walker Jr" ) );
+    }
+
+
+    @Test
+    public void testEntryCacheSnapshots() throws Exception
+    {
+        PartitionTxn oldTxn = partition.beginReadTransaction();
+
+        Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        String entryId = partition.getEntryId( oldTxn, dn );
+
+        // The entries read by a write transaction are not cached
+        PartitionWriteTxn writeTxn = new MockPartitionWriteTxn();
+        Attribute attrib = new DefaultAttribute( SchemaConstants.OU_AT, OU_AT );
+        attrib.add( "Marketing" );
+        partition.modify( writeTxn, dn, new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, attrib ) );
+
+        long misses = partition.getEntryCacheStats().missCount();
+        partition.fetch( writeTxn, entryId );
+        partition.fetch( writeTxn, entryId );
+        assertEquals( misses + 2, partition.getEntryCacheStats().missCount() );
+
+        writeTxn.commit();
+
+        // A reader started before the commit may see the previous version : it's not cached
+        partition.fetch( oldTxn, entryId );
+        partition.fetch( oldTxn, entryId );
+        assertEquals( misses + 4, partition.getEntryCacheStats().missCount() );
+
+        // A reader started after the commit fills the cache
+        PartitionTxn newTxn = partition.beginReadTransaction();
+        long hits = partition.getEntryCacheStats().hitCount();
+        assertTrue( partition.fetch( newTxn, entryId ).get( "ou" ).contains( "marketing" ) );
+        assertTrue( partition.fetch( newTxn, entryId ).get( "ou" ).contains( "marketing" ) );
+        assertEquals( hits + 1, partition.getEntryCacheStats().hitCount() );
+    }
+
+
+    @Test
+    public void testRenameUpdatesDescendantDns() throws Exception
+    {
+        PartitionTxn txn = partition.beginReadTransaction();
+
+        Dn childDn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        Dn otherDn = new Dn( schemaManager, "cn=Jack Daniels,ou=Engineering,o=Good Times Co." );
+        String childId = partition.getEntryId( txn, childDn );
+        String otherId = partition.getEntryId( txn, otherDn );
+
+        // Get the DNs cached
+        assertEquals( childDn, partition.fetch( txn, childId ).getDn() );
+        assertEquals( otherDn, partition.fetch( txn, otherId ).getDn() );
+
+        // Rename the parent
+        partition.rename( txn, new Dn( schemaManager, "ou=Sales,o=Good Times Co." ),
+            new Rdn( schemaManager, "ou=Sales Team" ), false, null );
+
+        assertEquals( new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales Team,o=Good Times Co." ),
+            partition.fetch( txn, childId ).getDn() );
+        assertEquals( otherDn, partition.fetch( txn, otherId ).getDn() );
+
+        // Move the parent
+        partition.move( txn, new Dn( schemaManager, "ou=Sales Team,o=Good Times Co." ),
+            new Dn( schemaManager, "ou=Engineering,o=Good Times Co." ),
+            new Dn( schemaManager, "ou=Sales Team,ou=Engineering,o=Good Times Co." ), null );
+
+        assertEquals( new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales Team,ou=Engineering,o=Good Times Co." ),
+            partition.fetch( txn, childId ).getDn() );
+        assertEquals( otherDn, partition.fetch( txn, otherId ).getDn() );
+    }
+
+
     private Entry verifyParentId( PartitionTxn txn, Dn dn ) throws Exception
     {
         String entryId = partition.getEntryId( txn, dn );
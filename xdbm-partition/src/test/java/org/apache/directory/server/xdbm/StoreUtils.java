@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 
 
 /**
@@ -293,7 +294,9 @@ public class StoreUtils
         entry.add( SchemaConstants.ENTRY_UUID_AT, Strings.getUUID( index ).toString() );
 
         AddOperationContext addContext = new AddOperationContext( null, entry );
-        addContext.setTransaction( new MockPartitionWriteTxn() );
+        PartitionWriteTxn partitionTxn = new MockPartitionWriteTxn();
+        addContext.setTransaction( partitionTxn );
         ( ( Partition ) store ).add( addContext );
+        partitionTxn.commit();
     }
 }
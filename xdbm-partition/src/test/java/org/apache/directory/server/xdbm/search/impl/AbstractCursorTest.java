@@ -42,6 +42,7 @@ import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Evaluator;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
+import org.apache.directory.server.xdbm.search.cursor.AllEntriesCursor;
 
 
 /**
@@ -116,4 +117,38 @@ public class AbstractCursorTest
         return new EntryFilteringCursorImpl( new EntryCursorAdaptor( partitionTxn, ( AbstractBTreePartition ) store, searchResult ),
             operationContext, directoryService.getSchemaManager() );
     }
+
+
+    /**
+     * Creates a cursor from a filter, fetching the candidates lazily from the indexes
+     * 
+     * @param root The filter we are using for the cursor construction
+     * @return The constructed cursor
+     * @throws Exception If anything went wrong
+     */
+    protected Cursor<Entry> buildStreamingCursor( PartitionTxn partitionTxn, ExprNode root ) throws Exception
+    {
+        Evaluator<? extends ExprNode> evaluator = evaluatorBuilder.build( partitionTxn, root );
+
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        Cursor<IndexEntry<String, String>> candidates = cursorBuilder.buildCursor( partitionTxn, root );
+
+        if ( candidates == null )
+        {
+            // Full scan
+            candidates = new AllEntriesCursor( partitionTxn, store );
+        }
+
+        candidates.beforeFirst();
+
+        searchResult.setResultSet( candidates );
+        searchResult.setEvaluator( evaluator );
+
+        // We want all the user attributes plus the entryUUID
+        SearchOperationContext operationContext = 
+            new SearchOperationContext( session, Dn.ROOT_DSE, SearchScope.ONELEVEL, null, "*", "EntryUUID" );
+        
+        return new EntryFilteringCursorImpl( new EntryCursorAdaptor( partitionTxn, ( AbstractBTreePartition ) store, searchResult ),
+            operationContext, directoryService.getSchemaManager() );
+    }
 }
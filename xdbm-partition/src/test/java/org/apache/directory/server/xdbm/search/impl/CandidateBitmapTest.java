@@ -0,0 +1,259 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.directory.server.xdbm.EntryNumberMap;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link CandidateBitmap} and {@link EntryNumberMap} classes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CandidateBitmapTest
+{
+    private static CandidateBitmap toBitmap( BitSet bitSet )
+    {
+        CandidateBitmap bitmap = new CandidateBitmap();
+
+        for ( int i = bitSet.nextSetBit( 0 ); i >= 0; i = bitSet.nextSetBit( i + 1 ) )
+        {
+            bitmap.add( i );
+        }
+
+        return bitmap;
+    }
+
+
+    /**
+     * Creates a random set, mixing sparse and dense chunks
+     */
+    private static BitSet randomSet( Random random )
+    {
+        BitSet bitSet = new BitSet();
+
+        for ( int chunk = 0; chunk < 6; chunk++ )
+        {
+            int density = random.nextBoolean() ? 2 : 64;
+
+            for ( int i = 0; i < 65536; i++ )
+            {
+                if ( random.nextInt( density ) == 0 )
+                {
+                    bitSet.set( ( chunk * 3 << 16 ) + i );
+                }
+            }
+        }
+
+        return bitSet;
+    }
+
+
+    private static void assertSame( BitSet expected, CandidateBitmap bitmap )
+    {
+        assertEquals( expected.cardinality(), bitmap.getCardinality() );
+        int number = -1;
+
+        for ( int i = expected.nextSetBit( 0 ); i >= 0; i = expected.nextSetBit( i + 1 ) )
+        {
+            number = bitmap.next( number + 1 );
+            assertEquals( i, number );
+        }
+
+        assertEquals( -1, bitmap.next( number + 1 ) );
+
+        number = Integer.MAX_VALUE;
+
+        for ( int i = expected.previousSetBit( expected.length() ); i >= 0; i = expected.previousSetBit( i - 1 ) )
+        {
+            number = bitmap.previous( number - 1 );
+            assertEquals( i, number );
+        }
+
+        assertEquals( -1, bitmap.previous( number - 1 ) );
+    }
+
+
+    @Test
+    public void testAddContains()
+    {
+        CandidateBitmap bitmap = new CandidateBitmap();
+
+        assertTrue( bitmap.isEmpty() );
+        assertEquals( -1, bitmap.next( 0 ) );
+
+        bitmap.add( 5 );
+        bitmap.add( 70000 );
+        bitmap.add( 5 );
+        bitmap.add( 3 );
+
+        assertEquals( 3, bitmap.getCardinality() );
+        assertTrue( bitmap.contains( 3 ) );
+        assertTrue( bitmap.contains( 70000 ) );
+        assertFalse( bitmap.contains( 4 ) );
+        assertEquals( 5, bitmap.next( 4 ) );
+        assertEquals( 70000, bitmap.next( 6 ) );
+        assertEquals( 5, bitmap.previous( 69999 ) );
+        assertEquals( -1, bitmap.previous( 2 ) );
+    }
+
+
+    @Test
+    public void testAndOr()
+    {
+        Random random = new Random( 42L );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            BitSet set1 = randomSet( random );
+            BitSet set2 = randomSet( random );
+            CandidateBitmap bitmap1 = toBitmap( set1 );
+            CandidateBitmap bitmap2 = toBitmap( set2 );
+
+            assertSame( set1, bitmap1 );
+
+            BitSet and = ( BitSet ) set1.clone();
+            and.and( set2 );
+            assertSame( and, bitmap1.and( bitmap2 ) );
+
+            BitSet or = ( BitSet ) set1.clone();
+            or.or( set2 );
+            assertSame( or, bitmap1.or( bitmap2 ) );
+
+            // The operands are unchanged
+            assertSame( set2, bitmap2 );
+        }
+    }
+
+
+    @Test
+    public void testRemove()
+    {
+        Random random = new Random( 42L );
+        BitSet set = randomSet( random );
+        CandidateBitmap bitmap = toBitmap( set );
+        CandidateBitmap copy = bitmap.copy();
+
+        for ( int number = set.nextSetBit( 0 ); number >= 0; number = set.nextSetBit( number + 3 ) )
+        {
+            set.clear( number );
+            bitmap.remove( number );
+        }
+
+        bitmap.remove( 70000 );
+        assertSame( set, bitmap );
+
+        // The copy is unchanged
+        assertTrue( copy.getCardinality() > bitmap.getCardinality() );
+
+        for ( int number = set.nextSetBit( 0 ); number >= 0; number = set.nextSetBit( number + 1 ) )
+        {
+            bitmap.remove( number );
+        }
+
+        assertTrue( bitmap.isEmpty() );
+        assertEquals( -1, bitmap.next( 0 ) );
+    }
+
+
+    @Test
+    public void testEntryNumberMap()
+    {
+        EntryNumberMap map = new EntryNumberMap();
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            assertEquals( i, map.getNumber( Strings.getUUID( i ) ) );
+        }
+
+        assertEquals( 5000, map.getNumber( "not-a-uuid" ) );
+        assertEquals( 5001, map.getNumber( "0000000A-0000-0000-0000-000000000000" ) );
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            assertEquals( i, map.getNumber( Strings.getUUID( i ) ) );
+            assertEquals( Strings.getUUID( i ), map.getId( i ) );
+        }
+
+        assertEquals( "not-a-uuid", map.getId( 5000 ) );
+        assertEquals( "0000000A-0000-0000-0000-000000000000", map.getId( 5001 ) );
+        assertEquals( null, map.getId( 5002 ) );
+        assertEquals( 5002, map.size() );
+    }
+
+
+    @Test
+    public void testEntryNumberMapRelease()
+    {
+        EntryNumberMap map = new EntryNumberMap();
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            assertEquals( i, map.getNumber( Strings.getUUID( i ) ) );
+        }
+
+        assertEquals( 5000, map.getNumber( "not-a-uuid" ) );
+
+        // Release half of the numbers
+        for ( int i = 0; i < 5000; i += 2 )
+        {
+            map.release( Strings.getUUID( i ) );
+        }
+
+        map.release( "not-a-uuid" );
+        map.release( "unknown" );
+
+        assertEquals( 2500, map.size() );
+        assertEquals( null, map.getId( 0 ) );
+        assertEquals( null, map.getId( 5000 ) );
+        assertEquals( Strings.getUUID( 1 ), map.getId( 1 ) );
+
+        // The released numbers are reused before new ones are assigned
+        for ( int i = 5000; i < 10000; i++ )
+        {
+            assertTrue( map.getNumber( Strings.getUUID( i ) ) < 7500 );
+        }
+
+        assertEquals( 7500, map.size() );
+
+        // The remaining IDs are still found, past the tombstones
+        for ( int i = 1; i < 5000; i += 2 )
+        {
+            assertEquals( i, map.getNumber( Strings.getUUID( i ) ) );
+        }
+
+        for ( int i = 5000; i < 10000; i++ )
+        {
+            assertEquals( Strings.getUUID( i ), map.getId( map.getNumber( Strings.getUUID( i ) ) ) );
+        }
+
+        assertEquals( 7500, map.size() );
+    }
+}
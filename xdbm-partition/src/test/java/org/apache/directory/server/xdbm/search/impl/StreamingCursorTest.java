@@ -0,0 +1,742 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapNoPermissionException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.filter.ScopeNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.OpaqueControl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.normalizers.ConcreteNameComponentNormalizer;
+import org.apache.directory.api.ldap.model.schema.normalizers.NameComponentNormalizer;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.EntryCursorAdaptor;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.IndexStatistics;
+import org.apache.directory.server.xdbm.MockPartitionWriteTxn;
+import org.apache.directory.server.xdbm.StoreUtils;
+import org.apache.directory.server.xdbm.TrigramIndex;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.apache.directory.server.xdbm.search.Optimizer;
+import org.apache.directory.server.xdbm.search.PartitionSearchResult;
+import org.apache.directory.server.xdbm.search.SearchEngine;
+import org.apache.directory.server.xdbm.search.cursor.AllEntriesCursor;
+import org.apache.directory.server.xdbm.search.cursor.SortedIndexCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Checks that the candidates streamed from the indexes produce the same result
+ * than the materialized candidate set.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StreamingCursorTest extends AbstractCursorTest
+{
+    File wkdir;
+    Optimizer optimizer;
+    static FilterNormalizingVisitor visitor;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        // setup the standard registries
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = StreamingCursorTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        loaded = schemaManager.loadWithDeps( "collective" );
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        NameComponentNormalizer ncn = new ConcreteNameComponentNormalizer( schemaManager );
+        visitor = new FilterNormalizingVisitor( ncn, schemaManager );
+    }
+
+
+    @Before
+    public void createStore() throws Exception
+    {
+        directoryService = new MockDirectoryService();
+
+        // setup the working directory for the store
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+        wkdir.mkdirs();
+
+        StoreUtils.createdExtraAttributes( schemaManager );
+
+        // initialize the store
+        store = new AvlPartition( schemaManager, directoryService.getDnFactory() );
+        ( ( Partition ) store ).setId( "example" );
+        store.setCacheSize( 10 );
+        store.setPartitionPath( wkdir.toURI() );
+        store.setSyncOnWrite( false );
+
+        store.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID ) );
+        AvlIndex<String> cnIndex = new AvlIndex<String>( SchemaConstants.CN_AT_OID );
+        cnIndex.setTrigram( true );
+        store.addIndex( cnIndex );
+        ( ( Partition ) store ).setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        ( ( Partition ) store ).initialize();
+
+        StoreUtils.loadExampleData( store, schemaManager );
+
+        // An entry with many values in the cn index
+        Dn dn = new Dn( schemaManager, "cn=Jack Beam,ou=Engineering,o=Good Times Co." );
+        Entry entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: person",
+            "ou: Engineering",
+            "cn: Jack Beam",
+            "cn: Jack Bauer",
+            "cn: Jim Beam",
+            "sn: Beam" );
+        StoreUtils.injectEntryInStore( store, entry, 12 );
+
+        evaluatorBuilder = new EvaluatorBuilder( store, schemaManager );
+        cursorBuilder = new CursorBuilder( store, evaluatorBuilder );
+        optimizer = new DefaultOptimizer( store );
+
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+    }
+
+
+    @After
+    public void destroyStore() throws Exception
+    {
+        if ( store != null )
+        {
+            ( ( Partition ) store ).destroy( null );
+        }
+
+        store = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    private List<String> getUuids( Cursor<Entry> cursor ) throws Exception
+    {
+        List<String> uuids = new ArrayList<String>();
+
+        while ( cursor.next() )
+        {
+            uuids.add( cursor.get().get( "entryUUID" ).getString() );
+        }
+
+        cursor.close();
+
+        return uuids;
+    }
+
+
+    private Set<String> assertSameResult( String filter ) throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        ExprNode exprNode = FilterParser.parse( schemaManager, filter );
+        exprNode.accept( visitor );
+        optimizer.annotate( txn, exprNode );
+
+        Set<String> expected = new HashSet<String>( getUuids( buildCursor( txn, exprNode ) ) );
+        List<String> streamed = getUuids( buildStreamingCursor( txn, exprNode ) );
+
+        // No duplicate
+        Set<String> streamedSet = new HashSet<String>( streamed );
+        assertEquals( filter, streamed.size(), streamedSet.size() );
+        assertEquals( filter, expected, streamedSet );
+
+        return streamedSet;
+    }
+
+
+    @Test
+    public void testLeafFilters() throws Exception
+    {
+        assertSameResult( "(cn=JIM BEAN)" );
+        assertSameResult( "(ou=sales)" );
+        assertSameResult( "(ou=*)" );
+        assertSameResult( "(sn=*)" );
+        assertSameResult( "(cn~=jim bean)" );
+        assertSameResult( "(cn=unknown)" );
+    }
+
+
+    @Test
+    public void testMultiValuedRanges() throws Exception
+    {
+        assertTrue( assertSameResult( "(cn>=j)" ).contains( Strings.getUUID( 12 ) ) );
+        assertTrue( assertSameResult( "(cn<=k)" ).contains( Strings.getUUID( 12 ) ) );
+        assertTrue( assertSameResult( "(cn=j*)" ).contains( Strings.getUUID( 12 ) ) );
+        assertTrue( assertSameResult( "(cn=*bea*)" ).contains( Strings.getUUID( 12 ) ) );
+    }
+
+
+    @Test
+    public void testMixedCaseRanges() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        // The filter is not normalized, the bounds are compared to the normalized index keys
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(cn<=JACK BEAM)" );
+        optimizer.annotate( txn, exprNode );
+        assertTrue( getUuids( buildStreamingCursor( txn, exprNode ) ).contains( Strings.getUUID( 12 ) ) );
+
+        exprNode = FilterParser.parse( schemaManager, "(cn>=JIM BEAM)" );
+        optimizer.annotate( txn, exprNode );
+        assertTrue( getUuids( buildStreamingCursor( txn, exprNode ) ).contains( Strings.getUUID( 12 ) ) );
+
+        exprNode = FilterParser.parse( schemaManager, "(cn<=JACK B)" );
+        optimizer.annotate( txn, exprNode );
+        assertFalse( getUuids( buildStreamingCursor( txn, exprNode ) ).contains( Strings.getUUID( 12 ) ) );
+    }
+
+
+    @Test
+    public void testTrigramIndex() throws Exception
+    {
+        assertNotNull( store.getTrigramIndex( schemaManager.getAttributeType( SchemaConstants.CN_AT_OID ) ) );
+
+        assertTrue( assertSameResult( "(cn=*ack*)" ).contains( Strings.getUUID( 12 ) ) );
+        assertTrue( assertSameResult( "(cn=*beam)" ).contains( Strings.getUUID( 12 ) ) );
+        assertTrue( assertSameResult( "(cn=j*bau*)" ).contains( Strings.getUUID( 12 ) ) );
+        assertTrue( assertSameResult( "(cn=*unknown*)" ).isEmpty() );
+
+        // Too short for the trigram index
+        assertSameResult( "(cn=*a*)" );
+
+        // The index is updated once built
+        Dn dn = new Dn( schemaManager, "cn=Zorro Zed,ou=Engineering,o=Good Times Co." );
+        Entry entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: person",
+            "ou: Engineering",
+            "cn: Zorro Zed",
+            "sn: Zed" );
+        StoreUtils.injectEntryInStore( store, entry, 13 );
+
+        assertTrue( assertSameResult( "(cn=*rro*)" ).contains( Strings.getUUID( 13 ) ) );
+    }
+
+
+    @Test
+    public void testTrigramIndexUpdates() throws Exception
+    {
+        TrigramIndex trigramIndex = store.getTrigramIndex( schemaManager.getAttributeType( SchemaConstants.CN_AT_OID ) );
+
+        // An entry added before the index is built
+        addEntry( "Zorro Zed", 13 ).commit();
+        assertTrue( assertSameResult( "(cn=*rro*)" ).contains( Strings.getUUID( 13 ) ) );
+
+        // The trigrams of an added value are there before the commit
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        PartitionWriteTxn writeTxn = addEntry( "Xavier Xu", 14 );
+        int number = store.getEntryNumberMap().getNumber( Strings.getUUID( 14 ) );
+        assertTrue( trigramIndex.lookup( txn, Collections.singletonList( "avier" ) ).contains( number ) );
+        writeTxn.commit();
+
+        // A missing trigram is not taken as a 0 estimate
+        optimizer = new StatisticsOptimizer( store );
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(cn=*unknown*)" );
+        exprNode.accept( visitor );
+        assertEquals( 0L, trigramIndex.count( txn, Collections.singletonList( "unknown" ) ) );
+        assertTrue( optimizer.annotate( txn, exprNode ) > 0L );
+        assertTrue( assertSameResult( "(cn=*unknown*)" ).isEmpty() );
+    }
+
+
+    @Test
+    public void testBranchFilters() throws Exception
+    {
+        assertSameResult( "(&(cn=J*)(sn=*))" );
+        assertSameResult( "(|(ou=sales)(ou=apache))" );
+        assertSameResult( "(|(&(cn=J*)(sn=w*))(ou=apache))" );
+        assertSameResult( "(|(&(cn=J*)(ou=engineering))(&(cn=J*)(sn=beam)))" );
+        assertSameResult( "(!(cn=J*))" );
+        assertSameResult( "(|(ou=sales)(!(cn=J*)))" );
+        assertSameResult( "(&(ou=sales)(!(cn=J*)))" );
+    }
+
+
+    /**
+     * Reads the IDs returned by a SortedIndexCursor, and checks that the smallest
+     * values of the entries are in order, the entries without a value coming last
+     */
+    private List<String> assertSorted( PartitionTxn txn, Index<String, String> index, boolean reverse )
+        throws Exception
+    {
+        List<String> ids = new ArrayList<String>();
+        String previous = null;
+        boolean missing = false;
+
+        try ( Cursor<IndexEntry<String, String>> cursor = new SortedIndexCursor<String>( txn, index, reverse,
+            new AllEntriesCursor( txn, store ) ) )
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                String id = cursor.get().getId();
+                ids.add( id );
+
+                String value = null;
+
+                try ( Cursor<String> values = index.reverseValueCursor( txn, id ) )
+                {
+                    if ( values.next() )
+                    {
+                        value = values.get();
+                    }
+                }
+
+                if ( reverse )
+                {
+                    // The entries without a value come first
+                    if ( value == null )
+                    {
+                        assertFalse( missing );
+                    }
+                    else
+                    {
+                        missing = true;
+                        assertTrue( ( previous == null ) || ( previous.compareTo( value ) >= 0 ) );
+                        previous = value;
+                    }
+                }
+                else if ( value == null )
+                {
+                    missing = true;
+                }
+                else
+                {
+                    assertFalse( missing );
+                    assertTrue( ( previous == null ) || ( previous.compareTo( value ) <= 0 ) );
+                    previous = value;
+                }
+            }
+
+            // Walk back to the first entry
+            int pos = ids.size();
+
+            while ( cursor.previous() )
+            {
+                assertEquals( ids.get( --pos ), cursor.get().getId() );
+            }
+
+            assertEquals( 0, pos );
+        }
+
+        return ids;
+    }
+
+
+    @Test
+    public void testStatisticsOptimizer() throws Exception
+    {
+        optimizer = new StatisticsOptimizer( store );
+
+        assertSameResult( "(cn=JIM BEAN)" );
+        assertSameResult( "(ou=*)" );
+        assertSameResult( "(cn>=j)" );
+        assertSameResult( "(cn=j*)" );
+        assertSameResult( "(cn=*bea*)" );
+        assertSameResult( "(&(cn=J*)(ou=engineering))" );
+        assertSameResult( "(&(cn=J*)(sn=*)(ou=sales))" );
+        assertSameResult( "(|(ou=sales)(ou=apache))" );
+        assertSameResult( "(|(&(cn=J*)(ou=engineering))(&(cn=J*)(sn=beam)))" );
+        assertSameResult( "(&(ou=sales)(!(cn=J*)))" );
+
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        // An absent value is known to have no candidate
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(cn=unknown)" );
+        exprNode.accept( visitor );
+        assertEquals( 0L, ( long ) optimizer.annotate( txn, exprNode ) );
+
+        // A present value never has a zero estimate
+        exprNode = FilterParser.parse( schemaManager, "(&(cn=J*)(ou=engineering))" );
+        exprNode.accept( visitor );
+        assertTrue( optimizer.annotate( txn, exprNode ) > 0L );
+        assertNotNull( exprNode.get( DefaultOptimizer.INTERSECT_ANNOTATION ) );
+
+        IndexStatistics statistics = store.getIndexStatistics( txn,
+            schemaManager.getAttributeType( SchemaConstants.OU_AT_OID ) );
+        assertEquals( store.getUserIndex( schemaManager.getAttributeType( SchemaConstants.OU_AT_OID ) ).count( txn ),
+            statistics.getCount() );
+        assertTrue( statistics.equalityCount( "sales" ) > 0L );
+        assertEquals( 0L, statistics.equalityCount( "unknown" ) );
+    }
+
+
+    @Test
+    public void testStatisticsUpdatedOnCommit() throws Exception
+    {
+        optimizer = new StatisticsOptimizer( store );
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        IndexStatistics statistics = store.getIndexStatistics( txn,
+            schemaManager.getAttributeType( SchemaConstants.OU_AT_OID ) );
+        long count = statistics.getCount();
+
+        // An aborted transaction doesn't alter the statistics
+        PartitionWriteTxn writeTxn = addEntry( "Zorro Zed", 13 );
+        assertEquals( count, statistics.getCount() );
+        writeTxn.abort();
+        assertEquals( count, statistics.getCount() );
+
+        // A committed one does
+        writeTxn = addEntry( "Zorro Zod", 14 );
+        writeTxn.commit();
+        assertEquals( count + 1, statistics.getCount() );
+
+        // Statistics which have drifted apart from the index must not hide its candidates
+        while ( statistics.equalityCount( "sales" ) > 0L )
+        {
+            statistics.update( Collections.singleton( "sales" ), Collections.emptySet() );
+        }
+
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(ou=sales)" );
+        exprNode.accept( visitor );
+        assertTrue( optimizer.annotate( txn, exprNode ) > 0L );
+        assertFalse( assertSameResult( "(ou=sales)" ).isEmpty() );
+    }
+
+
+    private PartitionWriteTxn addEntry( String cn, long index ) throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "cn=" + cn + ",ou=Engineering,o=Good Times Co." );
+        Entry entry = new DefaultEntry( schemaManager, dn,
+            "objectClass: top",
+            "objectClass: person",
+            "ou: Engineering",
+            "cn: " + cn,
+            "sn: Zed" );
+        entry.add( SchemaConstants.ENTRY_CSN_AT, new CsnFactory( 0 ).newInstance().toString() );
+        entry.add( SchemaConstants.ENTRY_UUID_AT, Strings.getUUID( index ) );
+
+        AddOperationContext addContext = new AddOperationContext( null, entry );
+        PartitionWriteTxn writeTxn = new MockPartitionWriteTxn();
+        addContext.setTransaction( writeTxn );
+        ( ( Partition ) store ).add( addContext );
+
+        return writeTxn;
+    }
+
+
+    @Test
+    public void testPlanControlRestrictedToAdministrators() throws Exception
+    {
+        SearchEngine searchEngine = ( ( AbstractBTreePartition ) store ).getSearchEngine();
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        try
+        {
+            searchEngine.computeResult( txn, schemaManager, getPlanSearchContext( session ) );
+            fail();
+        }
+        catch ( LdapNoPermissionException lnpe )
+        {
+            // Expected
+        }
+
+        LdapPrincipal admin = new LdapPrincipal( schemaManager,
+            new Dn( schemaManager, ServerDNConstants.ADMIN_SYSTEM_DN ), AuthenticationLevel.SIMPLE );
+        SearchOperationContext searchContext = getPlanSearchContext( new MockCoreSession( admin, directoryService ) );
+        searchEngine.computeResult( txn, schemaManager, searchContext );
+        assertTrue( searchContext.hasResponseControl( DefaultSearchEngine.PLAN_CONTROL_OID ) );
+    }
+
+
+    private SearchOperationContext getPlanSearchContext( CoreSession coreSession ) throws Exception
+    {
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(ou=sales)" );
+        exprNode.accept( visitor );
+
+        SearchOperationContext searchContext = new SearchOperationContext( coreSession,
+            new Dn( schemaManager, "o=Good Times Co." ), SearchScope.SUBTREE, exprNode, "*" );
+        searchContext.addRequestControl( new OpaqueControl( DefaultSearchEngine.PLAN_CONTROL_OID ) );
+
+        return searchContext;
+    }
+
+
+    @Test
+    public void testSearchPlanCache() throws Exception
+    {
+        optimizer = new StatisticsOptimizer( store );
+        SearchPlanCache planCache = new SearchPlanCache( store, schemaManager, 10 );
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        ExprNode first = FilterParser.parse( schemaManager, "(&(cn=JIM BEAN)(ou=sales))" );
+        first.accept( visitor );
+        assertFalse( planCache.apply( first ) );
+        optimizer.annotate( txn, first );
+        planCache.put( first );
+
+        // Same shape, other values
+        ExprNode second = FilterParser.parse( schemaManager, "(&(cn=unknown)(ou=engineering))" );
+        second.accept( visitor );
+        assertEquals( SearchPlanCache.getShape( first ), SearchPlanCache.getShape( second ) );
+        assertTrue( planCache.apply( second ) );
+
+        // A count of 0 is not reused for other values
+        assertTrue( ( Long ) second.get( DefaultOptimizer.COUNT_ANNOTATION ) > 0L );
+        assertEquals( new HashSet<String>( getUuids( buildCursor( txn, second ) ) ),
+            new HashSet<String>( getUuids( buildStreamingCursor( txn, second ) ) ) );
+
+        // Another shape
+        ExprNode third = FilterParser.parse( schemaManager, "(&(ou=sales)(cn=JIM BEAN))" );
+        third.accept( visitor );
+        assertFalse( planCache.apply( third ) );
+
+        assertEquals( 1D / 3D, planCache.getHitRatio(), 0.01D );
+
+        planCache.clear();
+        assertFalse( planCache.apply( second ) );
+    }
+
+
+    @Test
+    public void testSearchPlanCacheScope() throws Exception
+    {
+        Dn base = new Dn( schemaManager, "o=Good Times Co." );
+        Dn otherBase = new Dn( schemaManager, "ou=Sales,o=Good Times Co." );
+
+        // The size of a one level or subtree scope depends on the base
+        for ( SearchScope scope : new SearchScope[]
+            { SearchScope.ONELEVEL, SearchScope.SUBTREE } )
+        {
+            ExprNode first = new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, base, Strings.getUUID( 1 ), scope );
+            ExprNode second = new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, otherBase, Strings.getUUID( 2 ),
+                scope );
+            ExprNode third = new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, base, Strings.getUUID( 1 ), scope );
+
+            assertFalse( SearchPlanCache.getShape( first ).equals( SearchPlanCache.getShape( second ) ) );
+            assertEquals( SearchPlanCache.getShape( first ), SearchPlanCache.getShape( third ) );
+        }
+
+        // Not the one of a base object search
+        ExprNode first = new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, base, Strings.getUUID( 1 ),
+            SearchScope.OBJECT );
+        ExprNode second = new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, otherBase, Strings.getUUID( 2 ),
+            SearchScope.OBJECT );
+        assertEquals( SearchPlanCache.getShape( first ), SearchPlanCache.getShape( second ) );
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSortedIndexCursor() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        Index<String, String> index = ( Index<String, String> ) store.getUserIndex(
+            schemaManager.getAttributeType( SchemaConstants.CN_AT_OID ) );
+
+        long nbEntries = store.count( txn );
+
+        List<String> forward = assertSorted( txn, index, false );
+        List<String> reverse = assertSorted( txn, index, true );
+
+        // Each entry is returned once, even the one with many cn values
+        assertEquals( nbEntries, forward.size() );
+        assertEquals( nbEntries, new HashSet<String>( forward ).size() );
+        assertEquals( new HashSet<String>( forward ), new HashSet<String>( reverse ) );
+        assertTrue( forward.contains( Strings.getUUID( 12 ) ) );
+    }
+
+
+    /**
+     * Reads the DNs of the entries returned by a subtree search, tracking their position
+     */
+    private List<String> readPage( PartitionTxn txn, SearchOperationContext searchContext, int size )
+        throws Exception
+    {
+        SearchEngine searchEngine = ( ( AbstractBTreePartition ) store ).getSearchEngine();
+        PartitionSearchResult searchResult = searchEngine.computeResult( txn, schemaManager, searchContext );
+        EntryCursorAdaptor cursor = new EntryCursorAdaptor( txn, ( AbstractBTreePartition ) store, searchResult );
+        cursor.trackPosition( searchContext, searchResult.getWalk() );
+        List<String> dns = new ArrayList<String>();
+
+        while ( ( dns.size() < size ) && cursor.next() )
+        {
+            Entry entry = cursor.get();
+
+            if ( entry != null )
+            {
+                dns.add( entry.getDn().getNormName() );
+            }
+        }
+
+        cursor.close();
+
+        return dns;
+    }
+
+
+    private SearchOperationContext getSearchContext( String filter ) throws Exception
+    {
+        ExprNode exprNode = FilterParser.parse( schemaManager, filter );
+        exprNode.accept( visitor );
+
+        return new SearchOperationContext( session, new Dn( schemaManager, "o=Good Times Co." ),
+            SearchScope.SUBTREE, exprNode, "*" );
+    }
+
+
+    /**
+     * Reads the first two entries of a search, then resumes it after the position of the
+     * second one, which may have been deleted meanwhile
+     */
+    private void assertResumed( String filter, boolean deleteLast ) throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        List<String> all = readPage( txn, getSearchContext( filter ), Integer.MAX_VALUE );
+        assertTrue( filter, all.size() > 2 );
+
+        SearchOperationContext firstContext = getSearchContext( filter );
+        List<String> firstPage = readPage( txn, firstContext, 2 );
+        assertEquals( filter, all.subList( 0, 2 ), firstPage );
+        assertNotNull( filter, firstContext.getPosition() );
+
+        if ( deleteLast )
+        {
+            String id = store.getEntryId( txn, new Dn( schemaManager, firstPage.get( 1 ) ) );
+            ( ( AbstractBTreePartition ) store ).delete( new MockPartitionWriteTxn(), id );
+        }
+
+        SearchOperationContext nextContext = getSearchContext( filter );
+        nextContext.setResumePosition( firstContext.getPosition() );
+        List<String> nextPages = readPage( txn, nextContext, Integer.MAX_VALUE );
+
+        assertTrue( filter, nextContext.isResumed() );
+        assertEquals( filter, all.subList( 2, all.size() ), nextPages );
+    }
+
+
+    @Test
+    public void testResumeAfterPosition() throws Exception
+    {
+        // An index walk, a bitmap and a full scan
+        assertResumed( "(cn>=j)", false );
+        assertResumed( "(|(ou=sales)(cn=j*))", false );
+        assertResumed( "(sn=*)", false );
+    }
+
+
+    @Test
+    public void testResumeAfterDeletedEntry() throws Exception
+    {
+        // The search goes on with the next candidate
+        assertResumed( "(cn>=j)", true );
+        assertResumed( "(|(ou=sales)(cn=j*))", true );
+        assertResumed( "(sn=*)", true );
+    }
+
+
+    @Test
+    public void testNoResumeForOtherWalk() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        SearchOperationContext firstContext = getSearchContext( "(cn>=j)" );
+        readPage( txn, firstContext, 2 );
+
+        // Another filter walks the candidates another way : the search starts from the first one
+        SearchOperationContext nextContext = getSearchContext( "(sn=*)" );
+        nextContext.setResumePosition( firstContext.getPosition() );
+
+        assertEquals( readPage( txn, getSearchContext( "(sn=*)" ), Integer.MAX_VALUE ),
+            readPage( txn, nextContext, Integer.MAX_VALUE ) );
+        assertFalse( nextContext.isResumed() );
+    }
+}